@@ -40,10 +40,10 @@ import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
 import loci.formats.Modulo;
+import loci.formats.cache.BudgetStrategy;
 import loci.formats.cache.Cache;
 import loci.formats.cache.CacheException;
-import loci.formats.cache.CacheStrategy;
-import loci.formats.cache.CrosshairStrategy;
+import loci.formats.cache.PrefetchCache;
 import loci.plugins.util.RecordedImageProcessor.MethodEntry;
 
 /**
@@ -53,11 +53,18 @@ import loci.plugins.util.RecordedImageProcessor.MethodEntry;
  */
 public class BFVirtualStack extends VirtualStack {
 
+  // -- Constants --
+
+  /** Fraction of the maximum heap size that may be used to cache planes. */
+  public static final double CACHE_MEMORY_FRACTION = 0.25;
+
   // -- Fields --
 
   protected ImageProcessorReader reader;
   protected String id;
-  protected Cache cache;
+  protected PrefetchCache cache;
+
+  private PooledImageProcessorSource source;
 
   private List<List<MethodEntry>> methodStacks;
   private int currentSlice = -1;
@@ -121,9 +128,17 @@ public class BFVirtualStack extends VirtualStack {
     System.arraycopy(subC, 0, len, 0, subC.length);
     len[len.length - 2] = r.getSizeZ();
     len[len.length - 1] = r.getSizeT();
-    CacheStrategy strategy = new CrosshairStrategy(len);
-
-    cache = new Cache(strategy, new ImageProcessorSource(r), true);
+    long planeSize = (long) r.getSizeX() * r.getSizeY() *
+      Math.max(FormatTools.getBytesPerPixel(r.getPixelType()), 1);
+    long budget =
+      (long) (Runtime.getRuntime().maxMemory() * CACHE_MEMORY_FRACTION);
+    BudgetStrategy strategy = new BudgetStrategy(len, planeSize, budget);
+
+    int threads = PrefetchCache.DEFAULT_THREADS;
+    // one more reader than loading threads, for planes that are needed
+    // before they are prefetched
+    source = new PooledImageProcessorSource(reader, threads + 1);
+    cache = new PrefetchCache(strategy, source, threads);
 
     methodStacks = new ArrayList<List<MethodEntry>>();
     for (int i=0; i<r.getImageCount(); i++) {
@@ -140,57 +155,62 @@ public class BFVirtualStack extends VirtualStack {
   public Cache getCache() { return cache; }
 
   public RecordedImageProcessor getRecordedProcessor() {
-    return currentProcessor;
+    synchronized (methodStacks) {
+      return currentProcessor;
+    }
   }
 
   public List<MethodEntry> getMethodStack() {
-    if (currentSlice >= 0) return methodStacks.get(currentSlice);
-    return null;
+    synchronized (methodStacks) {
+      if (currentSlice >= 0) return methodStacks.get(currentSlice);
+      return null;
+    }
   }
 
   public void setPlaneIndexes(int[] planeIndexes) {
     this.planeIndexes = planeIndexes;
   }
 
+  /** Stops loading planes in the background, and closes the readers used. */
+  public void close() throws IOException {
+    cache.dispose();
+    source.close();
+  }
+
   // -- VirtualStack API methods --
 
+  /**
+   * Gets the given plane.  No lock is held while waiting for the cache, so
+   * a thread whose plane is already cached does not wait behind a thread
+   * whose plane is still being read.
+   */
   @Override
-  public synchronized ImageProcessor getProcessor(int n) {
-    reader.setSeries(series);
-
-    // check cache first
-    if (currentSlice >= 0 && currentProcessor != null) {
-      List<MethodEntry> currentStack = currentProcessor.getMethodStack();
-      if (currentStack.size() > 1) {
-        methodStacks.get(currentSlice).addAll(currentStack);
-      }
-    }
+  public ImageProcessor getProcessor(int n) {
     int sliceIndex = planeIndexes == null ? n - 1 : planeIndexes[n - 1];
-    int[] pos = reader.getZCTCoords(sliceIndex);
-    if (merge) pos = new ChannelMerger(reader).getZCTCoords(sliceIndex);
+    int[] pos;
+    int sizeC;
+    synchronized (reader) {
+      reader.setSeries(series);
+      pos = reader.getZCTCoords(sliceIndex);
+      if (merge) pos = new ChannelMerger(reader).getZCTCoords(sliceIndex);
+      sizeC = reader.getSizeC();
+    }
     int[] cachePos = FormatTools.rasterToPosition(len, sliceIndex);
     ImageProcessor ip = null;
 
     try {
-      ip = (ImageProcessor) cache.getObject(cachePos);
-      cache.setCurrentPos(cachePos);
+      // queue the surrounding planes before waiting for this one
+      synchronized (cache) {
+        cache.setCurrentPos(cachePos);
+      }
+      ip = (ImageProcessor) cache.loadObject(cachePos);
     }
     catch (CacheException exc) {
       exc.printStackTrace();
     }
 
     // cache missed
-    try {
-      if (ip == null) {
-        ip = reader.openProcessors(reader.getIndex(pos[0], pos[1], pos[2]))[0];
-      }
-    }
-    catch (FormatException exc) {
-      exc.printStackTrace();
-    }
-    catch (IOException exc) {
-      exc.printStackTrace();
-    }
+    if (ip == null) ip = openProcessor(pos[0], pos[1], pos[2]);
 
     if (colorize) {
       // apply color table, if necessary
@@ -211,9 +231,7 @@ public class BFVirtualStack extends VirtualStack {
       if (ip != null) ip.setColorModel(model);
     }
     else if (merge) {
-      currentSlice = n - 1;
-      ImageProcessor[] otherChannels =
-        new ImageProcessor[reader.getSizeC() - 1];
+      ImageProcessor[] otherChannels = new ImageProcessor[sizeC - 1];
       for (int i=0; i<otherChannels.length; i++) {
         int channel = i >= pos[1] ? i + 1 : i;
         try {
@@ -224,40 +242,15 @@ public class BFVirtualStack extends VirtualStack {
           exc.printStackTrace();
         }
         if (otherChannels[i] == null) {
-          try {
-            int index = reader.getIndex(pos[0], channel, pos[2]);
-            otherChannels[i] = reader.openProcessors(index)[0];
-          }
-          catch (FormatException exc) {
-            exc.printStackTrace();
-          }
-          catch (IOException exc) {
-            exc.printStackTrace();
-          }
+          otherChannels[i] = openProcessor(pos[0], channel, pos[2]);
         }
       }
-      currentProcessor = new RecordedImageProcessor(ip, pos[1], otherChannels);
-      currentProcessor.setDoRecording(record);
-      if (calibrationTable == null) {
-        calibrationTable = currentProcessor.getChild().getCalibrationTable();
-      }
-      else {
-        currentProcessor.setCalibrationTable(calibrationTable);
-      }
-      return currentProcessor.getChild();
+      return setCurrentProcessor(n - 1,
+        new RecordedImageProcessor(ip, pos[1], otherChannels));
     }
 
     if (ip != null) {
-      currentSlice = n - 1;
-      currentProcessor = new RecordedImageProcessor(ip);
-      currentProcessor.setDoRecording(record);
-      if (calibrationTable == null) {
-        calibrationTable = currentProcessor.getChild().getCalibrationTable();
-      }
-      else {
-        currentProcessor.setCalibrationTable(calibrationTable);
-      }
-      return currentProcessor.getChild();
+      return setCurrentProcessor(n - 1, new RecordedImageProcessor(ip));
     }
 
     return null;
@@ -283,4 +276,50 @@ public class BFVirtualStack extends VirtualStack {
     return planeIndexes == null ? reader.getImageCount() : planeIndexes.length;
   }
 
+  // -- Helper methods --
+
+  /** Reads the given plane directly from the reader. */
+  private ImageProcessor openProcessor(int z, int c, int t) {
+    try {
+      synchronized (reader) {
+        reader.setSeries(series);
+        return reader.openProcessors(reader.getIndex(z, c, t))[0];
+      }
+    }
+    catch (FormatException exc) {
+      exc.printStackTrace();
+    }
+    catch (IOException exc) {
+      exc.printStackTrace();
+    }
+    return null;
+  }
+
+  /**
+   * Makes the given processor the current one, keeping the operations that
+   * were recorded on the previous current processor.
+   */
+  private ImageProcessor setCurrentProcessor(int slice,
+    RecordedImageProcessor processor)
+  {
+    processor.setDoRecording(record);
+    synchronized (methodStacks) {
+      if (currentSlice >= 0 && currentProcessor != null) {
+        List<MethodEntry> currentStack = currentProcessor.getMethodStack();
+        if (currentStack.size() > 1) {
+          methodStacks.get(currentSlice).addAll(currentStack);
+        }
+      }
+      currentSlice = slice;
+      currentProcessor = processor;
+      if (calibrationTable == null) {
+        calibrationTable = processor.getChild().getCalibrationTable();
+      }
+      else {
+        processor.setCalibrationTable(calibrationTable);
+      }
+    }
+    return processor.getChild();
+  }
+
 }
@@ -35,8 +35,11 @@ import ij.process.LUT;
 import ij.process.ShortProcessor;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 import loci.common.DataTools;
+import loci.common.Region;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
@@ -182,17 +185,26 @@ public class ImageProcessorReader extends ReaderWrapper {
   public ImageProcessor[] openProcessors(int no, int x, int y, int w, int h)
     throws FormatException, IOException
   {
-    // read byte array
-    byte[] b = openBytes(no, x, y, w, h);
-
     int c = getRGBChannelCount();
     int type = getPixelType();
     int bpp = FormatTools.getBytesPerPixel(type);
     boolean interleave = isInterleaved();
 
-    if (b.length != w * h * c * bpp && b.length != w * h * bpp) {
-      throw new FormatException("Invalid byte array length: " + b.length +
-        " (expected w=" + w + ", h=" + h + ", c=" + c + ", bpp=" + bpp + ")");
+    // read single channel planes directly into a primitive array,
+    // and other planes as a byte array that is split into channels
+    byte[] b = null;
+    Object samples = null;
+    if (c == 1) {
+      samples = openPlane(no, FormatTools.allocateSamples(type, w * h),
+        x, y, w, h);
+    }
+    else {
+      b = openBytes(no, x, y, w, h);
+      if (b.length != w * h * c * bpp && b.length != w * h * bpp) {
+        throw new FormatException("Invalid byte array length: " + b.length +
+          " (expected w=" + w + ", h=" + h + ", c=" + c + ", bpp=" + bpp +
+          ")");
+      }
     }
 
     // create a color model for this plane (null means default)
@@ -206,9 +218,12 @@ public class ImageProcessorReader extends ReaderWrapper {
     // construct image processors
     ImageProcessor[] ip = new ImageProcessor[c];
     for (int i=0; i<c; i++) {
-      byte[] channel =
-        ImageTools.splitChannels(b, i, c, bpp, false, interleave);
-      Object pixels = DataTools.makeDataArray(channel, bpp, isFloat, isLittle);
+      Object pixels = samples;
+      if (pixels == null) {
+        byte[] channel =
+          ImageTools.splitChannels(b, i, c, bpp, false, interleave);
+        pixels = DataTools.makeDataArray(channel, bpp, isFloat, isLittle);
+      }
       if (pixels instanceof byte[]) {
         byte[] q = (byte[]) pixels;
         if (q.length != w * h) {
@@ -279,6 +294,27 @@ public class ImageProcessorReader extends ReaderWrapper {
     return openProcessors(no, x, y, w, h);
   }
 
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    return reader.openPlane(no, buf, x, y, w, h);
+  }
+
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    return reader.openBytes(no, buf, x, y, w, h);
+  }
+
+  @Override
+  public List<byte[]> openBytes(int no, List<Region> regions,
+    List<byte[]> bufs) throws FormatException, IOException
+  {
+    return reader.openBytes(no, regions, bufs);
+  }
+
   // -- Helper methods --
 
   private LUT createColorModel() throws FormatException, IOException {
@@ -0,0 +1,270 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import loci.formats.CoreMetadata;
+import loci.formats.DimensionSwapper;
+import loci.formats.FileStitcher;
+import loci.formats.FormatException;
+import loci.formats.FormatReader;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.ReaderWrapper;
+import loci.formats.SwappableMetadata;
+import loci.formats.cache.CacheException;
+import loci.plugins.BF;
+
+/**
+ * Retrieves ImageJ image processors using a pool of copies of an image
+ * reader, so that several planes can be read at the same time.
+ * <p>
+ * The copies are created as needed, and are initialized on the same file,
+ * series and dimension orders as the given reader; the given reader itself
+ * is never used to read planes. If the reader cannot be copied, planes are
+ * read from the given reader one at a time instead.
+ */
+public class PooledImageProcessorSource extends ImageProcessorSource {
+
+  // -- Constants --
+
+  /**
+   * Milliseconds between checks for a failed copy while waiting for an idle
+   * reader copy.
+   */
+  private static final long WAIT_INTERVAL = 100;
+
+  // -- Fields --
+
+  /** Series from which to draw ImageProcessors. */
+  private final int series;
+
+  /** Maximum number of reader copies. */
+  private final int maxReaders;
+
+  /** Reader copies that are not currently in use. */
+  private final BlockingQueue<ImageProcessorReader> idle =
+    new LinkedBlockingQueue<ImageProcessorReader>();
+
+  /** All reader copies that have been created. */
+  private final List<ImageProcessorReader> readers =
+    new ArrayList<ImageProcessorReader>();
+
+  /** Number of reader copies that have been created or are being created. */
+  private int created;
+
+  /** Whether the reader could not be copied. */
+  private volatile boolean shared;
+
+  private volatile boolean closed;
+
+  // -- Constructors --
+
+  /**
+   * Constructs a source that reads from at most the given number of copies
+   * of the given reader.
+   */
+  public PooledImageProcessorSource(IFormatReader reader, int maxReaders) {
+    super(reader);
+    this.series = reader.getSeries();
+    this.maxReaders = Math.max(1, maxReaders);
+  }
+
+  // -- PooledImageProcessorSource API methods --
+
+  /** Closes all of the reader copies. */
+  public void close() throws IOException {
+    closed = true;
+    synchronized (readers) {
+      for (ImageProcessorReader r : readers) {
+        r.close();
+      }
+      readers.clear();
+    }
+    idle.clear();
+  }
+
+  // -- ICacheSource API methods --
+
+  /* @see loci.formats.cache.ICacheSource#getObject(int) */
+  @Override
+  public Object getObject(int index) throws CacheException {
+    if (closed) throw new CacheException("source is closed");
+    if (shared) {
+      synchronized (reader) {
+        reader.setSeries(series);
+        return super.getObject(index);
+      }
+    }
+
+    ImageProcessorReader r = acquire();
+    if (r == null) return getObject(index);
+    try {
+      return r.openProcessors(index)[0];
+    }
+    catch (FormatException exc) {
+      throw new CacheException(exc);
+    }
+    catch (IOException exc) {
+      throw new CacheException(exc);
+    }
+    finally {
+      idle.offer(r);
+    }
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Takes an idle reader copy, creating one if there are fewer than the
+   * maximum number, or waiting for one otherwise.  Returns null if the
+   * reader cannot be copied.
+   */
+  private ImageProcessorReader acquire() throws CacheException {
+    ImageProcessorReader r = idle.poll();
+    if (r != null) return r;
+
+    boolean create;
+    synchronized (readers) {
+      create = created < maxReaders;
+      if (create) created++;
+    }
+    if (!create) {
+      try {
+        while (!shared) {
+          r = idle.poll(WAIT_INTERVAL, TimeUnit.MILLISECONDS);
+          if (r != null) return r;
+        }
+        return null;
+      }
+      catch (InterruptedException exc) {
+        throw new CacheException(exc);
+      }
+    }
+
+    try {
+      r = createReader();
+    }
+    catch (FormatException exc) {
+      BF.debug("Could not copy reader: " + exc.getMessage());
+    }
+    catch (IOException exc) {
+      BF.debug("Could not copy reader: " + exc.getMessage());
+    }
+    synchronized (readers) {
+      if (r == null) shared = true;
+      else if (!closed) readers.add(r);
+    }
+    if (r != null && closed) {
+      try {
+        r.close();
+      }
+      catch (IOException exc) {
+        BF.debug("Could not close reader: " + exc.getMessage());
+      }
+      throw new CacheException("source is closed");
+    }
+    return r;
+  }
+
+  /**
+   * Creates a copy of the reader, initialized on the same file with the same
+   * settings.  The input and output dimension orders of each
+   * {@link DimensionSwapper} in the reader stack are copied as well.
+   *
+   * @throws FormatException if the reader stack contains a
+   *   {@link FileStitcher}, or a reader other than a {@link ReaderWrapper},
+   *   {@link ImageReader} or {@link FormatReader}, as the configuration of
+   *   such a reader is not copied
+   */
+  private ImageProcessorReader createReader()
+    throws FormatException, IOException
+  {
+    // use the same format reader as the original, if possible
+    Class<? extends IFormatReader> readerClass = null;
+    IFormatReader base = reader;
+    while (base instanceof ReaderWrapper) {
+      if (base instanceof FileStitcher) {
+        throw new FormatException("FileStitcher cannot be copied");
+      }
+      base = ((ReaderWrapper) base).getReader();
+    }
+    if (base instanceof ImageReader) {
+      readerClass = ((ImageReader) base).getReader().getClass();
+    }
+    else if (!(base instanceof FormatReader)) {
+      throw new FormatException(base.getClass().getName() +
+        " cannot be copied");
+    }
+
+    ImageProcessorReader copy =
+      (ImageProcessorReader) reader.duplicate(readerClass);
+    copy.setGroupFiles(reader.isGroupFiles());
+    copy.setOriginalMetadataPopulated(reader.isOriginalMetadataPopulated());
+    copy.setFlattenedResolutions(reader.hasFlattenedResolutions());
+    copy.setMetadataOptions(reader.getMetadataOptions());
+    copy.setId(reader.getCurrentFile());
+
+    IFormatReader original = reader;
+    IFormatReader r = copy;
+    while (original instanceof ReaderWrapper) {
+      if (original instanceof DimensionSwapper) {
+        copyOrders((DimensionSwapper) original, (DimensionSwapper) r);
+      }
+      original = ((ReaderWrapper) original).getReader();
+      r = ((ReaderWrapper) r).getReader();
+    }
+
+    copy.setSeries(series);
+    return copy;
+  }
+
+  /**
+   * Copies the input and output dimension orders of every series and
+   * resolution from one dimension swapper to another.
+   */
+  private static void copyOrders(DimensionSwapper from, DimensionSwapper to) {
+    List<CoreMetadata> core = from.getCoreMetadataList();
+    for (int i=0; i<core.size(); i++) {
+      to.setCoreIndex(i);
+      CoreMetadata m = core.get(i);
+      if (m instanceof SwappableMetadata) {
+        String inputOrder = ((SwappableMetadata) m).inputOrder;
+        if (inputOrder != null) to.swapDimensions(inputOrder);
+      }
+      to.setOutputOrder(m.dimensionOrder);
+    }
+  }
+
+}
@@ -97,8 +97,12 @@ public class VirtualImagePlus extends ImagePlus {
 
   @Override
   public void close() {
+    ImageStack stack = getStack();
     super.close();
     try {
+      if (stack instanceof BFVirtualStack) {
+        ((BFVirtualStack) stack).close();
+      }
       r.close();
     }
     catch (IOException e) { }
@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import static org.testng.Assert.assertEquals;
+
+import ij.process.ImageProcessor;
+
+import loci.common.Location;
+import loci.formats.ChannelSeparator;
+import loci.formats.DimensionSwapper;
+import loci.formats.FileStitcher;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that {@link PooledImageProcessorSource} returns the same planes as
+ * the reader that it copies.
+ */
+public class PooledImageProcessorSourceTest {
+
+  // -- Constants --
+
+  private static final String ID =
+    "test&sizeZ=3&sizeC=2&sizeT=4&series=2&dimOrder=XYZCT.fake";
+
+  // -- Fields --
+
+  private ImageProcessorReader reader;
+  private PooledImageProcessorSource source;
+
+  // -- Setup methods --
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    if (source != null) source.close();
+    if (reader != null) reader.close();
+    source = null;
+    reader = null;
+    Location.reset();
+  }
+
+  // -- Tests --
+
+  @Test
+  public void testSwappedOrder() throws Exception {
+    DimensionSwapper swapper = open(new ImageReader());
+    swapper.swapDimensions("XYTCZ");
+    swapper.setOutputOrder("XYCZT");
+    assertEquals(reader.getSizeZ(), 4);
+    assertEquals(reader.getSizeT(), 3);
+
+    assertSamePlanes(0);
+  }
+
+  @Test
+  public void testSwappedOrderPerSeries() throws Exception {
+    DimensionSwapper swapper = open(new ImageReader());
+    swapper.setOutputOrder("XYTZC");
+    reader.setSeries(1);
+    swapper.swapDimensions("XYCTZ");
+    swapper.setOutputOrder("XYCZT");
+
+    assertSamePlanes(1);
+    assertSamePlanes(0);
+  }
+
+  @Test
+  public void testSharedReader() throws Exception {
+    String template = "stitch_T%s&sizeZ=2&sizeC=2.fake";
+    for (int t=1; t<=3; t++) {
+      Location.mapId(String.format(template, t), "stitch");
+    }
+
+    // a FileStitcher cannot be copied, so the planes are read from the
+    // given reader instead
+    DimensionSwapper swapper = open(new FileStitcher(true),
+      String.format(template, "<1-3>"));
+    assertEquals(reader.getImageCount(), 12);
+    swapper.swapDimensions("XYTCZ");
+    swapper.setOutputOrder("XYCZT");
+
+    assertSamePlanes(0);
+  }
+
+  // -- Helper methods --
+
+  /** Initializes the reader stack; returns its dimension swapper. */
+  private DimensionSwapper open(IFormatReader base) throws Exception {
+    return open(base, ID);
+  }
+
+  /**
+   * Initializes the reader stack on the given file; returns its dimension
+   * swapper.
+   */
+  private DimensionSwapper open(IFormatReader base, String id)
+    throws Exception
+  {
+    DimensionSwapper swapper =
+      new DimensionSwapper(new ChannelSeparator(base));
+    reader = new ImageProcessorReader(swapper);
+    reader.setId(id);
+    return swapper;
+  }
+
+  /**
+   * Checks that every plane of the given series read through a pool matches
+   * the plane read from the original reader.
+   */
+  private void assertSamePlanes(int series) throws Exception {
+    reader.setSeries(series);
+    source = new PooledImageProcessorSource(reader, 2);
+    for (int i=0; i<reader.getImageCount(); i++) {
+      ImageProcessor expected = reader.openProcessors(i)[0];
+      ImageProcessor actual = (ImageProcessor) source.getObject(i);
+      // the first pixels of a fake plane hold its series, index, Z, C and T
+      for (int x=0; x<=40; x+=10) {
+        assertEquals(actual.getPixelValue(x, 0),
+          expected.getPixelValue(x, 0), "plane " + i + ", x=" + x);
+      }
+      assertEquals(actual.getPixels(), expected.getPixels());
+    }
+    source.close();
+  }
+
+}
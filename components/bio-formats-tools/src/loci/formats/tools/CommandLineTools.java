@@ -32,7 +32,12 @@
 
 package loci.formats.tools;
 
+import java.io.File;
+import java.io.IOException;
+
 import loci.common.DataTools;
+import loci.common.metrics.MetricsRegistry;
+import loci.common.metrics.TraceLog;
 import loci.formats.FormatTools;
 import loci.formats.UpgradeChecker;
 
@@ -51,6 +56,10 @@ public final class CommandLineTools {
 
   public static final String NO_UPGRADE_CHECK = "-no-upgrade";
 
+  public static final String METRICS = "-metrics";
+
+  public static final String IO_TRACE = "-iotrace";
+
   public static void printVersion() {
     System.out.println("Version: " + FormatTools.VERSION);
     System.out.println("VCS revision: " + FormatTools.VCS_REVISION);
@@ -71,4 +80,54 @@ public final class CommandLineTools {
       LOGGER.info("***   'upgradechecker -install'        ***");
     }
   }
+
+  /** Clears any recorded metrics and starts recording I/O and decoding. */
+  public static void enableMetrics() {
+    MetricsRegistry.reset();
+    MetricsRegistry.setEnabled(true);
+  }
+
+  /** Logs a summary of the metrics recorded since {@link #enableMetrics}. */
+  public static void printMetrics() {
+    String summary = MetricsRegistry.getSummary();
+    LOGGER.info("");
+    LOGGER.info("Metrics:");
+    if (summary.isEmpty()) {
+      LOGGER.info("\tnone recorded");
+    }
+    for (String line : summary.split("\n")) {
+      if (!line.isEmpty()) LOGGER.info("\t{}", line);
+    }
+  }
+
+  /**
+   * Starts recording every read and seek made through newly opened
+   * handles to the given trace file, which can then be replayed with
+   * {@link TraceReplay}.  The trace is also closed if the JVM exits before
+   * {@link #stopTrace()} is called.
+   */
+  public static void startTrace(String path) throws IOException {
+    final TraceLog log = new TraceLog(new File(path));
+    TraceLog.setGlobal(log);
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        try {
+          log.close();
+        }
+        catch (IOException e) {
+          LOGGER.debug("Could not close I/O trace", e);
+        }
+      }
+    });
+  }
+
+  /** Stops recording and closes the trace file. */
+  public static void stopTrace() throws IOException {
+    TraceLog log = TraceLog.getGlobal();
+    TraceLog.setGlobal(null);
+    if (log != null) {
+      log.close();
+    }
+  }
 }
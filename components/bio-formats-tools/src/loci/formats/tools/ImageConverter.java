@@ -96,6 +96,8 @@ public final class ImageConverter {
   private boolean bigtiff = false, group = true;
   private boolean printVersion = false;
   private boolean autoscale = false;
+  private boolean metrics = false;
+  private String ioTrace = null;
   private Boolean overwrite = null;
   private int series = -1;
   private int firstPlane = 0;
@@ -139,6 +141,10 @@ public final class ImageConverter {
         else if (args[i].equals("-compression")) compression = args[++i];
         else if (args[i].equals("-nogroup")) group = false;
         else if (args[i].equals("-autoscale")) autoscale = true;
+        else if (args[i].equals(CommandLineTools.METRICS)) metrics = true;
+        else if (args[i].equals(CommandLineTools.IO_TRACE)) {
+          ioTrace = args[++i];
+        }
         else if (args[i].equals("-overwrite")) {
           overwrite = true;
         }
@@ -216,7 +222,7 @@ public final class ImageConverter {
       "    [-bigtiff] [-compression codec] [-series series] [-map id]",
       "    [-range start end] [-crop x,y,w,h] [-channel channel] [-z Z]",
       "    [-timepoint timepoint] [-nogroup] [-autoscale] [-version]",
-      "    [-no-upgrade] in_file out_file",
+      "    [-no-upgrade] [-metrics] [-iotrace file] in_file out_file",
       "",
       "    -version: print the library version and exit",
       " -no-upgrade: do not perform the upgrade check",
@@ -241,6 +247,9 @@ public final class ImageConverter {
       "    -channel: only convert the specified channel (indexed from 0)",
       "          -z: only convert the specified Z section (indexed from 0)",
       "  -timepoint: only convert the specified timepoint (indexed from 0)",
+      "    -metrics: print I/O, decoding and timing metrics when done",
+      "    -iotrace: record every read and seek to the given file, for",
+      "              replaying with tracereplay",
       "",
       "If any of the following patterns are present in out_file, they will",
       "be replaced with the indicated metadata value from the input file.",
@@ -321,6 +330,8 @@ public final class ImageConverter {
     }
 
     if (map != null) Location.mapId(in, map);
+    if (metrics) CommandLineTools.enableMetrics();
+    if (ioTrace != null) CommandLineTools.startTrace(ioTrace);
 
     long start = System.currentTimeMillis();
     LOGGER.info(in);
@@ -582,6 +593,8 @@ public final class ImageConverter {
     float writeAvg = (float) write / total;
     LOGGER.info("{}s elapsed ({}+{}ms per plane, {}ms overhead)",
       new Object[] {sec, readAvg, writeAvg, initial});
+    if (metrics) CommandLineTools.printMetrics();
+    if (ioTrace != null) CommandLineTools.stopTrace();
 
     return true;
   }
@@ -121,6 +121,8 @@ public class ImageInfo {
   private boolean omexmlOnly = false;
   private boolean validate = true;
   private boolean flat = true;
+  private boolean metrics = false;
+  private String ioTrace = null;
   private String omexmlVersion = null;
   private int start = 0;
   private int end = Integer.MAX_VALUE;
@@ -171,6 +173,8 @@ public class ImageInfo {
     omexmlOnly = false;
     validate = true;
     flat = true;
+    metrics = false;
+    ioTrace = null;
     omexmlVersion = null;
     xmlSpaces = 3;
     start = 0;
@@ -228,6 +232,10 @@ public class ImageInfo {
         else if (args[i].equals("-preload")) preload = true;
         else if (args[i].equals("-ascii")) ascii = true;
         else if (args[i].equals("-nousedfiles")) usedFiles = false;
+        else if (args[i].equals(CommandLineTools.METRICS)) metrics = true;
+        else if (args[i].equals(CommandLineTools.IO_TRACE)) {
+          ioTrace = args[++i];
+        }
         else if (args[i].equals("-xmlversion")) omexmlVersion = args[++i];
         else if (args[i].equals("-xmlspaces")) {
           xmlSpaces = Integer.parseInt(args[++i]);
@@ -296,7 +304,7 @@ public class ImageInfo {
       "    [-resolution num] [-swap inputOrder] [-shuffle outputOrder]",
       "    [-map id] [-preload] [-crop x,y,w,h] [-autoscale] [-novalid]",
       "    [-omexml-only] [-no-sas] [-no-upgrade] [-noflat] [-format Format]",
-      "    [-cache] [-cache-dir dir]",
+      "    [-cache] [-cache-dir dir] [-metrics] [-iotrace file]",
       "",
       "    -version: print the library version and exit",
       "        file: the image file to read",
@@ -337,6 +345,9 @@ public class ImageInfo {
       "  -cache-dir: use the specified directory to store the cached",
       "              initialized reader. If unspecified, the cached reader",
       "              will be stored under the same folder as the image file",
+      "    -metrics: print I/O, decoding and timing metrics when done",
+      "    -iotrace: record every read and seek to the given file, for",
+      "              replaying with tracereplay",
       "",
       "* = may result in loss of precision",
       ""
@@ -1024,6 +1035,8 @@ public class ImageInfo {
       return false;
     }
 
+    if (metrics) CommandLineTools.enableMetrics();
+    if (ioTrace != null) CommandLineTools.startTrace(ioTrace);
     mapLocation();
     configureReaderPreInit();
 
@@ -1065,6 +1078,9 @@ public class ImageInfo {
       reader.close();
     }
 
+    if (metrics) CommandLineTools.printMetrics();
+    if (ioTrace != null) CommandLineTools.stopTrace();
+
     return true;
   }
 
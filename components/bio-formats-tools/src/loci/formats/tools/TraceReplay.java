@@ -0,0 +1,373 @@
+/*
+ * #%L
+ * Bio-Formats command line tools for reading and converting files
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import loci.common.DebugTools;
+import loci.common.metrics.TraceLog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays an I/O trace recorded with {@link TraceLog} against local copies
+ * of the traced files, optionally adding latency to each storage request,
+ * and reports how efficiently the reader used the storage: the number of
+ * reads and seeks, the read amplification of a block-based storage model,
+ * and how few requests would be needed if nearby reads were coalesced.
+ */
+public class TraceReplay {
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(TraceReplay.class);
+
+  // -- Fields --
+
+  private String trace;
+  private String file;
+  private Map<String, String> map = new HashMap<String, String>();
+  private double latency = 0;
+  private int blockSize = 0;
+  private int cacheBlocks = 64;
+  private long gap = 0;
+
+  // -- TraceReplay methods --
+
+  public boolean parseArgs(String[] args) {
+    if (args == null || args.length == 0) {
+      return false;
+    }
+    try {
+      for (int i=0; i<args.length; i++) {
+        if (args[i].startsWith("-")) {
+          if (args[i].equals("-file")) file = args[++i];
+          else if (args[i].equals("-map")) {
+            map.put(args[i + 1], args[i + 2]);
+            i += 2;
+          }
+          else if (args[i].equals("-latency")) {
+            latency = Double.parseDouble(args[++i]);
+          }
+          else if (args[i].equals("-block")) {
+            blockSize = Integer.parseInt(args[++i]);
+          }
+          else if (args[i].equals("-cache")) {
+            cacheBlocks = Integer.parseInt(args[++i]);
+          }
+          else if (args[i].equals("-gap")) gap = Long.parseLong(args[++i]);
+          else if (args[i].equals("-debug")) {
+            DebugTools.setRootLevel("DEBUG");
+          }
+          else {
+            LOGGER.error("Found unknown command flag: {}; exiting.", args[i]);
+            return false;
+          }
+        }
+        else if (trace == null) trace = args[i];
+        else {
+          LOGGER.error("Found unknown argument: {}; exiting.", args[i]);
+          return false;
+        }
+      }
+    }
+    catch (ArrayIndexOutOfBoundsException e) {
+      LOGGER.error("Missing value for the last command flag; exiting.");
+      return false;
+    }
+    catch (NumberFormatException e) {
+      LOGGER.error("Invalid number: {}; exiting.", e.getMessage());
+      return false;
+    }
+    return trace != null;
+  }
+
+  public void printUsage() {
+    String[] s = {
+      "To replay an I/O trace recorded with 'showinf -iotrace', run:",
+      "  tracereplay trace [-file local] [-map original local]",
+      "    [-latency ms] [-block bytes] [-cache blocks] [-gap bytes]",
+      "    [-debug]",
+      "",
+      "      trace: the trace file to replay",
+      "      -file: read every traced file from this local file",
+      "       -map: read the traced file 'original' from 'local'; may be",
+      "             repeated (default: read the original paths)",
+      "   -latency: milliseconds to wait for each storage request",
+      "             (default: 0)",
+      "     -block: fetch whole aligned blocks of this size from storage,",
+      "             as a network file system would (default: 0, fetch",
+      "             exactly the bytes that were read)",
+      "     -cache: number of fetched blocks to keep (default: 64)",
+      "       -gap: coalesce reads separated by at most this many bytes",
+      "             when computing ideal coalescing (default: 0)",
+      "     -debug: turn on debugging output",
+      ""
+    };
+    for (int i=0; i<s.length; i++) {
+      LOGGER.info(s[i]);
+    }
+  }
+
+  /** Replays the trace given on the command line and logs a report. */
+  public boolean replay(String[] args) throws IOException {
+    DebugTools.enableLogging("INFO");
+    if (!parseArgs(args)) {
+      printUsage();
+      return false;
+    }
+
+    List<TraceLog.Event> events = TraceLog.readEvents(new File(trace));
+    Storage storage = new Storage();
+    Map<Integer, String> paths = new HashMap<Integer, String>();
+    Map<Integer, Long> positions = new HashMap<Integer, Long>();
+    Map<String, List<long[]>> ranges = new HashMap<String, List<long[]>>();
+    long reads = 0, bytes = 0, seeks = 0, jumps = 0;
+
+    long start = System.nanoTime();
+    try {
+      for (TraceLog.Event event : events) {
+        int handle = event.getHandle();
+        switch (event.getType()) {
+          case TraceLog.OPEN:
+            String path = getLocalPath(event.getId());
+            paths.put(handle, path);
+            storage.open(path);
+            break;
+          case TraceLog.READ:
+            reads++;
+            bytes += event.getLength();
+            Long position = positions.get(handle);
+            if (position == null || position != event.getOffset()) jumps++;
+            positions.put(handle, event.getOffset() + event.getLength());
+
+            path = paths.get(handle);
+            List<long[]> list = ranges.get(path);
+            if (list == null) {
+              list = new ArrayList<long[]>();
+              ranges.put(path, list);
+            }
+            list.add(new long[] {event.getOffset(),
+              event.getOffset() + event.getLength()});
+            storage.read(path, event.getOffset(), event.getLength());
+            break;
+          case TraceLog.SEEK:
+            seeks++;
+            positions.put(handle, event.getOffset());
+            break;
+          default:
+            break;
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      LOGGER.error("Replay was interrupted");
+      return false;
+    }
+    finally {
+      storage.close();
+    }
+    double elapsed = (System.nanoTime() - start) / 1e6;
+
+    long unique = 0, coalesced = 0, coalescedBytes = 0;
+    for (List<long[]> list : ranges.values()) {
+      unique += sum(merge(list, 0));
+      List<long[]> merged = merge(list, gap);
+      coalesced += merged.size();
+      coalescedBytes += sum(merged);
+    }
+
+    LOGGER.info("Replayed {} events from {} in {} ms",
+      new Object[] {events.size(), trace, String.format("%.1f", elapsed)});
+    LOGGER.info("Reads: {} ({} bytes, {} unique)",
+      new Object[] {reads, bytes, unique});
+    LOGGER.info("Seeks: {} ({} reads did not continue the previous read)",
+      seeks, jumps);
+    LOGGER.info("Storage requests: {} ({} bytes fetched)",
+      storage.requests, storage.fetched);
+    LOGGER.info("Read amplification: {}",
+      String.format("%.2f", bytes == 0 ? 0 : (double) storage.fetched / bytes));
+    LOGGER.info("Ideal coalescing (gap {} bytes): {} requests ({} bytes)",
+      new Object[] {gap, coalesced, coalescedBytes});
+    if (latency > 0) {
+      LOGGER.info("Latency cost: {} ms as replayed, {} ms if coalesced",
+        String.format("%.1f", storage.requests * latency),
+        String.format("%.1f", coalesced * latency));
+    }
+    return true;
+  }
+
+  // -- Helper methods --
+
+  private String getLocalPath(String id) {
+    if (file != null) return file;
+    String path = map.get(id);
+    return path == null ? id : path;
+  }
+
+  /**
+   * Merges ranges that overlap or are separated by at most the given
+   * number of bytes.
+   */
+  private static List<long[]> merge(List<long[]> ranges, long gap) {
+    List<long[]> sorted = new ArrayList<long[]>(ranges);
+    Collections.sort(sorted, new Comparator<long[]>() {
+      @Override
+      public int compare(long[] a, long[] b) {
+        return a[0] < b[0] ? -1 : a[0] > b[0] ? 1 : 0;
+      }
+    });
+    List<long[]> merged = new ArrayList<long[]>();
+    long[] current = null;
+    for (long[] range : sorted) {
+      if (current != null && range[0] <= current[1] + gap) {
+        current[1] = Math.max(current[1], range[1]);
+      }
+      else {
+        current = range.clone();
+        merged.add(current);
+      }
+    }
+    return merged;
+  }
+
+  private static long sum(List<long[]> ranges) {
+    long total = 0;
+    for (long[] range : ranges) {
+      total += range[1] - range[0];
+    }
+    return total;
+  }
+
+  // -- Helper classes --
+
+  /** Simulated storage that serves reads from local files. */
+  private class Storage {
+    private final Map<String, RandomAccessFile> files =
+      new HashMap<String, RandomAccessFile>();
+
+    /** Recently fetched blocks, in least recently used order. */
+    private final Map<String, Boolean> blocks =
+      new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> e) {
+          return size() > cacheBlocks;
+        }
+      };
+
+    private byte[] buffer = new byte[0];
+    private long requests;
+    private long fetched;
+
+    void open(String path) throws IOException {
+      if (!files.containsKey(path)) {
+        files.put(path, new RandomAccessFile(path, "r"));
+      }
+    }
+
+    void read(String path, long offset, long length)
+      throws IOException, InterruptedException
+    {
+      if (blockSize <= 0) {
+        fetch(path, offset, length);
+        return;
+      }
+      long first = offset / blockSize;
+      long last = (offset + length - 1) / blockSize;
+      long run = -1;
+      for (long block=first; block<=last; block++) {
+        if (blocks.get(path + ":" + block) != null) {
+          if (run >= 0) fetchBlocks(path, run, block);
+          run = -1;
+        }
+        else if (run < 0) {
+          run = block;
+        }
+      }
+      if (run >= 0) fetchBlocks(path, run, last + 1);
+    }
+
+    /** Fetches the blocks from first (inclusive) to last (exclusive). */
+    private void fetchBlocks(String path, long first, long last)
+      throws IOException, InterruptedException
+    {
+      fetch(path, first * blockSize, (last - first) * blockSize);
+      for (long block=first; block<last; block++) {
+        blocks.put(path + ":" + block, Boolean.TRUE);
+      }
+    }
+
+    private void fetch(String path, long offset, long length)
+      throws IOException, InterruptedException
+    {
+      requests++;
+      if (latency > 0) {
+        long nanos = (long) (latency * 1e6);
+        Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+      }
+      RandomAccessFile in = files.get(path);
+      int n = (int) Math.max(0, Math.min(length, in.length() - offset));
+      if (n < length) {
+        LOGGER.debug("{} is shorter than the traced file", path);
+      }
+      if (buffer.length < n) buffer = new byte[n];
+      in.seek(offset);
+      in.readFully(buffer, 0, n);
+      fetched += n;
+    }
+
+    void close() throws IOException {
+      for (RandomAccessFile in : files.values()) {
+        in.close();
+      }
+    }
+  }
+
+  // -- Main method --
+
+  public static void main(String[] args) throws Exception {
+    if (!new TraceReplay().replay(args)) {
+      System.exit(1);
+    }
+  }
+
+}
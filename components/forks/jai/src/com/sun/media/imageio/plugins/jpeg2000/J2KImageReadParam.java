@@ -109,6 +109,13 @@ import javax.imageio.ImageReadParam;
  *    The default value, -1, means to use the resolution level at encoding.
  *    </td>
  * </tr>
+ * <tr>
+ *    <td>qualityLayers</td>
+ *    <td>Specifies the maximum number of quality layers to decode for
+ *    each code-block.  Decoding fewer layers gives a lower quality image
+ *    with less work.  The default value, -1, means to decode all layers.
+ *    </td>
+ * </tr>
  * </table>
  */
 public class J2KImageReadParam extends ImageReadParam {
@@ -130,6 +137,11 @@ public class J2KImageReadParam extends ImageReadParam {
      */
     private int resolution = -1;
 
+    /** Specifies the maximum number of quality layers to decode for each
+     *  code-block, or -1 to decode all layers.
+     */
+    private int qualityLayers = -1;
+
     /** Constructs a default instance of <code>J2KImageReadParam</code>. */
     public J2KImageReadParam() {
         super();
@@ -176,4 +188,26 @@ public class J2KImageReadParam extends ImageReadParam {
     public int getResolution() {
         return resolution;
     }
+
+    /**
+     * Sets <code>qualityLayers</code>.
+     *
+     * @param layers the maximum number of quality layers to decode,
+     * or -1 to decode all layers.
+     * @see #getQualityLayers()
+     */
+    public void setQualityLayers(int layers) {
+        this.qualityLayers = layers > 0 ? layers : -1;
+    }
+
+    /**
+     * Gets <code>qualityLayers</code>.
+     *
+     * @return the maximum number of quality layers to decode,
+     * or -1 if all layers are decoded.
+     * @see #setQualityLayers(int)
+     */
+    public int getQualityLayers() {
+        return qualityLayers;
+    }
 }
@@ -174,6 +174,7 @@ public class J2KImageReadParamJava extends J2KImageReadParam {
         }
         setDecodingRate(j2kParam.getDecodingRate());
         setResolution(j2kParam.getResolution());
+        setQualityLayers(j2kParam.getQualityLayers());
     }
 
     /** Sets <code>noROIDescaling</code> */
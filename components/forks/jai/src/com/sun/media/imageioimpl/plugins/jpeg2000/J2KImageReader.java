@@ -469,21 +469,30 @@ public class J2KImageReader extends ImageReader implements MsgLogger {
 
         param = new J2KImageReadParamJava(param);
 
-        if (!ignoreMetadata) {
-            imageMetadata = new J2KMetadata();
-            iis.seek(streamPosition0);
-            readState = new J2KReadState(iis,
-                                         (J2KImageReadParamJava)param,
-                                         imageMetadata,
-                                         this);
-        } else {
-            iis.seek(streamPosition0);
-            readState = new J2KReadState(iis,
-                                         (J2KImageReadParamJava)param,
-                                         this);
-        }
+        // Route messages from this thread to this reader, even if other
+        // readers are decoding concurrently
+        Thread thread = Thread.currentThread();
+        FacilityManager.registerMsgLogger(thread, this);
+        BufferedImage bi;
+        try {
+            if (!ignoreMetadata) {
+                imageMetadata = new J2KMetadata();
+                iis.seek(streamPosition0);
+                readState = new J2KReadState(iis,
+                                             (J2KImageReadParamJava)param,
+                                             imageMetadata,
+                                             this);
+            } else {
+                iis.seek(streamPosition0);
+                readState = new J2KReadState(iis,
+                                             (J2KImageReadParamJava)param,
+                                             this);
+            }
 
-        BufferedImage bi = readState.readBufferedImage();
+            bi = readState.readBufferedImage();
+        } finally {
+            FacilityManager.unregisterMsgLogger(thread);
+        }
         if (abortRequested())
             processReadAborted();
         else
@@ -539,21 +548,30 @@ public class J2KImageReader extends ImageReader implements MsgLogger {
         }
         param = new J2KImageReadParamJava(param);
 
-        if (!ignoreMetadata) {
-            imageMetadata = new J2KMetadata();
-            iis.seek(streamPosition0);
-            readState = new J2KReadState(iis,
-                                         (J2KImageReadParamJava)param,
-                                         imageMetadata,
-                                         this);
-        } else {
-            iis.seek(streamPosition0);
-            readState = new J2KReadState(iis,
-                                         (J2KImageReadParamJava)param,
-                                         this);
-        }
+        // Route messages from this thread to this reader, even if other
+        // readers are decoding concurrently
+        Thread thread = Thread.currentThread();
+        FacilityManager.registerMsgLogger(thread, this);
+        Raster ras;
+        try {
+            if (!ignoreMetadata) {
+                imageMetadata = new J2KMetadata();
+                iis.seek(streamPosition0);
+                readState = new J2KReadState(iis,
+                                             (J2KImageReadParamJava)param,
+                                             imageMetadata,
+                                             this);
+            } else {
+                iis.seek(streamPosition0);
+                readState = new J2KReadState(iis,
+                                             (J2KImageReadParamJava)param,
+                                             this);
+            }
 
-        Raster ras = readState.readAsRaster();
+            ras = readState.readAsRaster();
+        } finally {
+            FacilityManager.unregisterMsgLogger(thread);
+        }
         if (abortRequested())
             processReadAborted();
         else
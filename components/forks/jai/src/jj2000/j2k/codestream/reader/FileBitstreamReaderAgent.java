@@ -290,8 +290,10 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                             "the same time.");
         }
 
-//        lQuit = j2krparam.getLQuit();
-        lQuit = -1;
+        // Layers are numbered from 1, and the quit condition excludes
+        // layer lQuit itself
+        int qualityLayers = j2krparam.getQualityLayers();
+        lQuit = qualityLayers > 0 ? qualityLayers + 1 : -1;
 
         // initializations
         nt = ntX * ntY;
@@ -108,7 +108,7 @@ public class FacilityManager {
     private final static Hashtable loggerList = new Hashtable();
 
     /** The default logger, for threads that have none associated with them */
-    private static MsgLogger defMsgLogger =
+    private static volatile MsgLogger defMsgLogger =
         new StreamMsgLogger(System.out,System.err,78);
 
     /** The ProgressWatch instance associated to different threads */
@@ -165,6 +165,18 @@ public class FacilityManager {
         }
     }
 
+    /**
+     * Removes the MsgLogger registered with the thread 't', if any, so that
+     * the thread uses the default message logger again.
+     *
+     * @param t The thread whose MsgLogger should be removed
+     * */
+    public static void unregisterMsgLogger(Thread t) {
+        if (t != null) {
+            loggerList.remove(t);
+        }
+    }
+
     /**
      * Returns the MsgLogger registered with the current thread (the
      * thread that calls this method). If the current thread has no registered
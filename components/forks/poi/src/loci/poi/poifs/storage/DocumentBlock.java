@@ -121,6 +121,9 @@ public class DocumentBlock
 
     public int getBigBlockSize() { return blockSize; }
 
+    /** Get the offset of this block within the underlying file. */
+    public long getOffset() { return offset; }
+
     /**
      * Was this a partially read block?
      *
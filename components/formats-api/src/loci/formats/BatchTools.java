@@ -0,0 +1,299 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import loci.common.RandomAccessInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utility methods for readers that read many chunks of a file at once,
+ * such as the tiles needed by
+ * {@link IFormatReader#openBytes(int, java.util.List, java.util.List)}.
+ *
+ * Chunks are sorted by file offset, and chunks that are adjacent or close
+ * together are fetched with a single read, which greatly reduces the
+ * number of requests made to high-latency storage.  The fetched chunks can
+ * then be decoded in parallel.
+ */
+public final class BatchTools {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(BatchTools.class);
+
+  /**
+   * Default maximum number of unused bytes between two chunks that are
+   * fetched with a single read.
+   */
+  public static final int DEFAULT_MAX_GAP = 64 * 1024;
+
+  /** Default maximum number of bytes fetched with a single read. */
+  public static final int DEFAULT_MAX_READ = 16 * 1024 * 1024;
+
+  /**
+   * System property that defines the number of threads used to decode
+   * chunks.  Defaults to the number of processors, up to 4.
+   */
+  public static final String THREADS_PROPERTY = "loci.formats.batch.threads";
+
+  // -- Static fields --
+
+  private static ExecutorService executor;
+
+  private static int threads;
+
+  // -- Constructor --
+
+  private BatchTools() { }
+
+  // -- Utility methods - reading --
+
+  /**
+   * Reads the given chunks of a stream using
+   * {@link #DEFAULT_MAX_GAP} and {@link #DEFAULT_MAX_READ}.
+   *
+   * @see #readChunks(RandomAccessInputStream, long[], int[], int, int)
+   */
+  public static byte[][] readChunks(RandomAccessInputStream in,
+    long[] offsets, int[] lengths) throws IOException
+  {
+    return readChunks(in, offsets, lengths, DEFAULT_MAX_GAP, DEFAULT_MAX_READ);
+  }
+
+  /**
+   * Reads the given chunks of a stream.  The chunks are sorted by offset
+   * and merged into as few reads as possible; chunks may overlap, and the
+   * same chunk may be given more than once.  Bytes that are past the end
+   * of the stream are set to 0.  The stream's file pointer is left at an
+   * undefined position.
+   *
+   * @param in the stream from which to read
+   * @param offsets the offset of the first byte of each chunk
+   * @param lengths the number of bytes in each chunk
+   * @param maxGap the maximum number of unused bytes between two chunks
+   *   that are fetched with a single read
+   * @param maxRead the maximum number of bytes fetched with a single read;
+   *   chunks that are larger than this are still read in full
+   * @return the bytes of each chunk, in the same order as
+   *   <code>offsets</code>
+   */
+  public static byte[][] readChunks(RandomAccessInputStream in,
+    final long[] offsets, int[] lengths, int maxGap, int maxRead)
+    throws IOException
+  {
+    if (offsets.length != lengths.length) {
+      throw new IllegalArgumentException("Got " + offsets.length +
+        " offsets and " + lengths.length + " lengths");
+    }
+    byte[][] chunks = new byte[offsets.length][];
+    Integer[] order = new Integer[offsets.length];
+    for (int i=0; i<order.length; i++) {
+      chunks[i] = new byte[lengths[i]];
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Long.compare(offsets[a], offsets[b]);
+      }
+    });
+
+    long length = in.length();
+    int first = 0;
+    while (first < order.length) {
+      // extend the read for as long as the next chunk is close enough
+      long start = offsets[order[first]];
+      long end = start + lengths[order[first]];
+      int last = first + 1;
+      while (last < order.length) {
+        long offset = offsets[order[last]];
+        long next = Math.max(end, offset + lengths[order[last]]);
+        if (offset - end > maxGap || next - start > maxRead) {
+          break;
+        }
+        end = next;
+        last++;
+      }
+
+      int n = (int) (Math.min(end, length) - start);
+      if (n > 0) {
+        byte[] block = new byte[n];
+        in.seek(start);
+        in.readFully(block);
+        for (int i=first; i<last; i++) {
+          int chunk = order[i];
+          int pos = (int) (offsets[chunk] - start);
+          int count = Math.min(lengths[chunk], n - pos);
+          if (count > 0) {
+            System.arraycopy(block, pos, chunks[chunk], 0, count);
+          }
+        }
+      }
+      LOGGER.trace("Read {} chunks with length {} at offset {}",
+        last - first, n, start);
+      first = last;
+    }
+    return chunks;
+  }
+
+  // -- Utility methods - decoding --
+
+  /**
+   * Returns the number of threads used by {@link #runTasks(List)}.
+   * @see #THREADS_PROPERTY
+   */
+  public static int getThreadCount() {
+    int processors = Runtime.getRuntime().availableProcessors();
+    return Math.max(1,
+      Integer.getInteger(THREADS_PROPERTY, Math.min(4, processors)));
+  }
+
+  /**
+   * Runs the given tasks and waits for all of them to finish.  Tasks are run
+   * in parallel using a shared pool of {@link #getThreadCount()} threads;
+   * they are run in the calling thread if there is only one task, if only
+   * one thread is allowed, or if the calling thread belongs to the pool.
+   * Tasks must not share a stream or any other unsynchronized state.
+   *
+   * @throws FormatException if a task threw a FormatException, or if
+   *   the calling thread was interrupted
+   * @throws IOException if a task threw an IOException
+   */
+  public static void runTasks(List<? extends Callable<Void>> tasks)
+    throws FormatException, IOException
+  {
+    ExecutorService pool = null;
+    if (tasks.size() > 1 &&
+      !(Thread.currentThread() instanceof DecoderThread))
+    {
+      pool = getExecutor();
+    }
+    if (pool == null) {
+      for (Callable<Void> task : tasks) {
+        try {
+          task.call();
+        }
+        catch (FormatException e) {
+          throw e;
+        }
+        catch (IOException e) {
+          throw e;
+        }
+        catch (RuntimeException e) {
+          throw e;
+        }
+        catch (Exception e) {
+          throw new FormatException(e);
+        }
+      }
+      return;
+    }
+
+    try {
+      for (Future<Void> result : pool.invokeAll(tasks)) {
+        result.get();
+      }
+    }
+    catch (InterruptedException e) {
+      throw new FormatException("Interrupted while decoding", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof FormatException) {
+        throw (FormatException) cause;
+      }
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new FormatException(cause);
+    }
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Returns the shared thread pool, or null if tasks should be run in the
+   * calling thread.  The pool is re-created if the thread count changes.
+   */
+  private static synchronized ExecutorService getExecutor() {
+    int count = getThreadCount();
+    if (count <= 1) {
+      return null;
+    }
+    if (executor == null || count != threads) {
+      if (executor != null) {
+        executor.shutdown();
+      }
+      LOGGER.debug("Decoding with {} threads", count);
+      threads = count;
+      executor = Executors.newFixedThreadPool(count, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          return new DecoderThread(r);
+        }
+      });
+    }
+    return executor;
+  }
+
+  // -- Helper classes --
+
+  /** Daemon thread belonging to the shared pool. */
+  private static class DecoderThread extends Thread {
+    public DecoderThread(Runnable r) {
+      super(r, "Bio-Formats-Decoder");
+      setDaemon(true);
+    }
+  }
+
+}
@@ -124,7 +124,9 @@ public class ClassList<T> {
       // load class
       Class<? extends T> c = null;
       try {
-        Class<?> rawClass = Class.forName(line);
+        // classes are initialized when first instantiated, not when listed
+        Class<?> rawClass =
+          Class.forName(line, false, ClassList.class.getClassLoader());
         c = cast(rawClass);
       }
       catch (ClassNotFoundException exc) {
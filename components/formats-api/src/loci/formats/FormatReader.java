@@ -33,6 +33,7 @@
 package loci.formats;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -45,6 +46,8 @@ import java.util.Arrays;
 import loci.common.DataTools;
 import loci.common.Location;
 import loci.common.RandomAccessInputStream;
+import loci.common.Region;
+import loci.common.metrics.MetricsRegistry;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceFactory;
 import loci.formats.in.DefaultMetadataOptions;
@@ -53,6 +56,7 @@ import loci.formats.in.MetadataOptions;
 import loci.formats.meta.DummyMetadata;
 import loci.formats.meta.FilterMetadata;
 import loci.formats.meta.IMetadata;
+import loci.formats.meta.LazyMetadata;
 import loci.formats.meta.MetadataStore;
 import loci.formats.ome.OMEXMLMetadata;
 import loci.formats.services.OMEXMLService;
@@ -579,11 +583,111 @@ public abstract class FormatReader extends FormatHandler
     return buf;
   }
 
+  /**
+   * Reads a raw plane from disk into a ByteBuffer, starting at the buffer's
+   * current position.
+   */
+  protected ByteBuffer readPlane(RandomAccessInputStream s, int x, int y,
+    int w, int h, ByteBuffer buf) throws IOException
+  {
+    return readPlane(s, x, y, w, h, 0, buf);
+  }
+
+  /**
+   * Reads a raw plane from disk into a ByteBuffer, starting at the buffer's
+   * current position, which is not modified.  The bytes are transferred
+   * by {@link RandomAccessInputStream#read(ByteBuffer, int, int)}, so that
+   * a plane read from a file into a direct buffer is not copied through
+   * the heap.
+   */
+  protected ByteBuffer readPlane(RandomAccessInputStream s, int x, int y,
+    int w, int h, int scanlinePad, ByteBuffer buf) throws IOException
+  {
+    int c = getRGBChannelCount();
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    int scanlineWidth = getSizeX() + scanlinePad;
+    long start = s.getFilePointer();
+    int offset = buf.position();
+    if (isInterleaved()) {
+      FormatTools.readBytes(s, start, scanlineWidth * c, x * c, y, w * c, h,
+        bpp, buf, offset);
+    }
+    else {
+      long planeSize = (long) scanlineWidth * getSizeY() * bpp;
+      for (int channel=0; channel<c; channel++) {
+        FormatTools.readBytes(s, start + channel * planeSize, scanlineWidth,
+          x, y, w, h, bpp, buf, offset + channel * w * h * bpp);
+      }
+    }
+    return buf;
+  }
+
+  /**
+   * Reads a raw plane from disk into an array of samples or a ByteBuffer,
+   * as accepted by {@link #openPlane(int, Object, int, int, int, int)}.
+   */
+  protected Object readSamples(RandomAccessInputStream s, int x, int y,
+    int w, int h, Object buf) throws IOException
+  {
+    return readSamples(s, x, y, w, h, 0, buf);
+  }
+
+  /**
+   * Reads a raw plane from disk into an array of samples or a ByteBuffer,
+   * as accepted by {@link #openPlane(int, Object, int, int, int, int)}.
+   * Each run of bytes is converted to samples as it is read, so the plane
+   * is never held as a byte array.
+   */
+  protected Object readSamples(RandomAccessInputStream s, int x, int y,
+    int w, int h, int scanlinePad, Object buf) throws IOException
+  {
+    int c = getRGBChannelCount();
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    boolean little = isLittleEndian();
+    int scanlineWidth = getSizeX() + scanlinePad;
+    long start = s.getFilePointer();
+    if (isInterleaved()) {
+      FormatTools.readSamples(s, start, scanlineWidth * c, x * c, y, w * c, h,
+        bpp, little, buf, 0);
+    }
+    else {
+      long planeSize = (long) scanlineWidth * getSizeY() * bpp;
+      for (int channel=0; channel<c; channel++) {
+        FormatTools.readSamples(s, start + channel * planeSize, scanlineWidth,
+          x, y, w, h, bpp, little, buf, channel * w * h);
+      }
+    }
+    return buf;
+  }
+
   /** Return a properly configured loci.formats.meta.FilterMetadata. */
   protected MetadataStore makeFilterMetadata() {
     return new FilterMetadata(getMetadataStore(), isMetadataFiltered());
   }
 
+  /**
+   * Populates the metadata store for the given series.  If the store is a
+   * {@link LazyMetadata} store, the populator is run the first time that
+   * the series is retrieved from the store; otherwise it is run immediately.
+   * The populator must not read from the current file.
+   */
+  protected void populateSeries(int series, LazyMetadata.Populator populator)
+  {
+    final MetadataStore store = makeFilterMetadata();
+    LazyMetadata lazy = LazyMetadata.getHandler(store);
+    if (lazy == null) {
+      populator.populate(store);
+      return;
+    }
+    final LazyMetadata.Populator p = populator;
+    lazy.addPopulator(series, new LazyMetadata.Populator() {
+      @Override
+      public void populate(MetadataStore s) {
+        p.populate(store);
+      }
+    });
+  }
+
   // -- IMetadataConfigurable API methods --
 
   /* (non-Javadoc)
@@ -934,6 +1038,30 @@ public abstract class FormatReader extends FormatHandler
     return openBytes(no, x, y, w, h);
   }
 
+  /* @see IFormatReader#openPlane(int, Object, int, int, int, int) */
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    return FormatTools.openSamples(this, no, buf, x, y, w, h);
+  }
+
+  /* @see IFormatReader#openBytes(int, ByteBuffer, int, int, int, int) */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    return FormatTools.openBytes(this, no, buf, x, y, w, h);
+  }
+
+  /* @see IFormatReader#openBytes(int, List, List) */
+  @Override
+  public List<byte[]> openBytes(int no, List<Region> regions,
+    List<byte[]> bufs) throws FormatException, IOException
+  {
+    return FormatTools.openBytes(this, no, regions, bufs);
+  }
+
   /* @see IFormatReader#openThumbBytes(int) */
   @Override
   public byte[] openThumbBytes(int no) throws FormatException, IOException {
@@ -1428,7 +1556,12 @@ public abstract class FormatReader extends FormatHandler
     if (currentId == null || !new Location(id).getAbsolutePath().equals(
       new Location(currentId).getAbsolutePath()))
     {
+      long start = MetricsRegistry.start();
       initFile(id);
+      if (start != MetricsRegistry.NOT_STARTED) {
+        MetricsRegistry.timer(
+          "initFile." + getClass().getSimpleName()).recordSince(start);
+      }
 
       MetadataStore store = getMetadataStore();
       if (saveOriginalMetadata) {
@@ -1438,6 +1571,8 @@ public abstract class FormatReader extends FormatHandler
             new Hashtable<String, Object>();
           allMetadata.putAll(metadata);
 
+          // NB: retrieving image names populates every series of a
+          // LazyMetadata store
           for (int series=0; series<getSeriesCount(); series++) {
             String name = "Series " + series;
             try {
@@ -1466,8 +1601,16 @@ public abstract class FormatReader extends FormatHandler
           if (getModuloZ().length() > 1 || getModuloC().length() > 1 ||
             getModuloT().length() > 1)
           {
-            service.addModuloAlong(
-              (OMEXMLMetadata) store, core.get(series), series);
+            final OMEXMLService s = service;
+            final CoreMetadata c = core.get(series);
+            final int index = series;
+            populateSeries(series, new LazyMetadata.Populator() {
+              @Override
+              public void populate(MetadataStore m) {
+                OMEXMLMetadata omexml = (OMEXMLMetadata) getMetadataStore();
+                s.addModuloAlong(omexml, c, index);
+              }
+            });
           }
         }
         setSeries(0);
@@ -34,12 +34,20 @@ package loci.formats;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 import java.util.Vector;
 
 import loci.common.Constants;
+import loci.common.DataTools;
 import loci.common.DateTools;
 import loci.common.RandomAccessInputStream;
+import loci.common.Region;
 import loci.common.ReflectException;
 import loci.common.ReflectedUniverse;
 
@@ -197,6 +205,9 @@ public final class FormatTools {
   public static final String TILE_Y = "%y";
   public static final String TILE_NUM = "%m";
 
+  /** Maximum number of bytes read at once by readSamples. */
+  private static final int SAMPLE_CHUNK_SIZE = 1024 * 1024;
+
   // -- Constants - versioning --
 
   public static final Properties VERSION_PROPERTIES = loadProperties();
@@ -797,6 +808,36 @@ public final class FormatTools {
     return getBytesPerPixel(pixelTypeFromString(pixelType));
   }
 
+  /**
+   * Allocates an array that holds the given number of samples of the given
+   * pixel type, as accepted by
+   * {@link IFormatReader#openPlane(int, Object, int, int, int, int)}:
+   * a byte[] for 8-bit and bit types, a short[] for 16-bit types, an int[]
+   * for 32-bit integer types, a float[] for FLOAT and a double[] for DOUBLE.
+   * @param pixelType the pixel type as retrieved from
+   *   {@link IFormatReader#getPixelType()}.
+   * @param length the number of samples.
+   */
+  public static Object allocateSamples(int pixelType, int length) {
+    switch (pixelType) {
+      case INT8:
+      case UINT8:
+      case BIT:
+        return new byte[length];
+      case INT16:
+      case UINT16:
+        return new short[length];
+      case INT32:
+      case UINT32:
+        return new int[length];
+      case FLOAT:
+        return new float[length];
+      case DOUBLE:
+        return new double[length];
+    }
+    throw new IllegalArgumentException("Unknown pixel type: " + pixelType);
+  }
+
   /**
    * Determines whether the given reader represents any floating point data.
    * @param reader the reader to check
@@ -938,6 +979,44 @@ public final class FormatTools {
     if (bufLength >= 0) checkBufferSize(r, bufLength, w, h);
   }
 
+  /**
+   * Checks that the plane number and each region are valid for the given
+   * reader, as for {@link #checkPlaneParameters(IFormatReader, int, int,
+   * int, int, int, int)}, and allocates a buffer for each region that
+   * does not have one.
+   *
+   * @param bufs the buffers given to
+   *   {@link IFormatReader#openBytes(int, List, List)}; may be null
+   * @return a new list containing one buffer of sufficient size for each
+   *   region
+   * @throws FormatException if the number of buffers does not match the
+   *   number of regions, or if any of the parameters are invalid
+   */
+  public static List<byte[]> allocateBuffers(IFormatReader r, int no,
+    List<Region> regions, List<byte[]> bufs) throws FormatException
+  {
+    if (bufs != null && bufs.size() != regions.size()) {
+      throw new FormatException("Got " + bufs.size() + " buffers for " +
+        regions.size() + " regions");
+    }
+    List<byte[]> buffers = new ArrayList<byte[]>(regions.size());
+    for (int i=0; i<regions.size(); i++) {
+      Region region = regions.get(i);
+      byte[] buf = bufs == null ? null : bufs.get(i);
+      if (buf == null) {
+        checkPlaneParameters(r, no, -1,
+          region.x, region.y, region.width, region.height);
+        buf = new byte[getPlaneSize(r, region.width, region.height)];
+      }
+      else {
+        checkPlaneParameters(r, no, buf.length,
+          region.x, region.y, region.width, region.height);
+      }
+      buffers.add(buf);
+    }
+    return buffers;
+  }
+
   /** Checks that the given plane number is valid for the given reader. */
   public static void checkPlaneNumber(IFormatReader r, int no)
     throws FormatException
@@ -984,6 +1063,214 @@ public final class FormatTools {
     }
   }
 
+  /**
+   * Checks that the given buffer can hold the samples of a w * h image
+   * as returned by the given reader.  The buffer must either be an array
+   * of the type returned by {@link #allocateSamples(int, int)} or a
+   * {@link ByteBuffer}.
+   * @throws FormatException if the buffer has the wrong type or is too small
+   */
+  public static void checkSampleBuffer(IFormatReader r, Object buf,
+    int w, int h) throws FormatException
+  {
+    int pixelType = r.getPixelType();
+    long size = (long) w * h * r.getRGBChannelCount();
+    long len;
+    if (buf instanceof ByteBuffer) {
+      len = ((ByteBuffer) buf).remaining() / getBytesPerPixel(pixelType);
+    }
+    else {
+      Class<?> type = allocateSamples(pixelType, 0).getClass();
+      if (buf == null || buf.getClass() != type) {
+        throw new FormatException("Invalid buffer for " +
+          getPixelTypeString(pixelType) + " samples (got " +
+          (buf == null ? null : buf.getClass().getSimpleName()) +
+          ", expected " + type.getSimpleName() + ").");
+      }
+      len = Array.getLength(buf);
+    }
+    if (size > len) {
+      throw new FormatException("Buffer too small (got " + len +
+        " samples, expected " + size + ").");
+    }
+  }
+
+  /**
+   * Obtains a sub-image of the specified image plane as bytes, using
+   * {@link IFormatReader#openBytes(int, byte[], int, int, int, int)},
+   * and stores its samples in the given buffer.  This is the default
+   * implementation of
+   * {@link IFormatReader#openPlane(int, Object, int, int, int, int)}
+   * for readers that cannot read samples directly.
+   * @return the buffer <code>buf</code> for convenience.
+   */
+  public static Object openSamples(IFormatReader r, int no, Object buf,
+    int x, int y, int w, int h) throws FormatException, IOException
+  {
+    checkSampleBuffer(r, buf, w, h);
+    if (buf instanceof byte[]) {
+      return r.openBytes(no, (byte[]) buf, x, y, w, h);
+    }
+
+    int bpp = getBytesPerPixel(r.getPixelType());
+    boolean little = r.isLittleEndian();
+    if (buf instanceof ByteBuffer) {
+      // bytes that are already in the right order can be read in place
+      ByteBuffer b = (ByteBuffer) buf;
+      boolean order = bpp == 1 ||
+        (b.order() == ByteOrder.LITTLE_ENDIAN) == little;
+      if (order && b.hasArray() && b.arrayOffset() + b.position() == 0) {
+        r.openBytes(no, b.array(), x, y, w, h);
+        return buf;
+      }
+    }
+
+    int count = w * h * r.getRGBChannelCount();
+    byte[] bytes = r.openBytes(no, new byte[count * bpp], x, y, w, h);
+    DataTools.unpackSamples(bytes, 0, buf, 0, count, bpp, little);
+    return buf;
+  }
+
+  /**
+   * Obtains a sub-image of the specified image plane as bytes, using
+   * {@link IFormatReader#openBytes(int, byte[], int, int, int, int)},
+   * and copies them into the given buffer from its current position.
+   * This is the default implementation of
+   * {@link IFormatReader#openBytes(int, ByteBuffer, int, int, int, int)}
+   * for readers that cannot read into a ByteBuffer directly.
+   * @return the buffer <code>buf</code> for convenience.
+   */
+  public static ByteBuffer openBytes(IFormatReader r, int no, ByteBuffer buf,
+    int x, int y, int w, int h) throws FormatException, IOException
+  {
+    checkBufferSize(r, buf.remaining(), w, h);
+    if (buf.hasArray() && buf.arrayOffset() + buf.position() == 0) {
+      r.openBytes(no, buf.array(), x, y, w, h);
+      return buf;
+    }
+    byte[] bytes = r.openBytes(no, new byte[getPlaneSize(r, w, h)], x, y, w, h);
+    ByteBuffer dest = buf.duplicate();
+    dest.put(bytes);
+    return buf;
+  }
+
+  /**
+   * Obtains several sub-images of the specified image plane by calling
+   * {@link IFormatReader#openBytes(int, byte[], int, int, int, int)} once
+   * for each region.  This is the default implementation of
+   * {@link IFormatReader#openBytes(int, List, List)} for readers that
+   * cannot read several regions more efficiently.
+   * @return the buffers into which each region was read
+   */
+  public static List<byte[]> openBytes(IFormatReader r, int no,
+    List<Region> regions, List<byte[]> bufs)
+    throws FormatException, IOException
+  {
+    List<byte[]> buffers = allocateBuffers(r, no, regions, bufs);
+    for (int i=0; i<regions.size(); i++) {
+      Region region = regions.get(i);
+      r.openBytes(no, buffers.get(i),
+        region.x, region.y, region.width, region.height);
+    }
+    return buffers;
+  }
+
+  /**
+   * Reads a w * h block of uncompressed bytes from rows that are each
+   * rowLength samples long, starting at the given file offset, and stores
+   * them in the given buffer.  Whole rows are read in a single call to
+   * {@link RandomAccessInputStream#read(ByteBuffer, int, int)}, so that
+   * file handles that support it can transfer bytes straight into a direct
+   * buffer.  Bytes past the end of the file are set to 0.
+   *
+   * @param s the stream from which to read
+   * @param start the file offset of the first sample in the first row
+   * @param rowLength the number of samples in each row
+   * @param x the index of the first sample to read within each row
+   * @param y the index of the first row to read
+   * @param w the number of samples to read from each row
+   * @param h the number of rows to read
+   * @param bpp the number of bytes in each sample
+   * @param buf the buffer in which the bytes are stored; its position and
+   *   limit are not modified
+   * @param offset the index in <code>buf</code> of the first byte
+   */
+  public static void readBytes(RandomAccessInputStream s, long start,
+    int rowLength, int x, int y, int w, int h, int bpp, ByteBuffer buf,
+    int offset) throws IOException
+  {
+    ByteBuffer dest = buf.duplicate();
+    int rowBytes = w * bpp;
+    if (x == 0 && w == rowLength) {
+      readRange(s, start + (long) y * rowBytes, dest, offset, h * rowBytes);
+    }
+    else {
+      for (int row=0; row<h; row++) {
+        long fp = start + ((long) (y + row) * rowLength + x) * bpp;
+        readRange(s, fp, dest, offset + row * rowBytes, rowBytes);
+      }
+    }
+  }
+
+  /**
+   * Reads len bytes starting at the given file offset into the buffer at
+   * the given index, zero-filling anything past the end of the file.
+   */
+  private static void readRange(RandomAccessInputStream s, long fp,
+    ByteBuffer dest, int offset, int len) throws IOException
+  {
+    s.seek(fp);
+    dest.limit(dest.capacity());
+    int read = len > 0 ? Math.max(0, s.read(dest, offset, len)) : 0;
+    dest.limit(dest.capacity());
+    dest.position(offset + read);
+    for (int i=read; i<len; i++) {
+      dest.put((byte) 0);
+    }
+  }
+
+  /**
+   * Reads a w * h block of uncompressed samples from rows that are each
+   * rowLength samples long, starting at the given file offset, and stores
+   * them in an array of samples or a ByteBuffer.  Bytes are converted to
+   * samples as each run of rows is read, so that the block is never held
+   * in memory as bytes.  Samples past the end of the file are set to 0.
+   *
+   * @param s the stream from which to read
+   * @param start the file offset of the first sample in the first row
+   * @param rowLength the number of samples in each row
+   * @param x the index of the first sample to read within each row
+   * @param y the index of the first row to read
+   * @param w the number of samples to read from each row
+   * @param h the number of rows to read
+   * @param bpp the number of bytes in each sample
+   * @param little true if the samples are stored in little-endian order
+   * @param buf the buffer in which the samples are stored
+   * @param offset the index in <code>buf</code> of the first sample
+   */
+  public static void readSamples(RandomAccessInputStream s, long start,
+    int rowLength, int x, int y, int w, int h, int bpp, boolean little,
+    Object buf, int offset) throws IOException
+  {
+    // whole rows are contiguous, so read as many of them at once as will fit
+    int rows = 1;
+    if (x == 0 && w == rowLength) {
+      rows = Math.max(1, Math.min(h, SAMPLE_CHUNK_SIZE / Math.max(1, w * bpp)));
+    }
+    byte[] chunk = new byte[rows * w * bpp];
+    for (int row=0; row<h; row+=rows) {
+      int n = Math.min(rows, h - row);
+      int len = n * w * bpp;
+      s.seek(start + ((long) (y + row) * rowLength + x) * bpp);
+      int read = Math.max(0, s.read(chunk, 0, len));
+      if (read < len) {
+        Arrays.fill(chunk, read, len, (byte) 0);
+      }
+      DataTools.unpackSamples(chunk, 0, buf, offset + row * w, n * w, bpp,
+        little);
+    }
+  }
+
   /**
    * Returns true if the given RandomAccessInputStream conatins at least
    * 'len' bytes.
@@ -1188,9 +1475,98 @@ public final class FormatTools {
    * In the future, we may reimplement the image scaling logic purely with
    * byte arrays, but handling every case would be substantial effort, so
    * doing so is currently a low priority item.
+   *
+   * If the current series has more than one resolution, the plane is read
+   * from the smallest resolution that is at least as large as the thumbnail.
+   *
+   * @see #getThumbnailResolution(IFormatReader)
    */
   public static byte[] openThumbBytes(IFormatReader reader, int no)
     throws FormatException, IOException
+  {
+    int resolution = reader.getResolution();
+    int level = getThumbnailResolution(reader);
+    int thumbSizeX = reader.getThumbSizeX();
+    int thumbSizeY = reader.getThumbSizeY();
+
+    byte[] plane = null;
+    int sizeX = 0, sizeY = 0;
+    if (level != resolution) {
+      reader.setResolution(level);
+    }
+    try {
+      sizeX = reader.getSizeX();
+      sizeY = reader.getSizeY();
+      if (getPlaneSize(reader) < 0) {
+        int width = Math.min(thumbSizeX * 4, sizeX);
+        int height = Math.min(thumbSizeY * 4, sizeY);
+        int x = (sizeX - width) / 2;
+        int y = (sizeY - height) / 2;
+        plane = reader.openBytes(no, x, y, width, height);
+        sizeX = width;
+        sizeY = height;
+      }
+      else {
+        plane = reader.openBytes(no);
+      }
+    }
+    finally {
+      if (level != resolution) {
+        reader.setResolution(resolution);
+      }
+    }
+    return scaleThumbnail(reader, plane, sizeX, sizeY);
+  }
+
+  /**
+   * Returns the index of the smallest resolution of the current series that
+   * is at least as large as the reader's thumbnail in both dimensions, and
+   * has as many planes as the current resolution.  The current resolution
+   * is returned if no smaller resolution is suitable.
+   */
+  public static int getThumbnailResolution(IFormatReader reader) {
+    int resolution = reader.getResolution();
+    int count = reader.getResolutionCount();
+    if (count <= 1) {
+      return resolution;
+    }
+
+    int thumbSizeX = reader.getThumbSizeX();
+    int thumbSizeY = reader.getThumbSizeY();
+    int imageCount = reader.getImageCount();
+    int best = resolution;
+    long bestSize = (long) reader.getSizeX() * reader.getSizeY();
+    try {
+      for (int i=0; i<count; i++) {
+        reader.setResolution(i);
+        long size = (long) reader.getSizeX() * reader.getSizeY();
+        if (size < bestSize && reader.getSizeX() >= thumbSizeX &&
+          reader.getSizeY() >= thumbSizeY &&
+          reader.getImageCount() == imageCount)
+        {
+          best = i;
+          bestSize = size;
+        }
+      }
+    }
+    finally {
+      reader.setResolution(resolution);
+    }
+    return best;
+  }
+
+  /**
+   * Scales a plane to the reader's thumbnail size.  The plane must have the
+   * pixel type and channel layout of the reader's current resolution, but
+   * may have any width and height.
+   *
+   * @param plane the plane to scale
+   * @param sizeX the width of the plane
+   * @param sizeY the height of the plane
+   */
+  public static byte[] scaleThumbnail(IFormatReader reader, byte[] plane,
+    int sizeX, int sizeY)
+    throws FormatException
   {
     // NB: Dependency on AWT here is unfortunate, but very difficult to
     // eliminate in general. We use reflection to limit class loading
@@ -1200,23 +1576,10 @@ public final class FormatTools {
     try {
       r.exec("import loci.formats.gui.AWTImageTools");
 
-      int planeSize = getPlaneSize(reader);
-      byte[] plane = null;
-      if (planeSize < 0) {
-        int width = reader.getThumbSizeX() * 4;
-        int height = reader.getThumbSizeY() * 4;
-        int x = (reader.getSizeX() - width) / 2;
-        int y = (reader.getSizeY() - height) / 2;
-        plane = reader.openBytes(no, x, y, width, height);
-      }
-      else {
-        plane = reader.openBytes(no);
-      }
-
       r.setVar("plane", plane);
       r.setVar("reader", reader);
-      r.setVar("sizeX", reader.getSizeX());
-      r.setVar("sizeY", reader.getSizeY());
+      r.setVar("sizeX", sizeX);
+      r.setVar("sizeY", sizeY);
       r.setVar("thumbSizeX", reader.getThumbSizeX());
       r.setVar("thumbSizeY", reader.getThumbSizeY());
       r.setVar("little", reader.isLittleEndian());
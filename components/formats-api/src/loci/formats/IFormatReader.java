@@ -33,10 +33,12 @@
 package loci.formats;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Hashtable;
 import java.util.List;
 
 import loci.common.RandomAccessInputStream;
+import loci.common.Region;
 import loci.formats.meta.MetadataStore;
 
 /**
@@ -272,6 +274,62 @@ public interface IFormatReader extends IFormatHandler, IMetadataConfigurable {
   byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h)
     throws FormatException, IOException;
 
+  /**
+   * Obtains a sub-image of the specified image plane into a pre-allocated
+   * ByteBuffer, which may be a direct buffer.  The bytes are the same as
+   * those returned by {@link #openBytes(int, byte[], int, int, int, int)},
+   * in the byte order given by {@link #isLittleEndian()}; the buffer's own
+   * byte order is ignored.  Bytes are stored from the buffer's current
+   * position, and the position is not modified.
+   *
+   * Readers of uncompressed data copy pixels from the file into the buffer
+   * without an intermediate byte array; other readers decode into a byte
+   * array which is then copied.  To obtain samples in a particular byte
+   * order, use {@link #openPlane(int, Object, int, int, int, int)} instead.
+   *
+   * @param no the image index within the file.
+   * @param buf a pre-allocated buffer with at least
+   *   {@link FormatTools#getPlaneSize(IFormatReader, int, int)} bytes
+   *   remaining.
+   * @param x X coordinate of the upper-left corner of the sub-image
+   * @param y Y coordinate of the upper-left corner of the sub-image
+   * @param w width of the sub-image
+   * @param h height of the sub-image
+   * @return the pre-allocated buffer <code>buf</code> for convenience.
+   * @throws FormatException if the buffer is too small, or if there was a
+   *   problem parsing the metadata of the file.
+   * @throws IOException if there was a problem reading the file.
+   */
+  ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y, int w, int h)
+    throws FormatException, IOException;
+
+  /**
+   * Obtains several sub-images of the specified image plane at once.
+   * Each buffer receives the same bytes as would be returned by
+   * {@link #openBytes(int, byte[], int, int, int, int)} for the
+   * corresponding region.
+   *
+   * Readers of tiled formats may read all of the tiles that are needed
+   * before decoding any of them, so that tiles that are close together in
+   * the file are fetched with a single read and tiles that are shared
+   * between regions are only decoded once; tiles may also be decoded in
+   * parallel.  This is much faster than opening each region separately
+   * when the file is on high-latency storage.
+   *
+   * @param no the image index within the file.
+   * @param regions the sub-images to read.
+   * @param bufs pre-allocated buffers, one for each region, or null if
+   *   buffers should be allocated.  Individual buffers may also be null.
+   * @return the buffers into which each region was read, in the same
+   *   order as <code>regions</code>.
+   * @throws FormatException if the number of buffers does not match the
+   *   number of regions, if a buffer is too small, or if there was a
+   *   problem parsing the metadata of the file.
+   * @throws IOException if there was a problem reading the file.
+   */
+  List<byte[]> openBytes(int no, List<Region> regions, List<byte[]> bufs)
+    throws FormatException, IOException;
+
   /**
    * Obtains the specified image plane (or sub-image thereof) in the reader's
    * native data structure. For most readers this is a byte array; however,
@@ -286,6 +344,37 @@ public interface IFormatReader extends IFormatHandler, IMetadataConfigurable {
   Object openPlane(int no, int x, int y, int w, int h)
     throws FormatException, IOException;
 
+  /**
+   * Obtains a sub-image of the specified image plane into a pre-allocated
+   * array of samples, so that callers working with primitive types do not
+   * need to convert bytes themselves.
+   *
+   * The buffer must be of the type matching {@link #getPixelType()}, as
+   * allocated by {@link FormatTools#allocateSamples(int, int)}: a byte[]
+   * for 8-bit and bit types, a short[] for 16-bit types, an int[] for 32-bit
+   * integer types, a float[] for FLOAT and a double[] for DOUBLE.
+   * Alternatively, a {@link java.nio.ByteBuffer} may be given, in which
+   * case samples are stored from its current position in the buffer's
+   * byte order, and the position is not modified.
+   * Samples are ordered as in
+   * {@link #openBytes(int, byte[], int, int, int, int)}; signed and unsigned
+   * types share the same array type.
+   *
+   * @param no the image index within the file.
+   * @param buf a pre-allocated buffer of at least
+   *   (w * h * RGB channel count) samples.
+   * @param x X coordinate of the upper-left corner of the sub-image
+   * @param y Y coordinate of the upper-left corner of the sub-image
+   * @param w width of the sub-image
+   * @param h height of the sub-image
+   * @return the pre-allocated buffer <code>buf</code> for convenience.
+   * @throws FormatException if the buffer type does not match the pixel
+   *   type, or if there was a problem parsing the metadata of the file.
+   * @throws IOException if there was a problem reading the file.
+   */
+  Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException;
+
   /**
    * Obtains a thumbnail for the specified image plane from the current file,
    * as a byte array.
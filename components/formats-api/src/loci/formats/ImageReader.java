@@ -32,17 +32,26 @@
 
 package loci.formats;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import loci.common.Constants;
 import loci.common.Location;
 import loci.common.RandomAccessInputStream;
+import loci.common.Region;
+import loci.common.metrics.MetricsRegistry;
 import loci.formats.in.MetadataLevel;
 import loci.formats.in.MetadataOptions;
 import loci.formats.meta.MetadataStore;
@@ -54,6 +63,9 @@ import org.slf4j.LoggerFactory;
  * ImageReader is the master file format reader for all supported formats.
  * It uses one instance of each reader subclass (specified in readers.txt,
  * or other class list source) to identify file formats and read data.
+ * Readers are instantiated the first time that they are needed, and
+ * readers that cannot accept a file because of its suffix (as listed in
+ * reader-suffixes.txt) are skipped without being instantiated.
  *
  * @author Curtis Rueden ctrueden at wisc.edu
  */
@@ -69,6 +81,9 @@ public class ImageReader implements IFormatReader {
   /** Default list of reader classes, for use with noargs constructor. */
   private static ClassList<IFormatReader> defaultClasses;
 
+  /** Suffixes of readers that only accept files with those suffixes. */
+  private static Map<String, String[]> requiredSuffixes;
+
   // -- Static utility methods --
 
   public static ClassList<IFormatReader> getDefaultReaderClasses() {
@@ -86,11 +101,98 @@ public class ImageReader implements IFormatReader {
     return defaultClasses;
   }
 
+  /**
+   * Gets the suffixes listed in reader-suffixes.txt, indexed by reader
+   * class name.
+   */
+  private static synchronized Map<String, String[]> getRequiredSuffixes() {
+    if (requiredSuffixes == null) {
+      requiredSuffixes = new HashMap<String, String[]>();
+      InputStream stream =
+        ImageReader.class.getResourceAsStream("reader-suffixes.txt");
+      if (stream == null) {
+        LOGGER.debug("Could not find reader-suffixes.txt");
+        return requiredSuffixes;
+      }
+      try {
+        BufferedReader in = new BufferedReader(
+          new InputStreamReader(stream, Constants.ENCODING));
+        try {
+          String line;
+          while ((line = in.readLine()) != null) {
+            int ndx = line.indexOf("#");
+            if (ndx >= 0) line = line.substring(0, ndx);
+            String[] tokens = line.trim().split("[\\s,]+");
+            if (tokens.length < 2) continue;
+            requiredSuffixes.put(tokens[0],
+              Arrays.copyOfRange(tokens, 1, tokens.length));
+          }
+        }
+        finally {
+          in.close();
+        }
+      }
+      catch (IOException exc) {
+        LOGGER.debug("Could not parse reader-suffixes.txt", exc);
+        requiredSuffixes.clear();
+      }
+    }
+    return requiredSuffixes;
+  }
+
+  /**
+   * Checks whether the given reader class overrides a method that is
+   * otherwise inherited from {@link FormatReader}.
+   */
+  private static boolean overrides(Class<? extends IFormatReader> c,
+    String name, Class<?>... parameterTypes)
+  {
+    try {
+      return !c.getMethod(name, parameterTypes).getDeclaringClass().equals(
+        FormatReader.class);
+    }
+    catch (NoSuchMethodException exc) {
+      return true;
+    }
+    catch (LinkageError err) {
+      return true;
+    }
+  }
+
   // -- Fields --
 
-  /** List of supported file format readers. */
+  /** List of supported file format reader classes. */
+  private Class<? extends IFormatReader>[] readerClasses;
+
+  /**
+   * Instances of the reader classes; null for readers that have not been
+   * needed yet, and for readers that could not be instantiated.
+   */
   private IFormatReader[] readers;
 
+  /** Whether each reader class has been instantiated (or has failed to be). */
+  private boolean[] instantiated;
+
+  /**
+   * The suffixes of each reader class without which it will not accept
+   * a file, or null if the reader must be instantiated to check a file.
+   * Computed the first time that each reader is checked.
+   */
+  private String[][] filterSuffixes;
+  private boolean[] filterChecked;
+
+  /**
+   * Settings to apply to readers when they are instantiated; null for
+   * settings that have not been changed from each reader's default.
+   */
+  private Boolean groupFiles;
+  private Boolean normalized;
+  private Boolean originalMetadataPopulated;
+  private Boolean metadataFiltered;
+  private Boolean flattenedResolutions;
+  private MetadataStore metadataStore;
+  private MetadataOptions metadataOptions;
+
   /**
    * Valid suffixes for this file format.
    * Populated the first time getSuffixes() is called.
@@ -115,26 +217,16 @@ public class ImageReader implements IFormatReader {
     this(getDefaultReaderClasses());
   }
 
-  /** Constructs a new ImageReader from the given list of reader classes. */
+  /**
+   * Constructs a new ImageReader from the given list of reader classes.
+   * Each reader is instantiated the first time that it is needed.
+   */
   public ImageReader(ClassList<IFormatReader> classList) {
-    // add readers to the list
-    List<IFormatReader> list = new ArrayList<IFormatReader>();
-    Class<? extends IFormatReader>[] c = classList.getClasses();
-    for (int i=0; i<c.length; i++) {
-      IFormatReader reader = null;
-      try {
-        reader = c[i].newInstance();
-      }
-      catch (IllegalAccessException exc) { }
-      catch (InstantiationException exc) { }
-      if (reader == null) {
-        LOGGER.error("{} cannot be instantiated.", c[i].getName());
-        continue;
-      }
-      list.add(reader);
-    }
-    readers = new IFormatReader[list.size()];
-    list.toArray(readers);
+    readerClasses = classList.getClasses();
+    readers = new IFormatReader[readerClasses.length];
+    instantiated = new boolean[readerClasses.length];
+    filterSuffixes = new String[readerClasses.length][];
+    filterChecked = new boolean[readerClasses.length];
   }
 
   // -- ImageReader API methods --
@@ -177,8 +269,10 @@ public class ImageReader implements IFormatReader {
       // initialize file
       boolean success = false;
       if (!invalid) {
-        for (int i=0; i<readers.length; i++) {
-          if (readers[i].isThisType(id, allowOpen)) {
+        for (int i=0; i<readerClasses.length; i++) {
+          if (isRejected(i, id)) continue;
+          IFormatReader reader = getReader(i);
+          if (reader != null && reader.isThisType(id, allowOpen)) {
             current = i;
             currentId = id;
             success = true;
@@ -201,17 +295,26 @@ public class ImageReader implements IFormatReader {
 
   /** Gets the file format reader instance matching the given class. */
   public IFormatReader getReader(Class<? extends IFormatReader> c) {
-    for (int i=0; i<readers.length; i++) {
-      if (readers[i].getClass().equals(c)) return readers[i];
+    for (int i=0; i<readerClasses.length; i++) {
+      if (readerClasses[i].equals(c)) {
+        IFormatReader reader = getReader(i);
+        if (reader != null) return reader;
+      }
     }
     return null;
   }
 
-  /** Gets all constituent file format readers. */
+  /**
+   * Gets all constituent file format readers, instantiating any that have
+   * not yet been needed.
+   */
   public IFormatReader[] getReaders() {
-    IFormatReader[] r = new IFormatReader[readers.length];
-    System.arraycopy(readers, 0, r, 0, readers.length);
-    return r;
+    List<IFormatReader> list = new ArrayList<IFormatReader>();
+    for (int i=0; i<readerClasses.length; i++) {
+      IFormatReader reader = getReader(i);
+      if (reader != null) list.add(reader);
+    }
+    return list.toArray(new IFormatReader[list.size()]);
   }
 
   // -- IMetadataConfigurable API methods --
@@ -219,13 +322,13 @@ public class ImageReader implements IFormatReader {
   /* @see loci.formats.IMetadataConfigurable#getSupportedMetadataLevels() */
   @Override
   public Set<MetadataLevel> getSupportedMetadataLevels() {
-    return getReaders()[0].getSupportedMetadataLevels();
+    return getFirstReader().getSupportedMetadataLevels();
   }
 
   /* @see loci.formats.IMetadataConfigurable#getMetadataOptions() */
   @Override
   public MetadataOptions getMetadataOptions() {
-    return getReaders()[0].getMetadataOptions();
+    return getFirstReader().getMetadataOptions();
   }
 
   /**
@@ -233,8 +336,9 @@ public class ImageReader implements IFormatReader {
    */
   @Override
   public void setMetadataOptions(MetadataOptions options) {
+    metadataOptions = options;
     for (IFormatReader reader : readers) {
-      reader.setMetadataOptions(options);
+      if (reader != null) reader.setMetadataOptions(options);
     }
   }
 
@@ -243,8 +347,10 @@ public class ImageReader implements IFormatReader {
   /* @see IFormatReader#isThisType(String, boolean) */
   @Override
   public boolean isThisType(String name, boolean open) {
-    for (int i=0; i<readers.length; i++) {
-      if (readers[i].isThisType(name, open)) return true;
+    for (int i=0; i<readerClasses.length; i++) {
+      if (isRejected(i, name)) continue;
+      IFormatReader reader = getReader(i);
+      if (reader != null && reader.isThisType(name, open)) return true;
     }
     return false;
   }
@@ -252,8 +358,17 @@ public class ImageReader implements IFormatReader {
   /* @see IFormatReader.isThisType(byte[]) */
   @Override
   public boolean isThisType(byte[] block) {
-    for (int i=0; i<readers.length; i++) {
-      if (readers[i].isThisType(block)) return true;
+    for (int i=0; i<readerClasses.length; i++) {
+      // FormatReader only checks the contents of a block if
+      // isThisType(RandomAccessInputStream) is overridden
+      if (!overrides(readerClasses[i], "isThisType", byte[].class) &&
+        !overrides(readerClasses[i], "isThisType",
+        RandomAccessInputStream.class))
+      {
+        continue;
+      }
+      IFormatReader reader = getReader(i);
+      if (reader != null && reader.isThisType(block)) return true;
     }
     return false;
   }
@@ -261,8 +376,14 @@ public class ImageReader implements IFormatReader {
   /* @see IFormatReader.isThisType(RandomAccessInputStream) */
   @Override
   public boolean isThisType(RandomAccessInputStream stream) throws IOException {
-    for (int i=0; i<readers.length; i++) {
-      if (readers[i].isThisType(stream)) return true;
+    for (int i=0; i<readerClasses.length; i++) {
+      if (!overrides(readerClasses[i], "isThisType",
+        RandomAccessInputStream.class))
+      {
+        continue;
+      }
+      IFormatReader reader = getReader(i);
+      if (reader != null && reader.isThisType(stream)) return true;
     }
     return false;
   }
@@ -426,7 +547,13 @@ public class ImageReader implements IFormatReader {
   /* @see IFormatReader#openBytes(int) */
   @Override
   public byte[] openBytes(int no) throws FormatException, IOException {
-    return getReader().openBytes(no);
+    long start = MetricsRegistry.start();
+    try {
+      return getReader().openBytes(no);
+    }
+    finally {
+      recordOpenBytes(start);
+    }
   }
 
   /* @see IFormatReader#openBytes(int, int, int, int, int) */
@@ -434,7 +561,13 @@ public class ImageReader implements IFormatReader {
   public byte[] openBytes(int no, int x, int y, int w, int h)
     throws FormatException, IOException
   {
-    return getReader().openBytes(no, x, y, w, h);
+    long start = MetricsRegistry.start();
+    try {
+      return getReader().openBytes(no, x, y, w, h);
+    }
+    finally {
+      recordOpenBytes(start);
+    }
   }
 
   /* @see IFormatReader#openBytes(int, byte[]) */
@@ -442,7 +575,13 @@ public class ImageReader implements IFormatReader {
   public byte[] openBytes(int no, byte[] buf)
     throws FormatException, IOException
   {
-    return getReader().openBytes(no, buf);
+    long start = MetricsRegistry.start();
+    try {
+      return getReader().openBytes(no, buf);
+    }
+    finally {
+      recordOpenBytes(start);
+    }
   }
 
   /* @see IFormatReader#openBytes(int, byte[], int, int, int, int) */
@@ -450,7 +589,13 @@ public class ImageReader implements IFormatReader {
   public byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h)
     throws FormatException, IOException
   {
-    return getReader().openBytes(no, buf, x, y, w, h);
+    long start = MetricsRegistry.start();
+    try {
+      return getReader().openBytes(no, buf, x, y, w, h);
+    }
+    finally {
+      recordOpenBytes(start);
+    }
   }
 
   /* @see IFormatReader#openPlane(int, int, int, int, int) */
@@ -461,6 +606,42 @@ public class ImageReader implements IFormatReader {
     return getReader().openPlane(no, x, y, w, h);
   }
 
+  /* @see IFormatReader#openPlane(int, Object, int, int, int, int) */
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    return getReader().openPlane(no, buf, x, y, w, h);
+  }
+
+  /* @see IFormatReader#openBytes(int, ByteBuffer, int, int, int, int) */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    long start = MetricsRegistry.start();
+    try {
+      return getReader().openBytes(no, buf, x, y, w, h);
+    }
+    finally {
+      recordOpenBytes(start);
+    }
+  }
+
+  /* @see IFormatReader#openBytes(int, List, List) */
+  @Override
+  public List<byte[]> openBytes(int no, List<Region> regions,
+    List<byte[]> bufs) throws FormatException, IOException
+  {
+    long start = MetricsRegistry.start();
+    try {
+      return getReader().openBytes(no, regions, bufs);
+    }
+    finally {
+      recordOpenBytes(start);
+    }
+  }
+
   /* @see IFormatReader#openThumbBytes(int) */
   @Override
   public byte[] openThumbBytes(int no) throws FormatException, IOException {
@@ -578,7 +759,9 @@ public class ImageReader implements IFormatReader {
   /* @see IFormatReader#close(boolean) */
   @Override
   public void close(boolean fileOnly) throws IOException {
-    for (int i=0; i<readers.length; i++) readers[i].close(fileOnly);
+    for (int i=0; i<readers.length; i++) {
+      if (readers[i] != null) readers[i].close(fileOnly);
+    }
     if (!fileOnly) currentId = null;
   }
 
@@ -586,14 +769,17 @@ public class ImageReader implements IFormatReader {
   @Override
   public void setGroupFiles(boolean group) {
     FormatTools.assertId(currentId, false, 2);
-    for (int i=0; i<readers.length; i++) readers[i].setGroupFiles(group);
+    groupFiles = group;
+    for (int i=0; i<readers.length; i++) {
+      if (readers[i] != null) readers[i].setGroupFiles(group);
+    }
   }
 
   /* @see IFormatReader#isGroupFiles() */
   @Override
   public boolean isGroupFiles() {
     // all readers should have same file grouping setting
-    return readers[0].isGroupFiles();
+    return getFirstReader().isGroupFiles();
   }
 
   /* @see IFormatReader#fileGroupOption(String) */
@@ -612,29 +798,35 @@ public class ImageReader implements IFormatReader {
   @Override
   public void setNormalized(boolean normalize) {
     FormatTools.assertId(currentId, false, 2);
-    for (int i=0; i<readers.length; i++) readers[i].setNormalized(normalize);
+    normalized = normalize;
+    for (int i=0; i<readers.length; i++) {
+      if (readers[i] != null) readers[i].setNormalized(normalize);
+    }
   }
 
   /* @see IFormatReader#isNormalized() */
   @Override
   public boolean isNormalized() {
     // NB: all readers should have the same normalization setting
-    return readers[0].isNormalized();
+    return getFirstReader().isNormalized();
   }
 
   /* @see IFormatReader#setOriginalMetadataPopulated(boolean) */
   @Override
   public void setOriginalMetadataPopulated(boolean populate) {
     FormatTools.assertId(currentId, false, 1);
+    originalMetadataPopulated = populate;
     for (int i=0; i<readers.length; i++) {
-      readers[i].setOriginalMetadataPopulated(populate);
+      if (readers[i] != null) {
+        readers[i].setOriginalMetadataPopulated(populate);
+      }
     }
   }
 
   /* @see IFormatReader#isOriginalMetadataPopulated() */
   @Override
   public boolean isOriginalMetadataPopulated() {
-    return readers[0].isOriginalMetadataPopulated();
+    return getFirstReader().isOriginalMetadataPopulated();
   }
 
   /* @see IFormatReader#getCurrentFile() */
@@ -648,21 +840,27 @@ public class ImageReader implements IFormatReader {
   @Override
   public void setMetadataFiltered(boolean filter) {
     FormatTools.assertId(currentId, false, 2);
-    for (int i=0; i<readers.length; i++) readers[i].setMetadataFiltered(filter);
+    metadataFiltered = filter;
+    for (int i=0; i<readers.length; i++) {
+      if (readers[i] != null) readers[i].setMetadataFiltered(filter);
+    }
   }
 
   /* @see IFormatReader#isMetadataFiltered() */
   @Override
   public boolean isMetadataFiltered() {
     // NB: all readers should have the same metadata filtering setting
-    return readers[0].isMetadataFiltered();
+    return getFirstReader().isMetadataFiltered();
   }
 
   /* @see IFormatReader#setMetadataStore(MetadataStore) */
   @Override
   public void setMetadataStore(MetadataStore store) {
     FormatTools.assertId(currentId, false, 2);
-    for (int i=0; i<readers.length; i++) readers[i].setMetadataStore(store);
+    metadataStore = store;
+    for (int i=0; i<readers.length; i++) {
+      if (readers[i] != null) readers[i].setMetadataStore(store);
+    }
   }
 
   /* @see IFormatReader#getMetadataStore() */
@@ -779,14 +977,15 @@ public class ImageReader implements IFormatReader {
   @Override
   public boolean hasFlattenedResolutions() {
     // all readers should have the same flattened setting
-    return readers[0].hasFlattenedResolutions();
+    return getFirstReader().hasFlattenedResolutions();
   }
 
   /* @see IFormatReader#setFlattenedResolutions(boolean) */
   @Override
   public void setFlattenedResolutions(boolean flattened) {
+    flattenedResolutions = flattened;
     for (IFormatReader reader : readers) {
-      reader.setFlattenedResolutions(flattened);
+      if (reader != null) reader.setFlattenedResolutions(flattened);
     }
   }
 
@@ -809,8 +1008,8 @@ public class ImageReader implements IFormatReader {
   public String[] getSuffixes() {
     if (suffixes == null) {
       HashSet<String> suffixSet = new HashSet<String>();
-      for (int i=0; i<readers.length; i++) {
-        String[] suf = readers[i].getSuffixes();
+      for (IFormatReader reader : getReaders()) {
+        String[] suf = reader.getSuffixes();
         for (int j=0; j<suf.length; j++) suffixSet.add(suf[j]);
       }
       suffixes = new String[suffixSet.size()];
@@ -829,7 +1028,11 @@ public class ImageReader implements IFormatReader {
   /* @see IFormatHandler#setId(String) */
   @Override
   public void setId(String id) throws FormatException, IOException {
+    long start = MetricsRegistry.start();
     IFormatReader currentReader = getReader(id);
+    if (start != MetricsRegistry.NOT_STARTED) {
+      MetricsRegistry.timer("setId.detect").recordSince(start);
+    }
     LOGGER.info("{} initializing {}",
       currentReader.getClass().getSimpleName(), id);
     currentReader.setId(id);
@@ -845,4 +1048,106 @@ public class ImageReader implements IFormatReader {
   @Override
   public void close() throws IOException { close(false); }
 
+  // -- Helper methods --
+
+  /**
+   * Records the latency of an openBytes call that started at the given
+   * time, by reader class and series.
+   */
+  private void recordOpenBytes(long start) {
+    if (start != MetricsRegistry.NOT_STARTED) {
+      IFormatReader reader = readers[current];
+      MetricsRegistry.timer("openBytes." + reader.getClass().getSimpleName() +
+        ".series" + reader.getSeries()).recordSince(start);
+    }
+  }
+
+  /**
+   * Gets the reader at the given index, instantiating and configuring it
+   * if this is the first time that it is needed.
+   *
+   * @return the reader, or null if it cannot be instantiated
+   */
+  private IFormatReader getReader(int index) {
+    if (instantiated[index]) {
+      return readers[index];
+    }
+    instantiated[index] = true;
+
+    Class<? extends IFormatReader> c = readerClasses[index];
+    IFormatReader reader = null;
+    try {
+      reader = c.newInstance();
+    }
+    catch (IllegalAccessException exc) { }
+    catch (InstantiationException exc) { }
+    catch (LinkageError err) {
+      LOGGER.debug("Failed to create an instance of {}", c.getName(), err);
+    }
+    if (reader == null) {
+      LOGGER.error("{} cannot be instantiated.", c.getName());
+      return null;
+    }
+
+    if (groupFiles != null) reader.setGroupFiles(groupFiles);
+    if (normalized != null) reader.setNormalized(normalized);
+    if (originalMetadataPopulated != null) {
+      reader.setOriginalMetadataPopulated(originalMetadataPopulated);
+    }
+    if (metadataFiltered != null) reader.setMetadataFiltered(metadataFiltered);
+    if (metadataStore != null) reader.setMetadataStore(metadataStore);
+    if (metadataOptions != null) reader.setMetadataOptions(metadataOptions);
+    if (flattenedResolutions != null) {
+      reader.setFlattenedResolutions(flattenedResolutions);
+    }
+
+    // a listed reader whose suffixes have changed is no longer filtered
+    if (filterChecked[index] && filterSuffixes[index] != null &&
+      !Arrays.equals(filterSuffixes[index], reader.getSuffixes()))
+    {
+      LOGGER.warn("Suffixes of {} do not match reader-suffixes.txt",
+        c.getName());
+      filterSuffixes[index] = null;
+    }
+
+    readers[index] = reader;
+    return reader;
+  }
+
+  /** Gets the first reader that can be instantiated. */
+  private IFormatReader getFirstReader() {
+    for (int i=0; i<readerClasses.length; i++) {
+      IFormatReader reader = getReader(i);
+      if (reader != null) return reader;
+    }
+    throw new ArrayIndexOutOfBoundsException(0);
+  }
+
+  /**
+   * Checks whether the reader at the given index is known to reject the
+   * given file because of the file's suffix, without instantiating it.
+   */
+  private boolean isRejected(int index, String name) {
+    if (!filterChecked[index]) {
+      filterChecked[index] = true;
+      Class<? extends IFormatReader> c = readerClasses[index];
+      String[] suffixes = getRequiredSuffixes().get(c.getName());
+      if (suffixes != null &&
+        !overrides(c, "isThisType", String.class, boolean.class))
+      {
+        if (instantiated[index] && readers[index] != null &&
+          !Arrays.equals(suffixes, readers[index].getSuffixes()))
+        {
+          LOGGER.warn("Suffixes of {} do not match reader-suffixes.txt",
+            c.getName());
+        }
+        else {
+          filterSuffixes[index] = suffixes;
+        }
+      }
+    }
+    return filterSuffixes[index] != null &&
+      !FormatHandler.checkSuffix(name, filterSuffixes[index]);
+  }
+
 }
@@ -127,6 +127,10 @@ public class ImageWriter implements IFormatWriter {
       }
       catch (IllegalAccessException exc) { }
       catch (InstantiationException exc) { }
+      catch (LinkageError err) {
+        LOGGER.debug("Failed to create an instance of {}",
+          c[i].getName(), err);
+      }
       if (writer == null) {
         LOGGER.error("{} cannot be instantiated.", c[i].getName());
         continue;
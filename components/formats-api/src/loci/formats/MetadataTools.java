@@ -42,6 +42,7 @@ import loci.common.services.DependencyException;
 import loci.common.services.ServiceException;
 import loci.common.services.ServiceFactory;
 import loci.formats.meta.IMetadata;
+import loci.formats.meta.LazyMetadata;
 import loci.formats.meta.MetadataRetrieve;
 import loci.formats.meta.MetadataStore;
 import loci.formats.ome.OMEXMLMetadata;
@@ -138,6 +139,9 @@ public final class MetadataTools {
     if (store == null || r == null) return;
     int oldSeries = r.getSeries();
 
+    // with a lazy store, each series is only populated when it is retrieved
+    LazyMetadata lazy = LazyMetadata.getHandler(store);
+
     for (int i=0; i<r.getSeriesCount(); i++) {
       r.setSeries(i);
 
@@ -150,47 +154,20 @@ public final class MetadataTools {
           imageName += " #" + (i + 1);
         }
       }
-      String pixelType = FormatTools.getPixelTypeString(r.getPixelType());
-
-      populateMetadata(store, r.getCurrentFile(), i, imageName,
-        r.isLittleEndian(), r.getDimensionOrder(), pixelType, r.getSizeX(),
-        r.getSizeY(), r.getSizeZ(), r.getSizeC(), r.getSizeT(),
-        r.getRGBChannelCount());
-
-      store.setPixelsInterleaved(r.isInterleaved(), i);
-      store.setPixelsSignificantBits(
-        new PositiveInteger(r.getBitsPerPixel()), i);
 
-      try {
-        OMEXMLService service =
-          new ServiceFactory().getInstance(OMEXMLService.class);
-        if (service.isOMEXMLRoot(store.getRoot())) {
-          MetadataStore baseStore = r.getMetadataStore();
-          if (service.isOMEXMLMetadata(baseStore)) {
-            OMEXMLMetadata omeMeta;
-            try {
-              omeMeta = service.getOMEMetadata(service.asRetrieve(baseStore));
-              if (omeMeta.getTiffDataCount(i) == 0) {
-                service.addMetadataOnly(omeMeta, i, i == 0);
-              }
-            }
-            catch (ServiceException e) {
-              LOGGER.warn("Failed to add MetadataOnly", e);
-            }
+      final PixelsPopulator populator = new PixelsPopulator(r, i, imageName,
+        doPlane);
+      if (lazy != null) {
+        final MetadataStore target = store;
+        lazy.addPopulator(i, new LazyMetadata.Populator() {
+          @Override
+          public void populate(MetadataStore s) {
+            populator.populate(target);
           }
-        }
+        });
       }
-      catch (DependencyException exc) {
-        LOGGER.warn("Failed to add MetadataOnly", exc);
-      }
-
-      if (doPlane) {
-        for (int q=0; q<r.getImageCount(); q++) {
-          int[] coords = r.getZCTCoords(q);
-          store.setPlaneTheZ(new NonNegativeInteger(coords[0]), i, q);
-          store.setPlaneTheC(new NonNegativeInteger(coords[1]), i, q);
-          store.setPlaneTheT(new NonNegativeInteger(coords[2]), i, q);
-        }
+      else {
+        populator.populate(store);
       }
     }
     r.setSeries(oldSeries);
@@ -487,4 +464,93 @@ public final class MetadataTools {
     }
   }
 
+  // -- Helper classes --
+
+  /**
+   * Populates the Pixels of one series from a copy of the reader's core
+   * metadata, so that population can be deferred until after the reader
+   * has been closed.
+   */
+  private static class PixelsPopulator implements LazyMetadata.Populator {
+    private final String file;
+    private final int series;
+    private final String imageName;
+    private final CoreMetadata core;
+    private final int effSizeC;
+    private final int rgbChannelCount;
+    private final boolean doPlane;
+    private final MetadataStore baseStore;
+
+    public PixelsPopulator(IFormatReader r, int series, String imageName,
+      boolean doPlane)
+    {
+      this.file = r.getCurrentFile();
+      this.series = series;
+      this.imageName = imageName;
+      // copy only the dimensions; the copy constructor would also flatten
+      // the series metadata of every series each time it is called
+      this.core = new CoreMetadata();
+      core.sizeX = r.getSizeX();
+      core.sizeY = r.getSizeY();
+      core.sizeZ = r.getSizeZ();
+      core.sizeC = r.getSizeC();
+      core.sizeT = r.getSizeT();
+      core.pixelType = r.getPixelType();
+      core.bitsPerPixel = r.getBitsPerPixel();
+      core.imageCount = r.getImageCount();
+      core.dimensionOrder = r.getDimensionOrder();
+      core.littleEndian = r.isLittleEndian();
+      core.interleaved = r.isInterleaved();
+      this.effSizeC = r.getEffectiveSizeC();
+      this.rgbChannelCount = r.getRGBChannelCount();
+      this.doPlane = doPlane;
+      this.baseStore = r.getMetadataStore();
+    }
+
+    @Override
+    public void populate(MetadataStore store) {
+      String pixelType = FormatTools.getPixelTypeString(core.pixelType);
+
+      populateMetadata(store, file, series, imageName, core.littleEndian,
+        core.dimensionOrder, pixelType, core.sizeX, core.sizeY, core.sizeZ,
+        core.sizeC, core.sizeT, rgbChannelCount);
+
+      store.setPixelsInterleaved(core.interleaved, series);
+      store.setPixelsSignificantBits(
+        new PositiveInteger(core.bitsPerPixel), series);
+
+      try {
+        OMEXMLService service =
+          new ServiceFactory().getInstance(OMEXMLService.class);
+        if (service.isOMEXMLRoot(store.getRoot())) {
+          if (service.isOMEXMLMetadata(baseStore)) {
+            OMEXMLMetadata omeMeta;
+            try {
+              omeMeta = service.getOMEMetadata(service.asRetrieve(baseStore));
+              if (omeMeta.getTiffDataCount(series) == 0) {
+                service.addMetadataOnly(omeMeta, series, series == 0);
+              }
+            }
+            catch (ServiceException e) {
+              LOGGER.warn("Failed to add MetadataOnly", e);
+            }
+          }
+        }
+      }
+      catch (DependencyException exc) {
+        LOGGER.warn("Failed to add MetadataOnly", exc);
+      }
+
+      if (doPlane) {
+        for (int q=0; q<core.imageCount; q++) {
+          int[] coords = FormatTools.getZCTCoords(core.dimensionOrder,
+            core.sizeZ, effSizeC, core.sizeT, core.imageCount, q);
+          store.setPlaneTheZ(new NonNegativeInteger(coords[0]), series, q);
+          store.setPlaneTheC(new NonNegativeInteger(coords[1]), series, q);
+          store.setPlaneTheT(new NonNegativeInteger(coords[2]), series, q);
+        }
+      }
+    }
+  }
+
 }
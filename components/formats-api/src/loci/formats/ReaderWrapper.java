@@ -35,12 +35,14 @@ package loci.formats;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Set;
 
 import loci.common.RandomAccessInputStream;
+import loci.common.Region;
 import loci.formats.in.MetadataLevel;
 import loci.formats.in.MetadataOptions;
 import loci.formats.meta.MetadataStore;
@@ -356,6 +358,34 @@ public abstract class ReaderWrapper implements IFormatReader {
     return reader.openPlane(no, x, y, w, h);
   }
 
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    // NB: Subclasses may modify the pixels returned by openBytes,
+    // so samples are only read directly from the wrapped reader
+    // by subclasses that override this method.
+    return FormatTools.openSamples(this, no, buf, x, y, w, h);
+  }
+
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    // NB: As with openPlane, subclasses that do not modify pixels may
+    // override this method to delegate to the wrapped reader.
+    return FormatTools.openBytes(this, no, buf, x, y, w, h);
+  }
+
+  @Override
+  public List<byte[]> openBytes(int no, List<Region> regions,
+    List<byte[]> bufs) throws FormatException, IOException
+  {
+    // NB: As with openPlane, subclasses that do not modify pixels may
+    // override this method to delegate to the wrapped reader.
+    return FormatTools.openBytes(this, no, regions, bufs);
+  }
+
   @Override
   public byte[] openThumbBytes(int no) throws FormatException, IOException {
     return reader.openThumbBytes(no);
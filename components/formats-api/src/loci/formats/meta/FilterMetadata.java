@@ -37,8 +37,16 @@ package loci.formats.meta;
  */
 public class FilterMetadata extends ome.xml.meta.FilterMetadata implements MetadataStore {
 
+  private final MetadataStore store;
+
   public FilterMetadata(MetadataStore store, boolean filter) {
     super(store, filter);
+    this.store = store;
+  }
+
+  /** Returns the store to which filtered metadata is written. */
+  public MetadataStore getStore() {
+    return store;
   }
 
 }
@@ -0,0 +1,341 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.meta;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import loci.formats.ome.OMEXMLMetadata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metadata store wrapper that populates each series on demand.
+ *
+ * A store returned by {@link #wrap(MetadataStore)} implements the same
+ * interfaces as the wrapped store.  When it is given to a reader with
+ * {@link loci.formats.IFormatReader#setMetadataStore(MetadataStore)},
+ * the reader may register a {@link Populator} for each series instead of
+ * populating the series during
+ * {@link loci.formats.IFormatReader#setId(String)}.  Each series is then
+ * populated the first time one of its Image, Pixels, Channel or Plane
+ * properties (or another property indexed by image) is accessed through
+ * the wrapper, together with any pending series that precede it.
+ * Any other access, such as
+ * {@link MetadataRetrieve#getImageCount()}, a plate property or
+ * retrieval of the root object, populates every pending series first.
+ *
+ * Callers that only need {@link loci.formats.CoreMetadata} therefore never
+ * pay for building the OME model of each series.  The wrapped store must
+ * only be accessed through the wrapper, and populators must not depend on
+ * the reader's file being open, so that pending series can be populated
+ * after the reader is closed.  Values stored through the wrapper are
+ * written immediately; a value stored for a series that is still pending
+ * may be overwritten when that series is populated.
+ */
+public final class LazyMetadata implements InvocationHandler {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(LazyMetadata.class);
+
+  /** Prefixes of the properties whose first index is an image index. */
+  private static final String[] IMAGE_PROPERTIES = {
+    "Image", "Pixels", "Channel", "Plane", "TiffData", "UUID",
+    "ImagingEnvironment", "StageLabel", "ObjectiveSettings",
+    "DetectorSettings", "LightPath"
+  };
+
+  // -- Fields --
+
+  /** The store holding the populated metadata. */
+  private final MetadataStore store;
+
+  /** Populators of each series that has not yet been populated. */
+  private final Map<Integer, List<Runnable>> pending =
+    new TreeMap<Integer, List<Runnable>>();
+
+  /** Whether or not populators are currently running. */
+  private boolean populating;
+
+  // -- Constructor --
+
+  private LazyMetadata(MetadataStore store) {
+    this.store = store;
+  }
+
+  // -- Static utility methods --
+
+  /**
+   * Wraps the given store so that series can be populated on demand.
+   * If the store is already a lazy store, it is returned unchanged.
+   */
+  public static MetadataStore wrap(MetadataStore store) {
+    if (getHandler(store) != null) {
+      return store;
+    }
+    Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+    for (Class<?> c = store.getClass(); c != null; c = c.getSuperclass()) {
+      addInterfaces(c, interfaces);
+    }
+    return (MetadataStore) Proxy.newProxyInstance(
+      store.getClass().getClassLoader(),
+      interfaces.toArray(new Class<?>[interfaces.size()]),
+      new LazyMetadata(store));
+  }
+
+  /**
+   * Returns the handler of the given lazy store, or of the lazy store
+   * wrapped by the given {@link FilterMetadata}, or null if the store is
+   * not a lazy store.
+   */
+  public static LazyMetadata getHandler(Object store) {
+    if (store instanceof FilterMetadata) {
+      store = ((FilterMetadata) store).getStore();
+    }
+    if (store != null && Proxy.isProxyClass(store.getClass())) {
+      InvocationHandler handler = Proxy.getInvocationHandler(store);
+      if (handler instanceof LazyMetadata) {
+        return (LazyMetadata) handler;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if the given store is a lazy store.
+   */
+  public static boolean isLazy(Object store) {
+    return getHandler(store) != null;
+  }
+
+  /**
+   * Populates every pending series of the given store, if it is a lazy store,
+   * and returns the store that it wraps.  Any other store is returned
+   * unchanged.
+   */
+  public static MetadataStore unwrap(MetadataStore store) {
+    LazyMetadata handler = getHandler(store);
+    if (handler == null) {
+      return store;
+    }
+    handler.populateAll();
+    return handler.getStore();
+  }
+
+  // -- LazyMetadata API methods --
+
+  /** Returns the wrapped store. */
+  public MetadataStore getStore() {
+    return store;
+  }
+
+  /**
+   * Registers a populator for the given series.  Populators of the same
+   * series run in the order in which they were added.
+   */
+  public synchronized void addPopulator(int series, Populator populator) {
+    final Populator p = populator;
+    List<Runnable> list = pending.get(series);
+    if (list == null) {
+      list = new ArrayList<Runnable>();
+      pending.put(series, list);
+    }
+    list.add(new Runnable() {
+      @Override
+      public void run() {
+        p.populate(store);
+      }
+    });
+  }
+
+  /** Returns true if the given series has populators that have not run. */
+  public synchronized boolean isPending(int series) {
+    return pending.containsKey(series);
+  }
+
+  /** Returns the number of series that have populators that have not run. */
+  public synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  /**
+   * Runs the pending populators of the given series.  Stores such as
+   * {@link loci.formats.ome.OMEXMLMetadata} only create an Image when its
+   * index is the next one in the list, so any pending series with a lower
+   * index are populated first, in order.
+   */
+  public synchronized void populate(int series) {
+    if (populating || !pending.containsKey(series)) {
+      return;
+    }
+    List<Runnable> populators = new ArrayList<Runnable>();
+    Iterator<Map.Entry<Integer, List<Runnable>>> entries =
+      pending.entrySet().iterator();
+    while (entries.hasNext()) {
+      Map.Entry<Integer, List<Runnable>> entry = entries.next();
+      if (entry.getKey() > series) {
+        break;
+      }
+      populators.addAll(entry.getValue());
+      entries.remove();
+    }
+    run(populators);
+  }
+
+  /** Runs the pending populators of all series. */
+  public synchronized void populateAll() {
+    if (populating || pending.isEmpty()) {
+      return;
+    }
+    List<Runnable> all = new ArrayList<Runnable>();
+    for (List<Runnable> list : pending.values()) {
+      all.addAll(list);
+    }
+    pending.clear();
+    run(all);
+  }
+
+  /** Discards all pending populators. */
+  public synchronized void clear() {
+    pending.clear();
+  }
+
+  // -- InvocationHandler API methods --
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args)
+    throws Throwable
+  {
+    String name = method.getName();
+    if (method.getDeclaringClass() == Object.class) {
+      if (name.equals("equals")) {
+        return proxy == args[0];
+      }
+      if (name.equals("hashCode")) {
+        return System.identityHashCode(proxy);
+      }
+    }
+    else if (name.equals("createRoot")) {
+      clear();
+    }
+    else if (!name.startsWith("set") && !name.equals("resolveReferences")) {
+      int series = getImageIndex(name, method.getParameterTypes(), args);
+      if (series >= 0) {
+        populate(series);
+      }
+      else {
+        // counts, root retrieval and non-image properties need every series
+        populateAll();
+      }
+    }
+
+    try {
+      return method.invoke(store, args);
+    }
+    catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  // -- Helper methods --
+
+  private void run(List<Runnable> populators) {
+    populating = true;
+    try {
+      LOGGER.debug("Populating {} deferred metadata entries",
+        populators.size());
+      for (Runnable r : populators) {
+        r.run();
+      }
+      if (store instanceof OMEXMLMetadata) {
+        ((OMEXMLMetadata) store).resolveReferences();
+      }
+    }
+    finally {
+      populating = false;
+    }
+  }
+
+  /**
+   * Returns the image index of the given getter,
+   * or -1 if the property is not indexed by image.
+   */
+  private static int getImageIndex(String name, Class<?>[] types,
+    Object[] args)
+  {
+    if (!name.startsWith("get") || types.length == 0 ||
+      types[0] != int.class)
+    {
+      return -1;
+    }
+    String property = name.substring(3);
+    for (String prefix : IMAGE_PROPERTIES) {
+      if (property.startsWith(prefix)) {
+        return (Integer) args[0];
+      }
+    }
+    return -1;
+  }
+
+  private static void addInterfaces(Class<?> c, Set<Class<?>> interfaces) {
+    for (Class<?> i : c.getInterfaces()) {
+      if (interfaces.add(i)) {
+        addInterfaces(i, interfaces);
+      }
+    }
+  }
+
+  // -- Helper classes --
+
+  /** Populates the metadata of one series. */
+  public interface Populator {
+    /**
+     * Populates the given store.  Implementations must not read from the
+     * reader's file, as the reader may have been closed.
+     */
+    void populate(MetadataStore store);
+  }
+
+}
@@ -34,10 +34,13 @@ package loci.formats.services;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -50,7 +53,9 @@ import javax.xml.transform.TransformerException;
 
 import loci.common.services.AbstractService;
 import loci.common.services.ServiceException;
+import loci.common.xml.StylesheetCache;
 import loci.common.xml.XMLTools;
+import loci.common.xml.XSLTPipeline;
 import loci.formats.CoreMetadata;
 import loci.formats.FormatTools;
 import loci.formats.MetadataTools;
@@ -139,17 +144,12 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
   private static Templates reorderXSLT;
 
   /** Stylesheets for updating from previous schema releases. */
-  private static Templates update2003FC;
-  private static Templates update200706;
-  private static Templates update200802;
-  private static Templates update200809;
-  private static Templates update200909;
-  private static Templates update201004;
-  private static Templates update201006;
-  private static Templates update201106;
-  private static Templates update201206;
-  private static Templates update201306;
-  private static Templates update201501;
+  private static final StylesheetCache STYLESHEETS =
+    new StylesheetCache(OMEXMLServiceImpl.class);
+
+  /** Upgrade pipelines, keyed by the schema version that they upgrade. */
+  private static final ConcurrentMap<String, XSLTPipeline> upgradePipelines =
+    new ConcurrentHashMap<String, XSLTPipeline>();
 
   private static final String SCHEMA_PATH =
     "http://www.openmicroscopy.org/Schemas/OME/";
@@ -200,134 +200,9 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
     LOGGER.debug("Attempting to update XML with version: {}", version);
     LOGGER.trace("Initial dump: {}", xml);
 
-    String transformed = null;
     try {
-      if (version.equals("2003-FC")) {
-        xml = verifyOMENamespace(xml);
-        LOGGER.debug("Running UPDATE_2003FC stylesheet.");
-        if (update2003FC == null) {
-          update2003FC =
-            XMLTools.getStylesheet(XSLT_2003FC, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(xml, update2003FC);
-      }
-      else if (version.equals("2007-06")) {
-        xml = verifyOMENamespace(xml);
-        LOGGER.debug("Running UPDATE_200706 stylesheet.");
-        if (update200706 == null) {
-          update200706 =
-            XMLTools.getStylesheet(XSLT_200706, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(xml, update200706);
-      }
-      else if (version.equals("2008-02")) {
-        xml = verifyOMENamespace(xml);
-        LOGGER.debug("Running UPDATE_200802 stylesheet.");
-        if (update200802 == null) {
-          update200802 =
-            XMLTools.getStylesheet(XSLT_200802, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(xml, update200802);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2008-09");
-      LOGGER.trace("At least 2008-09 dump: {}", transformed);
-
-      if (version.compareTo("2009-09") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_200809 stylesheet.");
-        if (update200809 == null) {
-          update200809 =
-            XMLTools.getStylesheet(XSLT_200809, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update200809);
-      }
-      LOGGER.debug("XML updated to at least 2009-09");
-      LOGGER.trace("At least 2009-09 dump: {}", transformed);
-
-      if (version.compareTo("2010-04") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_200909 stylesheet.");
-        if (update200909 == null) {
-          update200909 =
-            XMLTools.getStylesheet(XSLT_200909, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update200909);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2010-04");
-      LOGGER.trace("At least 2010-04 dump: {}", transformed);
-
-      if (version.compareTo("2010-06") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_201004 stylesheet.");
-        if (update201004 == null) {
-          update201004 =
-            XMLTools.getStylesheet(XSLT_201004, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update201004);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2010-06");
-
-      if (version.compareTo("2011-06") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_201006 stylesheet.");
-        if (update201006 == null) {
-          update201006 =
-            XMLTools.getStylesheet(XSLT_201006, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update201006);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2011-06");
-
-      if (version.compareTo("2012-06") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_201106 stylesheet.");
-        if (update201106 == null) {
-          update201106 =
-            XMLTools.getStylesheet(XSLT_201106, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update201106);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2012-06");
-
-      if (version.compareTo("2013-06") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_201206 stylesheet.");
-        if (update201206 == null) {
-          update201206 =
-            XMLTools.getStylesheet(XSLT_201206, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update201206);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2013-06");
-
-      if (version.compareTo("2015-01") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_201306 stylesheet.");
-        if (update201306 == null) {
-          update201306 =
-            XMLTools.getStylesheet(XSLT_201306, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update201306);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2015-01");
-
-      if (version.compareTo("2016-06") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_201501 stylesheet.");
-        if (update201501 == null) {
-          update201501 =
-            XMLTools.getStylesheet(XSLT_201501, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update201501);
-      }
-      else transformed = xml;
+      XSLTPipeline pipeline = getUpgradePipeline(version);
+      String transformed = pipeline.transform(xml);
       LOGGER.debug("XML updated to at least 2016-06");
 
       // fix namespaces
@@ -343,6 +218,43 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
     return null;
   }
 
+  /**
+   * Gets the chain of stylesheets that upgrades the given schema version
+   * to the latest version, constructing and caching it if necessary.
+   */
+  private XSLTPipeline getUpgradePipeline(String version) throws IOException {
+    XSLTPipeline pipeline = upgradePipelines.get(version);
+    if (pipeline != null) return pipeline;
+
+    List<String> stylesheets = new ArrayList<String>();
+    if (version.equals("2003-FC")) stylesheets.add(XSLT_2003FC);
+    else if (version.equals("2007-06")) stylesheets.add(XSLT_200706);
+    else if (version.equals("2008-02")) stylesheets.add(XSLT_200802);
+    if (version.compareTo("2009-09") < 0) stylesheets.add(XSLT_200809);
+    if (version.compareTo("2010-04") < 0) stylesheets.add(XSLT_200909);
+    if (version.compareTo("2010-06") < 0) stylesheets.add(XSLT_201004);
+    if (version.compareTo("2011-06") < 0) stylesheets.add(XSLT_201006);
+    if (version.compareTo("2012-06") < 0) stylesheets.add(XSLT_201106);
+    if (version.compareTo("2013-06") < 0) stylesheets.add(XSLT_201206);
+    if (version.compareTo("2015-01") < 0) stylesheets.add(XSLT_201306);
+    if (version.compareTo("2016-06") < 0) stylesheets.add(XSLT_201501);
+
+    List<Templates> stages = new ArrayList<Templates>();
+    for (String stylesheet : stylesheets) {
+      LOGGER.debug("Adding {} to upgrade pipeline.", stylesheet);
+      Templates xslt = STYLESHEETS.get(stylesheet);
+      if (xslt == null) {
+        throw new IOException("Could not load stylesheet " + stylesheet);
+      }
+      stages.add(xslt);
+    }
+
+    // the upgrade stylesheets expect the 'ome' prefix to be bound
+    pipeline = new XSLTPipeline(stages, "ome");
+    XSLTPipeline existing = upgradePipelines.putIfAbsent(version, pipeline);
+    return existing == null ? pipeline : existing;
+  }
+
   /** @see OMEXMLService#createOMEXMLMetadata() */
   @Override
   public OMEXMLMetadata createOMEXMLMetadata() throws ServiceException {
@@ -1121,25 +1033,6 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
 
   // -- Helper methods --
 
-  /** Ensures that an xmlns:ome element exists. */
-  private String verifyOMENamespace(String xml) {
-    try {
-      Document doc = XMLTools.parseDOM(xml);
-      Element e = doc.getDocumentElement();
-      String omeNamespace = e.getAttribute("xmlns:ome");
-      if (omeNamespace == null || omeNamespace.equals("")) {
-        e.setAttribute("xmlns:ome", e.getAttribute("xmlns"));
-      }
-      return XMLTools.getXML(doc);
-    }
-    catch (ParserConfigurationException pce) { }
-    catch (TransformerConfigurationException tce) { }
-    catch (TransformerException te) { }
-    catch (SAXException se) { }
-    catch (IOException ioe) { }
-    return null;
-  }
-
   /** Compares two Elements for equality. */
   public boolean equals(Node e1, Node e2) {
     NodeList children1 = e1.getChildNodes();
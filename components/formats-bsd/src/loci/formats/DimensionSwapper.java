@@ -33,9 +33,12 @@
 package loci.formats;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+import loci.common.Region;
+
 import loci.formats.meta.MetadataStore;
 import loci.formats.CoreMetadata;
 
@@ -249,6 +252,30 @@ public class DimensionSwapper extends ReaderWrapper {
     return super.openBytes(reorder(no), buf, x, y, w, h);
   }
 
+  /* @see IFormatReader#openPlane(int, Object, int, int, int, int) */
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    return reader.openPlane(reorder(no), buf, x, y, w, h);
+  }
+
+  /* @see IFormatReader#openBytes(int, ByteBuffer, int, int, int, int) */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    return reader.openBytes(reorder(no), buf, x, y, w, h);
+  }
+
+  /* @see IFormatReader#openBytes(int, List, List) */
+  @Override
+  public List<byte[]> openBytes(int no, List<Region> regions,
+    List<byte[]> bufs) throws FormatException, IOException
+  {
+    return reader.openBytes(reorder(no), regions, bufs);
+  }
+
   /* @see IFormatReader#openThumbImage(int) */
   @Override
   public byte[] openThumbBytes(int no) throws FormatException, IOException {
@@ -0,0 +1,276 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package loci.formats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import loci.common.Location;
+
+/**
+ * Index of the file names in a directory, used by {@link FilePattern} to
+ * find the files that differ from a given file in only one numerical block.
+ * <p>
+ * Each name is split into alternating literal and numerical segments.  Names
+ * are grouped by shape (the name with each numerical segment replaced by a
+ * placeholder), and the first query against a given numerical block of a
+ * shape groups that shape's names by the remainder of the name, so that
+ * subsequent queries take time proportional to the number of matches rather
+ * than to the size of the directory.
+ * <p>
+ * As with {@link NumberFilter}, a numerical block may be preceded by a
+ * '-' or '+' sign; unlike {@link NumberFilter}, only the ASCII digits 0-9
+ * are treated as numerical.
+ */
+public class DirectoryIndex {
+
+  // -- Constants --
+
+  /** Placeholder for a numerical segment; cannot appear in file names. */
+  private static final char NUMBER = '\u0000';
+
+  /** Shared indices, keyed by the identity of the listing they index. */
+  private static final Map<String[], DirectoryIndex> INDICES =
+    new WeakHashMap<String[], DirectoryIndex>();
+
+  // -- Fields --
+
+  /** The indexed names, in listing order. */
+  private final String[] names;
+
+  /** Map from each shape to the names that have that shape. */
+  private final Map<String, List<String>> shapes =
+    new HashMap<String, List<String>>();
+
+  /**
+   * Map from a numerical block and shape to the names of that shape,
+   * grouped by the name with the block replaced by a placeholder.
+   */
+  private final Map<String, Map<String, List<String>>> groups =
+    new HashMap<String, Map<String, List<String>>>();
+
+  // -- Constructor --
+
+  /** Constructs an index of the given file names. */
+  public DirectoryIndex(String[] names) {
+    this.names = names.clone();
+    for (String name : this.names) {
+      String shape = getShape(name);
+      List<String> list = shapes.get(shape);
+      if (list == null) {
+        list = new ArrayList<String>();
+        shapes.put(shape, list);
+      }
+      list.add(name);
+    }
+  }
+
+  // -- DirectoryIndex API methods --
+
+  /**
+   * Gets the index of the given directory, including hidden files.
+   *
+   * @see #getIndex(Location, boolean)
+   */
+  public static DirectoryIndex getIndex(Location dir) {
+    return getIndex(dir, false);
+  }
+
+  /**
+   * Gets the index of the given directory.  If directory listings are
+   * being cached (see {@link Location#cacheDirectoryListings(boolean)}),
+   * the index is shared by every caller that receives the same cached
+   * listing, and is discarded along with that listing when it expires or
+   * the directory is modified.
+   *
+   * @param dir the directory to index
+   * @param noHiddenFiles true if hidden files should be omitted
+   * @return the index, or null if the directory could not be listed
+   */
+  public static DirectoryIndex getIndex(Location dir, boolean noHiddenFiles) {
+    String[] list = dir.list(noHiddenFiles);
+    if (list == null) return null;
+    synchronized (INDICES) {
+      DirectoryIndex index = INDICES.get(list);
+      if (index == null) {
+        index = new DirectoryIndex(list);
+        INDICES.put(list, index);
+      }
+      return index;
+    }
+  }
+
+  /** Gets the indexed names, in their original order. */
+  public String[] getNames() {
+    return names.clone();
+  }
+
+  /**
+   * Gets the names that consist of the given prefix, followed by a
+   * non-empty, optionally signed numerical block, followed by the given
+   * suffix.  This is equivalent to filtering the names with a
+   * {@link NumberFilter}, except that only ASCII digits are matched.
+   *
+   * @param pre the text before the numerical block
+   * @param post the text after the numerical block
+   * @return the matching names, in their original order
+   */
+  public synchronized String[] getMatches(String pre, String post) {
+    if ((pre.length() > 0 && isDigit(pre.charAt(pre.length() - 1))) ||
+      (post.length() > 0 && isDigit(post.charAt(0))))
+    {
+      // the block is part of a longer numerical segment,
+      // so it does not correspond to a segment of the index
+      return scan(pre, post);
+    }
+
+    int block = 0;
+    for (int i=0; i<pre.length(); i++) {
+      if (isDigit(pre.charAt(i)) &&
+        (i == 0 || !isDigit(pre.charAt(i - 1))))
+      {
+        block++;
+      }
+    }
+
+    List<String> matches = lookup(pre, post, block);
+    // NumberFilter also accepts a sign before the digits, which
+    // the shape of a name records as part of the preceding text
+    List<String> negative = lookup(pre + "-", post, block);
+    List<String> positive = lookup(pre + "+", post, block);
+    if (negative.isEmpty() && positive.isEmpty()) {
+      return matches.toArray(new String[matches.size()]);
+    }
+
+    Set<String> signed = new HashSet<String>(matches);
+    signed.addAll(negative);
+    signed.addAll(positive);
+    List<String> list = new ArrayList<String>();
+    for (String name : names) {
+      if (signed.contains(name)) list.add(name);
+    }
+    return list.toArray(new String[list.size()]);
+  }
+
+  // -- Helper methods --
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /** Replaces each numerical segment of the name with a placeholder. */
+  private static String getShape(String name) {
+    StringBuilder sb = new StringBuilder(name.length());
+    boolean num = false;
+    for (int i=0; i<name.length(); i++) {
+      char c = name.charAt(i);
+      if (isDigit(c)) {
+        if (!num) sb.append(NUMBER);
+        num = true;
+      }
+      else {
+        sb.append(c);
+        num = false;
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Replaces the given numerical segment of the name with a placeholder. */
+  private static String mask(String name, int block) {
+    int count = -1;
+    int len = name.length();
+    for (int i=0; i<len; i++) {
+      if (isDigit(name.charAt(i)) && (i == 0 || !isDigit(name.charAt(i - 1))))
+      {
+        count++;
+        if (count == block) {
+          int end = i + 1;
+          while (end < len && isDigit(name.charAt(end))) end++;
+          return name.substring(0, i) + NUMBER + name.substring(end);
+        }
+      }
+    }
+    return name;
+  }
+
+  /**
+   * Gets the names that consist of the given prefix, followed by an
+   * unsigned numerical block, followed by the given suffix.
+   *
+   * @param block the index of the numerical block within the name
+   */
+  private List<String> lookup(String pre, String post, int block) {
+    String key = pre + NUMBER + post;
+    String shape = getShape(key);
+    List<String> candidates = shapes.get(shape);
+    if (candidates == null) return Collections.<String>emptyList();
+
+    String groupKey = block + shape;
+    Map<String, List<String>> group = groups.get(groupKey);
+    if (group == null) {
+      group = new HashMap<String, List<String>>();
+      for (String name : candidates) {
+        String masked = mask(name, block);
+        List<String> list = group.get(masked);
+        if (list == null) {
+          list = new ArrayList<String>();
+          group.put(masked, list);
+        }
+        list.add(name);
+      }
+      groups.put(groupKey, group);
+    }
+
+    List<String> matches = group.get(key);
+    if (matches == null) return Collections.<String>emptyList();
+    return matches;
+  }
+
+  private String[] scan(String pre, String post) {
+    NumberFilter filter = new NumberFilter(pre, post);
+    List<String> list = new ArrayList<String>();
+    for (String name : names) {
+      if (filter.accept(name)) list.add(name);
+    }
+    return list.toArray(new String[list.size()]);
+  }
+
+}
@@ -414,13 +414,11 @@ public class FilePattern {
     }
     Location dirFile = new Location(dir.equals("") ? "." : dir);
 
-    // list files in the given directory
-    Location[] f = dirFile.listFiles();
-    if (f == null) return null;
-    String[] nameList = new String[f.length];
-    for (int i=0; i<nameList.length; i++) nameList[i] = f[i].getName();
+    // index the files in the given directory
+    DirectoryIndex index = DirectoryIndex.getIndex(dirFile);
+    if (index == null) return null;
 
-    return findPattern(name, dir, nameList);
+    return findPattern(name, dir, index, null);
   }
 
   /**
@@ -449,6 +447,16 @@ public class FilePattern {
    */
   public static String findPattern(String name, String dir, String[] nameList,
     int[] excludeAxes)
+  {
+    return findPattern(name, dir, new DirectoryIndex(nameList), excludeAxes);
+  }
+
+  /**
+   * Identifies the group pattern from a given filename, directory and
+   * index of candidate filenames.
+   */
+  private static String findPattern(String name, String dir,
+    DirectoryIndex index, int[] excludeAxes)
   {
     if (excludeAxes == null) excludeAxes = new int[0];
 
@@ -492,7 +500,7 @@ public class FilePattern {
 
     for (int i=0; i<q; i++) {
       // Get the list of matching files. For instance, if name is
-      // "z10c1.tif" and nameList is {"z9c1.tif", "z10c1.tif",
+      // "z10c1.tif" and the directory contains {"z9c1.tif", "z10c1.tif",
       // "z9c2.tif", "z10c2.tif", "foo.tif"}, the matching list for
       // the first block (i = 0) is {"z9c1.tif", "z10c1.tif"}.
       int last = i > 0 ? endList[i - 1] : 0;
@@ -506,7 +514,7 @@ public class FilePattern {
       String pre = name.substring(0, indexList[i]);
       String post = name.substring(endList[i]);
       NumberFilter filter = new NumberFilter(pre, post);
-      String[] list = matchFiles(nameList, filter);
+      String[] list = index.getMatches(pre, post);
       if (list == null || list.length == 0) return null;
       if (list.length == 1) {
         // false alarm; this number block is constant
@@ -551,7 +559,7 @@ public class FilePattern {
           else {
             // recursively split the block into variable prefix + const suffix
             while (j < width && !same[j]) j++;
-            String p = findPattern(name, nameList, jx, indexList[i] + j, "");
+            String p = findPattern(name, list, jx, indexList[i] + j, "");
             char c = indexList[i] > 0 ? name.charAt(indexList[i] - 1) : '.';
             // check if this block represents the series axis
             if (p == null && c != 'S' && c != 's' && c != 'E' && c != 'e') {
@@ -621,8 +629,8 @@ public class FilePattern {
   public static String[] findSeriesPatterns(String base) {
     Location file = new Location(base).getAbsoluteFile();
     Location parent = file.getParentFile();
-    String[] list = parent.list(true);
-    return findSeriesPatterns(base, parent.getAbsolutePath(), list);
+    DirectoryIndex index = DirectoryIndex.getIndex(parent, true);
+    return findSeriesPatterns(base, parent.getAbsolutePath(), index);
   }
 
   /**
@@ -644,6 +652,12 @@ public class FilePattern {
    */
   public static String[] findSeriesPatterns(String base, String dir,
     String[] nameList)
+  {
+    return findSeriesPatterns(base, dir, new DirectoryIndex(nameList));
+  }
+
+  private static String[] findSeriesPatterns(String base, String dir,
+    DirectoryIndex index)
   {
     String baseSuffix = base.substring(base.lastIndexOf(File.separator) + 1);
     int dot = baseSuffix.indexOf(".");
@@ -654,8 +668,8 @@ public class FilePattern {
 
     ArrayList<String> patterns = new ArrayList<String>();
     int[] exclude = new int[] {AxisGuesser.S_AXIS};
-    for (String name : nameList) {
-      String pattern = findPattern(name, dir, nameList, exclude);
+    for (String name : index.getNames()) {
+      String pattern = findPattern(name, dir, index, exclude);
       if (pattern == null) continue;
       int start = pattern.lastIndexOf(File.separator) + 1;
       if (start < 0) start = 0;
@@ -664,7 +678,7 @@ public class FilePattern {
       if (dot < 0) patternSuffix = "";
       else patternSuffix = patternSuffix.substring(dot + 1);
 
-      String checkPattern = findPattern(name, dir, nameList);
+      String checkPattern = findPattern(name, dir, index, null);
       String[] checkFiles = new FilePattern(checkPattern).getFiles();
 
       // ensure that escaping is consistent with the base file
@@ -688,7 +702,9 @@ public class FilePattern {
 
   // -- Utility helper methods --
 
-  // recursive method for fixed-width numerical blocks
+  // recursive method for fixed-width numerical blocks; any file matching
+  // a sub-block also matches the whole block, so nameList need only contain
+  // the files that were matched by the enclosing block
   private static String findPattern(String name,
       String[] nameList, int ndx, int end, String p) {
     if (ndx == end) return p;
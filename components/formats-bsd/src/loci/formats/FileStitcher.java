@@ -35,6 +35,7 @@ package loci.formats;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -47,6 +48,7 @@ import java.util.Vector;
 import loci.common.DataTools;
 import loci.common.Location;
 import loci.common.RandomAccessInputStream;
+import loci.common.Region;
 import loci.formats.in.DefaultMetadataOptions;
 import loci.formats.in.MetadataLevel;
 import loci.formats.in.MetadataOptions;
@@ -510,6 +512,75 @@ public class FileStitcher extends ReaderWrapper {
     return null;
   }
 
+  /* @see IFormatReader#openPlane(int, Object, int, int, int, int) */
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    FormatTools.assertId(getCurrentFile(), true, 2);
+
+    int[] pos = computeIndices(no);
+    IFormatReader r = getReader(getCoreIndex(), pos[0]);
+    int ino = pos[1];
+
+    if (ino < r.getImageCount()) {
+      Object b = r.openPlane(ino, buf, x, y, w, h);
+      if (!noStitch && ino == r.getImageCount() - 1) {
+        r.close();
+      }
+      return b;
+    }
+
+    // blank planes are filled in by openBytes
+    return super.openPlane(no, buf, x, y, w, h);
+  }
+
+  /* @see IFormatReader#openBytes(int, ByteBuffer, int, int, int, int) */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    FormatTools.assertId(getCurrentFile(), true, 2);
+
+    int[] pos = computeIndices(no);
+    IFormatReader r = getReader(getCoreIndex(), pos[0]);
+    int ino = pos[1];
+
+    if (ino < r.getImageCount()) {
+      ByteBuffer b = r.openBytes(ino, buf, x, y, w, h);
+      if (!noStitch && ino == r.getImageCount() - 1) {
+        r.close();
+      }
+      return b;
+    }
+
+    // blank planes are filled in by openBytes
+    return super.openBytes(no, buf, x, y, w, h);
+  }
+
+  /* @see IFormatReader#openBytes(int, List, List) */
+  @Override
+  public List<byte[]> openBytes(int no, List<Region> regions,
+    List<byte[]> bufs) throws FormatException, IOException
+  {
+    FormatTools.assertId(getCurrentFile(), true, 2);
+
+    int[] pos = computeIndices(no);
+    IFormatReader r = getReader(getCoreIndex(), pos[0]);
+    int ino = pos[1];
+
+    if (ino < r.getImageCount()) {
+      List<byte[]> b = r.openBytes(ino, regions, bufs);
+      if (!noStitch && ino == r.getImageCount() - 1) {
+        r.close();
+      }
+      return b;
+    }
+
+    // blank planes are filled in by openBytes
+    return super.openBytes(no, regions, bufs);
+  }
+
   /* @see IFormatReader#openThumbBytes(int) */
   @Override
   public byte[] openThumbBytes(int no) throws FormatException, IOException {
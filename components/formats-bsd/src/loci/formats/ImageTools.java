@@ -32,6 +32,11 @@
 
 package loci.formats;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
 import loci.common.DataTools;
 
 /**
@@ -472,23 +477,44 @@ public final class ImageTools {
 
     byte[] out = new byte[b.length / bpp];
 
-    for (int i=0; i<b.length; i+=bpp) {
-      int s = DataTools.bytesToInt(b, i, bpp, little);
-
-      if (s >= max) s = 255;
-      else if (s <= min) s = 0;
+    if (bpp == 2 || bpp == 4) {
+      ByteBuffer buffer = ByteBuffer.wrap(b);
+      buffer.order(little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+      if (bpp == 2) {
+        ShortBuffer samples = buffer.asShortBuffer();
+        for (int i=0; i<out.length; i++) {
+          out[i] = autoscale(samples.get(i) & 0xffff, min, max);
+        }
+      }
       else {
-        float diff = max - min;
-        float dist = (s - min) / diff;
-
-        s = (int)(dist * 255);
+        IntBuffer samples = buffer.asIntBuffer();
+        for (int i=0; i<out.length; i++) {
+          out[i] = autoscale(samples.get(i), min, max);
+        }
       }
+      return out;
+    }
 
-      out[i / bpp] = (byte) s;
+    for (int i=0; i<b.length; i+=bpp) {
+      int s = DataTools.bytesToInt(b, i, bpp, little);
+      out[i / bpp] = autoscale(s, min, max);
     }
     return out;
   }
 
+  /** Maps a single value between min and max to the range 0-255. */
+  private static byte autoscale(int s, int min, int max) {
+    if (s >= max) s = 255;
+    else if (s <= min) s = 0;
+    else {
+      float diff = max - min;
+      float dist = (s - min) / diff;
+
+      s = (int)(dist * 255);
+    }
+    return (byte) s;
+  }
+
   /** Scan a plane for the channel min and max values. */
   public static Double[] scanData(byte[] plane, int bits, boolean littleEndian)
   {
@@ -502,15 +528,19 @@ public final class ImageTools {
       }
     }
     else if (bits == 16) {
-      for (int j=0; j<plane.length; j+=2) {
-        short s = DataTools.bytesToShort(plane, j, 2, littleEndian);
+      ShortBuffer samples = ByteBuffer.wrap(plane).order(littleEndian ?
+        ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN).asShortBuffer();
+      for (int j=0; j<samples.limit(); j++) {
+        short s = samples.get(j);
         if (s < min) min = s;
         if (s > max) max = s;
       }
     }
     else if (bits == 32) {
-      for (int j=0; j<plane.length; j+=4) {
-        int s = DataTools.bytesToInt(plane, j, 4, littleEndian);
+      IntBuffer samples = ByteBuffer.wrap(plane).order(littleEndian ?
+        ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN).asIntBuffer();
+      for (int j=0; j<samples.limit(); j++) {
+        int s = samples.get(j);
         if (s < min) min = s;
         if (s > max) max = s;
       }
@@ -563,9 +593,11 @@ public final class ImageTools {
   /** Converts a LUT and an array of indices into an array of RGB tuples. */
   public static short[][] indexedToRGB(short[][] lut, byte[] b, boolean le) {
     short[][] rtn = new short[lut.length][b.length / 2];
+    ShortBuffer indices = ByteBuffer.wrap(b).order(le ?
+      ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN).asShortBuffer();
     for (int i=0; i<b.length/2; i++) {
+      int index = indices.get(i) & 0xffff;
       for (int j=0; j<lut.length; j++) {
-        int index = DataTools.bytesToInt(b, i*2, 2, le);
         rtn[j][i] = lut[j][index];
       }
     }
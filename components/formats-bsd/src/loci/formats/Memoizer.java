@@ -38,11 +38,16 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.ArrayIndexOutOfBoundsException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import loci.common.Constants;
 import loci.common.Location;
 import loci.common.RandomAccessInputStream;
 import loci.common.RandomAccessOutputStream;
+import loci.common.Region;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceException;
 import loci.common.services.ServiceFactory;
@@ -341,6 +346,12 @@ public class Memoizer extends ReaderWrapper {
    */
   public static final long DEFAULT_MINIMUM_ELAPSED = 100;
 
+  /**
+   * Version of the thumbnail files stored next to memo files. Bumping this
+   * number will invalidate all stored thumbnails.
+   */
+  public static final int THUMBNAIL_VERSION = 1;
+
   /**
    * Default {@link org.slf4j.Logger} for the memoizer class
    */
@@ -420,6 +431,12 @@ public class Memoizer extends ReaderWrapper {
    */
   private MetadataStore replacementMetadataStore = null;
 
+  /**
+   * Thumbnails read since the last call to {@link #setId(String)}, keyed by
+   * series, resolution and plane number.
+   */
+  private final Map<String, byte[]> thumbnails = new HashMap<String, byte[]>();
+
   // -- Constructors --
 
   /**
@@ -617,6 +634,7 @@ public class Memoizer extends ReaderWrapper {
 
   @Override
   public void close() throws IOException {
+    thumbnails.clear();
     try {
       cleanup();
     } finally {
@@ -626,6 +644,9 @@ public class Memoizer extends ReaderWrapper {
 
   @Override
   public void close(boolean fileOnly) throws IOException {
+    if (!fileOnly) {
+      thumbnails.clear();
+    }
     try {
       cleanup();
     } finally {
@@ -638,6 +659,7 @@ public class Memoizer extends ReaderWrapper {
   @Override
   public void setId(String id) throws FormatException, IOException {
     StopWatch sw = stopWatch();
+    thumbnails.clear();
     try {
       realFile = new Location(id);
       memoFile = getMemoFile(id);
@@ -704,8 +726,153 @@ public class Memoizer extends ReaderWrapper {
     return reader.getMetadataStore();
   }
 
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    // pixels are never modified, so samples can be read directly
+    return reader.openPlane(no, buf, x, y, w, h);
+  }
+
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    return reader.openBytes(no, buf, x, y, w, h);
+  }
+
+  @Override
+  public List<byte[]> openBytes(int no, List<Region> regions,
+    List<byte[]> bufs) throws FormatException, IOException
+  {
+    return reader.openBytes(no, regions, bufs);
+  }
+
+  /**
+   * Returns a thumbnail of the given plane.  Thumbnails are kept in memory
+   * until the file is closed and, if memoization is enabled, are also stored
+   * next to the memo file so that later readers of the same file do not
+   * need to read them again.
+   *
+   * @see #getThumbnailFile(String)
+   */
+  @Override
+  public byte[] openThumbBytes(int no) throws FormatException, IOException {
+    String key = getSeries() + "-" + getResolution() + "-" + no;
+    byte[] thumb = thumbnails.get(key);
+    if (thumb == null) {
+      File file = getThumbnailFile(key);
+      thumb = loadThumbnail(file);
+      if (thumb == null) {
+        thumb = reader.openThumbBytes(no);
+        saveThumbnail(file, thumb);
+      }
+      thumbnails.put(key, thumb);
+    }
+    return thumb.clone();
+  }
+
   //-- Helper methods --
 
+  /**
+   * Returns the file in which the thumbnail with the given key is stored,
+   * or null if memoization is disabled.
+   */
+  protected File getThumbnailFile(String key) {
+    if (memoFile == null) {
+      return null;
+    }
+    String name = memoFile.getName();
+    if (name.endsWith(".bfmemo")) {
+      name = name.substring(0, name.length() - ".bfmemo".length());
+    }
+    return new File(memoFile.getParentFile(), name + "." + key + ".bfthumb");
+  }
+
+  /**
+   * Reads a stored thumbnail, returning null if there is none or if it was
+   * made from an older version of the file or with a different thumbnail
+   * size.  Invalid thumbnail files are deleted.
+   */
+  private byte[] loadThumbnail(File file) {
+    if (skipLoad || file == null || !file.exists()) {
+      return null;
+    }
+    RandomAccessInputStream in = null;
+    try {
+      in = new RandomAccessInputStream(file.getAbsolutePath());
+      if (in.readInt() == THUMBNAIL_VERSION &&
+        in.readLong() == realFile.lastModified() &&
+        in.readInt() == getThumbSizeX() && in.readInt() == getThumbSizeY())
+      {
+        byte[] thumb = new byte[in.readInt()];
+        in.readFully(thumb);
+        LOGGER.debug("loaded thumbnail file: {}", file);
+        return thumb;
+      }
+      LOGGER.debug("outdated thumbnail file: {}", file);
+    }
+    catch (IOException e) {
+      LOGGER.warn("invalid thumbnail file: {}", file, e);
+    }
+    finally {
+      if (in != null) {
+        try {
+          in.close();
+        }
+        catch (IOException e) {
+          LOGGER.error("input close failed", e);
+        }
+      }
+    }
+    deleteQuietly(file);
+    return null;
+  }
+
+  /**
+   * Stores a thumbnail in the given file, writing to a temporary file first
+   * as {@link #saveMemo()} does.  Failures are logged and otherwise ignored.
+   */
+  private void saveThumbnail(File file, byte[] thumb) {
+    if (skipSave || file == null) {
+      return;
+    }
+    File temp = null;
+    RandomAccessOutputStream out = null;
+    try {
+      temp = File.createTempFile(file.getName(), "", file.getParentFile());
+      out = new RandomAccessOutputStream(temp.getAbsolutePath());
+      out.writeInt(THUMBNAIL_VERSION);
+      out.writeLong(realFile.lastModified());
+      out.writeInt(getThumbSizeX());
+      out.writeInt(getThumbSizeY());
+      out.writeInt(thumb.length);
+      out.write(thumb);
+      out.close();
+      out = null;
+      if (!temp.renameTo(file)) {
+        LOGGER.warn("temp file rename returned false: {}", temp);
+      }
+      else {
+        LOGGER.debug("saved thumbnail file: {}", file);
+      }
+    }
+    catch (IOException e) {
+      LOGGER.warn("failed to save thumbnail file: {}", file, e);
+    }
+    finally {
+      if (out != null) {
+        try {
+          out.close();
+        }
+        catch (IOException e) {
+          LOGGER.error("output close failed", e);
+        }
+      }
+      deleteQuietly(temp);
+    }
+  }
+
   /**
    * Attempts to delete an existing file, logging at
    * warn if the deletion returns false or at error
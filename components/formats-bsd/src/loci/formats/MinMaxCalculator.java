@@ -33,6 +33,7 @@
 package loci.formats;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import loci.common.DataTools;
@@ -272,6 +273,21 @@ public class MinMaxCalculator extends ReaderWrapper {
     return buf;
   }
 
+  /* @see IFormatReader#openPlane(int, Object, int, int, int, int) */
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    FormatTools.assertId(getCurrentFile(), true, 2);
+    if (buf instanceof byte[] || buf instanceof ByteBuffer) {
+      return super.openPlane(no, buf, x, y, w, h);
+    }
+    reader.openPlane(no, buf, x, y, w, h);
+
+    updateMinMax(no, buf, FormatTools.getBytesPerPixel(getPixelType()) * w * h);
+    return buf;
+  }
+
   /* @see IFormatReader#close(boolean) */
   @Override
   public void close(boolean fileOnly) throws IOException {
@@ -304,6 +320,18 @@ public class MinMaxCalculator extends ReaderWrapper {
    */
   protected void updateMinMax(int no, byte[] buf, int len)
     throws FormatException, IOException
+  {
+    updateMinMax(no, (Object) buf, len);
+  }
+
+  /**
+   * Updates min/max values based on the given byte array or array of
+   * samples, as accepted by
+   * {@link #openPlane(int, Object, int, int, int, int)}.
+   * @param len the length (in bytes) of the pixels in <code>buf</code>.
+   */
+  private void updateMinMax(int no, Object buf, int len)
+    throws FormatException, IOException
   {
     if (buf == null) return;
     initMinMax();
@@ -336,17 +364,24 @@ public class MinMaxCalculator extends ReaderWrapper {
     long threshold = (long) Math.pow(2, bpp * 8 - 1);
     for (int i=0; i<pixels; i++) {
       for (int c=0; c<numRGB; c++) {
-        int idx = bpp * (interleaved ? i * numRGB + c : c * pixels + i);
-        long bits = DataTools.bytesToLong(buf, idx, bpp, little);
-        if (signed) {
-          if (bits >= threshold) bits -= 2*threshold;
-        }
-        double v = bits;
-        if (pixelType == FormatTools.FLOAT) {
-          v = Float.intBitsToFloat((int) bits);
+        int idx = interleaved ? i * numRGB + c : c * pixels + i;
+        double v;
+        if (buf instanceof byte[]) {
+          long bits =
+            DataTools.bytesToLong((byte[]) buf, idx * bpp, bpp, little);
+          if (signed) {
+            if (bits >= threshold) bits -= 2*threshold;
+          }
+          v = bits;
+          if (pixelType == FormatTools.FLOAT) {
+            v = Float.intBitsToFloat((int) bits);
+          }
+          else if (pixelType == FormatTools.DOUBLE) {
+            v = Double.longBitsToDouble(bits);
+          }
         }
-        else if (pixelType == FormatTools.DOUBLE) {
-          v = Double.longBitsToDouble(bits);
+        else {
+          v = getSample(buf, idx, signed);
         }
 
         if (v > chanMax[series][cBase + c]) {
@@ -376,6 +411,22 @@ public class MinMaxCalculator extends ReaderWrapper {
     }
   }
 
+  /** Gets the value of one sample from an array of samples. */
+  private static double getSample(Object samples, int index, boolean signed) {
+    if (samples instanceof short[]) {
+      short v = ((short[]) samples)[index];
+      return signed ? v : v & 0xffff;
+    }
+    if (samples instanceof int[]) {
+      int v = ((int[]) samples)[index];
+      return signed ? v : v & 0xffffffffL;
+    }
+    if (samples instanceof float[]) {
+      return ((float[]) samples)[index];
+    }
+    return ((double[]) samples)[index];
+  }
+
   /**
    * Ensures internal min/max variables are initialized properly. 
    *
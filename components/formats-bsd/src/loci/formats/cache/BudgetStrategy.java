@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.cache;
+
+import java.util.Arrays;
+
+/**
+ * A budget strategy caches the planes closest to the current dimensional
+ * position, in the same order as {@link RectangleStrategy}, but limits the
+ * number of cached planes by the amount of memory they occupy rather than
+ * by the range along each axis.
+ * <p>
+ * By default the range along each axis covers the whole axis, so that only
+ * the memory budget determines which planes are cached; the range, order and
+ * priority of each axis can still be changed as with any other strategy.
+ * The plane at the current position is always cached, even if it exceeds
+ * the budget on its own.
+ */
+public class BudgetStrategy extends CacheStrategy {
+
+  // -- Fields --
+
+  /** Approximate size of each cached object, in bytes. */
+  private volatile long objectSize;
+
+  /** Maximum number of bytes to cache. */
+  private volatile long budget;
+
+  // -- Constructor --
+
+  /**
+   * Constructs a budget strategy.
+   *
+   * @param lengths the length of each dimensional axis
+   * @param objectSize the approximate size of each cached object, in bytes
+   * @param budget the maximum number of bytes to cache
+   */
+  public BudgetStrategy(int[] lengths, long objectSize, long budget) {
+    super(lengths);
+    for (int i=0; i<lengths.length; i++) {
+      range[i] = lengths[i];
+    }
+    setObjectSize(objectSize);
+    setBudget(budget);
+  }
+
+  // -- BudgetStrategy API methods --
+
+  /** Gets the maximum number of bytes to cache. */
+  public long getBudget() { return budget; }
+
+  /** Sets the maximum number of bytes to cache. */
+  public void setBudget(long budget) {
+    if (budget < 0) {
+      throw new IllegalArgumentException("Invalid budget: " + budget);
+    }
+    this.budget = budget;
+    notifyListeners(new CacheEvent(this, CacheEvent.RANGE_CHANGED));
+  }
+
+  /** Gets the approximate size of each cached object, in bytes. */
+  public long getObjectSize() { return objectSize; }
+
+  /** Sets the approximate size of each cached object, in bytes. */
+  public void setObjectSize(long objectSize) {
+    if (objectSize <= 0) {
+      throw new IllegalArgumentException("Invalid object size: " +
+        objectSize);
+    }
+    this.objectSize = objectSize;
+    notifyListeners(new CacheEvent(this, CacheEvent.RANGE_CHANGED));
+  }
+
+  /** Gets the maximum number of objects that fit within the budget. */
+  public int getMaxObjects() {
+    long count = budget / objectSize;
+    return (int) Math.max(1, Math.min(count, Integer.MAX_VALUE));
+  }
+
+  // -- CacheStrategy API methods --
+
+  /* @see CacheStrategy#getPossiblePositions() */
+  @Override
+  protected int[][] getPossiblePositions() {
+    // with sufficient budget, any position could be cached
+    int[][] p = new int[length()][lengths.length];
+    for (int i=0; i<p.length; i++) pos(i, p[i]);
+    return p;
+  }
+
+  // -- ICacheStrategy API methods --
+
+  /* @see ICacheStrategy#getLoadList(int[]) */
+  @Override
+  public int[][] getLoadList(int[] pos) throws CacheException {
+    int[][] loadList = super.getLoadList(pos);
+    int max = getMaxObjects();
+    if (loadList.length > max) {
+      loadList = Arrays.copyOf(loadList, max);
+    }
+    return loadList;
+  }
+
+}
@@ -0,0 +1,371 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import loci.formats.FormatTools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache that loads objects on a pool of background threads.
+ * <p>
+ * Changing the current position never blocks: the objects on the strategy's
+ * load list are queued for loading in load list order, objects that are no
+ * longer on the load list are dropped, and queued loads of objects that are
+ * no longer wanted are cancelled. {@link #getObject(int[])} only looks up
+ * the object that has already been loaded, and never waits for a lock held
+ * by a loading thread.
+ * <p>
+ * If more than one thread is used, the cache source must support
+ * concurrent calls to {@link ICacheSource#getObject(int)}.
+ */
+public class PrefetchCache extends Cache {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(PrefetchCache.class);
+
+  /** Default number of loading threads. */
+  public static final int DEFAULT_THREADS =
+    Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+  /** Seconds after which idle loading threads are stopped. */
+  private static final long KEEP_ALIVE = 30;
+
+  private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+  // -- Fields --
+
+  /** Cached objects, indexed by rasterized position. */
+  private volatile AtomicReferenceArray<Object> objects;
+
+  /** Whether each object is on the current load list. */
+  private volatile boolean[] wanted;
+
+  /** Number of times that the load list has been rebuilt. */
+  private final AtomicInteger generation = new AtomicInteger();
+
+  /** Loads that are queued or running, indexed by rasterized position. */
+  private final ConcurrentMap<Integer, LoadTask> loading =
+    new ConcurrentHashMap<Integer, LoadTask>();
+
+  /** Loading threads. */
+  private final ThreadPoolExecutor executor;
+
+  // -- Constructors --
+
+  /**
+   * Constructs an object cache with the given cache strategy and source,
+   * using {@link #DEFAULT_THREADS} loading threads.
+   */
+  public PrefetchCache(ICacheStrategy strategy, ICacheSource source)
+    throws CacheException
+  {
+    this(strategy, source, DEFAULT_THREADS);
+  }
+
+  /**
+   * Constructs an object cache with the given cache strategy and source,
+   * which loads objects on the given number of threads.
+   */
+  public PrefetchCache(ICacheStrategy strategy, ICacheSource source,
+    int threads) throws CacheException
+  {
+    super(strategy, source, false);
+    if (threads < 1) {
+      throw new CacheException("Invalid number of threads: " + threads);
+    }
+    final String prefix = "Bio-Formats-Cache-Prefetch-" +
+      POOL_COUNT.incrementAndGet() + "-";
+    executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE,
+      TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+      new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, prefix + count.incrementAndGet());
+          t.setDaemon(true);
+          t.setPriority(Thread.MIN_PRIORITY);
+          return t;
+        }
+      });
+    executor.allowCoreThreadTimeOut(true);
+    autoUpdate = true;
+    recache();
+  }
+
+  // -- PrefetchCache API methods --
+
+  /**
+   * Gets the object at the given dimensional position, loading it if
+   * necessary. If the object is already being loaded, waits for that load
+   * to finish instead of loading it again.
+   */
+  public Object loadObject(int[] pos) throws CacheException {
+    int ndx = raster(pos);
+    AtomicReferenceArray<Object> current = objects;
+    Object o = current.get(ndx);
+    if (o != null) return o;
+
+    LoadTask task = loading.get(ndx);
+    if (task != null) {
+      if (executor.remove(task)) {
+        // not started yet; load it now instead of waiting for it
+        task.run();
+      }
+      else {
+        task.await();
+      }
+      o = current.get(ndx);
+      if (o != null) return o;
+    }
+
+    o = source.getObject(ndx);
+    store(current, ndx, o);
+    return o;
+  }
+
+  /** Gets the number of objects that are queued or being loaded. */
+  public int getPendingCount() {
+    return loading.size();
+  }
+
+  /**
+   * Stops the loading threads. Objects that are still queued are not
+   * loaded; objects that are already being loaded are discarded.
+   */
+  public void dispose() {
+    executor.shutdown();
+    for (Object r : executor.getQueue().toArray()) {
+      if (executor.remove((Runnable) r)) {
+        ((LoadTask) r).cancel();
+      }
+    }
+    objects = new AtomicReferenceArray<Object>(0);
+    wanted = new boolean[0];
+  }
+
+  // -- Cache API methods --
+
+  /* @see Cache#getObject(int[]) */
+  @Override
+  public Object getObject(int[] pos) throws CacheException {
+    return objects.get(raster(pos));
+  }
+
+  /* @see Cache#isInCache(int) */
+  @Override
+  public boolean isInCache(int pos) throws CacheException {
+    AtomicReferenceArray<Object> current = objects;
+    return pos >= 0 && pos < current.length() && current.get(pos) != null;
+  }
+
+  /* @see Cache#reset() */
+  @Override
+  public void reset() throws CacheException {
+    // NB: called from the superclass constructor, before any fields of
+    // this class are initialized
+    currentPos = new int[strategy.getLengths().length];
+    int count = source.getObjectCount();
+    if (executor != null) cancel(-1);
+    objects = new AtomicReferenceArray<Object>(count);
+    wanted = new boolean[count];
+  }
+
+  /**
+   * Loads the object at the given index of the load list, waiting for it
+   * to finish loading.
+   */
+  @Override
+  public void recache(int n) throws CacheException {
+    loadObject(strategy.getLoadList(currentPos)[n]);
+  }
+
+  /**
+   * Rebuilds the load list for the current position, drops objects that are
+   * no longer on it, and queues the missing objects for loading.
+   * Returns without waiting for any objects to load.
+   */
+  @Override
+  public void recache() throws CacheException {
+    if (executor.isShutdown()) return;
+    int[][] loadList = strategy.getLoadList(currentPos);
+    int[] len = strategy.getLengths();
+    AtomicReferenceArray<Object> current = objects;
+    boolean[] mask = new boolean[current.length()];
+    int[] indices = new int[loadList.length];
+    for (int i=0; i<loadList.length; i++) {
+      indices[i] = FormatTools.positionToRaster(len, loadList[i]);
+      mask[indices[i]] = true;
+    }
+    wanted = mask;
+    int gen = generation.incrementAndGet();
+    cancel(gen);
+
+    for (int i=0; i<mask.length; i++) {
+      if (!mask[i] && current.getAndSet(i, null) != null) {
+        notifyListeners(new CacheEvent(this, CacheEvent.OBJECT_DROPPED, i));
+      }
+    }
+
+    for (int i=0; i<indices.length; i++) {
+      int ndx = indices[i];
+      if (current.get(ndx) != null) continue;
+      LoadTask task = new LoadTask(current, ndx, gen, i);
+      LoadTask previous = loading.putIfAbsent(ndx, task);
+      if (previous == null || (previous.array != current &&
+        loading.replace(ndx, previous, task)))
+      {
+        // not being loaded, or being loaded for a previous source
+        executor.execute(task);
+      }
+    }
+  }
+
+  // -- Helper methods --
+
+  private int raster(int[] pos) throws CacheException {
+    int[] len = strategy.getLengths();
+    if (pos.length != len.length) {
+      throw new CacheException("Invalid number of axes; got " + pos.length +
+        "; expected " + len.length);
+    }
+    return FormatTools.positionToRaster(len, pos);
+  }
+
+  /**
+   * Cancels queued loads that were scheduled before the given generation,
+   * or all queued loads if the generation is negative.
+   */
+  private void cancel(int gen) {
+    for (Object r : executor.getQueue().toArray()) {
+      LoadTask task = (LoadTask) r;
+      if ((gen < 0 || task.generation < gen) && executor.remove(task)) {
+        task.cancel();
+      }
+    }
+  }
+
+  /** Stores a loaded object, if it is still wanted. */
+  private void store(AtomicReferenceArray<Object> array, int ndx, Object o) {
+    boolean[] mask = wanted;
+    if (array != objects || ndx >= mask.length || !mask[ndx] || o == null) {
+      return;
+    }
+    if (array.compareAndSet(ndx, null, o)) {
+      notifyListeners(new CacheEvent(this, CacheEvent.OBJECT_LOADED, ndx));
+      if (!wanted[ndx] && array.compareAndSet(ndx, o, null)) {
+        // the load list changed while the object was being stored
+        notifyListeners(new CacheEvent(this, CacheEvent.OBJECT_DROPPED, ndx));
+      }
+    }
+  }
+
+  // -- Helper classes --
+
+  /** Loads a single object; ordered by generation, then load list order. */
+  private class LoadTask implements Runnable, Comparable<LoadTask> {
+    private final AtomicReferenceArray<Object> array;
+    private final int index;
+    private final int generation;
+    private final int rank;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    LoadTask(AtomicReferenceArray<Object> array, int index, int generation,
+      int rank)
+    {
+      this.array = array;
+      this.index = index;
+      this.generation = generation;
+      this.rank = rank;
+    }
+
+    @Override
+    public void run() {
+      try {
+        boolean[] mask = wanted;
+        if (array == objects && index < mask.length && mask[index] &&
+          array.get(index) == null)
+        {
+          store(array, index, source.getObject(index));
+        }
+      }
+      catch (CacheException e) {
+        LOGGER.debug("Could not load object #{}", index, e);
+      }
+      catch (RuntimeException e) {
+        LOGGER.debug("Could not load object #{}", index, e);
+      }
+      finally {
+        cancel();
+      }
+    }
+
+    /** Marks this load as finished, whether or not it ran. */
+    void cancel() {
+      loading.remove(index, this);
+      done.countDown();
+    }
+
+    void await() throws CacheException {
+      try {
+        done.await();
+      }
+      catch (InterruptedException e) {
+        throw new CacheException(e);
+      }
+    }
+
+    @Override
+    public int compareTo(LoadTask task) {
+      if (generation != task.generation) {
+        return generation > task.generation ? -1 : 1;
+      }
+      return rank - task.rank;
+    }
+  }
+
+}
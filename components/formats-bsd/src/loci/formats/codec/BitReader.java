@@ -0,0 +1,113 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.codec;
+
+/**
+ * Reads bits, most significant first, from a byte array using a 64-bit
+ * reservoir so that the array is touched once per byte rather than once
+ * per bit.  Bits past the end of the data are read as zeros.
+ */
+final class BitReader {
+
+  // -- Fields --
+
+  private final byte[] data;
+  private final int end;
+  private int position;
+
+  /** Buffered bits, aligned to the most significant end. */
+  private long reservoir;
+
+  /** Number of valid bits in the reservoir. */
+  private int available;
+
+  // -- Constructor --
+
+  BitReader(byte[] data, int offset, int length) {
+    this.data = data;
+    this.position = offset;
+    this.end = offset + length;
+  }
+
+  // -- BitReader API methods --
+
+  /**
+   * Returns the next bits without consuming them.
+   *
+   * @param bits the number of bits to return, at most 32
+   */
+  int peekBits(int bits) {
+    if (bits == 0) {
+      return 0;
+    }
+    if (available < bits) {
+      fill();
+    }
+    return (int) (reservoir >>> (64 - bits));
+  }
+
+  /**
+   * Consumes bits that have already been returned by
+   * {@link #peekBits(int)}.
+   */
+  void skipBits(int bits) {
+    reservoir <<= bits;
+    available -= bits;
+  }
+
+  /**
+   * Reads and consumes the given number of bits.  If more than 32 bits are
+   * requested, only the last 32 bits read are returned.
+   */
+  int readBits(int bits) {
+    while (bits > 32) {
+      int skip = Math.min(bits - 32, 32);
+      readBits(skip);
+      bits -= skip;
+    }
+    int value = peekBits(bits);
+    skipBits(bits);
+    return value;
+  }
+
+  // -- Helper methods --
+
+  private void fill() {
+    while (available <= 56) {
+      long b = position < end ? data[position++] & 0xff : 0;
+      reservoir |= b << (56 - available);
+      available += 8;
+    }
+  }
+
+}
@@ -33,7 +33,9 @@
 package loci.formats.codec;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import loci.common.ByteArrayHandle;
 import loci.common.RandomAccessInputStream;
@@ -51,12 +53,26 @@ public class HuffmanCodec extends BaseCodec {
 
   private static final int LEAVES_OFFSET = 16;
 
-  // -- Fields --
+  /** Number of bits resolved by a single decoder table lookup. */
+  private static final int LOOKUP_BITS = 10;
+
+  /** Maximum number of decoders shared between codec instances. */
+  private static final int MAX_CACHED_DECODERS = 64;
+
+  /** Decoders for recently used tables, keyed by table content. */
+  private static final Map<TableKey, Decoder> CACHED_DECODERS =
+    new LinkedHashMap<TableKey, Decoder>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<TableKey, Decoder> e) {
+        return size() > MAX_CACHED_DECODERS;
+      }
+    };
 
-  private int leafCounter;
+  // -- Fields --
 
-  private HashMap<short[], Decoder> cachedDecoders =
-    new HashMap<short[], Decoder>();
+  /** The most recently used table and its decoder. */
+  private short[] lastTable;
+  private Decoder lastDecoder;
 
   // -- Codec API methods --
 
@@ -95,14 +111,16 @@ public class HuffmanCodec extends BaseCodec {
     int bytesPerSample = huffman.bitsPerSample / 8;
     if ((huffman.bitsPerSample % 8) != 0) bytesPerSample++;
 
-    BitWriter out = new BitWriter();
+    byte[] out = new byte[nSamples * bytesPerSample];
 
     for (int i=0; i<nSamples; i++) {
       int sample = getSample(in, options);
-      out.write(sample, bytesPerSample * 8);
+      for (int b=bytesPerSample-1, off=i*bytesPerSample; b>=0; b--, off++) {
+        out[off] = (byte) (sample >> (b * 8));
+      }
     }
 
-    return out.toByteArray();
+    return out;
   }
 
   // -- HuffmanCodec API methods --
@@ -138,69 +156,131 @@ public class HuffmanCodec extends BaseCodec {
     }
 
     HuffmanCodecOptions huffman = (HuffmanCodecOptions) options;
-    Decoder decoder = cachedDecoders.get(huffman.table);
-    if (decoder == null) {
-      decoder = new Decoder(huffman.table);
-      cachedDecoders.put(huffman.table, decoder);
+    if (huffman.table != lastTable || lastDecoder == null) {
+      lastDecoder = getDecoder(huffman.table);
+      lastTable = huffman.table;
     }
 
     try {
-      int bitCount = decoder.decode(bb);
+      int bitCount = lastDecoder.decode(bb);
       if (bitCount == 16) {
         return 0x8000;
       }
       if (bitCount < 0) bitCount = 0;
-      int v = bb.readBits(bitCount) & ((int) Math.pow(2, bitCount) - 1);
-      if ((v & (1 << (bitCount - 1))) == 0) {
-        v -= (1 << bitCount) - 1;
-      }
-      return v;
+      return extend(bb.readBits(bitCount), bitCount);
     }
     catch (IOException e) {
       throw new FormatException(e);
     }
   }
 
+  // -- Package-private methods --
+
+  /**
+   * Returns a decoder for the given table.  Decoders are immutable and are
+   * shared between all codecs that use a table with the same content.
+   */
+  static Decoder getDecoder(short[] table) {
+    TableKey key = new TableKey(table);
+    synchronized (CACHED_DECODERS) {
+      Decoder decoder = CACHED_DECODERS.get(key);
+      if (decoder == null) {
+        decoder = new Decoder(table);
+        CACHED_DECODERS.put(key, decoder);
+      }
+      return decoder;
+    }
+  }
+
+  /**
+   * Converts the given number of raw bits that follow a Huffman code into
+   * a signed difference.
+   */
+  static int extend(int bits, int bitCount) {
+    int v = bits & (bitCount < 31 ? (1 << bitCount) - 1 :
+      (int) Math.pow(2, bitCount) - 1);
+    if ((v & (1 << (bitCount - 1))) == 0) {
+      v -= (1 << bitCount) - 1;
+    }
+    return v;
+  }
+
   // -- Helper class --
 
-  class Decoder {
+  static class Decoder {
     public Decoder[] branch = new Decoder[2];
     private int leafValue = -1;
 
+    /**
+     * Tables indexed by the next {@link #LOOKUP_BITS} bits of input.
+     * For codes that are no longer than the index, the code's length and
+     * value are stored; otherwise the length is -1, and the node reached
+     * after consuming the index is stored so that decoding can continue
+     * one bit at a time.
+     */
+    private byte[] lookupLength;
+    private int[] lookupValue;
+    private Decoder[] lookupNode;
+
     public Decoder() { }
 
     public Decoder(short[] source) {
-      leafCounter = 0;
-      createDecoder(this, source, 0, 0);
+      createDecoder(this, source, 0, 0, new int[1]);
+      createLookupTables();
     }
 
-    private Decoder createDecoder(short[] source, int start, int level) {
+    private Decoder createDecoder(short[] source, int start, int level,
+      int[] leafCounter)
+    {
       Decoder dest = new Decoder();
-      createDecoder(dest, source, start, level);
+      createDecoder(dest, source, start, level, leafCounter);
       return dest;
     }
 
     private void createDecoder(Decoder dest, short[] source, int start,
-      int level)
+      int level, int[] leafCounter)
     {
       int next = 0;
       int i = 0;
-      while (i <= leafCounter && next < LEAVES_OFFSET) {
+      while (i <= leafCounter[0] && next < LEAVES_OFFSET) {
         i += source[start + next++] & 0xff;
       }
 
       if (level < next && next < LEAVES_OFFSET) {
-        dest.branch[0] = createDecoder(source, start, level + 1);
-        dest.branch[1] = createDecoder(source, start, level + 1);
+        dest.branch[0] = createDecoder(source, start, level + 1, leafCounter);
+        dest.branch[1] = createDecoder(source, start, level + 1, leafCounter);
       }
       else {
-        i = start + LEAVES_OFFSET + leafCounter++;
+        i = start + LEAVES_OFFSET + leafCounter[0]++;
         if (i < source.length) {
           dest.leafValue = source[i] & 0xff;
         }
       }
     }
 
+    private void createLookupTables() {
+      int size = 1 << LOOKUP_BITS;
+      lookupLength = new byte[size];
+      lookupValue = new int[size];
+      lookupNode = new Decoder[size];
+      for (int index=0; index<size; index++) {
+        Decoder d = this;
+        int length = 0;
+        while (d.branch[0] != null && length < LOOKUP_BITS) {
+          d = d.branch[(index >> (LOOKUP_BITS - 1 - length)) & 1];
+          length++;
+        }
+        if (d.branch[0] == null) {
+          lookupLength[index] = (byte) length;
+          lookupValue[index] = d.leafValue;
+        }
+        else {
+          lookupLength[index] = -1;
+          lookupNode[index] = d;
+        }
+      }
+    }
+
     public int decode(RandomAccessInputStream bb) throws IOException {
       Decoder d = this;
       while (d.branch[0] != null) {
@@ -211,6 +291,42 @@ public class HuffmanCodec extends BaseCodec {
       return d.leafValue;
     }
 
+    int decode(BitReader bits) {
+      int index = bits.peekBits(LOOKUP_BITS);
+      int length = lookupLength[index];
+      if (length >= 0) {
+        bits.skipBits(length);
+        return lookupValue[index];
+      }
+      bits.skipBits(LOOKUP_BITS);
+      Decoder d = lookupNode[index];
+      while (d.branch[0] != null) {
+        d = d.branch[bits.readBits(1)];
+      }
+      return d.leafValue;
+    }
+
+  }
+
+  /** Compares Huffman tables by content. */
+  private static class TableKey {
+    private final short[] table;
+    private final int hash;
+
+    public TableKey(short[] table) {
+      this.table = table.clone();
+      this.hash = Arrays.hashCode(table);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof TableKey && Arrays.equals(table, ((TableKey) o).table);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
   }
 
 }
@@ -266,6 +266,13 @@ public class JPEG2000Codec extends BaseCodec {
    * {@link CodecOptions#interleaved interleaved}
    * {@link CodecOptions#littleEndian littleEndian}
    *
+   * If a {@link JPEG2000CodecOptions} is supplied, then the optional
+   * {@link JPEG2000CodecOptions#resolution resolution},
+   * {@link JPEG2000CodecOptions#region region} and
+   * {@link JPEG2000CodecOptions#qualityLayers qualityLayers} fields select
+   * the part of the codestream that is decoded; the returned array then
+   * contains only the pixels of the selected region and resolution.
+   *
    * @see Codec#decompress(byte[], CodecOptions)
    */
   @Override
@@ -333,12 +340,13 @@ public class JPEG2000Codec extends BaseCodec {
    * Initializes the JAI ImageIO dependency service. This is called at the
    * beginning of the {@link #compress} and {@link #decompress} methods to
    * avoid having the constructor's method definition contain a checked
-   * exception.
+   * exception.  The service creates a separate image reader for every call,
+   * so a single codec may be used to decode several streams concurrently.
    *
    * @throws FormatException If there is an error initializing JAI ImageIO
    *   services.
    */
-  private void initialize() throws FormatException {
+  private synchronized void initialize() throws FormatException {
     if (service != null) return;
     try {
       ServiceFactory factory = new ServiceFactory();
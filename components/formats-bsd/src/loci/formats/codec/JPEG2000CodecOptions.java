@@ -32,6 +32,8 @@
 
 package loci.formats.codec;
 
+import loci.common.Region;
+
 /**
  * Options for compressing and decompressing JPEG-2000 data.
  */
@@ -65,6 +67,24 @@ public class JPEG2000CodecOptions extends CodecOptions {
    */
   public Integer resolution;
 
+  /**
+   * The region to decode, in the coordinates of the selected resolution
+   * level, as would be provided to:
+   * {@link com.sun.media.imageio.plugins.jpeg2000.J2KImageReadParam#setSourceRegion(java.awt.Rectangle)}
+   * (READ). Only the codestream tiles that intersect the region are decoded.
+   * Leaving this value <code>null</code> signifies that the whole image
+   * will be decoded.
+   */
+  public Region region;
+
+  /**
+   * The number of quality layers to decode as would be provided to:
+   * {@link com.sun.media.imageio.plugins.jpeg2000.J2KImageReadParam#setQualityLayers(int)}
+   * (READ). Leaving this value <code>null</code> signifies that all of the
+   * layers in the codestream will be decoded.
+   */
+  public Integer qualityLayers;
+
   /**
    * Whether or not to write a boxed stream, i.e. with SOC and SIZ markers.
    * By default, a raw code stream is written.
@@ -91,6 +111,11 @@ public class JPEG2000CodecOptions extends CodecOptions {
       }
       numDecompositionLevels = j2kOptions.numDecompositionLevels;
       resolution = j2kOptions.resolution;
+      if (j2kOptions.region != null) {
+        Region r = j2kOptions.region;
+        region = new Region(r.x, r.y, r.width, r.height);
+      }
+      qualityLayers = j2kOptions.qualityLayers;
     }
   }
 
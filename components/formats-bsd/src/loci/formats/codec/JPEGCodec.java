@@ -33,15 +33,21 @@
 package loci.formats.codec;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 
+import javax.imageio.IIOException;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
-import loci.common.DataTools;
 import loci.common.RandomAccessInputStream;
 import loci.formats.FormatException;
 import loci.formats.gui.AWTImageTools;
@@ -93,14 +99,40 @@ public class JPEGCodec extends BaseCodec {
    *  {@link CodecOptions#interleaved interleaved}
    *  {@link CodecOptions#littleEndian littleEndian}
    *
+   * Huffman-coded DCT streams are decoded with {@link JPEGDecoder};
+   * anything else is passed to ImageIO, or to {@link LosslessJPEGCodec}.
+   * Either way, streams that ImageIO considers to be YCbCr are converted
+   * to RGB.  If {@link CodecOptions#ycbcr ycbcr} is set, all other three
+   * component streams are converted as well.
+   *
    * @see Codec#decompress(RandomAccessInputStream, CodecOptions)
    */
   @Override
   public byte[] decompress(RandomAccessInputStream in, CodecOptions options)
     throws FormatException, IOException
   {
-    BufferedImage b;
+    if (options == null) options = CodecOptions.getDefaultOptions();
     long fp = in.getFilePointer();
+
+    try {
+      JPEGDecoder decoder = new JPEGDecoder(in);
+      boolean ycbcr = decoder.isYCbCr() ||
+        (options.ycbcr && decoder.getComponentCount() == 3);
+      return decoder.decode(null, 0, 0, decoder.getWidth(),
+        decoder.getHeight(), options.interleaved, ycbcr);
+    }
+    catch (FormatException e) {
+      // lossless, 12-bit or otherwise unusual; fall back to ImageIO
+      LOGGER.debug("Could not decode JPEG stream directly", e);
+      in.seek(fp);
+    }
+    catch (RuntimeException e) {
+      // corrupt stream that the decoder did not detect; let ImageIO decide
+      LOGGER.debug("Could not decode JPEG stream directly", e);
+      in.seek(fp);
+    }
+
+    byte[][] buf;
     try {
       try {
         while (in.read() != (byte) 0xff || in.read() != (byte) 0xd8);
@@ -110,7 +142,21 @@ public class JPEGCodec extends BaseCodec {
         in.seek(fp);
       }
 
-      b = ImageIO.read(new BufferedInputStream(new DataInputStream(in), 8192));
+      InputStream stream =
+        new BufferedInputStream(new DataInputStream(in), 8192);
+      if (options.ycbcr) {
+        // read the samples without ImageIO's own color conversion, so that
+        // three component streams are converted exactly once, as above
+        buf = AWTImageTools.getPixelBytes(readRaster(stream),
+          options.littleEndian);
+        if (buf.length == 3) {
+          JPEGDecoder.convertToRGB(buf[0], buf[1], buf[2]);
+        }
+      }
+      else {
+        BufferedImage b = ImageIO.read(stream);
+        buf = AWTImageTools.getPixelBytes(b, options.littleEndian);
+      }
     }
     catch (IOException exc) {
       // probably a lossless JPEG; delegate to LosslessJPEGCodec
@@ -118,36 +164,6 @@ public class JPEGCodec extends BaseCodec {
       return new LosslessJPEGCodec().decompress(in, options);
     }
 
-    if (options == null) options = CodecOptions.getDefaultOptions();
-
-    byte[][] buf = AWTImageTools.getPixelBytes(b, options.littleEndian);
-
-    // correct for YCbCr encoding, if necessary
-    if (options.ycbcr && buf.length == 3) {
-      int nBytes = buf[0].length / (b.getWidth() * b.getHeight());
-      int mask = (int) (Math.pow(2, nBytes * 8) - 1);
-      for (int i=0; i<buf[0].length; i+=nBytes) {
-        double y = DataTools.bytesToInt(buf[0], i, nBytes, options.littleEndian);
-        double cb = DataTools.bytesToInt(buf[1], i, nBytes, options.littleEndian);
-        double cr = DataTools.bytesToInt(buf[2], i, nBytes, options.littleEndian);
-
-        cb = Math.max(0, cb - 128);
-        cr = Math.max(0, cr - 128);
-
-        int red = (int) (y + 1.402 * cr);
-        int green = (int) (y - 0.34414 * cb - 0.71414 * cr);
-        int blue = (int) (y + 1.772 * cb);
-
-        red = (int) (Math.min(red, mask)) & mask;
-        green = (int) (Math.min(green, mask)) & mask;
-        blue = (int) (Math.min(blue, mask)) & mask;
-
-        DataTools.unpackBytes(red, buf[0], i, nBytes, options.littleEndian);
-        DataTools.unpackBytes(green, buf[1], i, nBytes, options.littleEndian);
-        DataTools.unpackBytes(blue, buf[2], i, nBytes, options.littleEndian);
-      }
-    }
-
     byte[] rtn = new byte[buf.length * buf[0].length];
     if (buf.length == 1) rtn = buf[0];
     else {
@@ -167,4 +183,30 @@ public class JPEGCodec extends BaseCodec {
     }
     return rtn;
   }
+
+  // -- Helper methods --
+
+  /** Reads the first image in the given stream as unconverted samples. */
+  private static WritableRaster readRaster(InputStream stream)
+    throws IOException
+  {
+    Iterator<ImageReader> readers =
+      ImageIO.getImageReadersByFormatName("jpeg");
+    if (!readers.hasNext()) {
+      throw new IIOException("No JPEG reader found");
+    }
+    ImageReader reader = readers.next();
+    ImageInputStream input = ImageIO.createImageInputStream(stream);
+    try {
+      reader.setInput(input, true, true);
+      Raster raster = reader.readRaster(0, null);
+      return Raster.createWritableRaster(raster.getSampleModel(),
+        raster.getDataBuffer(), null);
+    }
+    finally {
+      reader.dispose();
+      input.close();
+    }
+  }
+
 }
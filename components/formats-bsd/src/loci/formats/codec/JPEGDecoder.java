@@ -0,0 +1,1977 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.codec;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.FormatException;
+import loci.formats.UnsupportedCompressionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pure Java decoder for Huffman-coded baseline, extended sequential and
+ * progressive JPEG streams.
+ *
+ * Any rectangle of the image can be decoded.  For single-scan sequential
+ * streams only the MCUs up to the last requested MCU row are entropy decoded,
+ * and decoding starts from the nearest restart marker (or from a previously
+ * recorded MCU row checkpoint if the stream has no restart markers).  Only
+ * the blocks that intersect the requested region are inverse transformed,
+ * and the resulting samples are written directly into the caller's buffer.
+ *
+ * No AWT classes are used.  Once constructed, a decoder may be shared
+ * between threads; all per-decode state is local to the decode call.
+ */
+public class JPEGDecoder {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(JPEGDecoder.class);
+
+  private static final int SOF0 = 0xffc0; // baseline DCT
+  private static final int SOF1 = 0xffc1; // extended sequential DCT
+  private static final int SOF2 = 0xffc2; // progressive DCT
+  private static final int SOF3 = 0xffc3; // lossless (sequential)
+  private static final int DHT = 0xffc4; // define Huffman table(s)
+  private static final int SOF5 = 0xffc5;
+  private static final int SOF7 = 0xffc7;
+  private static final int SOF9 = 0xffc9;
+  private static final int SOF11 = 0xffcb;
+  private static final int DAC = 0xffcc; // define arithmetic coding conditions
+  private static final int SOF13 = 0xffcd;
+  private static final int SOF15 = 0xffcf;
+
+  private static final int RST_0 = 0xffd0;
+  private static final int RST_7 = 0xffd7;
+
+  private static final int SOI = 0xffd8; // start of image
+  private static final int EOI = 0xffd9; // end of image
+  private static final int SOS = 0xffda; // start of scan
+  private static final int DQT = 0xffdb; // define quantization table(s)
+  private static final int DNL = 0xffdc; // define number of lines
+  private static final int DRI = 0xffdd; // define restart interval
+  private static final int APP0 = 0xffe0; // JFIF
+  private static final int APP1 = 0xffe1; // Exif
+  private static final int APP14 = 0xffee; // Adobe
+  private static final int APP15 = 0xffef;
+
+  /** Zig-zag scan position to natural (row-major) coefficient index. */
+  private static final int[] NATURAL_ORDER = {
+    0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+    12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+    35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+    58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63,
+    // extra entries guard against corrupt run lengths
+    63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63
+  };
+
+  /** Number of bits resolved by a single Huffman table lookup. */
+  private static final int LOOKAHEAD = 9;
+
+  private static final int BUFFER_SIZE = 16384;
+
+  // chroma upsampling methods
+  private static final int REPLICATE = 0;
+  private static final int H2V1 = 1;
+  private static final int H2V2 = 2;
+
+  // fixed point constants for the integer inverse DCT
+  private static final int CONST_BITS = 13;
+  private static final int PASS1_BITS = 2;
+  private static final int FIX_0_298631336 = 2446;
+  private static final int FIX_0_390180644 = 3196;
+  private static final int FIX_0_541196100 = 4433;
+  private static final int FIX_0_765366865 = 6270;
+  private static final int FIX_0_899976223 = 7373;
+  private static final int FIX_1_175875602 = 9633;
+  private static final int FIX_1_501321110 = 12299;
+  private static final int FIX_1_847759065 = 15137;
+  private static final int FIX_1_961570560 = 16069;
+  private static final int FIX_2_053119869 = 16819;
+  private static final int FIX_2_562915447 = 20995;
+  private static final int FIX_3_072711026 = 25172;
+
+  // YCbCr to RGB lookup tables
+  private static final int[] CR_R = new int[256];
+  private static final int[] CB_B = new int[256];
+  private static final int[] CR_G = new int[256];
+  private static final int[] CB_G = new int[256];
+
+  static {
+    for (int i=0; i<256; i++) {
+      int x = i - 128;
+      CR_R[i] = (fix(1.40200) * x + (1 << 15)) >> 16;
+      CB_B[i] = (fix(1.77200) * x + (1 << 15)) >> 16;
+      CR_G[i] = -fix(0.71414) * x;
+      CB_G[i] = -fix(0.34414) * x + (1 << 15);
+    }
+  }
+
+  // -- Fields --
+
+  /** Complete JPEG stream, or null if data is read from {@link #in}. */
+  private byte[] data;
+
+  /** Absolute position of data[0]. */
+  private long base;
+
+  private RandomAccessInputStream in;
+
+  private int width, height;
+  private boolean progressive;
+  private Component[] components;
+  private int maxH, maxV;
+  private int mcuWidth, mcuHeight;
+  private int mcusPerLine, mcuRows;
+
+  private boolean jfif, exif, adobe;
+  private int adobeTransform = -1;
+
+  private List<Scan> scans = new ArrayList<Scan>();
+
+  /** True if the first scan contains every component of a sequential frame. */
+  private boolean singleScan;
+
+  private volatile long[] restartMarkers;
+  private Checkpoint[] checkpoints;
+  private SoftReference<short[][]> coefficientCache;
+
+  // -- Constructors --
+
+  /**
+   * Constructs a decoder for the JPEG stream stored in the given array.
+   */
+  public JPEGDecoder(byte[] jpeg) throws FormatException {
+    data = jpeg;
+    base = 0;
+    try {
+      parse(new RandomAccessInputStream(jpeg));
+    }
+    catch (IOException e) {
+      throw new FormatException("Could not parse JPEG stream", e);
+    }
+    computeGeometry();
+  }
+
+  /**
+   * Constructs a decoder for the JPEG stream that starts at the current
+   * position of the given stream.  Entropy coded data for single-scan
+   * streams is read on demand, so the stream must remain open for as long
+   * as the decoder is used.
+   */
+  public JPEGDecoder(RandomAccessInputStream in)
+    throws FormatException, IOException
+  {
+    this(in, 0, 0, null);
+  }
+
+  /**
+   * Constructs a decoder for the JPEG stream that starts at the current
+   * position of the given stream.
+   *
+   * @param width image width to use instead of the width in the frame
+   *   header, or 0 to use the frame header
+   * @param height image height to use instead of the height in the frame
+   *   header, or 0 to use the frame header
+   * @param restartMarkers previously recorded restart marker offsets, as
+   *   returned by {@link #getRestartMarkers()}, or null.  The offsets may be
+   *   relative to any origin; the first offset must correspond to the start
+   *   of the scan data.
+   */
+  public JPEGDecoder(RandomAccessInputStream in, int width, int height,
+    long[] restartMarkers)
+    throws FormatException, IOException
+  {
+    this.in = in;
+    boolean littleEndian = in.isLittleEndian();
+    in.order(false);
+    try {
+      parse(in);
+    }
+    finally {
+      in.order(littleEndian);
+    }
+    if (width > 0 && height > 0) {
+      this.width = width;
+      this.height = height;
+    }
+    computeGeometry();
+    if (restartMarkers != null) {
+      useRestartMarkers(restartMarkers);
+    }
+  }
+
+  // -- JPEGDecoder API methods --
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /** Returns the number of components (and thus output channels). */
+  public int getComponentCount() {
+    return components.length;
+  }
+
+  public boolean isProgressive() {
+    return progressive;
+  }
+
+  /** Returns the number of MCUs between restart markers, or 0. */
+  public int getRestartInterval() {
+    return scans.get(0).restartInterval;
+  }
+
+  /**
+   * Returns true if the first three components are YCbCr encoded and will be
+   * converted to RGB by default.  This uses the same rules as ImageIO: an
+   * Adobe marker is honoured if present, then a JFIF marker.  Otherwise
+   * components named 'R', 'G' and 'B' are RGB, and components of an Exif
+   * stream, components numbered 1, 2 and 3, or subsampled components are
+   * YCbCr.
+   */
+  public boolean isYCbCr() {
+    if (components.length == 4) {
+      return adobe && adobeTransform == 2;
+    }
+    if (components.length != 3) {
+      return false;
+    }
+    if (adobe) {
+      return adobeTransform == 1;
+    }
+    if (jfif) {
+      return true;
+    }
+    if (components[0].id == 'R' && components[1].id == 'G' &&
+      components[2].id == 'B')
+    {
+      return false;
+    }
+    if (exif || (components[0].id == 1 && components[1].id == 2 &&
+      components[2].id == 3))
+    {
+      return true;
+    }
+    for (int c=1; c<3; c++) {
+      if (components[c].h != components[0].h ||
+        components[c].v != components[0].v)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the absolute offsets of the start of each restart interval's
+   * entropy coded data.  The first offset is the start of the scan data.
+   * The stream is indexed when this is first called; the result can be
+   * passed to
+   * {@link #JPEGDecoder(RandomAccessInputStream, int, int, long[])}
+   * to avoid indexing the same stream again.
+   */
+  public long[] getRestartMarkers() throws IOException {
+    if (!singleScan || getRestartInterval() == 0) {
+      return new long[] {scans.get(0).dataStart};
+    }
+    long[] markers = getRestartIndex();
+    return Arrays.copyOf(markers, markers.length);
+  }
+
+  /**
+   * Decodes the whole image.
+   * @see #decode(byte[], int, int, int, int, boolean)
+   */
+  public byte[] decode(boolean interleaved)
+    throws FormatException, IOException
+  {
+    return decode(null, 0, 0, width, height, interleaved);
+  }
+
+  /**
+   * Decodes the given region into <code>buf</code>, allocating a new array
+   * if <code>buf</code> is null.  One byte is written per component and
+   * pixel; YCbCr data is converted to RGB if {@link #isYCbCr()} is true.
+   */
+  public byte[] decode(byte[] buf, int x, int y, int w, int h,
+    boolean interleaved)
+    throws FormatException, IOException
+  {
+    return decode(buf, x, y, w, h, interleaved, isYCbCr());
+  }
+
+  /**
+   * Decodes the given region into <code>buf</code>, allocating a new array
+   * if <code>buf</code> is null.
+   *
+   * @param ycbcr true if the first three components should be converted
+   *   from YCbCr to RGB
+   */
+  public byte[] decode(byte[] buf, int x, int y, int w, int h,
+    boolean interleaved, boolean ycbcr)
+    throws FormatException, IOException
+  {
+    int channels = components.length;
+    int size = w * h * channels;
+    if (buf == null) {
+      buf = new byte[size];
+    }
+    else if (buf.length < size) {
+      throw new FormatException("Buffer too small: expected " + size +
+        " bytes, got " + buf.length);
+    }
+    if (interleaved) {
+      decode(buf, 0, w * channels, channels, 1, x, y, w, h, ycbcr);
+    }
+    else {
+      decode(buf, 0, w, 1, w * h, x, y, w, h, ycbcr);
+    }
+    return buf;
+  }
+
+  /**
+   * Decodes the given region into an arbitrary buffer layout.  The sample
+   * for component <code>c</code> of the pixel at region coordinates
+   * (<code>i</code>, <code>j</code>) is stored at
+   * <code>offset + j*scanlineStride + i*pixelStride + c*bandStride</code>.
+   *
+   * @param ycbcr true if the first three components should be converted
+   *   from YCbCr to RGB
+   */
+  public void decode(byte[] dst, int offset, int scanlineStride,
+    int pixelStride, int bandStride, int x, int y, int w, int h,
+    boolean ycbcr)
+    throws FormatException, IOException
+  {
+    if (x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > width ||
+      y + h > height)
+    {
+      throw new FormatException("Invalid region [x=" + x + ", y=" + y +
+        ", w=" + w + ", h=" + h + "] for " + width + "x" + height +
+        " JPEG image");
+    }
+
+    int firstCol = x / mcuWidth;
+    int lastCol = (x + w - 1) / mcuWidth;
+    int firstRow = y / mcuHeight;
+    int lastRow = (y + h - 1) / mcuHeight;
+    if (maxH > 1 || maxV > 1) {
+      // chroma upsampling may need samples from the neighbouring MCUs
+      firstCol = Math.max(firstCol - 1, 0);
+      lastCol = Math.min(lastCol + 1, mcusPerLine - 1);
+      firstRow = Math.max(firstRow - 1, 0);
+      lastRow = Math.min(lastRow + 1, mcuRows - 1);
+    }
+
+    byte[][] planes = new byte[components.length][];
+    int[] strides = new int[components.length];
+    for (int c=0; c<components.length; c++) {
+      strides[c] = (lastCol - firstCol + 1) * components[c].h * 8;
+      planes[c] =
+        new byte[strides[c] * (lastRow - firstRow + 1) * components[c].v * 8];
+    }
+
+    MCURegion region = new MCURegion(firstCol, lastCol, firstRow, lastRow,
+      planes, strides);
+    if (singleScan) {
+      if (scans.get(0).restartInterval > 0) {
+        decodeIntervals(region);
+      }
+      else {
+        decodeRows(region);
+      }
+    }
+    else {
+      transformCoefficients(getCoefficients(), region);
+    }
+
+    writeSamples(region, dst, offset, scanlineStride, pixelStride,
+      bandStride, x, y, w, h, ycbcr);
+  }
+
+  /** Returns the width of the image decoded by {@link #decodeReduced}. */
+  public int getReducedWidth() {
+    return (width + 7) / 8;
+  }
+
+  /** Returns the height of the image decoded by {@link #decodeReduced}. */
+  public int getReducedHeight() {
+    return (height + 7) / 8;
+  }
+
+  /**
+   * Decodes the whole image at 1/8 scale.  Each output pixel is the mean of
+   * one 8x8 block, which is taken from the block's DC coefficient, so no
+   * inverse transforms are needed; this is much faster than decoding at full
+   * resolution when only a thumbnail is wanted.  Subsampled components are
+   * replicated, and the output buffer layout is the same as for
+   * {@link #decode(byte[], int, int, int, int, int, int, int, int, boolean)}.
+   *
+   * @param ycbcr true if the first three components should be converted
+   *   from YCbCr to RGB
+   */
+  public void decodeReduced(byte[] dst, int offset, int scanlineStride,
+    int pixelStride, int bandStride, boolean ycbcr)
+    throws FormatException, IOException
+  {
+    int n = components.length;
+    byte[][] planes = new byte[n][];
+    int[] strides = new int[n];
+    for (int c=0; c<n; c++) {
+      strides[c] = mcusPerLine * components[c].h;
+      planes[c] = new byte[strides[c] * mcuRows * components[c].v];
+    }
+
+    MCURegion region = new MCURegion(0, mcusPerLine - 1, 0, mcuRows - 1,
+      planes, strides, true);
+    if (singleScan) {
+      if (scans.get(0).restartInterval > 0) {
+        decodeIntervals(region);
+      }
+      else {
+        decodeRows(region);
+      }
+    }
+    else {
+      transformCoefficients(getCoefficients(), region);
+    }
+
+    int w = getReducedWidth();
+    int h = getReducedHeight();
+    int[][] columns = new int[n][w];
+    for (int c=0; c<n; c++) {
+      for (int i=0; i<w; i++) {
+        columns[c][i] = (i * components[c].h) / maxH;
+      }
+    }
+
+    boolean convert = ycbcr && n >= 3;
+    int[] rows = new int[n];
+    for (int j=0; j<h; j++) {
+      for (int c=0; c<n; c++) {
+        rows[c] = ((j * components[c].v) / maxV) * strides[c];
+      }
+      int out = offset + j * scanlineStride;
+      for (int i=0; i<w; i++, out+=pixelStride) {
+        if (convert) {
+          int lum = planes[0][rows[0] + columns[0][i]] & 0xff;
+          int cb = planes[1][rows[1] + columns[1][i]] & 0xff;
+          int cr = planes[2][rows[2] + columns[2][i]] & 0xff;
+          int r = clamp(lum + CR_R[cr]);
+          int g = clamp(lum + ((CB_G[cb] + CR_G[cr]) >> 16));
+          int b = clamp(lum + CB_B[cb]);
+          if (n == 4) {
+            // YCCK; invert to get CMY
+            r = 255 - r;
+            g = 255 - g;
+            b = 255 - b;
+            dst[out + 3 * bandStride] = planes[3][rows[3] + columns[3][i]];
+          }
+          dst[out] = (byte) r;
+          dst[out + bandStride] = (byte) g;
+          dst[out + 2 * bandStride] = (byte) b;
+        }
+        else {
+          for (int c=0; c<n; c++) {
+            dst[out + c * bandStride] = planes[c][rows[c] + columns[c][i]];
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Converts separate planes of YCbCr samples to RGB in place, with the
+   * same arithmetic that is used when decoding with conversion enabled.
+   */
+  static void convertToRGB(byte[] y, byte[] cb, byte[] cr) {
+    for (int i=0; i<y.length; i++) {
+      int lum = y[i] & 0xff;
+      int b = cb[i] & 0xff;
+      int r = cr[i] & 0xff;
+      y[i] = (byte) clamp(lum + CR_R[r]);
+      cb[i] = (byte) clamp(lum + ((CB_G[b] + CR_G[r]) >> 16));
+      cr[i] = (byte) clamp(lum + CB_B[b]);
+    }
+  }
+
+  // -- Helper methods - parsing --
+
+  private void parse(RandomAccessInputStream s)
+    throws FormatException, IOException
+  {
+    // skip anything before the start of image marker
+    while (true) {
+      if (s.getFilePointer() >= s.length() - 1) {
+        throw new FormatException("No JPEG start of image marker found");
+      }
+      if ((s.read() & 0xff) == 0xff) {
+        if ((s.read() & 0xff) == 0xd8) {
+          break;
+        }
+        s.seek(s.getFilePointer() - 1);
+      }
+    }
+    long start = s.getFilePointer() - 2;
+
+    HuffmanTable[] dcTables = new HuffmanTable[4];
+    HuffmanTable[] acTables = new HuffmanTable[4];
+    int[][] quantTables = new int[4][];
+    int restartInterval = 0;
+    boolean sawApplicationMarker = false;
+
+    while (true) {
+      int marker = nextMarker(s);
+      if (marker < 0 || marker == EOI) {
+        break;
+      }
+      if (marker == SOI || (marker >= RST_0 && marker <= RST_7)) {
+        continue;
+      }
+      long fp = s.getFilePointer();
+      int length = s.readShort() & 0xffff;
+      long end = fp + length;
+
+      if (!sawApplicationMarker && marker >= APP0 && marker <= APP15) {
+        // like ImageIO, treat the stream as Exif if the first application
+        // marker is APP1, whatever it contains
+        sawApplicationMarker = true;
+        exif = marker == APP1;
+      }
+
+      if (marker == SOF0 || marker == SOF1 || marker == SOF2) {
+        parseFrame(s, marker == SOF2);
+      }
+      else if (marker == SOF3 || (marker >= SOF5 && marker <= SOF7) ||
+        (marker >= SOF9 && marker <= SOF11) ||
+        (marker >= SOF13 && marker <= SOF15) || marker == DAC)
+      {
+        throw new UnsupportedCompressionException(
+          "Unsupported JPEG process (marker 0x" +
+          Integer.toHexString(marker) + ")");
+      }
+      else if (marker == DHT) {
+        while (s.getFilePointer() < end) {
+          int index = s.read() & 0xff;
+          int[] counts = new int[17];
+          int total = 0;
+          for (int i=1; i<=16; i++) {
+            counts[i] = s.read() & 0xff;
+            total += counts[i];
+          }
+          int[] values = new int[total];
+          for (int i=0; i<total; i++) {
+            values[i] = s.read() & 0xff;
+          }
+          HuffmanTable table = new HuffmanTable(counts, values);
+          if ((index >> 4) == 0) {
+            dcTables[index & 3] = table;
+          }
+          else {
+            acTables[index & 3] = table;
+          }
+        }
+      }
+      else if (marker == DQT) {
+        while (s.getFilePointer() < end) {
+          int index = s.read() & 0xff;
+          int[] table = new int[64];
+          for (int i=0; i<64; i++) {
+            table[NATURAL_ORDER[i]] =
+              (index >> 4) == 0 ? s.read() & 0xff : s.readShort() & 0xffff;
+          }
+          quantTables[index & 3] = table;
+        }
+      }
+      else if (marker == DRI) {
+        restartInterval = s.readShort() & 0xffff;
+      }
+      else if (marker == DNL) {
+        height = s.readShort() & 0xffff;
+      }
+      else if (marker == APP0) {
+        jfif |= length >= 7 && "JFIF".equals(s.readString(4));
+      }
+      else if (marker == APP14) {
+        if (length >= 14 && "Adobe".equals(s.readString(5))) {
+          s.skipBytes(6);
+          adobe = true;
+          adobeTransform = s.read() & 0xff;
+        }
+      }
+      else if (marker == SOS) {
+        if (components == null) {
+          throw new FormatException("Start of scan found before frame header");
+        }
+        Scan scan = parseScan(s, dcTables, acTables, restartInterval);
+        for (int c : scan.components) {
+          Component component = components[c];
+          if (component.quant == null) {
+            component.quant = quantTables[component.tq];
+            if (component.quant == null) {
+              throw new FormatException("Missing quantization table " +
+                component.tq);
+            }
+          }
+        }
+        scans.add(scan);
+        if (scans.size() == 1 && !progressive &&
+          scan.components.length == components.length)
+        {
+          // everything needed is in this scan; don't bother finding the end
+          singleScan = true;
+          return;
+        }
+        end = findMarker(s, scan.dataStart);
+      }
+
+      if (end > s.length()) {
+        break;
+      }
+      s.seek(end);
+    }
+
+    if (components == null || scans.size() == 0) {
+      throw new FormatException("No image data found in JPEG stream");
+    }
+
+    if (data == null) {
+      // multi-scan images are decoded in one pass, so keep the whole stream
+      // in memory rather than seeking back and forth
+      long end = Math.min(s.getFilePointer(), s.length());
+      data = new byte[(int) (end - start)];
+      s.seek(start);
+      s.readFully(data);
+      base = start;
+      in = null;
+    }
+  }
+
+  private void parseFrame(RandomAccessInputStream s, boolean progressive)
+    throws FormatException, IOException
+  {
+    int precision = s.read() & 0xff;
+    if (precision != 8) {
+      throw new UnsupportedCompressionException(
+        precision + "-bit JPEG data is not supported");
+    }
+    this.progressive = progressive;
+    height = s.readShort() & 0xffff;
+    width = s.readShort() & 0xffff;
+    int count = s.read() & 0xff;
+    if (count != 1 && count != 3 && count != 4) {
+      throw new UnsupportedCompressionException(
+        "Unsupported JPEG component count: " + count);
+    }
+    components = new Component[count];
+    for (int c=0; c<count; c++) {
+      Component component = new Component();
+      component.id = s.read() & 0xff;
+      int sampling = s.read() & 0xff;
+      component.h = count == 1 ? 1 : sampling >> 4;
+      component.v = count == 1 ? 1 : sampling & 0xf;
+      component.tq = (s.read() & 0xff) & 3;
+      if (component.h < 1 || component.h > 4 || component.v < 1 ||
+        component.v > 4)
+      {
+        throw new FormatException("Invalid JPEG sampling factors: " +
+          Integer.toHexString(sampling));
+      }
+      components[c] = component;
+    }
+  }
+
+  private Scan parseScan(RandomAccessInputStream s, HuffmanTable[] dcTables,
+    HuffmanTable[] acTables, int restartInterval)
+    throws FormatException, IOException
+  {
+    Scan scan = new Scan();
+    int count = s.read() & 0xff;
+    scan.components = new int[count];
+    scan.dc = new HuffmanTable[count];
+    scan.ac = new HuffmanTable[count];
+    for (int i=0; i<count; i++) {
+      int id = s.read() & 0xff;
+      int tables = s.read() & 0xff;
+      scan.components[i] = -1;
+      for (int c=0; c<components.length; c++) {
+        if (components[c].id == id) {
+          scan.components[i] = c;
+        }
+      }
+      if (scan.components[i] < 0) {
+        throw new FormatException("Unknown JPEG component ID: " + id);
+      }
+      scan.dc[i] = dcTables[(tables >> 4) & 3];
+      scan.ac[i] = acTables[tables & 3];
+    }
+    scan.ss = s.read() & 0xff;
+    scan.se = s.read() & 0xff;
+    int approximation = s.read() & 0xff;
+    scan.ah = approximation >> 4;
+    scan.al = approximation & 0xf;
+    scan.restartInterval = restartInterval;
+    scan.dataStart = s.getFilePointer();
+    scan.progressive = progressive;
+    scan.se = Math.min(scan.se, 63);
+    if (!progressive) {
+      scan.ss = 0;
+      scan.se = 63;
+      scan.ah = 0;
+      scan.al = 0;
+    }
+
+    for (int i=0; i<count; i++) {
+      boolean needDC = !progressive || (scan.ss == 0 && scan.ah == 0);
+      boolean needAC = !progressive || scan.ss > 0;
+      if ((needDC && scan.dc[i] == null) || (needAC && scan.ac[i] == null)) {
+        throw new FormatException("Missing Huffman table for JPEG scan");
+      }
+    }
+    return scan;
+  }
+
+  /**
+   * Reads up to and including the next marker, and returns the marker code.
+   * Returns -1 if the end of the stream is reached.
+   */
+  private int nextMarker(RandomAccessInputStream s) throws IOException {
+    while (s.getFilePointer() < s.length() - 1) {
+      if ((s.read() & 0xff) != 0xff) {
+        continue;
+      }
+      int code = s.read() & 0xff;
+      while (code == 0xff && s.getFilePointer() < s.length()) {
+        code = s.read() & 0xff;
+      }
+      if (code != 0) {
+        return 0xff00 | code;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the position of the first marker at or after the given position
+   * that is not a restart marker, i.e. the end of a scan's entropy coded
+   * data.
+   */
+  private long findMarker(RandomAccessInputStream s, long position)
+    throws IOException
+  {
+    byte[] buf = new byte[BUFFER_SIZE];
+    long length = s.length();
+    while (position < length - 1) {
+      s.seek(position);
+      int n = s.read(buf, 0, (int) Math.min(buf.length, length - position));
+      if (n < 2) {
+        break;
+      }
+      for (int i=0; i<n-1; i++) {
+        if (buf[i] == (byte) 0xff) {
+          int code = buf[i + 1] & 0xff;
+          if (code != 0 && code != 0xff && (code < 0xd0 || code > 0xd7)) {
+            return position + i;
+          }
+        }
+      }
+      position += n - 1;
+    }
+    return length;
+  }
+
+  private void computeGeometry() throws FormatException {
+    if (width <= 0 || height <= 0) {
+      throw new FormatException("Invalid JPEG dimensions: " + width + "x" +
+        height);
+    }
+    maxH = 1;
+    maxV = 1;
+    for (Component c : components) {
+      maxH = Math.max(maxH, c.h);
+      maxV = Math.max(maxV, c.v);
+    }
+    mcuWidth = 8 * maxH;
+    mcuHeight = 8 * maxV;
+    mcusPerLine = (width + mcuWidth - 1) / mcuWidth;
+    mcuRows = (height + mcuHeight - 1) / mcuHeight;
+    for (Component c : components) {
+      c.blocksPerLine = mcusPerLine * c.h;
+      c.blockRows = mcuRows * c.v;
+      c.width = (width * c.h + maxH - 1) / maxH;
+      c.height = (height * c.v + maxV - 1) / maxV;
+      c.widthInBlocks = (c.width + 7) / 8;
+      c.heightInBlocks = (c.height + 7) / 8;
+    }
+    checkpoints = new Checkpoint[mcuRows];
+  }
+
+  // -- Helper methods - restart markers --
+
+  private int getIntervalCount() {
+    int interval = getRestartInterval();
+    return (mcusPerLine * mcuRows + interval - 1) / interval;
+  }
+
+  private long[] getRestartIndex() throws IOException {
+    long[] index = restartMarkers;
+    if (index == null) {
+      synchronized (this) {
+        if (restartMarkers == null) {
+          restartMarkers = indexRestartMarkers();
+        }
+        index = restartMarkers;
+      }
+    }
+    return index;
+  }
+
+  /** Scans the entropy coded data for restart markers. */
+  private long[] indexRestartMarkers() throws IOException {
+    long[] index = new long[getIntervalCount()];
+    index[0] = scans.get(0).dataStart;
+    int count = 1;
+
+    byte[] buf = new byte[BUFFER_SIZE];
+    long position = index[0];
+    scan:
+    while (count < index.length) {
+      int n = read(position, buf, 0, buf.length);
+      if (n < 2) {
+        break;
+      }
+      for (int i=0; i<n-1; i++) {
+        if (buf[i] == (byte) 0xff) {
+          int code = buf[i + 1] & 0xff;
+          if (code >= 0xd0 && code <= 0xd7) {
+            index[count++] = position + i + 2;
+            if (count == index.length) {
+              break scan;
+            }
+            i++;
+          }
+          else if (code != 0 && code != 0xff) {
+            break scan;
+          }
+        }
+      }
+      position += n - 1;
+    }
+
+    if (count < index.length) {
+      LOGGER.debug("Found {} of {} restart markers", count, index.length);
+      Arrays.fill(index, count, index.length, -1);
+    }
+    return index;
+  }
+
+  /**
+   * Uses the given restart marker offsets instead of scanning the stream,
+   * provided that the first and last offsets follow restart markers.
+   */
+  private void useRestartMarkers(long[] markers) throws IOException {
+    if (!singleScan || getRestartInterval() == 0 || markers.length == 0) {
+      return;
+    }
+    int count = getIntervalCount();
+    if (markers.length < count) {
+      LOGGER.debug("Expected {} restart markers, got {}", count,
+        markers.length);
+      return;
+    }
+    long[] index = new long[count];
+    long diff = scans.get(0).dataStart - markers[0];
+    for (int i=0; i<count; i++) {
+      index[i] = markers[i] + diff;
+    }
+    byte[] marker = new byte[2];
+    for (int i : new int[] {1, count - 1}) {
+      if (i <= 0) {
+        continue;
+      }
+      if (read(index[i] - 2, marker, 0, 2) != 2 || marker[0] != (byte) 0xff ||
+        (marker[1] & 0xff) != 0xd0 + ((i - 1) & 7))
+      {
+        LOGGER.debug("Restart marker {} not found at {}", i, index[i] - 2);
+        return;
+      }
+    }
+    restartMarkers = index;
+  }
+
+  // -- Helper methods - sequential decoding --
+
+  /** Decodes the region from a stream that has restart markers. */
+  private void decodeIntervals(MCURegion region)
+    throws FormatException, IOException
+  {
+    Scan scan = scans.get(0);
+    long[] index = getRestartIndex();
+    int interval = scan.restartInterval;
+    int total = mcusPerLine * mcuRows;
+    int first = (region.firstRow * mcusPerLine + region.firstCol) / interval;
+    int last = (region.lastRow * mcusPerLine + region.lastCol) / interval;
+
+    DecodeState state = new DecodeState(scan);
+    for (int k=first; k<=last; k++) {
+      int start = k * interval;
+      int end = Math.min(start + interval, total);
+
+      // find the last MCU in this interval that intersects the region
+      int lastNeeded = -1;
+      int startRow = Math.max(region.firstRow, start / mcusPerLine);
+      int endRow = Math.min(region.lastRow, (end - 1) / mcusPerLine);
+      for (int row=startRow; row<=endRow; row++) {
+        int lo = Math.max(start, row * mcusPerLine + region.firstCol);
+        int hi = Math.min(end - 1, row * mcusPerLine + region.lastCol);
+        if (lo <= hi) {
+          lastNeeded = hi;
+        }
+      }
+      if (lastNeeded < 0) {
+        continue;
+      }
+
+      state.reset(new BitReader(index[k] < 0 ? Long.MAX_VALUE : index[k]));
+      for (int mcu=start; mcu<=lastNeeded; mcu++) {
+        decodeMCU(state, mcu % mcusPerLine, mcu / mcusPerLine, region);
+      }
+    }
+  }
+
+  /**
+   * Decodes the region from a stream that has no restart markers, starting
+   * from the closest recorded MCU row checkpoint.
+   */
+  private void decodeRows(MCURegion region)
+    throws FormatException, IOException
+  {
+    Scan scan = scans.get(0);
+    DecodeState state = new DecodeState(scan);
+
+    Checkpoint checkpoint = null;
+    synchronized (this) {
+      for (int row=region.firstRow; row>0 && checkpoint == null; row--) {
+        checkpoint = checkpoints[row];
+      }
+    }
+    int startRow = 0;
+    if (checkpoint == null) {
+      state.reset(new BitReader(scan.dataStart));
+    }
+    else {
+      startRow = checkpoint.row;
+      checkpoint.restore(state);
+    }
+
+    for (int row=startRow; row<=region.lastRow; row++) {
+      if (row > startRow) {
+        synchronized (this) {
+          if (checkpoints[row] == null) {
+            checkpoints[row] = new Checkpoint(row, state);
+          }
+        }
+      }
+      int lastCol = row == region.lastRow ? region.lastCol : mcusPerLine - 1;
+      for (int col=0; col<=lastCol; col++) {
+        decodeMCU(state, col, row, region);
+      }
+    }
+  }
+
+  /**
+   * Decodes one MCU of a single-scan sequential stream, and transforms it
+   * into the region's sample planes if it intersects the region.
+   */
+  private void decodeMCU(DecodeState state, int col, int row, MCURegion region)
+    throws IOException
+  {
+    boolean needed = region.contains(col, row);
+    Scan scan = state.scan;
+    for (int i=0; i<scan.components.length; i++) {
+      int c = scan.components[i];
+      Component component = components[c];
+      for (int by=0; by<component.v; by++) {
+        for (int bx=0; bx<component.h; bx++) {
+          int[] block = state.block;
+          decodeBlock(state, i, block);
+          if (needed && region.reduced) {
+            int px = (col - region.firstCol) * component.h + bx;
+            int py = (row - region.firstRow) * component.v + by;
+            region.planes[c][py * region.strides[c] + px] =
+              dcSample(block[0], component.quant);
+          }
+          else if (needed) {
+            int stride = region.strides[c];
+            int px = ((col - region.firstCol) * component.h + bx) * 8;
+            int py = ((row - region.firstRow) * component.v + by) * 8;
+            idct(block, component.quant, state.workspace, region.planes[c],
+              py * stride + px, stride);
+          }
+        }
+      }
+    }
+  }
+
+  /** Decodes one sequential block into natural coefficient order. */
+  private static void decodeBlock(DecodeState state, int i, int[] block)
+    throws IOException
+  {
+    BitReader reader = state.reader;
+    Arrays.fill(block, 0);
+    int s = state.scan.dc[i].decode(reader);
+    if (s != 0) {
+      state.pred[i] += reader.receiveExtend(s);
+    }
+    block[0] = state.pred[i];
+
+    HuffmanTable ac = state.scan.ac[i];
+    for (int k=1; k<64; k++) {
+      int rs = ac.decode(reader);
+      int r = rs >> 4;
+      s = rs & 0xf;
+      if (s != 0) {
+        k += r;
+        block[NATURAL_ORDER[k]] = reader.receiveExtend(s);
+      }
+      else if (r == 15) {
+        k += 15;
+      }
+      else {
+        break;
+      }
+    }
+  }
+
+  // -- Helper methods - multi-scan decoding --
+
+  private short[][] getCoefficients() throws FormatException, IOException {
+    synchronized (this) {
+      short[][] coefficients =
+        coefficientCache == null ? null : coefficientCache.get();
+      if (coefficients == null) {
+        coefficients = new short[components.length][];
+        for (int c=0; c<components.length; c++) {
+          Component component = components[c];
+          coefficients[c] =
+            new short[component.blocksPerLine * component.blockRows * 64];
+        }
+        for (Scan scan : scans) {
+          decodeScan(scan, coefficients);
+        }
+        coefficientCache = new SoftReference<short[][]>(coefficients);
+      }
+      return coefficients;
+    }
+  }
+
+  /** Decodes all coefficients (or refinements) in the given scan. */
+  private void decodeScan(Scan scan, short[][] coefficients)
+    throws IOException
+  {
+    DecodeState state = new DecodeState(scan);
+    state.reset(new BitReader(scan.dataStart));
+
+    if (scan.components.length == 1) {
+      int c = scan.components[0];
+      Component component = components[c];
+      int total = component.widthInBlocks * component.heightInBlocks;
+      for (int n=0; n<total; n++) {
+        restart(state, n);
+        int bx = n % component.widthInBlocks;
+        int by = n / component.widthInBlocks;
+        int offset = (by * component.blocksPerLine + bx) * 64;
+        decodeUnit(state, 0, coefficients[c], offset);
+      }
+      return;
+    }
+
+    int total = mcusPerLine * mcuRows;
+    for (int n=0; n<total; n++) {
+      restart(state, n);
+      int col = n % mcusPerLine;
+      int row = n / mcusPerLine;
+      for (int i=0; i<scan.components.length; i++) {
+        int c = scan.components[i];
+        Component component = components[c];
+        for (int by=0; by<component.v; by++) {
+          for (int bx=0; bx<component.h; bx++) {
+            int blockRow = row * component.v + by;
+            int blockCol = col * component.h + bx;
+            int offset = (blockRow * component.blocksPerLine + blockCol) * 64;
+            decodeUnit(state, i, coefficients[c], offset);
+          }
+        }
+      }
+    }
+  }
+
+  /** Handles the restart marker that precedes MCU <code>n</code>, if any. */
+  private static void restart(DecodeState state, int n) throws IOException {
+    int interval = state.scan.restartInterval;
+    if (interval > 0 && n > 0 && (n % interval) == 0) {
+      state.reader.restart();
+      Arrays.fill(state.pred, 0);
+      state.eobrun = 0;
+    }
+  }
+
+  private static void decodeUnit(DecodeState state, int i, short[] coef,
+    int offset)
+    throws IOException
+  {
+    Scan scan = state.scan;
+    if (!scan.progressive) {
+      int[] block = state.block;
+      decodeBlock(state, i, block);
+      for (int k=0; k<64; k++) {
+        coef[offset + k] = (short) block[k];
+      }
+    }
+    else if (scan.ss == 0) {
+      decodeDC(state, i, coef, offset);
+    }
+    else if (scan.ah == 0) {
+      decodeACFirst(state, i, coef, offset);
+    }
+    else {
+      decodeACRefine(state, i, coef, offset);
+    }
+  }
+
+  private static void decodeDC(DecodeState state, int i, short[] coef,
+    int offset)
+    throws IOException
+  {
+    Scan scan = state.scan;
+    BitReader reader = state.reader;
+    if (scan.ah == 0) {
+      int s = scan.dc[i].decode(reader);
+      if (s != 0) {
+        state.pred[i] += reader.receiveExtend(s);
+      }
+      coef[offset] = (short) (state.pred[i] << scan.al);
+    }
+    else if (reader.getBit() != 0) {
+      coef[offset] |= 1 << scan.al;
+    }
+  }
+
+  private static void decodeACFirst(DecodeState state, int i, short[] coef,
+    int offset)
+    throws IOException
+  {
+    if (state.eobrun > 0) {
+      state.eobrun--;
+      return;
+    }
+    Scan scan = state.scan;
+    BitReader reader = state.reader;
+    HuffmanTable ac = scan.ac[i];
+    for (int k=scan.ss; k<=scan.se; k++) {
+      int rs = ac.decode(reader);
+      int r = rs >> 4;
+      int s = rs & 0xf;
+      if (s != 0) {
+        k += r;
+        coef[offset + NATURAL_ORDER[k]] =
+          (short) (reader.receiveExtend(s) << scan.al);
+      }
+      else if (r == 15) {
+        k += 15;
+      }
+      else {
+        state.eobrun = 1 << r;
+        if (r != 0) {
+          state.eobrun += reader.getBits(r);
+        }
+        state.eobrun--;
+        break;
+      }
+    }
+  }
+
+  private static void decodeACRefine(DecodeState state, int i, short[] coef,
+    int offset)
+    throws IOException
+  {
+    Scan scan = state.scan;
+    BitReader reader = state.reader;
+    int p1 = 1 << scan.al;
+    int m1 = -1 << scan.al;
+    int k = scan.ss;
+
+    if (state.eobrun == 0) {
+      HuffmanTable ac = scan.ac[i];
+      for (; k<=scan.se; k++) {
+        int rs = ac.decode(reader);
+        int r = rs >> 4;
+        int s = rs & 0xf;
+        if (s != 0) {
+          s = reader.getBit() != 0 ? p1 : m1;
+        }
+        else if (r != 15) {
+          state.eobrun = 1 << r;
+          if (r != 0) {
+            state.eobrun += reader.getBits(r);
+          }
+          break;
+        }
+
+        // skip r zero-history coefficients, refining non-zero ones
+        while (k <= scan.se) {
+          int z = offset + NATURAL_ORDER[k];
+          if (coef[z] != 0) {
+            refine(reader, coef, z, p1, m1);
+          }
+          else if (--r < 0) {
+            break;
+          }
+          k++;
+        }
+        if (s != 0 && k <= 63) {
+          coef[offset + NATURAL_ORDER[k]] = (short) s;
+        }
+      }
+    }
+
+    if (state.eobrun > 0) {
+      for (; k<=scan.se; k++) {
+        int z = offset + NATURAL_ORDER[k];
+        if (coef[z] != 0) {
+          refine(reader, coef, z, p1, m1);
+        }
+      }
+      state.eobrun--;
+    }
+  }
+
+  private static void refine(BitReader reader, short[] coef, int z, int p1,
+    int m1)
+    throws IOException
+  {
+    if (reader.getBit() != 0 && (coef[z] & p1) == 0) {
+      coef[z] += coef[z] >= 0 ? p1 : m1;
+    }
+  }
+
+  /** Inverse transforms the coefficient blocks that intersect the region. */
+  private void transformCoefficients(short[][] coefficients, MCURegion region) {
+    int[] block = new int[64];
+    int[] workspace = new int[64];
+    for (int c=0; c<components.length; c++) {
+      Component component = components[c];
+      int stride = region.strides[c];
+      int firstBlockCol = region.firstCol * component.h;
+      int lastBlockCol = (region.lastCol + 1) * component.h - 1;
+      int firstBlockRow = region.firstRow * component.v;
+      int lastBlockRow = (region.lastRow + 1) * component.v - 1;
+      for (int by=firstBlockRow; by<=lastBlockRow; by++) {
+        for (int bx=firstBlockCol; bx<=lastBlockCol; bx++) {
+          int offset = (by * component.blocksPerLine + bx) * 64;
+          if (region.reduced) {
+            int index = (by - firstBlockRow) * stride + bx - firstBlockCol;
+            region.planes[c][index] =
+              dcSample(coefficients[c][offset], component.quant);
+            continue;
+          }
+          for (int k=0; k<64; k++) {
+            block[k] = coefficients[c][offset + k];
+          }
+          int py = (by - firstBlockRow) * 8;
+          int px = (bx - firstBlockCol) * 8;
+          idct(block, component.quant, workspace, region.planes[c],
+            py * stride + px, stride);
+        }
+      }
+    }
+  }
+
+  // -- Helper methods - output --
+
+  /**
+   * Upsamples and color converts the region's sample planes into the
+   * destination buffer.
+   */
+  private void writeSamples(MCURegion region, byte[] dst, int offset,
+    int scanlineStride, int pixelStride, int bandStride, int x, int y,
+    int w, int h, boolean ycbcr)
+  {
+    int n = components.length;
+    Upsampler[] upsamplers = new Upsampler[n];
+    byte[][] lines = new byte[n][w];
+    for (int c=0; c<n; c++) {
+      upsamplers[c] = new Upsampler(components[c], region, c, x, w);
+    }
+
+    boolean convert = ycbcr && n >= 3;
+    for (int j=0; j<h; j++) {
+      for (int c=0; c<n; c++) {
+        upsamplers[c].upsample(y + j, lines[c]);
+      }
+      int out = offset + j * scanlineStride;
+
+      if (convert) {
+        for (int i=0; i<w; i++, out+=pixelStride) {
+          int lum = lines[0][i] & 0xff;
+          int cb = lines[1][i] & 0xff;
+          int cr = lines[2][i] & 0xff;
+          int r = clamp(lum + CR_R[cr]);
+          int g = clamp(lum + ((CB_G[cb] + CR_G[cr]) >> 16));
+          int b = clamp(lum + CB_B[cb]);
+          if (n == 4) {
+            // YCCK; invert to get CMY
+            r = 255 - r;
+            g = 255 - g;
+            b = 255 - b;
+            dst[out + 3 * bandStride] = lines[3][i];
+          }
+          dst[out] = (byte) r;
+          dst[out + bandStride] = (byte) g;
+          dst[out + 2 * bandStride] = (byte) b;
+        }
+      }
+      else if (pixelStride == 1) {
+        for (int c=0; c<n; c++) {
+          System.arraycopy(lines[c], 0, dst, out + c * bandStride, w);
+        }
+      }
+      else {
+        for (int c=0; c<n; c++) {
+          byte[] line = lines[c];
+          int index = out + c * bandStride;
+          for (int i=0; i<w; i++, index+=pixelStride) {
+            dst[index] = line[i];
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Dequantizes and inverse transforms one block, using the accurate integer
+   * algorithm from the IJG library, and stores the result in
+   * <code>out</code>.
+   */
+  private static void idct(int[] block, int[] quant, int[] workspace,
+    byte[] out, int offset, int stride)
+  {
+    // pass 1: process columns, storing the result in the workspace
+
+    for (int col=0; col<8; col++) {
+      if (block[8 + col] == 0 && block[16 + col] == 0 &&
+        block[24 + col] == 0 && block[32 + col] == 0 &&
+        block[40 + col] == 0 && block[48 + col] == 0 && block[56 + col] == 0)
+      {
+        int dc = (block[col] * quant[col]) << PASS1_BITS;
+        for (int row=0; row<64; row+=8) {
+          workspace[row + col] = dc;
+        }
+        continue;
+      }
+
+      // even part
+      int z2 = block[16 + col] * quant[16 + col];
+      int z3 = block[48 + col] * quant[48 + col];
+      int z1 = (z2 + z3) * FIX_0_541196100;
+      int tmp2 = z1 - z3 * FIX_1_847759065;
+      int tmp3 = z1 + z2 * FIX_0_765366865;
+
+      z2 = block[col] * quant[col];
+      z3 = block[32 + col] * quant[32 + col];
+      int tmp0 = (z2 + z3) << CONST_BITS;
+      int tmp1 = (z2 - z3) << CONST_BITS;
+
+      int tmp10 = tmp0 + tmp3;
+      int tmp13 = tmp0 - tmp3;
+      int tmp11 = tmp1 + tmp2;
+      int tmp12 = tmp1 - tmp2;
+
+      // odd part
+      tmp0 = block[56 + col] * quant[56 + col];
+      tmp1 = block[40 + col] * quant[40 + col];
+      tmp2 = block[24 + col] * quant[24 + col];
+      tmp3 = block[8 + col] * quant[8 + col];
+
+      z1 = tmp0 + tmp3;
+      z2 = tmp1 + tmp2;
+      z3 = tmp0 + tmp2;
+      int z4 = tmp1 + tmp3;
+      int z5 = (z3 + z4) * FIX_1_175875602;
+
+      tmp0 *= FIX_0_298631336;
+      tmp1 *= FIX_2_053119869;
+      tmp2 *= FIX_3_072711026;
+      tmp3 *= FIX_1_501321110;
+      z1 *= -FIX_0_899976223;
+      z2 *= -FIX_2_562915447;
+      z3 *= -FIX_1_961570560;
+      z4 *= -FIX_0_390180644;
+
+      z3 += z5;
+      z4 += z5;
+
+      tmp0 += z1 + z3;
+      tmp1 += z2 + z4;
+      tmp2 += z2 + z3;
+      tmp3 += z1 + z4;
+
+      int shift = CONST_BITS - PASS1_BITS;
+      int round = 1 << (shift - 1);
+      workspace[col] = (tmp10 + tmp3 + round) >> shift;
+      workspace[56 + col] = (tmp10 - tmp3 + round) >> shift;
+      workspace[8 + col] = (tmp11 + tmp2 + round) >> shift;
+      workspace[48 + col] = (tmp11 - tmp2 + round) >> shift;
+      workspace[16 + col] = (tmp12 + tmp1 + round) >> shift;
+      workspace[40 + col] = (tmp12 - tmp1 + round) >> shift;
+      workspace[24 + col] = (tmp13 + tmp0 + round) >> shift;
+      workspace[32 + col] = (tmp13 - tmp0 + round) >> shift;
+    }
+
+    // pass 2: process rows from the workspace, storing into the output
+
+    int shift = CONST_BITS + PASS1_BITS + 3;
+    int round = 1 << (shift - 1);
+    for (int row=0; row<64; row+=8, offset+=stride) {
+      int[] ws = workspace;
+      if (ws[row + 1] == 0 && ws[row + 2] == 0 && ws[row + 3] == 0 &&
+        ws[row + 4] == 0 && ws[row + 5] == 0 && ws[row + 6] == 0 &&
+        ws[row + 7] == 0)
+      {
+        byte dc = (byte) clamp(((ws[row] + (1 << (PASS1_BITS + 2))) >>
+          (PASS1_BITS + 3)) + 128);
+        for (int i=0; i<8; i++) {
+          out[offset + i] = dc;
+        }
+        continue;
+      }
+
+      // even part
+      int z2 = ws[row + 2];
+      int z3 = ws[row + 6];
+      int z1 = (z2 + z3) * FIX_0_541196100;
+      int tmp2 = z1 - z3 * FIX_1_847759065;
+      int tmp3 = z1 + z2 * FIX_0_765366865;
+
+      int tmp0 = (ws[row] + ws[row + 4]) << CONST_BITS;
+      int tmp1 = (ws[row] - ws[row + 4]) << CONST_BITS;
+
+      int tmp10 = tmp0 + tmp3;
+      int tmp13 = tmp0 - tmp3;
+      int tmp11 = tmp1 + tmp2;
+      int tmp12 = tmp1 - tmp2;
+
+      // odd part
+      tmp0 = ws[row + 7];
+      tmp1 = ws[row + 5];
+      tmp2 = ws[row + 3];
+      tmp3 = ws[row + 1];
+
+      z1 = tmp0 + tmp3;
+      z2 = tmp1 + tmp2;
+      z3 = tmp0 + tmp2;
+      int z4 = tmp1 + tmp3;
+      int z5 = (z3 + z4) * FIX_1_175875602;
+
+      tmp0 *= FIX_0_298631336;
+      tmp1 *= FIX_2_053119869;
+      tmp2 *= FIX_3_072711026;
+      tmp3 *= FIX_1_501321110;
+      z1 *= -FIX_0_899976223;
+      z2 *= -FIX_2_562915447;
+      z3 *= -FIX_1_961570560;
+      z4 *= -FIX_0_390180644;
+
+      z3 += z5;
+      z4 += z5;
+
+      tmp0 += z1 + z3;
+      tmp1 += z2 + z4;
+      tmp2 += z2 + z3;
+      tmp3 += z1 + z4;
+
+      out[offset] = (byte) clamp(((tmp10 + tmp3 + round) >> shift) + 128);
+      out[offset + 7] = (byte) clamp(((tmp10 - tmp3 + round) >> shift) + 128);
+      out[offset + 1] = (byte) clamp(((tmp11 + tmp2 + round) >> shift) + 128);
+      out[offset + 6] = (byte) clamp(((tmp11 - tmp2 + round) >> shift) + 128);
+      out[offset + 2] = (byte) clamp(((tmp12 + tmp1 + round) >> shift) + 128);
+      out[offset + 5] = (byte) clamp(((tmp12 - tmp1 + round) >> shift) + 128);
+      out[offset + 3] = (byte) clamp(((tmp13 + tmp0 + round) >> shift) + 128);
+      out[offset + 4] = (byte) clamp(((tmp13 - tmp0 + round) >> shift) + 128);
+    }
+  }
+
+  /** Returns the mean sample value of a block with the given DC term. */
+  private static byte dcSample(int dc, int[] quant) {
+    return (byte) clamp(((dc * quant[0] + 4) >> 3) + 128);
+  }
+
+  private static int clamp(int v) {
+    return v < 0 ? 0 : (v > 255 ? 255 : v);
+  }
+
+  private static int fix(double v) {
+    return (int) (v * (1 << 16) + 0.5);
+  }
+
+  /**
+   * Reads up to <code>len</code> bytes starting at the given absolute
+   * position.  Returns the number of bytes read, or -1 at end of stream.
+   */
+  private int read(long position, byte[] buf, int off, int len)
+    throws IOException
+  {
+    if (data != null) {
+      long index = position - base;
+      if (index < 0 || index >= data.length) {
+        return -1;
+      }
+      int n = (int) Math.min(len, data.length - index);
+      System.arraycopy(data, (int) index, buf, off, n);
+      return n;
+    }
+    synchronized (in) {
+      long length = in.length();
+      if (position < 0 || position >= length) {
+        return -1;
+      }
+      in.seek(position);
+      return in.read(buf, off, (int) Math.min(len, length - position));
+    }
+  }
+
+  // -- Helper classes --
+
+  private static class Component {
+    int id;
+    int h, v;
+    int tq;
+    int[] quant;
+    int blocksPerLine, blockRows;
+    int widthInBlocks, heightInBlocks;
+
+    /** Dimensions in (possibly subsampled) component samples. */
+    int width, height;
+  }
+
+  private static class Scan {
+    int[] components;
+    HuffmanTable[] dc, ac;
+    int ss, se, ah, al;
+    int restartInterval;
+    boolean progressive;
+    long dataStart;
+  }
+
+  /** MCU region being decoded, and the sample planes that hold it. */
+  private static class MCURegion {
+    final int firstCol, lastCol, firstRow, lastRow;
+    final byte[][] planes;
+    final int[] strides;
+
+    /** True if the planes hold one DC sample per block. */
+    final boolean reduced;
+
+    MCURegion(int firstCol, int lastCol, int firstRow, int lastRow,
+      byte[][] planes, int[] strides)
+    {
+      this(firstCol, lastCol, firstRow, lastRow, planes, strides, false);
+    }
+
+    MCURegion(int firstCol, int lastCol, int firstRow, int lastRow,
+      byte[][] planes, int[] strides, boolean reduced)
+    {
+      this.reduced = reduced;
+      this.firstCol = firstCol;
+      this.lastCol = lastCol;
+      this.firstRow = firstRow;
+      this.lastRow = lastRow;
+      this.planes = planes;
+      this.strides = strides;
+    }
+
+    boolean contains(int col, int row) {
+      return col >= firstCol && col <= lastCol && row >= firstRow &&
+        row <= lastRow;
+    }
+  }
+
+  /**
+   * Upsamples one component to full resolution, one output row at a time.
+   * Horizontal 2:1 and 2:1 x 2:1 subsampling use the same triangle filter
+   * as the IJG library (and therefore ImageIO); all other ratios replicate
+   * samples.
+   */
+  private class Upsampler {
+    private final int mode;
+    private final byte[] plane;
+    private final int stride;
+    private final Component component;
+    private final int originY;
+    private final int[] columns;
+    private final int[] neighbors;
+    private final int[] bias;
+
+    Upsampler(Component component, MCURegion region, int c, int x, int w) {
+      this.component = component;
+      plane = region.planes[c];
+      stride = region.strides[c];
+      originY = region.firstRow * component.v * 8;
+      int originX = region.firstCol * component.h * 8;
+
+      if (component.width > 2 && component.h * 2 == maxH &&
+        component.v == maxV)
+      {
+        mode = H2V1;
+      }
+      else if (component.width > 2 && component.h * 2 == maxH &&
+        component.v * 2 == maxV)
+      {
+        mode = H2V2;
+      }
+      else {
+        mode = REPLICATE;
+      }
+
+      columns = new int[w];
+      neighbors = new int[w];
+      bias = new int[w];
+      for (int i=0; i<w; i++) {
+        int px = x + i;
+        int sample = (px * component.h) / maxH;
+        columns[i] = sample - originX;
+        boolean even = (px & 1) == 0;
+        int neighbor = even ? Math.max(sample - 1, 0) :
+          Math.min(sample + 1, component.width - 1);
+        neighbors[i] = neighbor - originX;
+        if (mode == H2V1) {
+          bias[i] = even ? 1 : 2;
+        }
+        else {
+          bias[i] = even ? 8 : 7;
+        }
+      }
+    }
+
+    void upsample(int py, byte[] line) {
+      int sample = (py * component.v) / maxV;
+      int row = (sample - originY) * stride;
+      int w = line.length;
+      if (mode == REPLICATE) {
+        for (int i=0; i<w; i++) {
+          line[i] = plane[row + columns[i]];
+        }
+      }
+      else if (mode == H2V1) {
+        for (int i=0; i<w; i++) {
+          int v = 3 * (plane[row + columns[i]] & 0xff) +
+            (plane[row + neighbors[i]] & 0xff);
+          line[i] = (byte) ((v + bias[i]) >> 2);
+        }
+      }
+      else {
+        int neighbor = (py & 1) == 0 ? Math.max(sample - 1, 0) :
+          Math.min(sample + 1, component.height - 1);
+        int nextRow = (neighbor - originY) * stride;
+        for (int i=0; i<w; i++) {
+          int col = columns[i];
+          int sum = 3 * (plane[row + col] & 0xff) +
+            (plane[nextRow + col] & 0xff);
+          col = neighbors[i];
+          int next = 3 * (plane[row + col] & 0xff) +
+            (plane[nextRow + col] & 0xff);
+          line[i] = (byte) ((3 * sum + next + bias[i]) >> 4);
+        }
+      }
+    }
+  }
+
+  /** Per-call decoding state. */
+  private static class DecodeState {
+    final Scan scan;
+    final int[] pred;
+    final int[] block = new int[64];
+    final int[] workspace = new int[64];
+    int eobrun;
+    BitReader reader;
+
+    DecodeState(Scan scan) {
+      this.scan = scan;
+      pred = new int[scan.components.length];
+    }
+
+    void reset(BitReader reader) {
+      this.reader = reader;
+      Arrays.fill(pred, 0);
+      eobrun = 0;
+    }
+  }
+
+  /** Entropy decoder state at the start of an MCU row. */
+  private class Checkpoint {
+    final int row;
+    final long position;
+    final long bits;
+    final int bitCount;
+    final boolean marker;
+    final int[] pred;
+
+    Checkpoint(int row, DecodeState state) {
+      this.row = row;
+      BitReader reader = state.reader;
+      position = reader.getPosition();
+      bits = reader.bits;
+      bitCount = reader.bitCount;
+      marker = reader.marker;
+      pred = state.pred.clone();
+    }
+
+    void restore(DecodeState state) {
+      BitReader reader = new BitReader(position);
+      reader.bits = bits;
+      reader.bitCount = bitCount;
+      reader.marker = marker;
+      state.reset(reader);
+      System.arraycopy(pred, 0, state.pred, 0, pred.length);
+    }
+  }
+
+  /**
+   * Reads entropy coded bits, removing stuffed zero bytes.  Zero bits are
+   * returned once a marker or the end of the data has been reached.
+   */
+  private class BitReader {
+    private byte[] buf;
+    private int pos;
+    private int limit;
+
+    /** Absolute position of buf[limit], if reading from a stream. */
+    private long next;
+
+    long bits;
+    int bitCount;
+    boolean marker;
+
+    BitReader(long position) {
+      if (data != null) {
+        buf = data;
+        limit = data.length;
+        long index = position - base;
+        pos = index < 0 || index > limit ? limit : (int) index;
+      }
+      else {
+        buf = new byte[BUFFER_SIZE];
+        next = position;
+      }
+    }
+
+    /** Returns the absolute position of the next unread byte. */
+    long getPosition() {
+      return data != null ? base + pos : next - (limit - pos);
+    }
+
+    private boolean refill() throws IOException {
+      if (data != null) {
+        return false;
+      }
+      int remaining = limit - pos;
+      System.arraycopy(buf, pos, buf, 0, remaining);
+      pos = 0;
+      limit = remaining;
+      int n = read(next, buf, limit, buf.length - limit);
+      if (n <= 0) {
+        return false;
+      }
+      limit += n;
+      next += n;
+      return true;
+    }
+
+    void fill() throws IOException {
+      while (bitCount <= 56) {
+        int b = 0;
+        if (!marker) {
+          if (pos >= limit && !refill()) {
+            marker = true;
+          }
+          else {
+            b = buf[pos] & 0xff;
+            if (b != 0xff) {
+              pos++;
+            }
+            else if (pos + 1 >= limit && !refill()) {
+              marker = true;
+              b = 0;
+            }
+            else if (buf[pos + 1] == 0) {
+              pos += 2;
+            }
+            else {
+              marker = true;
+              b = 0;
+            }
+          }
+        }
+        bits = (bits << 8) | b;
+        bitCount += 8;
+      }
+    }
+
+    int peek(int n) {
+      return (int) (bits >>> (bitCount - n)) & ((1 << n) - 1);
+    }
+
+    int getBits(int n) throws IOException {
+      if (bitCount < n) {
+        fill();
+      }
+      bitCount -= n;
+      return (int) (bits >>> bitCount) & ((1 << n) - 1);
+    }
+
+    int getBit() throws IOException {
+      if (bitCount < 1) {
+        fill();
+      }
+      bitCount--;
+      return (int) (bits >>> bitCount) & 1;
+    }
+
+    int receiveExtend(int s) throws IOException {
+      int v = getBits(s);
+      return v < (1 << (s - 1)) ? v - (1 << s) + 1 : v;
+    }
+
+    /** Discards buffered bits and skips past the next restart marker. */
+    void restart() throws IOException {
+      bits = 0;
+      bitCount = 0;
+      marker = false;
+      while (true) {
+        while (limit - pos < 2) {
+          if (!refill()) {
+            marker = true;
+            return;
+          }
+        }
+        if (buf[pos] != (byte) 0xff) {
+          pos++;
+          continue;
+        }
+        int code = buf[pos + 1] & 0xff;
+        if (code >= 0xd0 && code <= 0xd7) {
+          pos += 2;
+          return;
+        }
+        if (code == 0 || code == 0xff) {
+          pos++;
+          continue;
+        }
+        marker = true;
+        return;
+      }
+    }
+  }
+
+  /** Canonical Huffman table with a lookup table for short codes. */
+  private static class HuffmanTable {
+    private final int[] lookup = new int[1 << LOOKAHEAD];
+    private final int[] maxCode = new int[18];
+    private final int[] minCode = new int[17];
+    private final int[] valuePointer = new int[17];
+    private final int[] values;
+
+    HuffmanTable(int[] counts, int[] values) throws FormatException {
+      this.values = values;
+      int code = 0;
+      int k = 0;
+      for (int length=1; length<=16; length++) {
+        valuePointer[length] = k;
+        minCode[length] = code;
+        for (int i=0; i<counts[length] && k<values.length; i++, k++) {
+          if (code >= (1 << length)) {
+            throw new FormatException("Invalid Huffman table: too many " +
+              "codes of length " + length);
+          }
+          if (length <= LOOKAHEAD) {
+            int shift = LOOKAHEAD - length;
+            int entry = (length << 8) | values[k];
+            for (int j=0; j<(1 << shift); j++) {
+              lookup[(code << shift) | j] = entry;
+            }
+          }
+          code++;
+        }
+        maxCode[length] = counts[length] == 0 ? -1 : code - 1;
+        code <<= 1;
+      }
+      maxCode[17] = Integer.MAX_VALUE;
+    }
+
+    int decode(BitReader reader) throws IOException {
+      if (reader.bitCount < 16) {
+        reader.fill();
+      }
+      int entry = lookup[reader.peek(LOOKAHEAD)];
+      if (entry != 0) {
+        reader.bitCount -= entry >> 8;
+        return entry & 0xff;
+      }
+      int length = LOOKAHEAD + 1;
+      int code = reader.peek(length);
+      while (length <= 16 && code > maxCode[length]) {
+        length++;
+        code = reader.peek(length);
+      }
+      if (length > 16) {
+        // corrupt data
+        return 0;
+      }
+      reader.bitCount -= length;
+      return values[valuePointer[length] + code - minCode[length]];
+    }
+  }
+
+}
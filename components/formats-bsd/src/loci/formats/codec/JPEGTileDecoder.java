@@ -32,24 +32,18 @@
 
 package loci.formats.codec;
 
-import java.awt.Image;
-import java.awt.Toolkit;
-import java.awt.image.ColorModel;
-import java.awt.image.ImageConsumer;
-import java.awt.image.ImageProducer;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Hashtable;
 
-import loci.common.ByteArrayHandle;
 import loci.common.RandomAccessInputStream;
-import loci.common.Region;
 import loci.formats.FormatException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Provides access to arbitrarily large JPEG images one scanline or tile at
+ * a time.  Decoding is delegated to {@link JPEGDecoder}, so only the part
+ * of the image that is requested is decoded.
  */
 public class JPEGTileDecoder {
 
@@ -58,12 +52,18 @@ public class JPEGTileDecoder {
   protected static final Logger LOGGER =
     LoggerFactory.getLogger(JPEGTileDecoder.class);
 
+  /** Number of rows decoded at a time by {@link #getScanline(int)}. */
+  private static final int ROW_COUNT = 128;
+
   // -- Fields --
 
-  private TileConsumer consumer;
-  private TileCache tiles;
+  private JPEGDecoder decoder;
   private RandomAccessInputStream in;
 
+  private byte[] rows;
+  private int firstRow = -1;
+  private int rowCount;
+
   // -- JPEGTileDecoder API methods --
 
   public void initialize(String id, int imageWidth) {
@@ -79,26 +79,31 @@ public class JPEGTileDecoder {
     initialize(in, 0, 0, imageWidth);
   }
 
-  public void initialize(RandomAccessInputStream in, int y, int h,
-    int imageWidth)
+  /**
+   * Prepares to decode the JPEG stream that starts at the current position
+   * of the given stream.  The row range is retained for compatibility;
+   * any row can be retrieved after initialization.
+   */
+  public synchronized void initialize(RandomAccessInputStream in, int y,
+    int h, int imageWidth)
   {
     this.in = in;
-    tiles = new TileCache(y, h);
+    rows = null;
+    firstRow = -1;
 
     preprocess(this.in);
 
     try {
-      Toolkit toolkit = Toolkit.getDefaultToolkit();
-      byte[] data = new byte[this.in.available()];
-      this.in.readFully(data);
-      Image image = toolkit.createImage(data);
-      ImageProducer producer = image.getSource();
-
-      consumer = new TileConsumer(producer, y, h);
-      producer.startProduction(consumer);
-      while (producer.isConsumer(consumer));
+      decoder = new JPEGDecoder(in);
+    }
+    catch (FormatException e) {
+      LOGGER.debug("", e);
+      decoder = null;
+    }
+    catch (IOException e) {
+      LOGGER.debug("", e);
+      decoder = null;
     }
-    catch (IOException e) { }
   }
 
   /**
@@ -151,28 +156,55 @@ public class JPEGTileDecoder {
     return dims;
   }
 
-  public byte[] getScanline(int y) {
+  public synchronized byte[] getScanline(int y) {
+    if (decoder == null || y < 0 || y >= decoder.getHeight()) {
+      return null;
+    }
+    int rowLength = decoder.getWidth() * decoder.getComponentCount();
     try {
-      return tiles.get(0, y, consumer.getWidth(), 1);
+      if (rows == null || y < firstRow || y >= firstRow + rowCount) {
+        firstRow = y - (y % ROW_COUNT);
+        rowCount = Math.min(ROW_COUNT, decoder.getHeight() - firstRow);
+        rows = decoder.decode(null, 0, firstRow, decoder.getWidth(),
+          rowCount, true);
+      }
     }
     catch (FormatException e) {
       LOGGER.debug("", e);
+      return null;
     }
     catch (IOException e) {
       LOGGER.debug("", e);
+      return null;
+    }
+    byte[] scanline = new byte[rowLength];
+    System.arraycopy(rows, (y - firstRow) * rowLength, scanline, 0,
+      rowLength);
+    return scanline;
+  }
+
+  /**
+   * Decodes the given region directly into <code>buf</code>, with
+   * interleaved channels.
+   */
+  public byte[] getTile(byte[] buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    if (decoder == null) {
+      throw new FormatException("JPEG stream could not be decoded");
     }
-    return null;
+    return decoder.decode(buf, x, y, w, h, true);
   }
 
   public int getWidth() {
-    return consumer.getWidth();
+    return decoder == null ? 0 : decoder.getWidth();
   }
 
   public int getHeight() {
-    return consumer.getHeight();
+    return decoder == null ? 0 : decoder.getHeight();
   }
 
-  public void close() {
+  public synchronized void close() {
     try {
       if (in != null) {
         in.close();
@@ -181,206 +213,10 @@ public class JPEGTileDecoder {
     catch (IOException e) {
       LOGGER.debug("", e);
     }
-    tiles = null;
-    consumer = null;
-  }
-
-  // -- Helper classes --
-
-  class TileConsumer implements ImageConsumer {
-    private int width, height;
-    private ImageProducer producer;
-    private int yy = 0, hh = 0;
-
-    public TileConsumer(ImageProducer producer) {
-      this.producer = producer;
-    }
-
-    public TileConsumer(ImageProducer producer, int y, int h) {
-      this(producer);
-      this.yy = y;
-      this.hh = h;
-    }
-
-    // -- TileConsumer API methods --
-
-    public int getWidth() {
-      return width;
-    }
-
-    public int getHeight() {
-      return height;
-    }
-
-    // -- ImageConsumer API methods --
-
-    @Override
-    public void imageComplete(int status) {
-      producer.removeConsumer(this);
-    }
-
-    @Override
-    public void setDimensions(int width, int height) {
-      this.width = width;
-      this.height = height;
-      if (hh <= 0) hh = height;
-    }
-
-    @Override
-    public void setPixels(int x, int y, int w, int h, ColorModel model,
-      byte[] pixels, int off, int scanSize)
-    {
-      LOGGER.debug("Storing row {} of {} ({}%)", new Object[] {y, height,
-        ((double) y / height) * 100.0});
-      if (y >= (yy + hh)) {
-        imageComplete(0);
-        return;
-      }
-      else if (y < yy) return;
-      try {
-        tiles.add(pixels, x, y, w, h);
-      }
-      catch (FormatException e) {
-        LOGGER.debug("", e);
-      }
-      catch (IOException e) {
-        LOGGER.debug("", e);
-      }
-    }
-
-    @Override
-    public void setPixels(int x, int y, int w, int h, ColorModel model,
-      int[] pixels, int off, int scanSize)
-    {
-      LOGGER.debug("Storing row {} of {} ({}%)", new Object[] {y, (yy + hh),
-        ((double) y / (yy + hh)) * 100.0});
-      if (y >= (yy + hh)) {
-        imageComplete(0);
-        return;
-      }
-      else if (y < yy) return;
-      try {
-        tiles.add(pixels, x, y, w, h);
-      }
-      catch (FormatException e) {
-        LOGGER.debug("", e);
-      }
-      catch (IOException e) {
-        LOGGER.debug("", e);
-      }
-    }
-
-    @Override
-    public void setProperties(Hashtable props) { }
-    @Override
-    public void setColorModel(ColorModel model) { }
-    @Override
-    public void setHints(int hintFlags) { }
-  }
-
-  class TileCache {
-    private static final int ROW_COUNT = 128;
-
-    private Hashtable<Region, byte[]> compressedTiles =
-      new Hashtable<Region, byte[]>();
-    private JPEGCodec codec = new JPEGCodec();
-    private CodecOptions options = new CodecOptions();
-
-    private ByteVector toCompress = new ByteVector();
-    private int row = 0;
-
-    private Region lastRegion = null;
-    private byte[] lastTile = null;
-
-    private int yy = 0, hh = 0;
-
-    public TileCache(int yy, int hh) {
-      options.interleaved = true;
-      options.littleEndian = false;
-      this.yy = yy;
-      this.hh = hh;
-    }
-
-    public void add(byte[] pixels, int x, int y, int w, int h)
-      throws FormatException, IOException
-    {
-      toCompress.add(pixels);
-      row++;
-
-      if ((y % ROW_COUNT) == ROW_COUNT - 1 || y == getHeight() - 1 ||
-        y == yy + hh - 1)
-      {
-        Region r = new Region(x, y - row + 1, w, row);
-        options.width = w;
-        options.height = row;
-        options.channels = 1;
-        options.bitsPerSample = 8;
-        options.signed = false;
-
-        byte[] compressed = codec.compress(toCompress.toByteArray(), options);
-        compressedTiles.put(r, compressed);
-        toCompress.clear();
-      }
-    }
-
-    public void add(int[] pixels, int x, int y, int w, int h)
-      throws FormatException, IOException
-    {
-      byte[] buf = new byte[pixels.length * 3];
-      for (int i=0; i<pixels.length; i++) {
-        buf[i * 3] = (byte) ((pixels[i] & 0xff0000) >> 16);
-        buf[i * 3 + 1] = (byte) ((pixels[i] & 0xff00) >> 8);
-        buf[i * 3 + 2] = (byte) (pixels[i] & 0xff);
-      }
-
-      toCompress.add(buf);
-      row++;
-
-      if ((y % ROW_COUNT) == ROW_COUNT - 1 || y == getHeight() - 1 ||
-        y == yy + hh - 1)
-      {
-        Region r = new Region(x, y - row + 1, w, row);
-        options.width = w;
-        options.height = row;
-        options.channels = 3;
-        options.bitsPerSample = 8;
-        options.signed = false;
-
-        byte[] compressed = codec.compress(toCompress.toByteArray(), options);
-        compressedTiles.put(r, compressed);
-        toCompress.clear();
-        row = 0;
-      }
-    }
-
-    public byte[] get(int x, int y, int w, int h)
-      throws FormatException, IOException
-    {
-      Region[] keys = compressedTiles.keySet().toArray(new Region[0]);
-      Region r = new Region(x, y, w, h);
-      for (Region key : keys) {
-        if (key.intersects(r)) {
-          r = key;
-        }
-      }
-      if (!r.equals(lastRegion)) {
-        lastRegion = r;
-        byte[] compressed = null;
-        compressed = compressedTiles.get(r);
-        if (compressed == null) return null;
-        lastTile = codec.decompress(compressed, options);
-      }
-
-      int pixel = options.channels * (options.bitsPerSample / 8);
-      byte[] buf = new byte[w * h * pixel];
-
-      for (int i=0; i<h; i++) {
-        System.arraycopy(lastTile, r.width * pixel * (i + y - r.y) + (x - r.x),
-          buf, i * w * pixel, pixel * w);
-      }
-
-      return buf;
-    }
+    in = null;
+    decoder = null;
+    rows = null;
+    firstRow = -1;
   }
 
 }
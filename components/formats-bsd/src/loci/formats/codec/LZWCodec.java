@@ -32,8 +32,8 @@
 
 package loci.formats.codec;
 
-import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import loci.common.RandomAccessInputStream;
@@ -46,6 +46,12 @@ import loci.formats.FormatException;
  * values for <code>CLEAR</code> and <code>END_OF_INFORMATION</code> codes)
  * are taken in account.
  * <p>
+ * Codes are read from and written to a 64-bit bit accumulator, and the
+ * string and hash tables are allocated once per thread and reused by
+ * subsequent calls.  If the options passed to the decompressor are an
+ * {@link LZWCodecOptions} instance with horizontal differencing enabled,
+ * the predictor is reversed as the decoded strings are written.
+ * <p>
  * Estimating the worst-case size of compressor output:
  * <ul>
  * <li> The worst case means that there is no compression at all, and every
@@ -88,17 +94,38 @@ public class LZWCodec extends BaseCodec {
   /** Rehashing step. HASH_SIZE and HASH_STEP shoulg be coprime. */
   private static final int HASH_STEP = 257;
 
+  /**
+   * Number of bits used by a hash table key; the remaining high bits hold
+   * the generation in which the entry was added.
+   */
+  private static final int HASH_KEY_BITS = 20;
+
+  /** Largest generation that fits in a hash table entry. */
+  private static final int MAX_GENERATION = 0x7ff;
+
   private static final int CLEAR_CODE = 256;
   private static final int EOI_CODE = 257;
   private static final int FIRST_CODE = 258;
 
-  /** Masks for writing bits in compressor. */
-  private static final int[] COMPR_MASKS =
-    {0xff, 0x7f, 0x3f, 0x1f, 0x0f, 0x07, 0x03, 0x01};
+  /** Maximum number of entries in the LZW table. */
+  private static final int TABLE_SIZE = 4096;
+
+  /**
+   * Minimum number of decoded bytes to accumulate before the predictor is
+   * reversed; small enough that the bytes are still cached.
+   */
+  private static final int PREDICTOR_BATCH = 1024;
+
+  /** Largest scratch buffer that is kept for reuse by a thread. */
+  private static final int MAX_SCRATCH_SIZE = 16 * 1024 * 1024;
 
-  /** Masks for reading bits in decompressor. */
-  private static final int[] DECOMPR_MASKS =
-    {0x00, 0x01, 0x03, 0x07, 0x0f, 0x1f, 0x3f, 0x7f};
+  /** Per-thread tables, reused across calls. */
+  private static final ThreadLocal<Tables> TABLES = new ThreadLocal<Tables>() {
+    @Override
+    protected Tables initialValue() {
+      return new Tables();
+    }
+  };
 
   /* @see Codec#compress(byte[], CodecOptions) */
   @Override
@@ -112,32 +139,34 @@ public class LZWCodec extends BaseCodec {
     if (bufferSize > Integer.MAX_VALUE) {
       throw new FormatException("Output buffer is greater than 2 GB");
     }
-    byte[] output = new byte[(int) bufferSize];
+    Tables tables = TABLES.get();
+    byte[] output = tables.getOutput((int) bufferSize);
 
     // Current size of output buffer (and position to write next byte).
     int outSize = 0;
-    // The output always starts with CLEAR code
-    output[outSize++] = (byte) (CLEAR_CODE >> 1);
-    // Last incomplete byte to be written to output (bits shifted to the right).
-    // Always contains at least 1 bit, and may contain 8 bits.
-    int currOutByte = CLEAR_CODE & 0x01;
-    // Number of unused bits in currOutByte (from 0 to 7).
-    int freeBits = 7;
+    // Bits that have not been written to output yet, right aligned.
+    long bitBuffer = 0;
+    // Number of bits in bitBuffer that have not been written yet.
+    int bitCount = 0;
 
     // Hash table.
     // Keys in the table are pairs (code,byte) and values are codes.
-    // Pair (code,byte) is represented as ( (code<<8) | byte ).
-    // Unused table entries have key=-1.
-    int[] htKeys   = new int[HASH_SIZE];
-    int[] htValues = new int[HASH_SIZE];
-    // Initialize hash table: mark all entries as unused
-    Arrays.fill(htKeys, -1);
+    // Pair (code,byte) is represented as ( (code<<8) | byte ), and is stored
+    // together with the generation of the table; entries from an older
+    // generation are unused, so resetting the table just starts a new one.
+    int[] htKeys = tables.htKeys;
+    int[] htValues = tables.htValues;
+    int generation = tables.nextGeneration();
 
     // Next code to be used by compressor.
     int nextCode = FIRST_CODE;
     // Number of bits to be used to output code. Ranges from 9 to 12.
     int currCodeLength = 9;
 
+    // The output always starts with CLEAR code
+    bitBuffer = CLEAR_CODE;
+    bitCount = currCodeLength;
+
     // Names of these variables are taken from TIFF specification.
     // The first byte of input is handled specially.
     int tiffK = input[0] & 0xff;
@@ -147,28 +176,27 @@ public class LZWCodec extends BaseCodec {
     for (int currInPos=1; currInPos<input.length; currInPos++) {
       tiffK = input[currInPos] & 0xff;
       int hashKey = (tiffOmega << 8) | tiffK;
+      int storedKey = (generation << HASH_KEY_BITS) | hashKey;
       int hashCode = hashKey % HASH_SIZE;
       do {
-        if (htKeys[hashCode] == hashKey) {
+        int key = htKeys[hashCode];
+        if (key == storedKey) {
           // Omega+K in the table
           tiffOmega = htValues[hashCode];
           break;
         }
-        else if (htKeys[hashCode] < 0) {
+        else if ((key >>> HASH_KEY_BITS) != generation) {
           // Omega+K not in the table
           // 1) add new entry to hash table
-          htKeys[hashCode] = hashKey;
+          htKeys[hashCode] = storedKey;
           htValues[hashCode] = nextCode++;
           // 2) output last code
-          int shift = currCodeLength - freeBits;
-          output[outSize++] =
-            (byte) ((currOutByte << freeBits) | (tiffOmega >> shift));
-          if (shift > 8) {
-            output[outSize++] = (byte) (tiffOmega >> (shift - 8));
-            shift -= 8;
+          bitBuffer = (bitBuffer << currCodeLength) | tiffOmega;
+          bitCount += currCodeLength;
+          while (bitCount >= 8) {
+            bitCount -= 8;
+            output[outSize++] = (byte) (bitBuffer >>> bitCount);
           }
-          freeBits = 8 - shift;
-          currOutByte = tiffOmega & COMPR_MASKS[freeBits];
           // 3) omega = K
           tiffOmega = tiffK;
           break;
@@ -176,7 +204,7 @@ public class LZWCodec extends BaseCodec {
         else {
           // we have to rehash
           hashCode = (hashCode + HASH_STEP) % HASH_SIZE;
-        };
+        }
       } while (true);
 
       switch (nextCode) {
@@ -190,37 +218,25 @@ public class LZWCodec extends BaseCodec {
           currCodeLength = 12;
           break;
         case 4096:  // write CLEAR code and reinitialize hash table
-         int shift = currCodeLength - freeBits;
-         output[outSize++] =
-           (byte) ((currOutByte << freeBits) | (CLEAR_CODE >> shift));
-         if (shift > 8) {
-           output[outSize++] = (byte) (CLEAR_CODE >> (shift - 8));
-           shift -= 8;
-         }
-         freeBits = 8 - shift;
-         currOutByte = CLEAR_CODE & COMPR_MASKS[freeBits];
-         Arrays.fill(htKeys, -1);
-         nextCode = FIRST_CODE;
-         currCodeLength = 9;
-         break;
+          bitBuffer = (bitBuffer << currCodeLength) | CLEAR_CODE;
+          bitCount += currCodeLength;
+          while (bitCount >= 8) {
+            bitCount -= 8;
+            output[outSize++] = (byte) (bitBuffer >>> bitCount);
+          }
+          generation = tables.nextGeneration();
+          nextCode = FIRST_CODE;
+          currCodeLength = 9;
+          break;
       }
     }
 
     // End of input:
     // 1) write code from tiff_Omega
-    {
-      int shift = currCodeLength - freeBits;
-      output[outSize++] =
-        (byte) ((currOutByte << freeBits) | (tiffOmega >> shift));
-      if (shift > 8) {
-        output[outSize++] = (byte) (tiffOmega >> (shift - 8));
-        shift -= 8;
-      }
-      freeBits = 8 - shift;
-      currOutByte = tiffOmega & COMPR_MASKS[freeBits];
-    }
+    bitBuffer = (bitBuffer << currCodeLength) | tiffOmega;
+    bitCount += currCodeLength;
+
     // 2) write END_OF_INFORMATION code
-    //    -- we write the last incomplete byte here as well
     // !!! We have to increase length of code if needed !!!
     switch (nextCode) {
       case 511:
@@ -233,18 +249,19 @@ public class LZWCodec extends BaseCodec {
         currCodeLength = 12;
         break;
     }
-
-    {
-      int shift = currCodeLength - freeBits;
-      output[outSize++] =
-        (byte) ((currOutByte << freeBits) | (EOI_CODE >> shift));
-      if (shift > 8) {
-        output[outSize++] = (byte) (EOI_CODE >> (shift - 8));
-        shift -= 8;
-      }
-      freeBits = 8 - shift;
-      currOutByte = EOI_CODE & COMPR_MASKS[freeBits];
-      output[outSize++] = (byte) (currOutByte << freeBits);
+    while (bitCount >= 8) {
+      bitCount -= 8;
+      output[outSize++] = (byte) (bitBuffer >>> bitCount);
+    }
+    bitBuffer = (bitBuffer << currCodeLength) | EOI_CODE;
+    bitCount += currCodeLength;
+    while (bitCount >= 8) {
+      bitCount -= 8;
+      output[outSize++] = (byte) (bitBuffer >>> bitCount);
+    }
+    // 3) write the last incomplete byte, padded with zeros
+    if (bitCount > 0) {
+      output[outSize++] = (byte) (bitBuffer << (8 - bitCount));
     }
 
     byte[] result = new byte[outSize];
@@ -252,6 +269,24 @@ public class LZWCodec extends BaseCodec {
     return result;
   }
 
+  /**
+   * The CodecOptions parameter should have the following fields set:
+   *  {@link CodecOptions#maxBytes maxBytes}
+   *
+   * @see Codec#decompress(byte[], CodecOptions)
+   */
+  @Override
+  public byte[] decompress(byte[] input, CodecOptions options)
+    throws FormatException
+  {
+    if (input == null || input.length == 0) return null;
+    if (options == null) options = CodecOptions.getDefaultOptions();
+
+    byte[] output = new byte[options.maxBytes];
+    decode(input, 0, input.length, output, 0, output.length, options);
+    return output;
+  }
+
   /**
    * The CodecOptions parameter should have the following fields set:
    *  {@link CodecOptions#maxBytes maxBytes}
@@ -265,57 +300,156 @@ public class LZWCodec extends BaseCodec {
     if (in == null || in.length() == 0) return null;
     if (options == null) options = CodecOptions.getDefaultOptions();
 
-    // Output buffer
+    // Each output byte needs at most one 12 bit code, so twice the output
+    // size is enough to hold all of the codes along with CLEAR and
+    // END_OF_INFORMATION codes.
+    long fp = in.getFilePointer();
+    int length =
+      (int) Math.min(in.length() - fp, 2L * options.maxBytes + 16);
+    if (length <= 0) return new byte[options.maxBytes];
+    Tables tables = TABLES.get();
+    byte[] input = tables.getInput(length);
+    in.readFully(input, 0, length);
+
     byte[] output = new byte[options.maxBytes];
-    // Position in output buffer to write next byte to
-    int currOutPos = 0;
+    decode(input, 0, length, output, 0, output.length, options);
+    in.seek(fp + tables.consumed);
+    return output;
+  }
+
+  /**
+   * Decompresses the LZW data remaining in the given buffer into the
+   * given array.  The buffer's position is advanced past the compressed
+   * data that was read.  If <code>options</code> is an
+   * {@link LZWCodecOptions} instance, the requested predictor is reversed
+   * while decoding.
+   *
+   * @param input the compressed data, which may be a direct buffer
+   * @param output the array in which to store the decompressed data
+   * @param offset the index in <code>output</code> of the first byte to store
+   * @param length the maximum number of bytes to decompress
+   * @param options the options to use while decompressing, or null
+   * @return the number of bytes that were decompressed into output
+   * @throws FormatException if the compressed data is invalid
+   */
+  public int decompress(ByteBuffer input, byte[] output, int offset,
+    int length, CodecOptions options)
+    throws FormatException
+  {
+    if (options == null) options = CodecOptions.getDefaultOptions();
+    byte[] array;
+    int start;
+    int remaining = input.remaining();
+    if (input.hasArray()) {
+      array = input.array();
+      start = input.arrayOffset() + input.position();
+    }
+    else {
+      array = TABLES.get().getInput(remaining);
+      start = 0;
+      input.duplicate().get(array, 0, remaining);
+    }
+    int written =
+      decode(array, start, remaining, output, offset, length, options);
+    input.position(input.position() + TABLES.get().consumed);
+    return written;
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Decodes LZW codes from <code>input[inOffset]</code> to
+   * <code>input[inOffset + inLength - 1]</code>, and stores at most
+   * <code>outMax</code> bytes in <code>output</code>.
+   * The number of input bytes that were consumed is stored in the
+   * calling thread's tables.
+   *
+   * @return the number of bytes written to output
+   */
+  private static int decode(byte[] input, int inOffset, int inLength,
+    byte[] output, int outOffset, int outMax, CodecOptions options)
+    throws FormatException
+  {
+    int predictor = LZWCodecOptions.NO_PREDICTION;
+    int stride = 0;
+    int rowLength = 0;
+    if (options instanceof LZWCodecOptions) {
+      LZWCodecOptions lzwOptions = (LZWCodecOptions) options;
+      if (lzwOptions.predictor == LZWCodecOptions.HORIZONTAL_DIFFERENCING) {
+        if (options.bitsPerSample != 8 || options.width <= 0 ||
+          options.channels <= 0)
+        {
+          throw new FormatException(
+            "Horizontal differencing requires 8-bit samples and a row width");
+        }
+        predictor = lzwOptions.predictor;
+        stride = options.channels;
+        rowLength = options.width * options.channels;
+      }
+    }
 
+    Tables tables = TABLES.get();
     // Table mapping codes to strings.
-    // Its structure is based on the fact that a string for a code has form:
-    // (string for another code) + (new byte).
-    // Thus, at index 'code': first array contains 'another code', second array
-    // contains 'new byte', and third array contains length of the string.
-    // The length is needed to make retrieving the string faster.
-    int[] anotherCodes = new int[4096];
-    byte[] newBytes = new byte[4096];
-    int[] lengths = new int[4096];
-    // We need to initialize only firt 256 entries in the table
-    for (int i=0; i<256; i++) {
-      newBytes[i] = (byte) i;
-      lengths[i] = 1;
+    // A string for a code has form (string for another code) + (new byte),
+    // and the string for the other code was written to output immediately
+    // before the new byte; so every string in the table is also stored
+    // contiguously in the decoded data. At index 'code', the first array
+    // contains the position of the string in the decoded data, and the
+    // second array contains its length.
+    // Only entries added since the last CLEAR code are ever read, so the
+    // tables do not need to be reset between calls.
+    int[] offsets = tables.offsets;
+    int[] lengths = tables.lengths;
+
+    // If a predictor is used, the codes are decoded into a scratch buffer
+    // from which each string is copied to output as soon as it is complete.
+    byte[] decoded = output;
+    int decodedOffset = outOffset;
+    if (predictor != LZWCodecOptions.NO_PREDICTION) {
+      decoded = tables.getDecoded(outMax);
+      decodedOffset = 0;
     }
 
+    // Position in input buffer to read next byte from
+    int currInPos = inOffset;
+    int inEnd = inOffset + inLength;
+    // Position in decoded buffer to write next byte to
+    int currOutPos = decodedOffset;
+    int outEnd = decodedOffset + outMax;
+    // Position of the first byte that has not been copied to output
+    int diffPos = decodedOffset;
+
     // Length of the code to be read from input
     int currCodeLength = 9;
     // Next code to be added to the table
     int nextCode = FIRST_CODE;
 
-    // Variables to handle reading bit stream:
-    // Byte from 'input[curr_in_pos-1]' -- only 'bits_read' bits on the right
-    // are non-zero
-    int currRead = 0;
-    // Number of bits in 'curr_read' that were not consumed yet
-    int bitsRead = 0;
+    // Bits read from input that have not been consumed yet, right aligned
+    long bitBuffer = 0;
+    // Number of bits in 'bitBuffer' that were not consumed yet
+    int bitCount = 0;
 
     // Current code being processed by decompressor.
     int currCode;
-    // Previous code processed by decompressor.
-    int oldCode = 0;   // without initializer, Java reports error later
+    // Position and length of the string for the previous code.
+    int oldPos = 0;
+    int oldLength = 0;
+    // Whether the table is empty, i.e. the next code is a single byte
+    boolean cleared = true;
 
     try {
-      do {
+      while (currOutPos < outEnd) {
         // read next code
-        {
-          int bitsLeft = currCodeLength - bitsRead;
-          if (bitsLeft > 8) {
-            currRead = (currRead << 8) | (in.read() & 0xff);
-            bitsLeft -= 8;
+        if (bitCount < currCodeLength) {
+          while (bitCount <= 56 && currInPos < inEnd) {
+            bitBuffer = (bitBuffer << 8) | (input[currInPos++] & 0xff);
+            bitCount += 8;
           }
-          bitsRead = 8 - bitsLeft;
-          int nextByte = in.read() & 0xff;
-          currCode = (currRead << bitsLeft) | (nextByte >> bitsRead);
-          currRead = nextByte & DECOMPR_MASKS[bitsRead];
+          if (bitCount < currCodeLength) break;
         }
+        bitCount -= currCodeLength;
+        currCode =
+          (int) (bitBuffer >>> bitCount) & ((1 << currCodeLength) - 1);
 
         if (currCode == EOI_CODE) break;
 
@@ -323,72 +457,62 @@ public class LZWCodec extends BaseCodec {
           // initialize table -- nothing to do
           nextCode = FIRST_CODE;
           currCodeLength = 9;
-          // read next code
-          {
-            int bitsLeft = currCodeLength - bitsRead;
-            if (bitsLeft > 8) {
-              currRead = (currRead << 8) | (in.read() & 0xff);
-              bitsLeft -= 8;
-            }
-            bitsRead = 8 - bitsLeft;
-
-            int nextByte = in.read() & 0xff;
-            currCode = (currRead << bitsLeft) | (nextByte >> bitsRead);
-            currRead = nextByte & DECOMPR_MASKS[bitsRead];
-          }
-          if (currCode == EOI_CODE) break;
-            // write string[curr_code] to output
-            // -- but here we are sure that string consists of a single byte
-            if (currOutPos >= output.length) break;
-            output[currOutPos++] = newBytes[currCode];
-            oldCode = currCode;
+          cleared = true;
+          continue;
+        }
+
+        int startPos = currOutPos;
+        if (cleared) {
+          // write string[curr_code] to output
+          // -- but here we are sure that string consists of a single byte
+          decoded[currOutPos++] = (byte) currCode;
+          oldLength = 1;
+          cleared = false;
         }
         else if (currCode < nextCode) {
           // Code is already in the table
-          // 1) Write strin[curr_code] to output
-          int outLength = lengths[currCode];
-          int i = currOutPos + outLength;
-          int tablePos = currCode;
-          while (i > output.length) {
-            tablePos = anotherCodes[tablePos];
-            i--;
+          // 1) Write string[curr_code] to output
+          int outLength;
+          if (currCode < CLEAR_CODE) {
+            outLength = 1;
+            decoded[currOutPos] = (byte) currCode;
           }
-          while (i > currOutPos) {
-            output[--i] = newBytes[tablePos];
-            tablePos = anotherCodes[tablePos];
+          else {
+            outLength = lengths[currCode];
+            copy(decoded, offsets[currCode], currOutPos,
+              Math.min(outLength, outEnd - currOutPos));
           }
-          if (i >= output.length) break;
           currOutPos += outLength;
           // 2) Add string[old_code]+firstByte(string[curr_code]) to the table
-          if (nextCode >= anotherCodes.length) break; 
-          anotherCodes[nextCode] = oldCode;
-          newBytes[nextCode] = output[i];
-          lengths[nextCode] = lengths[oldCode] + 1;
-          oldCode = currCode;
+          if (nextCode >= TABLE_SIZE) break;
+          offsets[nextCode] = oldPos;
+          lengths[nextCode] = oldLength + 1;
           nextCode++;
+          oldLength = outLength;
         }
         else {
           // Special case: code is not in the table
           // 1) Write string[old_code] to output
-          int outLength = lengths[oldCode];
-          int i = currOutPos + outLength;
-          int tablePos = oldCode;
-          if (i > output.length) break;
-          while (i > currOutPos) {
-            output[--i] = newBytes[tablePos];
-            tablePos = anotherCodes[tablePos];
-          }
-          currOutPos += outLength;
+          copy(decoded, oldPos, currOutPos,
+            Math.min(oldLength, outEnd - currOutPos));
+          currOutPos += oldLength;
           // 2) Write firstByte(string[old_code]) to output
-          if (currOutPos > output.length - 1) break;
-          output[currOutPos++] = output[i];
+          if (currOutPos > outEnd - 1) break;
+          decoded[currOutPos++] = decoded[oldPos];
           // 3) Add string[old_code]+firstByte(string[old_code]) to the table
-          anotherCodes[nextCode] = oldCode;
-          newBytes[nextCode] = output[i];
-          lengths[nextCode] = outLength + 1;
-          oldCode = currCode;
+          offsets[nextCode] = oldPos;
+          lengths[nextCode] = ++oldLength;
           nextCode++;
         }
+        oldPos = startPos;
+
+        if (decoded != output && currOutPos - diffPos >= PREDICTOR_BATCH) {
+          int end = Math.min(currOutPos, outEnd);
+          undifference(decoded, decodedOffset, diffPos, end, output,
+            outOffset, stride, rowLength);
+          diffPos = end;
+        }
+
         // Increase length of code if needed
         switch (nextCode) {
           case 511:
@@ -401,12 +525,117 @@ public class LZWCodec extends BaseCodec {
             currCodeLength = 12;
             break;
         }
-      } while (currOutPos < output.length && in.getFilePointer() < in.length());
+      }
     }
     catch (ArrayIndexOutOfBoundsException e) {
       throw new FormatException("Invalid LZW data", e);
     }
-    catch (EOFException e) { }
-    return output;
+
+    if (currOutPos >= outEnd) {
+      // consume the END_OF_INFORMATION code that follows the last string
+      while (bitCount <= 56 && currInPos < inEnd) {
+        bitBuffer = (bitBuffer << 8) | (input[currInPos++] & 0xff);
+        bitCount += 8;
+      }
+      if (bitCount >= currCodeLength && EOI_CODE == ((int)
+        (bitBuffer >>> (bitCount - currCodeLength)) &
+        ((1 << currCodeLength) - 1)))
+      {
+        bitCount -= currCodeLength;
+      }
+    }
+    currOutPos = Math.min(currOutPos, outEnd);
+    if (decoded != output && diffPos < currOutPos) {
+      undifference(decoded, decodedOffset, diffPos, currOutPos, output,
+        outOffset, stride, rowLength);
+    }
+    tables.consumed = currInPos - inOffset - bitCount / 8;
+    return currOutPos - decodedOffset;
   }
+
+  /** Copies a string that was already decoded to the end of the output. */
+  private static void copy(byte[] buf, int src, int dest, int length) {
+    if (length < 16) {
+      for (int i=0; i<length; i++) {
+        buf[dest + i] = buf[src + i];
+      }
+    }
+    else System.arraycopy(buf, src, buf, dest, length);
+  }
+
+  /**
+   * Reverses horizontal differencing of 8-bit samples, copying
+   * <code>decoded[start]</code> to <code>decoded[end - 1]</code> into the
+   * corresponding positions of <code>output</code>.
+   * Rows are <code>rowLength</code> bytes long; each byte is added to the
+   * byte <code>stride</code> bytes before it in the same row.
+   */
+  private static void undifference(byte[] decoded, int decodedOffset,
+    int start, int end, byte[] output, int outOffset, int stride,
+    int rowLength)
+  {
+    int column = (start - decodedOffset) % rowLength;
+    int delta = outOffset - decodedOffset;
+    int i = start;
+    while (i < end) {
+      int rowEnd = Math.min(end, i + rowLength - column);
+      // the first sample in each row is stored as is
+      int copyEnd = Math.min(rowEnd, i + stride - column);
+      for (; i<copyEnd; i++) {
+        output[i + delta] = decoded[i];
+      }
+      for (; i<rowEnd; i++) {
+        output[i + delta] =
+          (byte) (decoded[i] + output[i + delta - stride]);
+      }
+      column = 0;
+    }
+  }
+
+  // -- Helper classes --
+
+  /** Tables and scratch buffers owned by a single thread. */
+  private static class Tables {
+    final int[] offsets = new int[TABLE_SIZE];
+    final int[] lengths = new int[TABLE_SIZE];
+
+    final int[] htKeys = new int[HASH_SIZE];
+    final int[] htValues = new int[HASH_SIZE];
+    private int generation;
+
+    /** Number of input bytes consumed by the last call to decode. */
+    int consumed;
+
+    private byte[] input = new byte[0];
+    private byte[] output = new byte[0];
+    private byte[] decoded = new byte[0];
+
+    /** Starts a new, empty generation of the compressor's hash table. */
+    int nextGeneration() {
+      if (generation == MAX_GENERATION) {
+        Arrays.fill(htKeys, 0);
+        generation = 0;
+      }
+      return ++generation;
+    }
+
+    byte[] getInput(int length) {
+      if (length > MAX_SCRATCH_SIZE) return new byte[length];
+      if (input.length < length) input = new byte[length];
+      return input;
+    }
+
+    byte[] getOutput(int length) {
+      if (length > MAX_SCRATCH_SIZE) return new byte[length];
+      if (output.length < length) output = new byte[length];
+      return output;
+    }
+
+    byte[] getDecoded(int length) {
+      if (length > MAX_SCRATCH_SIZE) return new byte[length];
+      if (decoded.length < length) decoded = new byte[length];
+      return decoded;
+    }
+  }
+
 }
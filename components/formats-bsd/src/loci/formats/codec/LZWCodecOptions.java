@@ -0,0 +1,70 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.codec;
+
+/**
+ * Options for compressing and decompressing LZW data.
+ */
+public class LZWCodecOptions extends CodecOptions {
+
+  // -- Constants --
+
+  /** No prediction scheme; decoded bytes are returned unchanged. */
+  public static final int NO_PREDICTION = 1;
+
+  /**
+   * TIFF horizontal differencing.  Each decoded sample is added to the
+   * previous sample in the same row; requires 8-bit samples and the
+   * {@link #width width} and {@link #channels channels} fields to be set.
+   */
+  public static final int HORIZONTAL_DIFFERENCING = 2;
+
+  // -- Fields --
+
+  /** Predictor to reverse while decompressing. */
+  public int predictor = NO_PREDICTION;
+
+  // -- Constructors --
+
+  /** Construct a new LZWCodecOptions. */
+  public LZWCodecOptions() {}
+
+  /** Construct a new LZWCodecOptions using the given CodecOptions. */
+  public LZWCodecOptions(CodecOptions options) {
+    super(options);
+    if (options instanceof LZWCodecOptions) {
+      this.predictor = ((LZWCodecOptions) options).predictor;
+    }
+  }
+
+}
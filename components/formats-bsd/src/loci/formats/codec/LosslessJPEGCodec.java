@@ -35,7 +35,6 @@ package loci.formats.codec;
 import java.io.IOException;
 import java.util.Vector;
 
-import loci.common.ByteArrayHandle;
 import loci.common.DataTools;
 import loci.common.RandomAccessInputStream;
 import loci.formats.FormatException;
@@ -162,100 +161,41 @@ public class LosslessJPEGCodec extends BaseCodec {
 
         // scrub out byte stuffing
 
-        ByteVector b = new ByteVector();
+        int dataLength = 0;
         for (int i=0; i<toDecode.length; i++) {
           byte val = toDecode[i];
           if (val == (byte) 0xff) {
-        	if (toDecode[i + 1] == 0)
-        		b.add(val);
-    		i++;
-          } else {
-            b.add(val);
+            if (i + 1 < toDecode.length && toDecode[i + 1] == 0) {
+              toDecode[dataLength++] = val;
+            }
+            i++;
+          }
+          else {
+            toDecode[dataLength++] = val;
           }
         }
-        toDecode = b.toByteArray();
-
-        RandomAccessInputStream bb = new RandomAccessInputStream(
-          new ByteArrayHandle(toDecode));
 
-        HuffmanCodec huffman = new HuffmanCodec();
-        HuffmanCodecOptions huffmanOptions = new HuffmanCodecOptions();
-        huffmanOptions.bitsPerSample = bitsPerSample;
-        huffmanOptions.maxBytes = buf.length / nComponents;
-
-        int nextSample = 0;
-        while (nextSample < buf.length / nComponents) {
-          for (int i=0; i<nComponents; i++) {
-            huffmanOptions.table = huffmanTables[dcTable[i]];
-            int v = 0;
-
-            if (huffmanTables != null) {
-              v = huffman.getSample(bb, huffmanOptions);
-              if (nextSample == 0) {
-                v += (int) Math.pow(2, bitsPerSample - 1);
-              }
-            }
-            else {
-              throw new UnsupportedCompressionException(
-                "Arithmetic coding not supported");
-            }
-
-            // apply predictor to the sample
-            int predictor = startPredictor;
-            if (nextSample < width * bytesPerSample) predictor = 1;
-            else if ((nextSample % (width * bytesPerSample)) == 0) {
-              predictor = 2;
-            }
-
-            int componentOffset = i * (buf.length / nComponents);
-
-            int indexA = nextSample - bytesPerSample + componentOffset;
-            int indexB = nextSample - width * bytesPerSample + componentOffset;
-            int indexC = nextSample - (width + 1) * bytesPerSample +
-              componentOffset;
-
-            int sampleA = indexA < 0 ? 0 :
-              DataTools.bytesToInt(buf, indexA, bytesPerSample, false);
-            int sampleB = indexB < 0 ? 0 :
-              DataTools.bytesToInt(buf, indexB, bytesPerSample, false);
-            int sampleC = indexC < 0 ? 0 :
-              DataTools.bytesToInt(buf, indexC, bytesPerSample, false);
-
-            if (nextSample > 0) {
-              int pred = 0;
-              switch (predictor) {
-                case 1:
-                  pred = sampleA;
-                  break;
-                case 2:
-                  pred = sampleB;
-                  break;
-                case 3:
-                  pred = sampleC;
-                  break;
-                case 4:
-                  pred = sampleA + sampleB + sampleC;
-                  break;
-                case 5:
-                  pred = sampleA + ((sampleB - sampleC) / 2);
-                  break;
-                case 6:
-                  pred = sampleB + ((sampleA - sampleC) / 2);
-                  break;
-                case 7:
-                  pred = (sampleA + sampleB) / 2;
-                  break;
-              }
-              v += pred;
-            }
-
-            int offset = componentOffset + nextSample;
-
-            DataTools.unpackBytes(v, buf, offset, bytesPerSample, false);
+        if (buf.length == 0) {
+          continue;
+        }
+        if (huffmanTables == null) {
+          throw new UnsupportedCompressionException(
+            "Arithmetic coding not supported");
+        }
+        HuffmanCodec.Decoder[] decoders =
+          new HuffmanCodec.Decoder[nComponents];
+        for (int i=0; i<nComponents; i++) {
+          short[] table = huffmanTables[dcTable[i]];
+          if (table == null) {
+            throw new FormatException("Missing Huffman table " + dcTable[i]);
           }
-          nextSample += bytesPerSample;
+          decoders[i] = HuffmanCodec.getDecoder(table);
         }
-        bb.close();
+
+        decodeScan(new BitReader(toDecode, 0, dataLength), decoders, buf,
+          width, bitsPerSample, bytesPerSample, startPredictor,
+          options.interleaved && nComponents > 1,
+          options.littleEndian && bytesPerSample > 1);
       }
       else {
         length -= 2; // stored length includes length param
@@ -320,32 +260,114 @@ public class LosslessJPEGCodec extends BaseCodec {
       }
     }
 
-    if (options.interleaved && nComponents > 1) {
-      // data is stored in planar (RRR...GGG...BBB...) order
-      byte[] newBuf = new byte[buf.length];
-      for (int i=0; i<buf.length; i+=nComponents*bytesPerSample) {
-        for (int c=0; c<nComponents; c++) {
-          int src = c * (buf.length / nComponents) + (i / nComponents);
-          int dst = i + c * bytesPerSample;
-          System.arraycopy(buf, src, newBuf, dst, bytesPerSample);
+    return buf;
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Decodes the samples of one scan, applying the predictor to each sample
+   * as it is decoded and storing it in its final position in the output.
+   *
+   * @param bits the scan's entropy-coded data, with byte stuffing removed
+   * @param decoders the Huffman decoder for each component
+   * @param buf the output buffer, which holds one plane per component
+   *   unless <code>interleaved</code> is set
+   * @param interleaved true if the output should be interleaved
+   * @param little true if the output should be little-endian
+   */
+  private void decodeScan(BitReader bits, HuffmanCodec.Decoder[] decoders,
+    byte[] buf, int width, int bitsPerSample, int bytesPerSample,
+    int startPredictor, boolean interleaved, boolean little)
+  {
+    int nComponents = decoders.length;
+    int planeSize = buf.length / nComponents;
+    int nSamples = (planeSize + bytesPerSample - 1) / bytesPerSample;
+    int mask = bytesPerSample >= 4 ? -1 : (1 << (bytesPerSample * 8)) - 1;
+    int initialValue = bitsPerSample > 0 ? 1 << (bitsPerSample - 1) : 0;
+    int pixelStride = interleaved ? nComponents * bytesPerSample :
+      bytesPerSample;
+    int componentStride = interleaved ? bytesPerSample : planeSize;
+
+    // the decoded samples of the previous and current rows
+    int[][] previous = new int[nComponents][width];
+    int[][] current = new int[nComponents][width];
+
+    int x = 0, y = 0;
+    for (int sample=0; sample<nSamples; sample++) {
+      for (int c=0; c<nComponents; c++) {
+        int bitCount = decoders[c].decode(bits);
+        int v;
+        if (bitCount == 16) {
+          v = 0x8000;
         }
-      }
-      buf = newBuf;
-    }
+        else {
+          if (bitCount < 0) bitCount = 0;
+          v = HuffmanCodec.extend(bits.readBits(bitCount), bitCount);
+        }
+
+        int[] row = current[c];
+        if (sample == 0) {
+          v += initialValue;
+        }
+        else if (y == 0) {
+          v += row[x - 1];
+        }
+        else if (x == 0) {
+          v += previous[c][x];
+        }
+        else {
+          int sampleA = row[x - 1];
+          int sampleB = previous[c][x];
+          int sampleC = previous[c][x - 1];
+          switch (startPredictor) {
+            case 1:
+              v += sampleA;
+              break;
+            case 2:
+              v += sampleB;
+              break;
+            case 3:
+              v += sampleC;
+              break;
+            case 4:
+              v += sampleA + sampleB + sampleC;
+              break;
+            case 5:
+              v += sampleA + ((sampleB - sampleC) / 2);
+              break;
+            case 6:
+              v += sampleB + ((sampleA - sampleC) / 2);
+              break;
+            case 7:
+              v += (sampleA + sampleB) / 2;
+              break;
+          }
+        }
+        v &= mask;
+        row[x] = v;
 
-    if (options.littleEndian && bytesPerSample > 1) {
-      // data is stored in big endian order
-      // reverse the bytes in each sample
-      byte[] newBuf = new byte[buf.length];
-      for (int i=0; i<buf.length; i+=bytesPerSample) {
-        for (int q=0; q<bytesPerSample; q++) {
-          newBuf[i + bytesPerSample - q - 1] = buf[i + q];
+        int offset = c * componentStride + sample * pixelStride;
+        if (bytesPerSample == 1) {
+          buf[offset] = (byte) v;
+        }
+        else if (bytesPerSample == 2) {
+          buf[offset + (little ? 1 : 0)] = (byte) (v >> 8);
+          buf[offset + (little ? 0 : 1)] = (byte) v;
+        }
+        else {
+          DataTools.unpackBytes(v, buf, offset, bytesPerSample, little);
         }
       }
-      buf = newBuf;
-    }
 
-    return buf;
+      if (++x == width) {
+        x = 0;
+        y++;
+        int[][] swap = previous;
+        previous = current;
+        current = swap;
+      }
+    }
   }
 
 }
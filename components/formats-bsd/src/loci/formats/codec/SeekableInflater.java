@@ -0,0 +1,660 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.codec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.FormatException;
+
+/**
+ * Decompresses arbitrary ranges of a zlib stream without inflating the
+ * stream from its start every time.
+ * <p>
+ * While the stream is decompressed, a checkpoint is recorded at the first
+ * deflate block boundary after every <code>spacing</code> bytes of output.
+ * A checkpoint consists of the bit offset of the block in the compressed
+ * data and the preceding 32 KB of output (the deflate window), which is
+ * itself kept compressed.  Any range can then be decompressed by resuming
+ * from the nearest preceding checkpoint.
+ * <p>
+ * The checkpoints are plain fields, so an index built by {@link #index} is
+ * persisted along with the reader that owns it (see
+ * {@link loci.formats.Memoizer}).  Ranges may be read concurrently by
+ * several threads; each thread decodes independently from its own
+ * checkpoint, and reads from the shared stream are serialized.
+ * <p>
+ * java.util.zip.Inflater cannot resume decompression in the middle of a
+ * byte, so the stream is decoded by this class rather than by zlib.
+ */
+public class SeekableInflater {
+
+  // -- Constants --
+
+  /** Size of the deflate window. */
+  public static final int WINDOW_SIZE = 32768;
+
+  /** Default minimum number of output bytes between checkpoints. */
+  public static final long DEFAULT_SPACING = 1024 * 1024;
+
+  /** Number of compressed bytes read from the stream at once. */
+  private static final int INPUT_SIZE = 65536;
+
+  private static final int[] LENGTH_BASE = {
+    3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59,
+    67, 83, 99, 115, 131, 163, 195, 227, 258
+  };
+
+  private static final int[] LENGTH_EXTRA = {
+    0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4,
+    5, 5, 5, 5, 0
+  };
+
+  private static final int[] DISTANCE_BASE = {
+    1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513,
+    769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577
+  };
+
+  private static final int[] DISTANCE_EXTRA = {
+    0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10,
+    11, 11, 12, 12, 13, 13
+  };
+
+  /** Order in which code length code lengths are stored. */
+  private static final int[] CODE_LENGTH_ORDER = {
+    16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15
+  };
+
+  /** Fixed literal/length and distance codes. */
+  private static final HuffmanTable FIXED_LITERALS, FIXED_DISTANCES;
+
+  static {
+    int[] lengths = new int[288];
+    for (int i=0; i<lengths.length; i++) {
+      lengths[i] = i < 144 ? 8 : i < 256 ? 9 : i < 280 ? 7 : 8;
+    }
+    FIXED_LITERALS = new HuffmanTable(lengths, lengths.length);
+    lengths = new int[30];
+    for (int i=0; i<lengths.length; i++) {
+      lengths[i] = 5;
+    }
+    FIXED_DISTANCES = new HuffmanTable(lengths, lengths.length);
+  }
+
+  // -- Fields --
+
+  /** File offset of the compressed data. */
+  private long offset;
+
+  /** Length of the compressed data in bytes. */
+  private long length;
+
+  /** Minimum number of output bytes between checkpoints. */
+  private long spacing;
+
+  /** Recorded checkpoints, in order of output position. */
+  private List<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
+
+  /** Decoder left at the end of the most recent read. */
+  private transient Decoder idle;
+
+  // -- Constructors --
+
+  /**
+   * Constructs an inflater for the zlib stream at the given location,
+   * recording checkpoints every {@link #DEFAULT_SPACING} bytes.
+   */
+  public SeekableInflater(long offset, long length) {
+    this(offset, length, DEFAULT_SPACING);
+  }
+
+  /**
+   * Constructs an inflater for the zlib stream at the given location.
+   *
+   * @param offset file offset of the zlib stream
+   * @param length length of the zlib stream in bytes
+   * @param spacing minimum number of output bytes between checkpoints
+   */
+  public SeekableInflater(long offset, long length, long spacing) {
+    if (spacing <= 0) {
+      throw new IllegalArgumentException("Invalid spacing: " + spacing);
+    }
+    this.offset = offset;
+    this.length = length;
+    this.spacing = spacing;
+    checkpoints.add(new Checkpoint(0, 0, null, 0));
+  }
+
+  // -- SeekableInflater API methods --
+
+  /** Gets the number of checkpoints recorded so far. */
+  public synchronized int getCheckpointCount() {
+    return checkpoints.size();
+  }
+
+  /**
+   * Decompresses the given range of the uncompressed data.
+   *
+   * @param in the stream containing the compressed data
+   * @param position offset of the range within the uncompressed data
+   * @param buf buffer into which the range is decompressed
+   * @param off offset into the buffer
+   * @param len length of the range
+   * @throws FormatException if the compressed data is invalid or ends
+   *   before the end of the range
+   */
+  public void read(RandomAccessInputStream in, long position, byte[] buf,
+    int off, int len)
+    throws FormatException, IOException
+  {
+    Decoder decoder;
+    Checkpoint checkpoint;
+    synchronized (this) {
+      decoder = idle;
+      idle = null;
+      checkpoint = getCheckpoint(position);
+    }
+    if (decoder == null || decoder.in != in || decoder.output > position ||
+      decoder.output < checkpoint.output)
+    {
+      decoder = new Decoder(in, checkpoint);
+    }
+    decoder.skip(position - decoder.output);
+    int n = 0;
+    while (n < len) {
+      n += decoder.decode(buf, off + n, len - n);
+    }
+    synchronized (this) {
+      idle = decoder;
+    }
+  }
+
+  /**
+   * Decompresses the remainder of the stream, so that checkpoints are
+   * recorded for all of it.
+   *
+   * @param in the stream containing the compressed data
+   */
+  public void index(RandomAccessInputStream in)
+    throws FormatException, IOException
+  {
+    Checkpoint last;
+    synchronized (this) {
+      last = checkpoints.get(checkpoints.size() - 1);
+    }
+    Decoder decoder = new Decoder(in, last);
+    while (!decoder.atBoundary || !decoder.lastBlock) {
+      decoder.decode(null, 0, Integer.MAX_VALUE);
+    }
+  }
+
+  // -- Helper methods --
+
+  /** Gets the last checkpoint at or before the given output position. */
+  private Checkpoint getCheckpoint(long position) {
+    int low = 0;
+    int high = checkpoints.size() - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (checkpoints.get(mid).output <= position) low = mid;
+      else high = mid - 1;
+    }
+    return checkpoints.get(low);
+  }
+
+  /**
+   * Records a checkpoint for the given decoder, which must be at a block
+   * boundary, if it is far enough past the last checkpoint.
+   */
+  private void checkpoint(Decoder decoder) {
+    synchronized (this) {
+      Checkpoint last = checkpoints.get(checkpoints.size() - 1);
+      if (decoder.output < last.output + spacing) return;
+    }
+
+    // compress the window outside of the lock
+    int size = (int) Math.min(decoder.output, WINDOW_SIZE);
+    byte[] window = new byte[size];
+    int start = (int) (decoder.output - size) & (WINDOW_SIZE - 1);
+    int first = Math.min(size, WINDOW_SIZE - start);
+    System.arraycopy(decoder.window, start, window, 0, first);
+    System.arraycopy(decoder.window, 0, window, first, size - first);
+
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    deflater.setInput(window);
+    deflater.finish();
+    byte[] compressed = new byte[size + 64];
+    int compressedLength = 0;
+    while (!deflater.finished()) {
+      if (compressedLength == compressed.length) {
+        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+      }
+      compressedLength += deflater.deflate(compressed, compressedLength,
+        compressed.length - compressedLength);
+    }
+    deflater.end();
+
+    Checkpoint checkpoint = new Checkpoint(decoder.output,
+      decoder.getBitPosition(),
+      Arrays.copyOf(compressed, compressedLength), size);
+    synchronized (this) {
+      Checkpoint last = checkpoints.get(checkpoints.size() - 1);
+      if (decoder.output >= last.output + spacing) {
+        checkpoints.add(checkpoint);
+      }
+    }
+  }
+
+  // -- Helper classes --
+
+  /** A position from which decompression can be resumed. */
+  private static class Checkpoint {
+    /** Number of bytes of output before the checkpoint. */
+    private long output;
+
+    /** Bit offset of the next block in the compressed data. */
+    private long bitPosition;
+
+    /** Compressed copy of the last bytes of output before the checkpoint. */
+    private byte[] window;
+
+    /** Uncompressed length of the window. */
+    private int windowLength;
+
+    public Checkpoint(long output, long bitPosition, byte[] window,
+      int windowLength)
+    {
+      this.output = output;
+      this.bitPosition = bitPosition;
+      this.window = window;
+      this.windowLength = windowLength;
+    }
+  }
+
+  /**
+   * Lookup table for a canonical Huffman code, indexed by the next bits of
+   * the input.  Each entry holds the symbol in the upper bits and the code
+   * length in the lower four bits; an entry of zero is an invalid code.
+   */
+  private static class HuffmanTable {
+    private final int[] entries;
+    private final int bits;
+
+    public HuffmanTable(int[] lengths, int count) {
+      int max = 1;
+      int[] counts = new int[16];
+      for (int i=0; i<count; i++) {
+        counts[lengths[i]]++;
+        max = Math.max(max, lengths[i]);
+      }
+      counts[0] = 0;
+      int[] next = new int[16];
+      int code = 0;
+      for (int len=1; len<16; len++) {
+        code = (code + counts[len - 1]) << 1;
+        next[len] = code;
+      }
+
+      bits = max;
+      entries = new int[1 << max];
+      for (int symbol=0; symbol<count; symbol++) {
+        int len = lengths[symbol];
+        if (len == 0) continue;
+        int c = next[len]++;
+        if (c >= 1 << len) continue; // over-subscribed; leave invalid
+
+        // codes are stored most significant bit first
+        int reversed = 0;
+        for (int i=0; i<len; i++) {
+          reversed = (reversed << 1) | ((c >> i) & 1);
+        }
+        for (int i=reversed; i<entries.length; i+=1<<len) {
+          entries[i] = (symbol << 4) | len;
+        }
+      }
+    }
+  }
+
+  /** Decodes the stream from a checkpoint onwards. */
+  private class Decoder {
+    private final RandomAccessInputStream in;
+
+    private final byte[] input = new byte[INPUT_SIZE];
+
+    /** File offset of input[0]. */
+    private long inputOffset;
+
+    private int inputLength, inputPosition;
+
+    /** Bit accumulator; the next bit of input is the lowest bit. */
+    private long bitBuffer;
+    private int bitCount;
+
+    /** Number of zero bits added to the accumulator past the end. */
+    private int padding;
+
+    /** The last WINDOW_SIZE bytes of output. */
+    private final byte[] window = new byte[WINDOW_SIZE];
+
+    /** Total number of bytes of output. */
+    private long output;
+
+    /** True when the next bits are a block header. */
+    private boolean atBoundary = true;
+
+    /** True once the header of the final block has been read. */
+    private boolean lastBlock;
+
+    /** Number of bytes remaining in the current stored block, or -1. */
+    private int stored = -1;
+
+    /** Codes for the current compressed block. */
+    private HuffmanTable literals, distances;
+
+    /** Remainder of the current match. */
+    private int copyLength, copyDistance;
+
+    public Decoder(RandomAccessInputStream in, Checkpoint checkpoint)
+      throws FormatException, IOException
+    {
+      this.in = in;
+      output = checkpoint.output;
+      inputOffset = offset + (checkpoint.bitPosition >> 3);
+      getBits((int) (checkpoint.bitPosition & 7));
+
+      if (checkpoint.output == 0) {
+        readZlibHeader();
+      }
+      else {
+        byte[] w = new byte[checkpoint.windowLength];
+        Inflater inflater = new Inflater();
+        inflater.setInput(checkpoint.window);
+        try {
+          inflater.inflate(w);
+        }
+        catch (DataFormatException e) {
+          throw new FormatException(e);
+        }
+        finally {
+          inflater.end();
+        }
+        for (int i=0; i<w.length; i++) {
+          window[(int) (output - w.length + i) & (WINDOW_SIZE - 1)] = w[i];
+        }
+      }
+    }
+
+    /** Gets the bit offset of the next unread bit of compressed data. */
+    public long getBitPosition() {
+      return (inputOffset + inputPosition - offset) * 8 - bitCount + padding;
+    }
+
+    /** Decodes and discards the given number of bytes. */
+    public void skip(long n) throws FormatException, IOException {
+      while (n > 0) {
+        n -= decode(null, 0, (int) Math.min(n, Integer.MAX_VALUE));
+      }
+    }
+
+    /**
+     * Decodes up to the given number of bytes, stopping early at the end
+     * of a block.
+     *
+     * @param buf the buffer into which bytes are decoded, or null to
+     *   discard them
+     * @return the number of bytes decoded
+     */
+    public int decode(byte[] buf, int off, int len)
+      throws FormatException, IOException
+    {
+      if (atBoundary) {
+        if (lastBlock) {
+          // the stream ended before the requested data
+          throw new FormatException("Corrupted zlib compression");
+        }
+        checkpoint(this);
+        readBlockHeader();
+        if (atBoundary) return 0; // empty stored block
+      }
+
+      int n = 0;
+      if (stored >= 0) {
+        while (n < len && stored > 0) {
+          emit((byte) getBits(8), buf, off + n++);
+          stored--;
+        }
+        if (stored == 0) {
+          stored = -1;
+          atBoundary = true;
+        }
+        return n;
+      }
+
+      while (n < len) {
+        if (copyLength > 0) {
+          int count = Math.min(copyLength, len - n);
+          for (int i=0; i<count; i++) {
+            byte b = window[(int) (output - copyDistance) & (WINDOW_SIZE - 1)];
+            emit(b, buf, off + n++);
+          }
+          copyLength -= count;
+          continue;
+        }
+
+        int symbol = decodeSymbol(literals);
+        if (symbol < 256) {
+          emit((byte) symbol, buf, off + n++);
+        }
+        else if (symbol == 256) {
+          atBoundary = true;
+          break;
+        }
+        else {
+          symbol -= 257;
+          if (symbol >= LENGTH_BASE.length) {
+            throw new FormatException("Corrupted zlib compression");
+          }
+          copyLength =
+            LENGTH_BASE[symbol] + getBits(LENGTH_EXTRA[symbol]);
+          int d = decodeSymbol(distances);
+          if (d >= DISTANCE_BASE.length) {
+            throw new FormatException("Corrupted zlib compression");
+          }
+          copyDistance = DISTANCE_BASE[d] + getBits(DISTANCE_EXTRA[d]);
+          if (copyDistance > output) {
+            throw new FormatException("Corrupted zlib compression");
+          }
+        }
+      }
+      return n;
+    }
+
+    private void emit(byte b, byte[] buf, int index) {
+      window[(int) output & (WINDOW_SIZE - 1)] = b;
+      output++;
+      if (buf != null) buf[index] = b;
+    }
+
+    private void readZlibHeader() throws FormatException, IOException {
+      int cmf = getBits(8);
+      int flg = getBits(8);
+      if ((cmf & 0x0f) != 8 || ((cmf << 8) | flg) % 31 != 0) {
+        throw new FormatException("Corrupted zlib compression");
+      }
+      if ((flg & 0x20) != 0) {
+        throw new FormatException("Unsupported zlib compression");
+      }
+    }
+
+    private void readBlockHeader() throws FormatException, IOException {
+      atBoundary = false;
+      lastBlock = getBits(1) == 1;
+      int type = getBits(2);
+      switch (type) {
+        case 0:
+          // stored block; skip to byte boundary
+          getBits(bitCount & 7);
+          int len = getBits(16);
+          int complement = getBits(16);
+          if ((len ^ 0xffff) != complement) {
+            throw new FormatException("Corrupted zlib compression");
+          }
+          stored = len;
+          if (stored == 0) {
+            stored = -1;
+            atBoundary = true;
+          }
+          break;
+        case 1:
+          literals = FIXED_LITERALS;
+          distances = FIXED_DISTANCES;
+          break;
+        case 2:
+          readDynamicCodes();
+          break;
+        default:
+          throw new FormatException("Corrupted zlib compression");
+      }
+    }
+
+    private void readDynamicCodes() throws FormatException, IOException {
+      int literalCount = getBits(5) + 257;
+      int distanceCount = getBits(5) + 1;
+      int codeLengthCount = getBits(4) + 4;
+
+      int[] lengths = new int[19];
+      for (int i=0; i<codeLengthCount; i++) {
+        lengths[CODE_LENGTH_ORDER[i]] = getBits(3);
+      }
+      HuffmanTable codeLengths = new HuffmanTable(lengths, lengths.length);
+
+      lengths = new int[literalCount + distanceCount];
+      int i = 0;
+      while (i < lengths.length) {
+        int symbol = decodeSymbol(codeLengths);
+        int repeat, value;
+        if (symbol < 16) {
+          lengths[i++] = symbol;
+          continue;
+        }
+        else if (symbol == 16) {
+          if (i == 0) throw new FormatException("Corrupted zlib compression");
+          value = lengths[i - 1];
+          repeat = 3 + getBits(2);
+        }
+        else if (symbol == 17) {
+          value = 0;
+          repeat = 3 + getBits(3);
+        }
+        else {
+          value = 0;
+          repeat = 11 + getBits(7);
+        }
+        if (i + repeat > lengths.length) {
+          throw new FormatException("Corrupted zlib compression");
+        }
+        while (repeat-- > 0) {
+          lengths[i++] = value;
+        }
+      }
+
+      literals = new HuffmanTable(lengths, literalCount);
+      int[] distanceLengths = new int[distanceCount];
+      System.arraycopy(lengths, literalCount, distanceLengths, 0,
+        distanceCount);
+      distances = new HuffmanTable(distanceLengths, distanceCount);
+    }
+
+    private int decodeSymbol(HuffmanTable table)
+      throws FormatException, IOException
+    {
+      fill(table.bits);
+      int entry = table.entries[(int) bitBuffer & ((1 << table.bits) - 1)];
+      int len = entry & 0xf;
+      if (len == 0) {
+        throw new FormatException("Corrupted zlib compression");
+      }
+      bitBuffer >>>= len;
+      bitCount -= len;
+      return entry >>> 4;
+    }
+
+    private int getBits(int n) throws FormatException, IOException {
+      if (n == 0) return 0;
+      fill(n);
+      int value = (int) bitBuffer & ((1 << n) - 1);
+      bitBuffer >>>= n;
+      bitCount -= n;
+      return value;
+    }
+
+    /** Ensures that the accumulator holds at least n bits. */
+    private void fill(int n) throws FormatException, IOException {
+      while (bitCount < n) {
+        if (inputPosition == inputLength && !readInput()) {
+          // allow a code to be looked up near the end of the stream
+          padding += 8;
+          if (padding > 64) {
+            throw new FormatException("Corrupted zlib compression");
+          }
+        }
+        else {
+          bitBuffer |= (input[inputPosition++] & 0xffL) << bitCount;
+        }
+        bitCount += 8;
+      }
+    }
+
+    private boolean readInput() throws IOException {
+      inputOffset += inputLength;
+      inputPosition = 0;
+      inputLength = (int) Math.min(INPUT_SIZE, offset + length - inputOffset);
+      if (inputLength <= 0) {
+        inputLength = 0;
+        return false;
+      }
+      synchronized (in) {
+        in.seek(inputOffset);
+        in.readFully(input, 0, inputLength);
+      }
+      return true;
+    }
+  }
+
+}
@@ -745,19 +745,44 @@ public final class AWTImageTools {
     int w, int h) throws FormatException, IOException
   {
     int pixelType = r.getPixelType();
-    boolean little = r.isLittleEndian();
+    Object pixels = DataTools.makeDataArray(buf,
+      FormatTools.getBytesPerPixel(pixelType),
+      FormatTools.isFloatingPoint(pixelType), r.isLittleEndian());
+    return makeImage(r, pixels, w, h);
+  }
+
+  /**
+   * Creates an image from a sub-image of the given plane, reading its
+   * samples directly into a primitive array using the given IFormatReader.
+   */
+  public static BufferedImage openImage(IFormatReader r, int no,
+    int x, int y, int w, int h) throws FormatException, IOException
+  {
+    Object pixels = FormatTools.allocateSamples(r.getPixelType(),
+      w * h * r.getRGBChannelCount());
+    return makeImage(r, r.openPlane(no, pixels, x, y, w, h), w, h);
+  }
+
+  /**
+   * Creates an image from the given primitive array, using the given
+   * IFormatReader to retrieve additional information.
+   */
+  private static BufferedImage makeImage(IFormatReader r, Object pixels,
+    int w, int h) throws FormatException, IOException
+  {
+    int pixelType = r.getPixelType();
     boolean normal = r.isNormalized();
     int rgbChanCount = r.getRGBChannelCount();
     boolean interleaved = r.isInterleaved();
     boolean indexed = r.isIndexed();
 
     if (pixelType == FormatTools.FLOAT) {
-      float[] f = (float[]) DataTools.makeDataArray(buf, 4, true, little);
+      float[] f = (float[]) pixels;
       if (normal) f = DataTools.normalizeFloats(f);
       return makeImage(f, w, h, rgbChanCount, interleaved);
     }
     else if (pixelType == FormatTools.DOUBLE) {
-      double[] d = (double[]) DataTools.makeDataArray(buf, 8, true, little);
+      double[] d = (double[]) pixels;
       if (normal) d = DataTools.normalizeDoubles(d);
       return makeImage(d, w, h, rgbChanCount, interleaved);
     }
@@ -777,9 +802,16 @@ public final class AWTImageTools {
       }
     }
 
-    int bpp = FormatTools.getBytesPerPixel(pixelType);
-    BufferedImage b = makeImage(buf, w, h, rgbChanCount,
-      interleaved, bpp, false, little, signed);
+    BufferedImage b = null;
+    if (pixels instanceof byte[]) {
+      b = makeImage((byte[]) pixels, w, h, rgbChanCount, interleaved, signed);
+    }
+    else if (pixels instanceof short[]) {
+      b = makeImage((short[]) pixels, w, h, rgbChanCount, interleaved, signed);
+    }
+    else if (pixels instanceof int[]) {
+      b = makeImage((int[]) pixels, w, h, rgbChanCount, interleaved, signed);
+    }
     if (b == null) {
       throw new FormatException("Could not construct BufferedImage");
     }
@@ -1085,9 +1117,7 @@ public final class AWTImageTools {
       short[][] s = (short[][]) pixels;
       pixelBytes = new byte[s.length][s[0].length * 2];
       for (int i=0; i<pixelBytes.length; i++) {
-        for (int j=0; j<s[0].length; j++) {
-          DataTools.unpackBytes(s[i][j], pixelBytes[i], j * 2, 2, little);
-        }
+        DataTools.packSamples(s[i], 0, pixelBytes[i], 0, s[0].length, little);
       }
     }
     else if (pixels instanceof int[][]) {
@@ -1112,9 +1142,8 @@ public final class AWTImageTools {
       else {
         pixelBytes = new byte[in.length][in[0].length * 4];
         for (int i=0; i<pixelBytes.length; i++) {
-          for (int j=0; j<in[0].length; j++) {
-            DataTools.unpackBytes(in[i][j], pixelBytes[i], j * 4, 4, little);
-          }
+          DataTools.packSamples(in[i], 0, pixelBytes[i], 0, in[0].length,
+            little);
         }
       }
     }
@@ -1122,20 +1151,16 @@ public final class AWTImageTools {
       float[][] in = (float[][]) pixels;
       pixelBytes = new byte[in.length][in[0].length * 4];
       for (int i=0; i<pixelBytes.length; i++) {
-        for (int j=0; j<in[0].length; j++) {
-          int v = Float.floatToIntBits(in[i][j]);
-          DataTools.unpackBytes(v, pixelBytes[i], j * 4, 4, little);
-        }
+        DataTools.packSamples(in[i], 0, pixelBytes[i], 0, in[0].length,
+          little);
       }
     }
     else if (pixels instanceof double[][]) {
       double[][] in = (double[][]) pixels;
       pixelBytes = new byte[in.length][in[0].length * 8];
       for (int i=0; i<pixelBytes.length; i++) {
-        for (int j=0; j<in[0].length; j++) {
-          long v = Double.doubleToLongBits(in[i][j]);
-          DataTools.unpackBytes(v, pixelBytes[i], j * 8, 8, little);
-        }
+        DataTools.packSamples(in[i], 0, pixelBytes[i], 0, in[0].length,
+          little);
       }
     }
 
@@ -1165,9 +1190,7 @@ public final class AWTImageTools {
       short[][] s = (short[][]) pixels;
       pixelBytes = new byte[s.length][s[0].length * bpp];
       for (int i=0; i<pixelBytes.length; i++) {
-        for (int j=0; j<s[0].length; j++) {
-          DataTools.unpackBytes(s[i][j], pixelBytes[i], j * bpp, bpp, little);
-        }
+        DataTools.packSamples(s[i], 0, pixelBytes[i], 0, s[0].length, little);
       }
     }
     else if (pixels instanceof int[][]) {
@@ -1176,9 +1199,8 @@ public final class AWTImageTools {
 
       pixelBytes = new byte[in.length][in[0].length * bpp];
       for (int i=0; i<pixelBytes.length; i++) {
-        for (int j=0; j<in[0].length; j++) {
-          DataTools.unpackBytes(in[i][j], pixelBytes[i], j * bpp, bpp, little);
-        }
+        DataTools.packSamples(in[i], 0, pixelBytes[i], 0, in[0].length,
+          little);
       }
     }
     else if (pixels instanceof float[][]) {
@@ -1186,10 +1208,8 @@ public final class AWTImageTools {
       float[][] in = (float[][]) pixels;
       pixelBytes = new byte[in.length][in[0].length * bpp];
       for (int i=0; i<pixelBytes.length; i++) {
-        for (int j=0; j<in[0].length; j++) {
-          int v = Float.floatToIntBits(in[i][j]);
-          DataTools.unpackBytes(v, pixelBytes[i], j * bpp, bpp, little);
-        }
+        DataTools.packSamples(in[i], 0, pixelBytes[i], 0, in[0].length,
+          little);
       }
     }
     else if (pixels instanceof double[][]) {
@@ -1197,10 +1217,8 @@ public final class AWTImageTools {
       double[][] in = (double[][]) pixels;
       pixelBytes = new byte[in.length][in[0].length * bpp];
       for (int i=0; i<pixelBytes.length; i++) {
-        for (int j=0; j<in[0].length; j++) {
-          long v = Double.doubleToLongBits(in[i][j]);
-          DataTools.unpackBytes(v, pixelBytes[i], j * bpp, bpp, little);
-        }
+        DataTools.packSamples(in[i], 0, pixelBytes[i], 0, in[0].length,
+          little);
       }
     }
 
@@ -34,6 +34,10 @@ package loci.formats.gui;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import loci.common.Region;
 
 import loci.formats.FormatException;
 import loci.formats.IFormatReader;
@@ -82,8 +86,8 @@ public class BufferedImageReader extends ReaderWrapper {
       return (BufferedImage) openPlane(no, x, y, w, h);
     }
     else {
-      // must construct BufferedImage from byte array
-      return AWTImageTools.openImage(openBytes(no, x, y, w, h), this, w, h);
+      // must construct BufferedImage from primitive array
+      return AWTImageTools.openImage(this, no, x, y, w, h);
     }
   }
 
@@ -102,4 +106,29 @@ public class BufferedImageReader extends ReaderWrapper {
       getThumbSizeX(), getThumbSizeY());
   }
 
+  // -- IFormatReader API methods --
+
+  /* @see loci.formats.IFormatReader#openPlane(int, Object, int, int, int, int) */
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    return reader.openPlane(no, buf, x, y, w, h);
+  }
+
+  /* @see loci.formats.IFormatReader#openBytes(int, ByteBuffer, int, int, int, int) */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    return reader.openBytes(no, buf, x, y, w, h);
+  }
+
+  /* @see loci.formats.IFormatReader#openBytes(int, List, List) */  @Override
+  public List<byte[]> openBytes(int no, List<Region> regions,
+    List<byte[]> bufs) throws FormatException, IOException
+  {
+    return reader.openBytes(no, regions, bufs);
+  }
+
 }
@@ -33,6 +33,9 @@
 package loci.formats.in;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -411,10 +414,10 @@ public class DicomReader extends FormatReader {
         if (maxPixelRange == -1 || centerPixelValue < (maxPixelRange/2)) {
           maxPixelValue = FormatTools.defaultMinMax(getPixelType())[1];
         }
-        boolean little = isLittleEndian();
-        for (int i=0; i<buf.length; i+=2) {
-          short s = DataTools.bytesToShort(buf, i, 2, little);
-          DataTools.unpackBytes(maxPixelValue - s, buf, i, 2, little);
+        ShortBuffer samples = ByteBuffer.wrap(buf).order(isLittleEndian() ?
+          ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN).asShortBuffer();
+        for (int i=0; i<samples.limit(); i++) {
+          samples.put(i, (short) (maxPixelValue - samples.get(i)));
         }
       }
     }
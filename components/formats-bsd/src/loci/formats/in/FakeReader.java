@@ -38,6 +38,7 @@ import static ome.xml.model.Pixels.getPhysicalSizeZUnitXsdDefault;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -66,6 +67,7 @@ import loci.formats.FormatReader;
 import loci.formats.FormatTools;
 import loci.formats.MetadataTools;
 import loci.formats.ResourceNamer;
+import loci.formats.meta.LazyMetadata;
 import loci.formats.meta.MetadataStore;
 import loci.formats.ome.OMEXMLMetadata;
 import loci.formats.services.OMEXMLService;
@@ -300,95 +302,18 @@ public class FakeReader extends FormatReader {
     throws FormatException, IOException
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
+    fillPlane(no, buf, x, y, w, h);
+    return buf;
+  }
 
-    final int s = getSeries();
-    final int pixelType = getPixelType();
-    final int bpp = FormatTools.getBytesPerPixel(pixelType);
-    final boolean signed = FormatTools.isSigned(pixelType);
-    final boolean floating = FormatTools.isFloatingPoint(pixelType);
-    final int rgb = getRGBChannelCount();
-    final boolean indexed = isIndexed();
-    final boolean little = isLittleEndian();
-    final boolean interleaved = isInterleaved();
-
-    final int[] zct = getZCTCoords(no);
-    final int zIndex = zct[0], cIndex = zct[1], tIndex = zct[2];
-    ac = cIndex;
-
-    // integer types start gradient at the smallest value
-    long min = signed ? (long) -Math.pow(2, 8 * bpp - 1) : 0;
-    if (floating) min = 0; // floating point types always start at 0
-
-    for (int cOffset=0; cOffset<rgb; cOffset++) {
-      int channel = rgb * cIndex + cOffset;
-      for (int row=0; row<h; row++) {
-        int yy = y + row;
-        for (int col=0; col<w; col++) {
-          int xx = x + col;
-          long pixel = min + xx;
-
-          // encode various information into the image plane
-          boolean specialPixel = false;
-          if (yy < BOX_SIZE) {
-            int grid = xx / BOX_SIZE;
-            specialPixel = true;
-            switch (grid) {
-              case 0:
-                pixel = s;
-                break;
-              case 1:
-                pixel = no;
-                break;
-              case 2:
-                pixel = zIndex;
-                break;
-              case 3:
-                pixel = channel;
-                break;
-              case 4:
-                pixel = tIndex;
-                break;
-              default:
-                // just a normal pixel in the gradient
-                specialPixel = false;
-            }
-          }
-
-          // if indexed color with non-null LUT, convert value to index
-          if (indexed) {
-            if (lut8 != null) pixel = valueToIndex[ac][(int) (pixel % 256)];
-            if (lut16 != null) pixel = valueToIndex[ac][(int) (pixel % 65536)];
-          }
-
-          // scale pixel value by the scale factor
-          // if floating point, convert value to raw IEEE floating point bits
-          switch (pixelType) {
-            case FormatTools.FLOAT:
-              float floatPixel;
-              if (specialPixel) floatPixel = pixel;
-              else floatPixel = (float) (scaleFactor * pixel);
-              pixel = Float.floatToIntBits(floatPixel);
-              break;
-            case FormatTools.DOUBLE:
-              double doublePixel;
-              if (specialPixel) doublePixel = pixel;
-              else doublePixel = scaleFactor * pixel;
-              pixel = Double.doubleToLongBits(doublePixel);
-              break;
-            default:
-              if (!specialPixel) pixel = (long) (scaleFactor * pixel);
-          }
-
-          // unpack pixel into byte buffer
-          int index;
-          if (interleaved) index = w * rgb * row + rgb * col + cOffset; // CXY
-          else index = h * w * cOffset + w * row + col; // XYC
-          index *= bpp;
-          DataTools.unpackBytes(pixel, buf, index, bpp, little);
-        }
-      }
-    }
-
+  /* @see IFormatReader#openPlane(int, Object, int, int, int, int) */
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    FormatTools.checkPlaneParameters(this, no, -1, x, y, w, h);
+    FormatTools.checkSampleBuffer(this, buf, w, h);
+    fillPlane(no, buf, x, y, w, h);
     return buf;
   }
 
@@ -792,22 +717,38 @@ public class FakeReader extends FormatReader {
     boolean planeInfo = (exposureTime != null);
 
     MetadataTools.populatePixels(store, this, planeInfo);
-    fillExposureTime(store);
-    fillPhysicalSizes(store);
     for (int currentImageIndex=0; currentImageIndex<seriesCount; currentImageIndex++) {
-      String imageName = currentImageIndex > 0 ? name + " " + (currentImageIndex + 1) : name;
-      store.setImageName(imageName, currentImageIndex);
-      fillAcquisitionDate(store, acquisitionDate, currentImageIndex);
-
-      for (int c=0; c<getEffectiveSizeC(); c++) {
-        Color channel = defaultColor == null ? null: new Color(defaultColor);
+      final String imageName = currentImageIndex > 0 ? name + " " + (currentImageIndex + 1) : name;
+      final int imageIndex = currentImageIndex;
+      final int planeCount = core.get(currentImageIndex).imageCount;
+      final String date = acquisitionDate;
+      final Time exposure = exposureTime;
+      final Length[] sizes = {physicalSizeX, physicalSizeY, physicalSizeZ};
+
+      final Color[] colors = new Color[getEffectiveSizeC()];
+      for (int c=0; c<colors.length; c++) {
+        colors[c] = defaultColor == null ? null: new Color(defaultColor);
         if (c < color.size() && color.get(c) != null) {
-          channel = new Color(color.get(c));
-        }
-        if (channel != null) {
-          store.setChannelColor(channel, currentImageIndex, c);
+          colors[c] = new Color(color.get(c));
         }
       }
+
+      // NB: the values are captured above, as the fields are reset by close()
+      // and a lazy store may populate the series after the file is closed
+      populateSeries(currentImageIndex, new LazyMetadata.Populator() {
+        @Override
+        public void populate(MetadataStore target) {
+          target.setImageName(imageName, imageIndex);
+          fillExposureTime(target, exposure, imageIndex, planeCount);
+          fillPhysicalSizes(target, sizes, imageIndex);
+          fillAcquisitionDate(target, date, imageIndex);
+          for (int c=0; c<colors.length; c++) {
+            if (colors[c] != null) {
+              target.setChannelColor(colors[c], imageIndex, c);
+            }
+          }
+        }
+      });
       fillAnnotations(store, currentImageIndex);
       fillRegions(store, currentImageIndex);
     }
@@ -850,28 +791,25 @@ public class FakeReader extends FormatReader {
   public void reopenFile() throws IOException {
   }
 
-  private void fillPhysicalSizes(MetadataStore store) {
-    if (physicalSizeX == null && physicalSizeY == null && physicalSizeZ == null) return;
-    for (int s=0; s<getSeriesCount(); s++) {
-      store.setPixelsPhysicalSizeX(physicalSizeX, s);
-      store.setPixelsPhysicalSizeY(physicalSizeY, s);
-      store.setPixelsPhysicalSizeZ(physicalSizeZ, s);
-    }
+  private static void fillPhysicalSizes(MetadataStore store, Length[] sizes,
+    int imageIndex)
+  {
+    if (sizes[0] == null && sizes[1] == null && sizes[2] == null) return;
+    store.setPixelsPhysicalSizeX(sizes[0], imageIndex);
+    store.setPixelsPhysicalSizeY(sizes[1], imageIndex);
+    store.setPixelsPhysicalSizeZ(sizes[2], imageIndex);
   }
 
-  private void fillExposureTime(MetadataStore store) {
-    if (exposureTime == null) return;
-    int oldSeries = getSeries();
-    for (int s=0; s<getSeriesCount(); s++) {
-      setSeries(s);
-      for (int i=0; i<getImageCount(); i++) {
-        store.setPlaneExposureTime(exposureTime, s, i);
-      }
+  private static void fillExposureTime(MetadataStore store, Time exposure,
+    int imageIndex, int planeCount)
+  {
+    if (exposure == null) return;
+    for (int i=0; i<planeCount; i++) {
+      store.setPlaneExposureTime(exposure, imageIndex, i);
     }
-    setSeries(oldSeries);
   }
 
-  private void fillAcquisitionDate(MetadataStore store, String date, int imageIndex) {
+  private static void fillAcquisitionDate(MetadataStore store, String date, int imageIndex) {
     if (date == null) return;
     if(DateTools.getTime(date, DateTools.FILENAME_FORMAT) != -1) {
       Timestamp stamp = new Timestamp(
@@ -1119,6 +1057,138 @@ public class FakeReader extends FormatReader {
 
 // -- Helper methods --
 
+  /**
+   * Generates the pixels of a sub-image, storing them either as bytes in a
+   * byte array or as samples in an array or ByteBuffer accepted by
+   * {@link #openPlane(int, Object, int, int, int, int)}.
+   */
+  private void fillPlane(int no, Object buf, int x, int y, int w, int h) {
+    final int s = getSeries();
+    final int pixelType = getPixelType();
+    final int bpp = FormatTools.getBytesPerPixel(pixelType);
+    final boolean signed = FormatTools.isSigned(pixelType);
+    final boolean floating = FormatTools.isFloatingPoint(pixelType);
+    final int rgb = getRGBChannelCount();
+    final boolean indexed = isIndexed();
+    final boolean little = isLittleEndian();
+    final boolean interleaved = isInterleaved();
+
+    final int[] zct = getZCTCoords(no);
+    final int zIndex = zct[0], cIndex = zct[1], tIndex = zct[2];
+    ac = cIndex;
+
+    // integer types start gradient at the smallest value
+    long min = signed ? (long) -Math.pow(2, 8 * bpp - 1) : 0;
+    if (floating) min = 0; // floating point types always start at 0
+
+    for (int cOffset=0; cOffset<rgb; cOffset++) {
+      int channel = rgb * cIndex + cOffset;
+      for (int row=0; row<h; row++) {
+        int yy = y + row;
+        for (int col=0; col<w; col++) {
+          int xx = x + col;
+          long pixel = min + xx;
+
+          // encode various information into the image plane
+          boolean specialPixel = false;
+          if (yy < BOX_SIZE) {
+            int grid = xx / BOX_SIZE;
+            specialPixel = true;
+            switch (grid) {
+              case 0:
+                pixel = s;
+                break;
+              case 1:
+                pixel = no;
+                break;
+              case 2:
+                pixel = zIndex;
+                break;
+              case 3:
+                pixel = channel;
+                break;
+              case 4:
+                pixel = tIndex;
+                break;
+              default:
+                // just a normal pixel in the gradient
+                specialPixel = false;
+            }
+          }
+
+          // if indexed color with non-null LUT, convert value to index
+          if (indexed) {
+            if (lut8 != null) pixel = valueToIndex[ac][(int) (pixel % 256)];
+            if (lut16 != null) pixel = valueToIndex[ac][(int) (pixel % 65536)];
+          }
+
+          // scale pixel value by the scale factor
+          // if floating point, convert value to raw IEEE floating point bits
+          switch (pixelType) {
+            case FormatTools.FLOAT:
+              float floatPixel;
+              if (specialPixel) floatPixel = pixel;
+              else floatPixel = (float) (scaleFactor * pixel);
+              pixel = Float.floatToIntBits(floatPixel);
+              break;
+            case FormatTools.DOUBLE:
+              double doublePixel;
+              if (specialPixel) doublePixel = pixel;
+              else doublePixel = scaleFactor * pixel;
+              pixel = Double.doubleToLongBits(doublePixel);
+              break;
+            default:
+              if (!specialPixel) pixel = (long) (scaleFactor * pixel);
+          }
+
+          // store pixel in the buffer
+          int index;
+          if (interleaved) index = w * rgb * row + rgb * col + cOffset; // CXY
+          else index = h * w * cOffset + w * row + col; // XYC
+          if (buf instanceof byte[]) {
+            DataTools.unpackBytes(pixel, (byte[]) buf, index * bpp, bpp, little);
+          }
+          else {
+            setSample(buf, index, pixel, bpp);
+          }
+        }
+      }
+    }
+  }
+
+  /** Stores the raw bits of one sample in a sample array or ByteBuffer. */
+  private static void setSample(Object buf, int index, long bits, int bpp) {
+    if (buf instanceof short[]) {
+      ((short[]) buf)[index] = (short) bits;
+    }
+    else if (buf instanceof int[]) {
+      ((int[]) buf)[index] = (int) bits;
+    }
+    else if (buf instanceof float[]) {
+      ((float[]) buf)[index] = Float.intBitsToFloat((int) bits);
+    }
+    else if (buf instanceof double[]) {
+      ((double[]) buf)[index] = Double.longBitsToDouble(bits);
+    }
+    else {
+      ByteBuffer b = (ByteBuffer) buf;
+      int offset = b.position() + index * bpp;
+      switch (bpp) {
+        case 1:
+          b.put(offset, (byte) bits);
+          break;
+        case 2:
+          b.putShort(offset, (short) bits);
+          break;
+        case 4:
+          b.putInt(offset, (int) bits);
+          break;
+        default:
+          b.putLong(offset, bits);
+      }
+    }
+  }
+
   private String[] extractTokensFromFakeSeries(String path) {
     List<String> tokens = new ArrayList<String>();
     int plates = 0, plateAcqs = 0, rows = 0, cols = 0, fields = 0;
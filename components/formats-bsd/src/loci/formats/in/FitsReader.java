@@ -33,6 +33,7 @@
 package loci.formats.in;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import loci.common.DataTools;
 import loci.common.RandomAccessInputStream;
@@ -84,6 +85,33 @@ public class FitsReader extends FormatReader {
     return buf;
   }
 
+  /**
+   * @see loci.formats.IFormatReader#openPlane(int, Object, int, int, int, int)
+   */
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    FormatTools.checkPlaneParameters(this, no, -1, x, y, w, h);
+    FormatTools.checkSampleBuffer(this, buf, w, h);
+
+    in.seek(pixelOffset + no * FormatTools.getPlaneSize(this));
+    return readSamples(in, x, y, w, h, buf);
+  }
+
+  /**
+   * @see loci.formats.IFormatReader#openBytes(int, ByteBuffer, int, int, int, int)
+   */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y, int w,
+    int h) throws FormatException, IOException
+  {
+    FormatTools.checkPlaneParameters(this, no, buf.remaining(), x, y, w, h);
+
+    in.seek(pixelOffset + no * FormatTools.getPlaneSize(this));
+    return readPlane(in, x, y, w, h, buf);
+  }
+
   /* @see loci.formats.IFormatReader#close(boolean) */
   @Override
   public void close(boolean fileOnly) throws IOException {
@@ -39,6 +39,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import loci.common.RandomAccessInputStream;
+import loci.common.Region;
 import loci.formats.CoreMetadata;
 import loci.formats.FormatException;
 import loci.formats.FormatReader;
@@ -70,6 +71,9 @@ public class JPEG2000Reader extends FormatReader {
 
   private long pixelsOffset;
 
+  /** Whether or not the codestream is divided into more than one tile. */
+  private boolean tiled;
+
   private int lastSeries = -1;
   private byte[] lastSeriesPlane;
 
@@ -147,6 +151,7 @@ public class JPEG2000Reader extends FormatReader {
       resolutionLevels = null;
       lut = null;
       pixelsOffset = 0;
+      tiled = false;
       lastSeries = -1;
       lastSeriesPlane = null;
     }
@@ -178,6 +183,16 @@ public class JPEG2000Reader extends FormatReader {
       options.resolution = getCoreIndex();
     }
 
+    // only the codestream tiles that intersect a sub-region need to be
+    // decoded, so decode just the region instead of caching the whole plane
+    if (tiled && (w < getSizeX() || h < getSizeY())) {
+      options.region = new Region(x, y, w, h);
+      in.seek(pixelsOffset);
+      byte[] region = new JPEG2000Codec().decompress(in, options);
+      System.arraycopy(region, 0, buf, 0, Math.min(region.length, buf.length));
+      return buf;
+    }
+
     in.seek(pixelsOffset);
     lastSeriesPlane = new JPEG2000Codec().decompress(in, options);
     RandomAccessInputStream s = new RandomAccessInputStream(lastSeriesPlane);
@@ -215,6 +230,10 @@ public class JPEG2000Reader extends FormatReader {
     lut = metadataParser.getLookupTable();
 
     pixelsOffset = metadataParser.getCodestreamOffset();
+    Integer tileSizeX = metadataParser.getCodestreamTileSizeX();
+    Integer tileSizeY = metadataParser.getCodestreamTileSizeY();
+    tiled = tileSizeX != null && tileSizeY != null &&
+      (tileSizeX < getSizeX() || tileSizeY < getSizeY());
 
     ms0.sizeZ = 1;
     ms0.sizeT = 1;
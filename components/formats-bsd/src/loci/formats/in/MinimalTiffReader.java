@@ -33,6 +33,7 @@
 package loci.formats.in;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -43,6 +44,7 @@ import org.slf4j.LoggerFactory;
 
 import loci.common.DataTools;
 import loci.common.RandomAccessInputStream;
+import loci.common.Region;
 import loci.formats.CoreMetadata;
 import loci.formats.FormatException;
 import loci.formats.FormatReader;
@@ -241,7 +243,7 @@ public class MinimalTiffReader extends FormatReader {
   public byte[] openThumbBytes(int no) throws FormatException, IOException {
     FormatTools.assertId(currentId, true, 1);
     if (thumbnailIFDs == null || thumbnailIFDs.size() <= no) {
-      return super.openThumbBytes(no);
+      return openReducedThumbBytes(no);
     }
     if (tiffParser == null) {
       initTiffParser();
@@ -254,7 +256,7 @@ public class MinimalTiffReader extends FormatReader {
     catch (FormatException e) { }
 
     if (bps == null) {
-      return super.openThumbBytes(no);
+      return openReducedThumbBytes(no);
     }
 
     int b = bps[0];
@@ -263,7 +265,7 @@ public class MinimalTiffReader extends FormatReader {
     if (b != FormatTools.getBytesPerPixel(getPixelType()) ||
       bps.length != getRGBChannelCount())
     {
-      return super.openThumbBytes(no);
+      return openReducedThumbBytes(no);
     }
 
     byte[] buf = new byte[getThumbSizeX() * getThumbSizeY() *
@@ -281,21 +283,7 @@ public class MinimalTiffReader extends FormatReader {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
     IFD firstIFD = ifds.get(0);
-    lastPlane = no;
-    IFD ifd = ifds.get(no);
-    if ((firstIFD.getCompression() == TiffCompression.JPEG_2000
-        || firstIFD.getCompression() == TiffCompression.JPEG_2000_LOSSY)
-        && resolutionLevels != null) {
-      if (getCoreIndex() > 0) {
-        ifd = subResolutionIFDs.get(no).get(getCoreIndex() - 1);
-      }
-      setResolutionLevel(ifd);
-    }
-
-    if (tiffParser == null) {
-      initTiffParser();
-    }
-
+    IFD ifd = selectIFD(no);
     tiffParser.getSamples(ifd, buf, x, y, w, h);
 
     boolean float16 = getPixelType() == FormatTools.FLOAT &&
@@ -349,6 +337,59 @@ public class MinimalTiffReader extends FormatReader {
     return buf;
   }
 
+  /**
+   * @see loci.formats.FormatReader#openPlane(int, Object, int, int, int, int)
+   */
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    FormatTools.checkPlaneParameters(this, no, -1, x, y, w, h);
+
+    // samples can only be read directly if openBytes would not modify them
+    IFD firstIFD = ifds.get(0);
+    if (!hasUnmodifiedSamples() || FormatTools.getBytesPerPixel(
+      getPixelType()) != firstIFD.getBytesPerSample()[0])
+    {
+      return super.openPlane(no, buf, x, y, w, h);
+    }
+
+    FormatTools.checkSampleBuffer(this, buf, w, h);
+    return tiffParser.getSamples(selectIFD(no), buf, x, y, w, h);
+  }
+
+  /**
+   * @see loci.formats.FormatReader#openBytes(int, ByteBuffer, int, int, int, int)
+   */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y, int w,
+    int h) throws FormatException, IOException
+  {
+    FormatTools.checkPlaneParameters(this, no, buf.remaining(), x, y, w, h);
+
+    // bytes can only be read directly if openBytes would not modify them
+    if (!hasUnmodifiedSamples()) {
+      return super.openBytes(no, buf, x, y, w, h);
+    }
+    return tiffParser.getSamples(selectIFD(no), buf, x, y, w, h);
+  }
+
+  /**
+   * @see loci.formats.FormatReader#openBytes(int, List, List)
+   */
+  @Override
+  public List<byte[]> openBytes(int no, List<Region> regions,
+    List<byte[]> bufs) throws FormatException, IOException
+  {
+    // tiles can only be read together if openBytes would not modify them
+    if (!hasUnmodifiedSamples()) {
+      return super.openBytes(no, regions, bufs);
+    }
+    List<byte[]> buffers =
+      FormatTools.allocateBuffers(this, no, regions, bufs);
+    return tiffParser.getSamples(selectIFD(no), regions, buffers);
+  }
+
   /* @see loci.formats.IFormatReader#reopenFile() */
   @Override
   public void reopenFile() throws IOException {
@@ -639,4 +680,79 @@ public class MinimalTiffReader extends FormatReader {
     tiffParser.setUse64BitOffsets(use64Bit);
   }
 
+  // -- Helper methods --
+
+  /**
+   * Gets the IFD from which the given plane is read, selecting the
+   * resolution level of JPEG-2000 data and initializing the TiffParser
+   * if necessary.
+   */
+  private IFD selectIFD(int no) throws FormatException, IOException {
+    IFD firstIFD = ifds.get(0);
+    lastPlane = no;
+    IFD ifd = ifds.get(no);
+    if ((firstIFD.getCompression() == TiffCompression.JPEG_2000
+        || firstIFD.getCompression() == TiffCompression.JPEG_2000_LOSSY)
+        && resolutionLevels != null) {
+      if (getCoreIndex() > 0) {
+        ifd = subResolutionIFDs.get(no).get(getCoreIndex() - 1);
+      }
+      setResolutionLevel(ifd);
+    }
+
+    if (tiffParser == null) {
+      initTiffParser();
+    }
+    return ifd;
+  }
+
+  /**
+   * Reads a thumbnail from a 1/8 scale decoding of the given plane if the
+   * plane is JPEG compressed and still at least as large as the thumbnail,
+   * and otherwise from the full resolution plane.
+   */
+  private byte[] openReducedThumbBytes(int no)
+    throws FormatException, IOException
+  {
+    if (getResolutionCount() == 1 && hasUnmodifiedSamples() &&
+      FormatTools.getBytesPerPixel(getPixelType()) == 1)
+    {
+      IFD ifd = selectIFD(no);
+      int width = (int) (ifd.getImageWidth() + 7) / 8;
+      int height = (int) (ifd.getImageLength() + 7) / 8;
+      if (width >= getThumbSizeX() && height >= getThumbSizeY() &&
+        ifd.getSamplesPerPixel() == getRGBChannelCount() &&
+        tiffParser.canReduce(ifd))
+      {
+        byte[] plane = tiffParser.getReducedSamples(ifd);
+        if (plane != null) {
+          return FormatTools.scaleThumbnail(this, plane, width, height);
+        }
+      }
+    }
+    return super.openThumbBytes(no);
+  }
+
+  /**
+   * Returns true if openBytes returns the samples decoded by the TiffParser
+   * unchanged; subclasses that override openBytes to modify them are read
+   * through openBytes instead.
+   */
+  private boolean hasUnmodifiedSamples() throws FormatException {
+    if (getPixelType() == FormatTools.FLOAT &&
+      ifds.get(0).getBitsPerSample()[0] != 32)
+    {
+      // 16 and 24-bit floating point samples are expanded by openBytes
+      return false;
+    }
+    try {
+      return getClass().getMethod("openBytes", int.class, byte[].class,
+        int.class, int.class, int.class, int.class).getDeclaringClass() ==
+        MinimalTiffReader.class;
+    }
+    catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
 }
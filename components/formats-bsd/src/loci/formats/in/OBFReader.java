@@ -38,8 +38,6 @@ package loci.formats.in;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.Inflater;
-import java.util.zip.DataFormatException;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -54,6 +52,7 @@ import loci.formats.FormatReader;
 import loci.formats.FormatTools;
 import loci.formats.MetadataTools;
 import loci.formats.MissingLibraryException;
+import loci.formats.codec.SeekableInflater;
 import loci.formats.meta.MetadataStore;
 import loci.formats.services.OMEXMLService;
 import loci.formats.services.OMEXMLServiceImpl;
@@ -91,18 +90,15 @@ public class OBFReader extends FormatReader
     long position;
     long length;
     boolean compression;
+    SeekableInflater inflater;
   }
   private List<Stack> stacks = new ArrayList<Stack>();
 
-  private class Frame
-  {
-    byte[] bytes;
-    int series;
-    int number;
-  }
-  private Frame currentInflatedFrame = new Frame();
+  private boolean indexStacks = false;
 
-  private transient Inflater inflater;
+  private transient byte[] frameBytes;
+  private transient int frameSeries;
+  private transient int frameNumber;
 
   public OBFReader()
   {
@@ -112,6 +108,27 @@ public class OBFReader extends FormatReader
     datasetDescription = "OBF file";
   }
 
+  /**
+   * Sets whether compressed stacks are fully indexed when the file is
+   * initialized.  Indexing inflates every compressed stack once, after which
+   * any frame can be read by inflating at most about one megabyte more than
+   * the frame itself.  The index is part of the reader's state, so it is
+   * saved along with the rest of the reader by {@link loci.formats.Memoizer}.
+   * Without indexing, the same index is built incrementally as frames are
+   * read.
+   */
+  public void setIndexingStacks(boolean index)
+  {
+    FormatTools.assertId(currentId, false, 1);
+    indexStacks = index;
+  }
+
+  /** Returns true if compressed stacks are indexed during initialization. */
+  public boolean isIndexingStacks()
+  {
+    return indexStacks;
+  }
+
   private int getFileVersion(RandomAccessInputStream stream) throws IOException
   {
     stream.seek(0);
@@ -147,9 +164,6 @@ public class OBFReader extends FormatReader
   {
     super.initFile(id);
 
-    currentInflatedFrame.series = -1;
-    currentInflatedFrame.number = -1;
-
     in = new RandomAccessInputStream(id);
 
     final int fileVersion = getFileVersion(in);
@@ -424,6 +438,19 @@ public class OBFReader extends FormatReader
 
       stack.position = in.getFilePointer();
 
+      if (stack.compression)
+      {
+        final long frame = (long) obf.sizeX * obf.sizeY * (obf.bitsPerPixel / 8);
+        stack.inflater = new SeekableInflater(stack.position, stack.length,
+          Math.max(frame, SeekableInflater.DEFAULT_SPACING));
+        if (indexStacks)
+        {
+          LOGGER.info("Indexing compressed stack {}", stacks.size());
+          stack.inflater.index(in);
+          in.seek(stack.position);
+        }
+      }
+
       stacks.add(stack);
 
       if (fileVersion >= 1)
@@ -582,71 +609,28 @@ public class OBFReader extends FormatReader
     final Stack stack = stacks.get(series);
     if (stack.compression)
     {
-      if (series != currentInflatedFrame.series)
+      final int frame = rows * columns * bytesPerPixel;
+      if (x == 0 && y == 0 && w == columns && h == rows)
       {
-        currentInflatedFrame.bytes = new byte[rows * columns * bytesPerPixel];
-        currentInflatedFrame.series = series;
-        currentInflatedFrame.number = - 1;
+        stack.inflater.read(in, (long) no * frame, buffer, 0, frame);
       }
-
-      if (inflater == null) {
-        inflater = new Inflater();
-      }
-
-      byte[] bytes = currentInflatedFrame.bytes;
-      if (no != currentInflatedFrame.number)
+      else
       {
-        if (no < currentInflatedFrame.number)
-        {
-          currentInflatedFrame.number = - 1;
-        }
-        if (currentInflatedFrame.number == - 1)
+        // keep the frame, so that its other tiles need not be inflated again
+        if (frameBytes == null || frameSeries != series || frameNumber != no)
         {
-          in.seek(stack.position);
-          inflater.reset();
+          frameBytes = null;
+          final byte[] bytes = new byte[frame];
+          stack.inflater.read(in, (long) no * frame, bytes, 0, frame);
+          frameBytes = bytes;
+          frameSeries = series;
+          frameNumber = no;
         }
-
-        byte[] input = new byte[8192];
-        while (no != currentInflatedFrame.number)
+        for (int row = 0; row != h; ++ row)
         {
-          int offset = 0;
-          while (offset != bytes.length)
-          {
-            if (inflater.needsInput())
-            {
-              final long remainder = stack.position + stack.length - in.getFilePointer();
-              if (remainder > 0)
-              {
-                final int length = remainder > input.length ? input.length : (int) remainder;
-
-                in.read(input, 0, length);
-                inflater.setInput(input, 0, length);
-              }
-              else
-              {
-                throw new FormatException("Corrupted zlib compression");
-              }
-            }
-            else if (inflater.needsDictionary())
-            {
-              throw new FormatException("Unsupported zlib compression");
-            }
-            try
-            {
-              offset += inflater.inflate(bytes, offset, bytes.length - offset);
-            }
-            catch (DataFormatException exception)
-            {
-              throw new FormatException(exception.getMessage());
-            }
-          }
-          ++ currentInflatedFrame.number;
+          System.arraycopy(frameBytes, ((row + y) * columns + x) * bytesPerPixel, buffer, row * w * bytesPerPixel, w * bytesPerPixel);
         }
       }
-      for (int row = 0; row != h; ++ row)
-      {
-        System.arraycopy(bytes, ((row + y) * columns + x) * bytesPerPixel, buffer, row * w * bytesPerPixel, w * bytesPerPixel);
-      }
     }
     else
     {
@@ -666,8 +650,7 @@ public class OBFReader extends FormatReader
     super.close(fileOnly);
     if (!fileOnly) {
       stacks.clear();
-      currentInflatedFrame = new Frame();
-      inflater = null;
+      frameBytes = null;
     }
   }
 
@@ -32,18 +32,19 @@
 
 package loci.formats.in;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import loci.common.Constants;
 import loci.common.DataTools;
-import loci.common.IRandomAccess;
-import loci.common.Location;
 import loci.common.RandomAccessInputStream;
 import loci.formats.CoreMetadata;
 import loci.formats.FormatException;
@@ -53,13 +54,17 @@ import loci.formats.MetadataTools;
 import loci.formats.meta.MetadataStore;
 
 /**
- * Reader for text files containing tables of data. All image planes
- * are stored in memory as 32-bit floats until the file is closed,
- * so very large text documents will require commensurate available RAM.
+ * Reader for text files containing tables of data.
  *
  * Text format is flexible, but assumed to be in tabular form with a consistent
  * number of columns, and a labeled header line immediately preceding the data.
  *
+ * The file is scanned once during initialization to find the image extents
+ * and to build an index of the lines that hold each image row.  Only the
+ * rows that intersect a requested region are parsed, optionally using
+ * several threads (see {@link #setParsingThreads(int)}), and the values of
+ * all channels of the most recently requested region are kept in memory.
+ *
  * @author Curtis Rueden ctrueden at wisc.edu
  */
 public class TextReader extends FormatReader {
@@ -73,16 +78,22 @@ public class TextReader extends FormatReader {
   /** How often to report progress during initialization, in milliseconds. */
   private static final long TIME_OFFSET = 2000;
 
-  // -- Fields --
+  /** Maximum number of bytes read from the file at once. */
+  private static final int BUFFER_SIZE = 1024 * 1024;
 
   /**
-   * Because we have no way of indexing into the text file efficiently
-   * in general, we cheat and store the entire file's data in a giant array.
+   * Maximum number of significant digits for which a number can be parsed
+   * without rounding error by {@link #parseNumber(byte[], int, int)}.
    */
-  private float[][] data;
+  private static final int MAX_DIGITS = 15;
+
+  /** Powers of ten that are exactly representable as doubles. */
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
 
-  /** Current row number. */
-  private int row;
+  // -- Fields --
 
   /** Number of tokens per row. */
   private int rowLength;
@@ -102,6 +113,31 @@ public class TextReader extends FormatReader {
   /** Image height. */
   private int sizeY;
 
+  /**
+   * Index of the first segment for each image row: the segments containing
+   * row y are numbered rowIndex[y] to rowIndex[y + 1] - 1.
+   */
+  private int[] rowIndex;
+
+  /**
+   * File offsets of the start and end of each segment, sorted by image row.
+   * A segment is a run of lines whose data rows all belong to the same
+   * image row.
+   */
+  private long[] segmentStart, segmentEnd;
+
+  /** Number of threads used to parse the rows of a region. */
+  private int parsingThreads = 1;
+
+  /** Executor used when parsing with more than one thread. */
+  private transient ExecutorService executor;
+
+  /** Values of each channel in the most recently parsed region. */
+  private transient float[][] region;
+
+  /** Bounds of the most recently parsed region. */
+  private transient int regionX, regionY, regionWidth, regionHeight;
+
   // -- Constructor --
 
   /** Constructs a new text reader. */
@@ -118,6 +154,27 @@ public class TextReader extends FormatReader {
     return channels[c];
   }
 
+  /**
+   * Sets the number of threads used to parse the rows of a region.
+   * The default is one, which parses on the calling thread.
+   */
+  public void setParsingThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid number of threads: " +
+        threads);
+    }
+    if (threads != parsingThreads && executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+    parsingThreads = threads;
+  }
+
+  /** Gets the number of threads used to parse the rows of a region. */
+  public int getParsingThreads() {
+    return parsingThreads;
+  }
+
   // -- IFormatReader methods --
 
   /* @see IFormatReader#isThisType(RandomAccessInputStream) */
@@ -125,17 +182,13 @@ public class TextReader extends FormatReader {
   public boolean isThisType(RandomAccessInputStream stream) throws IOException {
     final int blockLen = 8192;
     if (!FormatTools.validStream(stream, blockLen, false)) return false;
-    row = 0;
-    String data = stream.readString(blockLen);
-    List<String> lines = Arrays.asList(data.split("\n"));
-    String[] line = getNextLine(lines);
-    if (line == null) return false;
-    int headerRows = 0;
-    try {
-      headerRows = parseFileHeader(lines);
-    }
-    catch (FormatException e) { }
-    return headerRows > 0;
+    long start = stream.getFilePointer();
+    LineReader lines = new LineReader(stream);
+    lines.reset(start, Math.min(stream.length(), start + blockLen));
+    String[] header = findHeader(lines, new Tokens());
+    if (header == null) return false;
+    List<String> labels = Arrays.asList(header);
+    return labels.contains(LABEL_X) && labels.contains(LABEL_Y);
   }
 
   /* @see IFormatReader#openBytes(int, byte[], int, int, int, int) */
@@ -146,17 +199,10 @@ public class TextReader extends FormatReader {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
     // copy floating point data into byte buffer
-    final float[] plane = data[no];
-    int q = 0;
-    for (int j=0; j<h; j++) {
-      final int yy = y + j;
-      for (int i=0; i<w; i++) {
-        final int xx = x + i;
-        final int index = yy * sizeX + xx;
-        final int bits = Float.floatToIntBits(plane[index]);
-        DataTools.unpackBytes(bits, buf, q, 4, LITTLE_ENDIAN);
-        q += 4;
-      }
+    final float[] plane = getRegion(no, x, y, w, h);
+    for (int i=0; i<plane.length; i++) {
+      final int bits = Float.floatToIntBits(plane[i]);
+      DataTools.unpackBytes(bits, buf, i * 4, 4, LITTLE_ENDIAN);
     }
 
     return buf;
@@ -168,7 +214,20 @@ public class TextReader extends FormatReader {
     throws FormatException, IOException
   {
     FormatTools.assertId(currentId, true, 1);
-    return data[no];
+    return getRegion(no, x, y, w, h);
+  }
+
+  /* @see IFormatReader#openPlane(int, Object, int, int, int, int) */
+  @Override
+  public Object openPlane(int no, Object buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    if (!(buf instanceof float[])) {
+      return super.openPlane(no, buf, x, y, w, h);
+    }
+    FormatTools.checkPlaneParameters(this, no, -1, x, y, w, h);
+    FormatTools.checkSampleBuffer(this, buf, w, h);
+    return getRegion(no, (float[]) buf, x, y, w, h);
   }
 
   /* @see IFormatReader#close(boolean) */
@@ -176,12 +235,17 @@ public class TextReader extends FormatReader {
   public void close(boolean fileOnly) throws IOException {
     super.close(fileOnly);
     if (!fileOnly) {
-      data = null;
       rowLength = 0;
       xIndex = yIndex = -1;
       channels = null;
       sizeX = sizeY = 0;
-      row = 0;
+      rowIndex = null;
+      segmentStart = segmentEnd = null;
+      region = null;
+      if (executor != null) {
+        executor.shutdown();
+        executor = null;
+      }
     }
   }
 
@@ -199,34 +263,17 @@ public class TextReader extends FormatReader {
   @Override
   protected void initFile(String id) throws FormatException, IOException {
     super.initFile(id);
+    in = new RandomAccessInputStream(id);
 
-    // read file into memory
-    LOGGER.info("Reading file");
-    List<String> lines = readFile(id);
-
-    // parse file header
-    LOGGER.info("Parsing file header");
-    final int headerRows = parseFileHeader(lines);
-
-    LOGGER.info("Creating images");
-
-    // allocate memory for image data
-    final int sizeZ = 1, sizeT = 1; // no Z or T for now
-    final int sizeC = channels.length;
-    final int imageCount = sizeZ * sizeC * sizeT;
-    final int planeSize = sizeX * sizeY;
-    data = new float[imageCount][planeSize];
-
-    // flag all values as missing by default
-    for (int i=0; i<imageCount; i++) Arrays.fill(data[i], Float.NaN);
-
-    // read data into float array
-    parseTableData(lines, headerRows);
+    // scan file for header, image extents and row locations
+    LOGGER.info("Indexing file");
+    indexFile();
 
     LOGGER.info("Populating metadata");
 
     // populate core metadata
-    populateCoreMetadata(sizeX, sizeY, sizeZ, sizeC, sizeT);
+    final int sizeZ = 1, sizeT = 1; // no Z or T for now
+    populateCoreMetadata(sizeX, sizeY, sizeZ, channels.length, sizeT);
 
     // populate OME metadata
     MetadataStore store = makeFilterMetadata();
@@ -235,128 +282,248 @@ public class TextReader extends FormatReader {
 
   // -- Helper methods --
 
-  private List<String> readFile(String id) throws IOException {
-    List<String> lines = new ArrayList<String>();
+  /**
+   * Scans the file for the header and the tabular data that follows it.
+   * Determines image extents (sets sizeX and sizeY), determines channel
+   * names (populates channels array), and records where the data for each
+   * image row is stored (populates rowIndex, segmentStart and segmentEnd).
+   */
+  private void indexFile() throws FormatException, IOException {
+    final long length = in.length();
+    LineReader lines = new LineReader(in);
+    lines.reset(0, length);
+    Tokens tokens = new Tokens();
+
+    String[] header = findHeader(lines, tokens);
+    if (header == null) throw new FormatException("No tabular data found");
+    LOGGER.info("Found header on line " + (lines.getLineNumber() - 1));
+    parseHeaderRow(header);
+
+    if (xIndex < 0) throw new FormatException("No X coordinate column found");
+    if (yIndex < 0) throw new FormatException("No Y coordinate column found");
+
+    // search remainder of tabular data for X and Y extents,
+    // merging consecutive lines from the same image row into one segment
+    int count = 0;
+    int[] rows = new int[1024];
+    long[] starts = new long[rows.length];
+    long[] ends = new long[rows.length];
+
+    double[] rowData = new double[rowLength];
     long time = System.currentTimeMillis();
-    IRandomAccess handle = Location.getMappedFile(id);
-    if (handle == null) {
-      // HACK: Read using vanilla BufferedReader, since it's faster.
-      String mapId = Location.getMappedId(id);
-      BufferedReader in = new BufferedReader(
-        new InputStreamReader(new FileInputStream(mapId), Constants.ENCODING));
-      int no = 0;
-      while (true) {
-        no++;
-        time = checkTime(time, no, 0, 0);
-        String line = in.readLine();
-        if (line == null) break; // eof
-        lines.add(line);
+    do {
+      final int no = lines.getLineNumber();
+      time = checkTime(time, no, lines.getLineStart(), length);
+      if (tokens.count != rowLength) {
+        LOGGER.warn("Ignoring deviant row #" + no);
+        continue;
+      }
+      if (!getRowData(tokens, rowData)) {
+        LOGGER.warn("Ignoring non-numeric row #" + no);
+        continue;
+      }
+
+      // expand dimensional extents as needed
+      int x = getX(rowData);
+      if (x < 0) {
+        throw new FormatException("Row #" + no + ": invalid X: " + x);
+      }
+      if (sizeX <= x) sizeX = x + 1;
+      int y = getY(rowData);
+      if (y < 0) {
+        throw new FormatException("Row #" + no + ": invalid Y: " + y);
+      }
+      if (sizeY <= y) sizeY = y + 1;
+
+      if (count > 0 && rows[count - 1] == y) {
+        ends[count - 1] = lines.getLineEnd();
+      }
+      else {
+        if (count == rows.length) {
+          rows = Arrays.copyOf(rows, count * 2);
+          starts = Arrays.copyOf(starts, count * 2);
+          ends = Arrays.copyOf(ends, count * 2);
+        }
+        rows[count] = y;
+        starts[count] = lines.getLineStart();
+        ends[count] = lines.getLineEnd();
+        count++;
       }
-      in.close();
     }
-    else {
-      // read data using RandomAccessInputStream (data may not be a file)
-      RandomAccessInputStream in = new RandomAccessInputStream(handle);
-      int no = 0;
-      while (true) {
-        no++;
-        time = checkTime(time, no, in.getFilePointer(), in.length());
-        String line = in.readLine();
-        if (line == null) break; // eof
-        lines.add(line);
+    while (nextLine(lines, tokens));
+
+    // sort the segments by image row, preserving file order within each row
+    rowIndex = new int[sizeY + 1];
+    for (int i=0; i<count; i++) rowIndex[rows[i] + 1]++;
+    for (int y=0; y<sizeY; y++) rowIndex[y + 1] += rowIndex[y];
+    int[] next = Arrays.copyOf(rowIndex, sizeY);
+    segmentStart = new long[count];
+    segmentEnd = new long[count];
+    for (int i=0; i<count; i++) {
+      int segment = next[rows[i]]++;
+      segmentStart[segment] = starts[i];
+      segmentEnd[segment] = ends[i];
+    }
+    LOGGER.debug("Indexed {} rows in {} segments", sizeY, count);
+  }
+
+  /**
+   * Gets the values of one channel within the given region, parsing all
+   * channels of the region unless it is contained in the last region parsed.
+   */
+  private float[] getRegion(int no, int x, int y, int w, int h)
+    throws IOException
+  {
+    return getRegion(no, new float[w * h], x, y, w, h);
+  }
+
+  /**
+   * Copies the values of one channel within the given region into the
+   * given array, parsing the region first if necessary.
+   */
+  private float[] getRegion(int no, float[] plane, int x, int y, int w, int h)
+    throws IOException
+  {
+    if (region == null || x < regionX || y < regionY ||
+      x + w > regionX + regionWidth || y + h > regionY + regionHeight)
+    {
+      region = null;
+      region = parseRegion(x, y, w, h);
+      regionX = x;
+      regionY = y;
+      regionWidth = w;
+      regionHeight = h;
+    }
+    for (int row=0; row<h; row++) {
+      int offset = (y + row - regionY) * regionWidth + x - regionX;
+      System.arraycopy(region[no], offset, plane, row * w, w);
+    }
+    return plane;
+  }
+
+  /** Parses the values of every channel within the given region. */
+  private float[][] parseRegion(final int x, final int y, final int w,
+    final int h)
+    throws IOException
+  {
+    final float[][] values = new float[channels.length][w * h];
+
+    // flag all values as missing by default
+    for (float[] v : values) Arrays.fill(v, Float.NaN);
+
+    final int threads = Math.min(parsingThreads, h);
+    if (threads <= 1) {
+      parseRows(values, x, y, w, y, y + h);
+      return values;
+    }
+
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(parsingThreads,
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Bio-Formats-Text-Parser");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    }
+
+    // parse contiguous, equally sized ranges of image rows in parallel
+    List<Future<Void>> results = new ArrayList<Future<Void>>();
+    for (int t=0; t<threads; t++) {
+      final int start = y + (int) ((long) h * t / threads);
+      final int end = y + (int) ((long) h * (t + 1) / threads);
+      results.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          parseRows(values, x, y, w, start, end);
+          return null;
+        }
+      }));
+    }
+    try {
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    }
+    catch (InterruptedException e) {
+      throw new IOException("Interrupted while parsing rows", e);
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+    return values;
+  }
+
+  /**
+   * Parses the given image rows into the values of a region.
+   *
+   * @param values array to fill in with the values of each channel
+   * @param x X coordinate of the region's upper-left corner
+   * @param y Y coordinate of the region's upper-left corner
+   * @param w width of the region
+   * @param start first image row to parse
+   * @param end last image row to parse, exclusive
+   */
+  private void parseRows(float[][] values, int x, int y, int w,
+    int start, int end)
+    throws IOException
+  {
+    LineReader lines = new LineReader(in);
+    Tokens tokens = new Tokens();
+    double[] rowData = new double[rowLength];
+    for (int row=start; row<end; row++) {
+      for (int s=rowIndex[row]; s<rowIndex[row + 1]; s++) {
+        lines.reset(segmentStart[s], segmentEnd[s]);
+        while (nextLine(lines, tokens)) {
+          // deviant rows were reported while indexing the file
+          if (tokens.count != rowLength || !getRowData(tokens, rowData)) {
+            continue;
+          }
+          int col = getX(rowData) - x;
+          if (col < 0 || col >= w) continue;
+          assignValues(values, rowData, (row - y) * w + col);
+        }
       }
-      in.close();
     }
-    return lines;
   }
 
   /**
-   * Parses the file looking for the file header.
-   * Determines image extents (sets sizeX and sizeY).
-   * Determines channel names (populates channels array).
+   * Scans lines until a line of numbers follows a line with the same number
+   * of tokens, which is assumed to be the header.  The tokens of the first
+   * line of numbers are left in the given {@link Tokens}.
    *
-   * @return number of rows in the header
+   * @return the header tokens, or null if no tabular data was found
    */
-  private int parseFileHeader(List<String> lines) throws FormatException {
+  private static String[] findHeader(LineReader lines, Tokens tokens)
+    throws IOException
+  {
     String[] lastTokens = null;
     double[] rowData = null;
-    while (true) {
-      String[] tokens = getNextLine(lines);
-      if (tokens == null) throw new FormatException("No tabular data found");
-      if (tokens.length >= 3 && // need at least 3 columns of data
-        lastTokens != null && lastTokens.length == tokens.length)
+    while (nextLine(lines, tokens)) {
+      if (tokens.count >= 3 && // need at least 3 columns of data
+        lastTokens != null && lastTokens.length == tokens.count)
       {
         // consistent number of tokens; might be the header and first data row
 
         // allocate rowData as needed
-        if (rowData == null || rowData.length != tokens.length) {
-          rowData = new double[tokens.length];
+        if (rowData == null || rowData.length != tokens.count) {
+          rowData = new double[tokens.count];
         }
 
         // try to parse the first data row
         if (getRowData(tokens, rowData)) {
-          LOGGER.info("Found header on line " + (row - 1));
           // looks like tabular data; assume previous line is the header
-          parseHeaderRow(lastTokens);
-          break;
-        }
-      }
-      lastTokens = tokens;
-    }
-    final int headerRows = row - 1;
-
-    if (xIndex < 0) throw new FormatException("No X coordinate column found");
-    if (yIndex < 0) throw new FormatException("No Y coordinate column found");
-
-    // search remainder of tabular data for X and Y extents
-    boolean checkRow = true;
-    while (true) {
-      if (checkRow) {
-        // expand dimensional extents as needed
-        int x = getX(rowData);
-        if (x < 0) {
-          throw new FormatException("Row #" + row + ": invalid X: " + x);
-        }
-        if (sizeX <= x) sizeX = x + 1;
-        int y = getY(rowData);
-        if (y < 0) {
-          throw new FormatException("Row #" + row + ": invalid Y: " + x);
+          return lastTokens;
         }
-        if (sizeY <= y) sizeY = y + 1;
-      }
-
-      // parse next row
-      String[] tokens = getNextLine(lines);
-      if (tokens == null) break; // eof
-      checkRow = getRowData(tokens, rowData);
-    }
-
-    return headerRows;
-  }
-
-  /** Reads the tabular data into the data array. */
-  private void parseTableData(List<String> lines, int linesToSkip) {
-    row = linesToSkip; // skip header lines
-
-    double[] rowData = new double[rowLength];
-    while (true) {
-      String[] tokens = getNextLine(lines);
-      if (tokens == null) break; // eof
-      if (tokens.length != rowLength) {
-        LOGGER.warn("Ignoring deviant row #" + row);
-        continue;
       }
-
-      // parse values from row
-      boolean success = getRowData(tokens, rowData);
-      if (!success) {
-        LOGGER.warn("Ignoring non-numeric row #" + row);
-        continue;
-      }
-
-      // copy values into array
-      assignValues(rowData);
+      lastTokens = tokens.toStrings();
     }
+    return null;
   }
 
   /** Populates the {@link CoreMetadata} values. */
@@ -381,15 +548,15 @@ public class TextReader extends FormatReader {
   /**
    * Parses numerical row data from the given tokens.
    *
-   * @param tokens list of token strings to parse
+   * @param tokens list of tokens to parse
    * @param rowData array to fill in with the data; length must match tokens
    *
    * @return true if the data could be parsed
    */
-  private boolean getRowData(String[] tokens, double[] rowData) {
+  private static boolean getRowData(Tokens tokens, double[] rowData) {
     try {
-      for (int i=0; i<tokens.length; i++) {
-        rowData[i] = Double.parseDouble(tokens[i]);
+      for (int i=0; i<tokens.count; i++) {
+        rowData[i] = parseNumber(tokens.data, tokens.start[i], tokens.end[i]);
       }
       return true;
     }
@@ -399,6 +566,77 @@ public class TextReader extends FormatReader {
     }
   }
 
+  /**
+   * Parses a decimal number from the given bytes.  Numbers with at most
+   * {@link #MAX_DIGITS} significant digits and a small exponent are
+   * converted directly; anything else is passed to
+   * {@link Double#parseDouble(String)}, so the result is always identical.
+   *
+   * @throws NumberFormatException if the bytes do not represent a number
+   */
+  static double parseNumber(byte[] b, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (b[i] == '-' || b[i] == '+')) {
+      negative = b[i] == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0, significant = 0, scale = 0;
+    while (i < end && b[i] >= '0' && b[i] <= '9') {
+      mantissa = mantissa * 10 + (b[i++] - '0');
+      if (mantissa > 0) significant++;
+      digits++;
+    }
+    if (i < end && b[i] == '.') {
+      i++;
+      while (i < end && b[i] >= '0' && b[i] <= '9') {
+        mantissa = mantissa * 10 + (b[i++] - '0');
+        if (mantissa > 0) significant++;
+        digits++;
+        scale++;
+      }
+    }
+    if (digits == 0) {
+      // not a decimal number, e.g. "NaN" or "Infinity"
+      return parseDouble(b, start, end);
+    }
+    int exponent = 0;
+    if (i < end && (b[i] == 'e' || b[i] == 'E')) {
+      i++;
+      boolean negativeExponent = false;
+      if (i < end && (b[i] == '-' || b[i] == '+')) {
+        negativeExponent = b[i] == '-';
+        i++;
+      }
+      int expStart = i;
+      while (i < end && i - expStart < 4 && b[i] >= '0' && b[i] <= '9') {
+        exponent = exponent * 10 + (b[i++] - '0');
+      }
+      if (i == expStart) return parseDouble(b, start, end);
+      if (negativeExponent) exponent = -exponent;
+    }
+    exponent -= scale;
+    if (i != end || significant > MAX_DIGITS ||
+      exponent < -22 || exponent > 22)
+    {
+      return parseDouble(b, start, end);
+    }
+
+    // both operands are exact, so the result is correctly rounded
+    double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] :
+      mantissa * POWERS_OF_TEN[exponent];
+    return negative ? -value : value;
+  }
+
+  private static double parseDouble(byte[] b, int start, int end) {
+    char[] c = new char[end - start];
+    for (int i=0; i<c.length; i++) {
+      c[i] = (char) (b[start + i] & 0xff);
+    }
+    return Double.parseDouble(new String(c));
+  }
+
   /** Populates rowLength, xIndex, yIndex, and channels. */
   private void parseHeaderRow(String[] tokens) {
     rowLength = tokens.length;
@@ -415,15 +653,12 @@ public class TextReader extends FormatReader {
     channels = channelsList.toArray(new String[0]);
   }
 
-  /** Assigns values from the given row into the data array. */
-  private void assignValues(double[] rowData) {
-    int x = getX(rowData);
-    int y = getY(rowData);
+  /** Assigns values from the given row into each channel's values. */
+  private void assignValues(float[][] values, double[] rowData, int index) {
     int c = 0;
-    int index = sizeX * y + x;
     for (int i=0; i<rowLength; i++) {
       if (i == xIndex || i == yIndex) continue;
-      data[c++][index] = (float) rowData[i];
+      values[c++][index] = (float) rowData[i];
     }
   }
 
@@ -444,13 +679,184 @@ public class TextReader extends FormatReader {
   private int getX(double[] rowData) { return (int) rowData[xIndex]; }
   private int getY(double[] rowData) { return (int) rowData[yIndex]; }
 
-  private String[] getNextLine(List<String> lines) {
-    while (true) {
-      if (row >= lines.size()) return null; // end of list
-      String line = lines.get(row++);
-      line = line.trim();
-      if (line.equals("")) continue; // skip blank lines
-      return line.split("[\\s,]");
+  /** Advances to the next non-blank line and splits it into tokens. */
+  private static boolean nextLine(LineReader lines, Tokens tokens)
+    throws IOException
+  {
+    while (lines.next()) {
+      if (tokens.split(lines) > 0) return true; // skip blank lines
+    }
+    return false;
+  }
+
+  // -- Helper classes --
+
+  /**
+   * Reads the lines within a range of a stream.  Lines may be terminated
+   * by "\n", "\r" or "\r\n".  The stream is locked while it is read, so
+   * that several threads can read from the same stream.
+   */
+  private static class LineReader {
+    private final RandomAccessInputStream stream;
+    private byte[] buf;
+
+    /** File offset of the first byte in the buffer. */
+    private long bufferOffset;
+
+    /** Number of valid bytes in the buffer. */
+    private int length;
+
+    /** File offset of the end of the range. */
+    private long end;
+
+    /** Buffer position of the next line. */
+    private int pos;
+
+    /** True if the previous line ended with "\r". */
+    private boolean afterCR;
+
+    /** Buffer positions of the current line. */
+    private int lineStart, lineEnd;
+
+    /** Line number of the current line, starting from 1. */
+    private int lineNumber;
+
+    public LineReader(RandomAccessInputStream stream) {
+      this.stream = stream;
+    }
+
+    /** Starts reading lines from the given range of the stream. */
+    public void reset(long start, long end) {
+      int size = (int) Math.max(1, Math.min(BUFFER_SIZE, end - start));
+      if (buf == null || buf.length < size) {
+        buf = new byte[size];
+      }
+      this.bufferOffset = start;
+      this.end = end;
+      length = pos = 0;
+      afterCR = false;
+      lineNumber = 0;
+    }
+
+    /** Advances to the next line; returns false at the end of the range. */
+    public boolean next() throws IOException {
+      int i = pos;
+      while (true) {
+        if (afterCR && i < length) {
+          afterCR = false;
+          if (buf[i] == '\n') pos = ++i;
+        }
+        for (; i<length; i++) {
+          if (buf[i] == '\n' || buf[i] == '\r') {
+            afterCR = buf[i] == '\r';
+            return setLine(i, i + 1);
+          }
+        }
+        if (bufferOffset + length >= end) {
+          // last line has no terminator
+          return pos < length && setLine(length, length);
+        }
+        i -= pos;
+        fill();
+      }
+    }
+
+    /** Gets the file offset of the current line. */
+    public long getLineStart() {
+      return bufferOffset + lineStart;
+    }
+
+    /** Gets the file offset of the end of the current line. */
+    public long getLineEnd() {
+      return bufferOffset + lineEnd;
+    }
+
+    public int getLineNumber() {
+      return lineNumber;
+    }
+
+    private boolean setLine(int terminator, int next) {
+      lineStart = pos;
+      lineEnd = terminator;
+      pos = next;
+      lineNumber++;
+      return true;
+    }
+
+    /** Discards the lines before pos and reads more of the stream. */
+    private void fill() throws IOException {
+      if (pos > 0) {
+        System.arraycopy(buf, pos, buf, 0, length - pos);
+        bufferOffset += pos;
+        length -= pos;
+        pos = 0;
+      }
+      if (length == buf.length) {
+        // current line is longer than the buffer
+        buf = Arrays.copyOf(buf, buf.length * 2);
+      }
+      int n = (int) Math.min(buf.length - length,
+        end - bufferOffset - length);
+      synchronized (stream) {
+        stream.seek(bufferOffset + length);
+        stream.readFully(buf, length, n);
+      }
+      length += n;
+    }
+  }
+
+  /** Tokens of a line, split at each whitespace or comma character. */
+  private static class Tokens {
+    private byte[] data;
+    private int count;
+    private int[] start = new int[16];
+    private int[] end = new int[16];
+
+    /**
+     * Splits the current line of the given reader into tokens, in the same
+     * way as <code>line.trim().split("[\\s,]")</code>.
+     *
+     * @return the number of tokens
+     */
+    public int split(LineReader lines) {
+      data = lines.buf;
+      count = 0;
+      int from = lines.lineStart;
+      int to = lines.lineEnd;
+      while (from < to && (data[from] & 0xff) <= ' ') from++;
+      while (to > from && (data[to - 1] & 0xff) <= ' ') to--;
+      if (from == to) return 0;
+
+      int tokenStart = from;
+      for (int i=from; i<=to; i++) {
+        if (i == to || isSeparator(data[i])) {
+          if (count == start.length) {
+            start = Arrays.copyOf(start, count * 2);
+            end = Arrays.copyOf(end, count * 2);
+          }
+          start[count] = tokenStart;
+          end[count] = i;
+          count++;
+          tokenStart = i + 1;
+        }
+      }
+      // trailing empty tokens are discarded, as by String.split
+      while (count > 0 && start[count - 1] == end[count - 1]) count--;
+      return count;
+    }
+
+    public String[] toStrings() throws IOException {
+      String[] tokens = new String[count];
+      for (int i=0; i<count; i++) {
+        tokens[i] =
+          new String(data, start[i], end[i] - start[i], Constants.ENCODING);
+      }
+      return tokens;
+    }
+
+    private static boolean isSeparator(byte b) {
+      return b == ' ' || b == '\t' || b == '\n' || b == 0x0b || b == '\f' ||
+        b == '\r' || b == ',';
     }
   }
 
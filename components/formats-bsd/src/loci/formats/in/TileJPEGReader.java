@@ -85,16 +85,7 @@ public class TileJPEGReader extends FormatReader {
       service.getTile(buf, x, y, w, h);
     }
     else {
-      int c = getRGBChannelCount();
-
-      for (int ty=y; ty<y+h; ty++) {
-        byte[] scanline = decoder.getScanline(ty);
-        if (scanline == null) {
-          decoder.initialize(currentId, 0);
-          scanline = decoder.getScanline(ty);
-        }
-        System.arraycopy(scanline, c * x, buf, (ty - y) * c * w, c * w);
-      }
+      decoder.getTile(buf, x, y, w, h);
     }
 
     return buf;
@@ -35,20 +35,19 @@ package loci.formats.in;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
-import loci.common.IRandomAccess;
 import loci.common.Location;
-import loci.common.RandomAccessInputStream;
-import loci.common.ZipHandle;
+import loci.common.ZipArchive;
 import loci.formats.CoreMetadata;
 import loci.formats.FormatException;
 import loci.formats.FormatReader;
 import loci.formats.ImageReader;
 
 /**
- * Reader for Zip files.
+ * Reader for Zip files.  The image is read in place from the Zip file: the
+ * entry is opened through a path such as
+ * <code>/data/study.zip/image1.dcm</code>, so that the reader for the entry
+ * can also find any companion files stored in the same Zip file.
  */
 public class ZipReader extends FormatReader {
 
@@ -57,8 +56,6 @@ public class ZipReader extends FormatReader {
   private transient ImageReader reader;
   private String entryName;
 
-  private ArrayList<String> mappedFiles = new ArrayList<String>();
-
   // -- Constructor --
 
   public ZipReader() {
@@ -93,9 +90,6 @@ public class ZipReader extends FormatReader {
   public byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h)
     throws FormatException, IOException
   {
-    if (Location.getMappedFile(entryName) == null) {
-      initFile(currentId);
-    }
     reader.setId(entryName);
     return reader.openBytes(no, buf, x, y, w, h);
   }
@@ -105,16 +99,10 @@ public class ZipReader extends FormatReader {
   public void close(boolean fileOnly) throws IOException {
     super.close(fileOnly);
     if (reader != null) reader.close(fileOnly);
-    if (!fileOnly) reader = null;
-    for (String name : mappedFiles) {
-      IRandomAccess handle = Location.getMappedFile(name);
-      Location.mapFile(name, null);
-      if (handle != null) {
-        handle.close();
-      }
+    if (!fileOnly) {
+      reader = null;
+      entryName = null;
     }
-    mappedFiles.clear();
-    entryName = null;
   }
 
   // -- Internal FormatReader API methods --
@@ -143,35 +131,13 @@ public class ZipReader extends FormatReader {
       innerFile = innerFile.substring(sep + 1);
     }
 
-    // NB: We need a raw handle on the ZIP data itself, not a ZipHandle.
-    IRandomAccess rawHandle = Location.getHandle(id, false, false);
-    in = new RandomAccessInputStream(rawHandle, id);
-
-    ZipInputStream zip = new ZipInputStream(in);
-    ZipEntry ze = null;
-    entryName = null;
-    boolean matchFound = false;
-    while (true) {
-      ze = zip.getNextEntry();
-      if (ze == null) break;
-
-      if (entryName == null) {
-        entryName = ze.getName();
-      }
-
-      if (!matchFound && ze.getName().startsWith(innerFile)) {
-        entryName = ze.getName();
-        matchFound = true;
-      }
-
-      ZipHandle handle = new ZipHandle(id, ze);
-      Location.mapFile(ze.getName(), handle);
-      mappedFiles.add(ze.getName());
-    }
-
-    if (entryName == null) {
+    String path = new Location(id).getAbsolutePath();
+    ZipArchive.Entry entry = ZipArchive.open(path).getDefaultEntry(innerFile);
+    if (entry == null) {
       throw new FormatException("Zip file does not contain any valid files");
     }
+    entryName = path + File.separator +
+      entry.getName().replace('/', File.separatorChar);
 
     reader.setId(entryName);
 
@@ -32,6 +32,7 @@
 
 package loci.formats.services;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
 import java.io.IOException;
@@ -47,6 +48,7 @@ import javax.imageio.spi.ServiceRegistry;
 import javax.imageio.stream.ImageOutputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 
+import loci.common.Region;
 import loci.common.services.AbstractService;
 import loci.common.services.ServiceException;
 import loci.formats.codec.JPEG2000CodecOptions;
@@ -144,13 +146,12 @@ public class JAIIIOServiceImpl extends AbstractService
     J2KImageReader reader = getReader();
     MemoryCacheImageInputStream mciis = new MemoryCacheImageInputStream(in);
     reader.setInput(mciis, false, true);
-    J2KImageReadParam param = (J2KImageReadParam) reader.getDefaultReadParam();
-    if (options.resolution != null) {
-      param.setResolution(options.resolution.intValue());
+    try {
+      return reader.read(0, getReadParam(reader, options));
+    }
+    finally {
+      reader.dispose();
     }
-    BufferedImage image = reader.read(0, param);
-    reader.dispose();
-    return image;
   }
 
   /* @see JAIIIOService#readImage(InputStream) */
@@ -169,13 +170,12 @@ public class JAIIIOServiceImpl extends AbstractService
     J2KImageReader reader = getReader();
     MemoryCacheImageInputStream mciis = new MemoryCacheImageInputStream(in);
     reader.setInput(mciis, false, true);
-    J2KImageReadParam param = (J2KImageReadParam) reader.getDefaultReadParam();
-    if (options.resolution != null) {
-      param.setResolution(options.resolution.intValue());
+    try {
+      return reader.readRaster(0, getReadParam(reader, options));
+    }
+    finally {
+      reader.dispose();
     }
-    Raster raster = reader.readRaster(0, param);
-    reader.dispose();
-    return raster;
   }
 
   /* @see JAIIIOService#readRaster(InputStream) */
@@ -192,6 +192,24 @@ public class JAIIIOServiceImpl extends AbstractService
     return new J2KImageReader(spi);
   }
 
+  /** Translate the decoding options into JPEG-2000 read parameters. */
+  private J2KImageReadParam getReadParam(J2KImageReader reader,
+    JPEG2000CodecOptions options)
+  {
+    J2KImageReadParam param = (J2KImageReadParam) reader.getDefaultReadParam();
+    if (options.resolution != null) {
+      param.setResolution(options.resolution.intValue());
+    }
+    if (options.region != null) {
+      Region r = options.region;
+      param.setSourceRegion(new Rectangle(r.x, r.y, r.width, r.height));
+    }
+    if (options.qualityLayers != null) {
+      param.setQualityLayers(options.qualityLayers.intValue());
+    }
+    return param;
+  }
+
   /** Register the JPEG-2000 readers with the reader service. */
   private static IIORegistry registerServiceProviders() {
     IIORegistry registry = IIORegistry.getDefaultInstance();
@@ -40,6 +40,7 @@ import java.util.Map;
 import loci.common.DataTools;
 import loci.common.enumeration.CodedEnum;
 import loci.common.enumeration.EnumException;
+import loci.common.metrics.MetricsRegistry;
 import loci.formats.FormatException;
 import loci.formats.UnsupportedCompressionException;
 import loci.formats.codec.Codec;
@@ -96,6 +97,7 @@ public enum TiffCompression implements CodedEnum {
         JPEG2000CodecOptions o = (JPEG2000CodecOptions) opt;
         j2k.numDecompositionLevels = o.numDecompositionLevels;
         j2k.resolution = o.resolution;
+        j2k.qualityLayers = o.qualityLayers;
         if (o.codeBlockSize != null) {
           j2k.codeBlockSize = o.codeBlockSize;
         }
@@ -125,6 +127,7 @@ public enum TiffCompression implements CodedEnum {
         JPEG2000CodecOptions o = (JPEG2000CodecOptions) opt;
         j2k.numDecompositionLevels = o.numDecompositionLevels;
         j2k.resolution = o.resolution;
+        j2k.qualityLayers = o.qualityLayers;
         if (o.codeBlockSize != null) {
           j2k.codeBlockSize = o.codeBlockSize;
         }
@@ -154,6 +157,7 @@ public enum TiffCompression implements CodedEnum {
         JPEG2000CodecOptions o = (JPEG2000CodecOptions) opt;
         j2k.numDecompositionLevels = o.numDecompositionLevels;
         j2k.resolution = o.resolution;
+        j2k.qualityLayers = o.qualityLayers;
         if (o.codeBlockSize != null)
           j2k.codeBlockSize = o.codeBlockSize;
         if (o.quality > 0)
@@ -183,6 +187,7 @@ public enum TiffCompression implements CodedEnum {
         JPEG2000CodecOptions o = (JPEG2000CodecOptions) opt;
         j2k.numDecompositionLevels = o.numDecompositionLevels;
         j2k.resolution = o.resolution;
+        j2k.qualityLayers = o.qualityLayers;
         if (o.codeBlockSize != null)
           j2k.codeBlockSize = o.codeBlockSize;
         if (o.quality > 0)
@@ -276,7 +281,17 @@ public enum TiffCompression implements CodedEnum {
       throw new UnsupportedCompressionException(
           "Sorry, " + getCodecName() + " compression mode is not supported");
     }
-    return codec.decompress(input, options);
+    long start = MetricsRegistry.start();
+    try {
+      return codec.decompress(input, options);
+    }
+    finally {
+      if (start != MetricsRegistry.NOT_STARTED) {
+        MetricsRegistry.timer("decode." + name()).recordSince(start);
+        MetricsRegistry.counter("decode." + name() + ".bytes").add(
+          input.length);
+      }
+    }
   }
 
   /** Undoes in-place differencing according to the given predictor value. */
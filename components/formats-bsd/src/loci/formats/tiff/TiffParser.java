@@ -33,10 +33,14 @@
 package loci.formats.tiff;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import loci.common.ByteArrayHandle;
 import loci.common.Constants;
@@ -44,8 +48,13 @@ import loci.common.DataTools;
 import loci.common.RandomAccessInputStream;
 import loci.common.Region;
 import loci.common.enumeration.EnumException;
+import loci.formats.BatchTools;
 import loci.formats.FormatException;
+import loci.formats.FormatTools;
 import loci.formats.codec.CodecOptions;
+import loci.formats.codec.JPEG2000CodecOptions;
+import loci.formats.codec.JPEGDecoder;
+import loci.formats.codec.LZWCodecOptions;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -654,21 +663,55 @@ public class TiffParser {
   public byte[] getTile(IFD ifd, byte[] buf, int row, int col)
     throws FormatException, IOException
   {
-    byte[] jpegTable = (byte[]) ifd.getIFDValue(IFD.JPEG_TABLES);
+    return getTile(ifd, buf, row, col, null);
+  }
 
+  /**
+   * Reads and decompresses the given tile.  If <code>region</code> is not
+   * null, only the part of the tile within the region is guaranteed to be
+   * decoded; this allows JPEG tiles and strips to be partially decoded.
+   */
+  private byte[] getTile(IFD ifd, byte[] buf, int row, int col, Region region)
+    throws FormatException, IOException
+  {
     codecOptions.interleaved = true;
     codecOptions.littleEndian = ifd.isLittleEndian();
 
-    long tileWidth = ifd.getTileWidth();
-    long tileLength = ifd.getTileLength();
+    if (buf == null) buf = new byte[getTileSize(ifd)];
+    long[] range = getTileRange(ifd, row, col);
+    if (range == null) {
+      return buf;
+    }
+    byte[] tile = new byte[(int) range[1]];
+
+    LOGGER.debug("Reading tile Length {} Offset {}", tile.length, range[0]);
+    in.seek(range[0]);
+    in.read(tile);
+
+    return decodeTile(ifd, tile, buf, row, range[2], region, codecOptions);
+  }
+
+  /** Returns the number of bytes in one decoded tile of the given IFD. */
+  private int getTileSize(IFD ifd) throws FormatException {
     int samplesPerPixel = ifd.getSamplesPerPixel();
-    int planarConfig = ifd.getPlanarConfiguration();
-    TiffCompression compression = ifd.getCompression();
+    int effectiveChannels =
+      ifd.getPlanarConfiguration() == 2 ? 1 : samplesPerPixel;
+    int pixel = ifd.getBytesPerSample()[0];
+    return (int) (ifd.getTileWidth() * ifd.getTileLength() * pixel *
+      effectiveChannels);
+  }
 
+  /**
+   * Returns the file offset and byte count of the given tile, followed by
+   * the number of strips in the IFD, or null if the tile is empty.
+   * Invalid byte counts are corrected as a side effect.
+   */
+  private long[] getTileRange(IFD ifd, int row, int col)
+    throws FormatException, IOException
+  {
+    long tileWidth = ifd.getTileWidth();
     long numTileCols = ifd.getTilesPerRow();
-
     int pixel = ifd.getBytesPerSample()[0];
-    int effectiveChannels = planarConfig == 2 ? 1 : samplesPerPixel;
 
     if (ifd.get(IFD.STRIP_BYTE_COUNTS) instanceof OnDemandLongArray) {
       OnDemandLongArray counts = (OnDemandLongArray) ifd.get(IFD.STRIP_BYTE_COUNTS);
@@ -717,31 +760,65 @@ public class TiffParser {
       nStrips = stripOffsets.length;
     }
 
-    int size = (int) (tileWidth * tileLength * pixel * effectiveChannels);
-
-    if (buf == null) buf = new byte[size];
     if (stripByteCounts[countIndex] == 0 || stripOffset >= in.length()) {
-      return buf;
+      return null;
     }
-    byte[] tile = new byte[(int) stripByteCounts[countIndex]];
+    return new long[] {stripOffset, stripByteCounts[countIndex], nStrips};
+  }
 
-    LOGGER.debug("Reading tile Length {} Offset {}", tile.length, stripOffset);
-    in.seek(stripOffset);
-    in.read(tile);
+  /**
+   * Decompresses the given compressed tile into the given buffer.
+   * This does not use the stream or modify the state of the parser,
+   * so several tiles may be decoded in parallel provided that each is
+   * given its own codec options.
+   *
+   * @param tile the compressed bytes of the tile
+   * @param buf a buffer of {@link #getTileSize(IFD)} bytes
+   * @param row the row of the tile, or the index of the strip
+   * @param nStrips the number of strips in the IFD
+   * @param region the part of the tile that is needed, or null
+   * @param options the codec options to use
+   */
+  private byte[] decodeTile(IFD ifd, byte[] tile, byte[] buf, int row,
+    long nStrips, Region region, CodecOptions options)
+    throws FormatException, IOException
+  {
+    byte[] jpegTable = (byte[]) ifd.getIFDValue(IFD.JPEG_TABLES);
 
-    codecOptions.maxBytes = (int) Math.max(size, tile.length);
-    codecOptions.ycbcr =
+    long tileWidth = ifd.getTileWidth();
+    int planarConfig = ifd.getPlanarConfiguration();
+    TiffCompression compression = ifd.getCompression();
+    int pixel = ifd.getBytesPerSample()[0];
+    int size = getTileSize(ifd);
+
+    options.maxBytes = Math.max(size, tile.length);
+    options.ycbcr =
       ifd.getPhotometricInterpretation() == PhotoInterp.Y_CB_CR &&
       ifd.getIFDIntValue(IFD.Y_CB_CR_SUB_SAMPLING) == 1 && ycbcrCorrection;
 
-    if (jpegTable != null) {
-      byte[] q = new byte[jpegTable.length + tile.length - 4];
-      System.arraycopy(jpegTable, 0, q, 0, jpegTable.length - 2);
-      System.arraycopy(tile, 2, q, jpegTable.length - 2, tile.length - 2);
-      tile = compression.decompress(q, codecOptions);
+    tile = addJPEGTables(jpegTable, tile);
+    if (region != null && decodeJPEGRegion(ifd, tile, buf, region, options)) {
+      return buf;
+    }
+    if (compression == TiffCompression.LZW &&
+      ifd.getIFDIntValue(IFD.PREDICTOR, 1) == 2 &&
+      ifd.getBitsPerSample()[0] == 8)
+    {
+      // reverse the horizontal differencing while decoding
+      int[] bitsPerSample = ifd.getBitsPerSample();
+      LZWCodecOptions lzwOptions = new LZWCodecOptions(options);
+      lzwOptions.predictor = LZWCodecOptions.HORIZONTAL_DIFFERENCING;
+      lzwOptions.width = (int) tileWidth;
+      lzwOptions.channels = planarConfig == 2 ||
+        bitsPerSample[bitsPerSample.length - 1] == 0 ? 1 :
+        bitsPerSample.length;
+      lzwOptions.bitsPerSample = 8;
+      tile = compression.decompress(tile, lzwOptions);
+    }
+    else {
+      tile = compression.decompress(tile, options);
+      TiffCompression.undifference(tile, ifd);
     }
-    else tile = compression.decompress(tile, codecOptions);
-    TiffCompression.undifference(tile, ifd);
     unpackBytes(buf, 0, tile, ifd);
 
     if (planarConfig == 2 && !ifd.isTiled() && ifd.getSamplesPerPixel() > 1) {
@@ -769,6 +846,20 @@ public class TiffParser {
     return buf;
   }
 
+  /**
+   * Returns the given tile with the shared JPEG tables inserted after its
+   * start of image marker, or the tile itself if there are no tables.
+   */
+  private static byte[] addJPEGTables(byte[] jpegTable, byte[] tile) {
+    if (jpegTable == null) {
+      return tile;
+    }
+    byte[] q = new byte[jpegTable.length + tile.length - 4];
+    System.arraycopy(jpegTable, 0, q, 0, jpegTable.length - 2);
+    System.arraycopy(tile, 2, q, jpegTable.length - 2, tile.length - 2);
+    return q;
+  }
+
   public byte[] getSamples(IFD ifd, byte[] buf)
     throws FormatException, IOException
   {
@@ -783,6 +874,339 @@ public class TiffParser {
     return getSamples(ifd, buf, x, y, width, height, 0, 0);
   }
 
+  /**
+   * Reads a sub-image of the given IFD into an array of samples or a
+   * ByteBuffer, as accepted by
+   * {@link loci.formats.IFormatReader#openPlane(int, Object, int, int, int, int)}.
+   * Uncompressed single-strip images with one sample per pixel are
+   * converted to samples as they are read; all other images are decoded
+   * into bytes first.
+   */
+  public Object getSamples(IFD ifd, Object samples, int x, int y,
+    long width, long height) throws FormatException, IOException
+  {
+    boolean littleEndian = ifd.isLittleEndian();
+    int bpp = ifd.getBytesPerSample()[0];
+    int count = (int) (width * height * ifd.getSamplesPerPixel());
+
+    long offset = getRawPixelsOffset(ifd);
+    if (offset >= 0) {
+      FormatTools.readSamples(in, offset, (int) ifd.getImageWidth(), x, y,
+        (int) width, (int) height, bpp, littleEndian, samples, 0);
+      return samples;
+    }
+
+    byte[] buf = getSamples(ifd, new byte[count * bpp], x, y, width, height);
+    DataTools.unpackSamples(buf, 0, samples, 0, count, bpp, littleEndian);
+    return samples;
+  }
+
+  /**
+   * Reads a sub-image of the given IFD into a ByteBuffer, starting at the
+   * buffer's current position, which is not modified.  The bytes are the
+   * same as those stored by {@link #getSamples(IFD, byte[], int, int, long,
+   * long)}; unlike {@link #getSamples(IFD, Object, int, int, long, long)},
+   * the buffer's byte order is ignored.  Uncompressed single-strip images
+   * with one sample per pixel are transferred from the stream straight
+   * into the buffer, without an intermediate byte array.
+   */
+  public ByteBuffer getSamples(IFD ifd, ByteBuffer buf, int x, int y,
+    long width, long height) throws FormatException, IOException
+  {
+    int bpp = ifd.getBytesPerSample()[0];
+    long offset = getRawPixelsOffset(ifd);
+    if (offset >= 0) {
+      FormatTools.readBytes(in, offset, (int) ifd.getImageWidth(), x, y,
+        (int) width, (int) height, bpp, buf, buf.position());
+      return buf;
+    }
+
+    if (buf.hasArray() && buf.arrayOffset() + buf.position() == 0) {
+      getSamples(ifd, buf.array(), x, y, width, height);
+      return buf;
+    }
+    int size = (int) (width * height * ifd.getSamplesPerPixel() * bpp);
+    byte[] b = getSamples(ifd, new byte[size], x, y, width, height);
+    ByteBuffer dest = buf.duplicate();
+    dest.put(b);
+    return buf;
+  }
+
+  /**
+   * Reads several sub-images of the given IFD at once, as for
+   * {@link loci.formats.IFormatReader#openBytes(int, List, List)}.
+   * All of the tiles needed by any of the regions are located first; they
+   * are then fetched in file order, with nearby tiles merged into a single
+   * read by {@link BatchTools#readChunks(RandomAccessInputStream, long[],
+   * int[])}, and decoded in parallel where the compression allows.  Tiles
+   * that are shared by several regions are only read and decoded once.
+   *
+   * @param bufs one buffer for each region, each large enough to hold the
+   *   region's samples
+   * @return <code>bufs</code> for convenience
+   */
+  public List<byte[]> getSamples(final IFD ifd, List<Region> regions,
+    List<byte[]> bufs) throws FormatException, IOException
+  {
+    long tileWidth = ifd.getTileWidth();
+    long tileLength = ifd.getTileLength();
+    long numTileRows = ifd.getTilesPerColumn();
+    long numTileCols = ifd.getTilesPerRow();
+
+    if (getRawPixelsOffset(ifd) >= 0 || tileWidth <= 0 || tileLength <= 0 ||
+      numTileRows * numTileCols <= 1)
+    {
+      // there is only one tile, so nothing is gained by batching
+      for (int i=0; i<regions.size(); i++) {
+        Region r = regions.get(i);
+        getSamples(ifd, bufs.get(i), r.x, r.y, r.width, r.height);
+      }
+      return bufs;
+    }
+
+    in.order(ifd.isLittleEndian());
+    TiffCompression compression = ifd.getCompression();
+    if (compression == TiffCompression.JPEG_2000 ||
+      compression == TiffCompression.JPEG_2000_LOSSY)
+    {
+      codecOptions = compression.getCompressionCodecOptions(ifd, codecOptions);
+    }
+    else codecOptions = compression.getCompressionCodecOptions(ifd);
+    codecOptions.interleaved = true;
+    codecOptions.littleEndian = ifd.isLittleEndian();
+
+    int samplesPerPixel = ifd.getSamplesPerPixel();
+    int planarConfig = ifd.getPlanarConfiguration();
+    int pixel = ifd.getBytesPerSample()[0];
+    int effectiveChannels = planarConfig == 2 ? 1 : samplesPerPixel;
+    int planes = planarConfig == 2 ? samplesPerPixel : 1;
+    final int tileSize = getTileSize(ifd);
+    int rowLen = pixel * (int) tileWidth;
+
+    // find each tile that intersects a region, and the part of it needed
+
+    Map<Long, TileRead> tiles = new LinkedHashMap<Long, TileRead>();
+    for (Region region : regions) {
+      for (int p=0; p<planes; p++) {
+        for (TileRead tile : getTiles(region, p, tileWidth, tileLength,
+          numTileRows, numTileCols, tiles))
+        {
+          tile.include(region, (int) tileWidth, (int) tileLength);
+        }
+      }
+    }
+
+    List<TileRead> stored = new ArrayList<TileRead>();
+    for (TileRead tile : tiles.values()) {
+      long[] range = getTileRange(ifd, tile.row, tile.col);
+      if (range == null) {
+        tile.pixels = new byte[tileSize];
+      }
+      else {
+        tile.offset = range[0];
+        tile.length = (int) range[1];
+        tile.nStrips = range[2];
+        stored.add(tile);
+      }
+    }
+
+    long[] offsets = new long[stored.size()];
+    int[] lengths = new int[stored.size()];
+    for (int i=0; i<offsets.length; i++) {
+      offsets[i] = stored.get(i).offset;
+      lengths[i] = stored.get(i).length;
+    }
+    byte[][] data = BatchTools.readChunks(in, offsets, lengths);
+    for (int i=0; i<data.length; i++) {
+      stored.get(i).data = data[i];
+    }
+
+    // decode the tiles, each with its own copy of the codec options
+
+    if (isThreadSafe(compression)) {
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+      for (final TileRead tile : stored) {
+        final CodecOptions options = copyOptions(codecOptions);
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() throws FormatException, IOException {
+            tile.pixels = decodeTile(ifd, tile.data, new byte[tileSize],
+              tile.row, tile.nStrips, tile.getRegion(), options);
+            tile.data = null;
+            return null;
+          }
+        });
+      }
+      BatchTools.runTasks(tasks);
+    }
+    else {
+      for (TileRead tile : stored) {
+        tile.pixels = decodeTile(ifd, tile.data, new byte[tileSize],
+          tile.row, tile.nStrips, tile.getRegion(), codecOptions);
+        tile.data = null;
+      }
+    }
+
+    // copy the appropriate portion of each tile to the output buffers
+
+    for (int i=0; i<regions.size(); i++) {
+      Region region = regions.get(i);
+      byte[] buf = bufs.get(i);
+      int planeSize = region.width * region.height * pixel;
+      int outputRowLen = pixel * region.width;
+      for (int p=0; p<planes; p++) {
+        for (TileRead tile : getTiles(region, p, tileWidth, tileLength,
+          numTileRows, numTileCols, tiles))
+        {
+          int tileX = Math.max(tile.x, region.x);
+          int tileY = Math.max(tile.y, region.y);
+          int realX = tileX - tile.x;
+          int realY = tileY - tile.y;
+          int twidth = (int) Math.min(region.x + region.width - tileX,
+            tileWidth - realX);
+          int theight = (int) Math.min(region.y + region.height - tileY,
+            tileLength - realY);
+
+          int copy = pixel * twidth;
+          for (int q=0; q<effectiveChannels; q++) {
+            int src = q * rowLen * (int) tileLength + realX * pixel +
+              realY * rowLen;
+            int dest = q * planeSize + pixel * (tileX - region.x) +
+              outputRowLen * (tileY - region.y) + p * planeSize;
+            for (int tileRow=0; tileRow<theight; tileRow++) {
+              System.arraycopy(tile.pixels, src, buf, dest, copy);
+              src += rowLen;
+              dest += outputRowLen;
+            }
+          }
+        }
+      }
+    }
+    return bufs;
+  }
+
+  /**
+   * Returns true if {@link #getReducedSamples(IFD)} can be used to read the
+   * given IFD, i.e. if it contains 8-bit JPEG tiles or strips whose
+   * dimensions are multiples of the JPEG block size.
+   */
+  public boolean canReduce(IFD ifd) throws FormatException {
+    if (ifd.getCompression() != TiffCompression.JPEG ||
+      ifd.getPlanarConfiguration() != 1 || ifd.getBitsPerSample()[0] != 8 ||
+      ifd.getIFDIntValue(IFD.PREDICTOR, 1) != 1)
+    {
+      return false;
+    }
+    long tileWidth = ifd.getTileWidth();
+    long tileLength = ifd.getTileLength();
+    return tileWidth > 0 && tileLength > 0 &&
+      (tileWidth % 8 == 0 || ifd.getTilesPerRow() == 1) &&
+      (tileLength % 8 == 0 || ifd.getTilesPerColumn() == 1);
+  }
+
+  /**
+   * Reads the whole image in the given IFD at 1/8 scale, using
+   * {@link JPEGDecoder#decodeReduced} so that only the DC coefficient of
+   * each JPEG block is transformed.  The image is
+   * <code>ceil(width / 8)</code> by <code>ceil(height / 8)</code> pixels,
+   * with the same sample layout as {@link #getSamples(IFD, byte[])}.
+   *
+   * @return the reduced image, or null if any tile cannot be decoded this
+   *   way, in which case the image should be read at full resolution
+   * @see #canReduce(IFD)
+   */
+  public byte[] getReducedSamples(final IFD ifd)
+    throws FormatException, IOException
+  {
+    if (!canReduce(ifd)) {
+      return null;
+    }
+    in.order(ifd.isLittleEndian());
+
+    final int tileWidth = (int) ifd.getTileWidth();
+    final int tileLength = (int) ifd.getTileLength();
+    int numTileRows = (int) ifd.getTilesPerColumn();
+    int numTileCols = (int) ifd.getTilesPerRow();
+    final int samples = ifd.getSamplesPerPixel();
+    final boolean ycbcr =
+      ifd.getPhotometricInterpretation() == PhotoInterp.Y_CB_CR &&
+      ifd.getIFDIntValue(IFD.Y_CB_CR_SUB_SAMPLING) == 1 && ycbcrCorrection &&
+      samples == 3;
+    final byte[] jpegTable = (byte[]) ifd.getIFDValue(IFD.JPEG_TABLES);
+
+    final int width = (int) (ifd.getImageWidth() + 7) / 8;
+    final int height = (int) (ifd.getImageLength() + 7) / 8;
+    final byte[] buf = new byte[width * height * samples];
+
+    List<TileRead> stored = new ArrayList<TileRead>();
+    for (int row=0; row<numTileRows; row++) {
+      for (int col=0; col<numTileCols; col++) {
+        long[] range = getTileRange(ifd, row, col);
+        if (range != null) {
+          TileRead tile = new TileRead(row, col, col * tileWidth / 8,
+            row * tileLength / 8);
+          tile.offset = range[0];
+          tile.length = (int) range[1];
+          stored.add(tile);
+        }
+      }
+    }
+
+    long[] offsets = new long[stored.size()];
+    int[] lengths = new int[stored.size()];
+    for (int i=0; i<offsets.length; i++) {
+      offsets[i] = stored.get(i).offset;
+      lengths[i] = stored.get(i).length;
+    }
+    byte[][] data = BatchTools.readChunks(in, offsets, lengths);
+
+    final boolean[] failed = new boolean[1];
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int i=0; i<data.length; i++) {
+      final TileRead tile = stored.get(i);
+      final byte[] jpeg = addJPEGTables(jpegTable, data[i]);
+      data[i] = null;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws FormatException, IOException {
+          JPEGDecoder decoder;
+          try {
+            decoder = new JPEGDecoder(jpeg);
+          }
+          catch (FormatException e) {
+            LOGGER.debug("Could not decode JPEG tile directly", e);
+            failed[0] = true;
+            return null;
+          }
+          if (decoder.getComponentCount() != samples ||
+            decoder.getWidth() != tileWidth)
+          {
+            failed[0] = true;
+            return null;
+          }
+
+          int w = decoder.getReducedWidth();
+          int h = decoder.getReducedHeight();
+          byte[] pixels = new byte[w * h * samples];
+          decoder.decodeReduced(pixels, 0, w, 1, w * h,
+            decoder.isYCbCr() || ycbcr);
+
+          int copyWidth = Math.min(w, width - tile.x);
+          int copyHeight = Math.min(h, height - tile.y);
+          for (int c=0; c<samples; c++) {
+            for (int y=0; y<copyHeight; y++) {
+              System.arraycopy(pixels, (c * h + y) * w, buf,
+                (c * height + tile.y + y) * width + tile.x, copyWidth);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    BatchTools.runTasks(tasks);
+    return failed[0] ? null : buf;
+  }
+
   public byte[] getSamples(IFD ifd, byte[] buf, int x, int y,
     long width, long height, int overlapX, int overlapY)
     throws FormatException, IOException
@@ -983,8 +1407,6 @@ public class TiffParser {
 
         if (!imageBounds.intersects(tileBounds)) continue;
 
-        getTile(ifd, cachedTileBuffer, row, col);
-
         // adjust tile bounds, if necessary
 
         int tileX = (int) Math.max(tileBounds.x, x);
@@ -1001,6 +1423,14 @@ public class TiffParser {
           theight = (int) Math.max(endY - tileY, tileLength - realY);
         }
 
+        Region tileRegion = null;
+        if (overlapX == 0 && overlapY == 0 &&
+          realX + twidth <= tileWidth && realY + theight <= tileLength)
+        {
+          tileRegion = new Region(realX, realY, twidth, theight);
+        }
+        getTile(ifd, cachedTileBuffer, row, col, tileRegion);
+
         // copy appropriate portion of the tile to the output buffer
 
         int copy = pixel * twidth;
@@ -1276,4 +1706,191 @@ public class TiffParser {
     return new TiffIFDEntry(entryTag, entryType, valueCount, offset);
   }
 
+  // -- Helper methods --
+
+  /**
+   * Returns the tiles that intersect the given region in the given plane,
+   * adding tiles that are not yet in the map.  For images with separate
+   * planes, tile rows are numbered consecutively through all planes.
+   */
+  private List<TileRead> getTiles(Region region, int plane, long tileWidth,
+    long tileLength, long numTileRows, long numTileCols,
+    Map<Long, TileRead> tiles)
+  {
+    List<TileRead> list = new ArrayList<TileRead>();
+    if (region.width <= 0 || region.height <= 0) {
+      return list;
+    }
+    long nrows = numTileRows;
+    long firstRow = region.y / tileLength;
+    long lastRow = Math.min((region.y + region.height - 1) / tileLength,
+      nrows - 1);
+    long firstCol = region.x / tileWidth;
+    long lastCol = Math.min((region.x + region.width - 1) / tileWidth,
+      numTileCols - 1);
+    for (long r=firstRow; r<=lastRow; r++) {
+      int row = (int) (plane * nrows + r);
+      for (long col=firstCol; col<=lastCol; col++) {
+        Long key = row * numTileCols + col;
+        TileRead tile = tiles.get(key);
+        if (tile == null) {
+          tile = new TileRead(row, (int) col, (int) (col * tileWidth),
+            (int) (r * tileLength));
+          tiles.put(key, tile);
+        }
+        list.add(tile);
+      }
+    }
+    return list;
+  }
+
+  /**
+   * Returns true if tiles with the given compression can be decoded by
+   * several threads at once.  JPEG-2000 tiles are safe, as each decode
+   * uses its own image reader.
+   */
+  private static boolean isThreadSafe(TiffCompression compression) {
+    switch (compression) {
+      case LURAWAVE:
+        return false;
+      default:
+        return true;
+    }
+  }
+
+  /** Returns a copy of the given codec options that has the same type. */
+  private static CodecOptions copyOptions(CodecOptions options) {
+    if (options instanceof JPEG2000CodecOptions) {
+      return new JPEG2000CodecOptions(options);
+    }
+    return new CodecOptions(options);
+  }
+
+  /**
+   * Returns the file offset of the pixels of an IFD whose pixels are stored
+   * uncompressed in a single strip with one byte-aligned sample per pixel,
+   * or -1 if the pixels need to be decoded.
+   */
+  private long getRawPixelsOffset(IFD ifd)
+    throws FormatException, IOException
+  {
+    long[] stripOffsets = ifd.getOnDemandStripOffsets() == null ?
+      ifd.getStripOffsets() : null;
+    long imageWidth = ifd.getImageWidth();
+    long imageLength = ifd.getImageLength();
+    int bpp = ifd.getBytesPerSample()[0];
+    PhotoInterp photoInterp = ifd.getPhotometricInterpretation();
+
+    if (ifd.getSamplesPerPixel() == 1 &&
+      ifd.getBitsPerSample()[0] == bpp * 8 &&
+      photoInterp != PhotoInterp.WHITE_IS_ZERO &&
+      photoInterp != PhotoInterp.CMYK && photoInterp != PhotoInterp.Y_CB_CR &&
+      ifd.getCompression() == TiffCompression.UNCOMPRESSED &&
+      ifd.getTilesPerColumn() * ifd.getTilesPerRow() == 1 &&
+      ifd.getTileWidth() == imageWidth &&
+      stripOffsets != null && stripOffsets.length == 1 &&
+      in.length() >= stripOffsets[0] + imageWidth * imageLength * bpp)
+    {
+      return stripOffsets[0];
+    }
+    return -1;
+  }
+
+  /**
+   * Decodes the given region of a JPEG-compressed tile directly into the
+   * (planar) tile buffer, skipping the parts of the tile that are outside
+   * of the region.  Returns false if the tile must be fully decompressed
+   * and unpacked instead.
+   */
+  private boolean decodeJPEGRegion(IFD ifd, byte[] tile, byte[] buf,
+    Region region, CodecOptions options)
+    throws FormatException, IOException
+  {
+    if (ifd.getCompression() != TiffCompression.JPEG ||
+      ifd.getPlanarConfiguration() != 1 || ifd.getBitsPerSample()[0] != 8 ||
+      ifd.getIFDIntValue(IFD.PREDICTOR, 1) != 1)
+    {
+      return false;
+    }
+
+    JPEGDecoder decoder;
+    try {
+      decoder = new JPEGDecoder(tile);
+    }
+    catch (FormatException e) {
+      LOGGER.debug("Could not decode JPEG tile directly", e);
+      return false;
+    }
+
+    int samples = ifd.getSamplesPerPixel();
+    int tileWidth = (int) ifd.getTileWidth();
+    if (decoder.getComponentCount() != samples ||
+      decoder.getWidth() != tileWidth ||
+      region.y + region.height > decoder.getHeight())
+    {
+      return false;
+    }
+
+    boolean ycbcr =
+      decoder.isYCbCr() || (options.ycbcr && samples == 3);
+    try {
+      decoder.decode(buf, region.y * tileWidth + region.x, tileWidth, 1,
+        buf.length / samples, region.x, region.y, region.width,
+        region.height, ycbcr);
+    }
+    catch (FormatException e) {
+      LOGGER.debug("Could not decode JPEG tile directly", e);
+      return false;
+    }
+    catch (RuntimeException e) {
+      // corrupt tile that the decoder did not detect; use the codec instead
+      LOGGER.debug("Could not decode JPEG tile directly", e);
+      return false;
+    }
+    return true;
+  }
+
+  // -- Helper classes --
+
+  /** A tile that is needed by at least one region of a batch read. */
+  private static class TileRead {
+    public final int row;
+    public final int col;
+
+    /** Coordinates of the tile's upper-left corner within the image. */
+    public final int x;
+    public final int y;
+
+    public long offset;
+    public int length;
+    public long nStrips;
+    public byte[] data;
+    public byte[] pixels;
+
+    /** Bounds of the needed part of the tile, in tile coordinates. */
+    private int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+    private int maxX, maxY;
+
+    public TileRead(int row, int col, int x, int y) {
+      this.row = row;
+      this.col = col;
+      this.x = x;
+      this.y = y;
+    }
+
+    /** Adds the part of the given region that lies within this tile. */
+    public void include(Region region, int tileWidth, int tileLength) {
+      minX = Math.min(minX, Math.max(region.x - x, 0));
+      minY = Math.min(minY, Math.max(region.y - y, 0));
+      maxX = Math.max(maxX, Math.min(region.x + region.width - x, tileWidth));
+      maxY = Math.max(maxY,
+        Math.min(region.y + region.height - y, tileLength));
+    }
+
+    /** Returns the part of the tile that is needed by any region. */
+    public Region getRegion() {
+      return new Region(minX, minY, maxX - minX, maxY - minY);
+    }
+  }
+
 }
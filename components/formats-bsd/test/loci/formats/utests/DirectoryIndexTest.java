@@ -0,0 +1,171 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import loci.common.Location;
+import loci.formats.DirectoryIndex;
+import loci.formats.FilePattern;
+import loci.formats.NumberFilter;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link DirectoryIndex}.
+ */
+public class DirectoryIndexTest {
+
+  private static final String[] NAMES = {
+    "z9c1.tif", "z10c1.tif", "z9c2.tif", "z10c2.tif", "foo.tif", "z-5c1.tif",
+    "z+7c2.tif", "z--3c1.tif",
+    "img_s1_t001.tif", "img_s1_t002.tif", "img_s2_t001.tif", "img_s2_t002.tif",
+    "img_s1_t001.txt", "a1b2c3", "a1b22c3", "a12b2c3", "123", "45", "x"
+  };
+
+  @AfterMethod
+  public void tearDown() {
+    Location.reset();
+  }
+
+  @Test
+  public void testMatchesAgreeWithNumberFilter() {
+    DirectoryIndex index = new DirectoryIndex(NAMES);
+    for (String name : NAMES) {
+      for (int start=0; start<name.length(); start++) {
+        for (int end=start + 1; end<=name.length(); end++) {
+          String pre = name.substring(0, start);
+          String post = name.substring(end);
+          assertEquals(pre + "*" + post, filter(pre, post),
+            Arrays.asList(index.getMatches(pre, post)));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testNoMatches() {
+    DirectoryIndex index = new DirectoryIndex(NAMES);
+    assertEquals(0, index.getMatches("bar", ".tif").length);
+    assertEquals(0, index.getMatches("z", "c3.tif").length);
+    assertEquals(0, new DirectoryIndex(new String[0]).getMatches("", "").length);
+  }
+
+  @Test
+  public void testFindPattern() {
+    String[] names = {
+      "z9c1.tif", "z10c1.tif", "z9c2.tif", "z10c2.tif", "foo.tif",
+      "img_s1_t001.tif", "img_s1_t002.tif", "img_s2_t001.tif",
+      "img_s2_t002.tif", "img_s1_t001.txt"
+    };
+    assertEquals("z<9-10>c<1-2>.tif",
+      FilePattern.findPattern("z10c1.tif", "", names));
+    assertEquals("img_s<1-2>_t00<1-2>.tif",
+      FilePattern.findPattern("img_s1_t001.tif", "", names));
+  }
+
+  @Test
+  public void testSignedNumbers() {
+    String[] names = {"z-1.tif", "z0.tif", "z1.tif", "z+2.tif", "z3.tif"};
+    DirectoryIndex index = new DirectoryIndex(names);
+    assertEquals(Arrays.asList(names),
+      Arrays.asList(index.getMatches("z", ".tif")));
+    assertEquals(Arrays.asList("z-1.tif"),
+      Arrays.asList(index.getMatches("z-", ".tif")));
+    assertEquals("z<-1-3>.tif", FilePattern.findPattern("z1.tif", "", names));
+    assertEquals("z-1.tif", FilePattern.findPattern("z-1.tif", "", names));
+    assertEquals("z+2.tif", FilePattern.findPattern("z+2.tif", "", names));
+
+    names = new String[] {"t-1.tif", "t1.tif", "t+1.tif", "t2.tif"};
+    assertEquals(null, FilePattern.findPattern("t1.tif", "", names));
+    assertEquals("t+1.tif", FilePattern.findPattern("t+1.tif", "", names));
+  }
+
+  @Test
+  public void testSharedIndex() throws IOException {
+    File dir = Files.createTempDirectory("index").toFile();
+    dir.deleteOnExit();
+    File file = new File(dir, "z1.tif");
+    file.createNewFile();
+    file.deleteOnExit();
+
+    Location location = new Location(dir);
+    long past = System.currentTimeMillis() - 60000;
+    dir.setLastModified(past);
+
+    // without cached listings, each call indexes a fresh listing
+    assertNotSame(DirectoryIndex.getIndex(location),
+      DirectoryIndex.getIndex(location));
+
+    Location.cacheDirectoryListings(true);
+    DirectoryIndex index = DirectoryIndex.getIndex(location);
+    assertSame(index, DirectoryIndex.getIndex(location));
+    assertEquals(1, index.getMatches("z", ".tif").length);
+
+    // modifying the directory invalidates the cached listing
+    File other = new File(dir, "z2.tif");
+    other.createNewFile();
+    other.deleteOnExit();
+    dir.setLastModified(past + 1000);
+    DirectoryIndex updated = DirectoryIndex.getIndex(location);
+    assertNotSame(index, updated);
+    assertEquals(2, updated.getMatches("z", ".tif").length);
+    assertSame(updated, DirectoryIndex.getIndex(location));
+  }
+
+  @Test
+  public void testMissingDirectory() {
+    assertNull(DirectoryIndex.getIndex(new Location("/no/such/directory")));
+  }
+
+  private static List<String> filter(String pre, String post) {
+    NumberFilter filter = new NumberFilter(pre, post);
+    List<String> matches = new ArrayList<String>();
+    for (String name : NAMES) {
+      if (filter.accept(name)) matches.add(name);
+    }
+    return matches;
+  }
+
+}
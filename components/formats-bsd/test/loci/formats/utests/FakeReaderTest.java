@@ -41,11 +41,16 @@ import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 
 import loci.common.Constants;
+import loci.common.DataTools;
 import loci.common.Location;
+import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.in.FakeReader;
 import loci.formats.ome.OMEXMLMetadata;
@@ -586,6 +591,56 @@ public class FakeReaderTest {
     }
   }
 
+  @Test(dataProvider = "pixelFeatures")
+  public void testOpenPlaneSamples(int pixelType, boolean little)
+      throws Exception {
+    reader.setId(String.format(
+        "foo&pixelType=%s&sizeX=64&sizeY=32&little=%s.fake",
+        FormatTools.getPixelTypeString(pixelType), little));
+    int bpp = FormatTools.getBytesPerPixel(pixelType);
+    byte[] bytes = reader.openBytes(0, 3, 4, 20, 10);
+
+    Object expected = DataTools.makeDataArray(bytes, bpp,
+        FormatTools.isFloatingPoint(pixelType), little);
+    Object samples = reader.openPlane(0,
+        FormatTools.allocateSamples(pixelType, 200), 3, 4, 20, 10);
+    assertTrue(Arrays.deepEquals(
+        new Object[] {expected}, new Object[] {samples}));
+
+    ByteBuffer b = ByteBuffer.allocate(bytes.length + bpp);
+    b.order(little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    b.position(bpp);
+    reader.openPlane(0, b, 3, 4, 20, 10);
+    assertEquals(b.position(), bpp);
+    assertEquals(Arrays.copyOfRange(b.array(), bpp, b.capacity()), bytes);
+  }
+
+  @Test
+  public void testOpenBytesDirectBuffer() throws Exception {
+    reader.setId("foo&pixelType=uint16&sizeX=64&sizeY=32&sizeC=3&rgb=3.fake");
+    byte[] bytes = reader.openBytes(0, 3, 4, 20, 10);
+
+    ByteBuffer b = ByteBuffer.allocateDirect(bytes.length + 5);
+    b.position(5);
+    assertTrue(reader.openBytes(0, b, 3, 4, 20, 10) == b);
+    assertEquals(b.position(), 5);
+    byte[] copy = new byte[bytes.length];
+    b.get(copy);
+    assertEquals(copy, bytes);
+  }
+
+  @Test(expectedExceptions = FormatException.class)
+  public void testOpenBytesBufferTooSmall() throws Exception {
+    reader.setId("foo&sizeX=64&sizeY=32.fake");
+    reader.openBytes(0, ByteBuffer.allocateDirect(100), 0, 0, 64, 32);
+  }
+
+  @Test(expectedExceptions = FormatException.class)
+  public void testOpenPlaneWrongSampleType() throws Exception {
+    reader.setId("foo&pixelType=uint16.fake");
+    reader.openPlane(0, new float[100], 0, 0, 10, 10);
+  }
+
   @Test
   public void testSpecialPixelsInterleaved() throws Exception {
     int nSeries = 2;
@@ -0,0 +1,122 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package loci.formats.utests;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+
+import loci.common.Constants;
+import loci.formats.ImageReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+/**
+ * Long-running benchmark of the time that a new JVM takes to construct an
+ * {@link ImageReader} and read the first plane of a fake image, with every
+ * reader instantiated up front or with readers instantiated only as needed.
+ * Each measurement is made in a separate JVM so that class loading is
+ * included.  Timings are logged rather than asserted.
+ */
+public class ImageReaderStartupLongRunningTest {
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(ImageReaderStartupLongRunningTest.class);
+
+  private static final int ITERATIONS = 5;
+
+  private static final String ID = "test&sizeX=64&sizeY=64.fake";
+
+  @Test
+  public void testStartup() throws Exception {
+    long eager = Long.MAX_VALUE;
+    long lazy = Long.MAX_VALUE;
+    for (int n=0; n<ITERATIONS; n++) {
+      eager = Math.min(eager, run("eager"));
+      lazy = Math.min(lazy, run("lazy"));
+    }
+    LOGGER.info("ImageReader startup and first plane: " +
+      "eager instantiation {} ms, lazy instantiation {} ms",
+      eager / 1000000, lazy / 1000000);
+  }
+
+  /**
+   * Entry point for the child JVM; prints the number of nanoseconds taken
+   * to read the first plane.
+   */
+  public static void main(String[] args) throws Exception {
+    long start = System.nanoTime();
+    ImageReader reader = new ImageReader();
+    if (args[0].equals("eager")) {
+      reader.getReaders();
+    }
+    reader.setId(ID);
+    reader.openBytes(0);
+    reader.close();
+    System.out.println(System.nanoTime() - start);
+  }
+
+  // -- Helper methods --
+
+  /** Runs {@link #main} in a new JVM and returns the reported time. */
+  private static long run(String mode) throws Exception {
+    String java = System.getProperty("java.home") + File.separator + "bin" +
+      File.separator + "java";
+    ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+      System.getProperty("java.class.path"),
+      ImageReaderStartupLongRunningTest.class.getName(), mode);
+    builder.redirectErrorStream(true);
+    Process process = builder.start();
+
+    String last = null;
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+      process.getInputStream(), Constants.ENCODING));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        last = line.trim();
+      }
+    }
+    finally {
+      in.close();
+    }
+    assertEquals(process.waitFor(), 0);
+    return Long.parseLong(last);
+  }
+
+}
@@ -33,6 +33,7 @@
 package loci.formats.utests;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertTrue;
 
@@ -50,7 +51,9 @@ import java.awt.image.WritableRaster;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 
+import loci.common.Region;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceException;
 import loci.common.services.ServiceFactory;
@@ -91,6 +94,21 @@ public class JAIIIOServiceTest {
     return stream;
   }
 
+  private ByteArrayOutputStream writeGradient(JPEG2000CodecOptions options)
+    throws IOException, ServiceException {
+    BufferedImage image =
+      new BufferedImage(SIZE_X, SIZE_Y, BufferedImage.TYPE_BYTE_GRAY);
+    WritableRaster raster = image.getRaster();
+    for (int y=0; y<SIZE_Y; y++) {
+      for (int x=0; x<SIZE_X; x++) {
+        raster.setSample(x, y, 0, (x * 3 + y * 5 + (x * y) % 17) & 0xff);
+      }
+    }
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    service.writeImage(stream, image, options);
+    return stream;
+  }
+
   private ByteArrayOutputStream assertWriteImageLossy()
     throws IOException, ServiceException {
     JPEG2000CodecOptions options = JPEG2000CodecOptions.getDefaultOptions();
@@ -275,6 +293,51 @@ public class JAIIIOServiceTest {
     assertEquals(SIZE_Y, image.getHeight());
   }
 
+  @Test
+  public void testReadRasterRegion() throws IOException, ServiceException {
+    JPEG2000CodecOptions options = JPEG2000CodecOptions.getDefaultOptions();
+    options.lossless = true;
+    options.codeBlockSize = CODE_BLOCK;
+    options.tileWidth = 32;
+    options.tileHeight = 32;
+    byte[] stream = writeGradient(options).toByteArray();
+
+    Raster full = service.readRaster(new ByteArrayInputStream(stream));
+    options = JPEG2000CodecOptions.getDefaultOptions();
+    options.region = new Region(20, 40, 30, 24);
+    Raster region =
+      service.readRaster(new ByteArrayInputStream(stream), options);
+    assertEquals(30, region.getWidth());
+    assertEquals(24, region.getHeight());
+    for (int y=0; y<region.getHeight(); y++) {
+      for (int x=0; x<region.getWidth(); x++) {
+        assertEquals(full.getSample(x + 20, y + 40, 0),
+          region.getSample(region.getMinX() + x, region.getMinY() + y, 0));
+      }
+    }
+  }
+
+  @Test
+  public void testReadRasterQualityLayers()
+    throws IOException, ServiceException {
+    JPEG2000CodecOptions options = JPEG2000CodecOptions.getDefaultOptions();
+    options.lossless = false;
+    options.codeBlockSize = CODE_BLOCK;
+    options.quality = 4.0f;
+    byte[] stream = writeGradient(options).toByteArray();
+
+    Raster full = service.readRaster(new ByteArrayInputStream(stream));
+    options = JPEG2000CodecOptions.getDefaultOptions();
+    options.qualityLayers = 1;
+    Raster truncated =
+      service.readRaster(new ByteArrayInputStream(stream), options);
+    assertEquals(SIZE_X, truncated.getWidth());
+    assertEquals(SIZE_Y, truncated.getHeight());
+    assertFalse(Arrays.equals(
+      full.getSamples(0, 0, SIZE_X, SIZE_Y, 0, (int[]) null),
+      truncated.getSamples(0, 0, SIZE_X, SIZE_Y, 0, (int[]) null)));
+  }
+
   @Test(expectedExceptions={IllegalArgumentException.class})
   public void testWriteFloatingPointLossy() throws Exception {
     // The JAI ImageIO JPEG-2000 codec does not support floating point data.
@@ -0,0 +1,431 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.FormatException;
+import loci.formats.codec.CodecOptions;
+import loci.formats.codec.JPEGCodec;
+import loci.formats.codec.JPEGDecoder;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Compares {@link JPEGDecoder} output with ImageIO for baseline,
+ * progressive and restart marker encoded images, with each of the common
+ * chroma subsampling factors.
+ */
+public class JPEGDecoderTest {
+
+  private static final String METADATA_FORMAT =
+    "javax_imageio_jpeg_image_1.0";
+
+  /**
+   * Horizontal and vertical sampling factors of the luma component, for
+   * 4:4:4, 4:2:2, 4:2:0 and 4:4:0 chroma subsampling.
+   */
+  private static final int[][] SAMPLING = {{1, 1}, {2, 1}, {2, 2}, {1, 2}};
+
+  /** Component IDs for YCbCr, RGB and unnamed components. */
+  private static final int[][] COMPONENT_IDS =
+    {{1, 2, 3}, {'R', 'G', 'B'}, {0, 1, 2}};
+
+  /**
+   * Markers that replace JFIF: none, Adobe with and without YCbCr
+   * transform, Exif, and Exif after a comment or another application
+   * marker.
+   */
+  private static final byte[][] MARKERS = {
+    {},
+    {-1, -18, 0, 14, 'A', 'd', 'o', 'b', 'e', 0, 100, 0, 0, 0, 0, 0},
+    {-1, -18, 0, 14, 'A', 'd', 'o', 'b', 'e', 0, 100, 0, 0, 0, 0, 1},
+    {-1, -31, 0, 8, 'E', 'x', 'i', 'f', 0, 0},
+    {-1, -2, 0, 3, 'x', -1, -31, 0, 8, 'E', 'x', 'i', 'f', 0, 0},
+    {-1, -30, 0, 3, 'x', -1, -31, 0, 8, 'E', 'x', 'i', 'f', 0, 0},
+  };
+
+  @DataProvider(name = "images")
+  public Object[][] createImages() {
+    List<Object[]> images = new ArrayList<Object[]>();
+    int[][] sizes = {{1, 1}, {16, 16}, {97, 203}, {333, 217}};
+    for (int[] size : sizes) {
+      images.add(new Object[] {size[0], size[1], false, false, 0, null});
+      images.add(new Object[] {size[0], size[1], false, true, 0, null});
+      images.add(new Object[] {size[0], size[1], false, false, 3, null});
+      for (int[] sampling : SAMPLING) {
+        images.add(new Object[] {size[0], size[1], true, false, 0, sampling});
+        images.add(new Object[] {size[0], size[1], true, true, 0, sampling});
+        images.add(new Object[] {size[0], size[1], true, false, 3, sampling});
+        images.add(new Object[] {size[0], size[1], true, true, 2, sampling});
+      }
+    }
+    return images.toArray(new Object[0][]);
+  }
+
+  @Test(dataProvider = "images")
+  public void testMatchesImageIO(int width, int height, boolean rgb,
+    boolean progressive, int restartInterval, int[] sampling)
+    throws Exception
+  {
+    byte[] jpeg =
+      encode(width, height, rgb, progressive, restartInterval, sampling);
+    if (sampling != null) {
+      assertEquals((sampling[0] << 4) | sampling[1], getLumaSampling(jpeg));
+    }
+    BufferedImage reference = ImageIO.read(new ByteArrayInputStream(jpeg));
+    Raster raster = reference.getRaster();
+    int[] expected = raster.getPixels(0, 0, width, height, (int[]) null);
+
+    JPEGDecoder decoder = new JPEGDecoder(jpeg);
+    assertEquals(width, decoder.getWidth());
+    assertEquals(height, decoder.getHeight());
+    assertEquals(progressive, decoder.isProgressive());
+    assertEquals(restartInterval, decoder.getRestartInterval());
+
+    byte[] decoded = decoder.decode(true);
+    assertEquals(expected.length, decoded.length);
+    for (int i=0; i<expected.length; i++) {
+      assertEquals(expected[i], decoded[i] & 0xff);
+    }
+
+    CodecOptions options = new CodecOptions();
+    options.interleaved = true;
+    byte[] codec = new JPEGCodec().decompress(jpeg, options);
+    assertTrue(Arrays.equals(decoded, codec));
+  }
+
+  @Test(dataProvider = "images")
+  public void testRegions(int width, int height, boolean rgb,
+    boolean progressive, int restartInterval, int[] sampling)
+    throws Exception
+  {
+    byte[] jpeg =
+      encode(width, height, rgb, progressive, restartInterval, sampling);
+    JPEGDecoder decoder = new JPEGDecoder(jpeg);
+    byte[] full = decoder.decode(true);
+
+    // decode from a stream with leading junk, as readers do
+    byte[] padded = new byte[jpeg.length + 5];
+    System.arraycopy(jpeg, 0, padded, 5, jpeg.length);
+    RandomAccessInputStream s = new RandomAccessInputStream(padded);
+    s.seek(5);
+    JPEGDecoder streamDecoder = new JPEGDecoder(s);
+
+    int channels = decoder.getComponentCount();
+    Random random = new Random(width * height);
+    for (int t=0; t<20; t++) {
+      int x = random.nextInt(width);
+      int y = random.nextInt(height);
+      int w = 1 + random.nextInt(width - x);
+      int h = 1 + random.nextInt(height - y);
+      JPEGDecoder d = t % 2 == 0 ? decoder : streamDecoder;
+      byte[] interleaved = d.decode(null, x, y, w, h, true);
+      byte[] planar = d.decode(null, x, y, w, h, false);
+      for (int row=0; row<h; row++) {
+        for (int col=0; col<w; col++) {
+          for (int c=0; c<channels; c++) {
+            byte expected = full[((y + row) * width + x + col) * channels + c];
+            assertEquals(expected, interleaved[(row * w + col) * channels + c]);
+            assertEquals(expected, planar[c * w * h + row * w + col]);
+          }
+        }
+      }
+    }
+    s.close();
+  }
+
+  @Test(dataProvider = "images")
+  public void testReduced(int width, int height, boolean rgb,
+    boolean progressive, int restartInterval, int[] sampling)
+    throws Exception
+  {
+    byte[] jpeg =
+      encode(width, height, rgb, progressive, restartInterval, sampling);
+    JPEGDecoder decoder = new JPEGDecoder(jpeg);
+    byte[] full = decoder.decode(false);
+
+    int w = decoder.getReducedWidth();
+    int h = decoder.getReducedHeight();
+    assertEquals((width + 7) / 8, w);
+    assertEquals((height + 7) / 8, h);
+
+    int channels = decoder.getComponentCount();
+    byte[] planar = new byte[w * h * channels];
+    byte[] interleaved = new byte[w * h * channels];
+    decoder.decodeReduced(planar, 0, w, 1, w * h, decoder.isYCbCr());
+    decoder.decodeReduced(interleaved, 0, w * channels, channels, 1,
+      decoder.isYCbCr());
+    for (int i=0; i<w*h; i++) {
+      for (int c=0; c<channels; c++) {
+        assertEquals(planar[c * w * h + i], interleaved[i * channels + c]);
+      }
+    }
+
+    if (rgb) {
+      // chroma is not upsampled, so only grayscale values are exact
+      return;
+    }
+
+    // each complete block should be the mean of the full resolution block
+    for (int y=0; y<height/8; y++) {
+      for (int x=0; x<width/8; x++) {
+        int sum = 0;
+        for (int row=0; row<8; row++) {
+          for (int col=0; col<8; col++) {
+            sum += full[(y * 8 + row) * width + x * 8 + col] & 0xff;
+          }
+        }
+        int mean = planar[y * w + x] & 0xff;
+        assertTrue(Math.abs(sum / 64 - mean) <= 2);
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentDecoding() throws Exception {
+    final int size = 256;
+    byte[] jpeg = encode(size, size, true, false, 2, null);
+    final JPEGDecoder decoder = new JPEGDecoder(jpeg);
+    final byte[] full = decoder.decode(true);
+
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+      for (int t=0; t<16; t++) {
+        final int tile = t;
+        results.add(pool.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            int x = (tile % 4) * 64;
+            int y = (tile / 4) * 64;
+            byte[] buf = decoder.decode(null, x, y, 64, 64, true);
+            for (int row=0; row<64; row++) {
+              int src = ((y + row) * size + x) * 3;
+              for (int i=0; i<64*3; i++) {
+                if (buf[row * 64 * 3 + i] != full[src + i]) {
+                  return false;
+                }
+              }
+            }
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  @DataProvider(name = "colorSpaces")
+  public Object[][] createColorSpaces() {
+    List<Object[]> streams = new ArrayList<Object[]>();
+    for (int[] sampling : SAMPLING) {
+      for (int[] ids : COMPONENT_IDS) {
+        for (byte[] marker : MARKERS) {
+          streams.add(new Object[] {sampling, ids, marker});
+        }
+      }
+    }
+    return streams.toArray(new Object[0][]);
+  }
+
+  /**
+   * Checks that streams without a JFIF marker are converted to RGB if and
+   * only if ImageIO converts them.
+   */
+  @Test(dataProvider = "colorSpaces")
+  public void testColorSpaceMatchesImageIO(int[] sampling, int[] ids,
+    byte[] marker) throws Exception
+  {
+    byte[] jpeg = encode(35, 19, true, false, 0, sampling);
+
+    // replace the JFIF marker, and renumber the components in the frame
+    // and scan headers
+    int app0 = ((jpeg[4] & 0xff) << 8) | (jpeg[5] & 0xff);
+    byte[] stream = new byte[jpeg.length - app0 - 2 + marker.length];
+    System.arraycopy(jpeg, 0, stream, 0, 2);
+    System.arraycopy(marker, 0, stream, 2, marker.length);
+    System.arraycopy(jpeg, app0 + 4, stream, marker.length + 2,
+      jpeg.length - app0 - 4);
+    int sof = 2;
+    while (stream[sof] != (byte) 0xff || stream[sof + 1] != (byte) 0xc0) {
+      sof++;
+    }
+    int sos = sof;
+    while (stream[sos] != (byte) 0xff || stream[sos + 1] != (byte) 0xda) {
+      sos++;
+    }
+    for (int c=0; c<3; c++) {
+      stream[sof + 10 + c * 3] = (byte) ids[c];
+      stream[sos + 5 + c * 2] = (byte) ids[c];
+    }
+
+    BufferedImage reference = ImageIO.read(new ByteArrayInputStream(stream));
+    int[] expected =
+      reference.getRaster().getPixels(0, 0, 35, 19, (int[]) null);
+    byte[] decoded = new JPEGDecoder(stream).decode(true);
+    assertEquals(expected.length, decoded.length);
+    for (int i=0; i<expected.length; i++) {
+      assertEquals(expected[i], decoded[i] & 0xff);
+    }
+  }
+
+  @Test(expectedExceptions = FormatException.class)
+  public void testInvalidHuffmanTable() throws Exception {
+    byte[] jpeg = encode(16, 16, false, false, 0, null);
+
+    // claim two more codes of length 1, so that the table is over-subscribed
+    int dht = 0;
+    while (jpeg[dht] != (byte) 0xff || jpeg[dht + 1] != (byte) 0xc4) {
+      dht++;
+    }
+    int counts = dht + 5;
+    int length = 16;
+    while ((jpeg[counts + length - 1] & 0xff) < 2) {
+      length--;
+    }
+    jpeg[counts] += 2;
+    jpeg[counts + length - 1] -= 2;
+
+    new JPEGDecoder(jpeg);
+  }
+
+  // -- Helper methods --
+
+  /** Gets the sampling factors of the first component in the frame header. */
+  private int getLumaSampling(byte[] jpeg) {
+    int sof = 2;
+    while (jpeg[sof] != (byte) 0xff ||
+      (jpeg[sof + 1] != (byte) 0xc0 && jpeg[sof + 1] != (byte) 0xc2))
+    {
+      sof++;
+    }
+    // marker, length, precision, height, width, count, component ID
+    return jpeg[sof + 11] & 0xff;
+  }
+
+  /**
+   * Encodes a synthetic image with ImageIO.
+   *
+   * @param sampling horizontal and vertical sampling factors of the luma
+   *   component of an RGB image, or null for the writer's default
+   */
+  private byte[] encode(int width, int height, boolean rgb,
+    boolean progressive, int restartInterval, int[] sampling)
+    throws Exception
+  {
+    int type = rgb ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_BYTE_GRAY;
+    BufferedImage img = new BufferedImage(width, height, type);
+    Random random = new Random(1);
+    for (int y=0; y<height; y++) {
+      for (int x=0; x<width; x++) {
+        int r = (int) (127 + 100 * Math.sin(x / 17.0)) + random.nextInt(20);
+        int g = (int) (127 + 100 * Math.cos(y / 11.0)) + random.nextInt(20);
+        int b = (x * y) % 256;
+        r = Math.min(r, 255);
+        g = Math.min(g, 255);
+        img.setRGB(x, y, (r << 16) | (g << 8) | b);
+      }
+    }
+
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    if (progressive) {
+      param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+    }
+    IIOMetadata metadata =
+      writer.getDefaultImageMetadata(new ImageTypeSpecifier(img), param);
+    if (restartInterval > 0 || sampling != null) {
+      Element tree = (Element) metadata.getAsTree(METADATA_FORMAT);
+      Element markers =
+        (Element) tree.getElementsByTagName("markerSequence").item(0);
+      if (restartInterval > 0) {
+        IIOMetadataNode dri = new IIOMetadataNode("dri");
+        dri.setAttribute("interval", String.valueOf(restartInterval));
+        markers.appendChild(dri);
+      }
+      if (sampling != null) {
+        NodeList components = tree.getElementsByTagName("componentSpec");
+        for (int i=0; i<components.getLength(); i++) {
+          Element component = (Element) components.item(i);
+          component.setAttribute("HsamplingFactor",
+            String.valueOf(i == 0 ? sampling[0] : 1));
+          component.setAttribute("VsamplingFactor",
+            String.valueOf(i == 0 ? sampling[1] : 1));
+        }
+      }
+      metadata.setFromTree(METADATA_FORMAT, tree);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+    writer.setOutput(stream);
+    writer.write(null, new IIOImage(img, null, metadata), param);
+    stream.close();
+    writer.dispose();
+    return out.toByteArray();
+  }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.codec.CodecOptions;
+import loci.formats.codec.LZWCodec;
+import loci.formats.codec.LZWCodecOptions;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link LZWCodec}.
+ */
+public class LZWCodecTest {
+
+  private static final byte[] TEXT = {
+    'T', 'O', 'B', 'E', 'O', 'R', 'N', 'O', 'T', 'T', 'O', 'B', 'E', 'O',
+    'R', 'T', 'O', 'B', 'E', 'O', 'R', 'N', 'O', 'T'
+  };
+
+  private static final byte[] TEXT_LZW = {
+    (byte) 0x80, 0x15, 0x09, (byte) 0xe4, 0x22, 0x29, 0x3c, (byte) 0xa4,
+    0x4e, 0x27, (byte) 0x95, 0x20, 0x50, 0x48, 0x34, 0x2e, 0x0b, 0x07,
+    (byte) 0x84, (byte) 0xc0, 0x40
+  };
+
+  private LZWCodec codec = new LZWCodec();
+
+  @DataProvider(name = "data")
+  public Object[][] createData() {
+    Random random = new Random(42);
+    List<Object[]> data = new ArrayList<Object[]>();
+    int[] sizes = {1, 2, 255, 4096, 65536, 300000};
+    for (int size : sizes) {
+      for (int kind=0; kind<3; kind++) {
+        data.add(new Object[] {size, kind, createData(random, size, kind)});
+      }
+    }
+    return data.toArray(new Object[0][]);
+  }
+
+  @Test
+  public void testKnownCompression() throws Exception {
+    assertTrue(Arrays.equals(TEXT_LZW, codec.compress(TEXT, null)));
+    assertTrue(Arrays.equals(TEXT, codec.decompress(TEXT_LZW,
+      getOptions(TEXT.length))));
+  }
+
+  @Test(dataProvider = "data")
+  public void testRoundTrip(int size, int kind, byte[] data)
+    throws Exception
+  {
+    byte[] compressed = codec.compress(data, null);
+    assertTrue(Arrays.equals(data,
+      codec.decompress(compressed, getOptions(size))));
+
+    // output that is too small is filled with the start of the data
+    int half = size / 2 + 1;
+    assertTrue(Arrays.equals(Arrays.copyOf(data, half),
+      codec.decompress(compressed, getOptions(half))));
+  }
+
+  @Test(dataProvider = "data")
+  public void testStream(int size, int kind, byte[] data) throws Exception {
+    byte[] compressed = codec.compress(data, null);
+    byte[] stream = new byte[compressed.length + 20];
+    System.arraycopy(compressed, 0, stream, 10, compressed.length);
+    RandomAccessInputStream in = new RandomAccessInputStream(stream);
+    try {
+      in.seek(10);
+      assertTrue(Arrays.equals(data, codec.decompress(in, getOptions(size))));
+      assertEquals(10 + compressed.length, in.getFilePointer());
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  @Test(dataProvider = "data")
+  public void testByteBuffer(int size, int kind, byte[] data)
+    throws Exception
+  {
+    byte[] compressed = codec.compress(data, null);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(compressed.length + 8);
+    buffer.put(compressed);
+    buffer.flip();
+
+    byte[] output = new byte[size + 4];
+    assertEquals(size, codec.decompress(buffer, output, 4, size, null));
+    assertEquals(compressed.length, buffer.position());
+    assertTrue(Arrays.equals(data, Arrays.copyOfRange(output, 4, size + 4)));
+  }
+
+  @Test(dataProvider = "data")
+  public void testHorizontalDifferencing(int size, int kind, byte[] data)
+    throws Exception
+  {
+    int channels = 3;
+    int width = 17;
+    int rowLength = width * channels;
+    byte[] differenced = data.clone();
+    for (int i=differenced.length-1; i>=0; i--) {
+      if (i % rowLength >= channels) {
+        differenced[i] -= data[i - channels];
+      }
+    }
+    byte[] compressed = codec.compress(differenced, null);
+
+    LZWCodecOptions options = new LZWCodecOptions(getOptions(size));
+    options.predictor = LZWCodecOptions.HORIZONTAL_DIFFERENCING;
+    options.width = width;
+    options.channels = channels;
+    options.bitsPerSample = 8;
+    assertTrue(Arrays.equals(data, codec.decompress(compressed, options)));
+  }
+
+  @Test
+  public void testConcurrentDecoding() throws Exception {
+    final Object[][] data = createData();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+      for (int thread=0; thread<4; thread++) {
+        results.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            LZWCodec c = new LZWCodec();
+            for (Object[] d : data) {
+              byte[] bytes = (byte[]) d[2];
+              byte[] compressed = c.compress(bytes, null);
+              byte[] decompressed =
+                c.decompress(compressed, getOptions(bytes.length));
+              if (!Arrays.equals(bytes, decompressed)) {
+                return false;
+              }
+            }
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  // -- Helper methods --
+
+  private static CodecOptions getOptions(int maxBytes) {
+    CodecOptions options = CodecOptions.getDefaultOptions();
+    options.maxBytes = maxBytes;
+    return options;
+  }
+
+  /**
+   * Creates random (incompressible), smoothly varying or repetitive data.
+   */
+  private static byte[] createData(Random random, int size, int kind) {
+    byte[] data = new byte[size];
+    if (kind == 0) {
+      random.nextBytes(data);
+    }
+    else if (kind == 1) {
+      int value = 0;
+      for (int i=0; i<size; i++) {
+        value += random.nextInt(5) - 2;
+        data[i] = (byte) value;
+      }
+    }
+    else {
+      for (int i=0; i<size; i++) {
+        data[i] = (byte) ((i / 7) % 3);
+      }
+    }
+    return data;
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+
+import static org.testng.Assert.assertEquals;
+
+import loci.common.services.ServiceFactory;
+import loci.formats.in.FakeReader;
+import loci.formats.meta.LazyMetadata;
+import loci.formats.meta.MetadataRetrieve;
+import loci.formats.meta.MetadataStore;
+import loci.formats.services.OMEXMLService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Long-running benchmark comparing the time taken to initialize large
+ * FakeReader plates with an eagerly and a lazily populated metadata store.
+ * Timings are logged rather than asserted.
+ */
+public class LazyMetadataLongRunningTest {
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(LazyMetadataLongRunningTest.class);
+
+  private static final int ITERATIONS = 3;
+
+  @DataProvider(name = "plates")
+  public Object[][] createPlates() {
+    return new Object[][] {
+      {"plate&plates=1&plateRows=8&plateCols=12&fields=4&sizeZ=5&sizeT=4.fake"},
+      {"plate&plates=2&plateRows=16&plateCols=24&fields=4.fake"},
+    };
+  }
+
+  @Test(dataProvider = "plates")
+  public void testInitialization(String id) throws Exception {
+    ServiceFactory sf = new ServiceFactory();
+    OMEXMLService service = sf.getInstance(OMEXMLService.class);
+
+    long eager = Long.MAX_VALUE;
+    long lazy = Long.MAX_VALUE;
+    long firstSeries = Long.MAX_VALUE;
+    for (int i=0; i<ITERATIONS; i++) {
+      FakeReader reader = new FakeReader();
+      reader.setMetadataStore(service.createOMEXMLMetadata());
+      long start = System.nanoTime();
+      reader.setId(id);
+      eager = Math.min(eager, System.nanoTime() - start);
+      reader.close();
+
+      MetadataStore store = LazyMetadata.wrap(service.createOMEXMLMetadata());
+      reader = new FakeReader();
+      reader.setMetadataStore(store);
+      start = System.nanoTime();
+      reader.setId(id);
+      lazy = Math.min(lazy, System.nanoTime() - start);
+      assertEquals(LazyMetadata.getHandler(store).getPendingCount(),
+        reader.getSeriesCount());
+
+      start = System.nanoTime();
+      ((MetadataRetrieve) store).getImageName(0);
+      firstSeries = Math.min(firstSeries, System.nanoTime() - start);
+      reader.close();
+    }
+
+    LOGGER.info("{}: eager setId {} ms, lazy setId {} ms, first series {} ms",
+      new Object[] {id, eager / 1000000, lazy / 1000000,
+      firstSeries / 1000000});
+  }
+
+}
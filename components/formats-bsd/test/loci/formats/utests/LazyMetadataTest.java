@@ -0,0 +1,200 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import loci.common.services.ServiceFactory;
+import loci.formats.in.FakeReader;
+import loci.formats.meta.LazyMetadata;
+import loci.formats.meta.MetadataRetrieve;
+import loci.formats.meta.MetadataStore;
+import loci.formats.services.OMEXMLService;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link LazyMetadata}.
+ */
+public class LazyMetadataTest {
+
+  private static final String SERIES_FILE =
+    "foo&series=4&sizeZ=2&sizeC=3&exposureTime=0.5&physicalSizeX=0.25" +
+    "&color=16711935.fake";
+
+  private static final String PLATE_FILE =
+    "plate&plates=2&plateRows=2&plateCols=3&fields=2.fake";
+
+  private FakeReader reader;
+  private OMEXMLService service;
+  private MetadataStore store;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    ServiceFactory sf = new ServiceFactory();
+    service = sf.getInstance(OMEXMLService.class);
+    store = LazyMetadata.wrap(service.createOMEXMLMetadata());
+    reader = new FakeReader();
+    reader.setMetadataStore(store);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    reader.close();
+  }
+
+  @Test
+  public void testWrap() throws Exception {
+    assertTrue(LazyMetadata.isLazy(store));
+    assertTrue(store instanceof MetadataRetrieve);
+    assertFalse(LazyMetadata.isLazy(service.createOMEXMLMetadata()));
+  }
+
+  @Test
+  public void testSeriesPending() throws Exception {
+    reader.setId(SERIES_FILE);
+    LazyMetadata lazy = LazyMetadata.getHandler(store);
+    assertNotNull(lazy);
+    assertEquals(lazy.getPendingCount(), reader.getSeriesCount());
+    for (int i=0; i<reader.getSeriesCount(); i++) {
+      assertTrue(lazy.isPending(i));
+    }
+  }
+
+  @Test
+  public void testPopulateOneSeries() throws Exception {
+    reader.setId(SERIES_FILE);
+    LazyMetadata lazy = LazyMetadata.getHandler(store);
+    MetadataRetrieve retrieve = (MetadataRetrieve) store;
+
+    assertEquals(retrieve.getImageName(2), "foo 3");
+    assertFalse(lazy.isPending(2));
+    assertTrue(lazy.isPending(3));
+    assertEquals(lazy.getPendingCount(), reader.getSeriesCount() - 3);
+    assertEquals(retrieve.getImageName(0), "foo");
+    assertEquals(retrieve.getPixelsSizeZ(2).getValue().intValue(), 2);
+    assertEquals(retrieve.getPlaneCount(2), reader.getImageCount());
+  }
+
+  @Test
+  public void testPopulateAll() throws Exception {
+    reader.setId(SERIES_FILE);
+    LazyMetadata lazy = LazyMetadata.getHandler(store);
+    assertEquals(((MetadataRetrieve) store).getImageCount(),
+      reader.getSeriesCount());
+    assertEquals(lazy.getPendingCount(), 0);
+  }
+
+  @Test
+  public void testPopulateAfterClose() throws Exception {
+    reader.setId(SERIES_FILE);
+    int seriesCount = reader.getSeriesCount();
+    int imageCount = reader.getImageCount();
+    reader.close();
+
+    MetadataRetrieve retrieve = (MetadataRetrieve) store;
+    for (int i=0; i<seriesCount; i++) {
+      assertEquals(retrieve.getPlaneCount(i), imageCount);
+      assertEquals(retrieve.getPlaneExposureTime(i, 0).value().doubleValue(),
+        0.5);
+      assertEquals(
+        retrieve.getPixelsPhysicalSizeX(i).value().doubleValue(), 0.25);
+    }
+  }
+
+  @Test
+  public void testNewFileClearsPending() throws Exception {
+    reader.setId(SERIES_FILE);
+    reader.close();
+    reader.setId("bar&series=2.fake");
+    LazyMetadata lazy = LazyMetadata.getHandler(store);
+    assertEquals(lazy.getPendingCount(), 2);
+    assertEquals(((MetadataRetrieve) store).getImageCount(), 2);
+    assertEquals(((MetadataRetrieve) store).getImageName(1), "bar 2");
+  }
+
+  @Test
+  public void testSeriesMatchesEager() throws Exception {
+    assertMatchesEager(SERIES_FILE);
+  }
+
+  @Test
+  public void testPlateMatchesEager() throws Exception {
+    assertMatchesEager(PLATE_FILE);
+  }
+
+  @Test
+  public void testUnwrap() throws Exception {
+    reader.setId(PLATE_FILE);
+    MetadataStore unwrapped = LazyMetadata.unwrap(store);
+    assertFalse(LazyMetadata.isLazy(unwrapped));
+    assertEquals(LazyMetadata.getHandler(store).getPendingCount(), 0);
+    assertTrue(service.validateOMEXML(
+      service.getOMEXML(service.asRetrieve(unwrapped))));
+  }
+
+  // -- Helper methods --
+
+  private void assertMatchesEager(String id) throws Exception {
+    FakeReader eagerReader = new FakeReader();
+    eagerReader.setMetadataStore(service.createOMEXMLMetadata());
+    eagerReader.setId(id);
+    MetadataRetrieve eager = (MetadataRetrieve) eagerReader.getMetadataStore();
+    eagerReader.close();
+
+    reader.setId(id);
+    MetadataRetrieve lazy = (MetadataRetrieve) store;
+
+    // touch the series out of order, so that a later series is populated
+    // before the earlier ones are accessed
+    int seriesCount = reader.getSeriesCount();
+    for (int n=0; n<seriesCount; n++) {
+      int i = (n + seriesCount / 2) % seriesCount;
+      assertEquals(lazy.getImageName(i), eager.getImageName(i));
+      assertEquals(lazy.getPixelsID(i), eager.getPixelsID(i));
+      assertEquals(lazy.getPixelsSizeC(i), eager.getPixelsSizeC(i));
+      assertEquals(lazy.getChannelCount(i), eager.getChannelCount(i));
+      assertEquals(lazy.getPlaneCount(i), eager.getPlaneCount(i));
+    }
+    assertEquals(lazy.getImageCount(), eager.getImageCount());
+    assertEquals(lazy.getPlateCount(), eager.getPlateCount());
+    assertEquals(service.getOMEXML(lazy), service.getOMEXML(eager));
+  }
+
+}
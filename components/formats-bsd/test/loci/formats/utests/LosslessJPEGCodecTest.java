@@ -0,0 +1,326 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import loci.common.DataTools;
+import loci.common.RandomAccessInputStream;
+import loci.formats.codec.CodecOptions;
+import loci.formats.codec.HuffmanCodec;
+import loci.formats.codec.HuffmanCodecOptions;
+import loci.formats.codec.LosslessJPEGCodec;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link LosslessJPEGCodec} and {@link HuffmanCodec}.
+ */
+public class LosslessJPEGCodecTest {
+
+  /**
+   * Number of Huffman codes of each length from 1 to 16 bits.  Codes longer
+   * than the decoder's lookup tables are included so that both decoding
+   * paths are exercised.
+   */
+  private static final short[] CODE_COUNTS =
+    {0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 2, 0};
+
+  private static final int WIDTH = 37;
+  private static final int HEIGHT = 23;
+
+  @DataProvider(name = "images")
+  public Object[][] createImages() {
+    List<Object[]> images = new ArrayList<Object[]>();
+    for (int bits : new int[] {8, 12, 16}) {
+      for (int predictor=1; predictor<=7; predictor++) {
+        for (int channels : new int[] {1, 3}) {
+          images.add(new Object[] {bits, predictor, channels});
+        }
+      }
+    }
+    return images.toArray(new Object[0][]);
+  }
+
+  @Test(dataProvider = "images")
+  public void testDecompress(int bits, int predictor, int channels)
+    throws Exception
+  {
+    int bpp = bits > 8 ? 2 : 1;
+    int[][] samples = createImage(new Random(bits * 8 + predictor),
+      WIDTH, HEIGHT, channels, bits);
+    byte[] jpeg = compress(samples, WIDTH, HEIGHT, bits, predictor);
+
+    CodecOptions options = new CodecOptions();
+    byte[] planar = new LosslessJPEGCodec().decompress(jpeg, options);
+    byte[] expected = new byte[WIDTH * HEIGHT * channels * bpp];
+    for (int c=0; c<channels; c++) {
+      for (int i=0; i<samples[c].length; i++) {
+        DataTools.unpackBytes(samples[c][i], expected,
+          (c * samples[c].length + i) * bpp, bpp, false);
+      }
+    }
+    assertTrue(Arrays.equals(expected, planar));
+
+    options.interleaved = true;
+    options.littleEndian = true;
+    byte[] interleaved = new LosslessJPEGCodec().decompress(jpeg, options);
+    for (int c=0; c<channels; c++) {
+      for (int i=0; i<samples[c].length; i++) {
+        DataTools.unpackBytes(samples[c][i], expected,
+          (i * channels + c) * bpp, bpp, true);
+      }
+    }
+    assertTrue(Arrays.equals(expected, interleaved));
+  }
+
+  @Test
+  public void testHuffmanDecompress() throws Exception {
+    Random random = new Random(7);
+    int[] diffs = new int[1000];
+    BitOutput out = new BitOutput(false);
+    for (int i=0; i<diffs.length; i++) {
+      diffs[i] = random.nextInt(4096) - 2048;
+      writeDifference(out, getCodes(), diffs[i]);
+    }
+
+    HuffmanCodecOptions options = new HuffmanCodecOptions();
+    options.table = getTable();
+    options.bitsPerSample = 16;
+    options.maxBytes = diffs.length * 2;
+    byte[] data = new HuffmanCodec().decompress(out.toByteArray(), options);
+    for (int i=0; i<diffs.length; i++) {
+      assertTrue((short) diffs[i] == DataTools.bytesToShort(data, i * 2,
+        false));
+    }
+
+    // equal tables in different arrays decode identically
+    RandomAccessInputStream in =
+      new RandomAccessInputStream(out.toByteArray());
+    try {
+      HuffmanCodec codec = new HuffmanCodec();
+      for (int i=0; i<diffs.length; i++) {
+        options.table = getTable();
+        assertTrue(diffs[i] == codec.getSample(in, options));
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  // -- Helper methods --
+
+  /** Creates smooth, noisy samples with the given number of bits. */
+  static int[][] createImage(Random random, int width, int height,
+    int channels, int bits)
+  {
+    int max = (1 << bits) - 1;
+    int[][] samples = new int[channels][width * height];
+    for (int c=0; c<channels; c++) {
+      for (int y=0; y<height; y++) {
+        for (int x=0; x<width; x++) {
+          double v = (Math.sin(x / 7.0 + c) + Math.cos(y / 5.0)) / 4 + 0.5;
+          int s = (int) (v * max) + random.nextInt(33) - 16;
+          samples[c][y * width + x] = Math.max(0, Math.min(max, s));
+        }
+      }
+    }
+    return samples;
+  }
+
+  /**
+   * Encodes samples as a lossless JPEG with one Huffman table, using the
+   * given predictor everywhere except the first row and column.
+   */
+  static byte[] compress(int[][] samples, int width, int height, int bits,
+    int predictor)
+  {
+    int channels = samples.length;
+    int[] codes = getCodes();
+    short[] table = getTable();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeShort(out, 0xffd8);
+
+    writeShort(out, 0xffc3);
+    writeShort(out, 8 + 3 * channels);
+    out.write(bits);
+    writeShort(out, height);
+    writeShort(out, width);
+    out.write(channels);
+    for (int c=0; c<channels; c++) {
+      out.write(c + 1);
+      out.write(0x11);
+      out.write(0);
+    }
+
+    writeShort(out, 0xffc4);
+    writeShort(out, 3 + table.length);
+    out.write(0);
+    for (short s : table) {
+      out.write(s);
+    }
+
+    writeShort(out, 0xffda);
+    writeShort(out, 6 + 2 * channels);
+    out.write(channels);
+    for (int c=0; c<channels; c++) {
+      out.write(c + 1);
+      out.write(0);
+    }
+    out.write(predictor);
+    out.write(0);
+    out.write(0);
+
+    BitOutput scan = new BitOutput(true);
+    for (int i=0; i<width * height; i++) {
+      int x = i % width;
+      int y = i / width;
+      for (int c=0; c<channels; c++) {
+        int[] s = samples[c];
+        int pred;
+        if (i == 0) pred = 1 << (bits - 1);
+        else if (y == 0) pred = s[i - 1];
+        else if (x == 0) pred = s[i - width];
+        else {
+          int a = s[i - 1];
+          int b = s[i - width];
+          int d = s[i - width - 1];
+          switch (predictor) {
+            case 1: pred = a; break;
+            case 2: pred = b; break;
+            case 3: pred = d; break;
+            case 4: pred = a + b + d; break;
+            case 5: pred = a + ((b - d) / 2); break;
+            case 6: pred = b + ((a - d) / 2); break;
+            default: pred = (a + b) / 2; break;
+          }
+        }
+        int diff = ((s[i] - pred + 32768) & 0xffff) - 32768;
+        writeDifference(scan, codes, diff);
+      }
+    }
+    byte[] data = scan.toByteArray();
+    out.write(data, 0, data.length);
+    writeShort(out, 0xffd9);
+    return out.toByteArray();
+  }
+
+  /** Returns the Huffman table in the form used by {@link HuffmanCodec}. */
+  static short[] getTable() {
+    short[] table = new short[CODE_COUNTS.length + 17];
+    System.arraycopy(CODE_COUNTS, 0, table, 0, CODE_COUNTS.length);
+    for (int i=0; i<17; i++) {
+      table[CODE_COUNTS.length + i] = (short) i;
+    }
+    return table;
+  }
+
+  /**
+   * Returns the canonical code of each difference category, with the code
+   * length stored in the upper 16 bits.
+   */
+  private static int[] getCodes() {
+    int[] codes = new int[17];
+    int code = 0;
+    int symbol = 0;
+    for (int length=1; length<=CODE_COUNTS.length; length++) {
+      for (int i=0; i<CODE_COUNTS[length - 1]; i++) {
+        codes[symbol++] = (length << 16) | code++;
+      }
+      code <<= 1;
+    }
+    return codes;
+  }
+
+  private static void writeDifference(BitOutput out, int[] codes, int diff) {
+    if (diff == -32768) {
+      out.write(codes[16] & 0xffff, codes[16] >> 16);
+      return;
+    }
+    int category = diff == 0 ? 0 :
+      32 - Integer.numberOfLeadingZeros(Math.abs(diff));
+    out.write(codes[category] & 0xffff, codes[category] >> 16);
+    out.write(diff < 0 ? diff - 1 : diff, category);
+  }
+
+  private static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write(value >> 8);
+    out.write(value);
+  }
+
+  /** Writes bits most significant first, optionally stuffing 0xff bytes. */
+  private static class BitOutput {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final boolean stuff;
+    private int current;
+    private int count;
+
+    public BitOutput(boolean stuff) {
+      this.stuff = stuff;
+    }
+
+    public void write(int value, int bits) {
+      for (int i=bits-1; i>=0; i--) {
+        current = (current << 1) | ((value >> i) & 1);
+        if (++count == 8) {
+          flush();
+        }
+      }
+    }
+
+    public byte[] toByteArray() {
+      while (count != 0) {
+        write(1, 1);
+      }
+      return out.toByteArray();
+    }
+
+    private void flush() {
+      out.write(current);
+      if (stuff && current == 0xff) {
+        out.write(0);
+      }
+      current = 0;
+      count = 0;
+    }
+  }
+
+}
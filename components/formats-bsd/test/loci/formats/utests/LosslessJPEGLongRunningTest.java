@@ -0,0 +1,182 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import loci.common.DataTools;
+import loci.common.RandomAccessInputStream;
+import loci.formats.codec.CodecOptions;
+import loci.formats.codec.HuffmanCodec;
+import loci.formats.codec.HuffmanCodecOptions;
+import loci.formats.codec.LosslessJPEGCodec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Long-running benchmark comparing {@link LosslessJPEGCodec} with
+ * per-sample decoding through {@link HuffmanCodec#getSample}, on 16-bit
+ * slices that resemble CT images.  Timings are logged rather than asserted.
+ */
+public class LosslessJPEGLongRunningTest {
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(LosslessJPEGLongRunningTest.class);
+
+  private static final int ITERATIONS = 5;
+
+  private static final int SLICES = 16;
+
+  @DataProvider(name = "slices")
+  public Object[][] createSlices() {
+    return new Object[][] {{512, 1}, {512, 6}, {1024, 1}};
+  }
+
+  @Test(dataProvider = "slices")
+  public void testDecompress(int size, int predictor) throws Exception {
+    byte[][] slices = new byte[SLICES][];
+    for (int i=0; i<SLICES; i++) {
+      slices[i] = LosslessJPEGCodecTest.compress(
+        new int[][] {createSlice(new Random(i), size)}, size, size, 16,
+        predictor);
+    }
+
+    CodecOptions options = new CodecOptions();
+    long perSample = Long.MAX_VALUE;
+    long table = Long.MAX_VALUE;
+    for (int n=0; n<ITERATIONS; n++) {
+      byte[][] expected = new byte[SLICES][];
+      long start = System.nanoTime();
+      for (int i=0; i<SLICES; i++) {
+        expected[i] = decompressPerSample(slices[i], size, predictor);
+      }
+      perSample = Math.min(perSample, System.nanoTime() - start);
+
+      byte[][] decoded = new byte[SLICES][];
+      start = System.nanoTime();
+      for (int i=0; i<SLICES; i++) {
+        decoded[i] = new LosslessJPEGCodec().decompress(slices[i], options);
+      }
+      table = Math.min(table, System.nanoTime() - start);
+
+      for (int i=0; i<SLICES; i++) {
+        assertEquals(decoded[i], expected[i]);
+      }
+    }
+
+    LOGGER.info("{} {}x{} slices, predictor {}: per-sample {} ms, " +
+      "table-driven {} ms", new Object[] {SLICES, size, size, predictor,
+      perSample / 1000000, table / 1000000});
+  }
+
+  // -- Helper methods --
+
+  /** Creates a slice with a bright disc on a dark, noisy background. */
+  private static int[] createSlice(Random random, int size) {
+    int[] samples = new int[size * size];
+    double radius = size * 0.4;
+    for (int y=0; y<size; y++) {
+      for (int x=0; x<size; x++) {
+        double dx = x - size / 2.0;
+        double dy = y - size / 2.0;
+        double r = Math.sqrt(dx * dx + dy * dy);
+        int v = r < radius ? 1024 + (int) (200 * Math.cos(r / 9)) : 24;
+        v += (int) (random.nextGaussian() * 20);
+        samples[y * size + x] = Math.max(0, v);
+      }
+    }
+    return samples;
+  }
+
+  /**
+   * Decodes a single-component slice written by
+   * {@link LosslessJPEGCodecTest#compress} with predictor 1 or 6, one
+   * sample at a time.
+   */
+  private static byte[] decompressPerSample(byte[] jpeg, int size,
+    int predictor)
+    throws Exception
+  {
+    // skip SOI, SOF3, DHT and SOS, and scrub out byte stuffing
+    int headerLength = 2 + 13 + 4 + LosslessJPEGCodecTest.getTable().length +
+      1 + 10;
+    byte[] data = new byte[jpeg.length];
+    int length = 0;
+    for (int i=headerLength; i<jpeg.length; i++) {
+      if (jpeg[i] == (byte) 0xff) {
+        if (jpeg[i + 1] == 0) data[length++] = jpeg[i];
+        i++;
+      }
+      else data[length++] = jpeg[i];
+    }
+
+    HuffmanCodec huffman = new HuffmanCodec();
+    HuffmanCodecOptions options = new HuffmanCodecOptions();
+    options.table = LosslessJPEGCodecTest.getTable();
+    byte[] buf = new byte[size * size * 2];
+    RandomAccessInputStream bb =
+      new RandomAccessInputStream(Arrays.copyOf(data, length));
+    try {
+      for (int s=0; s<size * size; s++) {
+        int v = huffman.getSample(bb, options);
+        if (s == 0) {
+          v += 1 << 15;
+        }
+        else {
+          int a = s % size == 0 ? 0 :
+            DataTools.bytesToInt(buf, (s - 1) * 2, 2, false);
+          int b = s < size ? 0 :
+            DataTools.bytesToInt(buf, (s - size) * 2, 2, false);
+          int c = s < size + 1 ? 0 :
+            DataTools.bytesToInt(buf, (s - size - 1) * 2, 2, false);
+          if (s < size) v += a;
+          else if (s % size == 0) v += b;
+          else if (predictor == 1) v += a;
+          else v += b + ((a - c) / 2);
+        }
+        DataTools.unpackBytes(v, buf, s * 2, 2, false);
+      }
+    }
+    finally {
+      bb.close();
+    }
+    return buf;
+  }
+
+}
@@ -37,6 +37,7 @@ import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertTrue;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.UUID;
 
 import loci.formats.FormatTools;
@@ -352,6 +353,24 @@ public class MemoizerTest {
     assertFalse(memoizer.isSavedToMemo());
   }
 
+  @Test
+  public void testThumbnail() throws Exception {
+    memoizer = new Memoizer(reader, 0);
+    memoizer.setId(id);
+    byte[] thumb = memoizer.openThumbBytes(0);
+    assertTrue(Arrays.equals(thumb, memoizer.openThumbBytes(0)));
+    memoizer.close();
+
+    File thumbFile = new File(idDir, "." + TEST_FILE + ".0-0-0.bfthumb");
+    assertTrue(thumbFile.exists());
+
+    // The stored thumbnail is used once the reader is loaded from the memo
+    memoizer.setId(id);
+    assertTrue(memoizer.isLoadedFromMemo());
+    assertTrue(Arrays.equals(thumb, memoizer.openThumbBytes(0)));
+    memoizer.close();
+  }
+
   public static void main(String[] args) throws Exception {
     MemoizerTest t = new MemoizerTest();
     t.setUp();
@@ -0,0 +1,242 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import loci.formats.FormatTools;
+import loci.formats.cache.BudgetStrategy;
+import loci.formats.cache.CacheException;
+import loci.formats.cache.ICacheSource;
+import loci.formats.cache.PrefetchCache;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link PrefetchCache} and {@link BudgetStrategy}.
+ */
+public class PrefetchCacheTest {
+
+  private static final int[] LENGTHS = {1, 10, 20};
+
+  private static final int PLANE_SIZE = 1024;
+
+  private PrefetchCache cache;
+
+  @AfterMethod
+  public void tearDown() {
+    if (cache != null) cache.dispose();
+  }
+
+  @Test
+  public void testBudgetLoadList() throws Exception {
+    BudgetStrategy strategy =
+      new BudgetStrategy(LENGTHS, PLANE_SIZE, 7 * PLANE_SIZE + 100);
+    assertEquals(7, strategy.getMaxObjects());
+    int[] pos = {0, 4, 9};
+    int[][] loadList = strategy.getLoadList(pos);
+    assertEquals(7, loadList.length);
+    assertEquals(FormatTools.positionToRaster(LENGTHS, pos),
+      FormatTools.positionToRaster(LENGTHS, loadList[0]));
+    for (int[] p : loadList) {
+      assertTrue(Math.abs(p[1] - pos[1]) + Math.abs(p[2] - pos[2]) <= 2);
+    }
+
+    // the current position is always cached
+    strategy.setBudget(0);
+    assertEquals(1, strategy.getLoadList(pos).length);
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    TestSource source = new TestSource(null);
+    BudgetStrategy strategy =
+      new BudgetStrategy(LENGTHS, PLANE_SIZE, 12 * PLANE_SIZE);
+    cache = new PrefetchCache(strategy, source, 3);
+    int[] pos = {0, 5, 10};
+    cache.setCurrentPos(pos);
+    waitForPrefetch();
+
+    int cached = 0;
+    for (int i=0; i<source.getObjectCount(); i++) {
+      if (cache.isInCache(i)) cached++;
+    }
+    assertEquals(12, cached);
+    for (int[] p : strategy.getLoadList(pos)) {
+      byte[] plane = (byte[]) cache.getObject(p);
+      assertNotNull(plane);
+      assertEquals((byte) FormatTools.positionToRaster(LENGTHS, p), plane[0]);
+    }
+  }
+
+  @Test
+  public void testNonBlockingHit() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    TestSource source = new TestSource(release);
+    BudgetStrategy strategy =
+      new BudgetStrategy(LENGTHS, PLANE_SIZE, 4 * PLANE_SIZE);
+    cache = new PrefetchCache(strategy, source, 2);
+    int[] pos = {0, 0, 3};
+
+    // the loading threads are blocked, so nothing is available yet
+    cache.setCurrentPos(pos);
+    assertNull(cache.getObject(pos));
+    assertTrue(cache.getPendingCount() > 0);
+
+    release.countDown();
+    byte[] plane = (byte[]) cache.loadObject(pos);
+    assertEquals((byte) FormatTools.positionToRaster(LENGTHS, pos), plane[0]);
+    waitForPrefetch();
+    assertEquals(plane, cache.getObject(pos));
+  }
+
+  @Test
+  public void testCancelStalePrefetch() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    TestSource source = new TestSource(release);
+    BudgetStrategy strategy =
+      new BudgetStrategy(LENGTHS, PLANE_SIZE, 20 * PLANE_SIZE);
+    cache = new PrefetchCache(strategy, source, 1);
+
+    int[] start = {0, 0, 0};
+    cache.setCurrentPos(start);
+    int[][] oldList = strategy.getLoadList(start);
+    int[] end = {0, 9, 19};
+    cache.setCurrentPos(end);
+    int[][] newList = strategy.getLoadList(end);
+    release.countDown();
+    waitForPrefetch();
+
+    // apart from the load that was already running, only objects on the
+    // new load list are loaded
+    List<Integer> wanted = new ArrayList<Integer>();
+    for (int[] p : newList) {
+      wanted.add(FormatTools.positionToRaster(LENGTHS, p));
+    }
+    int stale = 0;
+    for (int index : source.getRequests()) {
+      if (!wanted.contains(index)) stale++;
+    }
+    assertTrue("stale loads: " + stale, stale <= 1);
+    for (int[] p : oldList) {
+      int index = FormatTools.positionToRaster(LENGTHS, p);
+      assertEquals(wanted.contains(index), cache.isInCache(index));
+    }
+    for (int[] p : newList) {
+      assertNotNull(cache.getObject(p));
+    }
+  }
+
+  @Test
+  public void testDropOutsideBudget() throws Exception {
+    TestSource source = new TestSource(null);
+    BudgetStrategy strategy =
+      new BudgetStrategy(LENGTHS, PLANE_SIZE, 3 * PLANE_SIZE);
+    cache = new PrefetchCache(strategy, source, 2);
+    cache.setCurrentPos(new int[] {0, 0, 0});
+    waitForPrefetch();
+    cache.setCurrentPos(new int[] {0, 9, 19});
+    waitForPrefetch();
+    assertFalse(cache.isInCache(new int[] {0, 0, 0}));
+    int cached = 0;
+    for (int i=0; i<source.getObjectCount(); i++) {
+      if (cache.isInCache(i)) cached++;
+    }
+    assertEquals(3, cached);
+  }
+
+  // -- Helper methods --
+
+  private void waitForPrefetch() throws InterruptedException {
+    long end = System.currentTimeMillis() + 10000;
+    while (cache.getPendingCount() > 0 && System.currentTimeMillis() < end) {
+      Thread.sleep(5);
+    }
+    assertEquals(0, cache.getPendingCount());
+  }
+
+  // -- Helper classes --
+
+  /**
+   * Returns arrays whose first byte is the object index; optionally waits
+   * for a latch before returning anything.
+   */
+  private static class TestSource implements ICacheSource {
+    private final CountDownLatch release;
+    private final List<Integer> requests =
+      Collections.synchronizedList(new ArrayList<Integer>());
+
+    TestSource(CountDownLatch release) {
+      this.release = release;
+    }
+
+    List<Integer> getRequests() {
+      synchronized (requests) {
+        return new ArrayList<Integer>(requests);
+      }
+    }
+
+    @Override
+    public int getObjectCount() {
+      return FormatTools.getRasterLength(LENGTHS);
+    }
+
+    @Override
+    public Object getObject(int index) throws CacheException {
+      requests.add(index);
+      try {
+        if (release != null && !release.await(10, TimeUnit.SECONDS)) {
+          throw new CacheException("timed out");
+        }
+      }
+      catch (InterruptedException e) {
+        throw new CacheException(e);
+      }
+      byte[] plane = new byte[PLANE_SIZE];
+      plane[0] = (byte) index;
+      return plane;
+    }
+  }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import loci.common.DataTools;
+import loci.formats.FormatTools;
+import loci.formats.ImageTools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Long-running benchmark comparing the per-sample conversion methods in
+ * {@link DataTools} with the bulk conversion and byte swapping methods,
+ * for each pixel type.  Results are checked for equality; timings are
+ * logged rather than asserted.
+ */
+public class SampleConversionLongRunningTest {
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(SampleConversionLongRunningTest.class);
+
+  private static final int ITERATIONS = 5;
+
+  /** Number of samples in each converted plane. */
+  private static final int SAMPLES = 2048 * 2048;
+
+  @DataProvider(name = "pixelTypes")
+  public Object[][] createPixelTypes() {
+    return new Object[][] {
+      {FormatTools.INT8}, {FormatTools.UINT8},
+      {FormatTools.INT16}, {FormatTools.UINT16},
+      {FormatTools.INT32}, {FormatTools.UINT32},
+      {FormatTools.FLOAT}, {FormatTools.DOUBLE},
+    };
+  }
+
+  @Test(dataProvider = "pixelTypes")
+  public void testConversion(int pixelType) {
+    int bpp = FormatTools.getBytesPerPixel(pixelType);
+    boolean fp = FormatTools.isFloatingPoint(pixelType);
+    byte[] plane = new byte[SAMPLES * bpp];
+    new Random(pixelType).nextBytes(plane);
+    if (fp) {
+      // replace NaNs, whose bit patterns need not survive a round trip
+      for (int i=0; i<plane.length; i+=bpp) {
+        plane[i + bpp - 1] &= 0x3f;
+      }
+    }
+
+    long scalarUnpack = Long.MAX_VALUE;
+    long bulkUnpack = Long.MAX_VALUE;
+    long scalarPack = Long.MAX_VALUE;
+    long bulkPack = Long.MAX_VALUE;
+    long scalarSwap = Long.MAX_VALUE;
+    long bulkSwap = Long.MAX_VALUE;
+    for (int i=0; i<ITERATIONS; i++) {
+      long start = System.nanoTime();
+      Object expected = unpackScalar(plane, bpp, fp);
+      scalarUnpack = Math.min(scalarUnpack, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      Object samples = DataTools.makeDataArray(plane, bpp, fp, true);
+      bulkUnpack = Math.min(bulkUnpack, System.nanoTime() - start);
+      assertEquals(samples, expected);
+
+      start = System.nanoTime();
+      byte[] packed = packScalar(samples, bpp);
+      scalarPack = Math.min(scalarPack, System.nanoTime() - start);
+      assertEquals(packed, plane);
+
+      packed = new byte[plane.length];
+      start = System.nanoTime();
+      DataTools.packSamples(samples, 0, packed, 0, SAMPLES, true);
+      bulkPack = Math.min(bulkPack, System.nanoTime() - start);
+      assertEquals(packed, plane);
+
+      start = System.nanoTime();
+      byte[] swapped = swapScalar(plane, bpp);
+      scalarSwap = Math.min(scalarSwap, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      DataTools.swapBytes(packed, 0, packed.length, bpp);
+      bulkSwap = Math.min(bulkSwap, System.nanoTime() - start);
+      assertEquals(packed, swapped);
+    }
+
+    LOGGER.info("{}: unpack {}/{} ms, pack {}/{} ms, swap {}/{} ms " +
+      "(per-sample/bulk)", new Object[] {
+      FormatTools.getPixelTypeString(pixelType),
+      scalarUnpack / 1000000, bulkUnpack / 1000000,
+      scalarPack / 1000000, bulkPack / 1000000,
+      scalarSwap / 1000000, bulkSwap / 1000000});
+  }
+
+  @Test(dataProvider = "pixelTypes")
+  public void testAutoscale(int pixelType) {
+    int bpp = FormatTools.getBytesPerPixel(pixelType);
+    if (FormatTools.isFloatingPoint(pixelType) || bpp == 1) {
+      return;
+    }
+    byte[] plane = new byte[SAMPLES * bpp];
+    new Random(pixelType).nextBytes(plane);
+    int min = bpp == 2 ? 1000 : -100000;
+    int max = bpp == 2 ? 50000 : 100000;
+
+    long scalar = Long.MAX_VALUE;
+    long bulk = Long.MAX_VALUE;
+    for (int i=0; i<ITERATIONS; i++) {
+      long start = System.nanoTime();
+      byte[] expected = autoscaleScalar(plane, bpp, min, max);
+      scalar = Math.min(scalar, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      byte[] scaled = ImageTools.autoscale(plane, min, max, bpp, true);
+      bulk = Math.min(bulk, System.nanoTime() - start);
+      assertEquals(scaled, expected);
+    }
+
+    LOGGER.info("{}: autoscale {}/{} ms (per-sample/bulk)", new Object[] {
+      FormatTools.getPixelTypeString(pixelType),
+      scalar / 1000000, bulk / 1000000});
+  }
+
+  // -- Helper methods --
+
+  private static Object unpackScalar(byte[] b, int bpp, boolean fp) {
+    int count = b.length / bpp;
+    if (bpp == 1) {
+      return Arrays.copyOf(b, b.length);
+    }
+    else if (bpp == 2) {
+      short[] s = new short[count];
+      for (int i=0; i<count; i++) {
+        s[i] = DataTools.bytesToShort(b, i * 2, true);
+      }
+      return s;
+    }
+    else if (bpp == 4 && fp) {
+      float[] f = new float[count];
+      for (int i=0; i<count; i++) {
+        f[i] = DataTools.bytesToFloat(b, i * 4, true);
+      }
+      return f;
+    }
+    else if (bpp == 4) {
+      int[] in = new int[count];
+      for (int i=0; i<count; i++) {
+        in[i] = DataTools.bytesToInt(b, i * 4, true);
+      }
+      return in;
+    }
+    double[] d = new double[count];
+    for (int i=0; i<count; i++) {
+      d[i] = DataTools.bytesToDouble(b, i * 8, true);
+    }
+    return d;
+  }
+
+  private static byte[] packScalar(Object samples, int bpp) {
+    if (samples instanceof byte[]) {
+      return Arrays.copyOf((byte[]) samples, ((byte[]) samples).length);
+    }
+    byte[] b = new byte[SAMPLES * bpp];
+    for (int i=0; i<SAMPLES; i++) {
+      long v;
+      if (samples instanceof short[]) v = ((short[]) samples)[i];
+      else if (samples instanceof int[]) v = ((int[]) samples)[i];
+      else if (samples instanceof float[]) {
+        v = Float.floatToIntBits(((float[]) samples)[i]);
+      }
+      else v = Double.doubleToLongBits(((double[]) samples)[i]);
+      DataTools.unpackBytes(v, b, i * bpp, bpp, true);
+    }
+    return b;
+  }
+
+  private static byte[] swapScalar(byte[] b, int bpp) {
+    byte[] swapped = new byte[b.length];
+    for (int i=0; i<b.length; i+=bpp) {
+      long v = DataTools.bytesToLong(b, i, bpp, true);
+      DataTools.unpackBytes(v, swapped, i, bpp, false);
+    }
+    return swapped;
+  }
+
+  private static byte[] autoscaleScalar(byte[] b, int bpp, int min, int max)
+  {
+    byte[] out = new byte[b.length / bpp];
+    for (int i=0; i<b.length; i+=bpp) {
+      int s = DataTools.bytesToInt(b, i, bpp, true);
+      if (s >= max) s = 255;
+      else if (s <= min) s = 0;
+      else {
+        float diff = max - min;
+        float dist = (s - min) / diff;
+        s = (int) (dist * 255);
+      }
+      out[i / bpp] = (byte) s;
+    }
+    return out;
+  }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.FormatException;
+import loci.formats.codec.SeekableInflater;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link SeekableInflater}.
+ */
+public class SeekableInflaterTest {
+
+  private static final int SIZE = 1500000;
+
+  private static final int HEADER = 100;
+
+  @DataProvider(name = "levels")
+  public Object[][] createLevels() {
+    return new Object[][] {
+      {Deflater.NO_COMPRESSION}, {Deflater.BEST_SPEED},
+      {Deflater.DEFAULT_COMPRESSION}, {Deflater.BEST_COMPRESSION}
+    };
+  }
+
+  @Test(dataProvider = "levels")
+  public void testSequentialRead(int level) throws Exception {
+    byte[] data = createData(SIZE);
+    RandomAccessInputStream in = createStream(data, level);
+    SeekableInflater inflater = createInflater(in, 65536);
+    byte[] buf = new byte[10000];
+    for (int pos=0; pos<SIZE; pos+=buf.length) {
+      int len = Math.min(buf.length, SIZE - pos);
+      inflater.read(in, pos, buf, 0, len);
+      assertTrue(Arrays.equals(Arrays.copyOfRange(data, pos, pos + len),
+        Arrays.copyOf(buf, len)));
+    }
+    assertTrue(inflater.getCheckpointCount() > 10);
+  }
+
+  @Test(dataProvider = "levels")
+  public void testRandomRead(int level) throws Exception {
+    byte[] data = createData(SIZE);
+    RandomAccessInputStream in = createStream(data, level);
+    SeekableInflater inflater = createInflater(in, 65536);
+    Random random = new Random(level + 1);
+    for (int i=0; i<50; i++) {
+      int pos = random.nextInt(SIZE);
+      int len = random.nextInt(Math.min(70000, SIZE - pos)) + 1;
+      byte[] buf = new byte[len + 2];
+      inflater.read(in, pos, buf, 1, len);
+      assertTrue(Arrays.equals(Arrays.copyOfRange(data, pos, pos + len),
+        Arrays.copyOfRange(buf, 1, len + 1)));
+    }
+  }
+
+  @Test
+  public void testIndex() throws Exception {
+    byte[] data = createData(SIZE);
+    RandomAccessInputStream in = createStream(data, Deflater.DEFAULT_COMPRESSION);
+    SeekableInflater inflater = createInflater(in, 100000);
+    assertEquals(1, inflater.getCheckpointCount());
+    inflater.index(in);
+    int count = inflater.getCheckpointCount();
+    assertTrue(count >= SIZE / 200000);
+
+    // reading after indexing adds no checkpoints
+    byte[] buf = new byte[1000];
+    inflater.read(in, SIZE - buf.length, buf, 0, buf.length);
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, SIZE - buf.length, SIZE),
+      buf));
+    inflater.read(in, 0, buf, 0, buf.length);
+    assertTrue(Arrays.equals(Arrays.copyOf(data, buf.length), buf));
+    assertEquals(count, inflater.getCheckpointCount());
+  }
+
+  @Test
+  public void testConcurrentRead() throws Exception {
+    final byte[] data = createData(SIZE);
+    final RandomAccessInputStream in =
+      createStream(data, Deflater.DEFAULT_COMPRESSION);
+    final SeekableInflater inflater = createInflater(in, 65536);
+    inflater.index(in);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+    for (int t=0; t<16; t++) {
+      final int pos = (SIZE / 16) * t;
+      results.add(executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          byte[] buf = new byte[SIZE / 16];
+          inflater.read(in, pos, buf, 0, buf.length);
+          return Arrays.equals(
+            Arrays.copyOfRange(data, pos, pos + buf.length), buf);
+        }
+      }));
+    }
+    for (Future<Boolean> result : results) {
+      assertTrue(result.get());
+    }
+    executor.shutdown();
+  }
+
+  @Test(expectedExceptions = FormatException.class)
+  public void testReadPastEnd() throws Exception {
+    byte[] data = createData(1000);
+    RandomAccessInputStream in = createStream(data, Deflater.BEST_SPEED);
+    SeekableInflater inflater = createInflater(in, 65536);
+    inflater.read(in, 900, new byte[200], 0, 200);
+  }
+
+  @Test(expectedExceptions = FormatException.class)
+  public void testCorruptedStream() throws Exception {
+    byte[] data = new byte[HEADER + 100];
+    Arrays.fill(data, (byte) 0x55);
+    RandomAccessInputStream in = new RandomAccessInputStream(data);
+    SeekableInflater inflater = new SeekableInflater(HEADER, 100);
+    inflater.read(in, 0, new byte[10], 0, 10);
+  }
+
+  // -- Helper methods --
+
+  /** Creates partly compressible data. */
+  private static byte[] createData(int size) {
+    Random random = new Random(size);
+    byte[] data = new byte[size];
+    int i = 0;
+    while (i < size) {
+      int run = Math.min(size - i, random.nextInt(200) + 1);
+      if (random.nextBoolean() && i > 1000) {
+        // repeat earlier data
+        int from = i - random.nextInt(Math.min(i, 40000)) - 1;
+        for (int j=0; j<run; j++) {
+          data[i + j] = data[from + j];
+        }
+      }
+      else {
+        for (int j=0; j<run; j++) {
+          data[i + j] = (byte) random.nextInt(random.nextBoolean() ? 16 : 256);
+        }
+      }
+      i += run;
+    }
+    return data;
+  }
+
+  /** Compresses data into a stream, preceded by HEADER bytes of padding. */
+  private static RandomAccessInputStream createStream(byte[] data, int level)
+    throws Exception
+  {
+    Deflater deflater = new Deflater(level);
+    deflater.setInput(data);
+    deflater.finish();
+    byte[] compressed = new byte[data.length * 2 + 1024];
+    int length = HEADER;
+    while (!deflater.finished()) {
+      length += deflater.deflate(compressed, length,
+        compressed.length - length);
+    }
+    deflater.end();
+    return new RandomAccessInputStream(Arrays.copyOf(compressed, length));
+  }
+
+  private static SeekableInflater createInflater(RandomAccessInputStream in,
+    long spacing)
+    throws Exception
+  {
+    return new SeekableInflater(HEADER, in.length() - HEADER, spacing);
+  }
+
+}
@@ -0,0 +1,337 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import loci.common.Constants;
+import loci.common.DataTools;
+import loci.formats.FormatTools;
+import loci.formats.in.TextReader;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link TextReader}, using synthetic tables whose values
+ * are checked against {@link Double#parseDouble(String)}.
+ */
+public class TextReaderTest {
+
+  private static final int SIZE_X = 40;
+  private static final int SIZE_Y = 30;
+
+  /** Labels of the columns, in file order. */
+  private static final String[] HEADER = {"red", "y", "x", "green"};
+
+  /** Points that have no row in the table. */
+  private static final int[][] MISSING = {{4, 2}, {0, 29}, {39, 0}};
+
+  /** Text of each channel's value at each point. */
+  private String[][][] tokens;
+
+  /** Expected value of each channel at each point. */
+  private float[][] expected;
+
+  /** Table whose rows are in raster order, separated by tabs. */
+  private File ordered;
+
+  /** The same table in random row order, separated by commas. */
+  private File shuffled;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    Random random = new Random(42);
+    tokens = new String[2][SIZE_Y][SIZE_X];
+    expected = new float[2][SIZE_X * SIZE_Y];
+    for (int c=0; c<2; c++) {
+      for (int y=0; y<SIZE_Y; y++) {
+        for (int x=0; x<SIZE_X; x++) {
+          String token = createToken(random);
+          tokens[c][y][x] = token;
+          expected[c][y * SIZE_X + x] = (float) Double.parseDouble(token);
+        }
+      }
+    }
+    for (int[] point : MISSING) {
+      for (int c=0; c<2; c++) {
+        expected[c][point[1] * SIZE_X + point[0]] = Float.NaN;
+      }
+    }
+
+    List<String> rows = new ArrayList<String>();
+    for (int y=0; y<SIZE_Y; y++) {
+      for (int x=0; x<SIZE_X; x++) {
+        if (!isMissing(x, y)) {
+          rows.add(tokens[0][y][x] + "\t" + y + "\t" + x + "\t" +
+            tokens[1][y][x]);
+        }
+      }
+    }
+    // rows with too few or too many columns, and a non-numeric row
+    rows.add(7, "1\t2\t3");
+    rows.add(50, "1\t" + (SIZE_Y * 2) + "\t" + (SIZE_X * 2) + "\t4\t5");
+    rows.add(100, "a\tb\tc\td");
+
+    ordered = File.createTempFile("TextReaderTest", ".txt");
+    writeTable(ordered, rows, "\t", "\n");
+
+    Collections.shuffle(rows, random);
+    shuffled = File.createTempFile("TextReaderTest", ".csv");
+    writeTable(shuffled, rows, ",", "\r\n");
+  }
+
+  @AfterClass
+  public void tearDown() {
+    ordered.delete();
+    shuffled.delete();
+  }
+
+  /** Creates the text of a random number in one of several notations. */
+  private static String createToken(Random random) {
+    switch (random.nextInt(6)) {
+      case 0:
+        return String.valueOf(random.nextInt(65536));
+      case 1:
+        return String.valueOf(-random.nextInt(1000));
+      case 2:
+        return String.valueOf(random.nextDouble() * 1000);
+      case 3:
+        return String.format(Locale.ROOT, "%.3e",
+          random.nextGaussian() * 1e-5);
+      case 4:
+        // more significant digits than can be parsed exactly as a long
+        return "0.12345678901234567" + random.nextInt(10);
+      default:
+        return String.format(Locale.ROOT, "%.2f",
+          random.nextDouble() * 100);
+    }
+  }
+
+  private static boolean isMissing(int x, int y) {
+    for (int[] point : MISSING) {
+      if (point[0] == x && point[1] == y) return true;
+    }
+    return false;
+  }
+
+  private static void writeTable(File file, List<String> rows,
+    String separator, String newline)
+    throws IOException
+  {
+    StringBuilder text = new StringBuilder();
+    text.append("Exported values").append(newline).append(newline);
+    for (int i=0; i<HEADER.length; i++) {
+      if (i > 0) text.append(separator);
+      text.append(HEADER[i]);
+    }
+    text.append(newline);
+    for (String row : rows) {
+      text.append(row.replaceAll("\t", separator)).append(newline);
+    }
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(text.toString().getBytes(Constants.ENCODING));
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  private static TextReader openReader(File file, int threads)
+    throws Exception
+  {
+    TextReader reader = new TextReader();
+    reader.setParsingThreads(threads);
+    reader.setId(file.getAbsolutePath());
+    return reader;
+  }
+
+  /** Gets the expected values of a channel within the given region. */
+  private float[] getExpected(int c, int x, int y, int w, int h) {
+    float[] values = new float[w * h];
+    for (int row=0; row<h; row++) {
+      System.arraycopy(expected[c], (y + row) * SIZE_X + x,
+        values, row * w, w);
+    }
+    return values;
+  }
+
+  private static void assertValues(String message, float[] expected,
+    float[] actual)
+  {
+    assertEquals(message, expected.length, actual.length);
+    for (int i=0; i<expected.length; i++) {
+      assertEquals(message + ", index " + i,
+        Float.floatToIntBits(expected[i]), Float.floatToIntBits(actual[i]));
+    }
+  }
+
+  @DataProvider(name = "regions")
+  public Object[][] createRegions() {
+    return new Object[][] {
+      {0, 0, SIZE_X, SIZE_Y},
+      {0, 0, 1, 1},
+      {SIZE_X - 1, SIZE_Y - 1, 1, 1},
+      {3, 2, 5, 4},
+      {2, 0, SIZE_X - 2, SIZE_Y},
+      {0, 17, SIZE_X, 13},
+      {11, 9, 20, 1}
+    };
+  }
+
+  @DataProvider(name = "files")
+  public Object[][] createFiles() {
+    return new Object[][] {{ordered}, {shuffled}};
+  }
+
+  @Test(dataProvider = "files")
+  public void testDimensions(File file) throws Exception {
+    TextReader reader = openReader(file, 1);
+    try {
+      // deviant rows must not extend the image
+      assertEquals(SIZE_X, reader.getSizeX());
+      assertEquals(SIZE_Y, reader.getSizeY());
+      assertEquals(1, reader.getSizeZ());
+      assertEquals(2, reader.getSizeC());
+      assertEquals(1, reader.getSizeT());
+      assertEquals(FormatTools.FLOAT, reader.getPixelType());
+      assertEquals("red", reader.getChannelLabel(0));
+      assertEquals("green", reader.getChannelLabel(1));
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test(dataProvider = "files")
+  public void testPlanes(File file) throws Exception {
+    TextReader reader = openReader(file, 1);
+    try {
+      for (int c=0; c<2; c++) {
+        float[] plane = (float[]) reader.openPlane(c, 0, 0, SIZE_X, SIZE_Y);
+        assertValues(file.getName() + ", channel " + c, expected[c], plane);
+      }
+      for (int[] point : MISSING) {
+        int index = point[1] * SIZE_X + point[0];
+        float[] plane = (float[]) reader.openPlane(0, 0, 0, SIZE_X, SIZE_Y);
+        assertTrue(Float.isNaN(plane[index]));
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test(dataProvider = "regions")
+  public void testRegions(int x, int y, int w, int h) throws Exception {
+    TextReader reader = openReader(shuffled, 1);
+    try {
+      for (int c=0; c<2; c++) {
+        byte[] bytes = reader.openBytes(c, x, y, w, h);
+        float[] values = new float[w * h];
+        for (int i=0; i<values.length; i++) {
+          values[i] = Float.intBitsToFloat(
+            DataTools.bytesToInt(bytes, i * 4, 4, reader.isLittleEndian()));
+        }
+        assertValues("channel " + c, getExpected(c, x, y, w, h), values);
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSuccessiveRegions() throws Exception {
+    // regions contained in the last region parsed are copied from it;
+    // others are parsed again
+    TextReader reader = openReader(ordered, 1);
+    try {
+      for (Object[] region : createRegions()) {
+        int x = (Integer) region[0];
+        int y = (Integer) region[1];
+        int w = (Integer) region[2];
+        int h = (Integer) region[3];
+        for (int c=1; c>=0; c--) {
+          float[] buf = new float[w * h];
+          reader.openPlane(c, buf, x, y, w, h);
+          assertValues(x + "," + y + " " + w + "x" + h + ", channel " + c,
+            getExpected(c, x, y, w, h), buf);
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test(dataProvider = "regions")
+  public void testParallelMatchesSerial(int x, int y, int w, int h)
+    throws Exception
+  {
+    TextReader serial = openReader(shuffled, 1);
+    TextReader parallel = openReader(shuffled, 3);
+    try {
+      for (int c=0; c<2; c++) {
+        float[] expectedValues = (float[]) serial.openPlane(c, x, y, w, h);
+        float[] values = (float[]) parallel.openPlane(c, x, y, w, h);
+        assertValues("channel " + c, expectedValues, values);
+        assertValues("channel " + c, getExpected(c, x, y, w, h), values);
+      }
+    }
+    finally {
+      serial.close();
+      parallel.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidParsingThreads() {
+    new TextReader().setParsingThreads(0);
+  }
+
+}
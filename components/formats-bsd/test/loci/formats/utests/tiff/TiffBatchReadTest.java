@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests.tiff;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import loci.common.ByteArrayHandle;
+import loci.common.RandomAccessInputStream;
+import loci.common.RandomAccessOutputStream;
+import loci.common.Region;
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.tiff.IFD;
+import loci.formats.tiff.TiffCompression;
+import loci.formats.tiff.TiffParser;
+import loci.formats.tiff.TiffSaver;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests reading several regions of a tiled TIFF at once using
+ * {@link TiffParser#getSamples(IFD, List, List)}.
+ */
+public class TiffBatchReadTest {
+
+  private static final int IMAGE_WIDTH = 200;
+
+  private static final int IMAGE_LENGTH = 150;
+
+  private static final int TILE_SIZE = 64;
+
+  private static final int BPP = 2;
+
+  @DataProvider(name = "compressions")
+  public Object[][] createCompressions() {
+    return new Object[][] {
+      {TiffCompression.UNCOMPRESSED},
+      {TiffCompression.LZW},
+      {TiffCompression.DEFLATE},
+    };
+  }
+
+  @Test(dataProvider = "compressions")
+  public void testBatchMatchesSingleReads(TiffCompression compression)
+    throws FormatException, IOException
+  {
+    byte[] data = createData();
+    ByteArrayHandle file = saveImage(data, compression);
+    TiffParser parser = new TiffParser(new RandomAccessInputStream(file));
+    IFD ifd = parser.getFirstIFD();
+    assertTrue(ifd.isTiled());
+
+    List<Region> regions = new ArrayList<Region>();
+    regions.add(new Region(0, 0, IMAGE_WIDTH, IMAGE_LENGTH));
+    regions.add(new Region(10, 20, 100, 50));
+    regions.add(new Region(63, 63, 2, 2));
+    regions.add(new Region(150, 100, 50, 50));
+    regions.add(new Region(64, 0, 64, 64));
+    regions.add(new Region(199, 149, 1, 1));
+
+    List<byte[]> bufs = new ArrayList<byte[]>();
+    for (Region r : regions) {
+      bufs.add(new byte[r.width * r.height * BPP]);
+    }
+    parser.getSamples(ifd, regions, bufs);
+
+    for (int i=0; i<regions.size(); i++) {
+      Region r = regions.get(i);
+      byte[] single = new byte[r.width * r.height * BPP];
+      parser.getSamples(ifd, single, r.x, r.y, r.width, r.height);
+      assertTrue("region " + i, Arrays.equals(single, bufs.get(i)));
+      assertTrue("region " + i, Arrays.equals(crop(data, r), bufs.get(i)));
+    }
+    parser.getStream().close();
+  }
+
+  @Test
+  public void testEmptyRegionList() throws FormatException, IOException {
+    ByteArrayHandle file =
+      saveImage(createData(), TiffCompression.UNCOMPRESSED);
+    TiffParser parser = new TiffParser(new RandomAccessInputStream(file));
+    List<byte[]> bufs = parser.getSamples(parser.getFirstIFD(),
+      new ArrayList<Region>(), new ArrayList<byte[]>());
+    assertEquals(0, bufs.size());
+    parser.getStream().close();
+  }
+
+  // -- Helper methods --
+
+  private byte[] createData() {
+    byte[] data = new byte[IMAGE_WIDTH * IMAGE_LENGTH * BPP];
+    for (int i=0; i<data.length; i++) {
+      data[i] = (byte) (i * 7 + i / 251);
+    }
+    return data;
+  }
+
+  private ByteArrayHandle saveImage(byte[] data, TiffCompression compression)
+    throws FormatException, IOException
+  {
+    IFD ifd = new IFD();
+    ifd.put(IFD.IMAGE_WIDTH, IMAGE_WIDTH);
+    ifd.put(IFD.IMAGE_LENGTH, IMAGE_LENGTH);
+    ifd.put(IFD.TILE_WIDTH, TILE_SIZE);
+    ifd.put(IFD.TILE_LENGTH, TILE_SIZE);
+    ifd.put(IFD.BITS_PER_SAMPLE, new int[] {BPP * 8});
+    ifd.put(IFD.SAMPLES_PER_PIXEL, 1);
+    ifd.put(IFD.LITTLE_ENDIAN, Boolean.TRUE);
+    ifd.put(IFD.COMPRESSION, compression.getCode());
+
+    ByteArrayHandle file = new ByteArrayHandle();
+    RandomAccessOutputStream out = new RandomAccessOutputStream(file);
+    TiffSaver saver = new TiffSaver(out, file);
+    saver.setLittleEndian(true);
+    saver.writeHeader();
+    saver.writeImage(data, ifd, 0, FormatTools.UINT16, true);
+    out.close();
+    return file;
+  }
+
+  private byte[] crop(byte[] data, Region r) {
+    byte[] crop = new byte[r.width * r.height * BPP];
+    for (int row=0; row<r.height; row++) {
+      System.arraycopy(data, ((r.y + row) * IMAGE_WIDTH + r.x) * BPP,
+        crop, row * r.width * BPP, r.width * BPP);
+    }
+    return crop;
+  }
+
+}
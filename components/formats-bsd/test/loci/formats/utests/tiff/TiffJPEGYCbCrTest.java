@@ -0,0 +1,247 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests.tiff;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import loci.common.ByteArrayHandle;
+import loci.common.RandomAccessInputStream;
+import loci.common.RandomAccessOutputStream;
+import loci.formats.FormatException;
+import loci.formats.tiff.IFD;
+import loci.formats.tiff.PhotoInterp;
+import loci.formats.tiff.TiffCompression;
+import loci.formats.tiff.TiffParser;
+import loci.formats.tiff.TiffSaver;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the colors read from JPEG compressed TIFF strips.  The same
+ * stream must give the same pixels whether it is decoded by
+ * {@link loci.formats.codec.JPEGDecoder} or, for streams that the decoder
+ * rejects, by ImageIO.
+ */
+public class TiffJPEGYCbCrTest {
+
+  private static final int SIZE = 16;
+
+  /** YCbCr samples of each test color and the expected RGB values. */
+  private static final int[][][] COLORS = {
+    {{100, 90, 200}, {201, 62, 33}},
+    {{128, 128, 128}, {128, 128, 128}},
+    {{200, 60, 100}, {161, 243, 80}},
+    {{235, 16, 240}, {255, 194, 37}},
+    {{30, 200, 60}, {0, 54, 158}},
+  };
+
+  @DataProvider(name = "colors")
+  public Object[][] createColors() {
+    Object[][] colors = new Object[COLORS.length * 2][];
+    for (int i=0; i<COLORS.length; i++) {
+      colors[i * 2] = new Object[] {COLORS[i][0], COLORS[i][1], false};
+      colors[i * 2 + 1] = new Object[] {COLORS[i][0], COLORS[i][1], true};
+    }
+    return colors;
+  }
+
+  /**
+   * Components numbered 1, 2 and 3 are YCbCr, so they are converted once
+   * whatever the photometric interpretation.
+   */
+  @Test(dataProvider = "colors")
+  public void testNumberedComponents(int[] ycbcr, int[] rgb,
+    boolean fallback) throws Exception
+  {
+    byte[] jpeg = encode(ycbcr, fallback);
+    assertPixels(rgb, read(jpeg, PhotoInterp.Y_CB_CR, true));
+    assertPixels(rgb, read(jpeg, PhotoInterp.Y_CB_CR, false));
+    assertPixels(rgb, read(jpeg, PhotoInterp.RGB, true));
+  }
+
+  /**
+   * Other components are converted only if the IFD says that they are
+   * YCbCr and YCbCr correction is enabled.
+   */
+  @Test(dataProvider = "colors")
+  public void testUnmarkedComponents(int[] ycbcr, int[] rgb,
+    boolean fallback) throws Exception
+  {
+    byte[] jpeg = encode(ycbcr, fallback);
+    renumberComponents(jpeg);
+    assertPixels(rgb, read(jpeg, PhotoInterp.Y_CB_CR, true));
+    assertPixels(ycbcr, read(jpeg, PhotoInterp.Y_CB_CR, false));
+    assertPixels(ycbcr, read(jpeg, PhotoInterp.RGB, true));
+  }
+
+  // -- Helper methods --
+
+  private static void assertPixels(int[] expected, byte[] planes) {
+    assertEquals(expected.length * SIZE * SIZE, planes.length);
+    for (int c=0; c<expected.length; c++) {
+      for (int i=0; i<SIZE * SIZE; i++) {
+        assertEquals("channel " + c + ", pixel " + i, expected[c],
+          planes[c * SIZE * SIZE + i] & 0xff);
+      }
+    }
+  }
+
+  /**
+   * Encodes a single colored image without color conversion or
+   * markers, as a TIFF writer would.  ImageIO numbers the components
+   * 1, 2 and 3 and does not subsample them, and a quality of 1 stores
+   * uniform blocks exactly.
+   *
+   * @param fallback true if an unused, invalid Huffman table should be
+   *   added, so that the stream is decoded by ImageIO instead
+   */
+  private static byte[] encode(int[] ycbcr, boolean fallback)
+    throws IOException
+  {
+    WritableRaster raster = Raster.createBandedRaster(DataBuffer.TYPE_BYTE,
+      SIZE, SIZE, ycbcr.length, null);
+    for (int y=0; y<SIZE; y++) {
+      for (int x=0; x<SIZE; x++) {
+        raster.setPixel(x, y, ycbcr);
+      }
+    }
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    param.setCompressionQuality(1f);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ImageOutputStream out = ImageIO.createImageOutputStream(bytes);
+    writer.setOutput(out);
+    writer.write(null, new IIOImage(raster, null, null), param);
+    out.close();
+    writer.dispose();
+    byte[] jpeg = bytes.toByteArray();
+    if (!fallback) {
+      return jpeg;
+    }
+
+    // AC table 3 with three codes of length 1
+    byte[] dht = new byte[24];
+    dht[0] = (byte) 0xff;
+    dht[1] = (byte) 0xc4;
+    dht[3] = 22;
+    dht[4] = 0x13;
+    dht[5] = 3;
+    byte[] stream = new byte[jpeg.length + dht.length];
+    System.arraycopy(jpeg, 0, stream, 0, 2);
+    System.arraycopy(dht, 0, stream, 2, dht.length);
+    System.arraycopy(jpeg, 2, stream, 2 + dht.length, jpeg.length - 2);
+    return stream;
+  }
+
+  /**
+   * Renumbers the components 0, 1 and 2, so that they are not assumed to
+   * be YCbCr.
+   */
+  private static void renumberComponents(byte[] jpeg) {
+    for (int i=0; i<jpeg.length - 1; i++) {
+      if (jpeg[i] == (byte) 0xff && jpeg[i + 1] == (byte) 0xc0) {
+        // marker, length, precision, height, width, count
+        for (int c=0; c<3; c++) {
+          jpeg[i + 10 + c * 3]--;
+        }
+      }
+      else if (jpeg[i] == (byte) 0xff && jpeg[i + 1] == (byte) 0xda) {
+        // marker, length, count
+        for (int c=0; c<3; c++) {
+          jpeg[i + 5 + c * 2]--;
+        }
+        return;
+      }
+    }
+  }
+
+  /** Reads the planes of a single strip TIFF holding the given stream. */
+  private static byte[] read(byte[] jpeg, PhotoInterp photometric,
+    boolean correction) throws FormatException, IOException
+  {
+    ByteArrayHandle handle = new ByteArrayHandle();
+    handle.setOrder(ByteOrder.LITTLE_ENDIAN);
+    RandomAccessOutputStream out = new RandomAccessOutputStream(handle);
+    TiffSaver saver = new TiffSaver(out, handle);
+    saver.setLittleEndian(true);
+    saver.writeHeader();
+    long offset = out.getFilePointer();
+    out.write(jpeg);
+    out.seek(4);
+    out.writeInt((int) out.length());
+    out.seek(out.length());
+
+    IFD ifd = new IFD();
+    ifd.put(IFD.IMAGE_WIDTH, SIZE);
+    ifd.put(IFD.IMAGE_LENGTH, SIZE);
+    ifd.put(IFD.BITS_PER_SAMPLE, new int[] {8, 8, 8});
+    ifd.put(IFD.COMPRESSION, TiffCompression.JPEG.getCode());
+    ifd.put(IFD.PHOTOMETRIC_INTERPRETATION, photometric.getCode());
+    ifd.put(IFD.STRIP_OFFSETS, new long[] {offset});
+    ifd.put(IFD.SAMPLES_PER_PIXEL, 3);
+    ifd.put(IFD.ROWS_PER_STRIP, new long[] {SIZE});
+    ifd.put(IFD.STRIP_BYTE_COUNTS, new long[] {jpeg.length});
+    ifd.put(IFD.PLANAR_CONFIGURATION, 1);
+    if (photometric == PhotoInterp.Y_CB_CR) {
+      ifd.put(IFD.Y_CB_CR_SUB_SAMPLING, new int[] {1, 1});
+    }
+    saver.writeIFD(ifd, 0);
+    out.close();
+
+    TiffParser parser = new TiffParser(new RandomAccessInputStream(handle));
+    parser.setYCbCrCorrection(correction);
+    try {
+      IFD first = parser.getFirstIFD();
+      return parser.getSamples(first, new byte[3 * SIZE * SIZE]);
+    }
+    finally {
+      parser.getStream().close();
+    }
+  }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package spec.schema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.transform.Templates;
+
+import loci.common.Constants;
+import loci.common.services.ServiceFactory;
+import loci.common.xml.XMLTools;
+import loci.common.xml.XSLTPipeline;
+import loci.formats.services.OMEXMLService;
+
+import ome.xml.model.OME;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Checks that upgrading through a single chained pipeline of stylesheets
+ * gives the same model as applying each stylesheet in turn, and reports
+ * the time taken by both approaches.
+ */
+@Test(groups = { "all" })
+public class SchemaUpgradePipelineTest {
+
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(SchemaUpgradePipelineTest.class);
+
+    private static final String SAMPLES = "/spec/schema/samples/";
+
+    private static final String TRANSFORMS = "/transforms/";
+
+    /**
+     * Each schema version that can be upgraded, followed by the stylesheets
+     * that upgrade it to the next version in this list.
+     */
+    private static final String[][] UPGRADES = {
+        {"2003-FC", "2003-FC-to-2008-09.xsl"},
+        {"2007-06", "2007-06-to-2008-09.xsl"},
+        {"2008-02", "2008-02-to-2008-09.xsl"},
+        {"2008-09", "2008-09-to-2009-09.xsl"},
+        {"2009-09", "2009-09-to-2010-04.xsl"},
+        {"2010-04", "2010-04-to-2010-06.xsl"},
+        {"2010-06", "2010-06-to-2011-06.xsl"},
+        {"2011-06", "2011-06-to-2012-06.xsl"},
+        {"2012-06", "2012-06-to-2013-06.xsl"},
+        {"2013-06", "2013-06-to-2015-01.xsl"},
+        {"2015-01", "2015-01-to-2016-06.xsl"}
+    };
+
+    /** Number of times each upgrade is timed. */
+    private static final int ITERATIONS = 5;
+
+    private OMEXMLService service;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        ServiceFactory sf = new ServiceFactory();
+        service = sf.getInstance(OMEXMLService.class);
+    }
+
+    @DataProvider(name = "samples")
+    public Object[][] createSamples() {
+        return new Object[][] {
+            {"2003-FC", "single-image.ome.xml"},
+            {"2007-06", "single-image.ome.xml"},
+            {"2008-02", "instrument.ome.xml"},
+            {"2008-09", "dataset-group-project.ome.xml"},
+            {"2008-09", "instrument.ome.xml"},
+            {"2009-09", "ROI.ome.xml"},
+            {"2009-09", "one-screen-one-plate-four-wells.ome.xml"},
+            {"2010-04", "instrument.ome.xml"},
+            {"2010-04", "one-screen-one-plate-four-wells.ome.xml"},
+            {"2010-04", "structured-annotations.ome.xml"},
+            {"2010-06", "filter.ome.xml"},
+            {"2010-06", "xmlannotation-svg.ome.xml"},
+            {"2011-06", "6x4y1z1t1c8b-swatch.ome"},
+            {"2011-06", "6x4y1z1t1c8b-swatch-instrument.ome"},
+            {"2011-06", "6x4y1z1t3c8b-swatch-upgrade.ome"},
+            {"2012-06", "ROI.ome.xml"},
+            {"2012-06", "tagannotation.ome.xml"},
+            {"2013-06", "commentannotation.ome.xml"},
+            {"2015-01", "instrument-units-alternate.ome.xml"},
+            {"2015-01", "mapannotation.ome.xml"}
+        };
+    }
+
+    @Test(dataProvider = "samples")
+    public void testPipelineMatchesStepwiseUpgrade(String version,
+        String sample)
+        throws Exception
+    {
+        String xml = readSample(version + "/" + sample);
+        Assert.assertEquals(service.getOMEXMLVersion(xml), version);
+        List<Templates> stylesheets = getStylesheets(version);
+
+        long stepwiseTime = 0;
+        long pipelineTime = 0;
+        String stepwise = null;
+        String pipelined = null;
+        for (int i=0; i<ITERATIONS; i++) {
+            long start = System.nanoTime();
+            stepwise = xml;
+            for (Templates stylesheet : stylesheets) {
+                stepwise = XMLTools.transformXML(
+                    bindOMENamespace(stepwise), stylesheet);
+            }
+            long end = System.nanoTime();
+            stepwiseTime += end - start;
+
+            start = System.nanoTime();
+            pipelined = new XSLTPipeline(stylesheets, "ome").transform(xml);
+            end = System.nanoTime();
+            pipelineTime += end - start;
+        }
+        LOGGER.info("{}/{}: stepwise upgrade {} ms, pipelined upgrade {} ms",
+            new Object[] {version, sample,
+            stepwiseTime / (ITERATIONS * 1000000L),
+            pipelineTime / (ITERATIONS * 1000000L)});
+
+        OME expected = (OME) service.createOMEXMLRoot(fixNamespaces(stepwise));
+        OME actual = (OME) service.createOMEXMLRoot(fixNamespaces(pipelined));
+        assertEquivalent(expected, actual);
+
+        String latest = service.transformToLatestVersion(xml);
+        OME upgraded = (OME) service.createOMEXMLRoot(latest);
+        assertEquivalent(expected, upgraded);
+
+        // the serialized models must also match exactly
+        Assert.assertEquals(
+            service.getOMEXML(service.createOMEXMLMetadata(latest)),
+            service.getOMEXML(
+            service.createOMEXMLMetadata(fixNamespaces(stepwise))));
+    }
+
+    private void assertEquivalent(OME expected, OME actual) {
+        Assert.assertNotNull(expected);
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(actual.sizeOfImageList(),
+            expected.sizeOfImageList());
+        for (int i=0; i<expected.sizeOfImageList(); i++) {
+            Assert.assertEquals(actual.getImage(i).getID(),
+                expected.getImage(i).getID());
+            Assert.assertEquals(actual.getImage(i).getName(),
+                expected.getImage(i).getName());
+        }
+        Assert.assertEquals(actual.sizeOfInstrumentList(),
+            expected.sizeOfInstrumentList());
+        Assert.assertEquals(actual.sizeOfPlateList(),
+            expected.sizeOfPlateList());
+        Assert.assertEquals(actual.sizeOfProjectList(),
+            expected.sizeOfProjectList());
+        Assert.assertEquals(actual.sizeOfDatasetList(),
+            expected.sizeOfDatasetList());
+        Assert.assertEquals(actual.sizeOfROIList(), expected.sizeOfROIList());
+        Assert.assertEquals(actual.getStructuredAnnotations() == null,
+            expected.getStructuredAnnotations() == null);
+    }
+
+    /** Returns the stylesheets that upgrade the given version to the latest. */
+    private List<Templates> getStylesheets(String version) {
+        List<Templates> stylesheets = new ArrayList<Templates>();
+        boolean found = false;
+        for (String[] upgrade : UPGRADES) {
+            if (upgrade[0].equals(version)) {
+                found = true;
+            }
+            else if (!found || upgrade[0].compareTo("2008-09") < 0) {
+                // the 2003-FC, 2007-06 and 2008-02 stylesheets all upgrade
+                // straight to 2008-09
+                continue;
+            }
+            Templates stylesheet = XMLTools.getStylesheet(
+                TRANSFORMS + upgrade[1], SchemaUpgradePipelineTest.class);
+            Assert.assertNotNull(stylesheet, upgrade[1]);
+            stylesheets.add(stylesheet);
+        }
+        Assert.assertTrue(found, version);
+        return stylesheets;
+    }
+
+    /**
+     * Binds the 'ome' prefix to the default namespace of the document
+     * element, as the upgrade stylesheets expect.
+     */
+    private String bindOMENamespace(String xml) throws Exception {
+        Document doc = XMLTools.parseDOM(xml);
+        Element root = doc.getDocumentElement();
+        String namespace = root.getAttribute("xmlns:ome");
+        if (namespace == null || namespace.length() == 0) {
+            root.setAttribute("xmlns:ome", root.getAttribute("xmlns"));
+        }
+        return XMLTools.getXML(doc);
+    }
+
+    /** Removes the generated namespace prefixes, as the service does. */
+    private String fixNamespaces(String xml) {
+        xml = xml.replaceAll("<ns.*?:", "<");
+        xml = xml.replaceAll("xmlns:ns.*?=", "xmlns:OME=");
+        return xml.replaceAll("</ns.*?:", "</");
+    }
+
+    private String readSample(String sample) throws Exception {
+        InputStream stream =
+            getClass().getResourceAsStream(SAMPLES + sample);
+        Assert.assertNotNull(stream, sample);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n = stream.read(buf);
+            while (n > 0) {
+                out.write(buf, 0, n);
+                n = stream.read(buf);
+            }
+            return out.toString(Constants.ENCODING);
+        }
+        finally {
+            stream.close();
+        }
+    }
+}
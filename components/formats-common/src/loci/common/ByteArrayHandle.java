@@ -163,12 +163,13 @@ public class ByteArrayHandle extends AbstractNIOHandle {
   @Override
   public int read(ByteBuffer buf, int off, int len) throws IOException {
     if (buf.hasArray()) {
-      buffer.get(buf.array(), off, len);
+      buffer.get(buf.array(), buf.arrayOffset() + off, len);
       return len;
     }
 
     byte[] b = new byte[len];
     read(b);
+    buf.position(off);
     buf.put(b, 0, len);
     return len;
   }
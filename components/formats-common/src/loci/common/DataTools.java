@@ -34,6 +34,11 @@ package loci.common;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 import java.text.DecimalFormat;
@@ -557,48 +562,83 @@ public final class DataTools {
   /** Translates an array of short values into an array of byte values. */
   public static byte[] shortsToBytes(short[] values, boolean little) {
     byte[] v = new byte[values.length * 2];
-    for (int i=0; i<values.length; i++) {
-      unpackBytes(values[i], v, i * 2, 2, little);
-    }
+    packSamples(values, 0, v, 0, values.length, little);
     return v;
   }
 
   /** Translates an array of int values into an array of byte values. */
   public static byte[] intsToBytes(int[] values, boolean little) {
     byte[] v = new byte[values.length * 4];
-    for (int i=0; i<values.length; i++) {
-      unpackBytes(values[i], v, i * 4, 4, little);
-    }
+    packSamples(values, 0, v, 0, values.length, little);
     return v;
   }
 
   /** Translates an array of float values into an array of byte values. */
   public static byte[] floatsToBytes(float[] values, boolean little) {
     byte[] v = new byte[values.length * 4];
-    for (int i=0; i<values.length; i++) {
-      unpackBytes(Float.floatToIntBits(values[i]), v, i * 4, 4, little);
-    }
+    packSamples(values, 0, v, 0, values.length, little);
     return v;
   }
 
   /** Translates an array of long values into an array of byte values. */
   public static byte[] longsToBytes(long[] values, boolean little) {
     byte[] v = new byte[values.length * 8];
-    for (int i=0; i<values.length; i++) {
-      unpackBytes(values[i], v, i * 8, 8, little);
-    }
+    packSamples(values, 0, v, 0, values.length, little);
     return v;
   }
 
   /** Translates an array of double values into an array of byte values. */
   public static byte[] doublesToBytes(double[] values, boolean little) {
     byte[] v = new byte[values.length * 8];
-    for (int i=0; i<values.length; i++) {
-      unpackBytes(Double.doubleToLongBits(values[i]), v, i * 8, 8, little);
-    }
+    packSamples(values, 0, v, 0, values.length, little);
     return v;
   }
 
+  /**
+   * Converts samples from a primitive array to bytes, storing them in an
+   * existing byte array.  This is the inverse of
+   * {@link #unpackSamples(byte[], int, Object, int, int, int, boolean)}.
+   *
+   * @param src Source byte, short, int, long, float or double array.
+   * @param srcOff Index of the first sample to convert.
+   * @param b Destination byte array.
+   * @param off Offset of the first destination byte.
+   * @param count Number of samples to convert.
+   * @param little Whether the bytes should be in little-endian order.
+   *
+   * @throws IllegalArgumentException if the source is not a supported type
+   */
+  public static void packSamples(Object src, int srcOff, byte[] b, int off,
+    int count, boolean little)
+  {
+    int bpp = getBytesPerSample(src);
+    if (bpp == 0) {
+      throw new IllegalArgumentException("Cannot pack samples from " +
+        (src == null ? null : src.getClass()));
+    }
+    ByteBuffer dest = ByteBuffer.wrap(b, off, count * bpp).slice();
+    dest.order(little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+
+    if (src instanceof byte[]) {
+      dest.put((byte[]) src, srcOff, count);
+    }
+    else if (src instanceof short[]) {
+      dest.asShortBuffer().put((short[]) src, srcOff, count);
+    }
+    else if (src instanceof int[]) {
+      dest.asIntBuffer().put((int[]) src, srcOff, count);
+    }
+    else if (src instanceof float[]) {
+      dest.asFloatBuffer().put((float[]) src, srcOff, count);
+    }
+    else if (src instanceof long[]) {
+      dest.asLongBuffer().put((long[]) src, srcOff, count);
+    }
+    else if (src instanceof double[]) {
+      dest.asDoubleBuffer().put((double[]) src, srcOff, count);
+    }
+  }
+
   /**
    * Translates nBytes of the given long and places the result in the
    * given byte array.
@@ -640,42 +680,11 @@ public final class DataTools {
     if (bpp == 1) {
       return b;
     }
-    else if (bpp == 2) {
-      short[] s = new short[b.length / 2];
-      for (int i=0; i<s.length; i++) {
-        s[i] = bytesToShort(b, i * 2, 2, little);
-      }
-      return s;
-    }
-    else if (bpp == 4 && fp) {
-      float[] f = new float[b.length / 4];
-      for (int i=0; i<f.length; i++) {
-        f[i] = bytesToFloat(b, i * 4, 4, little);
-      }
-      return f;
-    }
-    else if (bpp == 4) {
-      int[] i = new int[b.length / 4];
-      for (int j=0; j<i.length; j++) {
-        i[j] = bytesToInt(b, j * 4, 4, little);
-      }
-      return i;
-    }
-    else if (bpp == 8 && fp) {
-      double[] d = new double[b.length / 8];
-      for (int i=0; i<d.length; i++) {
-        d[i] = bytesToDouble(b, i * 8, 8, little);
-      }
-      return d;
-    }
-    else if (bpp == 8) {
-      long[] l = new long[b.length / 8];
-      for (int i=0; i<l.length; i++) {
-        l[i] = bytesToLong(b, i * 8, 8, little);
-      }
-      return l;
+    Object array = allocateSamples(bpp, fp, b.length / bpp);
+    if (array != null) {
+      unpackSamples(b, 0, array, 0, b.length / bpp, bpp, little);
     }
-    return null;
+    return array;
   }
 
   /**
@@ -701,69 +710,149 @@ public final class DataTools {
 
     }
     final int width = b.length / (bpp * height);
+    Object[] rows = null;
     if (bpp == 1) {
-      byte[][] b2 = new byte[height][width];
-      for (int y=0; y<height; y++) {
-        int index = width * y;
-        System.arraycopy(b, index, b2[y], 0, width);
-      }
-      return b2;
+      rows = new byte[height][width];
     }
     else if (bpp == 2) {
-      short[][] s = new short[height][width];
-      for (int y=0; y<height; y++) {
-        for (int x=0; x<width; x++) {
-          int index = 2 * (width * y + x);
-          s[y][x] = bytesToShort(b, index, 2, little);
-        }
-      }
-      return s;
+      rows = new short[height][width];
     }
     else if (bpp == 4 && fp) {
-      float[][] f = new float[height][width];
-      for (int y=0; y<height; y++) {
-        for (int x=0; x<width; x++) {
-          int index = 4 * (width * y + x);
-          f[y][x] = bytesToFloat(b, index, 4, little);
-        }
-      }
-      return f;
+      rows = new float[height][width];
     }
     else if (bpp == 4) {
-      int[][] i = new int[height][width];
-      for (int y=0; y<height; y++) {
-        for (int x=0; x<width; x++) {
-          int index = 4 * (width * y + x);
-          i[y][x] = bytesToInt(b, index, 4, little);
-        }
-      }
-      return i;
+      rows = new int[height][width];
     }
     else if (bpp == 8 && fp) {
-      double[][] d = new double[height][width];
-      for (int y=0; y<height; y++) {
-        for (int x=0; x<width; x++) {
-          int index = 8 * (width * y + x);
-          d[y][x] = bytesToDouble(b, index, 8, little);
-        }
-      }
-      return d;
+      rows = new double[height][width];
     }
     else if (bpp == 8) {
-      long[][] l = new long[height][width];
-      for (int y=0; y<height; y++) {
-        for (int x=0; x<width; x++) {
-          int index = 8 * (width * y + x);
-          l[y][x] = bytesToLong(b, index, 8, little);
-        }
+      rows = new long[height][width];
+    }
+    else {
+      return null;
+    }
+    for (int y=0; y<height; y++) {
+      unpackSamples(b, bpp * width * y, rows[y], 0, width, bpp, little);
+    }
+    return rows;
+  }
+
+  /**
+   * Converts bytes to samples, storing them in an existing primitive array
+   * or {@link ByteBuffer}.
+   *
+   * @param b Byte array to convert.
+   * @param off Offset of the first byte to convert.
+   * @param dest Destination byte, short, int, long, float or double array,
+   *   or a ByteBuffer whose own byte order is used for the stored samples.
+   * @param destOff Index of the first destination sample; for a ByteBuffer
+   *   this is counted in samples from the buffer's position, which is not
+   *   modified.
+   * @param count Number of samples to convert.
+   * @param bpp Number of bytes in each sample, which must match the
+   *   destination array's element size.
+   * @param little Whether byte array is in little-endian order.
+   *
+   * @throws IllegalArgumentException if the destination is not a supported
+   *   type or does not have <code>bpp</code> bytes per element
+   */
+  public static void unpackSamples(byte[] b, int off, Object dest,
+    int destOff, int count, int bpp, boolean little)
+  {
+    ByteBuffer src = ByteBuffer.wrap(b, off, count * bpp).slice();
+    src.order(little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+
+    if (dest instanceof ByteBuffer) {
+      ByteBuffer d = ((ByteBuffer) dest).duplicate();
+      d.order(((ByteBuffer) dest).order());
+      d.position(d.position() + destOff * bpp);
+      if (bpp == 1 || d.order() == src.order()) d.put(src);
+      else if (bpp == 2) d.asShortBuffer().put(src.asShortBuffer());
+      else if (bpp == 4) d.asIntBuffer().put(src.asIntBuffer());
+      else if (bpp == 8) d.asLongBuffer().put(src.asLongBuffer());
+      else {
+        throw new IllegalArgumentException("Unsupported sample size: " + bpp);
       }
-      return l;
+      return;
+    }
+
+    int size = getBytesPerSample(dest);
+    if (size == 0 || size != bpp) {
+      throw new IllegalArgumentException("Cannot store " + bpp +
+        "-byte samples in " + (dest == null ? null : dest.getClass()));
+    }
+
+    if (dest instanceof byte[]) {
+      src.get((byte[]) dest, destOff, count);
+    }
+    else if (dest instanceof short[]) {
+      src.asShortBuffer().get((short[]) dest, destOff, count);
+    }
+    else if (dest instanceof int[]) {
+      src.asIntBuffer().get((int[]) dest, destOff, count);
+    }
+    else if (dest instanceof float[]) {
+      src.asFloatBuffer().get((float[]) dest, destOff, count);
+    }
+    else if (dest instanceof long[]) {
+      src.asLongBuffer().get((long[]) dest, destOff, count);
+    }
+    else {
+      src.asDoubleBuffer().get((double[]) dest, destOff, count);
     }
-    return null;
   }
 
   // -- Byte swapping --
 
+  /**
+   * Reverses the byte order of each sample in the given range of a byte
+   * array, in place.  Samples of one byte are left unchanged.
+   *
+   * @param b Byte array containing the samples.
+   * @param off Offset of the first byte to swap.
+   * @param len Number of bytes to swap, which should be a multiple of
+   *   <code>bpp</code>; any trailing partial sample is left unchanged.
+   * @param bpp Number of bytes in each sample: 1, 2, 4 or 8.
+   *
+   * @throws IllegalArgumentException if the sample size is not supported
+   */
+  public static void swapBytes(byte[] b, int off, int len, int bpp) {
+    if (bpp == 1) {
+      return;
+    }
+    // reading through a view in one order and writing through a view in
+    // the other order reverses the bytes of each sample
+    ByteBuffer little =
+      ByteBuffer.wrap(b, off, len).slice().order(ByteOrder.LITTLE_ENDIAN);
+    ByteBuffer big =
+      ByteBuffer.wrap(b, off, len).slice().order(ByteOrder.BIG_ENDIAN);
+    if (bpp == 2) {
+      ShortBuffer src = little.asShortBuffer();
+      ShortBuffer dest = big.asShortBuffer();
+      for (int i=0; i<src.limit(); i++) {
+        dest.put(i, src.get(i));
+      }
+    }
+    else if (bpp == 4) {
+      IntBuffer src = little.asIntBuffer();
+      IntBuffer dest = big.asIntBuffer();
+      for (int i=0; i<src.limit(); i++) {
+        dest.put(i, src.get(i));
+      }
+    }
+    else if (bpp == 8) {
+      LongBuffer src = little.asLongBuffer();
+      LongBuffer dest = big.asLongBuffer();
+      for (int i=0; i<src.limit(); i++) {
+        dest.put(i, src.get(i));
+      }
+    }
+    else {
+      throw new IllegalArgumentException("Unsupported sample size: " + bpp);
+    }
+  }
+
   public static short swap(short x) {
     return (short) ((x << 8) | ((x >> 8) & 0xFF));
   }
@@ -1032,6 +1121,45 @@ public final class DataTools {
 
   // -- Helper methods --
 
+  /**
+   * Returns the number of bytes in each element of the given primitive
+   * array, or 0 if it is not a supported array type.
+   */
+  private static int getBytesPerSample(Object array) {
+    if (array instanceof byte[]) {
+      return 1;
+    }
+    if (array instanceof short[]) {
+      return 2;
+    }
+    if (array instanceof int[] || array instanceof float[]) {
+      return 4;
+    }
+    if (array instanceof long[] || array instanceof double[]) {
+      return 8;
+    }
+    return 0;
+  }
+
+  /**
+   * Allocates a primitive array of the type used for samples with the
+   * given number of bytes, or returns null if there is no such type.
+   */
+  private static Object allocateSamples(int bpp, boolean fp, int count) {
+    switch (bpp) {
+      case 1:
+        return new byte[count];
+      case 2:
+        return new short[count];
+      case 4:
+        return fp ? (Object) new float[count] : (Object) new int[count];
+      case 8:
+        return fp ? (Object) new double[count] : (Object) new long[count];
+      default:
+        return null;
+    }
+  }
+
   private static String sizeAsProduct(int... sizes) {
     StringBuilder sb = new StringBuilder();
     boolean first = true;
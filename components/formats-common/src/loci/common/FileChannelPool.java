@@ -0,0 +1,201 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional process-wide pool of read-only files, which allows all of the
+ * read-only {@link NIOFileHandle}s on the same file to share one
+ * {@link RandomAccessFile} and its {@link java.nio.channels.FileChannel}.
+ *
+ * The pool is disabled by default.  When it is enabled with
+ * {@link #setMaximumSize(int)}, files remain open after the last handle
+ * using them is closed, and are only closed when more than the maximum
+ * number of unused files are open, least recently used first.  Files are
+ * identified by path, size and modification time, so a file that changes
+ * is reopened.
+ *
+ * Handles that share a file must only use positional channel operations,
+ * as {@link NIOFileHandle} does for reading.
+ */
+public final class FileChannelPool {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(FileChannelPool.class);
+
+  // -- Static fields --
+
+  /** Maximum number of unused files that are kept open. */
+  private static int maxSize = 0;
+
+  /** Open files, keyed by path, size and modification time. */
+  private static final Map<String, Entry> OPEN = new HashMap<String, Entry>();
+
+  /** Open files that are in use, and the entries that they belong to. */
+  private static final Map<RandomAccessFile, Entry> IN_USE =
+    new IdentityHashMap<RandomAccessFile, Entry>();
+
+  /** Open files that are not in use, in least recently used order. */
+  private static final LinkedHashMap<String, Entry> IDLE =
+    new LinkedHashMap<String, Entry>();
+
+  // -- Constructor --
+
+  private FileChannelPool() { }
+
+  // -- FileChannelPool API methods --
+
+  /**
+   * Sets the maximum number of unused files that are kept open.
+   * A size of 0 disables the pool, and closes any unused files.
+   */
+  public static synchronized void setMaximumSize(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Invalid pool size: " + size);
+    }
+    maxSize = size;
+    evict();
+  }
+
+  /** Gets the maximum number of unused files that are kept open. */
+  public static synchronized int getMaximumSize() {
+    return maxSize;
+  }
+
+  /** Returns true if read-only handles share files from the pool. */
+  public static synchronized boolean isEnabled() {
+    return maxSize > 0;
+  }
+
+  /** Returns the number of files currently held open by the pool. */
+  public static synchronized int getOpenCount() {
+    return OPEN.size();
+  }
+
+  /**
+   * Gets a read-only RandomAccessFile for the given file, opening it if it
+   * is not already open.  Each call must be matched by a call to
+   * {@link #release(RandomAccessFile)}.
+   */
+  public static synchronized RandomAccessFile acquire(File file)
+    throws IOException
+  {
+    String key = file.getAbsolutePath() + "\n" + file.length() + "\n" +
+      file.lastModified();
+    Entry entry = OPEN.get(key);
+    if (entry == null) {
+      entry = new Entry(key, new RandomAccessFile(file, "r"));
+      OPEN.put(key, entry);
+      IN_USE.put(entry.file, entry);
+    }
+    else if (entry.users == 0) {
+      IDLE.remove(key);
+      IN_USE.put(entry.file, entry);
+    }
+    entry.users++;
+    return entry.file;
+  }
+
+  /**
+   * Releases a file obtained from {@link #acquire(File)}.  The file stays
+   * open for reuse unless the pool is full.
+   */
+  public static synchronized void release(RandomAccessFile file)
+    throws IOException
+  {
+    Entry entry = IN_USE.get(file);
+    if (entry == null) {
+      file.close();
+      return;
+    }
+    entry.users--;
+    if (entry.users == 0) {
+      IN_USE.remove(file);
+      IDLE.put(entry.key, entry);
+      evict();
+    }
+  }
+
+  /** Closes all files that are not in use. */
+  public static synchronized void clear() {
+    int size = maxSize;
+    maxSize = 0;
+    evict();
+    maxSize = size;
+  }
+
+  // -- Helper methods --
+
+  /** Closes unused files until no more than the maximum are open. */
+  private static void evict() {
+    Iterator<Entry> entries = IDLE.values().iterator();
+    while (IDLE.size() > maxSize && entries.hasNext()) {
+      Entry entry = entries.next();
+      entries.remove();
+      OPEN.remove(entry.key);
+      try {
+        entry.file.close();
+      }
+      catch (IOException e) {
+        LOGGER.debug("Could not close {}", entry.key, e);
+      }
+    }
+  }
+
+  // -- Helper classes --
+
+  private static class Entry {
+    private final String key;
+    private final RandomAccessFile file;
+    private int users;
+
+    public Entry(String key, RandomAccessFile file) {
+      this.key = key;
+      this.file = file;
+    }
+  }
+
+}
@@ -120,7 +120,10 @@ public class FileHandle implements IRandomAccess {
   public int read(ByteBuffer buffer, int off, int len) throws IOException {
     byte[] b = new byte[len];
     int n = read(b);
-    buffer.put(b, off, len);
+    if (n > 0) {
+      buffer.position(off);
+      buffer.put(b, 0, n);
+    }
     return n;
   }
 
@@ -0,0 +1,628 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides random access to HTTP and HTTPS URLs using the IRandomAccess
+ * interface.  Instances of HTTPRangeHandle are read-only.
+ *
+ * The remote file is divided into fixed-size, aligned blocks which are
+ * fetched with HTTP range requests and kept in a bounded, least recently
+ * used cache.  Consecutive blocks that are needed by a single read and are
+ * not cached are fetched with one request, and when reads move
+ * sequentially through the file, an increasing number of following blocks
+ * is fetched along with each missing block.  The length of the file is
+ * obtained from a HEAD request when the handle is constructed.
+ *
+ * @see IRandomAccess
+ * @see URLHandle
+ * @see java.net.HttpURLConnection
+ */
+public class HTTPRangeHandle implements IRandomAccess {
+
+  // -- Constants --
+
+  /** Default size in bytes of each block. */
+  public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+  /** Default maximum number of bytes held by the block cache. */
+  public static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+
+  /** Maximum number of blocks that are read ahead of a sequential read. */
+  public static final int MAX_READ_AHEAD = 16;
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(HTTPRangeHandle.class);
+
+  /** Error message to be used when instantiating an EOFException. */
+  private static final String EOF_ERROR_MSG =
+    "Attempting to read beyond end of file.";
+
+  // -- Fields --
+
+  /** URL of the remote file. */
+  private URL url;
+
+  /** Length of the remote file. */
+  private long length;
+
+  /** Current position within the file. */
+  private long fp;
+
+  /** Byte ordering of this stream. */
+  private ByteOrder order;
+
+  /** Size in bytes of each block. */
+  private final int blockSize;
+
+  /** Maximum number of blocks in the cache. */
+  private final int maxBlocks;
+
+  /** Cached blocks, in least recently used order. */
+  private final Map<Long, byte[]> blocks;
+
+  /** Index of the block following the most recent request. */
+  private long nextBlock = -1;
+
+  /** Number of blocks to read ahead of the next sequential miss. */
+  private int readAhead;
+
+  /** Number of range requests issued so far. */
+  private long requests;
+
+  /** Buffer used to decode primitive values. */
+  private final ByteBuffer scratch = ByteBuffer.allocate(8);
+
+  // -- Constructors --
+
+  /**
+   * Constructs a new HTTPRangeHandle for the given URL, using the default
+   * block size and cache size.
+   *
+   * @throws HandleException if the server does not report the length of
+   *   the file, or does not accept range requests
+   */
+  public HTTPRangeHandle(String url) throws IOException {
+    this(url, DEFAULT_BLOCK_SIZE, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Constructs a new HTTPRangeHandle for the given URL.
+   *
+   * @param url the http:// or https:// URL of the file
+   * @param blockSize the size in bytes of each block
+   * @param cacheSize the maximum number of bytes held by the block cache;
+   *   at least two blocks are always cached
+   * @throws HandleException if the server does not report the length of
+   *   the file, or does not accept range requests
+   */
+  public HTTPRangeHandle(String url, int blockSize, long cacheSize)
+    throws IOException
+  {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("Invalid block size: " + blockSize);
+    }
+    this.url = new URL(url);
+    this.blockSize = blockSize;
+    this.maxBlocks = (int) Math.max(2,
+      Math.min(Integer.MAX_VALUE, cacheSize / blockSize));
+    this.order = ByteOrder.BIG_ENDIAN;
+    this.blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+        return size() > maxBlocks;
+      }
+    };
+
+    HttpURLConnection conn = openConnection();
+    conn.setRequestMethod("HEAD");
+    int code = conn.getResponseCode();
+    if (code == HttpURLConnection.HTTP_NOT_FOUND ||
+      code == HttpURLConnection.HTTP_GONE)
+    {
+      conn.disconnect();
+      throw new FileNotFoundException(url);
+    }
+    if (code != HttpURLConnection.HTTP_OK) {
+      conn.disconnect();
+      throw new HandleException("HEAD request for " + url +
+        " failed with status " + code);
+    }
+    length = conn.getContentLengthLong();
+    String ranges = conn.getHeaderField("Accept-Ranges");
+    conn.getInputStream().close();
+    if (length < 0) {
+      throw new HandleException("Length of " + url + " is unknown");
+    }
+    if (ranges != null && ranges.trim().equalsIgnoreCase("none")) {
+      throw new HandleException(url + " does not accept range requests");
+    }
+  }
+
+  // -- HTTPRangeHandle API methods --
+
+  /** Returns the size in bytes of each block. */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /** Returns the number of range requests that have been issued. */
+  public long getRequestCount() {
+    return requests;
+  }
+
+  // -- IRandomAccess API methods --
+
+  /* @see IRandomAccess#close() */
+  @Override
+  public void close() throws IOException {
+    blocks.clear();
+    length = fp = 0;
+    nextBlock = -1;
+    readAhead = 0;
+  }
+
+  /* @see IRandomAccess#getFilePointer() */
+  @Override
+  public long getFilePointer() throws IOException {
+    return fp;
+  }
+
+  /* @see IRandomAccess#length() */
+  @Override
+  public long length() throws IOException {
+    return length;
+  }
+
+  /* @see IRandomAccess#getOrder() */
+  @Override
+  public ByteOrder getOrder() {
+    return order;
+  }
+
+  /* @see IRandomAccess#setOrder(ByteOrder) */
+  @Override
+  public void setOrder(ByteOrder order) {
+    this.order = order;
+  }
+
+  /* @see IRandomAccess#read(byte[]) */
+  @Override
+  public int read(byte[] b) throws IOException {
+    return read(b, 0, b.length);
+  }
+
+  /* @see IRandomAccess#read(byte[], int, int) */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n = (int) Math.min(len, length - fp);
+    if (n <= 0) {
+      return n < 0 ? -1 : 0;
+    }
+    long last = (fp + n - 1) / blockSize;
+    int total = 0;
+    while (total < n) {
+      long index = fp / blockSize;
+      byte[] block = getBlock(index, last);
+      int pos = (int) (fp - index * blockSize);
+      int count = Math.min(block.length - pos, n - total);
+      System.arraycopy(block, pos, b, off + total, count);
+      total += count;
+      fp += count;
+    }
+    return total;
+  }
+
+  /* @see IRandomAccess#read(ByteBuffer) */
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    return read(buffer, 0, buffer.capacity());
+  }
+
+  /* @see IRandomAccess#read(ByteBuffer, int, int) */
+  @Override
+  public int read(ByteBuffer buffer, int off, int len) throws IOException {
+    if (buffer.hasArray()) {
+      return read(buffer.array(), buffer.arrayOffset() + off, len);
+    }
+
+    byte[] b = new byte[len];
+    int n = read(b);
+    if (n > 0) {
+      buffer.position(off);
+      buffer.put(b, 0, n);
+    }
+    return n;
+  }
+
+  /* @see IRandomAccess#seek(long) */
+  @Override
+  public void seek(long pos) throws IOException {
+    fp = pos;
+  }
+
+  /* @see IRandomAccess#write(ByteBuffer) */
+  @Override
+  public void write(ByteBuffer buf) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see IRandomAccess#write(ByteBuffer, int, int) */
+  @Override
+  public void write(ByteBuffer buf, int off, int len) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  // -- DataInput API methods --
+
+  /* @see java.io.DataInput#readBoolean() */
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  /* @see java.io.DataInput#readByte() */
+  @Override
+  public byte readByte() throws IOException {
+    return readPrimitive(1).get();
+  }
+
+  /* @see java.io.DataInput#readChar() */
+  @Override
+  public char readChar() throws IOException {
+    return readPrimitive(2).getChar();
+  }
+
+  /* @see java.io.DataInput#readDouble() */
+  @Override
+  public double readDouble() throws IOException {
+    return readPrimitive(8).getDouble();
+  }
+
+  /* @see java.io.DataInput#readFloat() */
+  @Override
+  public float readFloat() throws IOException {
+    return readPrimitive(4).getFloat();
+  }
+
+  /* @see java.io.DataInput#readFully(byte[]) */
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  /* @see java.io.DataInput#readFully(byte[], int, int) */
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    if (fp + len > length) {
+      throw new EOFException(EOF_ERROR_MSG);
+    }
+    read(b, off, len);
+  }
+
+  /* @see java.io.DataInput#readInt() */
+  @Override
+  public int readInt() throws IOException {
+    return readPrimitive(4).getInt();
+  }
+
+  /* @see java.io.DataInput#readLine() */
+  @Override
+  public String readLine() throws IOException {
+    throw new IOException("Unimplemented");
+  }
+
+  /* @see java.io.DataInput#readLong() */
+  @Override
+  public long readLong() throws IOException {
+    return readPrimitive(8).getLong();
+  }
+
+  /* @see java.io.DataInput#readShort() */
+  @Override
+  public short readShort() throws IOException {
+    return readPrimitive(2).getShort();
+  }
+
+  /* @see java.io.DataInput#readUnsignedByte() */
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xff;
+  }
+
+  /* @see java.io.DataInput#readUnsignedShort() */
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xffff;
+  }
+
+  /* @see java.io.DataInput#readUTF() */
+  @Override
+  public String readUTF() throws IOException {
+    int length = readUnsignedShort();
+    byte[] b = new byte[length];
+    readFully(b);
+    return new String(b, Constants.ENCODING);
+  }
+
+  /* @see java.io.DataInput#skipBytes(int) */
+  @Override
+  public int skipBytes(int n) throws IOException {
+    int skipped = (int) Math.min(n, length - fp);
+    if (skipped < 0) {
+      return 0;
+    }
+    fp += skipped;
+    return skipped;
+  }
+
+  // -- DataOutput API methods --
+
+  /* @see java.io.DataOutput#write(byte[]) */
+  @Override
+  public void write(byte[] b) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#write(byte[], int, int) */
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#write(int) */
+  @Override
+  public void write(int b) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeBoolean(boolean) */
+  @Override
+  public void writeBoolean(boolean v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeByte(int) */
+  @Override
+  public void writeByte(int v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeBytes(String) */
+  @Override
+  public void writeBytes(String s) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeChar(int) */
+  @Override
+  public void writeChar(int v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeChars(String) */
+  @Override
+  public void writeChars(String s) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeDouble(double) */
+  @Override
+  public void writeDouble(double v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeFloat(float) */
+  @Override
+  public void writeFloat(float v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeInt(int) */
+  @Override
+  public void writeInt(int v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeLong(long) */
+  @Override
+  public void writeLong(long v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeShort(int) */
+  @Override
+  public void writeShort(int v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeUTF(String) */
+  @Override
+  public void writeUTF(String str) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Reads the given number of bytes into the scratch buffer, which is
+   * returned ready to decode a value in the current byte order.
+   */
+  private ByteBuffer readPrimitive(int n) throws IOException {
+    if (fp + n > length) {
+      throw new EOFException(EOF_ERROR_MSG);
+    }
+    scratch.clear();
+    read(scratch.array(), 0, n);
+    scratch.limit(n);
+    scratch.order(order);
+    return scratch;
+  }
+
+  /**
+   * Gets the block with the given index, fetching it if it is not cached.
+   * A request for a missing block also fetches the uncached blocks that
+   * immediately follow it, up to the block with index <code>last</code>
+   * plus any blocks that are read ahead.
+   */
+  private byte[] getBlock(long index, long last) throws IOException {
+    byte[] block = blocks.get(index);
+    if (block != null) {
+      return block;
+    }
+
+    // grow the read-ahead window while misses are sequential
+    if (index == nextBlock) {
+      readAhead = Math.max(1, Math.min(readAhead * 2, MAX_READ_AHEAD));
+    }
+    else {
+      readAhead = 0;
+    }
+
+    // keep each request to at most half of the cache, so that the blocks
+    // it fetches are still cached when they are copied
+    long blockCount = (length + blockSize - 1) / blockSize;
+    long end = Math.min(last + readAhead, blockCount - 1);
+    end = Math.min(end, index + Math.max(1, maxBlocks / 2) - 1);
+    for (long i=index + 1; i<=end; i++) {
+      if (blocks.containsKey(i)) {
+        end = i - 1;
+        break;
+      }
+    }
+
+    fetch(index, end);
+    nextBlock = end + 1;
+    return blocks.get(index);
+  }
+
+  /** Fetches and caches the blocks from first to last, inclusive. */
+  private void fetch(long first, long last) throws IOException {
+    long start = first * blockSize;
+    long end = Math.min(length, (last + 1) * blockSize) - 1;
+    LOGGER.trace("Fetching bytes {}-{} of {}",
+      new Object[] {start, end, url});
+
+    HttpURLConnection conn = openConnection();
+    conn.setRequestProperty("Range", "bytes=" + start + "-" + end);
+    int code = conn.getResponseCode();
+    requests++;
+    if (code != HttpURLConnection.HTTP_PARTIAL &&
+      code != HttpURLConnection.HTTP_OK)
+    {
+      conn.disconnect();
+      throw new IOException("Range request for " + url +
+        " failed with status " + code);
+    }
+
+    DataInputStream in = new DataInputStream(conn.getInputStream());
+    try {
+      if (code == HttpURLConnection.HTTP_OK) {
+        // the server ignored the range, so the whole file is returned
+        LOGGER.debug("Server ignored range request for {}", url);
+        skipFully(in, start);
+      }
+      else if (getRangeStart(conn) != start) {
+        throw new IOException("Unexpected Content-Range from " + url +
+          ": " + conn.getHeaderField("Content-Range"));
+      }
+      for (long i=first; i<=last; i++) {
+        int size = (int) Math.min(blockSize, length - i * blockSize);
+        byte[] block = new byte[size];
+        in.readFully(block);
+        blocks.put(i, block);
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /** Opens a new connection to the URL. */
+  private HttpURLConnection openConnection() throws IOException {
+    return (HttpURLConnection) url.openConnection();
+  }
+
+  /**
+   * Returns the first byte in the Content-Range header of the given
+   * response, or -1 if the header is missing or invalid.
+   */
+  private static long getRangeStart(HttpURLConnection conn) {
+    String range = conn.getHeaderField("Content-Range");
+    if (range == null) {
+      return -1;
+    }
+    range = range.trim();
+    int space = range.indexOf(" ");
+    int dash = range.indexOf("-", space + 1);
+    if (space < 0 || dash < 0) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(range.substring(space + 1, dash).trim());
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /** Skips exactly the given number of bytes in the stream. */
+  private static void skipFully(InputStream in, long n) throws IOException {
+    while (n > 0) {
+      long skipped = in.skip(n);
+      if (skipped <= 0) {
+        if (in.read() < 0) {
+          throw new EOFException(EOF_ERROR_MSG);
+        }
+        skipped = 1;
+      }
+      n -= skipped;
+    }
+  }
+
+}
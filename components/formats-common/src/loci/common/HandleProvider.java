@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common;
+
+import java.io.IOException;
+
+/**
+ * Interface for classes that create {@link IRandomAccess} handles for a
+ * particular kind of id, such as a URL scheme or an archive format.
+ * Providers are consulted in order by {@link Location#getHandle}; see
+ * {@link HandleProviderRegistry} for how to add a provider.
+ *
+ * @see HandleProviderRegistry
+ */
+public interface HandleProvider {
+
+  /**
+   * Checks whether this provider may be able to open the given id, using
+   * only the id itself (for example its scheme or suffix).  This method
+   * must not open the id.
+   */
+  boolean accepts(String id);
+
+  /**
+   * Checks whether the data at the given id is of the type opened by this
+   * provider, for example by reading magic bytes.  This is only called for
+   * ids that are accepted by {@link #accepts(String)}.  For local files,
+   * the result is cached until the size or modification time of the file
+   * changes.
+   */
+  boolean isThisType(String id) throws IOException;
+
+  /**
+   * Returns true if this provider opens archives, in which case it is not
+   * used when archive handles are disallowed.
+   */
+  boolean isArchive();
+
+  /**
+   * Creates a handle for the given id.
+   *
+   * @param id the id to open
+   * @param writable true if the handle must be writable
+   * @param bufferSize the requested buffer size, or 0 for the default
+   */
+  IRandomAccess createHandle(String id, boolean writable, int bufferSize)
+    throws IOException;
+
+}
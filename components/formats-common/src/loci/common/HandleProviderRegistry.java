@@ -0,0 +1,321 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ordered registry of the {@link HandleProvider}s used by
+ * {@link Location#getHandle}.  Ids that are not claimed by any provider
+ * are opened as local files.
+ *
+ * Providers listed in <code>META-INF/services/loci.common.HandleProvider</code>
+ * files on the class path are consulted first, followed by the built-in
+ * providers for HTTP(S) URLs, for entries inside Zip files, and for Zip,
+ * GZip and BZip2 files.  Providers added with
+ * {@link #addProvider(HandleProvider)} take precedence over all of these.
+ *
+ * The result of each {@link HandleProvider#isThisType(String)} check on a
+ * local file is cached, keyed by the file's path, size and modification
+ * time, so that repeatedly opening the same file does not read its magic
+ * bytes each time.
+ */
+public final class HandleProviderRegistry {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(HandleProviderRegistry.class);
+
+  /** Maximum number of cached type checks. */
+  private static final int MAX_CACHED_PROBES = 4096;
+
+  // -- Static fields --
+
+  private static final List<HandleProvider> PROVIDERS =
+    new CopyOnWriteArrayList<HandleProvider>();
+
+  private static final Map<String, Boolean> PROBES =
+    new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > MAX_CACHED_PROBES;
+      }
+    };
+
+  static {
+    Iterator<HandleProvider> services =
+      ServiceLoader.load(HandleProvider.class).iterator();
+    while (true) {
+      try {
+        if (!services.hasNext()) break;
+        PROVIDERS.add(services.next());
+      }
+      catch (ServiceConfigurationError e) {
+        LOGGER.warn("Could not load handle provider", e);
+      }
+    }
+    PROVIDERS.add(new HTTPProvider());
+    PROVIDERS.add(new ZipEntryProvider());
+    PROVIDERS.add(new ZipProvider());
+    PROVIDERS.add(new GZipProvider());
+    PROVIDERS.add(new BZip2Provider());
+  }
+
+  // -- Constructor --
+
+  private HandleProviderRegistry() { }
+
+  // -- HandleProviderRegistry API methods --
+
+  /**
+   * Adds a provider, which is consulted before all previously registered
+   * providers.
+   */
+  public static void addProvider(HandleProvider provider) {
+    PROVIDERS.add(0, provider);
+  }
+
+  /** Removes a provider. */
+  public static void removeProvider(HandleProvider provider) {
+    PROVIDERS.remove(provider);
+  }
+
+  /** Gets the registered providers, in the order in which they are used. */
+  public static List<HandleProvider> getProviders() {
+    return new ArrayList<HandleProvider>(PROVIDERS);
+  }
+
+  /**
+   * Gets the first provider that can open the given id, or null if the id
+   * should be opened as a local file.
+   *
+   * @param id the (already mapped) id to open
+   * @param allowArchiveHandles false if archive providers are to be skipped
+   */
+  public static HandleProvider getProvider(String id,
+    boolean allowArchiveHandles) throws IOException
+  {
+    for (HandleProvider provider : PROVIDERS) {
+      if (provider.isArchive() && !allowArchiveHandles) continue;
+      if (provider.accepts(id) && isThisType(provider, id)) {
+        return provider;
+      }
+    }
+    return null;
+  }
+
+  /** Discards all cached type checks. */
+  public static void clearCache() {
+    synchronized (PROBES) {
+      PROBES.clear();
+    }
+  }
+
+  // -- Helper methods --
+
+  /** Checks the type of the given id, using the cache for local files. */
+  private static boolean isThisType(HandleProvider provider, String id)
+    throws IOException
+  {
+    File file = new File(id);
+    if (!file.isFile()) {
+      return provider.isThisType(id);
+    }
+
+    String key = provider.getClass().getName() + "\n" +
+      file.getAbsolutePath() + "\n" + file.length() + "\n" +
+      file.lastModified();
+    synchronized (PROBES) {
+      Boolean cached = PROBES.get(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    boolean result = provider.isThisType(id);
+    synchronized (PROBES) {
+      PROBES.put(key, result);
+    }
+    return result;
+  }
+
+  // -- Helper classes --
+
+  /** Opens HTTP and HTTPS URLs. */
+  private static class HTTPProvider implements HandleProvider {
+    @Override
+    public boolean accepts(String id) {
+      return id.startsWith("http://") || id.startsWith("https://");
+    }
+
+    @Override
+    public boolean isThisType(String id) {
+      return true;
+    }
+
+    @Override
+    public boolean isArchive() {
+      return false;
+    }
+
+    @Override
+    public IRandomAccess createHandle(String id, boolean writable,
+      int bufferSize) throws IOException
+    {
+      try {
+        return new HTTPRangeHandle(id);
+      }
+      catch (HandleException e) {
+        LOGGER.debug("Falling back to sequential access for {}", id, e);
+        return new URLHandle(id);
+      }
+    }
+  }
+
+  /** Opens entries inside Zip files, such as /data/study.zip/image1.dcm. */
+  private static class ZipEntryProvider implements HandleProvider {
+    @Override
+    public boolean accepts(String id) {
+      return ZipArchive.isArchivePath(id);
+    }
+
+    @Override
+    public boolean isThisType(String id) throws IOException {
+      String[] split = ZipArchive.split(id);
+      return split != null && ZipArchive.open(split[0]).isFile(split[1]);
+    }
+
+    // NB: entries have no raw form, so they are opened even when archive
+    // handles are not allowed
+    @Override
+    public boolean isArchive() {
+      return false;
+    }
+
+    @Override
+    public IRandomAccess createHandle(String id, boolean writable,
+      int bufferSize) throws IOException
+    {
+      String[] split = ZipArchive.split(id);
+      return new ZipEntryHandle(split[0], split[1]);
+    }
+  }
+
+  /** Opens the first entry of Zip files. */
+  private static class ZipProvider implements HandleProvider {
+    @Override
+    public boolean accepts(String id) {
+      return id.toLowerCase().endsWith(".zip");
+    }
+
+    @Override
+    public boolean isThisType(String id) throws IOException {
+      return ZipHandle.isZipFile(id);
+    }
+
+    @Override
+    public boolean isArchive() {
+      return true;
+    }
+
+    @Override
+    public IRandomAccess createHandle(String id, boolean writable,
+      int bufferSize) throws IOException
+    {
+      return new ZipHandle(id);
+    }
+  }
+
+  /** Opens GZip files. */
+  private static class GZipProvider implements HandleProvider {
+    @Override
+    public boolean accepts(String id) {
+      return id.toLowerCase().endsWith(".gz");
+    }
+
+    @Override
+    public boolean isThisType(String id) throws IOException {
+      return GZipHandle.isGZipFile(id);
+    }
+
+    @Override
+    public boolean isArchive() {
+      return true;
+    }
+
+    @Override
+    public IRandomAccess createHandle(String id, boolean writable,
+      int bufferSize) throws IOException
+    {
+      return new GZipHandle(id);
+    }
+  }
+
+  /** Opens BZip2 files. */
+  private static class BZip2Provider implements HandleProvider {
+    @Override
+    public boolean accepts(String id) {
+      return id.toLowerCase().endsWith(".bz2");
+    }
+
+    @Override
+    public boolean isThisType(String id) throws IOException {
+      return BZip2Handle.isBZip2File(id);
+    }
+
+    @Override
+    public boolean isArchive() {
+      return true;
+    }
+
+    @Override
+    public IRandomAccess createHandle(String id, boolean writable,
+      int bufferSize) throws IOException
+    {
+      return new BZip2Handle(id);
+    }
+  }
+
+}
@@ -90,7 +90,9 @@ public interface IRandomAccess extends DataInput, DataOutput {
   int read(ByteBuffer buffer) throws IOException;
 
   /**
-   * Reads up to len bytes of data from this stream into a ByteBuffer.
+   * Reads up to len bytes of data from this stream into a ByteBuffer,
+   * starting at the given index within the buffer.  The buffer's position
+   * and limit may be modified.
    *
    * @return the total number of bytes read into the buffer.
    */
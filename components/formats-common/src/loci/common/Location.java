@@ -34,6 +34,7 @@ package loci.common;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -46,6 +47,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import loci.common.metrics.MeteredHandle;
+import loci.common.metrics.MetricsRegistry;
+import loci.common.metrics.TraceHandle;
+import loci.common.metrics.TraceLog;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -80,12 +86,21 @@ public class Location {
   // By default, cache for one hour.
   private static volatile long cacheNanos = 60L * 60L * 1000L * 1000L * 1000L;
 
+  /**
+   * Directories modified less than this many milliseconds before they are
+   * listed are not cached, since further changes within the file system's
+   * timestamp resolution would not be detected.
+   */
+  private static final long RACY_MILLIS = 2000;
+
   protected class ListingsResult {
     public final String [] listing;
     public final long time;
-    ListingsResult(String [] listing, long time) {
+    public final long lastModified;
+    ListingsResult(String [] listing, long time, long lastModified) {
       this.listing = listing;
       this.time = time;
+      this.lastModified = lastModified;
     }
   }
   private static final Map<String, ListingsResult> fileListings =
@@ -97,6 +112,12 @@ public class Location {
   private URL url;
   private File file;
 
+  /** Path of the Zip file containing this location, or null. */
+  private String archivePath;
+
+  /** Path of this location inside {@link #archivePath}. */
+  private String entryPath;
+
   // -- Constructors --
 
   public Location(String pathname) {
@@ -115,13 +136,17 @@ public class Location {
       LOGGER.trace("Location is not a URL");
       isURL = false;
     }
-    if (!isURL) file = new File(getMappedId(pathname));
+    if (!isURL) {
+      file = new File(getMappedId(pathname));
+      findArchive();
+    }
   }
 
   public Location(File file) {
     LOGGER.trace("Location({})", file);
     isURL = false;
     this.file = file;
+    findArchive();
   }
 
   public Location(String parent, String child) {
@@ -157,7 +182,10 @@ public class Location {
    * operations, so the directory could change by the time you access the file.
    *
    * Reasons not to cache - the contents of the directories might change
-   * during the program invocation.
+   * during the program invocation.  Cached listings of local directories
+   * are discarded when the directory's modification time changes, but this
+   * cannot detect changes to remote directories or changes that were made
+   * without updating the modification time.
    *
    * @param cache - true to turn cacheing on, false to leave it off.
    */
@@ -303,17 +331,10 @@ public class Location {
       LOGGER.trace("no handle was mapped for this ID");
       String mapId = getMappedId(id);
 
-      if (id.startsWith("http://") || id.startsWith("https://")) {
-        handle = new URLHandle(mapId);
-      }
-      else if (allowArchiveHandles && ZipHandle.isZipFile(mapId)) {
-        handle = new ZipHandle(mapId);
-      }
-      else if (allowArchiveHandles && GZipHandle.isGZipFile(mapId)) {
-        handle = new GZipHandle(mapId);
-      }
-      else if (allowArchiveHandles && BZip2Handle.isBZip2File(mapId)) {
-        handle = new BZip2Handle(mapId);
+      HandleProvider provider =
+        HandleProviderRegistry.getProvider(mapId, allowArchiveHandles);
+      if (provider != null) {
+        handle = provider.createHandle(mapId, writable, bufferSize);
       }
       else {
         if (bufferSize > 0) {
@@ -324,6 +345,13 @@ public class Location {
           handle = new NIOFileHandle(mapId, writable ? "rw" : "r");
         }
       }
+      TraceLog trace = TraceLog.getGlobal();
+      if (trace != null) {
+        handle = new TraceHandle(handle, mapId, trace);
+      }
+      if (MetricsRegistry.isEnabled()) {
+        handle = new MeteredHandle(handle);
+      }
     }
     LOGGER.trace("Location.getHandle: {} -> {}", id, handle);
     return handle;
@@ -343,6 +371,16 @@ public class Location {
       // not destroy an existing mapped IRandomAccess handle by closing it.
       return;
     }
+    String mapId = getMappedId(id);
+    if (HandleProviderRegistry.getProvider(mapId, true) == null) {
+      // NB: A plain file would be opened with a NIOFileHandle, which
+      // succeeds exactly when the file exists and can be read.
+      File file = new File(mapId);
+      if (!file.isFile() || !file.canRead()) {
+        throw new FileNotFoundException(mapId);
+      }
+      return;
+    }
     // NB: Try to actually open a handle to make sure it is valid. Close it
     // afterward so we don't leave it dangling. The process of doing this will
     // throw IOException if something goes wrong.
@@ -362,10 +400,15 @@ public class Location {
     if (cacheListings) {
       cleanStaleCacheEntries();
       ListingsResult listingsResult = fileListings.get(key);
-      if (listingsResult != null) {
+      if (listingsResult != null && (isURL ||
+        listingsResult.lastModified == lastModified()))
+      {
         return listingsResult.listing;
       }
     }
+    // NB: record the modification time before listing, so that any change
+    // made while the directory is being listed invalidates the cached copy
+    long modified = isURL || file == null ? 0 : lastModified();
     final List<String> files = new ArrayList<String>();
     if (isURL) {
       try {
@@ -413,6 +456,12 @@ public class Location {
     else {
       if (file == null) return null;
       String[] f = file.list();
+      if (f == null) {
+        ZipArchive archive = getArchive();
+        if (archive != null) {
+          f = archive.list(entryPath == null ? "" : entryPath);
+        }
+      }
       if (f == null) return null;
       String path = file.getAbsolutePath();
       for (String name : f) {
@@ -426,7 +475,13 @@ public class Location {
 
     result = files.toArray(new String[files.size()]);
     if (cacheListings) {
-      fileListings.put(key, new ListingsResult(result, System.nanoTime()));
+      if (isURL || System.currentTimeMillis() - modified >= RACY_MILLIS) {
+        fileListings.put(key,
+          new ListingsResult(result, System.nanoTime(), modified));
+      }
+      else {
+        fileListings.remove(key);
+      }
     }
     LOGGER.trace("  returning {} files", files.size());
     return result;
@@ -443,7 +498,13 @@ public class Location {
    */
   public boolean canRead() {
     LOGGER.trace("canRead()");
-    return isURL ? (isDirectory() || isFile() || exists()) : file.canRead();
+    if (isURL) {
+      return isDirectory() || isFile() || exists();
+    }
+    if (entryPath != null) {
+      return exists();
+    }
+    return file.canRead();
   }
 
   /**
@@ -554,6 +615,10 @@ public class Location {
     }
     if (file.exists()) return true;
     if (getMappedFile(file.getPath()) != null) return true;
+    if (entryPath != null) {
+      ZipArchive archive = getArchive();
+      return archive != null && archive.exists(entryPath);
+    }
 
     String mappedId = getMappedId(file.getPath());
     return mappedId != null && new File(mappedId).exists();
@@ -650,6 +715,10 @@ public class Location {
       String[] list = list();
       return list != null;
     }
+    if (entryPath != null) {
+      ZipArchive archive = getArchive();
+      return archive != null && archive.isDirectory(entryPath);
+    }
     return file.isDirectory();
   }
 
@@ -660,7 +729,14 @@ public class Location {
    */
   public boolean isFile() {
     LOGGER.trace("isFile()");
-    return isURL ? (!isDirectory() && exists()) : file.isFile();
+    if (isURL) {
+      return !isDirectory() && exists();
+    }
+    if (entryPath != null) {
+      ZipArchive archive = getArchive();
+      return archive != null && archive.isFile(entryPath);
+    }
+    return file.isFile();
   }
 
   /**
@@ -700,6 +776,9 @@ public class Location {
         return 0;
       }
     }
+    if (entryPath != null) {
+      return exists() ? new File(archivePath).lastModified() : 0;
+    }
     return file.lastModified();
   }
 
@@ -718,6 +797,12 @@ public class Location {
         return 0;
       }
     }
+    if (entryPath != null) {
+      ZipArchive archive = getArchive();
+      ZipArchive.Entry entry =
+        archive == null ? null : archive.getEntry(entryPath);
+      return entry == null ? 0 : entry.getSize();
+    }
     return file.length();
   }
 
@@ -764,4 +849,36 @@ public class Location {
     return isURL ? url.toString() : file.toString();
   }
 
+  // -- Helper methods --
+
+  /**
+   * Checks whether this location is inside a Zip file, or is a Zip file
+   * itself, whose contents are then presented as a directory tree.
+   */
+  private void findArchive() {
+    String path = file.getPath();
+    if (ZipArchive.isArchivePath(path)) {
+      String[] split = ZipArchive.split(path);
+      if (split != null) {
+        archivePath = split[0];
+        entryPath = split[1];
+      }
+    }
+    else if (path.toLowerCase().endsWith(".zip")) {
+      archivePath = path;
+    }
+  }
+
+  /** Gets the index of the Zip file containing this location, or null. */
+  private ZipArchive getArchive() {
+    if (archivePath == null) return null;
+    try {
+      return ZipArchive.open(archivePath);
+    }
+    catch (IOException e) {
+      LOGGER.trace("Could not read Zip file {}", archivePath, e);
+      return null;
+    }
+  }
+
 }
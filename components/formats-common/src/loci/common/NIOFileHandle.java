@@ -105,6 +105,12 @@ public class NIOFileHandle extends AbstractNIOHandle {
   /** The original length of the file. */
   private Long defaultLength;
 
+  /** Whether the random access file was obtained from FileChannelPool. */
+  private boolean pooled;
+
+  /** Whether the pooled random access file has been released. */
+  private boolean released;
+
   // -- Constructors --
 
   /**
@@ -120,7 +126,13 @@ public class NIOFileHandle extends AbstractNIOHandle {
       isReadWrite = true;
       mapMode = FileChannel.MapMode.READ_WRITE;
     }
-    raf = new RandomAccessFile(file, mode);
+    if (!isReadWrite && FileChannelPool.isEnabled()) {
+      raf = FileChannelPool.acquire(file);
+      pooled = true;
+    }
+    else {
+      raf = new RandomAccessFile(file, mode);
+    }
     channel = raf.getChannel();
     byteBufferProvider = new NIOByteBufferProvider(channel, mapMode);
     buffer(position, 0);
@@ -210,7 +222,15 @@ public class NIOFileHandle extends AbstractNIOHandle {
   /* @see IRandomAccess.close() */
   @Override
   public void close() throws IOException {
-    raf.close();
+    if (pooled) {
+      if (!released) {
+        released = true;
+        FileChannelPool.release(raf);
+      }
+    }
+    else {
+      raf.close();
+    }
   }
 
   /* @see IRandomAccess.getFilePointer() */
@@ -270,17 +290,29 @@ public class NIOFileHandle extends AbstractNIOHandle {
       return -1;
     }
     buf.limit(off + realLength);
+    if (!isReadWrite && !isBuffered(position, realLength) &&
+      (buf.isDirect() || realLength >= bufferSize))
+    {
+      // read straight from the channel, so that large reads (and reads into
+      // direct buffers) do not pass through the NIO buffer
+      while (buf.hasRemaining()) {
+        int n = channel.read(buf, position);
+        if (n < 0) {
+          throw new EOFException(EOF_ERROR_MSG);
+        }
+        position += n;
+      }
+      return realLength;
+    }
     buffer(position, realLength);
     position += realLength;
-    while (buf.hasRemaining()) {
-      try {
-        buf.put(buffer.get());
-      } catch (BufferUnderflowException e) {
-        EOFException eof = new EOFException(EOF_ERROR_MSG);
-        eof.initCause(e);
-        throw eof;
-      }
+    if (buffer.remaining() < realLength) {
+      throw new EOFException(EOF_ERROR_MSG);
     }
+    ByteBuffer src = buffer.duplicate();
+    src.limit(src.position() + realLength);
+    buf.put(src);
+    buffer.position(src.position());
     return realLength;
   }
 
@@ -384,9 +416,15 @@ public class NIOFileHandle extends AbstractNIOHandle {
   /* @see java.io.DataInput.readLine() */
   @Override
   public String readLine() throws IOException {
-    raf.seek(position);
-    String line = raf.readLine();
-    buffer(raf.getFilePointer(), 0);
+    String line;
+    long end;
+    // NB: the file pointer is shared if the file came from FileChannelPool
+    synchronized (raf) {
+      raf.seek(position);
+      line = raf.readLine();
+      end = raf.getFilePointer();
+    }
+    buffer(end, 0);
     return line;
   }
 
@@ -433,9 +471,14 @@ public class NIOFileHandle extends AbstractNIOHandle {
   /* @see java.io.DataInput.readUTF() */
   @Override
   public String readUTF() throws IOException {
-    raf.seek(position);
-    String utf8 = raf.readUTF();
-    buffer(raf.getFilePointer(), 0);
+    String utf8;
+    long end;
+    synchronized (raf) {
+      raf.seek(position);
+      utf8 = raf.readUTF();
+      end = raf.getFilePointer();
+    }
+    buffer(end, 0);
     return utf8;
   }
 
@@ -610,6 +653,15 @@ public class NIOFileHandle extends AbstractNIOHandle {
     }
   }
 
+  /**
+   * Returns true if the given range of the file is held by the current
+   * buffer.
+   */
+  private boolean isBuffered(long offset, int size) {
+    return buffer != null && offset >= bufferStartPosition &&
+      offset + size <= bufferStartPosition + buffer.limit();
+  }
+
   private void writeSetup(int length) throws IOException {
     validateLength(length);
     buffer(position, length);
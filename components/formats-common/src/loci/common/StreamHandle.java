@@ -140,12 +140,15 @@ public abstract class StreamHandle implements IRandomAccess {
   @Override
   public int read(ByteBuffer buffer, int off, int len) throws IOException {
     if (buffer.hasArray()) {
-      return read(buffer.array(), off, len);
+      return read(buffer.array(), buffer.arrayOffset() + off, len);
     }
 
     byte[] b = new byte[len];
     int n = read(b);
-    buffer.put(b, off, len);
+    if (n > 0) {
+      buffer.position(off);
+      buffer.put(b, 0, n);
+    }
     return n;
   }
 
@@ -0,0 +1,506 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the entries in a Zip file, read from the file's central
+ * directory.  Entries can be opened for random access with
+ * {@link ZipEntryHandle}, and {@link Location} uses the index to present
+ * the contents of a Zip file as a directory, so that an id such as
+ * <code>/data/study.zip/series1/image1.dcm</code> can be opened directly.
+ *
+ * Zip64 archives are supported; encrypted entries and compression
+ * methods other than STORED and DEFLATED are not.
+ *
+ * @see ZipEntryHandle
+ */
+public class ZipArchive {
+
+  // -- Constants --
+
+  /** Compression method of entries that are not compressed. */
+  public static final int STORED = 0;
+
+  /** Compression method of entries that are compressed with deflate. */
+  public static final int DEFLATED = 8;
+
+  private static final int LOCAL_HEADER = 0x04034b50;
+  private static final int CENTRAL_HEADER = 0x02014b50;
+  private static final int END_HEADER = 0x06054b50;
+  private static final int ZIP64_END_HEADER = 0x06064b50;
+  private static final int ZIP64_LOCATOR = 0x07064b50;
+
+  private static final int END_HEADER_LENGTH = 22;
+  private static final int MAX_COMMENT_LENGTH = 65535;
+
+  /** Maximum number of archive indexes kept in memory. */
+  private static final int MAX_CACHED_ARCHIVES = 16;
+
+  // -- Static fields --
+
+  /** Recently used archive indexes, keyed by absolute path. */
+  private static final Map<String, ZipArchive> ARCHIVES =
+    new LinkedHashMap<String, ZipArchive>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ZipArchive> e) {
+        return size() > MAX_CACHED_ARCHIVES;
+      }
+    };
+
+  // -- Fields --
+
+  private final String path;
+  private final long length;
+  private final long lastModified;
+
+  /** Entries by name, in central directory order. */
+  private final Map<String, Entry> entries =
+    new LinkedHashMap<String, Entry>();
+
+  /** Names of the children of each directory; the root is "". */
+  private final Map<String, Set<String>> children =
+    new HashMap<String, Set<String>>();
+
+  // -- Constructor --
+
+  /**
+   * Reads the central directory of the given Zip file.
+   *
+   * @throws HandleException if the file is not a valid Zip file
+   */
+  public ZipArchive(String path) throws IOException {
+    File file = new File(path);
+    this.path = path;
+    this.length = file.length();
+    this.lastModified = file.lastModified();
+    children.put("", new LinkedHashSet<String>());
+
+    IRandomAccess in = Location.getHandle(path, false, false);
+    try {
+      readCentralDirectory(in);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  // -- ZipArchive API methods --
+
+  /**
+   * Gets the index of the given Zip file, reusing a recently read index if
+   * the file has not changed since.
+   */
+  public static ZipArchive open(String path) throws IOException {
+    File file = new File(path);
+    String key = file.getAbsolutePath();
+    synchronized (ARCHIVES) {
+      ZipArchive archive = ARCHIVES.get(key);
+      if (archive != null && archive.length == file.length() &&
+        archive.lastModified == file.lastModified())
+      {
+        return archive;
+      }
+    }
+    ZipArchive archive = new ZipArchive(path);
+    synchronized (ARCHIVES) {
+      ARCHIVES.put(key, archive);
+    }
+    return archive;
+  }
+
+  /**
+   * Splits an id that names a path inside a Zip file, such as
+   * <code>/data/study.zip/series1/image1.dcm</code>, into the path of the
+   * Zip file and the path inside it (<code>series1/image1.dcm</code>,
+   * always separated by '/').
+   *
+   * @return the two paths, or null if the id does not name an existing
+   *   Zip file followed by a path
+   */
+  public static String[] split(String id) {
+    String lower = id.toLowerCase();
+    int index = lower.indexOf(".zip");
+    while (index >= 0) {
+      int end = index + 4;
+      if (end < id.length() && isSeparator(id.charAt(end))) {
+        String archive = id.substring(0, end);
+        if (new File(archive).isFile()) {
+          String entry = id.substring(end + 1).replace('\\', '/');
+          if (File.separatorChar != '/' && File.separatorChar != '\\') {
+            entry = entry.replace(File.separatorChar, '/');
+          }
+          return new String[] {archive, trimSlashes(entry)};
+        }
+      }
+      index = lower.indexOf(".zip", end);
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if the given id might name a path inside a Zip file,
+   * without checking the file system.
+   */
+  public static boolean isArchivePath(String id) {
+    String lower = id.toLowerCase();
+    int index = lower.indexOf(".zip");
+    while (index >= 0) {
+      int end = index + 4;
+      if (end < id.length() && isSeparator(id.charAt(end))) {
+        return true;
+      }
+      index = lower.indexOf(".zip", end);
+    }
+    return false;
+  }
+
+  /** Gets the path of the Zip file. */
+  public String getPath() {
+    return path;
+  }
+
+  /** Gets all entries, in the order of the central directory. */
+  public List<Entry> getEntries() {
+    return new ArrayList<Entry>(entries.values());
+  }
+
+  /** Gets the file entry with the given name, or null. */
+  public Entry getEntry(String name) {
+    Entry entry = entries.get(trimSlashes(name));
+    return entry == null || entry.isDirectory() ? null : entry;
+  }
+
+  /**
+   * Gets the entry that is opened for the Zip file itself: the first file
+   * whose name starts with the given prefix, or the first file if there is
+   * no such file.
+   *
+   * @return the entry, or null if the archive contains no files
+   */
+  public Entry getDefaultEntry(String prefix) {
+    Entry first = null;
+    for (Entry entry : entries.values()) {
+      if (entry.isDirectory()) continue;
+      if (entry.getName().startsWith(prefix)) return entry;
+      if (first == null) first = entry;
+    }
+    return first;
+  }
+
+  /** Returns true if the given path names a file or directory. */
+  public boolean exists(String path) {
+    return isFile(path) || isDirectory(path);
+  }
+
+  /** Returns true if the given path names a file. */
+  public boolean isFile(String path) {
+    return getEntry(path) != null;
+  }
+
+  /**
+   * Returns true if the given path names a directory; the empty path is
+   * the root directory.
+   */
+  public boolean isDirectory(String path) {
+    return children.containsKey(trimSlashes(path));
+  }
+
+  /**
+   * Lists the names of the files and directories in the given directory.
+   *
+   * @return the names, or null if the path is not a directory
+   */
+  public String[] list(String path) {
+    Set<String> names = children.get(trimSlashes(path));
+    return names == null ? null : names.toArray(new String[names.size()]);
+  }
+
+  // -- Helper methods --
+
+  private static boolean isSeparator(char c) {
+    return c == '/' || c == '\\' || c == File.separatorChar;
+  }
+
+  private static String trimSlashes(String path) {
+    int start = 0;
+    int end = path.length();
+    while (start < end && path.charAt(start) == '/') start++;
+    while (end > start && path.charAt(end - 1) == '/') end--;
+    return path.substring(start, end);
+  }
+
+  private void readCentralDirectory(IRandomAccess in) throws IOException {
+    long fileLength = in.length();
+    int tailLength = (int) Math.min(fileLength,
+      END_HEADER_LENGTH + MAX_COMMENT_LENGTH);
+    byte[] tail = new byte[tailLength];
+    in.seek(fileLength - tailLength);
+    in.readFully(tail);
+
+    int end = -1;
+    for (int i=tailLength - END_HEADER_LENGTH; i>=0; i--) {
+      if (getInt(tail, i) == END_HEADER) {
+        end = i;
+        break;
+      }
+    }
+    if (end < 0) {
+      throw new HandleException(path + " is not a Zip file");
+    }
+
+    long count = getShort(tail, end + 10);
+    long directoryLength = getUnsignedInt(tail, end + 12);
+    long directoryOffset = getUnsignedInt(tail, end + 16);
+    if (count == 0xffff || directoryLength == 0xffffffffL ||
+      directoryOffset == 0xffffffffL)
+    {
+      if (end < 20 || getInt(tail, end - 20) != ZIP64_LOCATOR) {
+        throw new HandleException("Missing Zip64 locator in " + path);
+      }
+      byte[] zip64 = new byte[56];
+      in.seek(DataTools.bytesToLong(tail, end - 12, 8, true));
+      in.readFully(zip64);
+      if (getInt(zip64, 0) != ZIP64_END_HEADER) {
+        throw new HandleException("Invalid Zip64 directory in " + path);
+      }
+      count = DataTools.bytesToLong(zip64, 32, 8, true);
+      directoryLength = DataTools.bytesToLong(zip64, 40, 8, true);
+      directoryOffset = DataTools.bytesToLong(zip64, 48, 8, true);
+    }
+    if (directoryLength > Integer.MAX_VALUE ||
+      directoryOffset + directoryLength > fileLength)
+    {
+      throw new HandleException("Invalid central directory in " + path);
+    }
+
+    byte[] directory = new byte[(int) directoryLength];
+    in.seek(directoryOffset);
+    in.readFully(directory);
+
+    int p = 0;
+    for (long i=0; i<count; i++) {
+      if (p + 46 > directory.length || getInt(directory, p) != CENTRAL_HEADER)
+      {
+        throw new HandleException("Invalid central directory in " + path);
+      }
+      int flags = getShort(directory, p + 8);
+      int method = getShort(directory, p + 10);
+      int time = getShort(directory, p + 12);
+      int date = getShort(directory, p + 14);
+      long crc = getUnsignedInt(directory, p + 16);
+      long compressedSize = getUnsignedInt(directory, p + 20);
+      long size = getUnsignedInt(directory, p + 24);
+      int nameLength = getShort(directory, p + 28);
+      int extraLength = getShort(directory, p + 30);
+      int commentLength = getShort(directory, p + 32);
+      long offset = getUnsignedInt(directory, p + 42);
+      String name =
+        new String(directory, p + 46, nameLength, Constants.ENCODING);
+
+      // Zip64 sizes and offset, present only for fields that overflowed
+      int extra = p + 46 + nameLength;
+      int extraEnd = Math.min(extra + extraLength, directory.length);
+      while (extra + 4 <= extraEnd) {
+        int id = getShort(directory, extra);
+        int fieldLength = getShort(directory, extra + 2);
+        int field = extra + 4;
+        if (id == 1) {
+          if (size == 0xffffffffL && field + 8 <= extraEnd) {
+            size = DataTools.bytesToLong(directory, field, 8, true);
+            field += 8;
+          }
+          if (compressedSize == 0xffffffffL && field + 8 <= extraEnd) {
+            compressedSize = DataTools.bytesToLong(directory, field, 8, true);
+            field += 8;
+          }
+          if (offset == 0xffffffffL && field + 8 <= extraEnd) {
+            offset = DataTools.bytesToLong(directory, field, 8, true);
+          }
+        }
+        extra += 4 + fieldLength;
+      }
+      p += 46 + nameLength + extraLength + commentLength;
+
+      Entry entry = new Entry(name, flags, method, getTime(date, time), crc,
+        compressedSize, size, offset);
+      addEntry(entry);
+    }
+  }
+
+  private void addEntry(Entry entry) {
+    String name = trimSlashes(entry.getName());
+    if (name.length() == 0) return;
+    entries.put(name, entry);
+    if (entry.isDirectory()) {
+      if (!children.containsKey(name)) {
+        children.put(name, new LinkedHashSet<String>());
+      }
+    }
+
+    // add the entry and each of its parents to their parent directories
+    int slash = name.lastIndexOf('/');
+    while (true) {
+      String parent = slash < 0 ? "" : name.substring(0, slash);
+      Set<String> names = children.get(parent);
+      boolean known = names != null;
+      if (!known) {
+        names = new LinkedHashSet<String>();
+        children.put(parent, names);
+      }
+      names.add(name.substring(slash + 1));
+      if (known || slash < 0) break;
+      name = parent;
+      slash = name.lastIndexOf('/');
+    }
+  }
+
+  private static int getShort(byte[] b, int off) {
+    return DataTools.bytesToShort(b, off, 2, true) & 0xffff;
+  }
+
+  private static int getInt(byte[] b, int off) {
+    return DataTools.bytesToInt(b, off, 4, true);
+  }
+
+  private static long getUnsignedInt(byte[] b, int off) {
+    return getInt(b, off) & 0xffffffffL;
+  }
+
+  /** Converts an MS-DOS date and time to milliseconds since the epoch. */
+  private static long getTime(int date, int time) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(((date >> 9) & 0x7f) + 1980, ((date >> 5) & 0xf) - 1,
+      date & 0x1f, (time >> 11) & 0x1f, (time >> 5) & 0x3f, (time & 0x1f) * 2);
+    return calendar.getTimeInMillis();
+  }
+
+  // -- Helper classes --
+
+  /** An entry in the central directory of a Zip file. */
+  public static class Entry {
+    private final String name;
+    private final int flags;
+    private final int method;
+    private final long time;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final long offset;
+
+    Entry(String name, int flags, int method, long time, long crc,
+      long compressedSize, long size, long offset)
+    {
+      this.name = name;
+      this.flags = flags;
+      this.method = method;
+      this.time = time;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.offset = offset;
+    }
+
+    /** Gets the name of the entry, with '/' separating directories. */
+    public String getName() {
+      return name;
+    }
+
+    /** Returns true if the entry is a directory. */
+    public boolean isDirectory() {
+      return name.endsWith("/");
+    }
+
+    /** Returns true if the entry's data is encrypted. */
+    public boolean isEncrypted() {
+      return (flags & 1) != 0;
+    }
+
+    /** Gets the compression method, e.g. {@link #STORED}. */
+    public int getMethod() {
+      return method;
+    }
+
+    /** Gets the modification time, in milliseconds since the epoch. */
+    public long getTime() {
+      return time;
+    }
+
+    /** Gets the CRC-32 of the uncompressed data. */
+    public long getCrc() {
+      return crc;
+    }
+
+    /** Gets the number of bytes of compressed data. */
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    /** Gets the number of bytes of uncompressed data. */
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * Gets the offset of the entry's data in the Zip file, reading the
+     * entry's local header with the given handle.
+     */
+    public long getDataOffset(IRandomAccess in) throws IOException {
+      byte[] header = new byte[30];
+      in.seek(offset);
+      in.readFully(header);
+      if (getInt(header, 0) != LOCAL_HEADER) {
+        throw new HandleException("Invalid local header for " + name);
+      }
+      return offset + header.length + getShort(header, 26) +
+        getShort(header, 28);
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+}
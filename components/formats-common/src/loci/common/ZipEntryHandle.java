@@ -0,0 +1,591 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Provides random access to one entry of a Zip file using the IRandomAccess
+ * interface, without extracting the entry.  Instances of ZipEntryHandle
+ * are read-only.
+ *
+ * STORED entries are read directly from the Zip file into the caller's
+ * buffer.  DEFLATED entries are inflated in fixed-size chunks, each of
+ * which is a checkpoint kept in a bounded, least recently used cache:
+ * reads within cached chunks need no inflation, forward seeks continue
+ * inflating from the last chunk, and only a backward seek to a chunk that
+ * is no longer cached restarts inflation, from the start of the entry.
+ *
+ * @see ZipArchive
+ * @see IRandomAccess
+ */
+public class ZipEntryHandle implements IRandomAccess {
+
+  // -- Constants --
+
+  /** Default number of uncompressed bytes in each chunk. */
+  public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+  /** Default maximum number of bytes held by the chunk cache. */
+  public static final long DEFAULT_CACHE_SIZE = 32 * 1024 * 1024;
+
+  /** Error message to be used when instantiating an EOFException. */
+  private static final String EOF_ERROR_MSG =
+    "Attempting to read beyond end of file.";
+
+  // -- Fields --
+
+  private final ZipArchive.Entry entry;
+
+  /** Handle on the Zip file. */
+  private IRandomAccess archive;
+
+  /** Offset of the entry's data within the Zip file. */
+  private final long dataOffset;
+
+  /** Length of the uncompressed entry. */
+  private long length;
+
+  /** Current position within the uncompressed entry. */
+  private long fp;
+
+  /** Byte ordering of this stream. */
+  private ByteOrder order = ByteOrder.BIG_ENDIAN;
+
+  /** Number of uncompressed bytes in each chunk. */
+  private final int chunkSize;
+
+  /** Inflated chunks, in least recently used order. */
+  private final Map<Long, byte[]> chunks;
+
+  /** Inflater positioned at {@link #inflated}, or null. */
+  private Inflater inflater;
+
+  /** Number of uncompressed bytes produced by the current inflater. */
+  private long inflated;
+
+  /** Number of compressed bytes passed to the current inflater. */
+  private long consumed;
+
+  /** Buffer for compressed data. */
+  private byte[] input;
+
+  /** Number of times that inflation has been restarted. */
+  private int restarts;
+
+  /** Buffer used to decode primitive values. */
+  private final ByteBuffer scratch = ByteBuffer.allocate(8);
+
+  // -- Constructors --
+
+  /**
+   * Constructs a handle for the named entry of the given Zip file.
+   *
+   * @throws FileNotFoundException if the Zip file has no such entry
+   */
+  public ZipEntryHandle(String file, String entryName) throws IOException {
+    this(ZipArchive.open(file), entryName, DEFAULT_CHUNK_SIZE,
+      DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Constructs a handle for the named entry of the given Zip file.
+   *
+   * @param archive the index of the Zip file
+   * @param entryName the name of the entry
+   * @param chunkSize the number of uncompressed bytes in each chunk of a
+   *   DEFLATED entry
+   * @param cacheSize the maximum number of bytes held by the chunk cache;
+   *   at least one chunk is always cached
+   * @throws FileNotFoundException if the Zip file has no such entry
+   */
+  public ZipEntryHandle(ZipArchive archive, String entryName, int chunkSize,
+    long cacheSize) throws IOException
+  {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+    }
+    entry = archive.getEntry(entryName);
+    if (entry == null) {
+      throw new FileNotFoundException(
+        archive.getPath() + " has no entry named " + entryName);
+    }
+    if (entry.isEncrypted()) {
+      throw new HandleException(entryName + " is encrypted");
+    }
+    if (entry.getMethod() != ZipArchive.STORED &&
+      entry.getMethod() != ZipArchive.DEFLATED)
+    {
+      throw new HandleException("Unsupported compression method " +
+        entry.getMethod() + " for " + entryName);
+    }
+
+    this.chunkSize = chunkSize;
+    final int maxChunks =
+      (int) Math.max(1, Math.min(Integer.MAX_VALUE, cacheSize / chunkSize));
+    chunks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+        return size() > maxChunks;
+      }
+    };
+
+    this.archive = Location.getHandle(archive.getPath(), false, false);
+    try {
+      dataOffset = entry.getDataOffset(this.archive);
+    }
+    catch (IOException e) {
+      this.archive.close();
+      throw e;
+    }
+    length = entry.getSize();
+  }
+
+  // -- ZipEntryHandle API methods --
+
+  /** Gets the Zip entry read by this handle. */
+  public ZipArchive.Entry getEntry() {
+    return entry;
+  }
+
+  /**
+   * Returns the number of times that inflation has been restarted from the
+   * beginning of the entry because of a backward seek.
+   */
+  public int getRestartCount() {
+    return restarts;
+  }
+
+  // -- IRandomAccess API methods --
+
+  /* @see IRandomAccess#close() */
+  @Override
+  public void close() throws IOException {
+    if (inflater != null) {
+      inflater.end();
+      inflater = null;
+    }
+    chunks.clear();
+    input = null;
+    length = fp = 0;
+    if (archive != null) {
+      archive.close();
+      archive = null;
+    }
+  }
+
+  /* @see IRandomAccess#getFilePointer() */
+  @Override
+  public long getFilePointer() throws IOException {
+    return fp;
+  }
+
+  /* @see IRandomAccess#length() */
+  @Override
+  public long length() throws IOException {
+    return length;
+  }
+
+  /* @see IRandomAccess#getOrder() */
+  @Override
+  public ByteOrder getOrder() {
+    return order;
+  }
+
+  /* @see IRandomAccess#setOrder(ByteOrder) */
+  @Override
+  public void setOrder(ByteOrder order) {
+    this.order = order;
+  }
+
+  /* @see IRandomAccess#read(byte[]) */
+  @Override
+  public int read(byte[] b) throws IOException {
+    return read(b, 0, b.length);
+  }
+
+  /* @see IRandomAccess#read(byte[], int, int) */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n = (int) Math.min(len, length - fp);
+    if (n <= 0) {
+      return n < 0 ? -1 : 0;
+    }
+
+    if (entry.getMethod() == ZipArchive.STORED) {
+      archive.seek(dataOffset + fp);
+      archive.readFully(b, off, n);
+      fp += n;
+      return n;
+    }
+
+    int total = 0;
+    while (total < n) {
+      long index = fp / chunkSize;
+      byte[] chunk = getChunk(index);
+      int pos = (int) (fp - index * chunkSize);
+      int count = Math.min(chunk.length - pos, n - total);
+      System.arraycopy(chunk, pos, b, off + total, count);
+      total += count;
+      fp += count;
+    }
+    return total;
+  }
+
+  /* @see IRandomAccess#read(ByteBuffer) */
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    return read(buffer, 0, buffer.capacity());
+  }
+
+  /* @see IRandomAccess#read(ByteBuffer, int, int) */
+  @Override
+  public int read(ByteBuffer buffer, int off, int len) throws IOException {
+    if (buffer.hasArray()) {
+      return read(buffer.array(), buffer.arrayOffset() + off, len);
+    }
+
+    byte[] b = new byte[len];
+    int n = read(b);
+    if (n > 0) {
+      buffer.position(off);
+      buffer.put(b, 0, n);
+    }
+    return n;
+  }
+
+  /* @see IRandomAccess#seek(long) */
+  @Override
+  public void seek(long pos) throws IOException {
+    fp = pos;
+  }
+
+  /* @see IRandomAccess#write(ByteBuffer) */
+  @Override
+  public void write(ByteBuffer buf) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see IRandomAccess#write(ByteBuffer, int, int) */
+  @Override
+  public void write(ByteBuffer buf, int off, int len) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  // -- DataInput API methods --
+
+  /* @see java.io.DataInput#readBoolean() */
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  /* @see java.io.DataInput#readByte() */
+  @Override
+  public byte readByte() throws IOException {
+    return readPrimitive(1).get();
+  }
+
+  /* @see java.io.DataInput#readChar() */
+  @Override
+  public char readChar() throws IOException {
+    return readPrimitive(2).getChar();
+  }
+
+  /* @see java.io.DataInput#readDouble() */
+  @Override
+  public double readDouble() throws IOException {
+    return readPrimitive(8).getDouble();
+  }
+
+  /* @see java.io.DataInput#readFloat() */
+  @Override
+  public float readFloat() throws IOException {
+    return readPrimitive(4).getFloat();
+  }
+
+  /* @see java.io.DataInput#readFully(byte[]) */
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  /* @see java.io.DataInput#readFully(byte[], int, int) */
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    if (fp + len > length) {
+      throw new EOFException(EOF_ERROR_MSG);
+    }
+    read(b, off, len);
+  }
+
+  /* @see java.io.DataInput#readInt() */
+  @Override
+  public int readInt() throws IOException {
+    return readPrimitive(4).getInt();
+  }
+
+  /* @see java.io.DataInput#readLine() */
+  @Override
+  public String readLine() throws IOException {
+    throw new IOException("Unimplemented");
+  }
+
+  /* @see java.io.DataInput#readLong() */
+  @Override
+  public long readLong() throws IOException {
+    return readPrimitive(8).getLong();
+  }
+
+  /* @see java.io.DataInput#readShort() */
+  @Override
+  public short readShort() throws IOException {
+    return readPrimitive(2).getShort();
+  }
+
+  /* @see java.io.DataInput#readUnsignedByte() */
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xff;
+  }
+
+  /* @see java.io.DataInput#readUnsignedShort() */
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xffff;
+  }
+
+  /* @see java.io.DataInput#readUTF() */
+  @Override
+  public String readUTF() throws IOException {
+    int length = readUnsignedShort();
+    byte[] b = new byte[length];
+    readFully(b);
+    return new String(b, Constants.ENCODING);
+  }
+
+  /* @see java.io.DataInput#skipBytes(int) */
+  @Override
+  public int skipBytes(int n) throws IOException {
+    int skipped = (int) Math.min(n, length - fp);
+    if (skipped < 0) {
+      return 0;
+    }
+    fp += skipped;
+    return skipped;
+  }
+
+  // -- DataOutput API methods --
+
+  /* @see java.io.DataOutput#write(byte[]) */
+  @Override
+  public void write(byte[] b) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#write(byte[], int, int) */
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#write(int) */
+  @Override
+  public void write(int b) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeBoolean(boolean) */
+  @Override
+  public void writeBoolean(boolean v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeByte(int) */
+  @Override
+  public void writeByte(int v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeBytes(String) */
+  @Override
+  public void writeBytes(String s) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeChar(int) */
+  @Override
+  public void writeChar(int v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeChars(String) */
+  @Override
+  public void writeChars(String s) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeDouble(double) */
+  @Override
+  public void writeDouble(double v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeFloat(float) */
+  @Override
+  public void writeFloat(float v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeInt(int) */
+  @Override
+  public void writeInt(int v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeLong(long) */
+  @Override
+  public void writeLong(long v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeShort(int) */
+  @Override
+  public void writeShort(int v) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  /* @see java.io.DataOutput#writeUTF(String) */
+  @Override
+  public void writeUTF(String str) throws IOException {
+    throw new HandleException("This stream is read-only.");
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Reads the given number of bytes into the scratch buffer, which is
+   * returned ready to decode a value in the current byte order.
+   */
+  private ByteBuffer readPrimitive(int n) throws IOException {
+    if (fp + n > length) {
+      throw new EOFException(EOF_ERROR_MSG);
+    }
+    scratch.clear();
+    read(scratch.array(), 0, n);
+    scratch.limit(n);
+    scratch.order(order);
+    return scratch;
+  }
+
+  /**
+   * Gets the inflated chunk with the given index, inflating it (and any
+   * chunks between it and the inflater's position) if it is not cached.
+   */
+  private byte[] getChunk(long index) throws IOException {
+    byte[] chunk = chunks.get(index);
+    if (chunk != null) {
+      return chunk;
+    }
+
+    long start = index * chunkSize;
+    if (inflater == null || start < inflated) {
+      if (inflater != null) {
+        inflater.end();
+        restarts++;
+      }
+      inflater = new Inflater(true);
+      inflated = 0;
+      consumed = 0;
+    }
+    while (inflated <= start) {
+      long next = inflated / chunkSize;
+      chunk = inflateChunk((int) Math.min(chunkSize, length - inflated));
+      chunks.put(next, chunk);
+    }
+    return chunk;
+  }
+
+  /** Inflates the next chunk of the given size. */
+  private byte[] inflateChunk(int size) throws IOException {
+    if (input == null) {
+      input = new byte[(int) Math.min(65536,
+        Math.max(1, entry.getCompressedSize()) + 1)];
+    }
+    byte[] chunk = new byte[size];
+    int n = 0;
+    try {
+      while (n < size) {
+        int count = inflater.inflate(chunk, n, size - n);
+        n += count;
+        if (count == 0) {
+          if (inflater.finished() || inflater.needsDictionary()) {
+            throw new EOFException("Unexpected end of " + entry.getName());
+          }
+          if (inflater.needsInput()) {
+            long remaining = entry.getCompressedSize() - consumed;
+            // NB: raw inflation may need one byte past the compressed data
+            int len = (int) Math.max(1, Math.min(input.length, remaining));
+            if (remaining > 0) {
+              archive.seek(dataOffset + consumed);
+              archive.readFully(input, 0, len);
+            }
+            else if (remaining < 0) {
+              throw new EOFException("Unexpected end of " + entry.getName());
+            }
+            else {
+              input[0] = 0;
+            }
+            inflater.setInput(input, 0, len);
+            consumed += len;
+          }
+        }
+      }
+    }
+    catch (DataFormatException e) {
+      throw new HandleException("Invalid compressed data in " +
+        entry.getName(), e);
+    }
+    inflated += size;
+    return chunk;
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A metric that counts events or accumulates a total, such as the number
+ * of bytes read.  Counters are safe for use by multiple threads.
+ *
+ * @see MetricsRegistry#counter(String)
+ */
+public class Counter {
+
+  // -- Fields --
+
+  private final String name;
+
+  private final AtomicLong value = new AtomicLong();
+
+  // -- Constructor --
+
+  /** Constructs a counter with the given name and a value of zero. */
+  public Counter(String name) {
+    this.name = name;
+  }
+
+  // -- Counter API methods --
+
+  /** Gets the name of this counter. */
+  public String getName() {
+    return name;
+  }
+
+  /** Adds one to this counter. */
+  public void increment() {
+    value.incrementAndGet();
+  }
+
+  /** Adds the given amount to this counter. */
+  public void add(long amount) {
+    value.addAndGet(amount);
+  }
+
+  /** Gets the current value of this counter. */
+  public long getValue() {
+    return value.get();
+  }
+
+  /** Sets this counter back to zero. */
+  public void reset() {
+    value.set(0);
+  }
+
+  // -- Object API methods --
+
+  @Override
+  public String toString() {
+    return name + " = " + getValue();
+  }
+
+}
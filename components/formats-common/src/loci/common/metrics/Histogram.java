@@ -0,0 +1,204 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A metric that records the distribution of non-negative values, such as
+ * latencies or seek distances.  Values are counted in power-of-two buckets,
+ * so recording is cheap and needs no locking; percentiles are estimated to
+ * within a factor of two, while the count, sum, minimum and maximum are
+ * exact.
+ *
+ * Histograms that are timers record durations in nanoseconds, and report
+ * them in milliseconds in {@link #toString()}.
+ *
+ * @see MetricsRegistry#histogram(String)
+ * @see MetricsRegistry#timer(String)
+ */
+public class Histogram {
+
+  // -- Fields --
+
+  private final String name;
+
+  private final boolean timer;
+
+  /** Bucket i counts values v with 2^(i-1) <= v < 2^i; bucket 0 counts 0. */
+  private final AtomicLongArray buckets = new AtomicLongArray(65);
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final AtomicLong sum = new AtomicLong();
+
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+  private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+  // -- Constructor --
+
+  /**
+   * Constructs an empty histogram.
+   *
+   * @param name the name of the histogram
+   * @param timer true if the recorded values are durations in nanoseconds
+   */
+  public Histogram(String name, boolean timer) {
+    this.name = name;
+    this.timer = timer;
+  }
+
+  // -- Histogram API methods --
+
+  /** Gets the name of this histogram. */
+  public String getName() {
+    return name;
+  }
+
+  /** Returns true if this histogram records durations in nanoseconds. */
+  public boolean isTimer() {
+    return timer;
+  }
+
+  /** Records one value; negative values are recorded as zero. */
+  public void record(long value) {
+    if (value < 0) value = 0;
+    buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+
+    long current = min.get();
+    while (value < current && !min.compareAndSet(current, value)) {
+      current = min.get();
+    }
+    current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * Records the time elapsed since the given {@link System#nanoTime()}
+   * value, as returned by {@link MetricsRegistry#start()}.  Nothing is
+   * recorded if the start time is {@link MetricsRegistry#NOT_STARTED}.
+   */
+  public void recordSince(long startNanos) {
+    if (startNanos != MetricsRegistry.NOT_STARTED) {
+      record(System.nanoTime() - startNanos);
+    }
+  }
+
+  /** Gets the number of recorded values. */
+  public long getCount() {
+    return count.get();
+  }
+
+  /** Gets the sum of the recorded values. */
+  public long getSum() {
+    return sum.get();
+  }
+
+  /** Gets the smallest recorded value, or 0 if nothing was recorded. */
+  public long getMin() {
+    return getCount() == 0 ? 0 : min.get();
+  }
+
+  /** Gets the largest recorded value, or 0 if nothing was recorded. */
+  public long getMax() {
+    return getCount() == 0 ? 0 : max.get();
+  }
+
+  /** Gets the mean of the recorded values, or 0 if nothing was recorded. */
+  public double getMean() {
+    long n = getCount();
+    return n == 0 ? 0 : (double) getSum() / n;
+  }
+
+  /**
+   * Estimates the given percentile of the recorded values, as the upper
+   * bound of the bucket that contains it.
+   *
+   * @param percentile a value between 0 and 100
+   */
+  public long getPercentile(double percentile) {
+    long n = getCount();
+    if (n == 0) return 0;
+    long rank = (long) Math.ceil(n * Math.min(100, percentile) / 100);
+    long seen = 0;
+    for (int i=0; i<buckets.length(); i++) {
+      seen += buckets.get(i);
+      if (seen >= rank && seen > 0) {
+        long upper = i == 0 ? 0 : i == 64 ? Long.MAX_VALUE : (1L << i) - 1;
+        return Math.max(getMin(), Math.min(upper, getMax()));
+      }
+    }
+    return getMax();
+  }
+
+  /** Discards all recorded values. */
+  public void reset() {
+    for (int i=0; i<buckets.length(); i++) {
+      buckets.set(i, 0);
+    }
+    count.set(0);
+    sum.set(0);
+    min.set(Long.MAX_VALUE);
+    max.set(Long.MIN_VALUE);
+  }
+
+  // -- Object API methods --
+
+  @Override
+  public String toString() {
+    if (timer) {
+      return String.format(
+        "%s: count=%d mean=%.3fms p50=%.3fms p95=%.3fms max=%.3fms " +
+        "total=%.3fms", name, getCount(), toMillis(getMean()),
+        toMillis(getPercentile(50)), toMillis(getPercentile(95)),
+        toMillis(getMax()), toMillis(getSum()));
+    }
+    return String.format("%s: count=%d mean=%.1f p50=%d p95=%d max=%d sum=%d",
+      name, getCount(), getMean(), getPercentile(50), getPercentile(95),
+      getMax(), getSum());
+  }
+
+  // -- Helper methods --
+
+  private static double toMillis(double nanos) {
+    return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+}
@@ -0,0 +1,404 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import loci.common.IRandomAccess;
+
+/**
+ * IRandomAccess decorator that records the I/O performed through another
+ * handle in {@link MetricsRegistry}: the number of read calls, the number
+ * of bytes read, and the number and distance of seeks that move the file
+ * pointer.  {@link loci.common.Location#getHandle} wraps every handle that
+ * it opens in a MeteredHandle while metrics are enabled.
+ */
+public class MeteredHandle implements IRandomAccess {
+
+  // -- Constants --
+
+  /** Name of the counter of read calls. */
+  public static final String READS = "io.reads";
+
+  /** Name of the counter of bytes read. */
+  public static final String BYTES_READ = "io.bytesRead";
+
+  /** Name of the counter of seeks that moved the file pointer. */
+  public static final String SEEKS = "io.seeks";
+
+  /** Name of the histogram of seek distances, in bytes. */
+  public static final String SEEK_DISTANCE = "io.seekDistance";
+
+  private static final Counter READ_COUNTER = MetricsRegistry.counter(READS);
+
+  private static final Counter BYTE_COUNTER =
+    MetricsRegistry.counter(BYTES_READ);
+
+  private static final Counter SEEK_COUNTER = MetricsRegistry.counter(SEEKS);
+
+  private static final Histogram SEEK_HISTOGRAM =
+    MetricsRegistry.histogram(SEEK_DISTANCE);
+
+  // -- Fields --
+
+  private final IRandomAccess handle;
+
+  // -- Constructor --
+
+  /** Constructs a handle that records the I/O of the given handle. */
+  public MeteredHandle(IRandomAccess handle) {
+    this.handle = handle;
+  }
+
+  // -- MeteredHandle API methods --
+
+  /** Gets the handle whose I/O is recorded. */
+  public IRandomAccess getHandle() {
+    return handle;
+  }
+
+  // -- IRandomAccess API methods --
+
+  /* @see IRandomAccess#close() */
+  @Override
+  public void close() throws IOException {
+    handle.close();
+  }
+
+  /* @see IRandomAccess#getFilePointer() */
+  @Override
+  public long getFilePointer() throws IOException {
+    return handle.getFilePointer();
+  }
+
+  /* @see IRandomAccess#length() */
+  @Override
+  public long length() throws IOException {
+    return handle.length();
+  }
+
+  /* @see IRandomAccess#getOrder() */
+  @Override
+  public ByteOrder getOrder() {
+    return handle.getOrder();
+  }
+
+  /* @see IRandomAccess#setOrder(ByteOrder) */
+  @Override
+  public void setOrder(ByteOrder order) {
+    handle.setOrder(order);
+  }
+
+  /* @see IRandomAccess#read(byte[]) */
+  @Override
+  public int read(byte[] b) throws IOException {
+    return recordRead(handle.read(b));
+  }
+
+  /* @see IRandomAccess#read(byte[], int, int) */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    return recordRead(handle.read(b, off, len));
+  }
+
+  /* @see IRandomAccess#read(ByteBuffer) */
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    return recordRead(handle.read(buffer));
+  }
+
+  /* @see IRandomAccess#read(ByteBuffer, int, int) */
+  @Override
+  public int read(ByteBuffer buffer, int offset, int len) throws IOException {
+    return recordRead(handle.read(buffer, offset, len));
+  }
+
+  /* @see IRandomAccess#seek(long) */
+  @Override
+  public void seek(long pos) throws IOException {
+    long fp = handle.getFilePointer();
+    if (pos != fp) {
+      SEEK_COUNTER.increment();
+      SEEK_HISTOGRAM.record(Math.abs(pos - fp));
+    }
+    handle.seek(pos);
+  }
+
+  /* @see IRandomAccess#write(ByteBuffer) */
+  @Override
+  public void write(ByteBuffer buf) throws IOException {
+    handle.write(buf);
+  }
+
+  /* @see IRandomAccess#write(ByteBuffer, int, int) */
+  @Override
+  public void write(ByteBuffer buf, int off, int len) throws IOException {
+    handle.write(buf, off, len);
+  }
+
+  // -- DataInput API methods --
+
+  /* @see java.io.DataInput#readBoolean() */
+  @Override
+  public boolean readBoolean() throws IOException {
+    boolean v = handle.readBoolean();
+    recordRead(1);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readByte() */
+  @Override
+  public byte readByte() throws IOException {
+    byte v = handle.readByte();
+    recordRead(1);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readChar() */
+  @Override
+  public char readChar() throws IOException {
+    char v = handle.readChar();
+    recordRead(2);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readDouble() */
+  @Override
+  public double readDouble() throws IOException {
+    double v = handle.readDouble();
+    recordRead(8);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readFloat() */
+  @Override
+  public float readFloat() throws IOException {
+    float v = handle.readFloat();
+    recordRead(4);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readFully(byte[]) */
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    handle.readFully(b);
+    recordRead(b.length);
+  }
+
+  /* @see java.io.DataInput#readFully(byte[], int, int) */
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    handle.readFully(b, off, len);
+    recordRead(len);
+  }
+
+  /* @see java.io.DataInput#readInt() */
+  @Override
+  public int readInt() throws IOException {
+    int v = handle.readInt();
+    recordRead(4);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readLine() */
+  @Override
+  public String readLine() throws IOException {
+    long fp = handle.getFilePointer();
+    String line = handle.readLine();
+    recordRead(handle.getFilePointer() - fp);
+    return line;
+  }
+
+  /* @see java.io.DataInput#readLong() */
+  @Override
+  public long readLong() throws IOException {
+    long v = handle.readLong();
+    recordRead(8);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readShort() */
+  @Override
+  public short readShort() throws IOException {
+    short v = handle.readShort();
+    recordRead(2);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readUnsignedByte() */
+  @Override
+  public int readUnsignedByte() throws IOException {
+    int v = handle.readUnsignedByte();
+    recordRead(1);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readUnsignedShort() */
+  @Override
+  public int readUnsignedShort() throws IOException {
+    int v = handle.readUnsignedShort();
+    recordRead(2);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readUTF() */
+  @Override
+  public String readUTF() throws IOException {
+    long fp = handle.getFilePointer();
+    String s = handle.readUTF();
+    recordRead(handle.getFilePointer() - fp);
+    return s;
+  }
+
+  /* @see java.io.DataInput#skipBytes(int) */
+  @Override
+  public int skipBytes(int n) throws IOException {
+    int skipped = handle.skipBytes(n);
+    if (skipped > 0) {
+      SEEK_COUNTER.increment();
+      SEEK_HISTOGRAM.record(skipped);
+    }
+    return skipped;
+  }
+
+  // -- DataOutput API methods --
+
+  /* @see java.io.DataOutput#write(byte[]) */
+  @Override
+  public void write(byte[] b) throws IOException {
+    handle.write(b);
+  }
+
+  /* @see java.io.DataOutput#write(byte[], int, int) */
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    handle.write(b, off, len);
+  }
+
+  /* @see java.io.DataOutput#write(int) */
+  @Override
+  public void write(int b) throws IOException {
+    handle.write(b);
+  }
+
+  /* @see java.io.DataOutput#writeBoolean(boolean) */
+  @Override
+  public void writeBoolean(boolean v) throws IOException {
+    handle.writeBoolean(v);
+  }
+
+  /* @see java.io.DataOutput#writeByte(int) */
+  @Override
+  public void writeByte(int v) throws IOException {
+    handle.writeByte(v);
+  }
+
+  /* @see java.io.DataOutput#writeBytes(String) */
+  @Override
+  public void writeBytes(String s) throws IOException {
+    handle.writeBytes(s);
+  }
+
+  /* @see java.io.DataOutput#writeChar(int) */
+  @Override
+  public void writeChar(int v) throws IOException {
+    handle.writeChar(v);
+  }
+
+  /* @see java.io.DataOutput#writeChars(String) */
+  @Override
+  public void writeChars(String s) throws IOException {
+    handle.writeChars(s);
+  }
+
+  /* @see java.io.DataOutput#writeDouble(double) */
+  @Override
+  public void writeDouble(double v) throws IOException {
+    handle.writeDouble(v);
+  }
+
+  /* @see java.io.DataOutput#writeFloat(float) */
+  @Override
+  public void writeFloat(float v) throws IOException {
+    handle.writeFloat(v);
+  }
+
+  /* @see java.io.DataOutput#writeInt(int) */
+  @Override
+  public void writeInt(int v) throws IOException {
+    handle.writeInt(v);
+  }
+
+  /* @see java.io.DataOutput#writeLong(long) */
+  @Override
+  public void writeLong(long v) throws IOException {
+    handle.writeLong(v);
+  }
+
+  /* @see java.io.DataOutput#writeShort(int) */
+  @Override
+  public void writeShort(int v) throws IOException {
+    handle.writeShort(v);
+  }
+
+  /* @see java.io.DataOutput#writeUTF(String) */
+  @Override
+  public void writeUTF(String str) throws IOException {
+    handle.writeUTF(str);
+  }
+
+  // -- Object API methods --
+
+  @Override
+  public String toString() {
+    return handle.toString();
+  }
+
+  // -- Helper methods --
+
+  /** Records one read call that returned the given number of bytes. */
+  private int recordRead(int n) {
+    recordRead((long) n);
+    return n;
+  }
+
+  private void recordRead(long n) {
+    READ_COUNTER.increment();
+    if (n > 0) {
+      BYTE_COUNTER.add(n);
+    }
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Dynamic MBean that publishes the contents of {@link MetricsRegistry}.
+ * The attributes are recomputed on each request, so that metrics created
+ * after registration are also visible.
+ */
+class MetricsMBean implements DynamicMBean {
+
+  // -- DynamicMBean API methods --
+
+  @Override
+  public Object getAttribute(String attribute)
+    throws AttributeNotFoundException, MBeanException, ReflectionException
+  {
+    Counter counter = MetricsRegistry.getCounters().get(attribute);
+    if (counter != null) {
+      return counter.getValue();
+    }
+
+    int dot = attribute.lastIndexOf('.');
+    if (dot > 0) {
+      Histogram histogram =
+        MetricsRegistry.getHistograms().get(attribute.substring(0, dot));
+      if (histogram != null) {
+        String field = attribute.substring(dot + 1);
+        if (field.equals("count")) return histogram.getCount();
+        if (field.equals("mean")) return histogram.getMean();
+        if (field.equals("p95")) return histogram.getPercentile(95);
+        if (field.equals("max")) return histogram.getMax();
+      }
+    }
+    throw new AttributeNotFoundException(attribute);
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute)
+    throws AttributeNotFoundException
+  {
+    throw new AttributeNotFoundException(attribute.getName() +
+      " is read-only");
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    AttributeList list = new AttributeList();
+    for (String name : attributes) {
+      try {
+        list.add(new Attribute(name, getAttribute(name)));
+      }
+      catch (Exception e) {
+        // NB: unknown attributes are omitted, as DynamicMBean specifies
+      }
+    }
+    return list;
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature)
+    throws MBeanException, ReflectionException
+  {
+    if (actionName.equals("reset")) {
+      MetricsRegistry.reset();
+      return null;
+    }
+    if (actionName.equals("getSummary")) {
+      return MetricsRegistry.getSummary();
+    }
+    throw new ReflectionException(
+      new NoSuchMethodException(actionName), actionName);
+  }
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+    for (String name : MetricsRegistry.getCounters().keySet()) {
+      attributes.add(new MBeanAttributeInfo(name, "long",
+        "Counter " + name, true, false, false));
+    }
+    for (Histogram histogram : MetricsRegistry.getHistograms().values()) {
+      String name = histogram.getName();
+      String unit = histogram.isTimer() ? " (ns)" : "";
+      attributes.add(new MBeanAttributeInfo(name + ".count", "long",
+        "Number of values in " + name, true, false, false));
+      attributes.add(new MBeanAttributeInfo(name + ".mean", "double",
+        "Mean of " + name + unit, true, false, false));
+      attributes.add(new MBeanAttributeInfo(name + ".p95", "long",
+        "95th percentile of " + name + unit, true, false, false));
+      attributes.add(new MBeanAttributeInfo(name + ".max", "long",
+        "Maximum of " + name + unit, true, false, false));
+    }
+
+    MBeanOperationInfo[] operations = {
+      new MBeanOperationInfo("reset", "Resets all metrics",
+        new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION),
+      new MBeanOperationInfo("getSummary", "Summarizes all metrics",
+        new MBeanParameterInfo[0], "java.lang.String",
+        MBeanOperationInfo.INFO)
+    };
+
+    return new MBeanInfo(getClass().getName(),
+      "Bio-Formats I/O and decoding metrics",
+      attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+      null, operations, null);
+  }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the named {@link Counter}s and {@link Histogram}s that
+ * describe where time is spent while reading images: bytes read and seeks
+ * made through instrumented handles, time spent decoding compressed data,
+ * and the latency of reader initialization and plane reads.
+ *
+ * Metrics are disabled by default, in which case instrumented code skips
+ * all recording; they are enabled with {@link #setEnabled(boolean)} or by
+ * setting the <code>loci.common.metrics</code> system property to true.
+ * Callers that time an operation use the pattern:
+ *
+ * <pre>
+ * long start = MetricsRegistry.start();
+ * ...
+ * if (start != MetricsRegistry.NOT_STARTED) {
+ *   MetricsRegistry.timer("name").recordSince(start);
+ * }
+ * </pre>
+ *
+ * The metrics can also be published through JMX with
+ * {@link #registerMBean()}.
+ */
+public final class MetricsRegistry {
+
+  // -- Constants --
+
+  /** System property that enables metrics when set to true. */
+  public static final String ENABLED_PROPERTY = "loci.common.metrics";
+
+  /** Value returned by {@link #start()} when metrics are disabled. */
+  public static final long NOT_STARTED = Long.MIN_VALUE;
+
+  /** Name under which the metrics are published through JMX. */
+  public static final String OBJECT_NAME =
+    "loci.common.metrics:type=MetricsRegistry";
+
+  private static final ConcurrentMap<String, Counter> COUNTERS =
+    new ConcurrentHashMap<String, Counter>();
+
+  private static final ConcurrentMap<String, Histogram> HISTOGRAMS =
+    new ConcurrentHashMap<String, Histogram>();
+
+  // -- Static fields --
+
+  private static volatile boolean enabled =
+    Boolean.getBoolean(ENABLED_PROPERTY);
+
+  // -- Constructor --
+
+  private MetricsRegistry() { }
+
+  // -- MetricsRegistry API methods --
+
+  /** Returns true if metrics are being recorded. */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Enables or disables the recording of metrics. */
+  public static void setEnabled(boolean enable) {
+    enabled = enable;
+  }
+
+  /**
+   * Gets the start time of an operation that is to be timed: the current
+   * value of {@link System#nanoTime()} if metrics are enabled, or
+   * {@link #NOT_STARTED} if they are not.
+   */
+  public static long start() {
+    return enabled ? System.nanoTime() : NOT_STARTED;
+  }
+
+  /** Gets the counter with the given name, creating it if necessary. */
+  public static Counter counter(String name) {
+    Counter counter = COUNTERS.get(name);
+    if (counter == null) {
+      Counter created = new Counter(name);
+      counter = COUNTERS.putIfAbsent(name, created);
+      if (counter == null) counter = created;
+    }
+    return counter;
+  }
+
+  /**
+   * Gets the histogram of values with the given name, creating it if
+   * necessary.
+   */
+  public static Histogram histogram(String name) {
+    return getHistogram(name, false);
+  }
+
+  /**
+   * Gets the histogram of durations, in nanoseconds, with the given name,
+   * creating it if necessary.
+   */
+  public static Histogram timer(String name) {
+    return getHistogram(name, true);
+  }
+
+  /** Gets a snapshot of all counters, sorted by name. */
+  public static SortedMap<String, Counter> getCounters() {
+    return new TreeMap<String, Counter>(COUNTERS);
+  }
+
+  /** Gets a snapshot of all histograms and timers, sorted by name. */
+  public static SortedMap<String, Histogram> getHistograms() {
+    return new TreeMap<String, Histogram>(HISTOGRAMS);
+  }
+
+  /**
+   * Sets all counters to zero and discards all recorded values.  Existing
+   * metrics remain registered, so that references held by instrumented
+   * code remain valid.
+   */
+  public static void reset() {
+    for (Counter counter : COUNTERS.values()) {
+      counter.reset();
+    }
+    for (Histogram histogram : HISTOGRAMS.values()) {
+      histogram.reset();
+    }
+  }
+
+  /**
+   * Gets a summary of all metrics that have recorded something, one
+   * metric per line.
+   */
+  public static String getSummary() {
+    StringBuilder sb = new StringBuilder();
+    for (Counter counter : getCounters().values()) {
+      if (counter.getValue() != 0) {
+        sb.append(counter).append("\n");
+      }
+    }
+    for (Histogram histogram : getHistograms().values()) {
+      if (histogram.getCount() != 0) {
+        sb.append(histogram).append("\n");
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Publishes the metrics through the platform MBean server, under
+   * {@link #OBJECT_NAME}.  Each counter is an attribute, and each histogram
+   * provides attributes for its count, mean, 95th percentile and maximum.
+   * Registering more than once has no further effect.
+   */
+  public static synchronized void registerMBean() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    if (!server.isRegistered(name)) {
+      server.registerMBean(new MetricsMBean(), name);
+    }
+  }
+
+  /** Removes the metrics from the platform MBean server. */
+  public static synchronized void unregisterMBean() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+  }
+
+  // -- Helper methods --
+
+  private static Histogram getHistogram(String name, boolean timer) {
+    Histogram histogram = HISTOGRAMS.get(name);
+    if (histogram == null) {
+      Histogram created = new Histogram(name, timer);
+      histogram = HISTOGRAMS.putIfAbsent(name, created);
+      if (histogram == null) histogram = created;
+    }
+    return histogram;
+  }
+
+}
@@ -0,0 +1,410 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import loci.common.IRandomAccess;
+
+/**
+ * IRandomAccess decorator that records the offset, length, time and thread
+ * of every read and seek made through another handle in a
+ * {@link TraceLog}.
+ *
+ * @see TraceLog
+ */
+public class TraceHandle implements IRandomAccess {
+
+  // -- Fields --
+
+  private final IRandomAccess handle;
+
+  private final TraceLog log;
+
+  /** Number that identifies this handle in the log. */
+  private final int index;
+
+  // -- Constructor --
+
+  /**
+   * Constructs a handle that records the reads and seeks of the given
+   * handle in the given log.
+   *
+   * @param handle the handle to trace
+   * @param id the id with which the handle was opened
+   * @param log the log to which records are written
+   */
+  public TraceHandle(IRandomAccess handle, String id, TraceLog log)
+    throws IOException
+  {
+    this.handle = handle;
+    this.log = log;
+    index = log.open(id, handle.length());
+  }
+
+  // -- TraceHandle API methods --
+
+  /** Gets the handle whose reads and seeks are recorded. */
+  public IRandomAccess getHandle() {
+    return handle;
+  }
+
+  // -- IRandomAccess API methods --
+
+  /* @see IRandomAccess#close() */
+  @Override
+  public void close() throws IOException {
+    log.close(index);
+    handle.close();
+  }
+
+  /* @see IRandomAccess#getFilePointer() */
+  @Override
+  public long getFilePointer() throws IOException {
+    return handle.getFilePointer();
+  }
+
+  /* @see IRandomAccess#length() */
+  @Override
+  public long length() throws IOException {
+    return handle.length();
+  }
+
+  /* @see IRandomAccess#getOrder() */
+  @Override
+  public ByteOrder getOrder() {
+    return handle.getOrder();
+  }
+
+  /* @see IRandomAccess#setOrder(ByteOrder) */
+  @Override
+  public void setOrder(ByteOrder order) {
+    handle.setOrder(order);
+  }
+
+  /* @see IRandomAccess#read(byte[]) */
+  @Override
+  public int read(byte[] b) throws IOException {
+    long fp = handle.getFilePointer();
+    return recordRead(fp, handle.read(b));
+  }
+
+  /* @see IRandomAccess#read(byte[], int, int) */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    long fp = handle.getFilePointer();
+    return recordRead(fp, handle.read(b, off, len));
+  }
+
+  /* @see IRandomAccess#read(ByteBuffer) */
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    long fp = handle.getFilePointer();
+    return recordRead(fp, handle.read(buffer));
+  }
+
+  /* @see IRandomAccess#read(ByteBuffer, int, int) */
+  @Override
+  public int read(ByteBuffer buffer, int offset, int len) throws IOException {
+    long fp = handle.getFilePointer();
+    return recordRead(fp, handle.read(buffer, offset, len));
+  }
+
+  /* @see IRandomAccess#seek(long) */
+  @Override
+  public void seek(long pos) throws IOException {
+    if (pos != handle.getFilePointer()) {
+      log.seek(index, pos);
+    }
+    handle.seek(pos);
+  }
+
+  /* @see IRandomAccess#write(ByteBuffer) */
+  @Override
+  public void write(ByteBuffer buf) throws IOException {
+    handle.write(buf);
+  }
+
+  /* @see IRandomAccess#write(ByteBuffer, int, int) */
+  @Override
+  public void write(ByteBuffer buf, int off, int len) throws IOException {
+    handle.write(buf, off, len);
+  }
+
+  // -- DataInput API methods --
+
+  /* @see java.io.DataInput#readBoolean() */
+  @Override
+  public boolean readBoolean() throws IOException {
+    long fp = handle.getFilePointer();
+    boolean v = handle.readBoolean();
+    recordRead(fp, 1);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readByte() */
+  @Override
+  public byte readByte() throws IOException {
+    long fp = handle.getFilePointer();
+    byte v = handle.readByte();
+    recordRead(fp, 1);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readChar() */
+  @Override
+  public char readChar() throws IOException {
+    long fp = handle.getFilePointer();
+    char v = handle.readChar();
+    recordRead(fp, 2);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readDouble() */
+  @Override
+  public double readDouble() throws IOException {
+    long fp = handle.getFilePointer();
+    double v = handle.readDouble();
+    recordRead(fp, 8);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readFloat() */
+  @Override
+  public float readFloat() throws IOException {
+    long fp = handle.getFilePointer();
+    float v = handle.readFloat();
+    recordRead(fp, 4);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readFully(byte[]) */
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    long fp = handle.getFilePointer();
+    handle.readFully(b);
+    recordRead(fp, b.length);
+  }
+
+  /* @see java.io.DataInput#readFully(byte[], int, int) */
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    long fp = handle.getFilePointer();
+    handle.readFully(b, off, len);
+    recordRead(fp, len);
+  }
+
+  /* @see java.io.DataInput#readInt() */
+  @Override
+  public int readInt() throws IOException {
+    long fp = handle.getFilePointer();
+    int v = handle.readInt();
+    recordRead(fp, 4);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readLine() */
+  @Override
+  public String readLine() throws IOException {
+    long fp = handle.getFilePointer();
+    String line = handle.readLine();
+    recordRead(fp, handle.getFilePointer() - fp);
+    return line;
+  }
+
+  /* @see java.io.DataInput#readLong() */
+  @Override
+  public long readLong() throws IOException {
+    long fp = handle.getFilePointer();
+    long v = handle.readLong();
+    recordRead(fp, 8);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readShort() */
+  @Override
+  public short readShort() throws IOException {
+    long fp = handle.getFilePointer();
+    short v = handle.readShort();
+    recordRead(fp, 2);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readUnsignedByte() */
+  @Override
+  public int readUnsignedByte() throws IOException {
+    long fp = handle.getFilePointer();
+    int v = handle.readUnsignedByte();
+    recordRead(fp, 1);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readUnsignedShort() */
+  @Override
+  public int readUnsignedShort() throws IOException {
+    long fp = handle.getFilePointer();
+    int v = handle.readUnsignedShort();
+    recordRead(fp, 2);
+    return v;
+  }
+
+  /* @see java.io.DataInput#readUTF() */
+  @Override
+  public String readUTF() throws IOException {
+    long fp = handle.getFilePointer();
+    String s = handle.readUTF();
+    recordRead(fp, handle.getFilePointer() - fp);
+    return s;
+  }
+
+  /* @see java.io.DataInput#skipBytes(int) */
+  @Override
+  public int skipBytes(int n) throws IOException {
+    long fp = handle.getFilePointer();
+    int skipped = handle.skipBytes(n);
+    if (skipped > 0) {
+      log.seek(index, fp + skipped);
+    }
+    return skipped;
+  }
+
+  // -- DataOutput API methods --
+
+  /* @see java.io.DataOutput#write(byte[]) */
+  @Override
+  public void write(byte[] b) throws IOException {
+    handle.write(b);
+  }
+
+  /* @see java.io.DataOutput#write(byte[], int, int) */
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    handle.write(b, off, len);
+  }
+
+  /* @see java.io.DataOutput#write(int) */
+  @Override
+  public void write(int b) throws IOException {
+    handle.write(b);
+  }
+
+  /* @see java.io.DataOutput#writeBoolean(boolean) */
+  @Override
+  public void writeBoolean(boolean v) throws IOException {
+    handle.writeBoolean(v);
+  }
+
+  /* @see java.io.DataOutput#writeByte(int) */
+  @Override
+  public void writeByte(int v) throws IOException {
+    handle.writeByte(v);
+  }
+
+  /* @see java.io.DataOutput#writeBytes(String) */
+  @Override
+  public void writeBytes(String s) throws IOException {
+    handle.writeBytes(s);
+  }
+
+  /* @see java.io.DataOutput#writeChar(int) */
+  @Override
+  public void writeChar(int v) throws IOException {
+    handle.writeChar(v);
+  }
+
+  /* @see java.io.DataOutput#writeChars(String) */
+  @Override
+  public void writeChars(String s) throws IOException {
+    handle.writeChars(s);
+  }
+
+  /* @see java.io.DataOutput#writeDouble(double) */
+  @Override
+  public void writeDouble(double v) throws IOException {
+    handle.writeDouble(v);
+  }
+
+  /* @see java.io.DataOutput#writeFloat(float) */
+  @Override
+  public void writeFloat(float v) throws IOException {
+    handle.writeFloat(v);
+  }
+
+  /* @see java.io.DataOutput#writeInt(int) */
+  @Override
+  public void writeInt(int v) throws IOException {
+    handle.writeInt(v);
+  }
+
+  /* @see java.io.DataOutput#writeLong(long) */
+  @Override
+  public void writeLong(long v) throws IOException {
+    handle.writeLong(v);
+  }
+
+  /* @see java.io.DataOutput#writeShort(int) */
+  @Override
+  public void writeShort(int v) throws IOException {
+    handle.writeShort(v);
+  }
+
+  /* @see java.io.DataOutput#writeUTF(String) */
+  @Override
+  public void writeUTF(String str) throws IOException {
+    handle.writeUTF(str);
+  }
+
+  // -- Object API methods --
+
+  @Override
+  public String toString() {
+    return handle.toString();
+  }
+
+  // -- Helper methods --
+
+  /** Records a read call at the given offset that returned n bytes. */
+  private int recordRead(long offset, int n) throws IOException {
+    recordRead(offset, (long) n);
+    return n;
+  }
+
+  private void recordRead(long offset, long n) throws IOException {
+    if (n > 0) {
+      log.read(index, offset, n);
+    }
+  }
+
+}
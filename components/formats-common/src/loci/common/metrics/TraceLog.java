@@ -0,0 +1,369 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary log of the reads and seeks made through
+ * {@link TraceHandle}s, for replaying a reader's access pattern without
+ * the original storage.
+ *
+ * A log starts with the magic bytes <code>BFIO</code>, a format version
+ * byte and the wall-clock start time in milliseconds.  Each record is a
+ * type byte followed by variable-length integers: the handle number, the
+ * nanoseconds elapsed since the previous record, the thread number, and
+ * the record's own fields.  Handles and threads are numbered in the order
+ * in which they are first seen; an OPEN record gives a handle's id and
+ * length, and a THREAD record gives a thread's name.
+ *
+ * A log can be installed for every handle returned by
+ * {@link loci.common.Location#getHandle} with {@link #setGlobal(TraceLog)},
+ * or for a single id by mapping it to a TraceHandle with
+ * {@link loci.common.Location#mapFile}.
+ */
+public class TraceLog implements Closeable {
+
+  // -- Constants --
+
+  /** Record type that names a thread. */
+  public static final int THREAD = 0;
+
+  /** Record type for a handle being opened. */
+  public static final int OPEN = 1;
+
+  /** Record type for a read of one or more bytes. */
+  public static final int READ = 2;
+
+  /** Record type for a seek that moved the file pointer. */
+  public static final int SEEK = 3;
+
+  /** Record type for a handle being closed. */
+  public static final int CLOSE = 4;
+
+  private static final byte[] MAGIC = {'B', 'F', 'I', 'O'};
+
+  private static final int VERSION = 1;
+
+  // -- Static fields --
+
+  private static volatile TraceLog global;
+
+  // -- Fields --
+
+  private final DataOutputStream out;
+
+  private final Map<Thread, Integer> threads = new HashMap<Thread, Integer>();
+
+  private int handles;
+
+  private long lastTime = System.nanoTime();
+
+  private boolean closed;
+
+  // -- Constructor --
+
+  /** Creates a log that writes to the given file, replacing it. */
+  public TraceLog(File file) throws IOException {
+    out = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(file), 65536));
+    out.write(MAGIC);
+    out.writeByte(VERSION);
+    out.writeLong(System.currentTimeMillis());
+  }
+
+  // -- TraceLog API methods --
+
+  /**
+   * Gets the log to which every handle opened by
+   * {@link loci.common.Location#getHandle} is traced, or null.
+   */
+  public static TraceLog getGlobal() {
+    return global;
+  }
+
+  /**
+   * Sets the log to which every handle opened by
+   * {@link loci.common.Location#getHandle} is traced; null stops tracing.
+   * The previous log, if any, is not closed.
+   */
+  public static void setGlobal(TraceLog log) {
+    global = log;
+  }
+
+  /**
+   * Records that a handle was opened.
+   *
+   * @return the number that identifies the handle in later records
+   */
+  public synchronized int open(String id, long length) throws IOException {
+    int handle = handles++;
+    if (startRecord(OPEN, handle)) {
+      out.writeUTF(id);
+      writeVarLong(length);
+    }
+    return handle;
+  }
+
+  /** Records a read of the given number of bytes at the given offset. */
+  public synchronized void read(int handle, long offset, long length)
+    throws IOException
+  {
+    if (startRecord(READ, handle)) {
+      writeVarLong(offset);
+      writeVarLong(length);
+    }
+  }
+
+  /** Records a seek to the given offset. */
+  public synchronized void seek(int handle, long offset) throws IOException {
+    if (startRecord(SEEK, handle)) {
+      writeVarLong(offset);
+    }
+  }
+
+  /** Records that a handle was closed. */
+  public synchronized void close(int handle) throws IOException {
+    startRecord(CLOSE, handle);
+  }
+
+  /** Flushes any buffered records to the file. */
+  public synchronized void flush() throws IOException {
+    if (!closed) out.flush();
+  }
+
+  /**
+   * Closes the file.  Records made after the log is closed are ignored,
+   * so that handles that outlive the log can still be used.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      out.close();
+    }
+  }
+
+  /** Reads all events from the given log file. */
+  public static List<Event> readEvents(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+      new FileInputStream(file), 65536));
+    try {
+      byte[] magic = new byte[MAGIC.length];
+      in.readFully(magic);
+      for (int i=0; i<magic.length; i++) {
+        if (magic[i] != MAGIC[i]) {
+          throw new IOException(file + " is not an I/O trace");
+        }
+      }
+      int version = in.readUnsignedByte();
+      if (version != VERSION) {
+        throw new IOException("Unsupported I/O trace version " + version);
+      }
+      in.readLong();
+
+      List<Event> events = new ArrayList<Event>();
+      Map<Long, String> threadNames = new HashMap<Long, String>();
+      Map<Integer, String> ids = new HashMap<Integer, String>();
+      long time = 0;
+      while (true) {
+        int type = in.read();
+        if (type < 0) break;
+        if (type == THREAD) {
+          long index = readVarLong(in);
+          threadNames.put(index, in.readUTF());
+          continue;
+        }
+        int handle = (int) readVarLong(in);
+        time += readVarLong(in);
+        String thread = threadNames.get(readVarLong(in));
+
+        long offset = 0;
+        long length = 0;
+        if (type == OPEN) {
+          ids.put(handle, in.readUTF());
+          length = readVarLong(in);
+        }
+        else if (type == READ) {
+          offset = readVarLong(in);
+          length = readVarLong(in);
+        }
+        else if (type == SEEK) {
+          offset = readVarLong(in);
+        }
+        else if (type != CLOSE) {
+          throw new IOException("Invalid record type " + type);
+        }
+        events.add(new Event(type, handle, ids.get(handle), offset, length,
+          time, thread));
+      }
+      return events;
+    }
+    catch (EOFException e) {
+      throw new IOException(file + " is truncated", e);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Writes the fields that start each record.
+   *
+   * @return false if the log is closed and nothing was written
+   */
+  private boolean startRecord(int type, int handle) throws IOException {
+    if (closed) return false;
+    Thread current = Thread.currentThread();
+    Integer thread = threads.get(current);
+    if (thread == null) {
+      thread = threads.size();
+      threads.put(current, thread);
+      out.writeByte(THREAD);
+      writeVarLong(thread);
+      out.writeUTF(current.getName());
+    }
+
+    long now = System.nanoTime();
+    out.writeByte(type);
+    writeVarLong(handle);
+    writeVarLong(Math.max(0, now - lastTime));
+    writeVarLong(thread);
+    lastTime = now;
+    return true;
+  }
+
+  private void writeVarLong(long v) throws IOException {
+    while ((v & ~0x7fL) != 0) {
+      out.writeByte((int) (v & 0x7f) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte((int) v);
+  }
+
+  private static long readVarLong(DataInputStream in) throws IOException {
+    long v = 0;
+    for (int shift=0; shift<64; shift+=7) {
+      int b = in.readUnsignedByte();
+      v |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) return v;
+    }
+    throw new IOException("Invalid variable-length integer");
+  }
+
+  // -- Helper classes --
+
+  /** One record of an I/O trace. */
+  public static class Event {
+    private final int type;
+    private final int handle;
+    private final String id;
+    private final long offset;
+    private final long length;
+    private final long time;
+    private final String thread;
+
+    public Event(int type, int handle, String id, long offset, long length,
+      long time, String thread)
+    {
+      this.type = type;
+      this.handle = handle;
+      this.id = id;
+      this.offset = offset;
+      this.length = length;
+      this.time = time;
+      this.thread = thread;
+    }
+
+    /** Gets the record type, such as {@link TraceLog#READ}. */
+    public int getType() {
+      return type;
+    }
+
+    /** Gets the number of the handle. */
+    public int getHandle() {
+      return handle;
+    }
+
+    /** Gets the id with which the handle was opened. */
+    public String getId() {
+      return id;
+    }
+
+    /** Gets the offset of a read or seek. */
+    public long getOffset() {
+      return offset;
+    }
+
+    /**
+     * Gets the number of bytes read, or the length of the stream when the
+     * handle was opened.
+     */
+    public long getLength() {
+      return length;
+    }
+
+    /** Gets the nanoseconds elapsed between the log's creation and this. */
+    public long getTime() {
+      return time;
+    }
+
+    /** Gets the name of the thread that made the call. */
+    public String getThread() {
+      return thread;
+    }
+
+    @Override
+    public String toString() {
+      String[] names = {"THREAD", "OPEN", "READ", "SEEK", "CLOSE"};
+      return names[type] + " " + handle + " " + offset + " " + length +
+        " @" + time + " [" + thread + "]";
+    }
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.xml;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.transform.Templates;
+
+/**
+ * A cache of compiled XSLT stylesheets.
+ *
+ * {@link Templates} objects are immutable and thread-safe once compiled, so
+ * a single cache can be shared by any number of threads.  Each stylesheet
+ * is compiled at most once per cache; concurrent requests for a stylesheet
+ * that is not yet cached may compile it more than once, but only one
+ * instance is ever retained.
+ */
+public class StylesheetCache {
+
+  // -- Fields --
+
+  /** Class used to resolve stylesheet resources, or null for files. */
+  private final Class<?> sourceClass;
+
+  private final ConcurrentMap<String, Templates> templates =
+    new ConcurrentHashMap<String, Templates>();
+
+  // -- Constructor --
+
+  /**
+   * Constructs a new cache.
+   * @param sourceClass the class against which stylesheet resource paths
+   *   are resolved; if null, resource paths are treated as file paths
+   */
+  public StylesheetCache(Class<?> sourceClass) {
+    this.sourceClass = sourceClass;
+  }
+
+  // -- StylesheetCache API methods --
+
+  /**
+   * Gets the compiled stylesheet at the given resource location,
+   * compiling and caching it if necessary.
+   * @return the compiled stylesheet, or null if it could not be loaded
+   * @see XMLTools#getStylesheet(String, Class)
+   */
+  public Templates get(String resourcePath) {
+    Templates xslt = templates.get(resourcePath);
+    if (xslt == null) {
+      xslt = XMLTools.getStylesheet(resourcePath, sourceClass);
+      if (xslt == null) return null;
+      Templates existing = templates.putIfAbsent(resourcePath, xslt);
+      if (existing != null) xslt = existing;
+    }
+    return xslt;
+  }
+
+  /** Gets whether the stylesheet at the given location has been compiled. */
+  public boolean isCached(String resourcePath) {
+    return templates.containsKey(resourcePath);
+  }
+
+  /** Removes all compiled stylesheets from the cache. */
+  public void clear() {
+    templates.clear();
+  }
+
+}
@@ -47,9 +47,11 @@ import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
@@ -71,6 +73,7 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
@@ -508,7 +511,9 @@ public final class XMLTools {
     try {
       StreamSource xsltSource = new StreamSource(xsltStream);
       // Java XML factories are not declared to be thread safe
-      return transformFactory.newTemplates(xsltSource);
+      synchronized (transformFactory) {
+        return transformFactory.newTemplates(xsltSource);
+      }
     }
     catch (TransformerConfigurationException exc) {
       LOGGER.debug("Could not construct template", exc);
@@ -524,23 +529,44 @@ public final class XMLTools {
     return null;
   }
 
+  /**
+   * Gets the shared transformer factory as a {@link SAXTransformerFactory},
+   * for chaining stylesheets.  Callers must synchronize on the returned
+   * factory while using it.
+   * @throws TransformerConfigurationException if the factory does not
+   *   support SAX transformations
+   */
+  static SAXTransformerFactory getSAXTransformerFactory()
+    throws TransformerConfigurationException
+  {
+    if (!transformFactory.getFeature(SAXTransformerFactory.FEATURE)) {
+      throw new TransformerConfigurationException(
+        "Transformer factory does not support SAX transformations");
+    }
+    return (SAXTransformerFactory) transformFactory;
+  }
+
   /** Replaces NS:tag with NS_tag for undeclared namespaces */
   public static String avoidUndeclaredNamespaces(String xml) {
-    int gt = xml.indexOf('>');
-    if (gt > 0 && xml.startsWith("<?xml ")) {
-      gt = xml.indexOf('>', gt + 1);
-    }
+    // skip the XML declaration, processing instructions, comments and
+    // document type declaration that may precede the root element
+    int start = xml.indexOf('<');
+    while (start >= 0 && start < xml.length() - 1 &&
+      (xml.charAt(start + 1) == '?' || xml.charAt(start + 1) == '!'))
+    {
+      String end = xml.startsWith("<!--", start) ? "-->" :
+        xml.charAt(start + 1) == '?' ? "?>" : ">";
+      int endIndex = xml.indexOf(end, start);
+      start = endIndex < 0 ? -1 : xml.indexOf('<', endIndex + end.length());
+    }
+    int gt = start < 0 ? -1 : xml.indexOf('>', start);
     if (gt > 0) {
       String firstTag = xml.substring(0, gt + 1).toLowerCase();
 
-      // the first tag is a comment; we need to find the first "real" tag
-      while (firstTag.endsWith("-->")) {
-        gt = xml.indexOf('>', gt + 1);
-        firstTag = xml.substring(0, gt + 1).toLowerCase();
-      }
-
-      Set namespaces = new HashSet();
-      Pattern pattern = Pattern.compile(" xmlns:(\\w+)");
+      // namespace declarations may be separated by any whitespace,
+      // not just a single space
+      Set<String> namespaces = new HashSet<String>();
+      Pattern pattern = Pattern.compile("\\sxmlns:(\\w+)");
       Matcher matcher = pattern.matcher(firstTag);
       while (matcher.find()) {
         namespaces.add(matcher.group(1));
@@ -558,12 +584,17 @@ public final class XMLTools {
         }
       }
 
-      Pattern emptyNamespaces = Pattern.compile(" xmlns:(\\w+)=\"\"");
+      // remove empty declarations from the last one backwards,
+      // so that the offsets of the earlier ones remain valid
+      Pattern emptyNamespaces = Pattern.compile("\\sxmlns:(\\w+)=\"\"");
       matcher = emptyNamespaces.matcher(firstTag);
+      List<int[]> empty = new ArrayList<int[]>();
       while (matcher.find()) {
-        int start = matcher.start();
-        int end = matcher.end();
-        xml = xml.substring(0, start + 1) + xml.substring(end);
+        empty.add(new int[] {matcher.start(), matcher.end()});
+      }
+      for (int i=empty.size()-1; i>=0; i--) {
+        int[] range = empty.get(i);
+        xml = xml.substring(0, range[0] + 1) + xml.substring(range[1]);
       }
     }
     return xml;
@@ -577,6 +608,17 @@ public final class XMLTools {
     return transformXML(new StreamSource(new StringReader(xml)), xslt);
   }
 
+  /**
+   * Transforms the given XML string using each of the specified XSLT
+   * stylesheets in turn, without serializing the intermediate results.
+   * @see XSLTPipeline
+   */
+  public static String transformXML(String xml, List<Templates> xslts)
+    throws IOException
+  {
+    return new XSLTPipeline(xslts).transform(xml);
+  }
+
   /** Transforms the given XML data using the specified XSLT stylesheet. */
   public static String transformXML(Source xmlSource, Templates xslt)
     throws IOException
@@ -0,0 +1,285 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.xml;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * A chain of XSLT stylesheets applied to a document in a single pass.
+ *
+ * Each stage is a {@link TransformerHandler}; the SAX events produced by one
+ * stage are fed directly into the next, so the document is parsed once and
+ * serialized once no matter how many stylesheets are applied.  A pipeline is
+ * immutable and may be shared between threads; every call to
+ * {@link #transform(Source, Result)} creates its own transformers.
+ */
+public class XSLTPipeline {
+
+  // -- Fields --
+
+  private final List<Templates> stages;
+
+  /**
+   * Prefix to bind to the document element's default namespace
+   * before each stage, or null.
+   */
+  private final String namespacePrefix;
+
+  // -- Constructors --
+
+  /** Constructs a pipeline applying the given stylesheets in order. */
+  public XSLTPipeline(List<Templates> stages) {
+    this(stages, null);
+  }
+
+  /**
+   * Constructs a pipeline applying the given stylesheets in order.
+   *
+   * @param stages the compiled stylesheets, in the order they are applied
+   * @param namespacePrefix if non-null, the prefix that is bound to the
+   *   document element's default namespace on the input to every stage,
+   *   unless the document element already declares it.  Several of the
+   *   OME-XML upgrade stylesheets depend upon this binding.
+   */
+  public XSLTPipeline(List<Templates> stages, String namespacePrefix) {
+    for (Templates t : stages) {
+      if (t == null) {
+        throw new IllegalArgumentException("Null stylesheet in pipeline");
+      }
+    }
+    this.stages =
+      Collections.unmodifiableList(new ArrayList<Templates>(stages));
+    this.namespacePrefix = namespacePrefix;
+  }
+
+  // -- XSLTPipeline API methods --
+
+  /** Gets the number of stylesheets in this pipeline. */
+  public int getStageCount() {
+    return stages.size();
+  }
+
+  /**
+   * Transforms the given XML string through every stage of the pipeline.
+   * Undeclared namespace prefixes are handled as in
+   * {@link XMLTools#transformXML(String, Templates)}.
+   */
+  public String transform(String xml) throws IOException {
+    if (stages.size() == 0) return xml;
+    xml = XMLTools.avoidUndeclaredNamespaces(xml);
+    StringWriter xmlWriter = new StringWriter();
+    transform(new StreamSource(new StringReader(xml)),
+      new StreamResult(xmlWriter));
+    return xmlWriter.toString();
+  }
+
+  /**
+   * Transforms the given source through every stage of the pipeline.
+   * A pipeline without stages copies the source to the result unchanged.
+   */
+  public void transform(Source source, Result result) throws IOException {
+    try {
+      SAXTransformerFactory factory = XMLTools.getSAXTransformerFactory();
+      Transformer input;
+      TransformerHandler[] handlers = new TransformerHandler[stages.size()];
+      // Java XML factories are not declared to be thread safe
+      synchronized (factory) {
+        input = factory.newTransformer();
+        for (int i=0; i<handlers.length; i++) {
+          handlers[i] = factory.newTransformerHandler(stages.get(i));
+        }
+      }
+      input.setErrorListener(new XMLTools.XMLListener());
+
+      if (handlers.length == 0) {
+        input.transform(source, result);
+        return;
+      }
+
+      for (int i=0; i<handlers.length; i++) {
+        handlers[i].getTransformer().setErrorListener(
+          new XMLTools.XMLListener());
+        if (i < handlers.length - 1) {
+          handlers[i].setResult(stageResult(handlers[i + 1]));
+        }
+      }
+      handlers[handlers.length - 1].setResult(result);
+
+      input.transform(source, stageResult(handlers[0]));
+    }
+    catch (TransformerException exc) {
+      IOException e = new IOException();
+      e.initCause(exc);
+      throw e;
+    }
+  }
+
+  // -- Helper methods --
+
+  /** Wraps the given stage as the result of the previous stage. */
+  private SAXResult stageResult(TransformerHandler handler) {
+    if (namespacePrefix == null) {
+      return new SAXResult(handler);
+    }
+    // the filter must also be a LexicalHandler, otherwise comments
+    // produced by the previous stage are silently dropped
+    NamespaceBindingFilter filter = new NamespaceBindingFilter(handler);
+    SAXResult result = new SAXResult(filter);
+    result.setLexicalHandler(filter);
+    return result;
+  }
+
+  // -- Helper class --
+
+  /**
+   * Binds {@link #namespacePrefix} to the document element's default
+   * namespace, if the document element does not already declare it.
+   */
+  private class NamespaceBindingFilter extends XMLFilterImpl
+    implements LexicalHandler
+  {
+
+    private final TransformerHandler next;
+    private final Set<String> declared = new HashSet<String>();
+    private String defaultNamespace;
+    private int depth = 0;
+    private boolean bound = false;
+
+    NamespaceBindingFilter(TransformerHandler next) {
+      this.next = next;
+      setContentHandler(next);
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri)
+      throws SAXException
+    {
+      if (depth == 0) {
+        declared.add(prefix);
+        if (prefix.length() == 0) defaultNamespace = uri;
+      }
+      super.startPrefixMapping(prefix, uri);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName,
+      Attributes atts) throws SAXException
+    {
+      if (depth == 0 && !declared.contains(namespacePrefix) &&
+        defaultNamespace != null && defaultNamespace.length() > 0)
+      {
+        super.startPrefixMapping(namespacePrefix, defaultNamespace);
+        bound = true;
+      }
+      depth++;
+      super.startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName)
+      throws SAXException
+    {
+      super.endElement(uri, localName, qName);
+      depth--;
+      if (depth == 0 && bound) {
+        super.endPrefixMapping(namespacePrefix);
+        bound = false;
+      }
+    }
+
+    @Override
+    public void startDTD(String name, String publicId, String systemId)
+      throws SAXException
+    {
+      next.startDTD(name, publicId, systemId);
+    }
+
+    @Override
+    public void endDTD() throws SAXException {
+      next.endDTD();
+    }
+
+    @Override
+    public void startEntity(String name) throws SAXException {
+      next.startEntity(name);
+    }
+
+    @Override
+    public void endEntity(String name) throws SAXException {
+      next.endEntity(name);
+    }
+
+    @Override
+    public void startCDATA() throws SAXException {
+      next.startCDATA();
+    }
+
+    @Override
+    public void endCDATA() throws SAXException {
+      next.endCDATA();
+    }
+
+    @Override
+    public void comment(char[] ch, int start, int length)
+      throws SAXException
+    {
+      next.comment(ch, start, length);
+    }
+
+  }
+
+}
@@ -33,6 +33,8 @@
 package loci.common.utests;
 
 import loci.common.DataTools;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Locale;
 
 import static org.testng.AssertJUnit.assertEquals;
@@ -229,4 +231,122 @@ public class DataToolsTest {
     assertEquals(DataTools.parseDouble("0,1"), 0.1d);
     assertEquals(DataTools.parseDouble("not a number"), null);
   }
+
+  @Test
+  public void testUnpackSamples() {
+    short[] values = {1, -2, 300, Short.MAX_VALUE};
+    for (boolean little : new boolean[] {true, false}) {
+      byte[] bytes = DataTools.shortsToBytes(values, little);
+
+      short[] s = new short[values.length + 1];
+      DataTools.unpackSamples(bytes, 2, s, 1, values.length - 1, 2, little);
+      assertEquals(0, s[0]);
+      for (int i=1; i<values.length; i++) {
+        assertEquals(values[i], s[i]);
+      }
+
+      for (ByteOrder order : new ByteOrder[] {
+        ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN})
+      {
+        ByteBuffer b = ByteBuffer.allocate(bytes.length + 2).order(order);
+        b.position(2);
+        DataTools.unpackSamples(bytes, 0, b, 0, values.length, 2, little);
+        assertEquals(2, b.position());
+        for (int i=0; i<values.length; i++) {
+          assertEquals(values[i], b.getShort(2 + i * 2));
+        }
+      }
+    }
+
+    float[] f = new float[2];
+    DataTools.unpackSamples(DataTools.floatsToBytes(new float[] {1.5f, -3f},
+      true), 0, f, 0, 2, 4, true);
+    assertEquals(1.5f, f[0]);
+    assertEquals(-3f, f[1]);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testUnpackSamplesWrongType() {
+    DataTools.unpackSamples(new byte[8], 0, new short[4], 0, 2, 4, true);
+  }
+
+  @Test
+  public void testPackSamples() {
+    for (boolean little : new boolean[] {true, false}) {
+      short[] s = {0, 1, -1, Short.MAX_VALUE, Short.MIN_VALUE};
+      byte[] b = new byte[s.length * 2 + 1];
+      DataTools.packSamples(s, 1, b, 1, s.length - 1, little);
+      assertEquals(0, b[0]);
+      for (int i=1; i<s.length; i++) {
+        assertEquals(s[i], DataTools.bytesToShort(b, 1 + (i - 1) * 2, little));
+      }
+
+      int[] in = {7, -7, Integer.MAX_VALUE};
+      b = new byte[in.length * 4];
+      DataTools.packSamples(in, 0, b, 0, in.length, little);
+      for (int i=0; i<in.length; i++) {
+        assertEquals(in[i], DataTools.bytesToInt(b, i * 4, little));
+      }
+
+      double[] d = {1.25, -0.5};
+      b = new byte[d.length * 8];
+      DataTools.packSamples(d, 0, b, 0, d.length, little);
+      for (int i=0; i<d.length; i++) {
+        assertEquals(d[i], DataTools.bytesToDouble(b, i * 8, little));
+      }
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testPackSamplesWrongType() {
+    DataTools.packSamples(new char[2], 0, new byte[4], 0, 2, true);
+  }
+
+  @Test
+  public void testSwapBytes() {
+    byte[] b = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+    DataTools.swapBytes(b, 1, 8, 2);
+    assertEquals(1, b[0]);
+    assertEquals(3, b[1]);
+    assertEquals(2, b[2]);
+    assertEquals(9, b[7]);
+    assertEquals(8, b[8]);
+
+    b = DataTools.intsToBytes(new int[] {0x01020304, -2}, true);
+    DataTools.swapBytes(b, 0, b.length, 4);
+    assertEquals(0x01020304, DataTools.bytesToInt(b, 0, false));
+    assertEquals(-2, DataTools.bytesToInt(b, 4, false));
+
+    b = DataTools.longsToBytes(new long[] {0x0102030405060708L}, false);
+    DataTools.swapBytes(b, 0, b.length, 8);
+    assertEquals(0x0102030405060708L, DataTools.bytesToLong(b, 0, true));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testSwapBytesBadSize() {
+    DataTools.swapBytes(new byte[6], 0, 6, 3);
+  }
+
+  @Test
+  public void testMakeDataArray() {
+    float[] f = {1.5f, -2f, 0f};
+    Object a = DataTools.makeDataArray(DataTools.floatsToBytes(f, false),
+      4, true, false);
+    assertEquals(true, a instanceof float[]);
+    assertEquals(f.length, ((float[]) a).length);
+    for (int i=0; i<f.length; i++) {
+      assertEquals(f[i], ((float[]) a)[i]);
+    }
+
+    short[] s = {300, -300};
+    a = DataTools.makeDataArray(DataTools.shortsToBytes(s, true), 2,
+      false, true);
+    assertEquals(s[0], ((short[]) a)[0]);
+    assertEquals(s[1], ((short[]) a)[1]);
+
+    Object[] rows = (Object[]) DataTools.makeDataArray2D(
+      DataTools.shortsToBytes(s, true), 2, false, true, 2);
+    assertEquals(2, rows.length);
+    assertEquals(s[1], ((short[]) rows[1])[0]);
+  }
 }
@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import loci.common.FileChannelPool;
+import loci.common.NIOFileHandle;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the loci.common.FileChannelPool class.
+ *
+ * @see loci.common.FileChannelPool
+ */
+public class FileChannelPoolTest {
+
+  // -- Fields --
+
+  private File[] files;
+
+  // -- Setup methods --
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    files = new File[3];
+    for (int i=0; i<files.length; i++) {
+      files[i] = File.createTempFile("pool", ".dat");
+      files[i].deleteOnExit();
+      FileOutputStream out = new FileOutputStream(files[i]);
+      out.write(new byte[] {(byte) i, 1, 2, 3});
+      out.close();
+    }
+    FileChannelPool.setMaximumSize(2);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    FileChannelPool.setMaximumSize(0);
+    for (File file : files) {
+      file.delete();
+    }
+  }
+
+  // -- Test methods --
+
+  @Test
+  public void testSharedFile() throws IOException {
+    NIOFileHandle a = new NIOFileHandle(files[0], "r");
+    NIOFileHandle b = new NIOFileHandle(files[0], "r");
+    assertSame(a.getRandomAccessFile(), b.getRandomAccessFile());
+    assertEquals(1, FileChannelPool.getOpenCount());
+
+    b.seek(2);
+    assertEquals(0, a.readByte());
+    assertEquals(2, b.readByte());
+
+    // closing one handle does not affect the other
+    a.close();
+    a.close();
+    assertEquals(1, b.readByte() - 2);
+    b.close();
+    assertEquals(1, FileChannelPool.getOpenCount());
+
+    NIOFileHandle c = new NIOFileHandle(files[0], "r");
+    assertSame(b.getRandomAccessFile(), c.getRandomAccessFile());
+    c.close();
+  }
+
+  @Test
+  public void testBoundedIdleFiles() throws IOException {
+    for (File file : files) {
+      new NIOFileHandle(file, "r").close();
+    }
+    assertEquals(2, FileChannelPool.getOpenCount());
+
+    FileChannelPool.clear();
+    assertEquals(0, FileChannelPool.getOpenCount());
+    assertEquals(2, FileChannelPool.getMaximumSize());
+  }
+
+  @Test
+  public void testDisabled() throws IOException {
+    FileChannelPool.setMaximumSize(0);
+    assertFalse(FileChannelPool.isEnabled());
+    NIOFileHandle a = new NIOFileHandle(files[0], "r");
+    NIOFileHandle b = new NIOFileHandle(files[0], "r");
+    assertNotSame(a.getRandomAccessFile(), b.getRandomAccessFile());
+    a.close();
+    b.close();
+    assertEquals(0, FileChannelPool.getOpenCount());
+  }
+
+  @Test
+  public void testReadWriteNotShared() throws IOException {
+    NIOFileHandle a = new NIOFileHandle(files[0], "r");
+    NIOFileHandle b = new NIOFileHandle(files[0], "rw");
+    assertNotSame(a.getRandomAccessFile(), b.getRandomAccessFile());
+    a.close();
+    b.close();
+  }
+
+}
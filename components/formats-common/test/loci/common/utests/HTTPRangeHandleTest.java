@@ -0,0 +1,265 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import loci.common.HTTPRangeHandle;
+import loci.common.HandleException;
+import loci.common.IRandomAccess;
+import loci.common.Location;
+import loci.common.utests.providers.HTTPServerStandIn;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the loci.common.HTTPRangeHandle class, using an
+ * in-process HTTP server that adds latency to each response.
+ *
+ * @see loci.common.HTTPRangeHandle
+ */
+public class HTTPRangeHandleTest {
+
+  // -- Constants --
+
+  private static final int BLOCK_SIZE = 16;
+
+  private static final int LENGTH = 64 * BLOCK_SIZE;
+
+  private static final long LATENCY = 5;
+
+  // -- Fields --
+
+  private HTTPServerStandIn server;
+
+  private byte[] data;
+
+  private String url;
+
+  private HTTPRangeHandle handle;
+
+  // -- Setup methods --
+
+  @BeforeClass
+  public void startServer() throws IOException {
+    server = new HTTPServerStandIn();
+    data = new byte[LENGTH];
+    new Random(42).nextBytes(data);
+    url = server.addFile(data);
+  }
+
+  @AfterClass
+  public void stopServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    server.setLatency(LATENCY);
+    server.setRangesSupported(true);
+    handle = new HTTPRangeHandle(url, BLOCK_SIZE, 1024);
+    server.takeRanges();
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    handle.close();
+  }
+
+  // -- Test methods --
+
+  @Test
+  public void testLength() throws IOException {
+    assertEquals(LENGTH, handle.length());
+    assertEquals(0, handle.getRequestCount());
+  }
+
+  @Test
+  public void testRandomReads() throws IOException {
+    Random random = new Random(7);
+    for (int i=0; i<200; i++) {
+      int offset = random.nextInt(LENGTH);
+      int len = random.nextInt(3 * BLOCK_SIZE);
+      byte[] b = new byte[len];
+      handle.seek(offset);
+      int n = handle.read(b);
+      int expected = Math.min(len, LENGTH - offset);
+      assertEquals(expected, n);
+      assertTrue(Arrays.equals(
+        Arrays.copyOfRange(data, offset, offset + expected),
+        Arrays.copyOf(b, expected)));
+      assertEquals(offset + expected, handle.getFilePointer());
+    }
+  }
+
+  @Test
+  public void testCoalescedMisses() throws IOException {
+    byte[] b = new byte[4 * BLOCK_SIZE];
+    handle.seek(BLOCK_SIZE);
+    handle.readFully(b);
+    assertEquals(Arrays.asList("16-79"), server.takeRanges());
+
+    // only the two blocks that are not yet cached are requested
+    b = new byte[6 * BLOCK_SIZE];
+    handle.seek(0);
+    handle.readFully(b);
+    assertEquals(Arrays.asList("0-15", "80-95"), server.takeRanges());
+    assertTrue(Arrays.equals(Arrays.copyOf(data, b.length), b));
+  }
+
+  @Test
+  public void testCachedReads() throws IOException {
+    byte[] b = new byte[BLOCK_SIZE / 2];
+    handle.seek(3 * BLOCK_SIZE);
+    handle.readFully(b);
+    handle.seek(3 * BLOCK_SIZE + 4);
+    handle.readFully(b);
+    handle.seek(3 * BLOCK_SIZE + 1);
+    assertEquals(data[3 * BLOCK_SIZE + 1], handle.readByte());
+    assertEquals(1, handle.getRequestCount());
+  }
+
+  @Test
+  public void testSequentialReadAhead() throws IOException {
+    byte[] b = new byte[BLOCK_SIZE];
+    for (int i=0; i<LENGTH / BLOCK_SIZE; i++) {
+      handle.readFully(b);
+      assertTrue(Arrays.equals(
+        Arrays.copyOfRange(data, i * BLOCK_SIZE, (i + 1) * BLOCK_SIZE), b));
+    }
+    // the read-ahead window doubles with each sequential miss, up to
+    // MAX_READ_AHEAD blocks
+    assertEquals(Arrays.asList("0-15", "16-47", "48-95", "96-175",
+      "176-319", "320-591", "592-863", "864-1023"), server.takeRanges());
+  }
+
+  @Test
+  public void testRandomAccessDoesNotReadAhead() throws IOException {
+    int[] blocks = {40, 3, 17, 60, 9};
+    for (int block : blocks) {
+      handle.seek(block * BLOCK_SIZE);
+      handle.readInt();
+    }
+    assertEquals(blocks.length, server.takeRanges().size());
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    handle.close();
+    handle = new HTTPRangeHandle(url, BLOCK_SIZE, 4 * BLOCK_SIZE);
+    int[] blocks = {0, 10, 20, 30, 40};
+    for (int block : blocks) {
+      handle.seek(block * BLOCK_SIZE);
+      assertEquals(data[block * BLOCK_SIZE], handle.readByte());
+    }
+    assertEquals(5, handle.getRequestCount());
+
+    // block 0 was the least recently used, so it has been evicted
+    handle.seek(40 * BLOCK_SIZE);
+    handle.readByte();
+    assertEquals(5, handle.getRequestCount());
+    handle.seek(0);
+    assertEquals(data[0], handle.readByte());
+    assertEquals(6, handle.getRequestCount());
+  }
+
+  @Test
+  public void testLittleEndian() throws IOException {
+    handle.setOrder(ByteOrder.LITTLE_ENDIAN);
+    handle.seek(BLOCK_SIZE - 2);
+    int expected = (data[BLOCK_SIZE - 2] & 0xff) |
+      ((data[BLOCK_SIZE - 1] & 0xff) << 8) |
+      ((data[BLOCK_SIZE] & 0xff) << 16) | (data[BLOCK_SIZE + 1] << 24);
+    assertEquals(expected, handle.readInt());
+  }
+
+  @Test
+  public void testReadAtEnd() throws IOException {
+    handle.seek(LENGTH);
+    assertEquals(0, handle.read(new byte[4]));
+    handle.seek(LENGTH + 1);
+    assertEquals(-1, handle.read(new byte[4]));
+    assertEquals(0, handle.skipBytes(4));
+  }
+
+  @Test(expectedExceptions = {EOFException.class})
+  public void testEOF() throws IOException {
+    handle.seek(LENGTH - 2);
+    handle.readInt();
+  }
+
+  @Test
+  public void testRangesNotSupported() throws IOException {
+    server.setRangesSupported(false);
+    byte[] b = new byte[BLOCK_SIZE];
+    handle.seek(5 * BLOCK_SIZE + 3);
+    handle.readFully(b);
+    assertTrue(Arrays.equals(
+      Arrays.copyOfRange(data, 5 * BLOCK_SIZE + 3, 6 * BLOCK_SIZE + 3), b));
+  }
+
+  @Test(expectedExceptions = {FileNotFoundException.class})
+  public void testMissingFile() throws IOException {
+    new HTTPRangeHandle(url + ".missing");
+  }
+
+  @Test
+  public void testLocationHandle() throws IOException {
+    IRandomAccess h = Location.getHandle(url);
+    try {
+      assertTrue(h instanceof HTTPRangeHandle);
+      assertEquals(LENGTH, h.length());
+    }
+    finally {
+      h.close();
+    }
+  }
+
+  @Test(expectedExceptions = {HandleException.class})
+  public void testWrite() throws IOException {
+    handle.write(0);
+  }
+
+}
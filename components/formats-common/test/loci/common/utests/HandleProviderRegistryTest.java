@@ -0,0 +1,189 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import loci.common.ByteArrayHandle;
+import loci.common.HandleProvider;
+import loci.common.HandleProviderRegistry;
+import loci.common.IRandomAccess;
+import loci.common.Location;
+import loci.common.NIOFileHandle;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the loci.common.HandleProviderRegistry class.
+ *
+ * @see loci.common.HandleProviderRegistry
+ */
+public class HandleProviderRegistryTest {
+
+  // -- Fields --
+
+  private CountingProvider provider;
+
+  private File file;
+
+  // -- Setup methods --
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    provider = new CountingProvider();
+    HandleProviderRegistry.addProvider(provider);
+    file = File.createTempFile("registry", ".count");
+    file.deleteOnExit();
+    write(file, new byte[] {1, 2, 3, 4});
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    HandleProviderRegistry.removeProvider(provider);
+    HandleProviderRegistry.clearCache();
+    file.delete();
+  }
+
+  // -- Test methods --
+
+  @Test
+  public void testBuiltInProviders() throws IOException {
+    assertTrue(HandleProviderRegistry.getProviders().size() >= 5);
+    assertSame(provider, HandleProviderRegistry.getProviders().get(0));
+    assertNull(HandleProviderRegistry.getProvider(
+      file.getAbsolutePath() + ".tif", true));
+  }
+
+  @Test
+  public void testCustomScheme() throws IOException {
+    IRandomAccess handle = Location.getHandle("mem://test");
+    assertTrue(handle instanceof ByteArrayHandle);
+    assertEquals(8, handle.length());
+    handle.close();
+  }
+
+  @Test
+  public void testProbeIsCached() throws IOException {
+    String id = file.getAbsolutePath();
+    for (int i=0; i<3; i++) {
+      IRandomAccess handle = Location.getHandle(id);
+      assertTrue(handle instanceof NIOFileHandle);
+      handle.close();
+      Location.checkValidId(id);
+    }
+    assertEquals(1, provider.probes);
+
+    // a change in size invalidates the cached result
+    write(file, new byte[] {1, 2, 3, 4, 5});
+    Location.getHandle(id).close();
+    assertEquals(2, provider.probes);
+  }
+
+  @Test
+  public void testArchiveProvidersSkipped() throws IOException {
+    provider.archive = true;
+    HandleProviderRegistry.clearCache();
+    assertSame(provider, HandleProviderRegistry.getProvider("mem://a", true));
+    assertNull(HandleProviderRegistry.getProvider("mem://a", false));
+  }
+
+  @Test(expectedExceptions = {FileNotFoundException.class})
+  public void testCheckMissingFile() throws IOException {
+    Location.checkValidId(file.getAbsolutePath() + ".missing");
+  }
+
+  @Test(expectedExceptions = {FileNotFoundException.class})
+  public void testCheckDirectory() throws IOException {
+    Location.checkValidId(file.getParentFile().getAbsolutePath());
+  }
+
+  // -- Helper methods --
+
+  private static void write(File f, byte[] data) throws IOException {
+    FileOutputStream out = new FileOutputStream(f);
+    try {
+      out.write(data);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  // -- Helper classes --
+
+  /**
+   * Provider for "mem://" ids, which also checks the type of ".count"
+   * files, counting each check and rejecting the file.
+   */
+  private static class CountingProvider implements HandleProvider {
+    private int probes;
+    private boolean archive;
+
+    @Override
+    public boolean accepts(String id) {
+      return id.startsWith("mem://") || id.endsWith(".count");
+    }
+
+    @Override
+    public boolean isThisType(String id) {
+      if (id.startsWith("mem://")) {
+        return true;
+      }
+      probes++;
+      return false;
+    }
+
+    @Override
+    public boolean isArchive() {
+      return archive;
+    }
+
+    @Override
+    public IRandomAccess createHandle(String id, boolean writable,
+      int bufferSize) throws IOException
+    {
+      return new ByteArrayHandle(new byte[8]);
+    }
+  }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import loci.common.IRandomAccess;
+import loci.common.Location;
+import loci.common.metrics.Counter;
+import loci.common.metrics.Histogram;
+import loci.common.metrics.MeteredHandle;
+import loci.common.metrics.MetricsRegistry;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the loci.common.metrics package.
+ *
+ * @see loci.common.metrics.MetricsRegistry
+ */
+public class MetricsRegistryTest {
+
+  // -- Setup/teardown methods --
+
+  @BeforeMethod
+  public void setUp() {
+    MetricsRegistry.reset();
+    MetricsRegistry.setEnabled(true);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    MetricsRegistry.setEnabled(false);
+    MetricsRegistry.reset();
+    MetricsRegistry.unregisterMBean();
+  }
+
+  // -- Tests --
+
+  @Test
+  public void testCounter() {
+    Counter counter = MetricsRegistry.counter("test.counter");
+    assertSame(counter, MetricsRegistry.counter("test.counter"));
+    counter.increment();
+    counter.add(41);
+    assertEquals(42, counter.getValue());
+    assertTrue(MetricsRegistry.getSummary().contains("test.counter = 42"));
+
+    MetricsRegistry.reset();
+    assertEquals(0, counter.getValue());
+    assertSame(counter, MetricsRegistry.counter("test.counter"));
+  }
+
+  @Test
+  public void testHistogram() {
+    Histogram histogram = MetricsRegistry.histogram("test.histogram");
+    assertFalse(histogram.isTimer());
+    for (int i=1; i<=100; i++) {
+      histogram.record(i);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(5050, histogram.getSum());
+    assertEquals(1, histogram.getMin());
+    assertEquals(100, histogram.getMax());
+    assertEquals(50.5, histogram.getMean(), 1e-9);
+
+    // percentiles are the upper bounds of power-of-two buckets
+    assertEquals(63, histogram.getPercentile(50));
+    assertEquals(100, histogram.getPercentile(95));
+    assertEquals(1, histogram.getPercentile(0));
+
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getPercentile(50));
+  }
+
+  @Test
+  public void testTimer() {
+    Histogram timer = MetricsRegistry.timer("test.timer");
+    assertTrue(timer.isTimer());
+    timer.recordSince(MetricsRegistry.start());
+    assertEquals(1, timer.getCount());
+
+    MetricsRegistry.setEnabled(false);
+    long start = MetricsRegistry.start();
+    assertEquals(MetricsRegistry.NOT_STARTED, start);
+    timer.recordSince(start);
+    assertEquals(1, timer.getCount());
+  }
+
+  @Test
+  public void testMeteredHandle() throws IOException {
+    File file = File.createTempFile("metrics", ".bin");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(new byte[1000]);
+    out.close();
+
+    IRandomAccess handle = Location.getHandle(file.getAbsolutePath());
+    try {
+      assertTrue(handle instanceof MeteredHandle);
+      handle.readFully(new byte[100]);
+      handle.seek(100);
+      handle.readInt();
+      handle.seek(500);
+      assertEquals(200, handle.read(new byte[200]));
+      handle.seek(50);
+    }
+    finally {
+      handle.close();
+    }
+
+    assertEquals(3, MetricsRegistry.counter(MeteredHandle.READS).getValue());
+    assertEquals(304,
+      MetricsRegistry.counter(MeteredHandle.BYTES_READ).getValue());
+    // seeking to the current file pointer is not counted
+    assertEquals(2, MetricsRegistry.counter(MeteredHandle.SEEKS).getValue());
+    Histogram distance =
+      MetricsRegistry.histogram(MeteredHandle.SEEK_DISTANCE);
+    assertEquals(396 + 650, distance.getSum());
+
+    MetricsRegistry.setEnabled(false);
+    handle = Location.getHandle(file.getAbsolutePath());
+    try {
+      assertFalse(handle instanceof MeteredHandle);
+    }
+    finally {
+      handle.close();
+    }
+  }
+
+  @Test
+  public void testMBean() throws Exception {
+    MetricsRegistry.counter("test.mbean").add(7);
+    MetricsRegistry.histogram("test.values").record(12);
+    MetricsRegistry.registerMBean();
+    MetricsRegistry.registerMBean();
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(MetricsRegistry.OBJECT_NAME);
+    assertEquals(7L, server.getAttribute(name, "test.mbean"));
+    assertEquals(1L, server.getAttribute(name, "test.values.count"));
+    assertEquals(12L, server.getAttribute(name, "test.values.max"));
+
+    server.invoke(name, "reset", new Object[0], new String[0]);
+    assertEquals(0L, server.getAttribute(name, "test.mbean"));
+
+    MetricsRegistry.unregisterMBean();
+    assertFalse(server.isRegistered(name));
+  }
+
+}
@@ -147,6 +147,32 @@ public class ReadByteBufferTest {
     assertEquals(0x09, b.get());
   }
 
+  @Test
+  public void testReadAtOffset() throws IOException {
+    fileHandle.seek(12);
+    ByteBuffer b = ByteBuffer.allocate(8);
+    int length = fileHandle.read(b, 4, 4);
+    assertEquals(16, fileHandle.getFilePointer());
+    assertEquals(4, length);
+    assertEquals(0x00, b.get(3));
+    assertEquals(0x0D, b.get(4));
+    assertEquals(0x0E, b.get(5));
+    assertEquals((byte) 0xFF, b.get(6));
+    assertEquals((byte) 0xFE, b.get(7));
+  }
+
+  @Test
+  public void testReadDirect() throws IOException {
+    fileHandle.seek(1);
+    ByteBuffer b = ByteBuffer.allocateDirect(16);
+    int length = fileHandle.read(b, 2, 14);
+    assertEquals(15, fileHandle.getFilePointer());
+    assertEquals(14, length);
+    for (int i=0; i<14; i++) {
+      assertEquals(PAGE[i + 1], b.get(i + 2));
+    }
+  }
+
   @Test
   public void testRandomAccessReadByte() throws IOException {
     testSeekForwardReadByte();
@@ -0,0 +1,207 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import loci.common.IRandomAccess;
+import loci.common.Location;
+import loci.common.RandomAccessInputStream;
+import loci.common.metrics.TraceHandle;
+import loci.common.metrics.TraceLog;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the loci.common.metrics.TraceLog and
+ * loci.common.metrics.TraceHandle classes.
+ *
+ * @see loci.common.metrics.TraceLog
+ */
+public class TraceLogTest {
+
+  // -- Fields --
+
+  private File data;
+
+  private File trace;
+
+  // -- Setup/teardown methods --
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    data = File.createTempFile("trace", ".bin");
+    FileOutputStream out = new FileOutputStream(data);
+    out.write(new byte[100000]);
+    out.close();
+    trace = File.createTempFile("trace", ".log");
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    TraceLog.setGlobal(null);
+    data.delete();
+    trace.delete();
+  }
+
+  // -- Tests --
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    TraceLog log = new TraceLog(trace);
+    IRandomAccess handle = new TraceHandle(
+      Location.getHandle(data.getAbsolutePath()), "original.bin", log);
+    handle.seek(70000);
+    handle.readFully(new byte[300]);
+    handle.readInt();
+    // seeking to the current position is not recorded
+    handle.seek(70304);
+    handle.seek(12);
+    handle.readShort();
+    handle.close();
+    log.close();
+
+    List<TraceLog.Event> events = TraceLog.readEvents(trace);
+    assertEquals("[OPEN 0 0 100000, SEEK 0 70000 0, READ 0 70000 300, " +
+      "READ 0 70300 4, SEEK 0 12 0, READ 0 12 2, CLOSE 0 0 0]",
+      summarize(events).toString());
+
+    long time = 0;
+    for (TraceLog.Event event : events) {
+      assertEquals("original.bin", event.getId());
+      assertEquals(Thread.currentThread().getName(), event.getThread());
+      assertTrue(event.getTime() >= time);
+      time = event.getTime();
+    }
+  }
+
+  @Test
+  public void testGlobalTrace() throws IOException {
+    TraceLog log = new TraceLog(trace);
+    TraceLog.setGlobal(log);
+    RandomAccessInputStream in =
+      new RandomAccessInputStream(data.getAbsolutePath());
+    in.seek(5000);
+    in.read(new byte[10]);
+    in.close();
+    TraceLog.setGlobal(null);
+    log.close();
+
+    List<TraceLog.Event> events = TraceLog.readEvents(trace);
+    assertEquals(TraceLog.OPEN, events.get(0).getType());
+    assertEquals(data.getAbsolutePath(), events.get(0).getId());
+    assertEquals(TraceLog.CLOSE, events.get(events.size() - 1).getType());
+
+    boolean found = false;
+    for (TraceLog.Event event : events) {
+      if (event.getType() == TraceLog.READ && event.getOffset() == 5000) {
+        found = true;
+      }
+    }
+    assertTrue(found);
+  }
+
+  @Test
+  public void testMultipleHandlesAndThreads() throws Exception {
+    final TraceLog log = new TraceLog(trace);
+    final IRandomAccess first = new TraceHandle(
+      Location.getHandle(data.getAbsolutePath()), "first", log);
+    IRandomAccess second = new TraceHandle(
+      Location.getHandle(data.getAbsolutePath()), "second", log);
+    second.readByte();
+    Thread thread = new Thread("tracing-thread") {
+      @Override
+      public void run() {
+        try {
+          first.readLong();
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    thread.start();
+    thread.join();
+    first.close();
+    second.close();
+    log.close();
+
+    // records made after the log is closed are ignored
+    log.read(0, 0, 1);
+
+    List<TraceLog.Event> events = TraceLog.readEvents(trace);
+    assertEquals(6, events.size());
+    TraceLog.Event read = events.get(3);
+    assertEquals(TraceLog.READ, read.getType());
+    assertEquals("first", read.getId());
+    assertEquals(8, read.getLength());
+    assertEquals("tracing-thread", read.getThread());
+    assertEquals("second", events.get(2).getId());
+  }
+
+  @Test(expectedExceptions={IOException.class})
+  public void testInvalidTrace() throws IOException {
+    FileOutputStream out = new FileOutputStream(trace);
+    out.write("not a trace".getBytes("UTF-8"));
+    out.close();
+    TraceLog.readEvents(trace);
+  }
+
+  @Test
+  public void testNoGlobalTraceByDefault() {
+    assertNull(TraceLog.getGlobal());
+  }
+
+  // -- Helper methods --
+
+  private List<String> summarize(List<TraceLog.Event> events) {
+    List<String> list = new ArrayList<String>();
+    String[] names = {"THREAD", "OPEN", "READ", "SEEK", "CLOSE"};
+    for (TraceLog.Event event : events) {
+      list.add(names[event.getType()] + " " + event.getHandle() + " " +
+        event.getOffset() + " " + event.getLength());
+    }
+    return list;
+  }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.stream.StreamSource;
+
+import loci.common.xml.XSLTPipeline;
+
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit tests for {@link loci.common.xml.XSLTPipeline}.
+ */
+public class XSLTPipelineTest {
+
+  private static final String XML =
+    "<root version=\"1\"><item>text</item></root>";
+
+  /** Stylesheet that renames every item element to entry. */
+  private static final String RENAME =
+    "<xsl:stylesheet version=\"1.0\" " +
+    "xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+    "<xsl:template match=\"@*|node()\">" +
+    "<xsl:copy><xsl:apply-templates select=\"@*|node()\"/></xsl:copy>" +
+    "</xsl:template>" +
+    "<xsl:template match=\"item\">" +
+    "<entry><xsl:apply-templates select=\"@*|node()\"/></entry>" +
+    "</xsl:template>" +
+    "</xsl:stylesheet>";
+
+  /** Stylesheet that increments the version attribute of the root. */
+  private static final String UPGRADE =
+    "<xsl:stylesheet version=\"1.0\" " +
+    "xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+    "<xsl:template match=\"@*|node()\">" +
+    "<xsl:copy><xsl:apply-templates select=\"@*|node()\"/></xsl:copy>" +
+    "</xsl:template>" +
+    "<xsl:template match=\"/root/@version\">" +
+    "<xsl:attribute name=\"version\">" +
+    "<xsl:value-of select=\". + 1\"/></xsl:attribute>" +
+    "</xsl:template>" +
+    "</xsl:stylesheet>";
+
+  // -- Helper methods --
+
+  private static Templates compile(String xsl) throws Exception {
+    return TransformerFactory.newInstance().newTemplates(
+      new StreamSource(new StringReader(xsl)));
+  }
+
+  private static Element transform(XSLTPipeline pipeline)
+    throws IOException
+  {
+    DOMResult result = new DOMResult();
+    pipeline.transform(new StreamSource(new StringReader(XML)), result);
+    return ((Document) result.getNode()).getDocumentElement();
+  }
+
+  // -- Tests --
+
+  @Test
+  public void testEmptyPipeline() throws IOException {
+    XSLTPipeline pipeline = new XSLTPipeline(new ArrayList<Templates>());
+    assertEquals(0, pipeline.getStageCount());
+    assertEquals(XML, pipeline.transform(XML));
+
+    Element root = transform(pipeline);
+    assertEquals("root", root.getNodeName());
+    assertEquals("1", root.getAttribute("version"));
+    assertEquals(1, root.getElementsByTagName("item").getLength());
+  }
+
+  @Test
+  public void testEmptyPipelineWithNamespacePrefix() throws IOException {
+    XSLTPipeline pipeline =
+      new XSLTPipeline(new ArrayList<Templates>(), "ns");
+    Element root = transform(pipeline);
+    assertEquals("root", root.getNodeName());
+    assertEquals("1", root.getAttribute("version"));
+  }
+
+  @Test
+  public void testSingleStage() throws Exception {
+    List<Templates> stages = Arrays.asList(compile(RENAME));
+    Element root = transform(new XSLTPipeline(stages));
+    assertEquals("1", root.getAttribute("version"));
+    assertEquals(0, root.getElementsByTagName("item").getLength());
+    assertEquals(1, root.getElementsByTagName("entry").getLength());
+  }
+
+  @Test
+  public void testStagesAppliedInOrder() throws Exception {
+    Templates upgrade = compile(UPGRADE);
+    List<Templates> stages =
+      Arrays.asList(upgrade, compile(RENAME), upgrade, upgrade);
+    XSLTPipeline pipeline = new XSLTPipeline(stages);
+    assertEquals(4, pipeline.getStageCount());
+
+    Element root = transform(pipeline);
+    assertEquals("4", root.getAttribute("version"));
+    assertEquals(1, root.getElementsByTagName("entry").getLength());
+    assertEquals("text",
+      root.getElementsByTagName("entry").item(0).getTextContent());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNullStage() throws Exception {
+    new XSLTPipeline(Arrays.asList(compile(RENAME), null));
+  }
+
+}
@@ -0,0 +1,295 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import loci.common.IRandomAccess;
+import loci.common.Location;
+import loci.common.ZipArchive;
+import loci.common.ZipEntryHandle;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the loci.common.ZipArchive and loci.common.ZipEntryHandle
+ * classes, and for Location ids inside Zip files.
+ *
+ * @see loci.common.ZipArchive
+ * @see loci.common.ZipEntryHandle
+ */
+public class ZipArchiveTest {
+
+  // -- Constants --
+
+  private static final int LENGTH = 100000;
+
+  private static final int CHUNK_SIZE = 4096;
+
+  // -- Fields --
+
+  private File zip;
+
+  private byte[] stored;
+
+  private byte[] deflated;
+
+  // -- Setup/teardown methods --
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    Random random = new Random(45);
+    stored = new byte[LENGTH];
+    random.nextBytes(stored);
+    // NB: compressible data, so that chunks do not line up with the
+    // compressed stream
+    deflated = new byte[LENGTH];
+    for (int i=0; i<deflated.length; i++) {
+      deflated[i] = (byte) (random.nextInt(16) + i / 1000);
+    }
+
+    zip = File.createTempFile("archive", ".zip");
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+    ZipEntry entry = new ZipEntry("stored.bin");
+    CRC32 crc = new CRC32();
+    crc.update(stored);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(stored.length);
+    entry.setCompressedSize(stored.length);
+    entry.setCrc(crc.getValue());
+    out.putNextEntry(entry);
+    out.write(stored);
+    out.putNextEntry(new ZipEntry("empty/"));
+    out.putNextEntry(new ZipEntry("series1/deflated.bin"));
+    out.write(deflated);
+    out.putNextEntry(new ZipEntry("series1/sub/small.txt"));
+    out.write("small".getBytes("UTF-8"));
+    out.close();
+  }
+
+  @AfterClass
+  public void tearDown() {
+    zip.delete();
+  }
+
+  // -- Tests --
+
+  @Test
+  public void testEntries() throws IOException {
+    ZipArchive archive = new ZipArchive(zip.getAbsolutePath());
+    assertEquals(4, archive.getEntries().size());
+    assertEquals(Arrays.asList("stored.bin", "empty", "series1"),
+      Arrays.asList(archive.list("")));
+    assertEquals(Arrays.asList("deflated.bin", "sub"),
+      Arrays.asList(archive.list("series1/")));
+    assertEquals(0, archive.list("empty").length);
+    assertNull(archive.list("stored.bin"));
+
+    assertTrue(archive.isDirectory("series1/sub"));
+    assertTrue(archive.isFile("series1/sub/small.txt"));
+    assertFalse(archive.isFile("series1"));
+    assertFalse(archive.exists("missing"));
+
+    ZipArchive.Entry entry = archive.getEntry("series1/deflated.bin");
+    assertEquals(ZipArchive.DEFLATED, entry.getMethod());
+    assertEquals(LENGTH, entry.getSize());
+    assertTrue(entry.getCompressedSize() < LENGTH);
+    assertEquals(ZipArchive.STORED,
+      archive.getEntry("stored.bin").getMethod());
+    assertEquals("series1/sub/small.txt",
+      archive.getDefaultEntry("series1/sub").getName());
+    assertEquals("stored.bin", archive.getDefaultEntry("other").getName());
+  }
+
+  @Test
+  public void testSplit() {
+    String path = zip.getAbsolutePath();
+    String id = path + File.separator + "series1" + File.separator + "sub";
+    assertTrue(ZipArchive.isArchivePath(id));
+    assertEquals(Arrays.asList(path, "series1/sub"),
+      Arrays.asList(ZipArchive.split(id)));
+    assertFalse(ZipArchive.isArchivePath(path));
+    assertNull(ZipArchive.split(path + ".missing" + File.separator + "a"));
+  }
+
+  @Test
+  public void testStoredReads() throws IOException {
+    ZipEntryHandle handle = new ZipEntryHandle(zip.getAbsolutePath(),
+      "stored.bin");
+    try {
+      assertEquals(LENGTH, handle.length());
+      checkRandomReads(handle, stored);
+    }
+    finally {
+      handle.close();
+    }
+  }
+
+  @Test
+  public void testDeflatedReads() throws IOException {
+    ZipEntryHandle handle = new ZipEntryHandle(
+      new ZipArchive(zip.getAbsolutePath()), "series1/deflated.bin",
+      CHUNK_SIZE, 4 * CHUNK_SIZE);
+    try {
+      assertEquals(LENGTH, handle.length());
+      checkRandomReads(handle, deflated);
+    }
+    finally {
+      handle.close();
+    }
+  }
+
+  @Test
+  public void testSequentialReadsDoNotRestart() throws IOException {
+    ZipEntryHandle handle = new ZipEntryHandle(
+      new ZipArchive(zip.getAbsolutePath()), "series1/deflated.bin",
+      CHUNK_SIZE, CHUNK_SIZE);
+    try {
+      byte[] b = new byte[1000];
+      for (int offset=0; offset<LENGTH; offset+=2 * b.length) {
+        handle.seek(offset);
+        handle.readFully(b);
+        assertTrue(Arrays.equals(
+          Arrays.copyOfRange(deflated, offset, offset + b.length), b));
+      }
+      assertEquals(0, handle.getRestartCount());
+    }
+    finally {
+      handle.close();
+    }
+  }
+
+  @Test
+  public void testBackwardSeeks() throws IOException {
+    ZipEntryHandle handle = new ZipEntryHandle(
+      new ZipArchive(zip.getAbsolutePath()), "series1/deflated.bin",
+      CHUNK_SIZE, 2 * CHUNK_SIZE);
+    try {
+      handle.seek(LENGTH - 1);
+      assertEquals(deflated[LENGTH - 1], handle.readByte());
+
+      // the chunk before the last is still cached
+      handle.seek(LENGTH - CHUNK_SIZE);
+      assertEquals(deflated[LENGTH - CHUNK_SIZE], handle.readByte());
+      assertEquals(0, handle.getRestartCount());
+
+      handle.seek(10);
+      assertEquals(deflated[10], handle.readByte());
+      assertEquals(1, handle.getRestartCount());
+      handle.seek(LENGTH / 2);
+      assertEquals(deflated[LENGTH / 2], handle.readByte());
+      assertEquals(1, handle.getRestartCount());
+    }
+    finally {
+      handle.close();
+    }
+  }
+
+  @Test(expectedExceptions={FileNotFoundException.class})
+  public void testMissingEntry() throws IOException {
+    new ZipEntryHandle(zip.getAbsolutePath(), "series1");
+  }
+
+  @Test
+  public void testLocation() throws IOException {
+    String path = zip.getAbsolutePath();
+    Location archive = new Location(path);
+    assertTrue(archive.isFile());
+    assertEquals(Arrays.asList("stored.bin", "empty", "series1"),
+      Arrays.asList(archive.list()));
+
+    Location series = new Location(path, "series1");
+    assertTrue(series.exists());
+    assertTrue(series.isDirectory());
+    assertFalse(series.isFile());
+    assertEquals(Arrays.asList("deflated.bin", "sub"),
+      Arrays.asList(series.list()));
+
+    Location file = new Location(series, "deflated.bin");
+    assertTrue(file.exists());
+    assertTrue(file.isFile());
+    assertTrue(file.canRead());
+    assertEquals(LENGTH, file.length());
+    assertEquals(zip.lastModified(), file.lastModified());
+    assertEquals(series.getAbsolutePath(), file.getParent());
+
+    Location missing = new Location(series, "missing.bin");
+    assertFalse(missing.exists());
+    assertEquals(0, missing.length());
+
+    IRandomAccess handle = Location.getHandle(file.getAbsolutePath());
+    try {
+      assertTrue(handle instanceof ZipEntryHandle);
+      checkRandomReads(handle, deflated);
+    }
+    finally {
+      handle.close();
+    }
+    Location.checkValidId(file.getAbsolutePath());
+  }
+
+  // -- Helper methods --
+
+  private void checkRandomReads(IRandomAccess handle, byte[] expected)
+    throws IOException
+  {
+    Random random = new Random(1);
+    for (int i=0; i<200; i++) {
+      int offset = random.nextInt(expected.length);
+      int len = Math.min(random.nextInt(3 * CHUNK_SIZE),
+        expected.length - offset);
+      byte[] b = new byte[len];
+      handle.seek(offset);
+      handle.readFully(b);
+      assertTrue("offset " + offset, Arrays.equals(
+        Arrays.copyOfRange(expected, offset, offset + len), b));
+      assertEquals(offset + len, handle.getFilePointer());
+    }
+  }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * #%L
+ * Common package for I/O and related utilities
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.common.utests.providers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal in-process HTTP server that serves byte arrays, for testing
+ * handles that read from URLs.  Range requests of the form
+ * <code>bytes=start-end</code> are supported unless disabled, and a fixed
+ * latency can be added to every response.
+ */
+public class HTTPServerStandIn {
+
+  // -- Fields --
+
+  private final HttpServer server;
+
+  private final Map<String, byte[]> files =
+    new ConcurrentHashMap<String, byte[]>();
+
+  /** Ranges of the GET requests received so far, as "start-end". */
+  private final List<String> ranges = new ArrayList<String>();
+
+  private volatile long latency;
+
+  private volatile boolean rangesSupported = true;
+
+  private int fileCount;
+
+  // -- Constructor --
+
+  /** Starts a new server on an unused port of the loopback interface. */
+  public HTTPServerStandIn() throws IOException {
+    server = HttpServer.create(
+      new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          respond(exchange);
+        }
+        finally {
+          exchange.close();
+        }
+      }
+    });
+    server.start();
+  }
+
+  // -- HTTPServerStandIn API methods --
+
+  /** Serves the given data, and returns its URL. */
+  public synchronized String addFile(byte[] data) {
+    String path = "/file" + fileCount++ + ".dat";
+    files.put(path, data);
+    return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+  }
+
+  /** Sets the number of milliseconds by which each response is delayed. */
+  public void setLatency(long latency) {
+    this.latency = latency;
+  }
+
+  /**
+   * Sets whether range requests are honoured; if not, the whole file is
+   * returned and no Accept-Ranges header is sent.
+   */
+  public void setRangesSupported(boolean rangesSupported) {
+    this.rangesSupported = rangesSupported;
+  }
+
+  /** Returns and clears the ranges of the GET requests received so far. */
+  public List<String> takeRanges() {
+    synchronized (ranges) {
+      List<String> copy = new ArrayList<String>(ranges);
+      ranges.clear();
+      return copy;
+    }
+  }
+
+  /** Stops the server. */
+  public void stop() {
+    server.stop(0);
+  }
+
+  // -- Helper methods --
+
+  private void respond(HttpExchange exchange) throws IOException {
+    if (latency > 0) {
+      try {
+        Thread.sleep(latency);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    byte[] data = files.get(exchange.getRequestURI().getPath());
+    if (data == null) {
+      exchange.sendResponseHeaders(404, -1);
+      return;
+    }
+    if (rangesSupported) {
+      exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+    }
+
+    if (exchange.getRequestMethod().equals("HEAD")) {
+      exchange.getResponseHeaders().set("Content-Length",
+        String.valueOf(data.length));
+      exchange.sendResponseHeaders(200, -1);
+      return;
+    }
+
+    int start = 0;
+    int end = data.length - 1;
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    if (range != null) {
+      String[] bounds = range.substring(range.indexOf("=") + 1).split("-");
+      synchronized (ranges) {
+        ranges.add(bounds[0] + "-" + bounds[1]);
+      }
+      if (rangesSupported) {
+        start = Integer.parseInt(bounds[0]);
+        end = Math.min(end, Integer.parseInt(bounds[1]));
+      }
+    }
+
+    int length = end - start + 1;
+    if (start == 0 && length == data.length) {
+      exchange.sendResponseHeaders(200, length);
+    }
+    else {
+      exchange.getResponseHeaders().set("Content-Range",
+        "bytes " + start + "-" + end + "/" + data.length);
+      exchange.sendResponseHeaders(206, length);
+    }
+    OutputStream out = exchange.getResponseBody();
+    out.write(data, start, length);
+    out.close();
+  }
+
+}
@@ -52,9 +52,11 @@ public class IRandomAccessProviderFactory {
     providers.put("ByteArrayHandle", new ByteArrayHandleProvider());
     providers.put("BZip2Handle", new BZip2HandleProvider());
     providers.put("GZipHandle", new GZipHandleProvider());
+    providers.put("HTTPRangeHandle", new HTTPRangeHandleProvider());
     providers.put("NIOFileHandle", new NIOFileHandleProvider());
     providers.put("URLHandle", new URLHandleProvider());
     providers.put("ZipHandle", new ZipHandleProvider());
+    providers.put("ZipEntryHandle", new ZipEntryHandleProvider());
   }
 
   public IRandomAccessProvider getInstance(String provider) {
@@ -24,12 +24,12 @@
  */
 package loci.formats.in;
 
-import ch.systemsx.cisd.base.mdarray.MDIntArray;
 import ch.systemsx.cisd.hdf5.HDF5CompoundDataMap;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import loci.common.DataTools;
+import java.util.Map;
 import loci.common.RandomAccessInputStream;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceFactory;
@@ -105,6 +105,8 @@ public class CellH5Reader extends FormatReader {
   private double minX, minY, minZ, maxX, maxY, maxZ;
   private int seriesCount;
   private transient JHDFService jhdf;
+  private transient HDF5ChunkCache chunkCache;
+  private transient Map<String, int[]> blockShapes;
 
   private MetadataStore store;
   private int lastChannel = 0;
@@ -221,50 +223,42 @@ public class CellH5Reader extends FormatReader {
     throws FormatException, IOException
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
-    lastChannel = getZCTCoords(no)[1];
-
-    // pixel data is stored in XYZ blocks
-    Object image = getImageData(no, y, h);
-
-    boolean little = isLittleEndian();
-
-    // images is of type byte[][]. Left these checks and unpacking
-    // in the code for feature data types
-    int bpp = FormatTools.getBytesPerPixel(getPixelType());
-    for (int row = 0; row < h; row++) {
-      int base = row * w * bpp;
-      if (image instanceof byte[][]) {
-        byte[][] data = (byte[][]) image;
-        byte[] rowData = data[row];
-        System.arraycopy(rowData, x, buf, row * w, w);
-      } else if (image instanceof short[][]) {
-        short[][] data = (short[][]) image;
-        short[] rowData = data[row];
-        for (int i = 0; i < w; i++) {
-          DataTools.unpackBytes(rowData[i + x], buf, base + 2 * i, 2, little);
-        }
-      } else if (image instanceof int[][]) {
-        int[][] data = (int[][]) image;
-        int[] rowData = data[row];
-        for (int i = 0; i < w; i++) {
-          DataTools.unpackBytes(rowData[i + x], buf, base + i * 4, 4, little);
-        }
-      } else if (image instanceof float[][]) {
-        float[][] data = (float[][]) image;
-        float[] rowData = data[row];
-        for (int i = 0; i < w; i++) {
-          int v = Float.floatToIntBits(rowData[i + x]);
-          DataTools.unpackBytes(v, buf, base + i * 4, 4, little);
-        }
-      } else if (image instanceof double[][]) {
-        double[][] data = (double[][]) image;
-        double[] rowData = data[row];
-        for (int i = 0; i < w; i++) {
-          long v = Double.doubleToLongBits(rowData[i + x]);
-          DataTools.unpackBytes(v, buf, base + i * 8, 8, little);
-        }
-      }
+    int[] zct = getZCTCoords(no);
+    lastChannel = zct[1];
+
+    // pixel data is stored in CTZYX chunks; each chunk is decoded once
+    // and cached, rather than once for every plane that it contains
+
+    if (chunkCache == null) {
+      chunkCache = new HDF5ChunkCache();
+      blockShapes = new HashMap<String, int[]>();
     }
+
+    final String path = CellH5PathsToImageData.get(series);
+    final int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    int[] dims = new int[] {
+      getSizeC(), getSizeT(), getSizeZ(), getSizeY(), getSizeX()};
+    int[] block = blockShapes.get(path);
+    if (block == null) {
+      block = chunkCache.getBlockShape(dims, jhdf.getChunkSize(path), bpp);
+      blockShapes.put(path, block);
+    }
+    chunkCache.copyRegion(path, dims, block,
+      new int[] {zct[1], zct[2], zct[0]}, x, y, w, h, bpp, isLittleEndian(),
+      buf, new HDF5ChunkCache.BlockLoader() {
+        @Override
+        public Object load(int[] origin, int[] shape) {
+          if (bpp == 1) {
+            return jhdf.readByteBlockArray(path, origin, shape)
+              .getAsFlatArray();
+          }
+          else if (bpp == 2) {
+            return jhdf.readShortBlockArray(path, origin, shape)
+              .getAsFlatArray();
+          }
+          return jhdf.readIntBlockArray(path, origin, shape).getAsFlatArray();
+        }
+      });
     return buf;
   }
 
@@ -280,6 +274,9 @@ public class CellH5Reader extends FormatReader {
         jhdf.close();
       }
       jhdf = null;
+      if (chunkCache != null) chunkCache.clear();
+      chunkCache = null;
+      blockShapes = null;
       lastChannel = 0;
     }
   }
@@ -328,57 +325,6 @@ public class CellH5Reader extends FormatReader {
     }
   }
 
-  private Object getImageData(int no, int y, int height) throws FormatException
-  {
-    int[] zct = getZCTCoords(no);
-    int zslice = zct[0];
-    int channel = zct[1];
-    int time = zct[2];
-    int width = getSizeX();
-
-    int elementSize = jhdf.getElementSize(CellH5PathsToImageData.get(series));
-
-    int[] arrayOrigin = new int[] {channel, time, zslice, 0, 0};
-    int[] arrayDimension = new int[] {1, 1, 1, height, width};
-
-    MDIntArray test = jhdf.readIntBlockArray(CellH5PathsToImageData.get(series),
-      arrayOrigin, arrayDimension);
-
-    if (elementSize == 1) {
-      byte[][] image = new byte[height][width];
-
-      // Slice x, y dimension
-      for (int yy = 0; yy < height; yy++) {
-        for (int xx = 0; xx < width; xx++) {
-          image[yy][xx] = (byte) test.get(0, 0, 0, yy, xx);
-        }
-      }
-      return image;
-    }
-    else if (elementSize == 2) {
-      short[][] image = new short[height][width];
-
-      // Slice x, y dimension
-      for (int yy = 0; yy < height; yy++) {
-        for (int xx = 0; xx < width; xx++) {
-          image[yy][xx] = (short) test.get(0, 0, 0, yy, xx);
-        }
-      }
-      return image;
-    }
-    else {
-      int[][] image = new int[height][width];
-
-      // Slice x, y dimension
-      for (int yy = 0; yy < height; yy++) {
-        for (int xx = 0; xx < width; xx++) {
-          image[yy][xx] = (int) test.get(0, 0, 0, yy, xx);
-        }
-      }
-      return image;
-    }
-  }
-
   private void parseStructure() throws FormatException {
     seriesCount = 0;
     pixelSizeX = pixelSizeY = pixelSizeZ = 1;
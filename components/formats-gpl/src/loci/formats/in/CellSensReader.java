@@ -30,6 +30,9 @@ import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import loci.common.ByteArrayHandle;
 import loci.common.Constants;
@@ -38,6 +41,7 @@ import loci.common.DateTools;
 import loci.common.Location;
 import loci.common.RandomAccessInputStream;
 import loci.common.Region;
+import loci.formats.BatchTools;
 import loci.formats.CoreMetadata;
 import loci.formats.FormatException;
 import loci.formats.FormatReader;
@@ -380,6 +384,7 @@ public class CellSensReader extends FormatReader {
   private IFDList ifds;
 
   private ArrayList<Long[]> tileOffsets = new ArrayList<Long[]>();
+  private ArrayList<Integer[]> tileByteCounts = new ArrayList<Integer[]>();
   private boolean jpeg = false;
 
   private ArrayList<Integer> rows = new ArrayList<Integer>();
@@ -559,6 +564,144 @@ public class CellSensReader extends FormatReader {
     }
   }
 
+  /**
+   * @see loci.formats.IFormatReader#openBytes(int, List, List)
+   */
+  @Override
+  public List<byte[]> openBytes(int no, List<Region> regions,
+    List<byte[]> bufs) throws FormatException, IOException
+  {
+    List<byte[]> buffers =
+      FormatTools.allocateBuffers(this, no, regions, bufs);
+    if (getCoreIndex() >= core.size() - 1) {
+      int ifdIndex = 1 - (core.size() - getCoreIndex());
+      return parser.getSamples(ifds.get(ifdIndex), regions, buffers);
+    }
+    if (tileMap.get(getCoreIndex()) == null) {
+      return super.openBytes(no, regions, buffers);
+    }
+
+    int width = tileX.get(getCoreIndex());
+    int height = tileY.get(getCoreIndex());
+    int pixel =
+      getRGBChannelCount() * FormatTools.getBytesPerPixel(getPixelType());
+
+    // look up each tile needed by any of the regions
+
+    Map<Integer, byte[]> tiles = new HashMap<Integer, byte[]>();
+    List<Integer> keys = new ArrayList<Integer>();
+    List<Integer> indexes = new ArrayList<Integer>();
+    int tileCols = cols.get(getCoreIndex());
+    for (Region region : regions) {
+      for (int key : getTileKeys(region, width, height, tileCols)) {
+        if (tiles.containsKey(key)) {
+          continue;
+        }
+        int index = getTileIndex(no, key / tileCols, key % tileCols);
+        if (index < 0) {
+          tiles.put(key, getBackgroundTile());
+        }
+        else {
+          tiles.put(key, null);
+          keys.add(key);
+          indexes.add(index);
+        }
+      }
+    }
+
+    // read the stored tiles in file order, then decode them
+
+    final int compression = compressionType.get(getCoreIndex());
+    final int tileSize = getTileSize();
+    Long[] offsets = tileOffsets.get(getCoreIndex());
+    long[] chunkOffsets = new long[indexes.size()];
+    int[] chunkLengths = new int[indexes.size()];
+    RandomAccessInputStream ets =
+      new RandomAccessInputStream(fileMap.get(getCoreIndex()));
+    final byte[][] chunks;
+    try {
+      for (int i=0; i<chunkOffsets.length; i++) {
+        int index = indexes.get(i);
+        chunkOffsets[i] = offsets[index];
+        if (compression == RAW) {
+          chunkLengths[i] = tileSize;
+        }
+        else {
+          long end = index < offsets.length - 1 ?
+            offsets[index + 1] : ets.length();
+          int count = tileByteCounts.get(getCoreIndex())[index];
+          chunkLengths[i] =
+            count > 0 ? count : (int) (end - offsets[index]);
+        }
+      }
+      chunks = BatchTools.readChunks(ets, chunkOffsets, chunkLengths);
+    }
+    finally {
+      ets.close();
+    }
+
+    final byte[][] decoded = new byte[chunks.length][];
+    if (compression == RAW || compression == JPEG ||
+      compression == JPEG_2000)
+    {
+      final CodecOptions options = new CodecOptions();
+      options.interleaved = isInterleaved();
+      options.littleEndian = isLittleEndian();
+      options.maxBytes = tileSize;
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+      for (int i=0; i<chunks.length; i++) {
+        final int chunk = i;
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() throws FormatException, IOException {
+            if (compression == RAW) {
+              decoded[chunk] = chunks[chunk];
+            }
+            else {
+              Codec codec = compression == JPEG ?
+                new JPEGCodec() : new JPEG2000Codec();
+              decoded[chunk] =
+                codec.decompress(chunks[chunk], new CodecOptions(options));
+            }
+            return null;
+          }
+        });
+      }
+      BatchTools.runTasks(tasks);
+    }
+    else {
+      for (int i=0; i<chunks.length; i++) {
+        decoded[i] = decodeImage(chunks[i], compression);
+      }
+    }
+    for (int i=0; i<decoded.length; i++) {
+      tiles.put(keys.get(i), decoded[i]);
+    }
+
+    // copy the appropriate portion of each tile to the output buffers
+
+    for (int i=0; i<regions.size(); i++) {
+      Region region = regions.get(i);
+      byte[] buf = buffers.get(i);
+      int outputRowLen = region.width * pixel;
+      for (int key : getTileKeys(region, width, height, tileCols)) {
+        Region tile = new Region((key % tileCols) * width,
+          (key / tileCols) * height, width, height);
+        Region intersection = tile.intersection(region);
+        byte[] tileBuf = tiles.get(key);
+        int rowLen = intersection.width * pixel;
+        for (int trow=0; trow<intersection.height; trow++) {
+          int inputOffset = pixel * ((intersection.y - tile.y + trow) *
+            width + intersection.x - tile.x);
+          int outputOffset = (intersection.y - region.y + trow) *
+            outputRowLen + (intersection.x - region.x) * pixel;
+          System.arraycopy(tileBuf, inputOffset, buf, outputOffset, rowLen);
+        }
+      }
+    }
+    return buffers;
+  }
+
   /* @see loci.formats.IFormatReader#reopenFile() */
   public void reopenFile() throws IOException {
     super.reopenFile();
@@ -578,6 +721,7 @@ public class CellSensReader extends FormatReader {
       usedFiles = null;
       fileMap.clear();
       tileOffsets.clear();
+      tileByteCounts.clear();
       jpeg = false;
       rows.clear();
       cols.clear();
@@ -888,6 +1032,83 @@ public class CellSensReader extends FormatReader {
       return new byte[getTileSize()];
     }
 
+    int index = getTileIndex(no, row, col);
+    if (index < 0) {
+      return getBackgroundTile();
+    }
+
+    Long offset = tileOffsets.get(getCoreIndex())[index];
+    RandomAccessInputStream ets =
+      new RandomAccessInputStream(fileMap.get(getCoreIndex()));
+    ets.seek(offset);
+
+    CodecOptions options = new CodecOptions();
+    options.interleaved = isInterleaved();
+    options.littleEndian = isLittleEndian();
+    int tileSize = getTileSize();
+    if (tileSize == 0) {
+      tileSize = tileX.get(getCoreIndex()) * tileY.get(getCoreIndex()) * 10;
+    }
+    options.maxBytes = (int) (offset + tileSize);
+
+    byte[] buf = null;
+    long end = index < tileOffsets.get(getCoreIndex()).length - 1 ?
+      tileOffsets.get(getCoreIndex())[index + 1] : ets.length();
+
+    int compression = compressionType.get(getCoreIndex());
+    switch (compression) {
+      case RAW:
+        buf = new byte[tileSize];
+        ets.read(buf);
+        break;
+      case JPEG:
+        Codec codec = new JPEGCodec();
+        buf = codec.decompress(ets, options);
+        break;
+      case JPEG_2000:
+        codec = new JPEG2000Codec();
+        buf = codec.decompress(ets, options);
+        break;
+      case PNG:
+      case BMP:
+        byte[] b = new byte[(int) (end - offset)];
+        ets.read(b);
+        buf = decodeImage(b, compression);
+        break;
+    }
+
+    ets.close();
+    return buf;
+  }
+
+  /**
+   * Returns the index (row * tileCols + col) of each tile that intersects
+   * the given region.
+   */
+  private List<Integer> getTileKeys(Region region, int width, int height,
+    int tileCols)
+  {
+    List<Integer> keys = new ArrayList<Integer>();
+    if (region.width <= 0 || region.height <= 0) {
+      return keys;
+    }
+    for (int row=region.y / height;
+      row<=(region.y + region.height - 1) / height; row++)
+    {
+      for (int col=region.x / width;
+        col<=(region.x + region.width - 1) / width; col++)
+      {
+        keys.add(row * tileCols + col);
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Returns the index of the given tile within the current resolution's
+   * list of stored tiles, or -1 if the tile is not stored.
+   */
+  private int getTileIndex(int no, int row, int col) {
     int[] zct = getZCTCoords(no);
     TileCoordinate t = new TileCoordinate(nDimensions.get(getCoreIndex()));
     t.coordinate[0] = col;
@@ -931,80 +1152,42 @@ public class CellSensReader extends FormatReader {
     }
 
     ArrayList<TileCoordinate> map = tileMap.get(getCoreIndex());
-    Integer index = map.indexOf(t);
-    if (index == null || index < 0) {
-      // fill in the tile with the stored background color
-      // usually this is either black or white
-      byte[] tile = new byte[getTileSize()];
-      byte[] color = backgroundColor.get(getCoreIndex());
-      if (color != null) {
-        for (int q=0; q<getTileSize(); q+=color.length) {
-          for (int i=0; i<color.length; i++) {
-            tile[q + i] = color[i];
-          }
+    return map.indexOf(t);
+  }
+
+  /**
+   * Returns a tile filled with the stored background color;
+   * usually this is either black or white.
+   */
+  private byte[] getBackgroundTile() {
+    byte[] tile = new byte[getTileSize()];
+    byte[] color = backgroundColor.get(getCoreIndex());
+    if (color != null) {
+      for (int q=0; q<getTileSize(); q+=color.length) {
+        for (int i=0; i<color.length; i++) {
+          tile[q + i] = color[i];
         }
       }
-      return tile;
     }
+    return tile;
+  }
 
-    Long offset = tileOffsets.get(getCoreIndex())[index];
-    RandomAccessInputStream ets =
-      new RandomAccessInputStream(fileMap.get(getCoreIndex()));
-    ets.seek(offset);
-
-    CodecOptions options = new CodecOptions();
-    options.interleaved = isInterleaved();
-    options.littleEndian = isLittleEndian();
-    int tileSize = getTileSize();
-    if (tileSize == 0) {
-      tileSize = tileX.get(getCoreIndex()) * tileY.get(getCoreIndex()) * 10;
-    }
-    options.maxBytes = (int) (offset + tileSize);
-
-    byte[] buf = null;
-    long end = index < tileOffsets.get(getCoreIndex()).length - 1 ?
-      tileOffsets.get(getCoreIndex())[index + 1] : ets.length();
-
-    IFormatReader reader = null;
-    String file = null;
-
-    switch (compressionType.get(getCoreIndex())) {
-      case RAW:
-        buf = new byte[tileSize];
-        ets.read(buf);
-        break;
-      case JPEG:
-        Codec codec = new JPEGCodec();
-        buf = codec.decompress(ets, options);
-        break;
-      case JPEG_2000:
-        codec = new JPEG2000Codec();
-        buf = codec.decompress(ets, options);
-        break;
-      case PNG:
-        file = "tile.png";
-        reader = new APNGReader();
-      case BMP:
-        if (reader == null) {
-          file = "tile.bmp";
-          reader = new BMPReader();
-        }
-
-        byte[] b = new byte[(int) (end - offset)];
-        ets.read(b);
-        Location.mapFile(file, new ByteArrayHandle(b));
-        reader.setId(file);
-        buf = reader.openBytes(0);
-        Location.mapFile(file, null);
-        break;
+  /** Decodes a tile that is stored as a complete PNG or BMP file. */
+  private byte[] decodeImage(byte[] b, int compression)
+    throws FormatException, IOException
+  {
+    String file = compression == PNG ? "tile.png" : "tile.bmp";
+    IFormatReader reader =
+      compression == PNG ? new APNGReader() : new BMPReader();
+    try {
+      Location.mapFile(file, new ByteArrayHandle(b));
+      reader.setId(file);
+      return reader.openBytes(0);
     }
-
-    if (reader != null) {
+    finally {
+      Location.mapFile(file, null);
       reader.close();
     }
-
-    ets.close();
-    return buf;
   }
 
   private void parseETSFile(String file, int s)
@@ -1070,6 +1253,7 @@ public class CellSensReader extends FormatReader {
     etsFile.seek(usedChunkOffset);
 
     tileOffsets.add(new Long[nUsedChunks]);
+    tileByteCounts.add(new Integer[nUsedChunks]);
 
     ArrayList<TileCoordinate> tmpTiles = new ArrayList<TileCoordinate>();
 
@@ -1082,6 +1266,7 @@ public class CellSensReader extends FormatReader {
       }
       tileOffsets.get(tileOffsets.size() - 1)[chunk] = etsFile.readLong();
       int nBytes = etsFile.readInt();
+      tileByteCounts.get(tileByteCounts.size() - 1)[chunk] = nBytes;
       etsFile.skipBytes(4);
 
       tmpTiles.add(t);
@@ -1295,6 +1480,7 @@ public class CellSensReader extends FormatReader {
         tileMap.add(map);
         nDimensions.add(nDimensions.get(nDimensions.size() - 1));
         tileOffsets.add(tileOffsets.get(tileOffsets.size() - 1));
+        tileByteCounts.add(tileByteCounts.get(tileByteCounts.size() - 1));
         backgroundColor.put(core.size() - 1, color);
       }
 
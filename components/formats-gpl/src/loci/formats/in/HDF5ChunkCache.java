@@ -0,0 +1,341 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import loci.formats.FormatException;
+
+/**
+ * Cache of decoded blocks from chunked HDF5 datasets, used by the HDF5-based
+ * readers so that reading successive planes of a stack decodes each chunk
+ * only once.
+ *
+ * A dataset is divided into blocks that are aligned with its HDF5 chunks.
+ * Each block is read in full the first time that any of its pixels are
+ * requested, converted to bytes in the reader's byte order, and kept until
+ * the total size of all cached blocks exceeds the cache's byte budget, at
+ * which point the least recently used blocks are discarded.
+ */
+public class HDF5ChunkCache {
+
+  // -- Constants --
+
+  /** Default maximum number of bytes held by a cache. */
+  public static final long DEFAULT_BUDGET = Math.max(16L * 1024 * 1024,
+    Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8));
+
+  // -- Fields --
+
+  private final long budget;
+
+  /** Cached blocks, in least recently used order. */
+  private final LinkedHashMap<Key, byte[]> blocks =
+    new LinkedHashMap<Key, byte[]>(16, 0.75f, true);
+
+  /** Total number of bytes in the cached blocks. */
+  private long size;
+
+  /** Number of blocks that have been read from the dataset. */
+  private long loads;
+
+  // -- Constructors --
+
+  /** Constructs a cache with the default byte budget. */
+  public HDF5ChunkCache() {
+    this(DEFAULT_BUDGET);
+  }
+
+  /**
+   * Constructs a cache that holds at most the given number of bytes.
+   */
+  public HDF5ChunkCache(long budget) {
+    this.budget = budget;
+  }
+
+  // -- HDF5ChunkCache API methods --
+
+  /** Returns the maximum number of bytes held by this cache. */
+  public long getBudget() {
+    return budget;
+  }
+
+  /** Returns the number of bytes currently held by this cache. */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  /** Returns the number of blocks that have been read so far. */
+  public synchronized long getLoadCount() {
+    return loads;
+  }
+
+  /** Discards all cached blocks. */
+  public synchronized void clear() {
+    blocks.clear();
+    size = 0;
+  }
+
+  /**
+   * Computes the shape of the blocks into which a dataset is divided.
+   * Each dimension of the chunk shape is clipped to the dataset, and the
+   * block is then shrunk (outermost dimension first) until it uses at most
+   * a quarter of the byte budget, so that several blocks can be cached at
+   * once.
+   *
+   * @param dims the size of each dimension of the dataset
+   * @param chunk the HDF5 chunk size of each dimension, or null if the
+   *   dataset is not chunked, in which case each block is one plane
+   * @param bpp the number of bytes in each sample
+   */
+  public int[] getBlockShape(int[] dims, int[] chunk, int bpp) {
+    int[] shape = new int[dims.length];
+    for (int i=0; i<dims.length; i++) {
+      if (chunk == null || i >= chunk.length || chunk[i] <= 0) {
+        shape[i] = i < dims.length - 2 ? 1 : dims[i];
+      }
+      else {
+        shape[i] = Math.min(chunk[i], dims[i]);
+      }
+      shape[i] = Math.max(shape[i], 1);
+    }
+
+    int dim = 0;
+    while (getLength(shape) * bpp > budget / 4 && dim < shape.length) {
+      if (shape[dim] > 1) {
+        shape[dim] = (shape[dim] + 1) / 2;
+      }
+      else {
+        dim++;
+      }
+    }
+    return shape;
+  }
+
+  /**
+   * Copies a rectangle from one Y-X plane of a dataset into the given
+   * buffer, reading any blocks that are not already cached.
+   * The last two dimensions of the dataset must be Y and X.
+   *
+   * @param dataset a name that uniquely identifies the dataset
+   * @param dims the size of each dimension of the dataset
+   * @param block the block shape, as returned by
+   *   {@link #getBlockShape(int[], int[], int)}
+   * @param plane the index of the plane in each dimension before Y
+   * @param x the X coordinate of the upper-left corner of the rectangle
+   * @param y the Y coordinate of the upper-left corner of the rectangle
+   * @param w the width of the rectangle
+   * @param h the height of the rectangle
+   * @param bpp the number of bytes in each sample
+   * @param little true if samples should be stored in little-endian order
+   * @param buf the buffer into which the rectangle is copied
+   * @param loader used to read blocks that are not cached
+   */
+  public void copyRegion(String dataset, int[] dims, int[] block, int[] plane,
+    int x, int y, int w, int h, int bpp, boolean little, byte[] buf,
+    BlockLoader loader)
+    throws FormatException
+  {
+    int yAxis = dims.length - 2;
+    int xAxis = dims.length - 1;
+
+    int[] index = new int[dims.length];
+    int[] origin = new int[dims.length];
+    for (int i=0; i<yAxis; i++) {
+      index[i] = plane[i] / block[i];
+      origin[i] = index[i] * block[i];
+    }
+
+    for (int by=y / block[yAxis]; by<=(y + h - 1) / block[yAxis]; by++) {
+      index[yAxis] = by;
+      origin[yAxis] = by * block[yAxis];
+      for (int bx=x / block[xAxis]; bx<=(x + w - 1) / block[xAxis]; bx++) {
+        index[xAxis] = bx;
+        origin[xAxis] = bx * block[xAxis];
+
+        int[] shape = new int[dims.length];
+        for (int i=0; i<dims.length; i++) {
+          shape[i] = Math.min(block[i], dims[i] - origin[i]);
+        }
+        byte[] data =
+          getBlock(new Key(dataset, index), origin, shape, little, loader);
+
+        // offset of the first row of the plane within the block
+        long planeOffset = 0;
+        for (int i=0; i<yAxis; i++) {
+          planeOffset = planeOffset * shape[i] + plane[i] - origin[i];
+        }
+        planeOffset *= shape[yAxis];
+
+        int x0 = Math.max(x, origin[xAxis]);
+        int x1 = Math.min(x + w, origin[xAxis] + shape[xAxis]);
+        int y0 = Math.max(y, origin[yAxis]);
+        int y1 = Math.min(y + h, origin[yAxis] + shape[yAxis]);
+        int len = (x1 - x0) * bpp;
+        for (int row=y0; row<y1; row++) {
+          long src = (planeOffset + row - origin[yAxis]) * shape[xAxis] +
+            x0 - origin[xAxis];
+          int dest = ((row - y) * w + x0 - x) * bpp;
+          System.arraycopy(data, (int) (src * bpp), buf, dest, len);
+        }
+      }
+    }
+  }
+
+  /**
+   * Converts a one-dimensional primitive array into bytes in the given
+   * byte order.  Byte arrays are returned unchanged.
+   *
+   * @param array a byte, short, int, long, float or double array
+   * @param little true if the bytes should be in little-endian order
+   */
+  public static byte[] toBytes(Object array, boolean little) {
+    if (array instanceof byte[]) {
+      return (byte[]) array;
+    }
+    ByteOrder order = little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    if (array instanceof short[]) {
+      short[] s = (short[]) array;
+      ByteBuffer b = ByteBuffer.allocate(s.length * 2).order(order);
+      b.asShortBuffer().put(s);
+      return b.array();
+    }
+    if (array instanceof int[]) {
+      int[] s = (int[]) array;
+      ByteBuffer b = ByteBuffer.allocate(s.length * 4).order(order);
+      b.asIntBuffer().put(s);
+      return b.array();
+    }
+    if (array instanceof long[]) {
+      long[] s = (long[]) array;
+      ByteBuffer b = ByteBuffer.allocate(s.length * 8).order(order);
+      b.asLongBuffer().put(s);
+      return b.array();
+    }
+    if (array instanceof float[]) {
+      float[] s = (float[]) array;
+      ByteBuffer b = ByteBuffer.allocate(s.length * 4).order(order);
+      b.asFloatBuffer().put(s);
+      return b.array();
+    }
+    if (array instanceof double[]) {
+      double[] s = (double[]) array;
+      ByteBuffer b = ByteBuffer.allocate(s.length * 8).order(order);
+      b.asDoubleBuffer().put(s);
+      return b.array();
+    }
+    throw new IllegalArgumentException("Unsupported array type: " + array);
+  }
+
+  // -- Helper methods --
+
+  private static long getLength(int[] shape) {
+    long length = 1;
+    for (int s : shape) {
+      length *= s;
+    }
+    return length;
+  }
+
+  private byte[] getBlock(Key key, int[] origin, int[] shape, boolean little,
+    BlockLoader loader)
+    throws FormatException
+  {
+    synchronized (this) {
+      byte[] data = blocks.get(key);
+      if (data != null) {
+        return data;
+      }
+    }
+
+    byte[] data = toBytes(loader.load(origin, shape), little);
+
+    synchronized (this) {
+      loads++;
+      byte[] previous = blocks.put(key, data);
+      if (previous != null) {
+        size -= previous.length;
+      }
+      size += data.length;
+
+      // the block that was just added is the most recently used,
+      // so it is only evicted if it is larger than the whole budget
+      Iterator<Map.Entry<Key, byte[]>> entries = blocks.entrySet().iterator();
+      while (size > budget && entries.hasNext()) {
+        size -= entries.next().getValue().length;
+        entries.remove();
+      }
+    }
+    return data;
+  }
+
+  // -- Helper classes --
+
+  /** Reads blocks of a dataset on behalf of a cache. */
+  public interface BlockLoader {
+    /**
+     * Reads a block of the dataset.
+     *
+     * @param origin the index of the first sample in each dimension
+     * @param shape the number of samples in each dimension
+     * @return a one-dimensional primitive array containing the block's
+     *   samples in row-major order
+     */
+    Object load(int[] origin, int[] shape) throws FormatException;
+  }
+
+  private static class Key {
+    private final String dataset;
+    private final int[] index;
+    private final int hash;
+
+    public Key(String dataset, int[] index) {
+      this.dataset = dataset;
+      this.index = index.clone();
+      this.hash = 31 * dataset.hashCode() + Arrays.hashCode(index);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key k = (Key) o;
+      return dataset.equals(k.dataset) && Arrays.equals(index, k.index);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+}
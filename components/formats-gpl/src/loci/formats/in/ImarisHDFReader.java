@@ -26,10 +26,13 @@
 package loci.formats.in;
 
 import java.io.IOException;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
 
-import loci.common.DataTools;
 import loci.common.Location;
 import loci.common.RandomAccessInputStream;
 import loci.common.services.DependencyException;
@@ -59,12 +62,20 @@ public class ImarisHDFReader extends FormatReader {
 
   private static final String[] DELIMITERS = {" ", "-", "."};
 
+  /**
+   * Chunk size (Z, Y, X) to assume when the HDF5 chunk layout of a
+   * dataset is not reported by netCDF.
+   */
+  private static final int[] DEFAULT_CHUNK_SIZE = {16, 256, 256};
+
   // -- Fields --
 
   private double pixelSizeX, pixelSizeY, pixelSizeZ;
   private double minX, minY, minZ, maxX, maxY, maxZ;
   private int seriesCount;
   private NetCDFService netcdf;
+  private transient HDF5ChunkCache chunkCache;
+  private transient Map<String, int[]> blockShapes;
 
   // channel parameters
   private List<String> emWave, exWave, channelMin, channelMax;
@@ -156,61 +167,30 @@ public class ImarisHDFReader extends FormatReader {
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
-    lastChannel = getZCTCoords(no)[1];
+    int[] zct = getZCTCoords(no);
+    lastChannel = zct[1];
 
-    // pixel data is stored in XYZ blocks
+    // pixel data is stored in XYZ chunks; each chunk is decoded once
+    // and cached, rather than once for every plane that it contains
 
-    Object image = getImageData(no, x, y, w, h);
+    if (chunkCache == null) {
+      chunkCache = new HDF5ChunkCache();
+      blockShapes = new HashMap<String, int[]>();
+    }
 
-    boolean little = isLittleEndian();
+    final String path = getDataPath(zct[1], zct[2]);
     int bpp = FormatTools.getBytesPerPixel(getPixelType());
-    for (int row=0; row<h; row++) {
-      int rowlen = w * bpp;
-      int base = row * rowlen;
-
-      // indexes into the source array add (data.length - h) and
-      // (rowData.length - w) to account for cases where the source array
-      // represents a tile that is larger than the desired tile
-      if (image instanceof byte[][]) {
-        byte[][] data = (byte[][]) image;
-        byte[] rowData = data[row + data.length - h];
-        System.arraycopy(rowData, rowData.length - w, buf, base, w);
-      }
-      else if (image instanceof short[][]) {
-        short[][] data = (short[][]) image;
-        short[] rowData = data[row + data.length - h];
-        int index = rowData.length - w;
-        for (int i=0; i<w; i++) {
-          DataTools.unpackBytes(rowData[i + index], buf, base + 2*i, 2, little);
-        }
-      }
-      else if (image instanceof int[][]) {
-        int[][] data = (int[][]) image;
-        int[] rowData = data[row + data.length - h];
-        int index = rowData.length - w;
-        for (int i=0; i<w; i++) {
-          DataTools.unpackBytes(rowData[i + index], buf, base + i*4, 4, little);
-        }
-      }
-      else if (image instanceof float[][]) {
-        float[][] data = (float[][]) image;
-        float[] rowData = data[row + data.length - h];
-        int index = rowData.length - w;
-        for (int i=0; i<w; i++) {
-          int v = Float.floatToIntBits(rowData[i + index]);
-          DataTools.unpackBytes(v, buf, base + i*4, 4, little);
-        }
-      }
-      else if (image instanceof double[][]) {
-        double[][] data = (double[][]) image;
-        double[] rowData = data[row + data.length - h];
-        int index = rowData.length - w;
-        for (int i=0; i<w; i++) {
-          long v = Double.doubleToLongBits(rowData[i + index]);
-          DataTools.unpackBytes(v, buf, base + i * 8, 8, little);
+    int[] dims = new int[] {getSizeZ(), getSizeY(), getSizeX()};
+    chunkCache.copyRegion(path, dims, getBlockShape(path, dims, bpp),
+      new int[] {zct[0]}, x, y, w, h, bpp, isLittleEndian(), buf,
+      new HDF5ChunkCache.BlockLoader() {
+        @Override
+        public Object load(int[] origin, int[] shape)
+          throws FormatException
+        {
+          return readBlock(path, origin, shape);
         }
-      }
-    }
+      });
 
     return buf;
   }
@@ -226,6 +206,9 @@ public class ImarisHDFReader extends FormatReader {
 
       if (netcdf != null) netcdf.close();
       netcdf = null;
+      if (chunkCache != null) chunkCache.clear();
+      chunkCache = null;
+      blockShapes = null;
 
       emWave = exWave = channelMin = channelMax = null;
       gain = pinhole = channelName = microscopyMode = null;
@@ -309,12 +292,13 @@ public class ImarisHDFReader extends FormatReader {
 
     int type = -1;
 
-    Object pix = getImageData(0, 0, 0, 1, 1);
-    if (pix instanceof byte[][]) type = FormatTools.UINT8;
-    else if (pix instanceof short[][]) type = FormatTools.UINT16;
-    else if (pix instanceof int[][]) type = FormatTools.UINT32;
-    else if (pix instanceof float[][]) type = FormatTools.FLOAT;
-    else if (pix instanceof double[][]) type = FormatTools.DOUBLE;
+    Object pix = readBlock(getDataPath(0, 0), new int[] {0, 0, 0},
+      new int[] {1, 1, 1});
+    if (pix instanceof byte[]) type = FormatTools.UINT8;
+    else if (pix instanceof short[]) type = FormatTools.UINT16;
+    else if (pix instanceof int[]) type = FormatTools.UINT32;
+    else if (pix instanceof float[]) type = FormatTools.FLOAT;
+    else if (pix instanceof double[]) type = FormatTools.DOUBLE;
     else {
       throw new FormatException("Unknown pixel type: " + pix);
     }
@@ -424,57 +408,83 @@ public class ImarisHDFReader extends FormatReader {
 
   // -- Helper methods --
 
+  /** Returns the path to the pixel data for the given channel and time. */
+  private String getDataPath(int channel, int timepoint) {
+    return "/DataSet/ResolutionLevel_" + getCoreIndex() + "/TimePoint_" +
+      timepoint + "/Channel_" + channel + "/Data";
+  }
+
   /**
-   * Retrieve an array corresponding to the specified image tile.
-   * In some cases, the returned tile will be larger than the requested tile;
-   * openBytes will correct for this as needed.
+   * Returns the shape of the cached blocks for the given dataset, based
+   * upon the dataset's HDF5 chunk size.
    */
-  private Object getImageData(int no, int x, int y, int width, int height)
-    throws FormatException
-  {
-    int[] zct = getZCTCoords(no);
-    String path = "/DataSet/ResolutionLevel_" + getCoreIndex() + "/TimePoint_" +
-      zct[2] + "/Channel_" + zct[1] + "/Data";
-    Object image = null;
-
-    // the width and height cannot be 1, because then netCDF will give us a
-    // singleton instead of an array
-    if (height == 1) {
-      height++;
-
-      // if we only wanted the last row, the Y coordinate must be adjusted
-      // so that we don't attempt to read past the end of the image
-      if (y == getSizeY() - 1) {
-        y--;
+  private int[] getBlockShape(String path, int[] dims, int bpp) {
+    int[] shape = blockShapes.get(path);
+    if (shape == null) {
+      int[] chunk = DEFAULT_CHUNK_SIZE;
+      Object chunkSizes =
+        netcdf.getVariableAttributes(path).get("_ChunkSizes");
+      if (chunkSizes != null) {
+        StringTokenizer tokens = new StringTokenizer(chunkSizes.toString());
+        if (tokens.countTokens() == dims.length) {
+          try {
+            int[] sizes = new int[dims.length];
+            for (int i=0; i<sizes.length; i++) {
+              sizes[i] = Integer.parseInt(tokens.nextToken());
+            }
+            chunk = sizes;
+          }
+          catch (NumberFormatException e) {
+            LOGGER.debug("Could not parse chunk size '{}'", chunkSizes);
+          }
+        }
       }
+      shape = chunkCache.getBlockShape(dims, chunk, bpp);
+      blockShapes.put(path, shape);
     }
-    if (width == 1) {
-      width++;
+    return shape;
+  }
 
-      // if we only wanted the last column, the X coordinate must be adjusted
-      // so that we don't attempt to read past the end of the image
-      if (x == getSizeX() - 1) {
-        x--;
-      }
-    }
+  /**
+   * Read a (Z, Y, X) block of the given dataset into a one-dimensional
+   * primitive array.
+   */
+  private Object readBlock(String path, int[] origin, int[] shape)
+    throws FormatException
+  {
+    int[] start = origin.clone();
+    int[] size = shape.clone();
 
     // netCDF sometimes returns incorrect pixel values if the (X, Y) coordinate
     // is in the lower right quadrant of the image.  We correct for this by
-    // moving the X coordinate to the left and adjusting the width.
-    if (x >= getSizeX() / 2 && y >= getSizeY() / 2) {
-      width += x - (getSizeX() / 2) + 1;
-      x = (getSizeX() / 2) - 1;
+    // moving the X coordinate to the left and discarding the extra columns.
+    int left = getSizeX() / 2 - 1;
+    int pad = 0;
+    if (left >= 0 && start[2] > left && start[1] >= getSizeY() / 2) {
+      pad = start[2] - left;
+      start[2] = left;
+      size[2] += pad;
     }
 
-    int[] dimensions = new int[] {1, height, width};
-    int[] indices = new int[] {zct[0], y, x};
+    Object block = null;
     try {
-      image = netcdf.getArray(path, indices, dimensions);
+      block = netcdf.getArrayBlock(path, start, size);
     }
     catch (ServiceException e) {
       throw new FormatException(e);
     }
-    return image;
+
+    if (pad > 0) {
+      int rows = shape[0] * shape[1];
+      Object cropped = Array.newInstance(
+        block.getClass().getComponentType(), rows * shape[2]);
+      for (int row=0; row<rows; row++) {
+        System.arraycopy(block, row * size[2] + pad,
+          cropped, row * shape[2], shape[2]);
+      }
+      block = cropped;
+    }
+    return block;
   }
 
   private void parseAttributes() {
@@ -25,22 +25,33 @@
 
 package loci.formats.in;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import loci.common.DataTools;
 import loci.common.DateTools;
@@ -68,9 +79,9 @@ import ome.units.quantity.Length;
 import ome.units.quantity.Time;
 import ome.units.UNITS;
 
-import org.xml.sax.SAXException;
 import org.apache.commons.lang.StringUtils;
 import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -94,6 +105,10 @@ public class LIFReader extends FormatReader {
   /** The encoding used in this file.*/
   private static final String ENCODING = "ISO-8859-1";
 
+  /** Default number of threads used to translate image metadata. */
+  private static final int DEFAULT_PARSING_THREADS =
+    Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
   private static final ImmutableMap<String, Integer> CHANNEL_PRIORITIES =
     createChannelPriorities();
 
@@ -122,8 +137,7 @@ public class LIFReader extends FormatReader {
   private int lastChannel = 0;
 
   private List<String> lutNames = new ArrayList<String>();
-  private List<Double> physicalSizeXs = new ArrayList<Double>();
-  private List<Double> physicalSizeYs = new ArrayList<Double>();
+  private Double[] physicalSizeXs, physicalSizeYs;
   private List<Length> fieldPosX = new ArrayList<Length>();
   private List<Length> fieldPosY = new ArrayList<Length>();
 
@@ -152,6 +166,9 @@ public class LIFReader extends FormatReader {
   private int[] tileCount;
   private long endPointer;
 
+  /** Number of threads used to translate the metadata of each image. */
+  private int parsingThreads = DEFAULT_PARSING_THREADS;
+
   // -- Constructor --
 
   /** Constructs a new Leica LIF reader. */
@@ -161,6 +178,27 @@ public class LIFReader extends FormatReader {
     domains = new String[] {FormatTools.LM_DOMAIN};
   }
 
+  // -- LIFReader API methods --
+
+  /**
+   * Sets the number of threads used to translate the metadata of each
+   * image during initialization.  The default is the number of available
+   * processors, up to four; a value of one translates every image on the
+   * calling thread.
+   */
+  public void setParsingThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid number of threads: " +
+        threads);
+    }
+    parsingThreads = threads;
+  }
+
+  /** Gets the number of threads used to translate image metadata. */
+  public int getParsingThreads() {
+    return parsingThreads;
+  }
+
   // -- IFormatReader API methods --
 
   /* @see loci.formats.IFormatReader#getOptimalTileHeight() */
@@ -356,8 +394,7 @@ public class LIFReader extends FormatReader {
       realChannel = null;
       lastChannel = 0;
       lutNames.clear();
-      physicalSizeXs.clear();
-      physicalSizeYs.clear();
+      physicalSizeXs = physicalSizeYs = null;
       descriptions = microscopeModels = serialNumber = null;
       pinholes = zooms = lensNA = null;
       zSteps = tSteps = null;
@@ -520,7 +557,7 @@ public class LIFReader extends FormatReader {
 
     xml = XMLTools.sanitizeXML(xml);
 
-    translateMetadata(getMetadataRoot(xml));
+    translateMetadata(xml);
 
     for (int i=0; i<imageNames.length; i++) {
       setSeries(i);
@@ -781,9 +818,9 @@ public class LIFReader extends FormatReader {
       store.setImageName(imageNames[index].trim(), i);
 
       Length sizeX =
-        FormatTools.getPhysicalSizeX(physicalSizeXs.get(index));
+        FormatTools.getPhysicalSizeX(physicalSizeXs[index]);
       Length sizeY =
-        FormatTools.getPhysicalSizeY(physicalSizeYs.get(index));
+        FormatTools.getPhysicalSizeY(physicalSizeYs[index]);
       Length sizeZ = FormatTools.getPhysicalSizeZ(zSteps[index]);
 
       if (sizeX != null) {
@@ -977,157 +1014,396 @@ public class LIFReader extends FormatReader {
     }
   }
 
-  private Element getMetadataRoot(String xml)
-    throws FormatException, IOException
-  {
-    ByteArrayInputStream s = null;
-    try {
-      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder parser = factory.newDocumentBuilder();
-      s = new ByteArrayInputStream(xml.getBytes(ENCODING));
-      return parser.parse(s).getDocumentElement();
+  /**
+   * Translates the metadata of each image in the given XML.
+   * The XML is streamed rather than parsed into a single document; each
+   * image's element is copied into a document of its own, so that the
+   * images can then be translated concurrently.
+   */
+  private void translateMetadata(String xml) throws FormatException {
+    final List<String> names = new ArrayList<String>();
+    final List<Element> imageNodes = readImageNodes(xml, names);
+    final int imageCount = imageNodes.size();
+
+    tileCount = new int[imageCount];
+    Arrays.fill(tileCount, 1);
+    core = new ArrayList<CoreMetadata>(imageCount);
+    acquiredDate = new double[imageCount];
+    descriptions = new String[imageCount];
+    laserWavelength = new List[imageCount];
+    laserIntensity = new List[imageCount];
+    laserActive = new List[imageCount];
+    laserFrap = new List[imageCount];
+    timestamps = new double[imageCount][];
+    activeDetector = new List[imageCount];
+    serialNumber = new String[imageCount];
+    lensNA = new Double[imageCount];
+    magnification = new Double[imageCount];
+    immersions = new String[imageCount];
+    corrections = new String[imageCount];
+    objectiveModels = new String[imageCount];
+    posX = new Length[imageCount];
+    posY = new Length[imageCount];
+    posZ = new Length[imageCount];
+    refractiveIndex = new Double[imageCount];
+    cutIns = new List[imageCount];
+    cutOuts = new List[imageCount];
+    filterModels = new List[imageCount];
+    microscopeModels = new String[imageCount];
+    detectorModels = new List[imageCount];
+    detectorIndexes = new HashMap[imageCount];
+    zSteps = new Double[imageCount];
+    tSteps = new Double[imageCount];
+    pinholes = new Double[imageCount];
+    zooms = new Double[imageCount];
+    physicalSizeXs = new Double[imageCount];
+    physicalSizeYs = new Double[imageCount];
+
+    expTimes = new Double[imageCount][];
+    gains = new Double[imageCount][];
+    detectorOffsets = new Double[imageCount][];
+    channelNames = new String[imageCount][];
+    exWaves = new Double[imageCount][];
+    imageROIs = new ROI[imageCount][];
+    imageNames = names.toArray(new String[imageCount]);
+
+    core.clear();
+    for (int i=0; i<imageCount; i++) {
+      core.add(new CoreMetadata());
+    }
+
+    // lookup table names and tile positions are listed in image order,
+    // so each image's values are collected separately and merged below
+    final List<List<String>> luts = new ArrayList<List<String>>(imageCount);
+    final List<List<Length>> tileX = new ArrayList<List<Length>>(imageCount);
+    final List<List<Length>> tileY = new ArrayList<List<Length>>(imageCount);
+    for (int i=0; i<imageCount; i++) {
+      luts.add(new ArrayList<String>());
+      tileX.add(new ArrayList<Length>());
+      tileY.add(new ArrayList<Length>());
+    }
+
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(imageCount);
+    for (int i=0; i<imageCount; i++) {
+      final int index = i;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws FormatException {
+          Element image = imageNodes.get(index);
+          translateImageNodes(image, index, luts.get(index));
+          translateAttachmentNodes(image, index,
+            tileX.get(index), tileY.get(index));
+          translateScannerSettings(image, index);
+          translateFilterSettings(image, index);
+          translateTimestamps(image, index);
+          translateLaserLines(image, index);
+          translateROIs(image, index);
+          translateSingleROIs(image, index);
+          translateDetectors(image, index);
+
+          final Deque<String> nameStack = new ArrayDeque<String>();
+          populateOriginalMetadata(image, index, nameStack);
+          addUserCommentMeta(image, index);
+
+          // release the image's document as soon as it has been translated
+          imageNodes.set(index, null);
+          return null;
+        }
+      });
+    }
+    runTasks(tasks);
+
+    for (int i=0; i<imageCount; i++) {
+      lutNames.addAll(luts.get(i));
+      fieldPosX.addAll(tileX.get(i));
+      fieldPosY.addAll(tileY.get(i));
     }
-    catch (ParserConfigurationException e) {
-      throw new FormatException(e);
+
+    int totalSeries = 0;
+    for (int count : tileCount) {
+      totalSeries += count;
     }
-    catch (SAXException e) {
-      throw new FormatException(e);
-    } finally {
-        if (s != null) s.close();
+    ArrayList<CoreMetadata> newCore = new ArrayList<CoreMetadata>();
+    for (int i=0; i<core.size(); i++) {
+      for (int tile=0; tile<tileCount[i]; tile++) {
+        newCore.add(core.get(i));
+      }
     }
+    core = newCore;
   }
 
-  private void translateMetadata(Element root) throws FormatException {
-    Element realRoot = (Element) root.getChildNodes().item(0);
+  /**
+   * Runs the given tasks, using up to {@link #getParsingThreads()} threads.
+   * Each task translates a different image; tasks must not modify state
+   * that is shared between images.
+   */
+  private void runTasks(List<Callable<Void>> tasks) throws FormatException {
+    int threads = Math.min(parsingThreads, tasks.size());
+    if (threads <= 1) {
+      for (Callable<Void> task : tasks) {
+        try {
+          task.call();
+        }
+        catch (FormatException e) {
+          throw e;
+        }
+        catch (Exception e) {
+          throw new FormatException(e);
+        }
+      }
+      return;
+    }
 
-    NodeList toPrune = getNodes(realRoot, "LDM_Block_Sequential_Master");
-    if (toPrune != null) {
-      for (int i=0; i<toPrune.getLength(); i++) {
-        Element prune = (Element) toPrune.item(i);
-        Element parent = (Element) prune.getParentNode();
-        parent.removeChild(prune);
+    LOGGER.debug("Translating {} images with {} threads", tasks.size(),
+      threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "Bio-Formats-LIF-Parser");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    try {
+      for (Future<Void> result : executor.invokeAll(tasks)) {
+        result.get();
       }
     }
+    catch (InterruptedException e) {
+      throw new FormatException("Interrupted while translating metadata", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof FormatException) {
+        throw (FormatException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new FormatException(cause);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
 
-    NodeList images = getNodes(realRoot, "Image");
-    List<Element> imageNodes = new ArrayList<Element>();
-    Long[] oldOffsets = null;
-    if (images.getLength() > offsets.size()) {
-      oldOffsets = offsets.toArray(new Long[offsets.size()]);
-      offsets.clear();
+  /**
+   * Streams the given XML and copies the element of each image that is not
+   * part of a processing history into a new document.
+   * The offsets to the images' pixel data are corrected if necessary.
+   *
+   * @param xml the XML description of the file, with a single root node
+   * @param names list to which the name of each image is added
+   * @return the element of each image, in document order
+   */
+  private List<Element> readImageNodes(String xml, List<String> names)
+    throws FormatException
+  {
+    DocumentBuilder builder = null;
+    try {
+      builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+    }
+    catch (ParserConfigurationException e) {
+      throw new FormatException(e);
     }
 
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    if (factory.isPropertySupported(XMLInputFactory.IS_NAMESPACE_AWARE)) {
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+    }
+
+    List<Element> imageNodes = new ArrayList<Element>();
+    List<Integer> offsetIndexes = new ArrayList<Integer>();
+    int images = 0;
     int nextOffset = 0;
-    for (int i=0; i<images.getLength(); i++) {
-      Element image = (Element) images.item(i);
-      Element grandparent = (Element) image.getParentNode();
-      if (grandparent == null) {
-        continue;
-      }
-      grandparent = (Element) grandparent.getParentNode();
-      if (grandparent == null) {
-        continue;
-      }
-      if (!"ProcessingHistory".equals(grandparent.getNodeName())) {
-        // image is being referenced from an event list
-        imageNodes.add(image);
-        if (oldOffsets != null && nextOffset < oldOffsets.length) {
-          offsets.add(oldOffsets[nextOffset]);
+
+    // node names and "Name" attributes of the enclosing elements
+    List<String> path = new ArrayList<String>();
+    List<String> pathNames = new ArrayList<String>();
+
+    // current node of each image element that is being copied
+    List<Node> copies = new ArrayList<Node>();
+
+    // every other "LDM_Block_Sequential_Master" block is discarded,
+    // as removing them from a live node list used to do
+    int sequentialBlocks = 0;
+    int skipDepth = 0;
+
+    XMLStreamReader reader = null;
+    try {
+      reader = factory.createXMLStreamReader(new StringReader(xml));
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (skipDepth > 0) {
+          if (event == XMLStreamConstants.START_ELEMENT) skipDepth++;
+          else if (event == XMLStreamConstants.END_ELEMENT) skipDepth--;
+          continue;
+        }
+
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          String name = getQualifiedName(reader.getPrefix(),
+            reader.getLocalName());
+
+          // only descendants of the first child of the root node are used
+          boolean descendant = path.size() >= 2;
+          if (descendant && name.equals("LDM_Block_Sequential_Master") &&
+            (sequentialBlocks++ % 2) == 0)
+          {
+            skipDepth = 1;
+            continue;
+          }
+
+          if (descendant && name.equals("Image")) {
+            String grandparent = getAncestor(path, 2);
+            if (grandparent != null) {
+              if (!"ProcessingHistory".equals(grandparent)) {
+                // image is being referenced from an event list
+                copies.add(builder.newDocument());
+                names.add(getImageName(path, pathNames));
+                offsetIndexes.add(nextOffset);
+              }
+              if (getAncestor(path, 3) != null) {
+                String ancestor = getAncestor(path, 4);
+                if (ancestor != null && !"Image".equals(ancestor)) {
+                  nextOffset++;
+                }
+              }
+            }
+            images++;
+          }
+
+          for (int i=0; i<copies.size(); i++) {
+            Node parent = copies.get(i);
+            Document doc = parent instanceof Document ?
+              (Document) parent : parent.getOwnerDocument();
+            Element element = doc.createElement(name);
+            for (int a=0; a<reader.getNamespaceCount(); a++) {
+              String prefix = reader.getNamespacePrefix(a);
+              element.setAttribute(getQualifiedName("xmlns", prefix),
+                reader.getNamespaceURI(a));
+            }
+            for (int a=0; a<reader.getAttributeCount(); a++) {
+              element.setAttribute(getQualifiedName(
+                reader.getAttributePrefix(a), reader.getAttributeLocalName(a)),
+                reader.getAttributeValue(a));
+            }
+            parent.appendChild(element);
+            if (parent instanceof Document) {
+              imageNodes.add(element);
+            }
+            copies.set(i, element);
+          }
+
+          String elementName = reader.getAttributeValue(null, "Name");
+          path.add(name);
+          pathNames.add(elementName == null ? "" : elementName);
+        }
+        else if (event == XMLStreamConstants.END_ELEMENT) {
+          path.remove(path.size() - 1);
+          pathNames.remove(pathNames.size() - 1);
+          for (int i=copies.size()-1; i>=0; i--) {
+            Node parent = copies.get(i).getParentNode();
+            if (parent instanceof Document) {
+              copies.remove(i);
+            }
+            else {
+              copies.set(i, parent);
+            }
+          }
+          if (path.size() == 1) {
+            // end of the first child of the root node
+            break;
+          }
+        }
+        else if (event == XMLStreamConstants.CHARACTERS ||
+          event == XMLStreamConstants.CDATA ||
+          event == XMLStreamConstants.SPACE)
+        {
+          for (Node node : copies) {
+            node.appendChild(
+              node.getOwnerDocument().createTextNode(reader.getText()));
+          }
         }
       }
-      grandparent = (Element) grandparent.getParentNode();
-      if (grandparent == null) {
-        continue;
+    }
+    catch (XMLStreamException e) {
+      throw new FormatException(e);
+    }
+    finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        }
+        catch (XMLStreamException e) {
+          LOGGER.debug("Could not close XML reader", e);
+        }
       }
-      grandparent = (Element) grandparent.getParentNode();
-      if (grandparent != null) {
-        if (!"Image".equals(grandparent.getNodeName())) {
-          nextOffset++;
+    }
+
+    if (images > offsets.size()) {
+      Long[] oldOffsets = offsets.toArray(new Long[offsets.size()]);
+      offsets.clear();
+      for (int index : offsetIndexes) {
+        if (index < oldOffsets.length) {
+          offsets.add(oldOffsets[index]);
         }
       }
     }
+    return imageNodes;
+  }
 
-    tileCount = new int[imageNodes.size()];
-    Arrays.fill(tileCount, 1);
-    core = new ArrayList<CoreMetadata>(imageNodes.size());
-    acquiredDate = new double[imageNodes.size()];
-    descriptions = new String[imageNodes.size()];
-    laserWavelength = new List[imageNodes.size()];
-    laserIntensity = new List[imageNodes.size()];
-    laserActive = new List[imageNodes.size()];
-    laserFrap = new List[imageNodes.size()];
-    timestamps = new double[imageNodes.size()][];
-    activeDetector = new List[imageNodes.size()];
-    serialNumber = new String[imageNodes.size()];
-    lensNA = new Double[imageNodes.size()];
-    magnification = new Double[imageNodes.size()];
-    immersions = new String[imageNodes.size()];
-    corrections = new String[imageNodes.size()];
-    objectiveModels = new String[imageNodes.size()];
-    posX = new Length[imageNodes.size()];
-    posY = new Length[imageNodes.size()];
-    posZ = new Length[imageNodes.size()];
-    refractiveIndex = new Double[imageNodes.size()];
-    cutIns = new List[imageNodes.size()];
-    cutOuts = new List[imageNodes.size()];
-    filterModels = new List[imageNodes.size()];
-    microscopeModels = new String[imageNodes.size()];
-    detectorModels = new List[imageNodes.size()];
-    detectorIndexes = new HashMap[imageNodes.size()];
-    zSteps = new Double[imageNodes.size()];
-    tSteps = new Double[imageNodes.size()];
-    pinholes = new Double[imageNodes.size()];
-    zooms = new Double[imageNodes.size()];
-
-    expTimes = new Double[imageNodes.size()][];
-    gains = new Double[imageNodes.size()][];
-    detectorOffsets = new Double[imageNodes.size()][];
-    channelNames = new String[imageNodes.size()][];
-    exWaves = new Double[imageNodes.size()][];
-    imageROIs = new ROI[imageNodes.size()][];
-    imageNames = new String[imageNodes.size()];
+  /**
+   * Returns the node name of the given ancestor of an element whose
+   * enclosing elements are listed in the path, or null if there is no
+   * such ancestor.
+   *
+   * @param generation 1 for the parent, 2 for the grandparent, and so on
+   */
+  private static String getAncestor(List<String> path, int generation) {
+    int index = path.size() - generation;
+    return index < 0 ? null : path.get(index);
+  }
 
-    core.clear();
-    for (int i=0; i<imageNodes.size(); i++) {
-      Element image = imageNodes.get(i);
-
-      CoreMetadata ms = new CoreMetadata();
-      core.add(ms);
-
-      int index = core.size() - 1;
-      setSeries(index);
-
-      translateImageNames(image, index);
-      translateImageNodes(image, index);
-      translateAttachmentNodes(image, index);
-      translateScannerSettings(image, index);
-      translateFilterSettings(image, index);
-      translateTimestamps(image, index);
-      translateLaserLines(image, index);
-      translateROIs(image, index);
-      translateSingleROIs(image, index);
-      translateDetectors(image, index);
-
-      final Deque<String> nameStack = new ArrayDeque<String>();
-      populateOriginalMetadata(image, nameStack);
-      addUserCommentMeta(image, i);
+  /**
+   * Builds an image's name from the names of its enclosing "Element"
+   * elements, omitting the outermost element.
+   */
+  private static String getImageName(List<String> path,
+    List<String> pathNames)
+  {
+    final List<String> names = new ArrayList<String>();
+    for (int i=path.size()-1; i>=1; i--) {
+      if (path.get(i).equals("Element")) {
+        names.add(pathNames.get(i));
+      }
     }
-    setSeries(0);
+    StringBuilder name = new StringBuilder();
+    for (int i=names.size() - 2; i>=0; i--) {
+      name.append(names.get(i));
+      if (i > 0) name.append("/");
+    }
+    return name.toString();
+  }
 
-    int totalSeries = 0;
-    for (int count : tileCount) {
-      totalSeries += count;
+  private static String getQualifiedName(String prefix, String localName) {
+    if (prefix == null || prefix.length() == 0) {
+      return localName;
     }
-    ArrayList<CoreMetadata> newCore = new ArrayList<CoreMetadata>();
-    for (int i=0; i<core.size(); i++) {
-      for (int tile=0; tile<tileCount[i]; tile++) {
-        newCore.add(core.get(i));
-      }
+    if (localName == null || localName.length() == 0) {
+      return prefix;
     }
-    core = newCore;
+    return prefix + ":" + localName;
   }
 
-  private void populateOriginalMetadata(Element root, Deque<String> nameStack) {
+  private void populateOriginalMetadata(Element root, int image,
+    Deque<String> nameStack)
+  {
+    Hashtable<String, Object> seriesMetadata = core.get(image).seriesMetadata;
     String name = root.getNodeName();
     if (root.hasAttributes() && !name.equals("Element") &&
       !name.equals("Attachment") && !name.equals("LMSDataContainerHeader"))
@@ -1150,7 +1426,7 @@ public class LIFReader extends FormatReader {
         value.length() > 0 && !suffix.equals("HighInteger") &&
         !suffix.equals("LowInteger"))
       {
-        addSeriesMetaList(key.toString() + suffix, value);
+        addMetaList(key.toString() + suffix, value, seriesMetadata);
       }
       else {
         NamedNodeMap attributes = root.getAttributes();
@@ -1159,7 +1435,8 @@ public class LIFReader extends FormatReader {
           if (!attr.getName().equals("HighInteger") &&
             !attr.getName().equals("LowInteger"))
           {
-            addSeriesMeta(key.toString() + attr.getName(), attr.getValue());
+            addMeta(key.toString() + attr.getName(), attr.getValue(),
+              seriesMetadata);
           }
         }
       }
@@ -1169,7 +1446,7 @@ public class LIFReader extends FormatReader {
     for (int i=0; i<children.getLength(); i++) {
       Object child = children.item(i);
       if (child instanceof Element) {
-        populateOriginalMetadata((Element) child, nameStack);
+        populateOriginalMetadata((Element) child, image, nameStack);
       }
     }
 
@@ -1180,31 +1457,13 @@ public class LIFReader extends FormatReader {
     }
   }
 
-  private void translateImageNames(Element imageNode, int image) {
-    final List<String> names = new ArrayList<String>();
-    Element parent = imageNode;
-    while (true) {
-      parent = (Element) parent.getParentNode();
-      if (parent == null || parent.getNodeName().equals("LEICA")) {
-        break;
-      }
-      if (parent.getNodeName().equals("Element")) {
-        names.add(parent.getAttribute("Name"));
-      }
-    }
-    imageNames[image] = "";
-    for (int i=names.size() - 2; i>=0; i--) {
-      imageNames[image] += names.get(i);
-      if (i > 0) imageNames[image] += "/";
-    }
-  }
-
   private void translateDetectors(Element imageNode, int image)
     throws FormatException
   {
     NodeList definitions = getNodes(imageNode, "ATLConfocalSettingDefinition");
     if (definitions == null) return;
 
+    final int effectiveSizeC = getEffectiveSizeC(core.get(image));
     final List<String> channels = new ArrayList<String>();
     laserActive[image] = new ArrayList<Boolean>();
     int nextChannel = 0;
@@ -1288,7 +1547,7 @@ public class LIFReader extends FormatReader {
               nextChannel = 0;
             }
 
-            if (nextChannel < getEffectiveSizeC()) {
+            if (nextChannel < effectiveSizeC) {
               if (gains[image] != null) {
                 gains[image][nextChannel] = gain;
               }
@@ -1313,8 +1572,8 @@ public class LIFReader extends FormatReader {
     }
 
     if (channels != null && channelNames[image] != null) {
-      for (int i=0; i<getEffectiveSizeC(); i++) {
-        int index = i + channels.size() - getEffectiveSizeC();
+      for (int i=0; i<effectiveSizeC; i++) {
+        int index = i + channels.size() - effectiveSizeC;
         if (index >= 0 && index < channels.size()) {
           if (channelNames[image][i] == null ||
             channelNames[image][i].trim().isEmpty())
@@ -1421,8 +1680,8 @@ public class LIFReader extends FormatReader {
 
       NodeList vertices = getNodes(roiNode, "P");
 
-      double sizeX = physicalSizeXs.get(image);
-      double sizeY = physicalSizeYs.get(image);
+      double sizeX = physicalSizeXs[image];
+      double sizeY = physicalSizeYs[image];
 
       for (int v=0; v<vertices.getLength(); v++) {
         Element vertex = (Element) vertices.item(v);
@@ -1540,11 +1799,12 @@ public class LIFReader extends FormatReader {
     NodeList timestampNodes = getNodes(imageNode, "TimeStamp");
     if (timestampNodes == null) return;
 
-    timestamps[image] = new double[getImageCount()];
+    final int imageCount = core.get(image).imageCount;
+    timestamps[image] = new double[imageCount];
 
     if (timestampNodes != null) {
       for (int stamp=0; stamp<timestampNodes.getLength(); stamp++) {
-        if (stamp < getImageCount()) {
+        if (stamp < imageCount) {
           Element timestamp = (Element) timestampNodes.item(stamp);
           String stampHigh = timestamp.getAttribute("HighInteger");
           String stampLow = timestamp.getAttribute("LowInteger");
@@ -1566,7 +1826,7 @@ public class LIFReader extends FormatReader {
     NodeList relTimestampNodes = getNodes(imageNode, "RelTimeStamp");
     if (relTimestampNodes != null) {
       for (int stamp=0; stamp<relTimestampNodes.getLength(); stamp++) {
-        if (stamp < getImageCount()) {
+        if (stamp < imageCount) {
           Element timestamp = (Element) relTimestampNodes.item(stamp);
           timestamps[image][stamp] =
             new Double(timestamp.getAttribute("Time"));
@@ -1725,11 +1985,12 @@ public class LIFReader extends FormatReader {
     NodeList scannerSettings = getNodes(imageNode, "ScannerSettingRecord");
     if (scannerSettings == null) return;
 
-    expTimes[image] = new Double[getEffectiveSizeC()];
-    gains[image] = new Double[getEffectiveSizeC()];
-    detectorOffsets[image] = new Double[getEffectiveSizeC()];
-    channelNames[image] = new String[getEffectiveSizeC()];
-    exWaves[image] = new Double[getEffectiveSizeC()];
+    final int effectiveSizeC = getEffectiveSizeC(core.get(image));
+    expTimes[image] = new Double[effectiveSizeC];
+    gains[image] = new Double[effectiveSizeC];
+    detectorOffsets[image] = new Double[effectiveSizeC];
+    channelNames[image] = new String[effectiveSizeC];
+    exWaves[image] = new Double[effectiveSizeC];
     detectorModels[image] = new ArrayList<String>();
 
     for (int i=0; i<scannerSettings.getLength(); i++) {
@@ -1766,10 +2027,14 @@ public class LIFReader extends FormatReader {
         detectorModels[image].add(value);
       }
       else if (id.equals("eDirectional")) {
-        addSeriesMeta("Reverse X orientation", "1".equals(value.trim()));
+        addMeta("Reverse X orientation",
+          Boolean.valueOf("1".equals(value.trim())),
+          core.get(image).seriesMetadata);
       }
       else if (id.equals("eDirectionalY")) {
-        addSeriesMeta("Reverse Y orientation", "1".equals(value.trim()));
+        addMeta("Reverse Y orientation",
+          Boolean.valueOf("1".equals(value.trim())),
+          core.get(image).seriesMetadata);
       }
       else if (id.indexOf("WFC") == 1) {
         int c = 0;
@@ -1777,7 +2042,7 @@ public class LIFReader extends FormatReader {
           c = Integer.parseInt(id.replaceAll("\\D", ""));
         }
         catch (NumberFormatException e) { }
-        if (c < 0 || c >= getEffectiveSizeC()) {
+        if (c < 0 || c >= effectiveSizeC) {
           continue;
         }
 
@@ -1813,7 +2078,8 @@ public class LIFReader extends FormatReader {
     }
   }
 
-  private void translateAttachmentNodes(Element imageNode, int image)
+  private void translateAttachmentNodes(Element imageNode, int image,
+    List<Length> tilePosX, List<Length> tilePosY)
     throws FormatException
   {
     NodeList attachmentNodes = getNodes(imageNode, "Attachment");
@@ -1837,21 +2103,21 @@ public class LIFReader extends FormatReader {
           if (posX != null) {
             try {
               final Double number = Double.valueOf(posX);
-              fieldPosX.add(new Length(number, UNITS.REFERENCEFRAME));
+              tilePosX.add(new Length(number, UNITS.REFERENCEFRAME));
             }
             catch (NumberFormatException e) {
               LOGGER.debug("", e);
-              fieldPosX.add(null);
+              tilePosX.add(null);
             }
           }
           if (posY != null) {
             try {
               final Double number = Double.valueOf(posY);
-              fieldPosY.add(new Length(number, UNITS.REFERENCEFRAME));
+              tilePosY.add(new Length(number, UNITS.REFERENCEFRAME));
             }
             catch (NumberFormatException e) {
               LOGGER.debug("", e);
-              fieldPosY.add(null);
+              tilePosY.add(null);
             }
           }
         }
@@ -1866,14 +2132,16 @@ public class LIFReader extends FormatReader {
     if (attachmentNodes == null) return;
     for (int i=0; i<attachmentNodes.getLength(); i++) {
       Node attachment = attachmentNodes.item(i);
-      addSeriesMeta("User-Comment[" + i + "]", attachment.getTextContent());
+      addMeta("User-Comment[" + i + "]", attachment.getTextContent(),
+        core.get(image).seriesMetadata);
       if (i == 0 && descriptions[image] == null) {
         descriptions[image] = attachment.getTextContent();
       }
     }
   }
 
-  private void translateImageNodes(Element imageNode, int i)
+  private void translateImageNodes(Element imageNode, int i,
+    List<String> luts)
     throws FormatException
   {
     CoreMetadata ms = core.get(i);
@@ -1895,7 +2163,7 @@ public class LIFReader extends FormatReader {
     for (int ch=0; ch<channels.getLength(); ch++) {
       Element channel = (Element) channels.item(ch);
 
-      lutNames.add(channel.getAttribute("LUTName"));
+      luts.add(channel.getAttribute("LUTName"));
       String bytesInc = channel.getAttribute("BytesInc");
       long bytes =
         bytesInc == null || bytesInc.trim().isEmpty() ? 0 :
@@ -1994,8 +2262,8 @@ public class LIFReader extends FormatReader {
       }
     }
 
-    physicalSizeXs.add(physicalSizeX);
-    physicalSizeYs.add(physicalSizeY);
+    physicalSizeXs[i] = physicalSizeX;
+    physicalSizeYs[i] = physicalSizeY;
 
     if (zSteps[i] == null && physicalSizeZ != null) {
       zSteps[i] = Math.abs(physicalSizeZ);
@@ -2027,8 +2295,10 @@ public class LIFReader extends FormatReader {
     Long[] bytes = bytesPerAxis.keySet().toArray(new Long[0]);
     Arrays.sort(bytes);
     ms.dimensionOrder = "XY";
-    if (getRGBChannelCount() == 1 || getRGBChannelCount() == getSizeC()) {
-      if (getSizeC() > 1 && getSizeT() > 1) {
+    int effectiveSizeC = getEffectiveSizeC(ms);
+    int rgbChannelCount = effectiveSizeC == 0 ? 0 : ms.sizeC / effectiveSizeC;
+    if (rgbChannelCount == 1 || rgbChannelCount == ms.sizeC) {
+      if (ms.sizeC > 1 && ms.sizeT > 1) {
         ms.dimensionOrder += "C";
       }
       for (Long nBytes : bytes) {
@@ -2086,6 +2356,17 @@ public class LIFReader extends FormatReader {
     return channels.getElementsByTagName("DimensionDescription");
   }
 
+  /**
+   * Returns the effective number of channels of the given series.
+   * Images are translated concurrently, so the series' core metadata is
+   * used directly instead of the current series.
+   */
+  private static int getEffectiveSizeC(CoreMetadata ms) {
+    int sizeZT = ms.sizeZ * ms.sizeT;
+    if (sizeZT == 0) return 0;
+    return ms.imageCount / sizeZT;
+  }
+
   private int getChannelIndex(Element filterSetting) {
     String data = filterSetting.getAttribute("data");
     if (data == null || data.equals("")) {
@@ -29,15 +29,12 @@ import java.io.IOException;
 
 import loci.common.DateTools;
 import loci.common.RandomAccessInputStream;
-import loci.common.services.ServiceException;
 import loci.formats.CoreMetadata;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.MetadataTools;
-import loci.formats.codec.JPEGTileDecoder;
+import loci.formats.codec.JPEGDecoder;
 import loci.formats.meta.MetadataStore;
-import loci.formats.services.JPEGTurboService;
-import loci.formats.services.JPEGTurboServiceImpl;
 import loci.formats.tiff.IFD;
 import loci.formats.tiff.PhotoInterp;
 import loci.formats.tiff.TiffIFDEntry;
@@ -68,7 +65,7 @@ public class NDPIReader extends BaseTiffReader {
   private int sizeZ = 1;
   private int pyramidHeight = 1;
 
-  private JPEGTurboService service = new JPEGTurboServiceImpl();
+  private JPEGDecoder decoder;
 
   private Double magnification;
   private String serialNumber;
@@ -170,27 +167,18 @@ public class NDPIReader extends BaseTiffReader {
       in.seek(offset);
       in.setLength(offset + byteCount);
 
-      try {
-        service.close();
-        long[] markers = ifd.getIFDLongArray(MARKER_TAG);
-        if (!use64Bit) {
-          for (int i=0; i<markers.length; i++) {
-            markers[i] = markers[i] & 0xffffffffL;
-          }
+      long[] markers = ifd.getIFDLongArray(MARKER_TAG);
+      if (markers != null && !use64Bit) {
+        for (int i=0; i<markers.length; i++) {
+          markers[i] = markers[i] & 0xffffffffL;
         }
-        if (markers != null) {
-          service.setRestartMarkers(markers);
-        }
-        service.initialize(in, getSizeX(), getSizeY());
-      }
-      catch (ServiceException e) {
-        throw new FormatException(e);
       }
+      decoder = new JPEGDecoder(in, getSizeX(), getSizeY(), markers);
 
       initializedSeries = getCoreIndex();
       initializedPlane = no;
     }
-    service.getTile(buf, x, y, w, h);
+    decoder.decode(buf, x, y, w, h, true);
     return buf;
   }
 
@@ -247,7 +235,7 @@ public class NDPIReader extends BaseTiffReader {
   @Override
   public void close(boolean fileOnly) throws IOException {
     if (!fileOnly) {
-      service.close();
+      decoder = null;
       initializedSeries = -1;
       initializedPlane = -1;
       sizeZ = 1;
@@ -82,6 +82,8 @@ public class TillVisionReader extends FormatReader {
 
   private String[] pixelsFiles;
   private transient RandomAccessInputStream pixelsStream;
+  private transient POIService poi;
+  private String embeddedDocument;
   private Map<Integer, Double> exposureTimes;
   private boolean embeddedImages;
   private long[] embeddedOffset;
@@ -129,7 +131,11 @@ public class TillVisionReader extends FormatReader {
 
     int plane = FormatTools.getPlaneSize(this);
     if (embeddedImages) {
-      in.seek(embeddedOffset[getCoreIndex()] + no * plane);
+      if (poi == null) {
+        initPOIService(currentId);
+        in = poi.getDocumentStream(embeddedDocument);
+      }
+      in.seek(embeddedOffset[getCoreIndex()] + (long) no * plane);
       readPlane(in, x, y, w, h, buf);
     }
     else {
@@ -148,7 +154,10 @@ public class TillVisionReader extends FormatReader {
   @Override
   public void close(boolean fileOnly) throws IOException {
     super.close(fileOnly);
+    if (poi != null) poi.close();
+    poi = null;
     if (!fileOnly) {
+      embeddedDocument = null;
       if (pixelsStream != null) pixelsStream.close();
       pixelsStream = null;
       pixelsFiles = null;
@@ -229,16 +238,7 @@ public class TillVisionReader extends FormatReader {
 
     exposureTimes = new HashMap<Integer, Double>();
 
-    POIService poi = null;
-    try {
-      ServiceFactory factory = new ServiceFactory();
-      poi = factory.getInstance(POIService.class);
-    }
-    catch (DependencyException de) {
-      throw new FormatException("POI library not found", de);
-    }
-
-    poi.initialize(id);
+    initPOIService(id);
     Vector<String> documents = poi.getDocumentList();
 
     int nImages = 0;
@@ -329,7 +329,10 @@ public class TillVisionReader extends FormatReader {
             }
           }
 
+          // the stream reads directly from the .vws file, so the POI
+          // service must stay open for as long as the stream is in use
           if (in != null) in.close();
+          embeddedDocument = name;
           in = poi.getDocumentStream(name);
           s.close();
           break;
@@ -544,12 +547,25 @@ public class TillVisionReader extends FormatReader {
     setSeries(0);
     populateMetadataStore();
 
-    poi.close();
-    poi = null;
+    if (!embeddedImages) {
+      poi.close();
+      poi = null;
+    }
   }
 
   // -- Helper methods --
 
+  private void initPOIService(String id) throws FormatException, IOException {
+    try {
+      ServiceFactory factory = new ServiceFactory();
+      poi = factory.getInstance(POIService.class);
+    }
+    catch (DependencyException de) {
+      throw new FormatException("POI library not found", de);
+    }
+    poi.initialize(id);
+  }
+
   private void populateMetadataStore() throws FormatException {
     MetadataStore store = makeFilterMetadata();
     MetadataTools.populatePixels(store, this, true);
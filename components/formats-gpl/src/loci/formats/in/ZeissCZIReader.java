@@ -34,6 +34,8 @@ import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
 import javax.xml.parsers.DocumentBuilder;
 
 import loci.common.ByteArrayHandle;
@@ -43,6 +45,7 @@ import loci.common.Location;
 import loci.common.RandomAccessInputStream;
 import loci.common.Region;
 import loci.common.xml.XMLTools;
+import loci.formats.BatchTools;
 import loci.formats.CoreMetadata;
 import loci.formats.FormatException;
 import loci.formats.FormatReader;
@@ -396,20 +399,143 @@ public class ZeissCZIReader extends FormatReader {
         stream.close();
     }
 
-    if (isRGB()) {
-      // channels are stored in BGR order; red and blue channels need switching
-      for (int i=0; i<buf.length/(getRGBChannelCount()*bpp); i++) {
-        for (int b=0; b<bpp; b++) {
-          int blueIndex = i * getRGBChannelCount() * bpp + b;
-          int redIndex = i * getRGBChannelCount() * bpp + bpp * 2 + b;
-          byte red = buf[redIndex];
-          buf[redIndex] = buf[blueIndex];
-          buf[blueIndex] = red;
+    swapRedAndBlue(buf);
+    return buf;
+  }
+
+  /**
+   * @see loci.formats.IFormatReader#openBytes(int, List, List)
+   */
+  @Override
+  public List<byte[]> openBytes(int no, List<Region> regions,
+    List<byte[]> bufs) throws FormatException, IOException
+  {
+    List<byte[]> buffers =
+      FormatTools.allocateBuffers(this, no, regions, bufs);
+
+    boolean validScanDim =
+      scanDim == (getImageCount() / (getSizeC() * phases)) && scanDim > 1;
+    if (planes.size() == getImageCount()) {
+      validScanDim = false;
+    }
+    if (prestitched == null || !prestitched || validScanDim) {
+      // only mosaics are stored as separate tiles
+      return super.openBytes(no, regions, buffers);
+    }
+
+    previousChannel = getZCTCoords(no)[1];
+    int currentSeries = getSeries();
+    int pixel =
+      getRGBChannelCount() * FormatTools.getBytesPerPixel(getPixelType());
+
+    // find the tiles of the plane, normalized such that the minimum
+    // row/col values are 0
+
+    List<SubBlock> blocks = new ArrayList<SubBlock>();
+    int minTileX = Integer.MAX_VALUE, minTileY = Integer.MAX_VALUE;
+    for (SubBlock plane : planes) {
+      if (plane.seriesIndex == currentSeries && plane.planeIndex == no) {
+        blocks.add(plane);
+        minTileX = Math.min(minTileX, plane.col);
+        minTileY = Math.min(minTileY, plane.row);
+      }
+    }
+
+    List<Region> tiles = new ArrayList<Region>();
+    final List<SubBlock> needed = new ArrayList<SubBlock>();
+    for (SubBlock plane : blocks) {
+      Region tile = new Region(plane.col, plane.row, plane.x, plane.y);
+      if (plane.x == getSizeX() && plane.y == getSizeY()) {
+        tile.x = 0;
+        tile.y = 0;
+      }
+      else {
+        tile.x -= minTileX;
+        tile.y -= minTileY;
+      }
+      for (Region region : regions) {
+        if (tile.intersects(region)) {
+          tiles.add(tile);
+          needed.add(new SubBlock(plane));
+          break;
         }
       }
     }
 
-    return buf;
+    // read the tiles in file order, then decode them
+
+    long[] offsets = new long[needed.size()];
+    int[] lengths = new int[needed.size()];
+    boolean threadSafe = true;
+    for (int i=0; i<offsets.length; i++) {
+      SubBlock block = needed.get(i);
+      offsets[i] = block.getDataOffset();
+      lengths[i] = (int) block.dataSize;
+      if (block.directoryEntry.compression == JPEGXR) {
+        threadSafe = false;
+      }
+    }
+    final byte[][] data;
+    RandomAccessInputStream stream = new RandomAccessInputStream(currentId);
+    try {
+      data = BatchTools.readChunks(stream, offsets, lengths);
+    }
+    finally {
+      stream.close();
+    }
+
+    if (threadSafe) {
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+      for (int i=0; i<data.length; i++) {
+        final int index = i;
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() throws FormatException, IOException {
+            data[index] = needed.get(index).decodePixelData(data[index]);
+            return null;
+          }
+        });
+      }
+      BatchTools.runTasks(tasks);
+    }
+    else {
+      for (int i=0; i<data.length; i++) {
+        data[i] = needed.get(i).decodePixelData(data[i]);
+      }
+    }
+
+    // copy the appropriate portion of each tile to the output buffers
+
+    for (int r=0; r<regions.size(); r++) {
+      Region image = regions.get(r);
+      byte[] buf = buffers.get(r);
+      Arrays.fill(buf, (byte) 0);
+      int outputRowLen = image.width * pixel;
+      for (int i=0; i<tiles.size(); i++) {
+        Region tile = tiles.get(i);
+        if (!tile.intersects(image)) {
+          continue;
+        }
+        Region intersection = tile.intersection(image);
+        int intersectionX = 0;
+        if (tile.x < image.x) {
+          intersectionX = image.x - tile.x;
+        }
+
+        int outputCol = (intersection.x - image.x) * pixel;
+        int outputRow = intersection.y - image.y;
+        int rowLen = pixel * Math.min(intersection.width, tile.width);
+        int outputOffset = outputRow * outputRowLen + outputCol;
+        for (int trow=0; trow<intersection.height; trow++) {
+          int realRow = trow + intersection.y - tile.y;
+          int inputOffset = pixel * (realRow * tile.width + intersectionX);
+          System.arraycopy(data[i], inputOffset, buf, outputOffset, rowLen);
+          outputOffset += outputRowLen;
+        }
+      }
+      swapRedAndBlue(buf);
+    }
+    return buffers;
   }
 
   /* @see loci.formats.IFormatReader#close(boolean) */
@@ -1023,6 +1149,26 @@ public class ZeissCZIReader extends FormatReader {
 
   // -- Helper methods --
 
+  /**
+   * Switches the red and blue channels of RGB images, which are stored
+   * in BGR order.
+   */
+  private void swapRedAndBlue(byte[] buf) {
+    if (!isRGB()) {
+      return;
+    }
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    for (int i=0; i<buf.length/(getRGBChannelCount()*bpp); i++) {
+      for (int b=0; b<bpp; b++) {
+        int blueIndex = i * getRGBChannelCount() * bpp + b;
+        int redIndex = i * getRGBChannelCount() * bpp + bpp * 2 + b;
+        byte red = buf[redIndex];
+        buf[redIndex] = buf[blueIndex];
+        buf[blueIndex] = red;
+      }
+    }
+  }
+
   private void readSegments(String id) throws IOException {
     if (in != null) {
       in.close();
@@ -2963,7 +3109,21 @@ public class ZeissCZIReader extends FormatReader {
       s.order(isLittleEndian());
       s.seek(dataOffset);
         s.read(data);
+      return decodePixelData(data);
+    }
+
+    /** Returns the file offset of this block's stored pixel data. */
+    public long getDataOffset() {
+      return dataOffset;
+    }
 
+    /**
+     * Decompresses pixel data that was read from this block's data offset.
+     * Several blocks may be decoded at once by different threads.
+     */
+    public byte[] decodePixelData(byte[] data)
+      throws FormatException, IOException
+    {
       CodecOptions options = new CodecOptions();
       options.interleaved = isInterleaved();
       options.littleEndian = isLittleEndian();
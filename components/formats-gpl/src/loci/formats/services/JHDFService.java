@@ -75,6 +75,15 @@ public interface JHDFService extends Service {
      */
     public int[] getShape(String path);
 
+    /**
+     * Retrieves the chunk size of a dataset.
+     *
+     * @param path HDF path to the dataset.
+     * @return int[] of chunk sizes in each dimension, or null if the
+     *   dataset is not chunked.
+     */
+    public int[] getChunkSize(String path);
+
     /**
      * Retrieves the all members of a group.
      *
@@ -127,6 +127,13 @@ public class JHDFServiceImpl extends AbstractService
         return result;
     }
 
+    /* (non-Javadoc)
+     * @see loci.formats.JHDFService#getChunkSize()
+     */
+    public int[] getChunkSize(String path) {
+        return hdfReader.getDataSetInformation(path).tryGetChunkSizes();
+    }
+
     /* (non-Javadoc)
      * @see loci.formats.JHDFService#readByteArray()
      */
@@ -161,7 +168,8 @@ public class JHDFServiceImpl extends AbstractService
         for (int k = 0; k < offset.length; k++) {
             longOffset[k] = (long) offset[k];
         }
-        return this.hdfReader.int8().readMDArrayBlockWithOffset(path, size, longOffset);
+        return (isSigned(path) ? hdfReader.int8() : hdfReader.uint8())
+            .readMDArrayBlockWithOffset(path, size, longOffset);
     }
 
      /* (non-Javadoc)
@@ -172,7 +180,8 @@ public class JHDFServiceImpl extends AbstractService
         for (int k = 0; k < offset.length; k++) {
             longOffset[k] = (long) offset[k];
         }
-        return this.hdfReader.int16().readMDArrayBlockWithOffset(path, size, longOffset);
+        return (isSigned(path) ? hdfReader.int16() : hdfReader.uint16())
+            .readMDArrayBlockWithOffset(path, size, longOffset);
     }
 
     /* (non-Javadoc)
@@ -273,4 +282,16 @@ public class JHDFServiceImpl extends AbstractService
         currentFile = null;
         hdfReader = null;
     }
+
+    // -- Helper methods --
+
+    /**
+     * Unsigned data sets are read with the unsigned readers, so that values
+     * which do not fit in the signed Java type keep their bit pattern
+     * instead of being clipped.
+     */
+    private boolean isSigned(String path) {
+        return hdfReader.getDataSetInformation(path).getTypeInformation()
+            .isSigned();
+    }
 }
@@ -102,6 +102,23 @@ public interface NetCDFService extends Service {
   public Object getArray(String path, int[] origin, int[] shape)
     throws ServiceException;
 
+  /**
+   * Retrieves a block of an HDF path's values as a flat array.
+   * @param path HDF path to the values.
+   * @param origin Array specifying the starting index.
+   * @param shape Array specifying the extents in each dimension.
+   * @return The Java one-dimensional array representation of the block's
+   * values, in row-major order. Unlike {@link #getArray}, dimensions of
+   * length 1 are preserved, so the returned array always has the type of
+   * the underlying variable.
+   * @throws ServiceException If there is an error with the range of values
+   * or reading from the file.
+   * @see ucar.nc2.Variable#read(int[], int[])
+   * @see ucar.ma2.Array#copyTo1DJavaArray()
+   */
+  public Object getArrayBlock(String path, int[] origin, int[] shape)
+    throws ServiceException;
+
   /**
    * Retrieves all of a variable's attributes.
    * @param path HDF path to the variable.
@@ -181,6 +181,32 @@ public class NetCDFServiceImpl extends AbstractService
     }
   }
 
+  /* (non-Javadoc)
+   * @see loci.formats.NetCDFService#getArrayBlock(java.lang.String, int[], int[])
+   */
+  @Override
+  public Object getArrayBlock(String path, int[] origin, int[] shape)
+    throws ServiceException
+  {
+    String groupName = getDirectory(path);
+    String variableName = getName(path);
+    Group group = getGroup(groupName);
+
+    Variable variable = group.findVariable(variableName);
+    if (variable == null) {
+      throw new ServiceException("Variable not found: " + path);
+    }
+    try {
+      return variable.read(origin, shape).copyTo1DJavaArray();
+    }
+    catch (InvalidRangeException e) {
+      throw new ServiceException(e);
+    }
+    catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   /* (non-Javadoc)
    * @see loci.formats.NetCDFService#getVariableAttributes(java.lang.String)
    */
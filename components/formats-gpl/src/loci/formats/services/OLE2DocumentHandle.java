@@ -0,0 +1,474 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.services;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import loci.common.AbstractNIOHandle;
+import loci.common.Constants;
+import loci.common.DataTools;
+import loci.common.HandleException;
+import loci.common.RandomAccessInputStream;
+
+/**
+ * Read-only IRandomAccess implementation for a single document embedded in
+ * an OLE2 file.  The document's sector chain is resolved into a list of
+ * contiguous extents when the handle is constructed, and all reads are then
+ * served directly from the enclosing file; the document is never copied
+ * into memory.
+ *
+ * The stream from which the enclosing file is read is shared with the
+ * {@link POIService} that created the handle, so the handle must not be
+ * used after the service has been closed.
+ *
+ * @see POIService#getDocumentHandle(String)
+ */
+public class OLE2DocumentHandle extends AbstractNIOHandle {
+
+  // -- Constants --
+
+  private static final String READ_ONLY_MSG = "This handle is read-only.";
+
+  // -- Fields --
+
+  /** Stream from which the enclosing OLE2 file is read. */
+  private RandomAccessInputStream stream;
+
+  /**
+   * Offset of each extent within the document, followed by the length of
+   * the document.
+   */
+  private long[] extentStart;
+
+  /** Offset of each extent within the enclosing file. */
+  private long[] extentOffset;
+
+  /** Length of the document. */
+  private long length;
+
+  /** Current position within the document. */
+  private long fp;
+
+  /** Byte ordering of this handle. */
+  private ByteOrder order = ByteOrder.BIG_ENDIAN;
+
+  /** Index of the extent that was most recently read from. */
+  private int extent;
+
+  /** Buffer used when reading primitive values. */
+  private final byte[] scratch = new byte[8];
+
+  // -- Constructor --
+
+  /**
+   * Constructs a handle for a document whose sectors are stored at the
+   * given offsets within the enclosing file.
+   *
+   * @param stream the stream from which the enclosing file is read; it is
+   *   not closed when this handle is closed
+   * @param sectors the file offset of each sector in the document's chain,
+   *   in document order
+   * @param sectorSize the number of bytes in each sector
+   * @param length the number of bytes in the document
+   */
+  public OLE2DocumentHandle(RandomAccessInputStream stream, long[] sectors,
+    int sectorSize, long length)
+  {
+    if (length < 0 || (long) sectors.length * sectorSize < length) {
+      throw new IllegalArgumentException("Document length " + length +
+        " does not fit in " + sectors.length + " sectors of " + sectorSize +
+        " bytes");
+    }
+    this.stream = stream;
+    this.length = length;
+
+    // merge physically adjacent sectors, so that a document which was
+    // written sequentially is usually read with a single seek
+    long[] start = new long[sectors.length + 1];
+    long[] offset = new long[sectors.length];
+    int count = 0;
+    for (int i=0; i<sectors.length; i++) {
+      long position = (long) i * sectorSize;
+      if (position >= length) break;
+      if (count == 0 ||
+        sectors[i] != offset[count - 1] + position - start[count - 1])
+      {
+        start[count] = position;
+        offset[count] = sectors[i];
+        count++;
+      }
+    }
+    start[count] = length;
+    extentStart = Arrays.copyOf(start, count + 1);
+    extentOffset = Arrays.copyOf(offset, count);
+  }
+
+  // -- OLE2DocumentHandle API methods --
+
+  /**
+   * Returns the number of contiguous runs of sectors in which the
+   * document is stored.
+   */
+  public int getExtentCount() {
+    return extentOffset.length;
+  }
+
+  // -- AbstractNIOHandle API methods --
+
+  /* @see AbstractNIOHandle.setLength(long) */
+  @Override
+  protected void setLength(long length) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  // -- IRandomAccess API methods --
+
+  /* @see IRandomAccess.close() */
+  @Override
+  public void close() {
+    stream = null;
+    fp = 0;
+  }
+
+  /* @see IRandomAccess.getFilePointer() */
+  @Override
+  public long getFilePointer() {
+    return fp;
+  }
+
+  /* @see IRandomAccess.length() */
+  @Override
+  public long length() {
+    return length;
+  }
+
+  /* @see IRandomAccess.read(byte[]) */
+  @Override
+  public int read(byte[] b) throws IOException {
+    return read(b, 0, b.length);
+  }
+
+  /* @see IRandomAccess.read(byte[], int, int) */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (fp >= length) {
+      return -1;
+    }
+    int n = (int) Math.min(len, length - fp);
+    int total = 0;
+    while (total < n) {
+      int e = findExtent(fp);
+      int count = (int) Math.min(n - total, extentStart[e + 1] - fp);
+      stream.seek(extentOffset[e] + fp - extentStart[e]);
+      int read = stream.read(b, off + total, count);
+      if (read <= 0) {
+        break;
+      }
+      fp += read;
+      total += read;
+      if (read < count) {
+        break;
+      }
+    }
+    return total == 0 ? -1 : total;
+  }
+
+  /* @see IRandomAccess.read(ByteBuffer) */
+  @Override
+  public int read(ByteBuffer buf) throws IOException {
+    return read(buf, 0, buf.capacity());
+  }
+
+  /* @see IRandomAccess.read(ByteBuffer, int, int) */
+  @Override
+  public int read(ByteBuffer buf, int off, int len) throws IOException {
+    if (buf.hasArray()) {
+      return read(buf.array(), buf.arrayOffset() + off, len);
+    }
+
+    byte[] b = new byte[len];
+    int n = read(b);
+    if (n > 0) {
+      buf.position(off);
+      buf.put(b, 0, n);
+    }
+    return n;
+  }
+
+  /* @see IRandomAccess.seek(long) */
+  @Override
+  public void seek(long pos) throws IOException {
+    if (pos < 0) {
+      throw new IOException("Cannot seek to negative offset " + pos);
+    }
+    fp = pos;
+  }
+
+  /* @see IRandomAccess.getOrder() */
+  @Override
+  public ByteOrder getOrder() {
+    return order;
+  }
+
+  /* @see IRandomAccess.setOrder(ByteOrder) */
+  @Override
+  public void setOrder(ByteOrder order) {
+    this.order = order;
+  }
+
+  // -- DataInput API methods --
+
+  /* @see java.io.DataInput.readBoolean() */
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  /* @see java.io.DataInput.readByte() */
+  @Override
+  public byte readByte() throws IOException {
+    readFully(scratch, 0, 1);
+    return scratch[0];
+  }
+
+  /* @see java.io.DataInput.readChar() */
+  @Override
+  public char readChar() throws IOException {
+    return (char) readShort();
+  }
+
+  /* @see java.io.DataInput.readDouble() */
+  @Override
+  public double readDouble() throws IOException {
+    readFully(scratch, 0, 8);
+    return DataTools.bytesToDouble(scratch, 0, isLittleEndian());
+  }
+
+  /* @see java.io.DataInput.readFloat() */
+  @Override
+  public float readFloat() throws IOException {
+    readFully(scratch, 0, 4);
+    return DataTools.bytesToFloat(scratch, 0, isLittleEndian());
+  }
+
+  /* @see java.io.DataInput.readFully(byte[]) */
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  /* @see java.io.DataInput.readFully(byte[], int, int) */
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    if (fp + len > length) {
+      throw new EOFException(EOF_ERROR_MSG);
+    }
+    if (len > 0 && read(b, off, len) < len) {
+      throw new EOFException(EOF_ERROR_MSG);
+    }
+  }
+
+  /* @see java.io.DataInput.readInt() */
+  @Override
+  public int readInt() throws IOException {
+    readFully(scratch, 0, 4);
+    return DataTools.bytesToInt(scratch, 0, isLittleEndian());
+  }
+
+  /* @see java.io.DataInput.readLine() */
+  @Override
+  public String readLine() throws IOException {
+    throw new IOException("Unimplemented");
+  }
+
+  /* @see java.io.DataInput.readLong() */
+  @Override
+  public long readLong() throws IOException {
+    readFully(scratch, 0, 8);
+    return DataTools.bytesToLong(scratch, 0, isLittleEndian());
+  }
+
+  /* @see java.io.DataInput.readShort() */
+  @Override
+  public short readShort() throws IOException {
+    readFully(scratch, 0, 2);
+    return DataTools.bytesToShort(scratch, 0, isLittleEndian());
+  }
+
+  /* @see java.io.DataInput.readUnsignedByte() */
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xff;
+  }
+
+  /* @see java.io.DataInput.readUnsignedShort() */
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xffff;
+  }
+
+  /* @see java.io.DataInput.readUTF() */
+  @Override
+  public String readUTF() throws IOException {
+    int length = readUnsignedShort();
+    byte[] b = new byte[length];
+    readFully(b);
+    return new String(b, Constants.ENCODING);
+  }
+
+  /* @see java.io.DataInput.skipBytes(int) */
+  @Override
+  public int skipBytes(int n) throws IOException {
+    int skipped = (int) Math.min(n, length - fp);
+    if (skipped < 0) {
+      return 0;
+    }
+    fp += skipped;
+    return skipped;
+  }
+
+  // -- DataOutput API methods --
+
+  /* @see java.io.DataOutput.write(byte[]) */
+  @Override
+  public void write(byte[] b) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.write(byte[], int, int) */
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see IRandomAccess.write(ByteBuffer) */
+  @Override
+  public void write(ByteBuffer buf) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see IRandomAccess.write(ByteBuffer, int, int) */
+  @Override
+  public void write(ByteBuffer buf, int off, int len) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.write(int) */
+  @Override
+  public void write(int b) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.writeBoolean(boolean) */
+  @Override
+  public void writeBoolean(boolean v) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.writeByte(int) */
+  @Override
+  public void writeByte(int v) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.writeBytes(String) */
+  @Override
+  public void writeBytes(String s) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.writeChar(int) */
+  @Override
+  public void writeChar(int v) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.writeChars(String) */
+  @Override
+  public void writeChars(String s) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.writeDouble(double) */
+  @Override
+  public void writeDouble(double v) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.writeFloat(float) */
+  @Override
+  public void writeFloat(float v) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.writeInt(int) */
+  @Override
+  public void writeInt(int v) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.writeLong(long) */
+  @Override
+  public void writeLong(long v) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.writeShort(int) */
+  @Override
+  public void writeShort(int v) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  /* @see java.io.DataOutput.writeUTF(String) */
+  @Override
+  public void writeUTF(String str) throws IOException {
+    throw new HandleException(READ_ONLY_MSG);
+  }
+
+  // -- Helper methods --
+
+  private boolean isLittleEndian() {
+    return order.equals(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /** Returns the index of the extent containing the given position. */
+  private int findExtent(long pos) {
+    if (pos >= extentStart[extent] && pos < extentStart[extent + 1]) {
+      return extent;
+    }
+    int index = Arrays.binarySearch(extentStart, pos);
+    extent = index >= 0 ? index : -index - 2;
+    return extent;
+  }
+
+}
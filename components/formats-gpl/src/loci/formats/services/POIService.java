@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Vector;
 
+import loci.common.IRandomAccess;
 import loci.common.RandomAccessInputStream;
 import loci.common.services.Service;
 
@@ -64,6 +65,8 @@ public interface POIService extends Service {
 
   /**
    * Retrieve a RandomAccessInputStream corresponding to the given file name.
+   * The stream is backed by {@link #getDocumentHandle(String)}, so the
+   * embedded file is not copied into memory.
    * Either of the 'initialize' methods must be called before this method.
    *
    * @param file The name of the embedded file for which to
@@ -73,6 +76,18 @@ public interface POIService extends Service {
   public RandomAccessInputStream getDocumentStream(String file)
     throws IOException;
 
+  /**
+   * Retrieve an IRandomAccess handle corresponding to the given file name.
+   * The handle reads directly from the underlying OLE2 file, and so may only
+   * be used until {@link #close()} is called.
+   * Either of the 'initialize' methods must be called before this method.
+   *
+   * @param file The name of the embedded file for which to
+   *   retrieve a handle.
+   * @throws IOException if an error occurred when reading the file
+   */
+  public IRandomAccess getDocumentHandle(String file) throws IOException;
+
   /**
    * Retrieve all of the raw bytes that correspond to the given file name.
    * Either of the 'initialize' methods must be called before this method.
@@ -26,19 +26,24 @@
 package loci.formats.services;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Vector;
 
+import loci.common.ByteArrayHandle;
+import loci.common.IRandomAccess;
 import loci.common.RandomAccessInputStream;
 import loci.common.services.AbstractService;
 import loci.poi.poifs.filesystem.DirectoryEntry;
 import loci.poi.poifs.filesystem.DocumentEntry;
 import loci.poi.poifs.filesystem.DocumentInputStream;
+import loci.poi.poifs.filesystem.DocumentNode;
 import loci.poi.poifs.filesystem.Entry;
 import loci.poi.poifs.filesystem.POIFSFileSystem;
+import loci.poi.poifs.storage.DocumentBlock;
 
 /**
  */
@@ -105,7 +110,34 @@ public class POIServiceImpl extends AbstractService implements POIService {
   public RandomAccessInputStream getDocumentStream(String file)
     throws IOException
   {
-    return new RandomAccessInputStream(getDocumentBytes(file));
+    return new RandomAccessInputStream(getDocumentHandle(file));
+  }
+
+  /* @see POIService#getDocumentHandle(String) */
+  @Override
+  public IRandomAccess getDocumentHandle(String file) throws IOException {
+    DocumentEntry entry = files.get(file);
+    if (entry == null) {
+      throw new FileNotFoundException(file);
+    }
+    int size = getFileSize(file);
+    if (entry instanceof DocumentNode) {
+      // documents stored in the mini stream have no big blocks; they are
+      // at most 4096 bytes long and already held in memory
+      DocumentBlock[] blocks =
+        ((DocumentNode) entry).getDocument().getBigBlocks();
+      if (blocks.length > 0) {
+        int blockSize = blocks[0].getBigBlockSize();
+        if ((long) blocks.length * blockSize >= size) {
+          long[] sectors = new long[blocks.length];
+          for (int i=0; i<blocks.length; i++) {
+            sectors[i] = blocks[i].getOffset();
+          }
+          return new OLE2DocumentHandle(stream, sectors, blockSize, size);
+        }
+      }
+    }
+    return new ByteArrayHandle(getDocumentBytes(file, size));
   }
 
   /* @see POIService#getDocumentBytes(String) */
@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.services.OLE2DocumentHandle;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link OLE2DocumentHandle}, using a synthetic file in
+ * which each sector is filled with its index in the document.
+ */
+public class OLE2DocumentHandleTest {
+
+  private static final int SECTOR_SIZE = 16;
+
+  /** File sector in which each document sector is stored. */
+  private static final int[] CHAIN = {1, 2, 3, 7, 8, 5, 0};
+
+  private static final int LENGTH = (CHAIN.length - 1) * SECTOR_SIZE + 5;
+
+  private RandomAccessInputStream file;
+  private OLE2DocumentHandle handle;
+  private byte[] expected;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    byte[] data = new byte[10 * SECTOR_SIZE];
+    Arrays.fill(data, (byte) -1);
+    long[] sectors = new long[CHAIN.length];
+    for (int i=0; i<CHAIN.length; i++) {
+      sectors[i] = CHAIN[i] * SECTOR_SIZE;
+      for (int j=0; j<SECTOR_SIZE; j++) {
+        data[CHAIN[i] * SECTOR_SIZE + j] = (byte) (i * SECTOR_SIZE + j);
+      }
+    }
+    expected = new byte[LENGTH];
+    for (int i=0; i<LENGTH; i++) {
+      expected[i] = (byte) i;
+    }
+    file = new RandomAccessInputStream(data);
+    handle = new OLE2DocumentHandle(file, sectors, SECTOR_SIZE, LENGTH);
+  }
+
+  @Test
+  public void testExtents() {
+    // {1, 2, 3}, {7, 8}, {5}, {0}
+    assertEquals(4, handle.getExtentCount());
+    assertEquals(LENGTH, handle.length());
+  }
+
+  @Test
+  public void testReadAll() throws IOException {
+    byte[] b = new byte[LENGTH + 10];
+    assertEquals(LENGTH, handle.read(b));
+    assertTrue(Arrays.equals(expected, Arrays.copyOf(b, LENGTH)));
+    assertEquals(LENGTH, handle.getFilePointer());
+    assertEquals(-1, handle.read(b));
+  }
+
+  @Test
+  public void testReadAcrossExtents() throws IOException {
+    for (int offset=0; offset<LENGTH; offset+=7) {
+      for (int len=1; offset+len<=LENGTH; len+=11) {
+        handle.seek(offset);
+        byte[] b = new byte[len];
+        handle.readFully(b);
+        assertTrue(Arrays.equals(
+          Arrays.copyOfRange(expected, offset, offset + len), b));
+      }
+    }
+  }
+
+  @Test
+  public void testStreamWrapper() throws IOException {
+    RandomAccessInputStream s = new RandomAccessInputStream(handle);
+    s.order(true);
+    s.seek(SECTOR_SIZE * 3 - 1);
+    assertEquals(0x3231302f, s.readInt());
+    s.order(false);
+    s.seek(SECTOR_SIZE * 5 - 2);
+    assertEquals(0x4e4f, s.readShort());
+    s.close();
+
+    // the shared file stream remains usable
+    file.seek(0);
+    assertEquals(SECTOR_SIZE * 6, file.readByte());
+  }
+
+  @Test(expectedExceptions = EOFException.class)
+  public void testReadPastEnd() throws IOException {
+    handle.seek(LENGTH - 2);
+    handle.readInt();
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testReadOnly() throws IOException {
+    handle.write(1);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testChainTooShort() {
+    new OLE2DocumentHandle(file, new long[] {0}, SECTOR_SIZE, LENGTH);
+  }
+
+}
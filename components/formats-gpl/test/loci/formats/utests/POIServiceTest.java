@@ -27,16 +27,22 @@ package loci.formats.utests;
 
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
 import static org.testng.AssertJUnit.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Vector;
 
+import loci.common.DataTools;
+import loci.common.IRandomAccess;
 import loci.common.RandomAccessInputStream;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceFactory;
+import loci.formats.services.OLE2DocumentHandle;
 import loci.formats.services.POIService;
 
 import org.testng.annotations.BeforeMethod;
@@ -94,4 +100,56 @@ public class POIServiceTest {
   public void testWorkbookFileSize() {
     assertEquals(WORKBOOK_LENGTH, service.getFileSize(WORKBOOK_DOCUMENT));
   }
+
+  @Test
+  public void testWorkbookDocumentHandle() throws IOException {
+    IRandomAccess handle = service.getDocumentHandle(WORKBOOK_DOCUMENT);
+    assertTrue(handle instanceof OLE2DocumentHandle);
+    assertEquals(WORKBOOK_LENGTH, handle.length());
+
+    byte[] expected = service.getDocumentBytes(WORKBOOK_DOCUMENT);
+    byte[] bytes = new byte[WORKBOOK_LENGTH];
+    handle.readFully(bytes);
+    assertTrue(Arrays.equals(expected, bytes));
+    assertEquals(-1, handle.read(new byte[1]));
+    handle.close();
+  }
+
+  @Test
+  public void testWorkbookDocumentHandleSeek() throws IOException {
+    IRandomAccess handle = service.getDocumentHandle(WORKBOOK_DOCUMENT);
+    byte[] expected = service.getDocumentBytes(WORKBOOK_DOCUMENT);
+
+    // reads which straddle the 512 byte sector boundaries
+    int[] offsets = {WORKBOOK_LENGTH - 4, 510, 0, 1022, 4093, 511};
+    for (boolean little : new boolean[] {false, true}) {
+      handle.setOrder(little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+      for (int offset : offsets) {
+        handle.seek(offset);
+        assertEquals(DataTools.bytesToInt(expected, offset, little),
+          handle.readInt());
+        assertEquals(offset + 4, handle.getFilePointer());
+      }
+    }
+
+    handle.seek(1000);
+    byte[] bytes = new byte[2000];
+    assertEquals(bytes.length, handle.read(bytes));
+    assertTrue(Arrays.equals(
+      Arrays.copyOfRange(expected, 1000, 3000), bytes));
+    handle.close();
+  }
+
+  @Test
+  public void testDocumentHandlesMatchBytes() throws IOException {
+    for (String document : service.getDocumentList()) {
+      byte[] expected = service.getDocumentBytes(document);
+      RandomAccessInputStream stream = service.getDocumentStream(document);
+      assertEquals(expected.length, stream.length());
+      byte[] bytes = new byte[expected.length];
+      stream.readFully(bytes);
+      assertTrue(document, Arrays.equals(expected, bytes));
+      stream.close();
+    }
+  }
 }
@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import loci.common.Constants;
+import loci.formats.FormatReader;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that reader-suffixes.txt, which allows {@link ImageReader} to skip
+ * readers without instantiating them, agrees with the readers themselves.
+ */
+public class ReaderSuffixesTest {
+
+  private Map<String, String[]> suffixes;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    suffixes = new LinkedHashMap<String, String[]>();
+    InputStream stream =
+      ImageReader.class.getResourceAsStream("reader-suffixes.txt");
+    assertNotNull(stream);
+    BufferedReader in = new BufferedReader(
+      new InputStreamReader(stream, Constants.ENCODING));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        int ndx = line.indexOf("#");
+        if (ndx >= 0) line = line.substring(0, ndx);
+        String[] tokens = line.trim().split("[\\s,]+");
+        if (tokens.length < 2) continue;
+        suffixes.put(tokens[0], Arrays.copyOfRange(tokens, 1, tokens.length));
+      }
+    }
+    finally {
+      in.close();
+    }
+    assertFalse(suffixes.isEmpty());
+  }
+
+  @Test
+  public void testListedReaders() throws Exception {
+    Field suffixNecessary =
+      FormatReader.class.getDeclaredField("suffixNecessary");
+    suffixNecessary.setAccessible(true);
+
+    for (String className : suffixes.keySet()) {
+      Class<?> c = Class.forName(className);
+      IFormatReader reader = (IFormatReader) c.newInstance();
+      assertTrue(className, Arrays.equals(suffixes.get(className),
+        reader.getSuffixes()));
+      assertTrue(className, reader instanceof FormatReader);
+      assertTrue(className, (Boolean) suffixNecessary.get(reader));
+      assertEquals(className, FormatReader.class, c.getMethod("isThisType",
+        String.class, boolean.class).getDeclaringClass());
+    }
+  }
+
+  @Test
+  public void testLazyDetection() throws Exception {
+    IFormatReader[] all = new ImageReader().getReaders();
+    List<String> names = new ArrayList<String>();
+    names.add("test.unknown");
+    names.add("test");
+    for (IFormatReader reader : all) {
+      for (String suffix : reader.getSuffixes()) {
+        names.add("test." + suffix);
+        names.add("TEST." + suffix.toUpperCase());
+      }
+    }
+
+    for (String name : names) {
+      boolean expected = false;
+      for (IFormatReader reader : all) {
+        if (reader.isThisType(name, false)) {
+          expected = true;
+          break;
+        }
+      }
+      assertEquals(name, expected, new ImageReader().isThisType(name, false));
+    }
+  }
+
+  @Test
+  public void testSettingsAppliedToNewReaders() {
+    ImageReader reader = new ImageReader();
+    reader.setGroupFiles(false);
+    reader.setNormalized(true);
+    reader.setMetadataFiltered(true);
+    reader.setOriginalMetadataPopulated(true);
+    for (IFormatReader r : reader.getReaders()) {
+      String name = r.getClass().getName();
+      assertFalse(name, r.isGroupFiles());
+      assertTrue(name, r.isNormalized());
+      assertTrue(name, r.isMetadataFiltered());
+      assertTrue(name, r.isOriginalMetadataPopulated());
+    }
+  }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+
+import loci.common.DataTools;
+import loci.formats.FormatException;
+import loci.formats.in.HDF5ChunkCache;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link HDF5ChunkCache}, using a synthetic CTZYX dataset
+ * in which each sample is its own index.
+ */
+public class HDF5ChunkCacheTest {
+
+  private static final int[] DIMS = {2, 3, 5, 37, 41};
+
+  private static final int[] CHUNK = {1, 1, 2, 16, 16};
+
+  /** Loader for the synthetic dataset, which counts the samples read. */
+  private static class Loader implements HDF5ChunkCache.BlockLoader {
+    long samples;
+
+    @Override
+    public Object load(int[] origin, int[] shape) throws FormatException {
+      int length = 1;
+      for (int s : shape) {
+        length *= s;
+      }
+      short[] block = new short[length];
+      int[] pos = new int[shape.length];
+      for (int i=0; i<length; i++) {
+        int index = 0;
+        for (int d=0; d<shape.length; d++) {
+          index = index * DIMS[d] + origin[d] + pos[d];
+        }
+        block[i] = (short) index;
+        for (int d=shape.length-1; d>=0; d--) {
+          if (++pos[d] < shape[d]) break;
+          pos[d] = 0;
+        }
+      }
+      samples += length;
+      return block;
+    }
+  }
+
+  private static byte[] expected(int[] plane, int x, int y, int w, int h,
+    boolean little)
+  {
+    byte[] b = new byte[w * h * 2];
+    int base = 0;
+    for (int d=0; d<plane.length; d++) {
+      base = base * DIMS[d] + plane[d];
+    }
+    for (int row=0; row<h; row++) {
+      for (int col=0; col<w; col++) {
+        int index = (base * DIMS[3] + y + row) * DIMS[4] + x + col;
+        DataTools.unpackBytes(index, b, (row * w + col) * 2, 2, little);
+      }
+    }
+    return b;
+  }
+
+  @Test
+  public void testBlockShape() {
+    HDF5ChunkCache cache = new HDF5ChunkCache(1024 * 1024);
+    assertTrue(Arrays.equals(CHUNK, cache.getBlockShape(DIMS, CHUNK, 2)));
+    assertTrue(Arrays.equals(new int[] {1, 1, 1, 37, 41},
+      cache.getBlockShape(DIMS, null, 2)));
+    assertTrue(Arrays.equals(DIMS,
+      cache.getBlockShape(DIMS, new int[] {4, 4, 8, 64, 64}, 2)));
+
+    // 2 * 5 * 37 * 41 * 2 bytes does not fit in a quarter of 32 KB
+    cache = new HDF5ChunkCache(32 * 1024);
+    int[] shape = cache.getBlockShape(DIMS, DIMS, 2);
+    long bytes = 2;
+    for (int s : shape) {
+      bytes *= s;
+    }
+    assertTrue(bytes <= 8 * 1024);
+  }
+
+  @Test
+  public void testRegions() throws FormatException {
+    HDF5ChunkCache cache = new HDF5ChunkCache(1024 * 1024);
+    Loader loader = new Loader();
+    int[] block = cache.getBlockShape(DIMS, CHUNK, 2);
+    int[][] regions = {
+      {0, 0, 41, 37}, {15, 15, 2, 2}, {16, 16, 16, 16}, {40, 36, 1, 1},
+      {3, 30, 38, 7}};
+    for (boolean little : new boolean[] {true, false}) {
+      for (int[] r : regions) {
+        int[] plane = {1, 2, 3};
+        byte[] buf = new byte[r[2] * r[3] * 2];
+        cache.clear();
+        cache.copyRegion("data" + little, DIMS, block, plane,
+          r[0], r[1], r[2], r[3], 2, little, buf, loader);
+        assertTrue(Arrays.equals(
+          expected(plane, r[0], r[1], r[2], r[3], little), buf));
+      }
+    }
+  }
+
+  @Test
+  public void testStackDecodesEachChunkOnce() throws FormatException {
+    HDF5ChunkCache cache = new HDF5ChunkCache(1024 * 1024);
+    Loader loader = new Loader();
+    int[] block = cache.getBlockShape(DIMS, CHUNK, 2);
+    byte[] buf = new byte[DIMS[3] * DIMS[4] * 2];
+    for (int z=0; z<DIMS[2]; z++) {
+      int[] plane = {0, 1, z};
+      cache.copyRegion("data", DIMS, block, plane, 0, 0, DIMS[4], DIMS[3],
+        2, true, buf, loader);
+      assertTrue(Arrays.equals(
+        expected(plane, 0, 0, DIMS[4], DIMS[3], true), buf));
+    }
+    // 3 chunks in Z, 3 in Y and 3 in X
+    assertEquals(27, cache.getLoadCount());
+    assertEquals(DIMS[2] * DIMS[3] * DIMS[4], loader.samples);
+  }
+
+  @Test
+  public void testEviction() throws FormatException {
+    // room for two of the 16x16x2 blocks in the top row
+    HDF5ChunkCache cache = new HDF5ChunkCache(2 * 16 * 16 * 2 * 2 + 100);
+    Loader loader = new Loader();
+    int[] block = {1, 1, 2, 16, 16};
+    byte[] buf = new byte[16 * 16 * 2];
+    int[] plane = {0, 0, 0};
+    for (int x=0; x<DIMS[4]; x+=16) {
+      int w = Math.min(16, DIMS[4] - x);
+      cache.copyRegion("data", DIMS, block, plane, x, 0, w, 16, 2, true, buf,
+        loader);
+      assertTrue(cache.getSize() <= cache.getBudget());
+    }
+    assertEquals(3, cache.getLoadCount());
+
+    // the most recently used block is still cached, the first is not
+    cache.copyRegion("data", DIMS, block, plane, 32, 0, 9, 16, 2, true, buf,
+      loader);
+    assertEquals(3, cache.getLoadCount());
+    cache.copyRegion("data", DIMS, block, plane, 0, 0, 16, 16, 2, true, buf,
+      loader);
+    assertEquals(4, cache.getLoadCount());
+  }
+
+  @Test
+  public void testToBytes() {
+    float[] f = {1.5f, -2f, Float.NaN};
+    assertTrue(Arrays.equals(DataTools.floatsToBytes(f, true),
+      HDF5ChunkCache.toBytes(f, true)));
+    double[] d = {1.5, -2, Double.MAX_VALUE};
+    assertTrue(Arrays.equals(DataTools.doublesToBytes(d, false),
+      HDF5ChunkCache.toBytes(d, false)));
+    int[] i = {1, -2, Integer.MIN_VALUE};
+    assertTrue(Arrays.equals(DataTools.intsToBytes(i, true),
+      HDF5ChunkCache.toBytes(i, true)));
+    short[] s = {1, -2, Short.MAX_VALUE};
+    assertTrue(Arrays.equals(DataTools.shortsToBytes(s, false),
+      HDF5ChunkCache.toBytes(s, false)));
+    byte[] b = {1, 2, 3};
+    assertTrue(b == HDF5ChunkCache.toBytes(b, true));
+  }
+
+}
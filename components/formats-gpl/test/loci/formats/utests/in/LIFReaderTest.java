@@ -0,0 +1,325 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2016 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import loci.common.DataTools;
+import loci.common.services.ServiceFactory;
+import loci.formats.FormatTools;
+import loci.formats.in.LIFReader;
+import loci.formats.meta.IMetadata;
+import loci.formats.services.OMEXMLService;
+
+import ome.units.UNITS;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link LIFReader}, using a synthetic LIF file that
+ * contains several images, some of which are tile scans.
+ */
+public class LIFReaderTest {
+
+  private static final int IMAGES = 12;
+
+  private static final int SIZE_X = 8;
+  private static final int SIZE_Y = 4;
+  private static final int SIZE_Z = 2;
+  private static final int SIZE_C = 2;
+  private static final int PLANE_SIZE = SIZE_X * SIZE_Y;
+  private static final int PLANE_COUNT = SIZE_Z * SIZE_C;
+
+  private File file;
+  private OMEXMLService service;
+
+  /** Returns the number of tiles in the given image. */
+  private static int getTileCount(int image) {
+    return image % 3 == 0 ? 2 : 1;
+  }
+
+  /** Returns the stage position of the given tile of an image. */
+  private static double getTilePosition(int image, int tile) {
+    return (image * 10 + tile) / 1000.0;
+  }
+
+  /** Returns the value of every pixel in the given plane of a series. */
+  private static byte getPixelValue(int series, int plane) {
+    return (byte) (series * PLANE_COUNT + plane + 1);
+  }
+
+  /**
+   * Writes a LIF file with the given number of images.  Every third image
+   * is a tile scan with two tiles; each plane is filled with the value
+   * returned by {@link #getPixelValue(int, int)}.
+   */
+  static void writeFile(File file, int images) throws IOException {
+    StringBuilder xml = new StringBuilder();
+    xml.append("<LMSDataContainerHeader Version=\"2\">");
+    xml.append("<Element Name=\"project\"><Data><Experiment/></Data>");
+    xml.append("<Memory Size=\"0\" MemoryBlockID=\"MemBlock_0\"/>");
+    xml.append("<Children>");
+    for (int i=0; i<images; i++) {
+      int tiles = getTileCount(i);
+      xml.append("<Element Name=\"image ").append(i).append("\">");
+      xml.append("<Data><Image><ImageDescription><Channels>");
+      xml.append("<ChannelDescription DataType=\"0\" Resolution=\"8\" ");
+      xml.append("LUTName=\"Green\" BytesInc=\"0\"/>");
+      xml.append("<ChannelDescription DataType=\"0\" Resolution=\"8\" ");
+      xml.append("LUTName=\"Red\" BytesInc=\"").append(PLANE_SIZE * SIZE_Z);
+      xml.append("\"/>");
+      xml.append("</Channels><Dimensions>");
+      appendDimension(xml, 1, SIZE_X, 1, "8e-006");
+      appendDimension(xml, 2, SIZE_Y, SIZE_X, "4e-006");
+      appendDimension(xml, 3, SIZE_Z, PLANE_SIZE, "1e-006");
+      if (tiles > 1) {
+        appendDimension(xml, 10, tiles, PLANE_SIZE * PLANE_COUNT, "0");
+      }
+      xml.append("</Dimensions></ImageDescription>");
+      xml.append("<Attachment Name=\"ContextDescription\" ");
+      xml.append("Content=\"description ").append(i).append("\"/>");
+      xml.append("<Attachment Name=\"TileScanInfo\">");
+      for (int t=0; t<tiles; t++) {
+        xml.append("<Tile FieldX=\"").append(t).append("\" FieldY=\"0\" ");
+        xml.append("PosX=\"").append(getTilePosition(i, t)).append("\" ");
+        xml.append("PosY=\"").append(getTilePosition(i, 0)).append("\"/>");
+      }
+      xml.append("</Attachment>");
+      xml.append("<Attachment Name=\"HardwareSetting\"><ScannerSetting>");
+      xml.append("<ScannerSettingRecord Identifier=\"SystemType\" ");
+      xml.append("Variant=\"TCS SP").append(i).append("\"/>");
+      xml.append("<ScannerSettingRecord Identifier=\"dblZoom\" ");
+      xml.append("Variant=\"").append(i + 1).append("\"/>");
+      xml.append("<ScannerSettingRecord Identifier=\"dblPinhole\" ");
+      xml.append("Variant=\"0.0001\"/>");
+      xml.append("</ScannerSetting></Attachment>");
+      xml.append("<TimeStampList>");
+      for (int p=0; p<PLANE_COUNT; p++) {
+        xml.append("<TimeStamp HighInteger=\"30000000\" LowInteger=\"");
+        xml.append(i * 1000 + p).append("\"/>");
+      }
+      xml.append("</TimeStampList>");
+      xml.append("</Image></Data>");
+      xml.append("<Memory Size=\"").append(PLANE_SIZE * PLANE_COUNT * tiles);
+      xml.append("\" MemoryBlockID=\"MemBlock_").append(i + 1).append("\"/>");
+      xml.append("<Children/></Element>");
+    }
+    xml.append("</Children></Element></LMSDataContainerHeader>");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] description = xml.toString().getBytes("UTF-16LE");
+    writeInt(out, LIFReader.LIF_MAGIC_BYTE);
+    writeInt(out, description.length + 5);
+    out.write(LIFReader.LIF_MEMORY_BYTE);
+    writeInt(out, xml.length());
+    out.write(description);
+
+    int series = 0;
+    for (int i=0; i<images; i++) {
+      int tiles = getTileCount(i);
+      byte[] block = new byte[PLANE_SIZE * PLANE_COUNT * tiles];
+      for (int t=0; t<tiles; t++, series++) {
+        for (int p=0; p<PLANE_COUNT; p++) {
+          int offset = (t * PLANE_COUNT + p) * PLANE_SIZE;
+          Arrays.fill(block, offset, offset + PLANE_SIZE,
+            getPixelValue(series, p));
+        }
+      }
+      byte[] id = ("MemBlock_" + (i + 1)).getBytes("UTF-16LE");
+      writeInt(out, LIFReader.LIF_MAGIC_BYTE);
+      writeInt(out, block.length + id.length + 10);
+      out.write(LIFReader.LIF_MEMORY_BYTE);
+      writeInt(out, block.length);
+      out.write(LIFReader.LIF_MEMORY_BYTE);
+      writeInt(out, id.length / 2);
+      out.write(id);
+      out.write(block);
+    }
+
+    OutputStream stream = new FileOutputStream(file);
+    try {
+      out.writeTo(stream);
+    }
+    finally {
+      stream.close();
+    }
+  }
+
+  private static void appendDimension(StringBuilder xml, int id, int length,
+    int bytesInc, String physicalLength)
+  {
+    xml.append("<DimensionDescription DimID=\"").append(id);
+    xml.append("\" NumberOfElements=\"").append(length);
+    xml.append("\" Origin=\"0\" Length=\"").append(physicalLength);
+    xml.append("\" Unit=\"m\" BitInc=\"0\" BytesInc=\"").append(bytesInc);
+    xml.append("\"/>");
+  }
+
+  private static void writeInt(OutputStream out, int value)
+    throws IOException
+  {
+    out.write(DataTools.intToBytes(value, true));
+  }
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    file = File.createTempFile("LIFReaderTest", ".lif");
+    writeFile(file, IMAGES);
+    service = new ServiceFactory().getInstance(OMEXMLService.class);
+  }
+
+  @AfterClass
+  public void tearDown() {
+    file.delete();
+  }
+
+  private LIFReader openReader(int threads, IMetadata metadata)
+    throws Exception
+  {
+    LIFReader reader = new LIFReader();
+    reader.setParsingThreads(threads);
+    reader.setMetadataStore(metadata);
+    reader.setId(file.getAbsolutePath());
+    return reader;
+  }
+
+  @Test
+  public void testDimensions() throws Exception {
+    LIFReader reader = openReader(4, service.createOMEXMLMetadata());
+    try {
+      int seriesCount = 0;
+      for (int i=0; i<IMAGES; i++) {
+        seriesCount += getTileCount(i);
+      }
+      assertEquals(seriesCount, reader.getSeriesCount());
+      for (int s=0; s<reader.getSeriesCount(); s++) {
+        reader.setSeries(s);
+        assertEquals(SIZE_X, reader.getSizeX());
+        assertEquals(SIZE_Y, reader.getSizeY());
+        assertEquals(SIZE_Z, reader.getSizeZ());
+        assertEquals(SIZE_C, reader.getSizeC());
+        assertEquals(1, reader.getSizeT());
+        assertEquals(PLANE_COUNT, reader.getImageCount());
+        assertEquals(FormatTools.UINT8, reader.getPixelType());
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testImageMetadata() throws Exception {
+    IMetadata metadata = service.createOMEXMLMetadata();
+    LIFReader reader = openReader(4, metadata);
+    try {
+      int series = 0;
+      for (int i=0; i<IMAGES; i++) {
+        for (int t=0; t<getTileCount(i); t++, series++) {
+          assertEquals("image " + i, metadata.getImageName(series));
+          assertEquals("description " + i,
+            metadata.getImageDescription(series));
+          assertEquals("TCS SP" + i, metadata.getMicroscopeModel(series));
+          assertEquals(1.0, metadata.getPixelsPhysicalSizeX(series)
+            .value(UNITS.MICROMETER).doubleValue(), 1e-6);
+          assertEquals(1.0, metadata.getPixelsPhysicalSizeY(series)
+            .value(UNITS.MICROMETER).doubleValue(), 1e-6);
+          assertNotNull(metadata.getPlanePositionX(series, 0));
+          assertEquals(getTilePosition(i, t),
+            metadata.getPlanePositionX(series, 0).value().doubleValue(),
+            1e-9);
+          assertEquals(getTilePosition(i, 0),
+            metadata.getPlanePositionY(series, 0).value().doubleValue(),
+            1e-9);
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testPixels() throws Exception {
+    LIFReader reader = openReader(4, service.createOMEXMLMetadata());
+    try {
+      for (int s=0; s<reader.getSeriesCount(); s++) {
+        reader.setSeries(s);
+        for (int p=0; p<reader.getImageCount(); p++) {
+          byte[] plane = reader.openBytes(p);
+          byte[] expected = new byte[PLANE_SIZE];
+          Arrays.fill(expected, getPixelValue(s, p));
+          assertEquals("series " + s + ", plane " + p,
+            Arrays.toString(expected), Arrays.toString(plane));
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testParallelMatchesSerial() throws Exception {
+    IMetadata serialMetadata = service.createOMEXMLMetadata();
+    IMetadata parallelMetadata = service.createOMEXMLMetadata();
+    LIFReader serial = openReader(1, serialMetadata);
+    LIFReader parallel = openReader(4, parallelMetadata);
+    try {
+      assertEquals(serial.getSeriesCount(), parallel.getSeriesCount());
+      for (int s=0; s<serial.getSeriesCount(); s++) {
+        serial.setSeries(s);
+        parallel.setSeries(s);
+        assertEquals(serial.getDimensionOrder(),
+          parallel.getDimensionOrder());
+        assertEquals(serial.getSeriesMetadata(),
+          parallel.getSeriesMetadata());
+      }
+      assertEquals(service.getOMEXML(serialMetadata),
+        service.getOMEXML(parallelMetadata));
+    }
+    finally {
+      serial.close();
+      parallel.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidParsingThreads() {
+    new LIFReader().setParsingThreads(0);
+  }
+
+}
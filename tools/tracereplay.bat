@@ -0,0 +1,13 @@
+@echo off
+
+rem tracereplay.bat: a batch file for replaying an I/O trace recorded
+rem                  with showinf or bfconvert -iotrace
+
+rem Required JARs: loci_tools.jar or bioformats_package.jar
+
+setlocal
+set BF_DIR=%~dp0
+if "%BF_DIR:~-1%" == "\" set BF_DIR=%BF_DIR:~0,-1%
+
+set BF_PROG=loci.formats.tools.TraceReplay
+call "%BF_DIR%\bf.bat" %*